@@ -64,6 +64,21 @@ jQuery(function($) {
         var tokens = {}; // key => token
         var listeners = {}; // key => {listeners}
         var xhr = null;
+        var source = null;
+
+        var dispatch = function(x) {
+            $.each(x, function(_k, v) {
+                if (tokens.hasOwnProperty(v.key)) {
+                    $.each(listeners[v.key],
+                           function() { this(v.key, v.value); });
+
+                    tokens[v.key] = v.next;
+                }
+                else {
+                    console.warn("Ignoring value with unknown key", v);
+                }
+            });
+        };
 
         var poller = {
             poll : function() {
@@ -72,27 +87,33 @@ jQuery(function($) {
                     xhr = null;
                 }
 
+                if (source != null) {
+                    source.close();
+                    source = null;
+                }
+
                 if ($.isEmptyObject(tokens)) {
                     return;
                 }
 
+                if (window.EventSource) {
+                    // The server pushes every value, starting with the
+                    // current ones, so there's no need to re-poll.
+                    source = new EventSource("/ui/stream?" +
+                        $.param({ k : Object.keys(tokens) }, true));
+
+                    source.onmessage = function(e) {
+                        dispatch(JSON.parse(e.data));
+                    };
+
+                    return;
+                }
+
                 var p = this;
 
                 xhr = $.getJSON("/ui/poll", tokens);
 
-                xhr.then(function(x) {
-                    $.each(x, function(_k, v) {
-                        if (tokens.hasOwnProperty(v.key)) {
-                            $.each(listeners[v.key],
-                                   function() { this(v.key, v.value); });
-
-                            tokens[v.key] = v.next;
-                        }
-                        else {
-                            console.warn("Ignoring value with unknown key", v);
-                        }
-                    });
-                })
+                xhr.then(dispatch)
                 .then(function() {
                     p.poll();
                 });
@@ -515,6 +536,190 @@ jQuery(function($) {
         notifySample = newData;
     }
 
+    // Five minutes at default sample interval of 1s.
+    const MAX_LATENCY_SAMPLES = 300;
+
+    // The latency distributions of recent samples, oldest first.
+    var latencySamples = [];
+
+    var notifyLatency = undefined;
+
+    function latencySampleListener(scope) {
+        poller.subscribe(scope, "latency", undefined, function(k, v) {
+            latencySamples.push(v);
+
+            if (latencySamples.length > MAX_LATENCY_SAMPLES) {
+                latencySamples.shift();
+            }
+
+            if (notifyLatency) {
+                notifyLatency();
+            }
+        });
+    }
+
+    // Draw a heat map of the test time distribution of recent samples, with
+    // a line showing the highest percentile.
+    function latencyHeatmap(scope) {
+        var canvas = $("#latency-heatmap");
+
+        if (!canvas.length) {
+            return;
+        }
+
+        var testSelect = $("select[name=latency-test]");
+        var selectedTest = "";
+
+        testSelect.change(function() {
+            selectedTest = this.value;
+            draw();
+        });
+
+        var selectLatency = function(sample) {
+            if (selectedTest === "") {
+                return sample.totals;
+            }
+
+            var result = null;
+
+            $.each(sample.tests, function() {
+                if (String(this.test) === selectedTest) {
+                    result = this;
+                }
+            });
+
+            return result;
+        };
+
+        var updateTests = function(sample) {
+            var options = testSelect.children("option");
+
+            if (options.length === sample.tests.length + 1) {
+                return;
+            }
+
+            options.slice(1).remove();
+
+            $.each(sample.tests, function() {
+                testSelect.append($("<option>", { value : this.test })
+                                  .text(this.test));
+            });
+
+            testSelect.val(selectedTest);
+        };
+
+        var draw = function() {
+            var c = canvas[0];
+            c.width = canvas.width();
+            c.height = canvas.height();
+
+            var g = c.getContext("2d");
+            g.clearRect(0, 0, c.width, c.height);
+
+            if (!latencySamples.length) {
+                return;
+            }
+
+            var latest = latencySamples[latencySamples.length - 1];
+            updateTests(latest);
+
+            var bounds = latest.bounds;
+            var rows = bounds.length + 1;
+            var cellWidth = c.width / MAX_LATENCY_SAMPLES;
+            var cellHeight = c.height / rows;
+            var offset = MAX_LATENCY_SAMPLES - latencySamples.length;
+
+            var series = $.map(latencySamples, function(s) {
+                return [selectLatency(s)];
+            });
+
+            var maximum = 2;
+
+            $.each(series, function() {
+                if (this) {
+                    maximum =
+                        Math.max.apply(Math, [maximum].concat(this.counts));
+                }
+            });
+
+            var colour = d3.scale.log()
+                .domain([1, maximum])
+                .range(["#FFFFCC", "#BD0026"]);
+
+            $.each(series, function(i, l) {
+                if (l) {
+                    $.each(l.counts, function(r, n) {
+                        if (n > 0) {
+                            g.fillStyle = colour(n);
+                            g.fillRect((offset + i) * cellWidth,
+                                       c.height - (r + 1) * cellHeight,
+                                       Math.ceil(cellWidth),
+                                       Math.ceil(cellHeight));
+                        }
+                    });
+                }
+            });
+
+            // Each range is twice as wide as the previous one, so use a log
+            // scale that maps the top of range r to r + 1.
+            var lowest = bounds[0] / 2;
+
+            var y = function(ms) {
+                var r = Math.log(Math.max(ms, lowest) / lowest) / Math.LN2;
+                return c.height - Math.min(r, rows) * cellHeight;
+            };
+
+            var p = latest.percentiles.length - 1;
+
+            g.strokeStyle = "#225EA8";
+            g.beginPath();
+
+            var drawing = false;
+
+            $.each(series, function(i, l) {
+                if (l && l.counts.some(function(n) { return n > 0; })) {
+                    var px = (offset + i + 0.5) * cellWidth;
+                    var py = y(l.percentiles[p]);
+
+                    if (drawing) {
+                        g.lineTo(px, py);
+                    }
+                    else {
+                        g.moveTo(px, py);
+                        drawing = true;
+                    }
+                }
+                else {
+                    drawing = false;
+                }
+            });
+
+            g.stroke();
+
+            g.fillStyle = "#000000";
+            g.textBaseline = "middle";
+
+            for (var r = 0; r < bounds.length; r += 3) {
+                g.fillText(bounds[r] + " ms",
+                           2,
+                           c.height - (r + 1) * cellHeight);
+            }
+
+            g.fillStyle = "#225EA8";
+            g.textAlign = "right";
+            g.fillText("p" + latest.percentiles[p], c.width - 2, 8);
+        };
+
+        $(document).bind("DOMNodeRemoved", function(e) {
+            if (e.target == scope) {
+                notifyLatency = undefined;
+            }
+        });
+
+        notifyLatency = draw;
+        draw();
+    }
+
     function addDataPanels(scope) {
         var data_state = null;
         var process_threads = null;
@@ -560,12 +765,14 @@ jQuery(function($) {
     }
 
     cubismSampleListener(document);
+    latencySampleListener(document);
 
     function addDynamicBehaviour(scope) {
         addButtons(scope);
         addChangeDetection(scope);
         addLiveDataElements(scope);
         cubismCharts(scope);
+        latencyHeatmap(scope);
     }
 
     addDataPanels(document);
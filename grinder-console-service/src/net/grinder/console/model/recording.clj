@@ -27,9 +27,15 @@
             SampleModel
             SampleModel$Listener
             SampleModel$State$Value
-            SampleModelViews]
-           [net.grinder.statistics ExpressionView]
-           [java.text Format]))
+            SampleModelViews
+            SampleStore
+            SampleStore$Visitor]
+           [net.grinder.statistics
+            ExpressionView
+            ImmutableStatisticsSet
+            StatisticsServicesImplementation]
+           [java.text Format]
+           [java.util ArrayList]))
 
 (defonce ^:private latest-test-index (atom [nil nil]))
 
@@ -208,6 +214,154 @@
      :totals (process-statistics views totals formatter)}))
 
 
+(def latency-bounds
+  "The inclusive upper bounds of the ranges used by 'latency', in
+   microseconds. Each range is twice as wide as the previous one."
+  (vec (take 18 (iterate #(* 2 %) 250))))
+
+(def ^:private latency-percentiles [50 95 99])
+
+(let [timed-tests (-> (StatisticsServicesImplementation/getInstance)
+                    .getStatisticsIndexMap
+                    (.getLongSampleIndex "timedTests"))
+      bounds (long-array latency-bounds)]
+
+  (defn- latency-distribution
+    [^ImmutableStatisticsSet statistics]
+    {:counts (vec (.getHistogram statistics timed-tests bounds))
+     :percentiles (vec
+                    (for [p latency-percentiles]
+                      (/ (.getPercentile statistics timed-tests (double p))
+                         1000.0)))}))
+
+(defn latency
+  "Return a map describing the distribution of test times for the latest
+   sample. This is compact enough to send every sample interval, and can be
+   used to draw latency heat maps.
+
+   The result has the following keys:
+     :bounds      Vector of the inclusive upper bounds of the latency
+                  ranges, in milliseconds. There is a final range for longer
+                  test times.
+     :percentiles Vector of the percentiles that are provided.
+     :tests       Vector of test latency maps, one per test.
+     :totals      Latency map for the totals.
+
+   Each latency map has the following keys:
+     :test        The test number. Not present for the totals.
+     :counts      Vector of the number of tests in each range. There is one
+                  more count than there are bounds.
+     :percentiles Vector of the test times for each percentile, in
+                  milliseconds."
+  [^SampleModel sample-model]
+  (let [^ModelTestIndex test-index (get-test-index sample-model)]
+    {:bounds (vec (for [b latency-bounds] (/ b 1000.0)))
+     :percentiles latency-percentiles
+     :tests (vec
+              (for [i (range (.getNumberOfTests test-index))]
+                (assoc
+                  (latency-distribution
+                    (.getLastSampleStatistics test-index i))
+                  :test (.getNumber (.getTest test-index i)))))
+     :totals (latency-distribution (.getTotalLatestStatistics sample-model))}))
+
+(defn- parse-long-parameter
+  [v default]
+  (if v (Long/parseLong (str v)) default))
+
+(def ^:private max-history-intervals 1000)
+
+(defn history
+  "Return a map containing stored sample statistics for a window of sample
+   intervals, or nil if the console is not storing samples.
+
+   Accepts the following optional arguments:
+     :from    The first interval number, inclusive. Defaults to 0.
+     :to      The last interval number, exclusive. Defaults to the next
+              interval to be stored.
+     :level   The rollup level to read. Each record of level n holds
+              60^n intervals. Defaults to 0.
+     :test    If supplied, only return records for this test number.
+     :limit   The maximum number of intervals to read. A level n interval
+              is the period covered by one of its records. Defaults to, and
+              may not exceed, 1000.
+
+   Throws IllegalArgumentException if an argument is invalid.
+
+   The result has the following keys:
+     :columns Vector of column names, in same order as statistics vectors.
+     :next-interval The number of the next interval to be stored.
+     :intervals-per-record The number of intervals held in each record.
+     :samples Vector of sample maps, in interval order.
+     :next-from Only present if the limit was reached. The :from value
+              that reads the rest of the window.
+
+   Each sample map has the following keys:
+     :interval The interval number.
+     :time The start of the interval, in milliseconds since the Epoch.
+     :test The test number, or \"totals\".
+     :statistics Vector of statistics.
+"
+  [^SampleModel sample-model
+   ^SampleModelViews statistics-view
+   & {:keys [from to level test limit]}]
+
+  (if-let [^SampleStore store (.getSampleStore sample-model)]
+    (let [views (.getExpressionViews (.getIntervalStatisticsView
+                                       statistics-view))
+          level (parse-long-parameter level 0)
+          limit (parse-long-parameter limit max-history-intervals)
+          next-interval (.getNextInterval store)
+          test (when test (int (parse-long-parameter test nil)))
+          samples (ArrayList.)
+          intervals (atom 0)
+          last-interval (atom nil)
+          next-from (atom nil)
+          formatter (reify StatisticsFormatter
+                      (format-double [this v] v)
+                      (format-long [this v] v))]
+
+      (when-not (< -1 level SampleStore/NUMBER_OF_LEVELS)
+        (throw (IllegalArgumentException. (str "Unknown level " level))))
+
+      (when-not (< 0 limit (inc max-history-intervals))
+        (throw (IllegalArgumentException. (str "Invalid limit " limit))))
+
+      (.read store
+        (int level)
+        (parse-long-parameter from 0)
+        (parse-long-parameter to next-interval)
+        (reify SampleStore$Visitor
+          (next [this interval time t statistics]
+            (if (not= interval @last-interval)
+              (if (= @intervals limit)
+                ; Stop at the start of an interval, so the next request
+                ; can continue from it.
+                (reset! next-from interval)
+                (do
+                  (swap! intervals inc)
+                  (reset! last-interval interval))))
+
+            (when (and (nil? @next-from) (or (nil? test) (= test t)))
+              (.add samples
+                {:interval interval
+                 :time time
+                 :test (if (= t SampleStore/TOTALS) "totals" t)
+                 :statistics (process-statistics views
+                                                 statistics
+                                                 formatter)}))
+
+            (nil? @next-from))))
+
+      (let [result
+            {:columns (map (fn [^ExpressionView v] (.getDisplayName v)) views)
+             :next-interval next-interval
+             :intervals-per-record (.getIntervalsPerRecord store (int level))
+             :samples (vec samples)}]
+        (if-let [n @next-from]
+          (assoc result :next-from n)
+          result)))))
+
 (defn add-listener
   [key callback]
   (add-watch
@@ -74,6 +74,18 @@
     (GET "/status" [] (to-body (recording/status sm)))
     (GET "/data" [] (to-body (recording/data sm smv)))
     (GET "/data-latest" [] (to-body (recording/data sm smv :sample true)))
+    (GET "/history" [from to level test limit]
+         (try
+           (if-let [h (recording/history sm smv
+                                         :from from
+                                         :to to
+                                         :level level
+                                         :test test
+                                         :limit limit)]
+             (to-body h)
+             (to-body "Samples are not being stored" 404))
+           (catch IllegalArgumentException e
+             (to-body (.getMessage e) 400))))
     (POST "/start" [] (to-body (recording/start sm)))
     (POST "/stop" [] (to-body (recording/stop sm)))
     (POST "/zero" [] (to-body (recording/zero sm)))
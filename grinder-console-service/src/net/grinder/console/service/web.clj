@@ -31,7 +31,7 @@
     [net.grinder.translation.translate :only [t]]
     [net.grinder.console.web.ringutil
      :only [root-relative-url] :rename {root-relative-url rr}]
-    [org.httpkit.server :only [with-channel send!]]
+    [org.httpkit.server :only [on-close send! with-channel]]
     [ring.middleware
      [params :only [wrap-params]]
      [keyword-params :only [wrap-keyword-params]]]
@@ -176,7 +176,13 @@
             (fn [i ^ExpressionView v] [(t v) i])
             (.getExpressionViews
               (.getIntervalStatisticsView sample-model-views))))
-        ]])))
+        ]]
+
+      [:div {:id :latency}
+       [:canvas {:id :latency-heatmap}]
+       [:fieldset
+        [:legend (t :console.term/test)]
+        (drop-down :latency-test [[(t :console.term/total) ""]])]])))
 
 (defn- render-text-field
   [k v d & [attributes]]
@@ -362,10 +368,16 @@
             (livedata/push :statistics
               (render-data-table sample-model sample-model-views))
 
-            (livedata/push :sample
-              (assoc
-                (recording/data sample-model sample-model-views :sample true)
-                :timestamp (System/currentTimeMillis))))]
+            (let [timestamp (System/currentTimeMillis)]
+              (livedata/push :sample
+                (assoc
+                  (recording/data sample-model sample-model-views :sample true)
+                  :timestamp timestamp))
+
+              (livedata/push :latency
+                (assoc
+                  (recording/latency sample-model)
+                  :timestamp timestamp))))]
 
     (recording/add-listener :key push-recording-data)
     (push-recording-data nil))
@@ -382,6 +394,24 @@
           ch
           (livedata/poll (fn [d] (send! ch d)) kts)))
 
+      (GET "/stream" [k :as request]
+        ; Server-sent events. Each event carries values in the same form
+        ; as a poll response.
+        (with-channel
+          request
+          ch
+          (send! ch
+                 {:status 200
+                  :headers {"Content-Type" "text/event-stream"
+                            "Cache-Control" "no-cache"}
+                  :body ""}
+                 false)
+          (let [cancel (livedata/subscribe
+                         (fn [vs]
+                           (send! ch (ringutil/event-stream-message vs) false))
+                         (if (string? k) [k] k))]
+            (on-close ch (fn [_status] (cancel))))))
+
       (->
         (apply routes
           (for [[section {:keys [render-fn]}] sections :when render-fn]
@@ -29,7 +29,11 @@
    Clients `poll`, supplying a list of key/token pairs, and a callback
    function. The callback is invoked asynchronously or synchronously,
    depending on whether all the tokens are current. See `poll` for more
-   details."
+   details.
+
+   Alternatively, clients can `subscribe` to a list of keys to receive
+   every subsequent value, which avoids re-polling for streaming
+   connections."
 
   (:use
     [net.grinder.console.web.ringutil :only [json-response]])
@@ -108,11 +112,16 @@
 
               (keys cbs-for-key)))))
 
+(defn- make-values [values]
+  (for [[k v s] values] {:key k :value v :next s}))
+
 (defn- make-response [values]
-  (json-response
-    (for [[k v s] values] {:key k :value v :next s})))
+  (json-response (make-values values)))
+
+(let [last-data (atom {})
 
-(let [last-data (atom {})]
+      ; Holds {k {id callback}}
+      subscribers (atom {})]
 
   (defn poll
     "Register a single-use callback for a list of `[key token]` pairs.
@@ -147,6 +156,36 @@
         (register-callback (map first kwts) callback)
       )))
 
+  (defn subscribe
+    "Register a callback for every value pushed for the keys `ks`.
+
+     The callback is invoked synchronously with the current values of the
+     keys that have one, then asynchronously with each new value. It is
+     passed a sequence of maps with the keys :key, :value, and :next, in
+     the same form as a `poll` response.
+
+     Returns a function that cancels the subscription."
+    [callback ks]
+
+    (log/debugf "(subscribe %s)" ks)
+
+    (let [kws (map keyword ks)
+          id (gensym)]
+
+      (swap! subscribers
+        (fn [s] (reduce #(assoc-in %1 [%2 id] callback) s kws)))
+
+      (let [current (for [k kws
+                          :let [v (@last-data k)]
+                          :when v]
+                      [k v (get-token k)])]
+        (when (not-empty current)
+          (callback (make-values current))))
+
+      (fn []
+        (swap! subscribers
+          (fn [s] (reduce #(update-in %1 [%2] dissoc id) s kws))))))
+
   (defn push
     "Send `data` to all clients listening to key `k`."
     [k data]
@@ -155,8 +194,13 @@
 
       (swap! last-data assoc kkw data)
 
-      (let [r (make-response [[kkw data (next-token kkw)]])]
+      (let [t (next-token kkw)
+            r (make-response [[kkw data t]])]
         (doseq [cb (remove-callbacks kkw)]
           (log/debugf "async response to %s with %s" cb r)
-          (cb r))))))
+          (cb r))
+
+        (let [vs (make-values [[kkw data t]])]
+          (doseq [cb (vals (@subscribers kkw))]
+            (cb vs)))))))
 
@@ -61,6 +61,11 @@
     (content-type "application/json")
     (no-cache)))
 
+(defn event-stream-message
+  "Format a clojure structure as a server-sent event with a JSON payload."
+  [c]
+  (str "data: " (json/generate-string c) "\n\n"))
+
 (defn spy [handler spyname]
   "Log requests and responses."
   (fn [request]
@@ -34,7 +34,8 @@
             SampleModel$State
             SampleModel$State$Value
             SampleModelViews
-            SampleModelImplementation]
+            SampleModelImplementation
+            SampleStore]
            [net.grinder.statistics
             StatisticsServices
             StatisticsServicesImplementation]
@@ -42,6 +43,8 @@
             Translations]
            [net.grinder.util
             SignificantFigureFormat]
+           [java.io
+            File]
            [java.util
             Timer]))
 
@@ -125,7 +128,9 @@
       (is (= [] tests))
       (is (not (nil? totals)))
       (is (= ["Tests" "Errors" "Mean Test Time (ms)"
-              "Test Time Standard Deviation (ms)" "TPS"] columns)))))
+              "Test Time Standard Deviation (ms)" "Median Test Time (ms)"
+              "Test Time 95th Percentile (ms)" "Test Time 99th Percentile (ms)"
+              "TPS"] columns)))))
 
 (deftest test-data-uninitialised
   (let [sm (reify SampleModel)]
@@ -153,50 +158,133 @@
                           (make-test 2 "test two")])
 
     (let [{:keys [tests columns status totals]} (recording/data sm sv)]
-      (is (= "[0 0 NaN 0.0 NaN]" (str (doall totals))))
+      (is (= "[0 0 NaN 0.0 0.0 0.0 0.0 NaN]" (str (doall totals))))
       (is (= ["Tests" "Errors" "Mean Test Time (ms)"
-              "Test Time Standard Deviation (ms)" "TPS"] columns))
+              "Test Time Standard Deviation (ms)" "Median Test Time (ms)"
+              "Test Time 95th Percentile (ms)" "Test Time 99th Percentile (ms)"
+              "TPS"] columns))
       (is (= 2 (count tests)))
       (let [{:keys [test description statistics]} (first tests)]
         (is (= 1 test))
         (is (= "test one" description))
-        (is (= "[0 0 NaN 0.0 NaN]" (str statistics))))
+        (is (= "[0 0 NaN 0.0 0.0 0.0 0.0 NaN]" (str statistics))))
       (let [{:keys [test description statistics]} (second tests)]
         (is (= 2 test))
         (is (= "test two" description))
-        (is (= "[0 0 NaN 0.0 NaN]" (str statistics)))))
+        (is (= "[0 0 NaN 0.0 0.0 0.0 0.0 NaN]" (str statistics)))))
 
     (let [{:keys [tests columns status totals]}
           (recording/data sm sv :sample true)]
-      (is (= "[0 0]" (str (doall totals))))
+      (is (= "[0.0 0]" (str (doall totals))))
       (is (= ["Test time" "Errors"] columns))
       (is (= 2 (count tests)))
       (let [{:keys [test description statistics]} (first tests)]
         (is (= 1 test))
         (is (= "test one" description))
-        (is (= "[0 0]" (str statistics))))
+        (is (= "[0.0 0]" (str statistics))))
       (let [{:keys [test description statistics]} (second tests)]
         (is (= 2 test))
         (is (= "test two" description))
-        (is (= "[0 0]" (str statistics)))))
+        (is (= "[0.0 0]" (str statistics)))))
 
     (let [{:keys [tests columns status totals]}
           (recording/data sm sv :web true
             )]
-      (is (= ["0" "0" "" "0.00" ""] (doall totals)))
+      (is (= ["0" "0" "" "0.00" "0.00" "0.00" "0.00" ""] (doall totals)))
       (is (= ["console.statistic/Tests"
               "console.statistic/Errors"
               "console.statistic/Mean-Test-Time-ms"
               "console.statistic/Test-Time-Standard-Deviation-ms"
+              "console.statistic/Median-Test-Time-ms"
+              "console.statistic/Test-Time-95th-Percentile-ms"
+              "console.statistic/Test-Time-99th-Percentile-ms"
               "console.statistic/TPS"] columns))
       (is (= 2 (count tests)))
       (let [{:keys [test description statistics]} (first tests)]
         (is (= 1 test))
         (is (= "test one" description))
-        (is (= ["0" "0" "" "0.00" ""] statistics)))
+        (is (= ["0" "0" "" "0.00" "0.00" "0.00" "0.00" ""] statistics)))
       (let [{:keys [test description statistics]} (second tests)]
         (is (= 2 test))
         (is (= "test two" description))
-        (is (= ["0" "0" "" "0.00" ""] statistics))))
+        (is (= ["0" "0" "" "0.00" "0.00" "0.00" "0.00" ""] statistics))))
 
     )))
+
+(deftest test-history-not-stored
+  (let [sm (reify SampleModel
+             (getSampleStore [this] nil))]
+    (is (nil? (recording/history sm (make-smv 3))))))
+
+(deftest test-history
+  (let [d (doto (File/createTempFile "grindertest" "store") (.delete))
+        store (SampleStore. d ss)
+        sm (reify SampleModel
+             (getSampleStore [this] store))
+        sv (make-smv 3)]
+    (try
+      (.append store 1000 10 {(int 1) s1 (int SampleStore/TOTALS) s1})
+      (.append store 1010 10 {(int 2) s1})
+
+      (let [{:keys [columns next-interval intervals-per-record samples]}
+            (recording/history sm sv)]
+        (is (= ["Test time" "Errors"] columns))
+        (is (= 2 next-interval))
+        (is (= 1 intervals-per-record))
+        (is (= [[0 1000 1] [0 1000 "totals"] [1 1010 2]]
+               (map (juxt :interval :time :test) samples)))
+        (is (= [0.0 0] (:statistics (first samples)))))
+
+      (is (= [[0 1]]
+             (map (juxt :interval :test)
+                  (:samples (recording/history sm sv :test "1")))))
+
+      (is (= [[1 2]]
+             (map (juxt :interval :test)
+                  (:samples (recording/history sm sv :from "1" :to "5")))))
+
+      (is (= []
+             (:samples (recording/history sm sv :level "1"))))
+
+      (is (nil? (:next-from (recording/history sm sv))))
+
+      (let [{:keys [samples next-from]} (recording/history sm sv :limit "1")]
+        (is (= [[0 1] [0 "totals"]] (map (juxt :interval :test) samples)))
+        (is (= 1 next-from)))
+
+      (are [level limit]
+           (thrown? IllegalArgumentException
+                    (recording/history sm sv :level level :limit limit))
+           "-1" nil
+           "3" nil
+           "x" nil
+           nil "0"
+           nil "1001")
+
+      (finally
+        (.close store)
+        (doseq [^File f (reverse (file-seq d))] (.delete f))))))
+
+(deftest test-latency
+  (with-console-properties cp f
+    (let [sm (SampleModelImplementation.
+               cp
+               ss
+               (make-null-timer)
+               (reify Translations
+                 (translate [this s _i] s))
+               nil)]
+
+      (recording/initialise sm)
+
+      (.registerTests sm [(make-test 1 "test one")
+                          (make-test 2 "test two")])
+
+      (let [{:keys [bounds percentiles tests totals]} (recording/latency sm)]
+        (is (= 18 (count bounds)))
+        (is (= 0.25 (first bounds)))
+        (is (= [50 95 99] percentiles))
+        (is (= [1 2] (map :test tests)))
+        (is (= (repeat 19 0) (:counts totals)))
+        (is (= [0.0 0.0 0.0] (:percentiles totals)))
+        (is (= (repeat 19 0) (:counts (first tests))))))))
@@ -81,6 +81,7 @@
        :get "/recording/status" recording/status [:sample-model]
        :get "/recording/data" recording/data [:sample-model :sample-model-views]
        :get "/recording/data-latest" recording/data [:sample-model :sample-model-views :sample true]
+       :get "/recording/history" recording/history [:sample-model :sample-model-views :from nil :to nil :level nil :test nil :limit nil]
        :post "/recording/start" recording/start [:sample-model]
        :post "/recording/stop" recording/stop [:sample-model]
        :post "/recording/zero" recording/zero [:sample-model]
@@ -112,6 +113,14 @@
     {:foo :bah} {:foo :bah}
     {"foo" :bah} {:foo :bah}))
 
+(deftest history-bad-request
+  (with-redefs [recording/history
+                (fn [& _] (throw (IllegalArgumentException. "Unknown level 9")))]
+    (is (= 400
+           (:status (check-route {:request-method :get
+                                  :uri "/recording/history"
+                                  :params {:level "9"}}))))))
+
 (deftest unknown-routes
   (are [method uri]
        (is (= 404
@@ -192,3 +192,30 @@
         (is (= "application/json" ((:headers r) "Content-Type")))
         (is (= [{"key" (str k2) "value" msg3 "next" "2"}]
               (json/decode (:body r))))))))
+
+(deftest subscribe
+  (with-no-logging
+    (let [k1 (gensym)
+          k2 (gensym)
+          msg1 "Gone to earth"
+          msg2 "Sweet thing"
+          msg3 "Nothing left"
+          rh (result-holder)]
+
+      (ld/push k1 msg1)
+
+      ; Current values are delivered synchronously.
+      (let [cancel (ld/subscribe (adder rh) [(str k1) (str k2)])]
+        (is (= [{:key (keyword k1) :value msg1 :next "1"}] (one rh)))
+
+        ; Every subsequent value is delivered, without re-subscribing.
+        (ld/push k2 msg2)
+        (is (= [{:key (keyword k2) :value msg2 :next "1"}] (one rh)))
+
+        (ld/push k1 msg3)
+        (is (= [{:key (keyword k1) :value msg3 :next "2"}] (one rh)))
+
+        (cancel)
+
+        (ld/push k1 msg1)
+        (none rh)))))
@@ -53,3 +53,7 @@
   (hu/with-base-url "abc/def"
     (is (= "abc/def/foo" (ru/root-relative-url "foo")))
     (is (= "abc/def/foo" (ru/root-relative-url "/foo")))))
+
+(deftest event-stream-message
+  (is (= "data: [{\"key\":\"value\"}]\n\n"
+         (ru/event-stream-message [{:key "value"}]))))
@@ -0,0 +1,182 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.grinder.common.GrinderException;
+import net.grinder.datalog.TimeBucketedStatistics;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.util.AbstractMainClass;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Summarises worker process data logs, producing the standard summary
+ * statistics for each test, for each time bucket.
+ *
+ * @author Philip Aston
+ */
+public final class DataLogAnalyser extends AbstractMainClass {
+
+  private static final String USAGE =
+    "  java " + DataLogAnalyser.class.getName() +
+    " <options> <data log>..." +
+    "\n\n" +
+    "Options:" +
+    "\n  [-bucket <seconds>]          Length of each time bucket" +
+    "\n                               (default 60)." +
+    "\n  [-threads <n>]               Number of threads used to parse" +
+    "\n                               the logs (default is the number of" +
+    "\n                               processors)." +
+    "\n  [-output <file>]             Write the results to a file rather" +
+    "\n                               than the standard output." +
+    "\n\n" +
+    "Text and binary data logs are accepted. The results are comma " +
+    "separated values." +
+    "\n\n";
+
+  private static final int CHUNK_SIZE = 32 * 1024 * 1024;
+
+  /**
+   * Entry point.
+   *
+   * @param args Command line arguments.
+   */
+  public static void main(String[] args) {
+
+    final Logger logger = LoggerFactory.getLogger("datalog");
+
+    try {
+      final DataLogAnalyser analyser = new DataLogAnalyser(args, logger);
+      analyser.run();
+    }
+    catch (LoggedInitialisationException e) {
+      System.exit(1);
+    }
+    catch (Throwable e) {
+      logger.error(e.getMessage(), e);
+      System.exit(2);
+    }
+
+    System.exit(0);
+  }
+
+  private final List<File> m_inputFiles = new ArrayList<File>();
+  private long m_bucketLength = 60000;
+  private int m_threads = Runtime.getRuntime().availableProcessors();
+  private File m_outputFile;
+
+  private DataLogAnalyser(String[] args, Logger logger)
+    throws GrinderException {
+    super(logger, USAGE);
+
+    try {
+      for (int i = 0; i < args.length; ++i) {
+        if ("-bucket".equalsIgnoreCase(args[i])) {
+          m_bucketLength = Long.parseLong(args[++i]) * 1000;
+        }
+        else if ("-threads".equalsIgnoreCase(args[i])) {
+          m_threads = Integer.parseInt(args[++i]);
+        }
+        else if ("-output".equalsIgnoreCase(args[i])) {
+          m_outputFile = new File(args[++i]);
+        }
+        else if (args[i].startsWith("-")) {
+          throw barfUsage();
+        }
+        else {
+          m_inputFiles.add(new File(args[i]));
+        }
+      }
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw barfUsage();
+    }
+    catch (NumberFormatException e) {
+      throw barfUsage();
+    }
+
+    if (m_inputFiles.isEmpty() || m_bucketLength < 1 || m_threads < 1) {
+      throw barfUsage();
+    }
+
+    for (File file : m_inputFiles) {
+      if (!file.canRead()) {
+        throw barfError("Cannot read '" + file + "'.");
+      }
+    }
+  }
+
+  private void run() throws IOException {
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+
+    final net.grinder.datalog.DataLogAnalyser analyser =
+      new net.grinder.datalog.DataLogAnalyser(statisticsServices,
+                                              m_bucketLength,
+                                              m_threads,
+                                              CHUNK_SIZE);
+
+    final long startTime = System.currentTimeMillis();
+
+    final TimeBucketedStatistics statistics =
+      analyser.analyse(m_inputFiles);
+
+    getLogger().info("analysed {} records in {} ms",
+                     statistics.getNumberOfRecords(),
+                     System.currentTimeMillis() - startTime);
+
+    if (analyser.getMalformedLines() > 0) {
+      getLogger().warn("ignored {} malformed lines",
+                       analyser.getMalformedLines());
+    }
+
+    final Writer out;
+
+    if (m_outputFile != null) {
+      out = new BufferedWriter(new FileWriter(m_outputFile));
+    }
+    else {
+      out = new BufferedWriter(new OutputStreamWriter(System.out));
+    }
+
+    try {
+      statistics.write(statisticsServices.getSummaryStatisticsView(), out);
+    }
+    finally {
+      if (m_outputFile != null) {
+        out.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import net.grinder.common.GrinderException;
+import net.grinder.datalog.BinaryDataLogConverter;
+import net.grinder.datalog.BinaryDataLogReader;
+import net.grinder.util.AbstractMainClass;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Converts a binary data log, written by a worker process when the
+ * {@code grinder.binaryDataLog} property is set, to the standard text
+ * format.
+ *
+ * @author Philip Aston
+ */
+public final class DataLogConverter extends AbstractMainClass {
+
+  private static final String USAGE =
+    "  java " + DataLogConverter.class.getName() +
+    " <binary data log> [output file]" +
+    "\n\n" +
+    "The text data log is written to the output file, or to the standard " +
+    "output if no output file is given." +
+    "\n\n";
+
+  /**
+   * Entry point.
+   *
+   * @param args Command line arguments.
+   */
+  public static void main(String[] args) {
+
+    final Logger logger = LoggerFactory.getLogger("datalog");
+
+    try {
+      final DataLogConverter converter = new DataLogConverter(args, logger);
+      converter.run();
+    }
+    catch (LoggedInitialisationException e) {
+      System.exit(1);
+    }
+    catch (Throwable e) {
+      logger.error(e.getMessage(), e);
+      System.exit(2);
+    }
+
+    System.exit(0);
+  }
+
+  private final File m_inputFile;
+  private final File m_outputFile;
+
+  private DataLogConverter(String[] args, Logger logger)
+    throws GrinderException {
+    super(logger, USAGE);
+
+    if (args.length < 1 ||
+        args.length > 2 ||
+        args[0].startsWith("-")) {
+      throw barfUsage();
+    }
+
+    m_inputFile = new File(args[0]);
+    m_outputFile = args.length > 1 ? new File(args[1]) : null;
+
+    if (!m_inputFile.canRead()) {
+      throw barfError("Cannot read '" + m_inputFile + "'.");
+    }
+  }
+
+  private void run() throws IOException {
+    final BinaryDataLogReader reader =
+      new BinaryDataLogReader(new FileInputStream(m_inputFile));
+
+    try {
+      final Writer out;
+
+      if (m_outputFile != null) {
+        out = new BufferedWriter(new FileWriter(m_outputFile));
+      }
+      else {
+        out = new BufferedWriter(new OutputStreamWriter(System.out));
+      }
+
+      try {
+        final long records = new BinaryDataLogConverter(out).convert(reader);
+
+        if (m_outputFile != null) {
+          getLogger().info("converted {} records to {}",
+                           records, m_outputFile);
+        }
+      }
+      finally {
+        if (m_outputFile != null) {
+          out.close();
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+}
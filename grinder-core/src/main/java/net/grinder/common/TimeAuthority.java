@@ -41,4 +41,16 @@ public interface TimeAuthority {
    * uses <code>System.nanoTime()</code>.
    */
   long getTimeInMilliseconds();
+
+  /**
+   * Return the current value of a high resolution timer, in nanoseconds.
+   *
+   * <p>
+   * This is an abstraction over <code>System.nanoTime()</code>. The value has
+   * an arbitrary base time, so is only useful for measuring elapsed time.
+   * </p>
+   *
+   * @return The time.
+   */
+  long getTimeInNanoseconds();
 }
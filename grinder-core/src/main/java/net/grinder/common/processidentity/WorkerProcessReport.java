@@ -43,13 +43,13 @@ public interface WorkerProcessReport extends ProcessReport {
    *
    * @return The number of threads that are running.
    */
-  short getNumberOfRunningThreads();
+  int getNumberOfRunningThreads();
 
   /**
    * Get the maximum number of threads.
    *
    * @return The maximum number of threads.
    */
-  short getMaximumNumberOfThreads();
+  int getMaximumNumberOfThreads();
 }
 
@@ -25,8 +25,10 @@ import static net.grinder.communication.CommunicationDefaults.ALL_INTERFACES;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -70,6 +72,7 @@ public final class Acceptor {
   /** Guarded by m_socketSets. */
   private boolean m_isShutdown = false;
   private final TimeAuthority m_timeAuthority;
+  private final boolean m_selectable;
 
   /**
    * Constructor.
@@ -87,13 +90,38 @@ public final class Acceptor {
                   final int numberOfThreads,
                   final TimeAuthority timeAuthority)
     throws CommunicationException {
+    this(addressString, port, numberOfThreads, timeAuthority, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param addressString The TCP address to listen on. If equal to
+   * {@link CommunicationDefaults#ALL_INTERFACES}, listen on all interfaces.
+   * @param port The TCP port to listen to. 0 => use any free port.
+   * @param numberOfThreads Number of acceptor threads.
+   * @param timeAuthority Knows the time.
+   * @param selectable If {@code true}, accepted sockets have a
+   * {@link java.nio.channels.SocketChannel}, and messages must be read from
+   * them with a {@link SelectorServerReceiver} rather than a
+   * {@link ServerReceiver}.
+   * @throws CommunicationException If server socket could not be
+   * bound.
+   */
+  public Acceptor(final String addressString,
+                  final int port,
+                  final int numberOfThreads,
+                  final TimeAuthority timeAuthority,
+                  final boolean selectable)
+    throws CommunicationException {
 
     m_timeAuthority = timeAuthority;
+    m_selectable = selectable;
 
     if (addressString.length() > 0 && !ALL_INTERFACES.equals(addressString)) {
       try {
         m_serverSocket =
-          new ServerSocket(port, 50, InetAddress.getByName(addressString));
+          bind(InetAddress.getByName(addressString), port, selectable);
       }
       catch (final IOException e) {
         UncheckedInterruptedException.ioException(e);
@@ -103,7 +131,7 @@ public final class Acceptor {
     }
     else {
       try {
-        m_serverSocket = new ServerSocket(port, 50);
+        m_serverSocket = bind(null, port, selectable);
       }
       catch (final IOException e) {
         UncheckedInterruptedException.ioException(e);
@@ -120,6 +148,32 @@ public final class Acceptor {
     }
   }
 
+  private static ServerSocket bind(final InetAddress address,
+                                  final int port,
+                                  final boolean selectable)
+    throws IOException {
+
+    final ServerSocket serverSocket =
+      selectable ? ServerSocketChannel.open().socket() : new ServerSocket();
+
+    try {
+      serverSocket.bind(new InetSocketAddress(address, port), 50);
+    }
+    catch (final IOException e) {
+      try {
+        serverSocket.close();
+      }
+      catch (final IOException closeException) {
+        UncheckedInterruptedException.ioException(closeException);
+        // Ignore.
+      }
+
+      throw e;
+    }
+
+    return serverSocket;
+  }
+
   /**
    * Shut down this acceptor.
    *
@@ -171,6 +225,15 @@ public final class Acceptor {
     return resourcePools;
   }
 
+  /**
+   * Whether accepted sockets have a {@link java.nio.channels.SocketChannel}.
+   *
+   * @return {@code true} if and only if the sockets are selectable.
+   */
+  public boolean isSelectable() {
+    return m_selectable;
+  }
+
   /**
    * Get the port this Acceptor is listening on.
    *
@@ -356,15 +419,18 @@ public final class Acceptor {
         Connector.read(localSocket.getInputStream());
 
       final SocketWrapper socketWrapper =
-          new IdleAwareSocketWrapper(localSocket, m_timeAuthority);
+          new IdleAwareSocketWrapper(localSocket,
+                                     connectDetails.getCodec(),
+                                     m_timeAuthority);
       socketWrapper.setAddress(connectDetails.getAddress());
 
       // Possible minor race if the socket is closed between here...
       final ResourcePool.Closeable closeable =
         getSocketSet(connectDetails.getConnectionType()).add(socketWrapper);
 
-      // .. and the time a listener is registered. Will pick up such a zombie
-      // the next time we try to use the resource.
+      // .. and the time a listener is registered. Adding the socket informs
+      // the pool's listeners, and a selector based receiver can read and
+      // act on a close message before we get here, so check again.
       socketWrapper.addClosedListener(new SocketWrapper.ClosedListener() {
           @Override
           public void socketClosed() {
@@ -372,6 +438,10 @@ public final class Acceptor {
           }
         });
 
+      if (socketWrapper.isClosed()) {
+        closeable.close();
+      }
+
       // We did good.
       closeSocket = false;
     }
@@ -0,0 +1,139 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * An {@code OutputStream} that writes to a {@link SocketChannel}, whether or
+ * not the channel is in blocking mode.
+ *
+ * <p>
+ * The streams provided by {@code Socket} refuse to work with non-blocking
+ * channels. If the channel can't accept all the data immediately, this
+ * implementation waits using a temporary {@link Selector}, so callers see
+ * the usual blocking semantics.
+ * </p>
+ *
+ * <p>
+ * A peer that stops reading would otherwise block writers for ever. If a
+ * write can't complete within a timeout, the channel is closed and a
+ * {@link SocketTimeoutException} is thrown.
+ * </p>
+ *
+ * <p>
+ * Not thread safe; callers should synchronise on the stream.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class ChannelOutputStream extends OutputStream {
+
+  /** Default write timeout, in milliseconds. */
+  public static final long DEFAULT_WRITE_TIMEOUT = 30000;
+
+  private final SocketChannel m_channel;
+  private final long m_timeout;
+
+  /**
+   * Constructor.
+   *
+   * @param channel The channel to write to.
+   */
+  public ChannelOutputStream(SocketChannel channel) {
+    this(channel, DEFAULT_WRITE_TIMEOUT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param channel The channel to write to.
+   * @param timeout
+   *          How long a write can wait for the peer to accept data, in
+   *          milliseconds.
+   */
+  public ChannelOutputStream(SocketChannel channel, long timeout) {
+    m_channel = channel;
+    m_timeout = timeout;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void write(int b) throws IOException {
+    write(new byte[] { (byte)b }, 0, 1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void write(byte[] b, int off, int len) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+    final long deadline = System.currentTimeMillis() + m_timeout;
+
+    Selector selector = null;
+
+    try {
+      while (buffer.hasRemaining()) {
+        if (m_channel.write(buffer) == 0) {
+          final long remaining = deadline - System.currentTimeMillis();
+
+          if (remaining <= 0) {
+            // The peer has stopped reading. Part of a message might have
+            // been written, so the channel is no use to anyone else.
+            m_channel.close();
+            throw new SocketTimeoutException("Timed out writing to channel");
+          }
+
+          if (selector == null) {
+            selector = Selector.open();
+            m_channel.register(selector, SelectionKey.OP_WRITE);
+          }
+
+          selector.select(remaining);
+          selector.selectedKeys().clear();
+        }
+      }
+    }
+    finally {
+      if (selector != null) {
+        selector.close();
+      }
+    }
+  }
+
+  /**
+   * Close the channel.
+   *
+   * @throws IOException If an I/O error occurs.
+   */
+  @Override public void close() throws IOException {
+    m_channel.close();
+  }
+}
@@ -45,13 +45,14 @@ public final class ClientReceiver extends StreamReceiver {
   public static ClientReceiver connect(Connector connector, Address address)
     throws CommunicationException {
 
-    return new ClientReceiver(new SocketWrapper(connector.connect(address)));
+    return new ClientReceiver(new SocketWrapper(connector.connect(address),
+                                                connector.getCodec()));
   }
 
   private final SocketWrapper m_socketWrapper;
 
   private ClientReceiver(SocketWrapper socketWrapper) {
-    super(socketWrapper.getInputStream());
+    super(socketWrapper.getInputStream(), socketWrapper.getCodec());
     m_socketWrapper = socketWrapper;
   }
 
@@ -50,7 +50,8 @@ public final class ClientSender extends StreamSender implements BlockingSender {
   public static ClientSender connect(Connector connector, Address address)
     throws CommunicationException {
 
-    return new ClientSender(new SocketWrapper(connector.connect(address)));
+    return new ClientSender(new SocketWrapper(connector.connect(address),
+                                              connector.getCodec()));
   }
 
   /**
@@ -73,7 +74,7 @@ public final class ClientSender extends StreamSender implements BlockingSender {
   private ClientSender(SocketWrapper socketWrapper)
     throws CommunicationException {
 
-    super(socketWrapper.getOutputStream());
+    super(socketWrapper.getOutputStream(), socketWrapper.getCodec());
     m_socketWrapper = socketWrapper;
   }
 
@@ -113,7 +114,8 @@ public final class ClientSender extends StreamSender implements BlockingSender {
       send(messageRequiringResponse);
 
       final Receiver receiver =
-        new StreamReceiver(m_socketWrapper.getInputStream());
+        new StreamReceiver(m_socketWrapper.getInputStream(),
+                           m_socketWrapper.getCodec());
 
       result = receiver.waitForMessage();
     }
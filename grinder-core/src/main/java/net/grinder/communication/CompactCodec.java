@@ -0,0 +1,381 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import static net.grinder.util.ClassLoaderUtilities.loadRegisteredImplementations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.grinder.engine.common.EngineException;
+
+
+/**
+ * {@link MessageCodec} that uses hand-written binary encodings for high volume
+ * messages, and falls back to Java serialisation for everything else.
+ *
+ * <p>
+ * Each message is written as a frame: a one byte tag, a four byte payload
+ * length, then the payload. Reading the whole frame in one go avoids the
+ * per-message cost of building an {@code ObjectInputStream}, and means that
+ * a reader never consumes more than the frame.
+ * </p>
+ *
+ * <p>
+ * Tags are always less than 128, so the first byte of a frame can't be
+ * confused with the first byte of the Java serialisation stream header. This
+ * allows the codec to read messages that were written by
+ * {@link SerialisationCodec}.
+ * </p>
+ *
+ * <p>
+ * The payload length is read from the peer, so frames with a payload longer
+ * than a maximum are rejected rather than trusted. The maximum can be set
+ * with the {@value #MAXIMUM_PAYLOAD_LENGTH_PROPERTY} system property.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class CompactCodec implements MessageCodec {
+
+  /**
+   * Codec name. The suffix is the version of the frame format.
+   */
+  public static final String NAME = "compact-1";
+
+  /**
+   * System property that sets the maximum payload length, in bytes.
+   */
+  public static final String MAXIMUM_PAYLOAD_LENGTH_PROPERTY =
+    "grinder.communication.maximumMessageSize";
+
+  /**
+   * Default maximum payload length, in bytes.
+   */
+  public static final int DEFAULT_MAXIMUM_PAYLOAD_LENGTH = 128 * 1024 * 1024;
+
+  private static final int SERIALISED_TAG = 0;
+  private static final int KEEP_ALIVE_TAG = 1;
+  private static final int CLOSE_COMMUNICATION_TAG = 2;
+
+  private static final int SERIALISATION_STREAM_MAGIC_FIRST_BYTE = 0xAC;
+
+  private static final int HEADER_LENGTH = 5;
+
+  private final MessageCodec m_serialisationCodec = new SerialisationCodec();
+
+  private final int m_maximumPayloadLength;
+
+  private final Map<Class<?>, CompactMessageEncoding<?>> m_encodingsByClass =
+    new HashMap<Class<?>, CompactMessageEncoding<?>>();
+
+  private final CompactMessageEncoding<?>[] m_encodingsByTag =
+    new CompactMessageEncoding<?>[CompactMessageEncoding.MAXIMUM_TAG + 1];
+
+  /**
+   * Constructor.
+   *
+   * @throws CommunicationException
+   *           If the registered encodings could not be loaded.
+   */
+  public CompactCodec() throws CommunicationException {
+    this(loadEncodings(),
+         Integer.getInteger(MAXIMUM_PAYLOAD_LENGTH_PROPERTY,
+                            DEFAULT_MAXIMUM_PAYLOAD_LENGTH));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param encodings
+   *          Encodings to use, in addition to the built in encodings.
+   * @param maximumPayloadLength
+   *          Frames with longer payloads are rejected.
+   * @throws CommunicationException
+   *           If an encoding has an invalid or duplicate tag.
+   */
+  CompactCodec(List<CompactMessageEncoding<?>> encodings,
+               int maximumPayloadLength)
+    throws CommunicationException {
+
+    // Leave room for the header, so frame lengths can't overflow.
+    m_maximumPayloadLength =
+      Math.min(maximumPayloadLength, Integer.MAX_VALUE - HEADER_LENGTH);
+
+    addEncoding(new NoPayloadEncoding<KeepAliveMessage>(
+                  KEEP_ALIVE_TAG, KeepAliveMessage.class) {
+        @Override protected KeepAliveMessage create() {
+          return new KeepAliveMessage();
+        }
+      });
+
+    addEncoding(new NoPayloadEncoding<CloseCommunicationMessage>(
+                  CLOSE_COMMUNICATION_TAG, CloseCommunicationMessage.class) {
+        @Override protected CloseCommunicationMessage create() {
+          return new CloseCommunicationMessage();
+        }
+      });
+
+    for (CompactMessageEncoding<?> encoding : encodings) {
+      final int tag = encoding.getTag();
+
+      if (tag < CompactMessageEncoding.MINIMUM_TAG ||
+          tag > CompactMessageEncoding.MAXIMUM_TAG) {
+        throw new CommunicationException(
+          "Encoding " + encoding.getClass().getName() +
+          " has invalid tag " + tag);
+      }
+
+      addEncoding(encoding);
+    }
+  }
+
+  private void addEncoding(CompactMessageEncoding<?> encoding)
+    throws CommunicationException {
+
+    final int tag = encoding.getTag();
+
+    if (m_encodingsByTag[tag] != null ||
+        m_encodingsByClass.containsKey(encoding.getMessageClass())) {
+      throw new CommunicationException(
+        "Encoding " + encoding.getClass().getName() +
+        " clashes with " +
+        (m_encodingsByTag[tag] != null ?
+         m_encodingsByTag[tag] :
+         m_encodingsByClass.get(encoding.getMessageClass()))
+         .getClass().getName());
+    }
+
+    m_encodingsByTag[tag] = encoding;
+    m_encodingsByClass.put(encoding.getMessageClass(), encoding);
+  }
+
+  private static List<CompactMessageEncoding<?>> loadEncodings()
+    throws CommunicationException {
+
+    final List<CompactMessageEncoding<?>> result =
+      new ArrayList<CompactMessageEncoding<?>>();
+
+    try {
+      for (Class<?> c :
+           loadRegisteredImplementations(
+             CompactMessageEncoding.RESOURCE_NAME,
+             CompactMessageEncoding.class.getClassLoader())) {
+
+        final Object encoding = c.newInstance();
+
+        if (!(encoding instanceof CompactMessageEncoding<?>)) {
+          throw new CommunicationException(
+            c.getName() + " is not a CompactMessageEncoding");
+        }
+
+        result.add((CompactMessageEncoding<?>)encoding);
+      }
+    }
+    catch (EngineException e) {
+      throw new CommunicationException("Failed to load message encodings", e);
+    }
+    catch (InstantiationException e) {
+      throw new CommunicationException("Failed to load message encodings", e);
+    }
+    catch (IllegalAccessException e) {
+      throw new CommunicationException("Failed to load message encodings", e);
+    }
+
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public String getName() {
+    return NAME;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeMessage(Message message, OutputStream out)
+    throws IOException {
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+    // Leave space for the header.
+    bytes.write(new byte[HEADER_LENGTH]);
+
+    @SuppressWarnings("unchecked")
+    final CompactMessageEncoding<Message> encoding =
+      (CompactMessageEncoding<Message>)
+      (message != null ? m_encodingsByClass.get(message.getClass()) : null);
+
+    final int tag;
+
+    if (encoding != null) {
+      encoding.write(message, new DataOutputStream(bytes));
+      tag = encoding.getTag();
+    }
+    else {
+      m_serialisationCodec.writeMessage(message, bytes);
+      tag = SERIALISED_TAG;
+    }
+
+    final byte[] frame = bytes.toByteArray();
+    final int length = frame.length - HEADER_LENGTH;
+
+    frame[0] = (byte)tag;
+    frame[1] = (byte)(length >>> 24);
+    frame[2] = (byte)(length >>> 16);
+    frame[3] = (byte)(length >>> 8);
+    frame[4] = (byte)length;
+
+    out.write(frame);
+    out.flush();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Message readMessage(InputStream in)
+    throws IOException, ClassNotFoundException {
+
+    final int tag = in.read();
+
+    if (tag == -1) {
+      throw new EOFException();
+    }
+
+    if (tag == SERIALISATION_STREAM_MAGIC_FIRST_BYTE) {
+      // The peer used plain Java serialisation.
+      return m_serialisationCodec.readMessage(
+        new SequenceInputStream(
+          new ByteArrayInputStream(new byte[] { (byte)tag }), in));
+    }
+
+    final DataInputStream dataInput = new DataInputStream(in);
+    final int length = dataInput.readInt();
+
+    checkPayloadLength(length);
+
+    final byte[] payload = new byte[length];
+    dataInput.readFully(payload);
+
+    if (tag == SERIALISED_TAG) {
+      return m_serialisationCodec.readMessage(
+        new ByteArrayInputStream(payload));
+    }
+
+    final CompactMessageEncoding<?> encoding =
+      tag < m_encodingsByTag.length ? m_encodingsByTag[tag] : null;
+
+    if (encoding == null) {
+      throw new IOException("Unknown message encoding " + tag);
+    }
+
+    return encoding.read(
+      new DataInputStream(new ByteArrayInputStream(payload)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getFrameLength(ByteBuffer buffer) throws IOException {
+
+    final int position = buffer.position();
+
+    if (buffer.remaining() < 1) {
+      return 1;
+    }
+
+    final int tag = buffer.get(position) & 0xFF;
+
+    if (tag == SERIALISATION_STREAM_MAGIC_FIRST_BYTE) {
+      // The peer used plain Java serialisation.
+      return m_serialisationCodec.getFrameLength(buffer);
+    }
+
+    if (buffer.remaining() < HEADER_LENGTH) {
+      return HEADER_LENGTH;
+    }
+
+    final int length = buffer.getInt(position + 1);
+
+    checkPayloadLength(length);
+
+    return HEADER_LENGTH + length;
+  }
+
+  private void checkPayloadLength(int length) throws IOException {
+    if (length < 0) {
+      throw new IOException("Corrupt message frame, length " + length);
+    }
+
+    if (length > m_maximumPayloadLength) {
+      throw new IOException(
+        "Message frame length " + length + " exceeds the maximum of " +
+        m_maximumPayloadLength + " bytes");
+    }
+  }
+
+  private abstract static class NoPayloadEncoding<T extends Message>
+    implements CompactMessageEncoding<T> {
+
+    private final int m_tag;
+    private final Class<T> m_messageClass;
+
+    protected NoPayloadEncoding(int tag, Class<T> messageClass) {
+      m_tag = tag;
+      m_messageClass = messageClass;
+    }
+
+    public int getTag() {
+      return m_tag;
+    }
+
+    public Class<T> getMessageClass() {
+      return m_messageClass;
+    }
+
+    public void write(T message, DataOutput out) {
+      // Nothing to write.
+    }
+
+    public T read(DataInput in) {
+      return create();
+    }
+
+    protected abstract T create();
+  }
+}
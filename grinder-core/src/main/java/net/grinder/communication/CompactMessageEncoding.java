@@ -0,0 +1,97 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * Hand-written binary encoding for a high volume {@link Message} class, used
+ * by the compact message codec in place of Java serialisation.
+ *
+ * <p>
+ * Implementations are registered by listing their class names in resource
+ * files called {@link #RESOURCE_NAME}, and must have a public no-argument
+ * constructor.
+ * </p>
+ *
+ * <p>
+ * Each encoding is identified on the wire by its tag. If the encoding of a
+ * message changes, the new encoding should be given a new tag rather than
+ * reusing the old one.
+ * </p>
+ *
+ * @param <T> The message type.
+ * @author Philip Aston
+ */
+public interface CompactMessageEncoding<T extends Message> {
+
+  /**
+   * Name of resources that list encoding implementations.
+   */
+  String RESOURCE_NAME = "META-INF/net.grinder.messageencoding";
+
+  /**
+   * Lowest tag that registered encodings can use. Lower values are reserved.
+   */
+  int MINIMUM_TAG = 16;
+
+  /**
+   * Highest tag that registered encodings can use.
+   */
+  int MAXIMUM_TAG = 127;
+
+  /**
+   * The tag that identifies this encoding on the wire.
+   *
+   * @return The tag, between {@link #MINIMUM_TAG} and {@link #MAXIMUM_TAG}.
+   */
+  int getTag();
+
+  /**
+   * The message class that this encoding handles. Messages of sub-classes are
+   * not handled.
+   *
+   * @return The message class.
+   */
+  Class<T> getMessageClass();
+
+  /**
+   * Write a message.
+   *
+   * @param message The message.
+   * @param out Where to write the message.
+   * @throws IOException If an I/O error occurs.
+   */
+  void write(T message, DataOutput out) throws IOException;
+
+  /**
+   * Read a message.
+   *
+   * @param in Where to read the message from.
+   * @return The message.
+   * @throws IOException If an I/O error occurs.
+   */
+  T read(DataInput in) throws IOException;
+}
@@ -43,6 +43,7 @@ public final class Connector {
   private final String m_hostString;
   private final int m_port;
   private final ConnectionType m_connectionType;
+  private final String m_codecName;
 
   /**
    * Constructor.
@@ -54,9 +55,26 @@ public final class Connector {
   public Connector(String hostString,
                    int port,
                    ConnectionType connectionType) {
+    this(hostString, port, connectionType, MessageCodecs.DEFAULT_NAME);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param hostString TCP address to connect to.
+   * @param port TCP port to connect to.
+   * @param connectionType Connection type.
+   * @param codecName The name of the {@link MessageCodec} to use for the
+   * connection.
+   */
+  Connector(String hostString,
+            int port,
+            ConnectionType connectionType,
+            String codecName) {
     m_hostString = hostString;
     m_port = port;
     m_connectionType = connectionType;
+    m_codecName = codecName;
   }
 
   /**
@@ -92,6 +110,7 @@ public final class Connector {
         new ObjectOutputStream(outputStream);
       objectStream.writeObject(m_connectionType);
       objectStream.writeObject(address);
+      objectStream.writeUTF(m_codecName);
       objectStream.flush();
       return socket;
     }
@@ -102,6 +121,18 @@ public final class Connector {
     }
   }
 
+  /**
+   * The codec used for connections made by this connector. The acceptor
+   * uses the codec named in the connection handshake, or rejects the
+   * connection if it does not support it.
+   *
+   * @return The codec.
+   * @throws CommunicationException If the codec is not supported.
+   */
+  MessageCodec getCodec() throws CommunicationException {
+    return MessageCodecs.forName(m_codecName);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -126,7 +157,8 @@ public final class Connector {
     return
       m_port == other.m_port &&
       m_connectionType.equals(other.m_connectionType) &&
-      m_hostString.equals(other.m_hostString);
+      m_hostString.equals(other.m_hostString) &&
+      m_codecName.equals(other.m_codecName);
   }
 
   /**
@@ -154,10 +186,14 @@ public final class Connector {
   static final class ConnectDetails {
     private final ConnectionType m_connectionType;
     private final Address m_address;
+    private final MessageCodec m_codec;
 
-    private ConnectDetails(ConnectionType connectionType, Address address) {
+    private ConnectDetails(ConnectionType connectionType,
+                           Address address,
+                           MessageCodec codec) {
       m_connectionType = connectionType;
       m_address = address;
+      m_codec = codec;
     }
 
     public ConnectionType getConnectionType() {
@@ -167,6 +203,10 @@ public final class Connector {
     public Address getAddress() {
       return m_address;
     }
+
+    public MessageCodec getCodec() {
+      return m_codec;
+    }
   }
 
   /**
@@ -183,7 +223,10 @@ public final class Connector {
       final ConnectionType type =
         (ConnectionType) objectInputStream.readObject();
       final Address address = (Address) objectInputStream.readObject();
-      return new ConnectDetails(type, address);
+      final String codecName = objectInputStream.readUTF();
+      return new ConnectDetails(type,
+                                address,
+                                MessageCodecs.forName(codecName));
     }
     catch (IOException e) {
       throw new CommunicationException("Could not read address details", e);
@@ -101,6 +101,16 @@ public final class FanOutServerSender extends AbstractFanOutSender {
     return ((SocketWrapper)resource).getOutputStream();
   }
 
+  /**
+   * Return the codec negotiated for a socket.
+   *
+   * @param resource The resource.
+   * @return The codec.
+   */
+  @Override MessageCodec getCodec(Resource resource) {
+    return ((SocketWrapper)resource).getCodec();
+  }
+
   /**
    * Return the address of a socket.
    *
@@ -36,6 +36,8 @@ import net.grinder.util.thread.ExecutorFactory;
  */
 public final class FanOutStreamSender extends AbstractFanOutSender {
 
+  private final MessageCodec m_codec = new SerialisationCodec();
+
   /**
    * Constructor.
    *
@@ -94,6 +96,16 @@ public final class FanOutStreamSender extends AbstractFanOutSender {
     return null;
   }
 
+  /**
+   * Streams are written using Java serialisation.
+   *
+   * @param resource The resource.
+   * @return The codec.
+   */
+  @Override MessageCodec getCodec(Resource resource) {
+    return m_codec;
+  }
+
   private static final class OutputStreamResource
           implements ResourcePool.Resource {
 
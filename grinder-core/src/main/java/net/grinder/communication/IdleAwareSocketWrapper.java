@@ -48,6 +48,8 @@ final class IdleAwareSocketWrapper extends SocketWrapper {
    *          Socket to wrap. If the caller maintains any references to the
    *          socket, if should synchronise access to the socket streams as
    *          described in {@link SocketWrapper}.
+   * @param codec
+   *          The codec used to read and write messages on the socket.
    * @param timeAuthority
    *          Something that knows the time.
    * @param idlePollTimeout
@@ -58,10 +60,11 @@ final class IdleAwareSocketWrapper extends SocketWrapper {
    *           If an error occurred.
    */
   public IdleAwareSocketWrapper(final Socket socket,
+                                final MessageCodec codec,
                                 final TimeAuthority timeAuthority)
     throws CommunicationException {
 
-    super(socket);
+    super(socket, codec);
 
     m_timeAuthority = timeAuthority;
     m_idleStart = -1;
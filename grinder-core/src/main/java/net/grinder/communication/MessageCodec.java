@@ -0,0 +1,102 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Strategy for writing {@link Message}s to, and reading them from, a stream.
+ *
+ * <p>
+ * Each end of a connection must use the same codec. The codec for a socket
+ * connection is chosen by the {@link Connector}, which sends its name as part
+ * of the connection handshake.
+ * </p>
+ *
+ * <p>
+ * Implementations must be thread safe, and must not read beyond the end of a
+ * message.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public interface MessageCodec {
+
+  /**
+   * Returned by {@link #getFrameLength} if the codec can't tell how long the
+   * next message is.
+   */
+  int UNKNOWN_FRAME_LENGTH = 0;
+
+  /**
+   * The name used to identify the codec during the connection handshake. The
+   * name should change whenever the encoding changes incompatibly.
+   *
+   * @return The name.
+   */
+  String getName();
+
+  /**
+   * Write a message to a stream, and flush the stream.
+   *
+   * @param message The message.
+   * @param out The stream.
+   * @throws IOException If the message could not be written.
+   */
+  void writeMessage(Message message, OutputStream out) throws IOException;
+
+  /**
+   * Read a single message from a stream. Blocks until a complete message is
+   * available.
+   *
+   * @param in The stream.
+   * @return The message.
+   * @throws IOException If the message could not be read.
+   * @throws ClassNotFoundException If the message class could not be loaded.
+   */
+  Message readMessage(InputStream in)
+    throws IOException, ClassNotFoundException;
+
+  /**
+   * Determine how many bytes must be available before the next message can
+   * be read, without consuming any of the buffer. This allows a non-blocking
+   * reader to wait until a message is complete before decoding it.
+   *
+   * <p>
+   * If the buffer doesn't yet hold enough of the message to tell its length,
+   * the result can be an underestimate, and the caller should ask again when
+   * more bytes are available.
+   * </p>
+   *
+   * @param buffer
+   *          Buffer holding the start of the message between its position and
+   *          its limit.
+   * @return The number of bytes, or {@link #UNKNOWN_FRAME_LENGTH}.
+   * @throws IOException
+   *           If the buffer does not hold the start of a valid message.
+   */
+  int getFrameLength(ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,84 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * The supported {@link MessageCodec}s.
+ *
+ * @author Philip Aston
+ */
+public final class MessageCodecs {
+
+  /**
+   * Name of the codec used by connectors unless otherwise specified.
+   */
+  public static final String DEFAULT_NAME = CompactCodec.NAME;
+
+  // Guarded by s_codecs.
+  private static final Map<String, MessageCodec> s_codecs =
+    new HashMap<String, MessageCodec>();
+
+  private MessageCodecs() {
+  }
+
+  /**
+   * Look up a codec by name.
+   *
+   * @param name
+   *          The codec name.
+   * @return The codec.
+   * @throws CommunicationException
+   *           If the codec is not supported, or could not be created.
+   */
+  public static MessageCodec forName(String name)
+    throws CommunicationException {
+
+    synchronized (s_codecs) {
+      final MessageCodec existing = s_codecs.get(name);
+
+      if (existing != null) {
+        return existing;
+      }
+
+      final MessageCodec codec;
+
+      if (SerialisationCodec.NAME.equals(name)) {
+        codec = new SerialisationCodec();
+      }
+      else if (CompactCodec.NAME.equals(name)) {
+        codec = new CompactCodec();
+      }
+      else {
+        throw new CommunicationException(
+          "Unsupported message codec '" + name + "'");
+      }
+
+      s_codecs.put(name, codec);
+
+      return codec;
+    }
+  }
+}
@@ -65,6 +65,17 @@ interface ResourcePool {
    */
   List<? extends Reservation> reserveAll();
 
+  /**
+   * Returns a reservation for a particular resource. Blocks until the
+   * resource can be reserved.
+   *
+   * @param resource The resource.
+   * @return The reservation, or {@code null} if the resource is not in the
+   *         pool, or has been closed. It is up to the caller to free or close
+   *         the resource.
+   */
+  Reservation reserve(Resource resource);
+
   /**
    * Close the resources currently in the pool. Resources can be closed
    * while reserved.
@@ -174,6 +174,52 @@ final class ResourcePoolImplementation implements ResourcePool {
     }
   }
 
+  /**
+   * Returns a reservation for a particular resource. Blocks until the
+   * resource can be reserved.
+   *
+   * @param resource The resource.
+   * @return The reservation, or {@code null} if the resource is not in the
+   *         pool, or has been closed. It is up to the caller to free or close
+   *         the resource.
+   */
+  public Reservation reserve(Resource resource) {
+
+    Reservable result = null;
+
+    synchronized (m_reservablesMutex) {
+      for (Reservable reservable : m_reservables) {
+        if (reservable.getResource() == resource) {
+          result = reservable;
+          break;
+        }
+      }
+    }
+
+    if (result == null) {
+      return null;
+    }
+
+    while (!result.reserve()) {
+      if (result.isClosed()) {
+        return null;
+      }
+
+      synchronized (m_reservableFreedMutex) {
+        try {
+          // Don't block for ever because the resource might have already
+          // been freed.
+          m_reservableFreedMutex.wait(1000);
+        }
+        catch (InterruptedException e) {
+          throw new UncheckedInterruptedException(e);
+        }
+      }
+    }
+
+    return result;
+  }
+
   /**
    * Close the resources currently in the pool. Resources can be closed
    * while reserved.
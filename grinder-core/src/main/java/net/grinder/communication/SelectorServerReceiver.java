@@ -0,0 +1,577 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import static net.grinder.communication.MessageCodec.UNKNOWN_FRAME_LENGTH;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.grinder.common.TimeAuthority;
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.communication.MessageQueue.ShutdownException;
+import net.grinder.communication.ResourcePool.Reservation;
+import net.grinder.communication.ResourcePool.Resource;
+import net.grinder.communication.ServerReceiver.SenderWithReservation;
+import net.grinder.util.thread.ExecutorFactory;
+import net.grinder.util.thread.InterruptibleRunnable;
+import net.grinder.util.thread.InterruptibleRunnableAdapter;
+
+
+/**
+ * Manages the receipt of messages from many clients using non-blocking I/O.
+ *
+ * <p>
+ * Unlike {@link ServerReceiver}, which dedicates threads to polling
+ * connections in turn, each connection is registered with one of a small
+ * number of {@link Selector}s. A selector thread only wakes when a connection
+ * has data, reads what is available into a per-connection buffer, and queues
+ * each complete message for retrieval using {@link #waitForMessage()}.
+ * </p>
+ *
+ * <p>
+ * Only works with connections accepted by a selectable {@link Acceptor}.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public final class SelectorServerReceiver implements Receiver {
+
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+
+  // Limits how much is read from a connection each time it is selected, so
+  // that a busy client can't starve the others that share its selector.
+  private static final int MAXIMUM_READ_PER_SELECTION = 64 * 1024;
+
+  private final MessageQueue m_messageQueue = new MessageQueue(true);
+  private final ExecutorService m_executor =
+    ExecutorFactory.createCachedThreadPool("SelectorServerReceiver");
+  private final TimeAuthority m_timeAuthority;
+
+  /**
+   * Constructor.
+   *
+   * @param timeAuthority
+   *          Knows the time.
+   */
+  public SelectorServerReceiver(TimeAuthority timeAuthority) {
+    m_timeAuthority = timeAuthority;
+  }
+
+  /**
+   * Registers a new {@link Acceptor} from which the
+   * {@code SelectorServerReceiver} should process messages.
+   *
+   * @param acceptor
+   *          Acceptor. Must be selectable.
+   * @param connectionTypes
+   *          Type of connections to listen for.
+   * @param numberOfSelectors
+   *          How many selector threads to dedicate to the Acceptor.
+   *          Connections are shared between the selectors in turn.
+   * @param idleCheckInterval
+   *          Time in milliseconds between checks for inactive connections.
+   * @param inactiveClientTimeOut
+   *          How long before we consider a client connection that presents no
+   *          data to be inactive, and close it.
+   *
+   * @exception CommunicationException
+   *              If this {@code SelectorServerReceiver} has been shutdown, or
+   *              the acceptor is not selectable.
+   */
+  public void receiveFrom(Acceptor acceptor,
+                          ConnectionType[] connectionTypes,
+                          int numberOfSelectors,
+                          long idleCheckInterval,
+                          long inactiveClientTimeOut)
+    throws CommunicationException {
+
+    if (connectionTypes.length == 0) {
+      // Nothing to do.
+      return;
+    }
+
+    if (!acceptor.isSelectable()) {
+      throw new CommunicationException("Acceptor is not selectable");
+    }
+
+    final SelectorLoop[] loops = new SelectorLoop[numberOfSelectors];
+
+    synchronized (this) {
+      m_messageQueue.checkIfShutdown();
+
+      for (int i = 0; i < numberOfSelectors; ++i) {
+        loops[i] = new SelectorLoop(idleCheckInterval, inactiveClientTimeOut);
+
+        m_executor.submit(new InterruptibleRunnableAdapter(loops[i]));
+      }
+    }
+
+    for (ConnectionType connectionType : connectionTypes) {
+      final ResourcePool socketSet = acceptor.getSocketSet(connectionType);
+      final Distributor distributor = new Distributor(loops, socketSet);
+
+      socketSet.addListener(distributor);
+
+      // Pick up any connections that were accepted before we added our
+      // listener. The distributor ignores duplicates.
+      for (Reservation reservation : socketSet.reserveAll()) {
+        distributor.resourceAdded(reservation.getResource());
+        reservation.free();
+      }
+    }
+  }
+
+  /**
+   * Block until a message is available, or another thread has called
+   * {@link #shutdown}. Typically called from a message dispatch loop.
+   *
+   * <p>Multiple threads can call this method, but only one thread
+   * will receive a given message.</p>
+   *
+   * @return The message or {@code null} if shut down.
+   * @throws CommunicationException If an error occurred receiving a message.
+   */
+  public Message waitForMessage() throws CommunicationException {
+
+    try {
+      return m_messageQueue.dequeue(true);
+    }
+    catch (ShutdownException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Shut down this receiver.
+   */
+  public synchronized void shutdown() {
+
+    m_messageQueue.shutdown();
+
+    m_executor.shutdownNow();
+  }
+
+  /**
+   * Shares new connections between the selector loops.
+   */
+  private static final class Distributor implements ResourcePool.Listener {
+    private final SelectorLoop[] m_loops;
+    private final ResourcePool m_socketSet;
+
+    // Guarded by m_registered.
+    private final Set<Resource> m_registered = new HashSet<Resource>();
+    private int m_next;
+
+    Distributor(SelectorLoop[] loops, ResourcePool socketSet) {
+      m_loops = loops;
+      m_socketSet = socketSet;
+    }
+
+    public void resourceAdded(Resource resource) {
+      final SelectorLoop loop;
+
+      synchronized (m_registered) {
+        if (!m_registered.add(resource)) {
+          return;
+        }
+
+        loop = m_loops[m_next++ % m_loops.length];
+      }
+
+      loop.register((SocketWrapper)resource, m_socketSet);
+    }
+
+    public void resourceClosed(Resource resource) {
+      synchronized (m_registered) {
+        m_registered.remove(resource);
+      }
+    }
+  }
+
+  private final class SelectorLoop implements InterruptibleRunnable {
+
+    private final Selector m_selector;
+    private final long m_idleCheckInterval;
+    private final long m_inactiveClientTimeOut;
+
+    private final Queue<Connection> m_pending =
+      new ConcurrentLinkedQueue<Connection>();
+
+    SelectorLoop(long idleCheckInterval, long inactiveClientTimeOut)
+      throws CommunicationException {
+
+      try {
+        m_selector = Selector.open();
+      }
+      catch (IOException e) {
+        UncheckedInterruptedException.ioException(e);
+        throw new CommunicationException("Failed to open selector", e);
+      }
+
+      m_idleCheckInterval = idleCheckInterval;
+      m_inactiveClientTimeOut = inactiveClientTimeOut;
+    }
+
+    void register(SocketWrapper socketWrapper, ResourcePool socketSet) {
+      m_pending.add(new Connection(socketWrapper, socketSet));
+      m_selector.wakeup();
+    }
+
+    public void interruptibleRun() {
+      try {
+        long lastIdleCheck = m_timeAuthority.getTimeInMilliseconds();
+
+        while (!Thread.currentThread().isInterrupted()) {
+          m_messageQueue.checkIfShutdown();
+
+          m_selector.select(m_idleCheckInterval);
+
+          registerPending();
+
+          final Iterator<SelectionKey> selected =
+            m_selector.selectedKeys().iterator();
+
+          while (selected.hasNext()) {
+            final SelectionKey key = selected.next();
+            selected.remove();
+
+            if (key.isValid()) {
+              ((Connection)key.attachment()).read();
+            }
+          }
+
+          final long now = m_timeAuthority.getTimeInMilliseconds();
+
+          if (now - lastIdleCheck >= m_idleCheckInterval) {
+            closeInactiveConnections(now);
+            lastIdleCheck = now;
+          }
+        }
+      }
+      catch (IOException e) {
+        UncheckedInterruptedException.ioException(e);
+        try {
+          m_messageQueue.queue(e);
+        }
+        catch (ShutdownException shutdownException) {
+          // Ignore.
+        }
+      }
+      catch (ShutdownException e) {
+        // We've been shutdown, exit this thread.
+      }
+      finally {
+        try {
+          m_selector.close();
+        }
+        catch (IOException e) {
+          UncheckedInterruptedException.ioException(e);
+          // Ignore.
+        }
+
+        // Ensure we're shutdown.
+        shutdown();
+      }
+    }
+
+    private void registerPending() throws ShutdownException {
+      Connection connection;
+
+      while ((connection = m_pending.poll()) != null) {
+        try {
+          connection.register(m_selector);
+        }
+        catch (ClosedChannelException e) {
+          // Connection has already gone away.
+        }
+        catch (IOException e) {
+          UncheckedInterruptedException.ioException(e);
+          connection.close();
+          m_messageQueue.queue(e);
+        }
+      }
+    }
+
+    private void closeInactiveConnections(long now) {
+      for (SelectionKey key : m_selector.keys()) {
+        final Connection connection = (Connection)key.attachment();
+
+        if (now - connection.getLastActivity() > m_inactiveClientTimeOut) {
+          connection.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Stream over the unread bytes of a buffer that records whether a reader
+   * asked for more data than was available. This allows an
+   * {@code EOFException} caused by an incomplete message to be distinguished
+   * from one caused by a corrupt message.
+   */
+  private static final class BufferInputStream extends ByteArrayInputStream {
+    private boolean m_exhausted;
+
+    BufferInputStream(ByteBuffer buffer) {
+      super(buffer.array(), buffer.position(), buffer.remaining());
+    }
+
+    @Override public synchronized int read() {
+      final int result = super.read();
+      m_exhausted |= result == -1;
+      return result;
+    }
+
+    @Override public synchronized int read(byte[] b, int off, int len) {
+      m_exhausted |= len > count - pos;
+      return super.read(b, off, len);
+    }
+
+    public boolean isExhausted() {
+      return m_exhausted;
+    }
+  }
+
+  /**
+   * Per-connection read state.
+   */
+  private final class Connection {
+    private final SocketWrapper m_socketWrapper;
+    private final ResourcePool m_socketSet;
+    private final SocketChannel m_channel;
+    private final MessageCodec m_codec;
+
+    private SelectionKey m_key;
+    private ByteBuffer m_buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    // The length of the partially read message at the start of m_buffer, if
+    // known.
+    private int m_frameLength = UNKNOWN_FRAME_LENGTH;
+
+    private long m_lastActivity;
+    private boolean m_closed;
+
+    Connection(SocketWrapper socketWrapper, ResourcePool socketSet) {
+      m_socketWrapper = socketWrapper;
+      m_socketSet = socketSet;
+      m_channel = socketWrapper.getChannel();
+      m_codec = socketWrapper.getCodec();
+      m_lastActivity = m_timeAuthority.getTimeInMilliseconds();
+    }
+
+    void register(Selector selector) throws IOException {
+      m_channel.configureBlocking(false);
+      m_key = m_channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    long getLastActivity() {
+      return m_lastActivity;
+    }
+
+    void read() throws ShutdownException {
+      try {
+        int bytesRead = 0;
+
+        // Process each read as it arrives, rather than draining the channel
+        // first. Anything left unread will cause the connection to be
+        // selected again.
+        while (!m_closed && bytesRead < MAXIMUM_READ_PER_SELECTION) {
+          ensureCapacity();
+
+          final int n = m_channel.read(m_buffer);
+
+          if (n < 0) {
+            close();
+            break;
+          }
+
+          if (n == 0) {
+            break;
+          }
+
+          bytesRead += n;
+          m_lastActivity = m_timeAuthority.getTimeInMilliseconds();
+
+          processMessages();
+        }
+      }
+      catch (CommunicationException e) {
+        close();
+        m_messageQueue.queue(e);
+      }
+      catch (IOException e) {
+        close();
+        UncheckedInterruptedException.ioException(e);
+        m_messageQueue.queue(e);
+      }
+      catch (ClassNotFoundException e) {
+        close();
+        m_messageQueue.queue(e);
+      }
+    }
+
+    private void ensureCapacity() {
+      final int capacity;
+
+      if (m_frameLength > m_buffer.capacity()) {
+        // Make room for the whole of the partially read message.
+        capacity = m_frameLength;
+      }
+      else if (!m_buffer.hasRemaining()) {
+        // The codec can't tell us how long the message is.
+        capacity = m_buffer.capacity() * 2;
+      }
+      else {
+        return;
+      }
+
+      final ByteBuffer larger = ByteBuffer.allocate(capacity);
+      m_buffer.flip();
+      larger.put(m_buffer);
+      m_buffer = larger;
+    }
+
+    private void processMessages()
+      throws IOException, ClassNotFoundException, CommunicationException {
+
+      m_buffer.flip();
+
+      try {
+        while (m_buffer.hasRemaining() && !m_closed) {
+          m_frameLength = m_codec.getFrameLength(m_buffer);
+
+          if (m_frameLength > m_buffer.remaining()) {
+            // Incomplete message, wait for more data.
+            break;
+          }
+
+          final BufferInputStream in = new BufferInputStream(m_buffer);
+
+          final Message message;
+
+          try {
+            message = m_codec.readMessage(in);
+          }
+          catch (EOFException e) {
+            if (m_frameLength == UNKNOWN_FRAME_LENGTH && in.isExhausted()) {
+              // Incomplete message, wait for more data. The codec can't tell
+              // us the length of the message, so we must parse it again.
+              break;
+            }
+
+            throw e;
+          }
+
+          m_buffer.position(m_buffer.limit() - in.available());
+          m_frameLength = UNKNOWN_FRAME_LENGTH;
+
+          process(message);
+        }
+      }
+      finally {
+        m_buffer.compact();
+      }
+
+      if (m_buffer.position() == 0 &&
+          m_buffer.capacity() > INITIAL_BUFFER_SIZE) {
+        // Don't hang on to large buffers.
+        m_buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+      }
+    }
+
+    private void process(Message message)
+      throws CommunicationException {
+
+      if (message instanceof CloseCommunicationMessage) {
+        close();
+        return;
+      }
+
+      if (message instanceof AddressAwareMessage) {
+        ((AddressAwareMessage)message).setAddress(
+          m_socketWrapper.getAddress());
+      }
+
+      if (message instanceof MessageRequiringResponse) {
+        // As with ServerReceiver, whatever handles the message takes
+        // responsibility for the reservation. Holding it prevents the
+        // response from being interleaved with messages written to the
+        // socket by a fan out sender.
+        final Reservation reservation = m_socketSet.reserve(m_socketWrapper);
+
+        if (reservation == null) {
+          // The socket has been closed.
+          close();
+          return;
+        }
+
+        ((MessageRequiringResponse)message).setResponder(
+          new SenderWithReservation(
+            new StreamSender(m_socketWrapper.getOutputStream(), m_codec),
+            reservation));
+      }
+
+      m_messageQueue.queue(message);
+    }
+
+    void close() {
+      if (!m_closed) {
+        m_closed = true;
+
+        if (m_key != null) {
+          m_key.cancel();
+        }
+
+        // Closing the socket wrapper tells the peer, which can block until
+        // the write times out if the peer has stopped reading. Don't hold up
+        // the selector's other connections.
+        final Runnable closer = new Runnable() {
+            public void run() {
+              m_socketWrapper.close();
+            }
+          };
+
+        try {
+          m_executor.execute(closer);
+        }
+        catch (RejectedExecutionException e) {
+          // We've been shut down.
+          closer.run();
+        }
+      }
+    }
+  }
+}
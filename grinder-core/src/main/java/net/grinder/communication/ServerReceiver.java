@@ -22,7 +22,6 @@
 package net.grinder.communication;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.concurrent.ExecutorService;
 
 import net.grinder.common.UncheckedInterruptedException;
@@ -221,10 +220,9 @@ public final class ServerReceiver implements Receiver {
               if (socketWrapper.hasData(m_inactiveClientTimeOut)) {
                 idle = false;
 
-                final ObjectInputStream objectStream =
-                  new ObjectInputStream(socketWrapper.getInputStream());
-
-                final Message message = (Message)objectStream.readObject();
+                final Message message =
+                  socketWrapper.getCodec().readMessage(
+                    socketWrapper.getInputStream());
 
                 if (message instanceof CloseCommunicationMessage) {
                   reservation.close();
@@ -245,7 +243,8 @@ public final class ServerReceiver implements Receiver {
 
                   messageRequiringResponse.setResponder(
                     new SenderWithReservation(
-                      new StreamSender(socketWrapper.getOutputStream()),
+                      new StreamSender(socketWrapper.getOutputStream(),
+                                       socketWrapper.getCodec()),
                       reservation));
 
                   m_messageQueue.queue(message);
@@ -306,12 +305,11 @@ public final class ServerReceiver implements Receiver {
    * </p>
    *
    */
-  private static final class SenderWithReservation implements Sender {
+  static final class SenderWithReservation implements Sender {
     private final Sender m_delegateSender;
     private final Reservation m_reservation;
 
-    private SenderWithReservation(Sender delegateSender,
-                                  Reservation reservation) {
+    SenderWithReservation(Sender delegateSender, Reservation reservation) {
       m_delegateSender = delegateSender;
       m_reservation = reservation;
     }
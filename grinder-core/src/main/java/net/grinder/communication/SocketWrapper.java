@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 import net.grinder.common.Closer;
 import net.grinder.util.ListenerSupport;
@@ -49,6 +50,7 @@ class SocketWrapper implements ResourcePool.Resource {
   private final ConnectionIdentity m_connectionIdentity;
   private final InputStream m_inputStream;
   private final OutputStream m_outputStream;
+  private final MessageCodec m_codec;
 
   private final ListenerSupport<ClosedListener> m_closedListeners =
     new ListenerSupport<ClosedListener>();
@@ -67,15 +69,26 @@ class SocketWrapper implements ResourcePool.Resource {
    *          Socket to wrap. If the caller maintains any references to the
    *          socket, if should synchronise access to the socket streams as
    *          described in {@link SocketWrapper}.
+   * @param codec
+   *          The codec used to read and write messages on the socket.
    * @throws CommunicationException
    *           If an error occurred.
    */
-  public SocketWrapper(Socket socket) throws CommunicationException {
+  public SocketWrapper(Socket socket, MessageCodec codec)
+    throws CommunicationException {
     m_socket = socket;
+    m_codec = codec;
 
     try {
       m_inputStream = m_socket.getInputStream();
-      m_outputStream = m_socket.getOutputStream();
+
+      // Socket streams can't be used once a channel is in non-blocking
+      // mode.
+      final SocketChannel channel = m_socket.getChannel();
+
+      m_outputStream =
+        channel != null ?
+          new ChannelOutputStream(channel) : m_socket.getOutputStream();
 
       m_connectionIdentity =
         new ConnectionIdentity(m_socket.getInetAddress(),
@@ -102,7 +115,7 @@ class SocketWrapper implements ResourcePool.Resource {
       // peer has closed the connection. We make an effort to tell the
       // peer.
       synchronized (m_outputStream) {
-        new StreamSender(m_outputStream).shutdown();
+        new StreamSender(m_outputStream, m_codec).shutdown();
       }
 
       Closer.close(m_socket);
@@ -129,6 +142,11 @@ class SocketWrapper implements ResourcePool.Resource {
    * See note in {@link SocketWrapper} class documentation about the need
    * to synchronise around any usage of the returned {@code InputStream}.
    *
+   * <p>
+   * The input stream can't be used if the socket's channel has been put
+   * into non-blocking mode.
+   * </p>
+   *
    * @return The input stream.
    */
   public InputStream getInputStream() {
@@ -145,6 +163,24 @@ class SocketWrapper implements ResourcePool.Resource {
     return m_outputStream;
   }
 
+  /**
+   * Return the socket's channel.
+   *
+   * @return The channel, or {@code null} if the socket has no channel.
+   */
+  public SocketChannel getChannel() {
+    return m_socket.getChannel();
+  }
+
+  /**
+   * Return the codec used to read and write messages on the socket.
+   *
+   * @return The codec.
+   */
+  public MessageCodec getCodec() {
+    return m_codec;
+  }
+
   /**
    * Socket event notification interface.
    */
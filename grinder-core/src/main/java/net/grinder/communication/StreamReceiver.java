@@ -23,7 +23,6 @@ package net.grinder.communication;
 
 import java.io.InputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 
 import net.grinder.common.Closer;
 import net.grinder.common.UncheckedInterruptedException;
@@ -38,6 +37,7 @@ public class StreamReceiver implements Receiver {
 
   private final InputStream m_inputStream;
   private final Object m_streamLock;
+  private final MessageCodec m_codec;
 
   // Guarded by m_streamLock.
   private boolean m_shutdown = false;
@@ -48,7 +48,17 @@ public class StreamReceiver implements Receiver {
    * @param inputStream The input stream to read from.
    */
   public StreamReceiver(InputStream inputStream) {
-    this(inputStream, inputStream);
+    this(inputStream, new SerialisationCodec());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param inputStream The input stream to read from.
+   * @param codec The codec used to read messages.
+   */
+  StreamReceiver(InputStream inputStream, MessageCodec codec) {
+    this(inputStream, inputStream, codec);
   }
 
   /**
@@ -56,10 +66,14 @@ public class StreamReceiver implements Receiver {
    *
    * @param inputStream The input stream to read from.
    * @param streamLock Lock on this object around all stream operations.
+   * @param codec The codec used to read messages.
    */
-  private StreamReceiver(InputStream inputStream, Object streamLock) {
+  private StreamReceiver(InputStream inputStream,
+                         Object streamLock,
+                         MessageCodec codec) {
     m_inputStream = inputStream;
     m_streamLock = streamLock;
+    m_codec = codec;
   }
 
   /**
@@ -80,10 +94,7 @@ public class StreamReceiver implements Receiver {
           return null;
         }
 
-        final ObjectInputStream objectStream =
-          new ObjectInputStream(m_inputStream);
-
-        message = (Message)objectStream.readObject();
+        message = m_codec.readMessage(m_inputStream);
 
         if (message instanceof CloseCommunicationMessage) {
           shutdown();
@@ -37,6 +37,7 @@ public class StreamSender extends AbstractSender {
 
   private final OutputStream m_outputStream;
   private final Object m_streamLock;
+  private final MessageCodec m_codec;
 
   /**
    * Constructor.
@@ -44,7 +45,17 @@ public class StreamSender extends AbstractSender {
    * @param outputStream The output stream to write to.
    */
   public StreamSender(OutputStream outputStream) {
-    this(outputStream, outputStream);
+    this(outputStream, new SerialisationCodec());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param outputStream The output stream to write to.
+   * @param codec The codec used to write messages.
+   */
+  StreamSender(OutputStream outputStream, MessageCodec codec) {
+    this(outputStream, outputStream, codec);
   }
 
   /**
@@ -52,10 +63,14 @@ public class StreamSender extends AbstractSender {
    *
    * @param outputStream The output stream to write to.
    * @param streamLock Lock on this object around all stream operations.
+   * @param codec The codec used to write messages.
    */
-  private StreamSender(OutputStream outputStream, Object streamLock) {
+  private StreamSender(OutputStream outputStream,
+                       Object streamLock,
+                       MessageCodec codec) {
     m_outputStream = new BufferedOutputStream(outputStream);
     m_streamLock = streamLock;
+    m_codec = codec;
   }
 
   /**
@@ -67,7 +82,7 @@ public class StreamSender extends AbstractSender {
   @Override
   protected final void writeMessage(Message message) throws IOException {
     synchronized (m_streamLock) {
-      writeMessageToStream(message, m_outputStream);
+      m_codec.writeMessage(message, m_outputStream);
     }
   }
 
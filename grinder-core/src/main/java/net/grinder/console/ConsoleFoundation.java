@@ -49,6 +49,7 @@ import net.grinder.console.model.SampleModelViewsImplementation;
 import net.grinder.console.synchronisation.WireDistributedBarriers;
 import net.grinder.console.textui.TextUI;
 import net.grinder.messages.console.RegisterExpressionViewMessage;
+import net.grinder.messages.console.RegisterTestParentsMessage;
 import net.grinder.messages.console.RegisterTestsMessage;
 import net.grinder.messages.console.ReportStatisticsMessage;
 import net.grinder.statistics.StatisticsServicesImplementation;
@@ -313,12 +314,21 @@ public final class ConsoleFoundation {
           }
         });
 
+      messageDispatchRegistry.set(
+        RegisterTestParentsMessage.class,
+        new AbstractHandler<RegisterTestParentsMessage>() {
+          @Override
+          public void handle(final RegisterTestParentsMessage message) {
+            model.registerTestParents(message.getParents());
+          }
+        });
+
       messageDispatchRegistry.set(
         ReportStatisticsMessage.class,
         new AbstractHandler<ReportStatisticsMessage>() {
           @Override
           public void handle(final ReportStatisticsMessage message) {
-            model.addTestReport(message.getStatisticsDelta());
+            model.addTestReport(message.getStatistics());
           }
         });
 
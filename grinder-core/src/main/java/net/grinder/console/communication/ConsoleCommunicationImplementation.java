@@ -34,11 +34,13 @@ import net.grinder.communication.ConnectionType;
 import net.grinder.communication.FanOutServerSender;
 import net.grinder.communication.Message;
 import net.grinder.communication.MessageDispatchRegistry;
+import net.grinder.communication.MessageDispatchRegistry.AbstractHandler;
 import net.grinder.communication.MessageDispatchSender;
-import net.grinder.communication.ServerReceiver;
+import net.grinder.communication.SelectorServerReceiver;
 import net.grinder.console.common.DisplayMessageConsoleException;
 import net.grinder.console.common.ErrorHandler;
 import net.grinder.console.model.ConsoleProperties;
+import net.grinder.messages.console.RelayedReportsMessage;
 import net.grinder.translation.Translations;
 import net.grinder.util.thread.BooleanCondition;
 
@@ -71,7 +73,7 @@ public final class ConsoleCommunicationImplementation
 
   private Acceptor m_acceptor = null;
 
-  private ServerReceiver m_receiver = null;
+  private SelectorServerReceiver m_receiver = null;
 
   private FanOutServerSender m_sender = null;
 
@@ -109,8 +111,8 @@ public final class ConsoleCommunicationImplementation
    * @param timeAuthority
    *          Knows the time
    * @param idlePollDelay
-   *          Time in milliseconds that our ServerReceiver threads should sleep
-   *          for if there's no incoming messages.
+   *          Time in milliseconds between checks for inactive client
+   *          connections.
    * @param inactiveClientTimeOut
    *          How long before we consider a client connection that presents no
    *          data to be inactive.
@@ -145,6 +147,17 @@ public final class ConsoleCommunicationImplementation
           }
         });
 
+    // Unpack the reports that agents relay on behalf of their workers.
+    m_messageDispatcher.set(
+      RelayedReportsMessage.class,
+      new AbstractHandler<RelayedReportsMessage>() {
+        @Override
+        public void handle(final RelayedReportsMessage message)
+          throws CommunicationException {
+          message.dispatch(m_messageDispatcher);
+        }
+      });
+
     reset();
   }
 
@@ -181,7 +194,8 @@ public final class ConsoleCommunicationImplementation
       m_acceptor = new Acceptor(m_properties.getConsoleHost(),
         m_properties.getConsolePort(),
         1,
-        m_timeAuthority);
+        m_timeAuthority,
+        true);
     }
     catch (final CommunicationException e) {
       m_errorHandler.handleException(
@@ -214,7 +228,7 @@ public final class ConsoleCommunicationImplementation
     acceptorProblemListener.setDaemon(true);
     acceptorProblemListener.start();
 
-    m_receiver = new ServerReceiver();
+    m_receiver = new SelectorServerReceiver(m_timeAuthority);
 
     try {
       m_receiver.receiveFrom(m_acceptor,
@@ -223,7 +237,7 @@ public final class ConsoleCommunicationImplementation
                               ConnectionType.CONSOLE_CLIENT,
                               ConnectionType.WORKER,
         },
-        5,
+        2,
         m_idlePollDelay,
         m_inactiveClientTimeOut);
     }
@@ -155,6 +155,10 @@ public final class ConsoleProperties {
   public static final String SAVE_TOTALS_WITH_RESULTS_PROPERTY =
     "grinder.console.saveTotalsWithResults";
 
+  /** Property name. */
+  public static final String SAMPLE_STORE_DIRECTORY_PROPERTY =
+    "grinder.console.sampleStoreDirectory";
+
   /**
    * A singleton, read-only instance which provides the default
    * values. Mutation operations throw {@link UnsupportedOperationException}.
@@ -238,6 +242,9 @@ public final class ConsoleProperties {
   private final BooleanProperty m_saveTotalsWithResults =
     new BooleanProperty(SAVE_TOTALS_WITH_RESULTS_PROPERTY, false);
 
+  private final FileProperty m_sampleStoreDirectory =
+    new FileProperty(SAMPLE_STORE_DIRECTORY_PROPERTY);
+
   /**
    * Used to produce pretty exception messages if mutation fails. If
    * {@code null}, the instance cannot be mutated.
@@ -985,6 +992,26 @@ public final class ConsoleProperties {
     m_saveTotalsWithResults.save();
   }
 
+  /**
+   * Get the directory used to store the statistics for every sample
+   * interval. The directory is read when the console starts.
+   *
+   * @return The directory. {@code null} => samples are not stored.
+   */
+  public File getSampleStoreDirectory() {
+    return m_sampleStoreDirectory.get();
+  }
+
+  /**
+   * Set the directory used to store the statistics for every sample
+   * interval.
+   *
+   * @param directory The directory. {@code null} => samples are not stored.
+   */
+  public void setSampleStoreDirectory(final File directory) {
+    m_sampleStoreDirectory.set(directory);
+  }
+
   private abstract class Property<T> {
     private final String m_propertyName;
     private final T m_defaultValue;
@@ -28,7 +28,8 @@ import net.grinder.statistics.StatisticsSet;
 /**
  * Snapshot of current test structure that is valid at time of notification. The
  * test indicies used are numbered between 0 and getNumberOfTests() - 1 and are
- * not related to the test numbers apart from sharing the same ordering.
+ * not related to the test numbers. Top level tests are ordered by test number,
+ * and each test is followed by the tests nested within it.
  *
  * <p>
  * The test array is immutable, but the statistics may change as new samples are
@@ -41,6 +42,7 @@ import net.grinder.statistics.StatisticsSet;
 public final class ModelTestIndex {
 
   private final Test[] m_testArray;
+  private final int[] m_depthArray;
   private final SampleAccumulator[] m_accumulatorArray;
 
   /**
@@ -49,11 +51,19 @@ public final class ModelTestIndex {
    */
   public ModelTestIndex() {
     m_testArray = new Test[0];
+    m_depthArray = new int[0];
     m_accumulatorArray = new SampleAccumulator[0];
   }
 
   ModelTestIndex(Test[] testArray, SampleAccumulator[] accumulatorArray) {
+    this(testArray, new int[testArray.length], accumulatorArray);
+  }
+
+  ModelTestIndex(Test[] testArray,
+                 int[] depthArray,
+                 SampleAccumulator[] accumulatorArray) {
     m_testArray = testArray;
+    m_depthArray = depthArray;
     m_accumulatorArray = accumulatorArray;
   }
 
@@ -76,6 +86,17 @@ public final class ModelTestIndex {
     return m_testArray[testIndex];
   }
 
+  /**
+   * Return the number of tests in the index that enclose a test. Tests are
+   * followed by the tests nested within them.
+   *
+   * @param testIndex The test index.
+   * @return The nesting depth; <code>0</code> for top level tests.
+   */
+  public int getDepth(int testIndex) {
+    return m_depthArray[testIndex];
+  }
+
   /**
    * Get the cumulative test statistics for a given test.
    *
@@ -45,6 +45,7 @@ final class SampleAccumulator {
   private final StatisticsSet m_cumulativeStatistics;
   private StatisticsSet m_intervalStatistics;
   private StatisticsSet m_lastSampleStatistics;
+  private boolean m_lastSampleEmpty = true;
 
   public SampleAccumulator(final PeakStatisticExpression peakTPSExpression,
                            final StatisticsIndexMap.LongIndex periodIndex,
@@ -73,6 +74,8 @@ final class SampleAccumulator {
 
   public void fireSample(final long sampleInterval, final long period) {
 
+    final boolean empty = m_intervalStatistics.isZero();
+
     m_intervalStatistics.setValue(m_periodIndex, sampleInterval);
     m_cumulativeStatistics.setValue(m_periodIndex, period);
 
@@ -87,6 +90,7 @@ final class SampleAccumulator {
       });
 
     m_lastSampleStatistics = m_intervalStatistics;
+    m_lastSampleEmpty = empty;
 
     // We create new statistics each time to ensure that
     // m_lastSampleStatistics is always valid and fixed.
@@ -97,6 +101,7 @@ final class SampleAccumulator {
     m_intervalStatistics.reset();
     m_lastSampleStatistics.reset();
     m_cumulativeStatistics.reset();
+    m_lastSampleEmpty = true;
 
     m_listeners.apply(
       new ListenerSupport.Informer<SampleListener>() {
@@ -111,6 +116,15 @@ final class SampleAccumulator {
     return m_lastSampleStatistics;
   }
 
+  /**
+   * Whether any statistics were added during the last sample interval.
+   *
+   * @return {@code true} => no statistics were added.
+   */
+  public boolean isLastSampleEmpty() {
+    return m_lastSampleEmpty;
+  }
+
   public StatisticsSet getCumulativeStatistics() {
     return m_cumulativeStatistics;
   }
@@ -24,12 +24,13 @@ package net.grinder.console.model;
 
 import java.util.Collection;
 import java.util.EventListener;
+import java.util.Map;
 import java.util.Set;
 
 import net.grinder.common.Test;
 import net.grinder.statistics.StatisticExpression;
 import net.grinder.statistics.StatisticsSet;
-import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.statistics.TestStatisticsReport;
 
 
 /**
@@ -138,6 +139,14 @@ public interface SampleModel {
    */
   StatisticsSet getTotalLatestStatistics();
 
+  /**
+   * Get the store that holds the statistics for every sample interval.
+   *
+   * @return The store, or {@code null} if samples are not being stored.
+   * @see ConsoleProperties#getSampleStoreDirectory()
+   */
+  SampleStore getSampleStore();
+
   /**
    * Add a new model listener.
    *
@@ -167,12 +176,21 @@ public interface SampleModel {
    */
   void registerTests(Collection<Test> tests);
 
+  /**
+   * Register links from nested tests to the tests that enclose them. The
+   * model's tests are ordered so that each test is followed by the tests
+   * nested within it.
+   *
+   * @param parents Map of nested tests to their enclosing tests.
+   */
+  void registerTestParents(Map<Test, Test> parents);
+
   /**
    * Add a new test report.
    *
    * @param statisticsDelta The new test statistics.
    */
-  void addTestReport(TestStatisticsMap statisticsDelta);
+  void addTestReport(TestStatisticsReport statisticsDelta);
 
 
   /**
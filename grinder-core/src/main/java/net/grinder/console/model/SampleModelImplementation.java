@@ -22,16 +22,22 @@
 
 package net.grinder.console.model;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
+import javax.annotation.PreDestroy;
+
 import net.grinder.common.GrinderException;
 import net.grinder.common.Test;
 import net.grinder.console.common.ErrorHandler;
@@ -41,7 +47,8 @@ import net.grinder.statistics.StatisticExpressionFactory;
 import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsSet;
-import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.statistics.TestHierarchy;
+import net.grinder.statistics.TestStatisticsReport;
 import net.grinder.translation.Translations;
 import net.grinder.util.ListenerSupport;
 
@@ -77,6 +84,12 @@ public final class SampleModelImplementation implements SampleModel {
    */
   private final Set<Test> m_tests = new TreeSet<Test>();
 
+  /**
+   * Links from nested tests to their enclosing tests. Kept when the model is
+   * reset. Guarded by m_tests.
+   */
+  private final TestHierarchy m_testHierarchy = new TestHierarchy();
+
   private final ListenerSupport<Listener> m_listeners =
     new ListenerSupport<Listener>();
 
@@ -95,6 +108,12 @@ public final class SampleModelImplementation implements SampleModel {
   // Guarded by this.
   private InternalState m_state;
 
+  /**
+   * Store for the statistics of every sample interval. {@code null} if
+   * samples are not being stored, or if the store has failed.
+   */
+  private volatile SampleStore m_sampleStore;
+
   /**
    * Creates a new <code>SampleModelImplementation</code> instance.
    *
@@ -147,6 +166,18 @@ public final class SampleModelImplementation implements SampleModel {
       new SampleAccumulator(m_peakTPSExpression, m_periodIndex,
                             m_statisticsServices.getStatisticsSetFactory());
 
+    final File sampleStoreDirectory = properties.getSampleStoreDirectory();
+
+    if (sampleStoreDirectory != null) {
+      try {
+        m_sampleStore =
+          new SampleStore(sampleStoreDirectory, statisticsServices);
+      }
+      catch (final IOException e) {
+        m_errorHandler.handleException(e);
+      }
+    }
+
     setInternalState(new WaitingForTriggerState());
   }
 
@@ -174,7 +205,7 @@ public final class SampleModelImplementation implements SampleModel {
     // Need to copy collection, might be immutable.
     final Set<Test> newTests = new HashSet<Test>(tests);
 
-    final Test[] testArray;
+    final ModelTestIndex modelTestIndex;
 
     synchronized (m_tests) {
       newTests.removeAll(m_tests);
@@ -186,30 +217,75 @@ public final class SampleModelImplementation implements SampleModel {
 
       m_tests.addAll(newTests);
 
-      // Create an index of m_tests sorted by test number.
-      testArray = m_tests.toArray(new Test[m_tests.size()]);
+      synchronized (m_accumulators) {
+        for (final Test test : newTests) {
+          m_accumulators.put(test,
+                             new SampleAccumulator(
+                               m_peakTPSExpression,
+                               m_periodIndex,
+                               m_statisticsServices.getStatisticsSetFactory()));
+        }
+      }
+
+      modelTestIndex = createModelTestIndex();
     }
 
-    final SampleAccumulator[] accumulatorArray =
-      new SampleAccumulator[testArray.length];
+    fireNewTests(newTests, modelTestIndex);
+  }
 
-    synchronized (m_accumulators) {
-      for (final Test test : newTests) {
-        m_accumulators.put(test,
-                           new SampleAccumulator(
-                             m_peakTPSExpression,
-                             m_periodIndex,
-                             m_statisticsServices.getStatisticsSetFactory()));
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void registerTestParents(final Map<Test, Test> parents) {
+    final ModelTestIndex modelTestIndex;
+
+    synchronized (m_tests) {
+      if (!m_testHierarchy.setParents(parents) || m_tests.size() == 0) {
+        return;
       }
 
+      modelTestIndex = createModelTestIndex();
+    }
+
+    // The tests are unchanged, but their order may have changed.
+    fireNewTests(Collections.<Test>emptySet(), modelTestIndex);
+  }
+
+  /**
+   * Create an index of m_tests in tree order, with siblings sorted by test
+   * number. Caller should synchronise on m_tests.
+   */
+  private ModelTestIndex createModelTestIndex() {
+    final int numberOfTests = m_tests.size();
+    final Test[] testArray = new Test[numberOfTests];
+    final int[] depthArray = new int[numberOfTests];
+
+    m_testHierarchy.visit(m_tests, new TestHierarchy.Visitor() {
+        private int m_index = 0;
+
+        @Override
+        public void next(final Test test, final int depth) {
+          testArray[m_index] = test;
+          depthArray[m_index] = depth;
+          ++m_index;
+        }
+      });
+
+    final SampleAccumulator[] accumulatorArray =
+      new SampleAccumulator[numberOfTests];
+
+    synchronized (m_accumulators) {
       for (int i = 0; i < accumulatorArray.length; i++) {
         accumulatorArray[i] = m_accumulators.get(testArray[i]);
       }
     }
 
-    final ModelTestIndex modelTestIndex =
-      new ModelTestIndex(testArray, accumulatorArray);
+    return new ModelTestIndex(testArray, depthArray, accumulatorArray);
+  }
 
+  private void fireNewTests(final Set<Test> newTests,
+                            final ModelTestIndex modelTestIndex) {
     m_listeners.apply(
       new ListenerSupport.Informer<Listener>() {
         @Override
@@ -234,6 +310,14 @@ public final class SampleModelImplementation implements SampleModel {
     return m_totalSampleAccumulator.getLastSampleStatistics();
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SampleStore getSampleStore() {
+    return m_sampleStore;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -283,6 +367,14 @@ public final class SampleModelImplementation implements SampleModel {
       });
   }
 
+  /**
+   * Shut down the model, closing the sample store.
+   */
+  @PreDestroy
+  public void shutdown() {
+    closeSampleStore();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -317,8 +409,8 @@ public final class SampleModelImplementation implements SampleModel {
    * {@inheritDoc}
    */
   @Override
-  public void addTestReport(final TestStatisticsMap testStatisticsMap) {
-    getInternalState().newTestReport(testStatisticsMap);
+  public void addTestReport(final TestStatisticsReport testStatisticsReport) {
+    getInternalState().newTestReport(testStatisticsReport);
   }
 
   /**
@@ -340,6 +432,62 @@ public final class SampleModelImplementation implements SampleModel {
     m_totalSampleAccumulator.zero();
   }
 
+  private void storeSample(final long time, final long sampleInterval) {
+    final SampleStore sampleStore = m_sampleStore;
+
+    if (sampleStore == null) {
+      return;
+    }
+
+    final Map<Integer, StatisticsSet> statistics =
+      new TreeMap<Integer, StatisticsSet>();
+
+    synchronized (m_accumulators) {
+      for (final Entry<Test, SampleAccumulator> entry :
+        m_accumulators.entrySet()) {
+
+        final SampleAccumulator sampleAccumulator = entry.getValue();
+
+        if (!sampleAccumulator.isLastSampleEmpty()) {
+          statistics.put(entry.getKey().getNumber(),
+                         sampleAccumulator.getLastSampleStatistics());
+        }
+      }
+    }
+
+    statistics.put(SampleStore.TOTALS,
+                   m_totalSampleAccumulator.getLastSampleStatistics());
+
+    try {
+      sampleStore.append(time, sampleInterval, statistics);
+    }
+    catch (final IOException e) {
+      m_errorHandler.handleException(e);
+
+      // Give up on the store, rather than report the same problem every
+      // interval.
+      closeSampleStore();
+    }
+  }
+
+  private void closeSampleStore() {
+    final SampleStore sampleStore;
+
+    synchronized (this) {
+      sampleStore = m_sampleStore;
+      m_sampleStore = null;
+    }
+
+    if (sampleStore != null) {
+      try {
+        sampleStore.close();
+      }
+      catch (final IOException e) {
+        m_errorHandler.handleException(e);
+      }
+    }
+  }
+
   private InternalState getInternalState() {
     synchronized (this) {
       return m_state;
@@ -365,7 +513,7 @@ public final class SampleModelImplementation implements SampleModel {
 
     void stop();
 
-    void newTestReport(TestStatisticsMap testStatisticsMap);
+    void newTestReport(TestStatisticsReport testStatisticsReport);
   }
 
   private abstract class AbstractInternalState
@@ -405,7 +553,7 @@ public final class SampleModelImplementation implements SampleModel {
     }
 
     @Override
-    public void newTestReport(final TestStatisticsMap testStatisticsMap) {
+    public void newTestReport(final TestStatisticsReport testStatisticsReport) {
       if (m_properties.getIgnoreSampleCount() == 0) {
         setInternalState(new CapturingState());
       }
@@ -414,7 +562,7 @@ public final class SampleModelImplementation implements SampleModel {
       }
 
       // Ensure the the first sample is recorded.
-      getInternalState().newTestReport(testStatisticsMap);
+      getInternalState().newTestReport(testStatisticsReport);
     }
 
     @Override
@@ -430,7 +578,7 @@ public final class SampleModelImplementation implements SampleModel {
 
   private final class StoppedState extends AbstractInternalState {
     @Override
-    public void newTestReport(final TestStatisticsMap testStatisticsMap) {
+    public void newTestReport(final TestStatisticsReport testStatisticsReport) {
     }
 
     @Override
@@ -451,34 +599,42 @@ public final class SampleModelImplementation implements SampleModel {
     private volatile long m_sampleCount = 1;
 
     @Override
-    public final void newTestReport(final TestStatisticsMap testStatisticsMap) {
-      testStatisticsMap.new ForEach() {
-        @Override
-        public void next(final Test test, final StatisticsSet statistics) {
-          final SampleAccumulator sampleAccumulator = m_accumulators.get(test);
+    public final void newTestReport(
+      final TestStatisticsReport testStatisticsReport) {
 
-          if (sampleAccumulator == null) {
-            m_errorHandler.handleInformationMessage(
-              m_unknownTestString + " " + test);
-          }
-          else {
-            sampleAccumulator.addIntervalStatistics(statistics);
+      try {
+        testStatisticsReport.visit(new TestStatisticsReport.Visitor() {
+            @Override
+            public void next(final Test test, final StatisticsSet statistics) {
+              final SampleAccumulator sampleAccumulator =
+                m_accumulators.get(test);
 
-            if (shouldAccumulateSamples()) {
-              sampleAccumulator.addCumulativeStaticstics(statistics);
-            }
+              if (sampleAccumulator == null) {
+                m_errorHandler.handleInformationMessage(
+                  m_unknownTestString + " " + test);
+              }
+              else {
+                sampleAccumulator.addIntervalStatistics(statistics);
+
+                if (shouldAccumulateSamples()) {
+                  sampleAccumulator.addCumulativeStaticstics(statistics);
+                }
 
-            if (!statistics.isComposite()) {
-              m_totalSampleAccumulator.addIntervalStatistics(statistics);
+                if (!statistics.isComposite()) {
+                  m_totalSampleAccumulator.addIntervalStatistics(statistics);
 
-              if (shouldAccumulateSamples()) {
-                m_totalSampleAccumulator.addCumulativeStaticstics(statistics);
+                  if (shouldAccumulateSamples()) {
+                    m_totalSampleAccumulator.addCumulativeStaticstics(
+                      statistics);
+                  }
+                }
               }
             }
-          }
-        }
+          });
+      }
+      catch (final IOException e) {
+        m_errorHandler.handleException(e);
       }
-      .iterate();
     }
 
     protected final void schedule() {
@@ -502,10 +658,11 @@ public final class SampleModelImplementation implements SampleModel {
       }
 
       try {
+        final long now = System.currentTimeMillis();
         final long period;
 
         synchronized (this) {
-          period = System.currentTimeMillis() - m_lastTime;
+          period = now - m_lastTime;
         }
 
         final long sampleInterval = m_properties.getSampleInterval();
@@ -519,6 +676,8 @@ public final class SampleModelImplementation implements SampleModel {
 
         m_totalSampleAccumulator.fireSample(sampleInterval, period);
 
+        storeSample(now - sampleInterval, sampleInterval);
+
         ++m_sampleCount;
 
         // I'm ignoring a minor race here: the model could have been stopped
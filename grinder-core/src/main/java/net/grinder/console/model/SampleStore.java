@@ -0,0 +1,826 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import net.grinder.statistics.ImmutableStatisticsSet;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+
+
+/**
+ * An append-only, on-disk store of the statistics for every sample interval.
+ *
+ * <p>
+ * Each interval, the console appends a record for each test that has
+ * statistics, and a record for the totals. Records have a fixed width and
+ * are keyed by interval number and test number. The store is column
+ * oriented; each field of a record is held in its own file, so the
+ * <em>n</em>th record is found at the same offset in every file.
+ * </p>
+ *
+ * <p>
+ * Records are also rolled up into coarser levels. Each record of level
+ * <em>k</em> holds the statistics of {@link #ROLLUP_FACTOR}<sup>k</sup>
+ * intervals, allowing long windows to be read without visiting every
+ * interval. A rollup record is written once the first interval of the next
+ * rollup period is appended, or when the store is closed. A rollup record
+ * that was written part way through its period is read back and completed
+ * when the store is reopened.
+ * </p>
+ *
+ * <p>
+ * Interval numbers increase across console restarts. Statistics are stored
+ * without their histograms, so percentiles cannot be calculated from
+ * stored records.
+ * </p>
+ *
+ * <p>
+ * Appending is synchronised. Records may be read concurrently; readers see
+ * the records that had been appended when the read started.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public final class SampleStore implements Closeable {
+
+  /** The test number used for the records that hold the totals. */
+  public static final int TOTALS = Integer.MIN_VALUE;
+
+  /** Number of records of one level that are rolled up into the next. */
+  public static final int ROLLUP_FACTOR = 60;
+
+  /** Number of levels, including the level holding every interval. */
+  public static final int NUMBER_OF_LEVELS = 3;
+
+  static final int MAGIC = 0x47535453;
+  static final int VERSION = 1;
+
+  private static final int READ_BATCH_SIZE = 1024;
+
+  private final StatisticsSetFactory m_statisticsSetFactory;
+  private final StatisticsIndexMap.LongIndex m_periodIndex;
+
+  private final Level[] m_levels = new Level[NUMBER_OF_LEVELS];
+
+  // Scratch space, guarded by this.
+  private final long[] m_longValues;
+  private final double[] m_doubleValues;
+
+  // Guarded by this.
+  private long m_nextInterval;
+
+  /**
+   * Constructor. Opens an existing store, or creates a new one.
+   *
+   * <p>
+   * If an earlier console was stopped part way through writing an
+   * interval, the partial records are discarded.
+   * </p>
+   *
+   * @param directory
+   *          The directory that holds the store.
+   * @param statisticsServices
+   *          Statistics services.
+   * @throws IOException
+   *           If the store could not be opened, or was written with
+   *           incompatible statistics.
+   */
+  public SampleStore(final File directory,
+                     final StatisticsServices statisticsServices)
+    throws IOException {
+
+    m_statisticsSetFactory = statisticsServices.getStatisticsSetFactory();
+    m_periodIndex =
+      statisticsServices.getStatisticsIndexMap().getLongIndex("period");
+
+    final int numberOfLongs =
+      m_statisticsSetFactory.getNumberOfFixedWidthLongs();
+    final int numberOfDoubles =
+      m_statisticsSetFactory.getNumberOfFixedWidthDoubles();
+
+    m_longValues = new long[numberOfLongs];
+    m_doubleValues = new double[numberOfDoubles];
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create directory " + directory);
+    }
+
+    checkSchema(new File(directory, "schema"), numberOfLongs, numberOfDoubles);
+
+    try {
+      long unit = 1;
+
+      for (int i = 0; i < NUMBER_OF_LEVELS; ++i) {
+        m_levels[i] = new Level(new File(directory, "level" + i),
+                                unit,
+                                numberOfLongs,
+                                numberOfDoubles);
+        unit *= ROLLUP_FACTOR;
+      }
+    }
+    catch (final IOException e) {
+      close();
+      throw e;
+    }
+
+    final Level baseLevel = m_levels[0];
+    final long records = baseLevel.getNumberOfRecords();
+
+    m_nextInterval =
+      records > 0 ? baseLevel.readInterval(records - 1) + 1 : 0;
+
+    try {
+      for (int i = 1; i < NUMBER_OF_LEVELS; ++i) {
+        m_levels[i].restoreRollup(m_nextInterval);
+      }
+    }
+    catch (final IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private static void checkSchema(final File file,
+                                  final int numberOfLongs,
+                                  final int numberOfDoubles)
+    throws IOException {
+
+    if (file.exists()) {
+      final DataInputStream in =
+        new DataInputStream(new FileInputStream(file));
+
+      try {
+        if (in.readInt() != MAGIC ||
+            in.readShort() != VERSION ||
+            in.readInt() != numberOfLongs ||
+            in.readInt() != numberOfDoubles ||
+            in.readInt() != ROLLUP_FACTOR ||
+            in.readInt() != NUMBER_OF_LEVELS) {
+          throw new IOException("Incompatible sample store " +
+                                file.getParentFile());
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    else {
+      final DataOutputStream out =
+        new DataOutputStream(new FileOutputStream(file));
+
+      try {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(numberOfLongs);
+        out.writeInt(numberOfDoubles);
+        out.writeInt(ROLLUP_FACTOR);
+        out.writeInt(NUMBER_OF_LEVELS);
+      }
+      finally {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * Append the statistics for a sample interval.
+   *
+   * @param time
+   *          The time the interval started, in milliseconds since the Epoch.
+   * @param period
+   *          The length of the interval, in milliseconds. This is stored as
+   *          the <code>period</code> statistic of each record.
+   * @param statistics
+   *          The interval statistics, keyed by test number. Use
+   *          {@link #TOTALS} for the totals.
+   * @return The number of the new interval.
+   * @throws IOException
+   *           If the records could not be written.
+   */
+  public synchronized long append(
+    final long time,
+    final long period,
+    final Map<Integer, ? extends ImmutableStatisticsSet> statistics)
+    throws IOException {
+
+    final long interval = m_nextInterval++;
+
+    final Level baseLevel = m_levels[0];
+
+    for (final Entry<Integer, ? extends ImmutableStatisticsSet> entry :
+         statistics.entrySet()) {
+      m_statisticsSetFactory.getFixedWidthValues(entry.getValue(),
+                                                 m_longValues,
+                                                 m_doubleValues);
+      baseLevel.add(interval,
+                    time,
+                    period,
+                    entry.getKey(),
+                    m_longValues,
+                    m_doubleValues);
+    }
+
+    baseLevel.commit();
+
+    for (int i = 1; i < NUMBER_OF_LEVELS; ++i) {
+      m_levels[i].rollup(interval, time, period, statistics);
+    }
+
+    return interval;
+  }
+
+  /**
+   * The number of the next interval to be appended. Stored intervals have
+   * numbers less than this.
+   *
+   * @return The interval number.
+   */
+  public synchronized long getNextInterval() {
+    return m_nextInterval;
+  }
+
+  /**
+   * The number of intervals held in each record of a level.
+   *
+   * @param level
+   *          The level.
+   * @return The number of intervals.
+   */
+  public long getIntervalsPerRecord(final int level) {
+    return m_levels[level].m_unit;
+  }
+
+  /**
+   * The number of records stored at a level.
+   *
+   * @param level
+   *          The level.
+   * @return The number of records.
+   */
+  public long getNumberOfRecords(final int level) {
+    return m_levels[level].getNumberOfRecords();
+  }
+
+  /**
+   * Read the records of a level that have interval numbers in a window.
+   *
+   * <p>
+   * The interval number of a rollup record is the number of its first
+   * interval. Records are visited in interval order, and only one batch of
+   * records is held in memory at a time. Reading stops early if the visitor
+   * returns <code>false</code>.
+   * </p>
+   *
+   * @param level
+   *          The level to read, from <code>0</code> to
+   *          <code>NUMBER_OF_LEVELS - 1</code>.
+   * @param fromInterval
+   *          The first interval number, inclusive.
+   * @param toInterval
+   *          The last interval number, exclusive.
+   * @param visitor
+   *          Visitor to call for each record.
+   * @throws IOException
+   *           If the records could not be read.
+   */
+  public void read(final int level,
+                   final long fromInterval,
+                   final long toInterval,
+                   final Visitor visitor)
+    throws IOException {
+
+    m_levels[level].read(fromInterval, toInterval, visitor);
+  }
+
+  /**
+   * Close the store. Rollup records for incomplete periods are written
+   * first.
+   *
+   * @throws IOException If a file could not be written or closed.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    IOException exception = null;
+
+    for (final Level level : m_levels) {
+      if (level != null) {
+        try {
+          level.close();
+        }
+        catch (final IOException e) {
+          exception = e;
+        }
+      }
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Visitor for stored records.
+   */
+  public interface Visitor {
+
+    /**
+     * Called for each record.
+     *
+     * @param interval
+     *          The interval number.
+     * @param time
+     *          The time the interval started, in milliseconds since the
+     *          Epoch.
+     * @param test
+     *          The test number, or {@link SampleStore#TOTALS}.
+     * @param statistics
+     *          The statistics. The <code>period</code> statistic is set to
+     *          the length of time covered by the record.
+     * @return <code>false</code> to stop reading.
+     */
+    boolean next(long interval, long time, int test, StatisticsSet statistics);
+  }
+
+  /**
+   * A single column file.
+   */
+  private static final class Column {
+    private final RandomAccessFile m_file;
+    private final FileChannel m_channel;
+    private final int m_width;
+
+    // Records waiting to be committed.
+    private ByteBuffer m_pending;
+
+    public Column(final File file, final int width) throws IOException {
+      m_file = new RandomAccessFile(file, "rw");
+      m_channel = m_file.getChannel();
+      m_width = width;
+      m_pending = ByteBuffer.allocate(width * 64);
+    }
+
+    public long getNumberOfRecords() throws IOException {
+      return m_channel.size() / m_width;
+    }
+
+    public void truncate(final long records) throws IOException {
+      m_channel.truncate(records * m_width);
+    }
+
+    public ByteBuffer pending() {
+      if (m_pending.remaining() < m_width) {
+        final ByteBuffer grown = ByteBuffer.allocate(m_pending.capacity() * 2);
+        m_pending.flip();
+        grown.put(m_pending);
+        m_pending = grown;
+      }
+
+      return m_pending;
+    }
+
+    public void commit(final long records) throws IOException {
+      m_pending.flip();
+
+      long position = records * m_width;
+
+      while (m_pending.hasRemaining()) {
+        position += m_channel.write(m_pending, position);
+      }
+
+      m_pending.clear();
+    }
+
+    public ByteBuffer read(final long record,
+                           final int count,
+                           final ByteBuffer buffer)
+      throws IOException {
+
+      final int size = count * m_width;
+
+      final ByteBuffer result =
+        buffer != null && buffer.capacity() >= size ?
+          buffer : ByteBuffer.allocate(size);
+
+      result.clear();
+      result.limit(size);
+
+      long position = record * m_width;
+
+      while (result.hasRemaining()) {
+        final int n = m_channel.read(result, position);
+
+        if (n < 0) {
+          throw new IOException("Unexpected end of file");
+        }
+
+        position += n;
+      }
+
+      result.flip();
+
+      return result;
+    }
+
+    public void close() throws IOException {
+      m_file.close();
+    }
+  }
+
+  /**
+   * The records for one level.
+   */
+  private final class Level {
+    private final long m_unit;
+
+    private final Column m_intervalColumn;
+    private final Column m_timeColumn;
+    private final Column m_testColumn;
+    private final Column m_periodColumn;
+    private final Column[] m_longColumns;
+    private final Column[] m_doubleColumns;
+
+    private volatile long m_numberOfRecords;
+    private int m_pendingRecords;
+
+    // Rollup state, guarded by the SampleStore.
+    private long m_rollupInterval = -1;
+    private long m_rollupTime;
+    private long m_rollupPeriod;
+    private final SortedMap<Integer, StatisticsSet> m_rollup =
+      new TreeMap<Integer, StatisticsSet>();
+
+    public Level(final File directory,
+                 final long unit,
+                 final int numberOfLongs,
+                 final int numberOfDoubles) throws IOException {
+
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Could not create directory " + directory);
+      }
+
+      m_unit = unit;
+
+      m_longColumns = new Column[numberOfLongs];
+      m_doubleColumns = new Column[numberOfDoubles];
+
+      // Initialise each column in turn so we can close those we've opened
+      // if there's a problem.
+      Column intervalColumn = null;
+      Column timeColumn = null;
+      Column testColumn = null;
+      Column periodColumn = null;
+
+      try {
+        intervalColumn = new Column(new File(directory, "interval"), 8);
+        timeColumn = new Column(new File(directory, "time"), 8);
+        testColumn = new Column(new File(directory, "test"), 4);
+        periodColumn = new Column(new File(directory, "period"), 8);
+
+        for (int i = 0; i < numberOfLongs; ++i) {
+          m_longColumns[i] = new Column(new File(directory, "long" + i), 8);
+        }
+
+        for (int i = 0; i < numberOfDoubles; ++i) {
+          m_doubleColumns[i] =
+            new Column(new File(directory, "double" + i), 8);
+        }
+      }
+      catch (final IOException e) {
+        for (final Column c : new Column[] {
+               intervalColumn, timeColumn, testColumn, periodColumn, }) {
+          if (c != null) {
+            c.close();
+          }
+        }
+
+        closeAll(m_longColumns);
+        closeAll(m_doubleColumns);
+
+        throw e;
+      }
+
+      m_intervalColumn = intervalColumn;
+      m_timeColumn = timeColumn;
+      m_testColumn = testColumn;
+      m_periodColumn = periodColumn;
+
+      // Discard records that were not written to every column.
+      long records = Long.MAX_VALUE;
+
+      for (final Column c : allColumns()) {
+        records = Math.min(records, c.getNumberOfRecords());
+      }
+
+      for (final Column c : allColumns()) {
+        c.truncate(records);
+      }
+
+      m_numberOfRecords = records;
+    }
+
+    private Column[] allColumns() {
+      final Column[] result =
+        new Column[4 + m_longColumns.length + m_doubleColumns.length];
+
+      result[0] = m_intervalColumn;
+      result[1] = m_timeColumn;
+      result[2] = m_testColumn;
+      result[3] = m_periodColumn;
+      System.arraycopy(m_longColumns, 0, result, 4, m_longColumns.length);
+      System.arraycopy(m_doubleColumns,
+                       0,
+                       result,
+                       4 + m_longColumns.length,
+                       m_doubleColumns.length);
+
+      return result;
+    }
+
+    public long getNumberOfRecords() {
+      return m_numberOfRecords;
+    }
+
+    public long readInterval(final long record) throws IOException {
+      return m_intervalColumn.read(record, 1, null).getLong();
+    }
+
+    public void add(final long interval,
+                    final long time,
+                    final long period,
+                    final int test,
+                    final long[] longValues,
+                    final double[] doubleValues) {
+
+      m_intervalColumn.pending().putLong(interval);
+      m_timeColumn.pending().putLong(time);
+      m_testColumn.pending().putInt(test);
+      m_periodColumn.pending().putLong(period);
+
+      for (int i = 0; i < m_longColumns.length; ++i) {
+        m_longColumns[i].pending().putLong(longValues[i]);
+      }
+
+      for (int i = 0; i < m_doubleColumns.length; ++i) {
+        m_doubleColumns[i].pending().putDouble(doubleValues[i]);
+      }
+
+      ++m_pendingRecords;
+    }
+
+    public void commit() throws IOException {
+      final long records = m_numberOfRecords;
+
+      for (final Column c : allColumns()) {
+        c.commit(records);
+      }
+
+      // Publish the new records to readers.
+      m_numberOfRecords = records + m_pendingRecords;
+      m_pendingRecords = 0;
+    }
+
+    public void rollup(
+      final long interval,
+      final long time,
+      final long period,
+      final Map<Integer, ? extends ImmutableStatisticsSet> statistics)
+      throws IOException {
+
+      final long rollupInterval = interval - interval % m_unit;
+
+      if (rollupInterval != m_rollupInterval) {
+        writeRollup();
+
+        m_rollupInterval = rollupInterval;
+        m_rollupTime = time;
+        m_rollupPeriod = 0;
+      }
+
+      m_rollupPeriod += period;
+
+      for (final Entry<Integer, ? extends ImmutableStatisticsSet> entry :
+           statistics.entrySet()) {
+        StatisticsSet total = m_rollup.get(entry.getKey());
+
+        if (total == null) {
+          total = m_statisticsSetFactory.create();
+          m_rollup.put(entry.getKey(), total);
+        }
+
+        total.add(entry.getValue());
+      }
+    }
+
+    /**
+     * If the last rollup record was written by {@link SampleStore#close()}
+     * part way through its period, remove it and restore it as the rollup in
+     * progress.
+     */
+    public void restoreRollup(final long nextInterval) throws IOException {
+      if (nextInterval % m_unit == 0) {
+        // The last period is complete.
+        return;
+      }
+
+      final long rollupInterval = nextInterval - nextInterval % m_unit;
+      final long numberOfRecords = m_numberOfRecords;
+      final long first = findRecord(rollupInterval, numberOfRecords);
+
+      if (first == numberOfRecords) {
+        return;
+      }
+
+      read(rollupInterval, Long.MAX_VALUE, new Visitor() {
+          @Override
+          public boolean next(final long interval,
+                              final long time,
+                              final int test,
+                              final StatisticsSet statistics) {
+            m_rollupTime = time;
+            m_rollupPeriod = statistics.getValue(m_periodIndex);
+            m_rollup.put(test, statistics);
+            return true;
+          }
+        });
+
+      m_rollupInterval = rollupInterval;
+
+      for (final Column c : allColumns()) {
+        c.truncate(first);
+      }
+
+      m_numberOfRecords = first;
+    }
+
+    private void writeRollup() throws IOException {
+      if (m_rollup.isEmpty()) {
+        return;
+      }
+
+      for (final Entry<Integer, StatisticsSet> entry : m_rollup.entrySet()) {
+        m_statisticsSetFactory.getFixedWidthValues(entry.getValue(),
+                                                   m_longValues,
+                                                   m_doubleValues);
+        add(m_rollupInterval,
+            m_rollupTime,
+            m_rollupPeriod,
+            entry.getKey(),
+            m_longValues,
+            m_doubleValues);
+      }
+
+      m_rollup.clear();
+
+      commit();
+    }
+
+    /**
+     * Binary search for the first record with an interval number no less
+     * than <code>interval</code>.
+     */
+    private long findRecord(final long interval,
+                            final long numberOfRecords)
+      throws IOException {
+
+      long low = 0;
+      long high = numberOfRecords;
+
+      while (low < high) {
+        final long middle = (low + high) >>> 1;
+
+        if (readInterval(middle) < interval) {
+          low = middle + 1;
+        }
+        else {
+          high = middle;
+        }
+      }
+
+      return low;
+    }
+
+    public void read(final long fromInterval,
+                     final long toInterval,
+                     final Visitor visitor)
+      throws IOException {
+
+      final long numberOfRecords = m_numberOfRecords;
+
+      final long[] longValues = new long[m_longColumns.length];
+      final double[] doubleValues = new double[m_doubleColumns.length];
+
+      final ByteBuffer[] longBuffers = new ByteBuffer[m_longColumns.length];
+      final ByteBuffer[] doubleBuffers =
+        new ByteBuffer[m_doubleColumns.length];
+      ByteBuffer intervals = null;
+      ByteBuffer times = null;
+      ByteBuffer tests = null;
+      ByteBuffer periods = null;
+
+      long record = findRecord(fromInterval, numberOfRecords);
+
+      while (record < numberOfRecords) {
+        final int count =
+          (int)Math.min(READ_BATCH_SIZE, numberOfRecords - record);
+
+        intervals = m_intervalColumn.read(record, count, intervals);
+        times = m_timeColumn.read(record, count, times);
+        tests = m_testColumn.read(record, count, tests);
+        periods = m_periodColumn.read(record, count, periods);
+
+        for (int i = 0; i < longBuffers.length; ++i) {
+          longBuffers[i] =
+            m_longColumns[i].read(record, count, longBuffers[i]);
+        }
+
+        for (int i = 0; i < doubleBuffers.length; ++i) {
+          doubleBuffers[i] =
+            m_doubleColumns[i].read(record, count, doubleBuffers[i]);
+        }
+
+        for (int r = 0; r < count; ++r) {
+          final long interval = intervals.getLong();
+
+          if (interval >= toInterval) {
+            return;
+          }
+
+          for (int i = 0; i < longValues.length; ++i) {
+            longValues[i] = longBuffers[i].getLong();
+          }
+
+          for (int i = 0; i < doubleValues.length; ++i) {
+            doubleValues[i] = doubleBuffers[i].getDouble();
+          }
+
+          final StatisticsSet statistics =
+            m_statisticsSetFactory.createFromFixedWidthValues(longValues,
+                                                              doubleValues);
+          statistics.setValue(m_periodIndex, periods.getLong());
+
+          if (!visitor.next(interval,
+                            times.getLong(),
+                            tests.getInt(),
+                            statistics)) {
+            return;
+          }
+        }
+
+        record += count;
+      }
+    }
+
+    public void close() throws IOException {
+      try {
+        writeRollup();
+      }
+      finally {
+        closeAll(allColumns());
+      }
+    }
+  }
+
+  private static void closeAll(final Column[] columns) throws IOException {
+    for (final Column c : columns) {
+      if (c != null) {
+        c.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * Converts a binary data log to the comma separated text format of the
+ * standard data log.
+ *
+ * @author Philip Aston
+ */
+public final class BinaryDataLogConverter {
+
+  private static final String SEPARATOR = ", ";
+  private static final String LINE_SEPARATOR =
+    System.getProperty("line.separator");
+
+  private final Writer m_out;
+
+  /**
+   * Constructor.
+   *
+   * @param out Where to write the text data log.
+   */
+  public BinaryDataLogConverter(Writer out) {
+    m_out = out;
+  }
+
+  /**
+   * Convert a binary data log.
+   *
+   * @param reader The binary data log.
+   * @return The number of records converted.
+   * @throws IOException If the log could not be read or written.
+   */
+  public long convert(BinaryDataLogReader reader) throws IOException {
+    final StringBuilder line =
+      new StringBuilder("Thread, Run, Test, Start time (ms since Epoch)");
+
+    final int numberOfColumns = reader.getNumberOfColumns();
+
+    for (int i = 0; i < numberOfColumns; ++i) {
+      line.append(SEPARATOR);
+      line.append(reader.getColumnName(i));
+    }
+
+    writeLine(line);
+
+    long records = 0;
+
+    while (reader.next()) {
+      line.setLength(0);
+      line.append(reader.getThreadNumber());
+      line.append(SEPARATOR);
+      line.append(reader.getRunNumber());
+      line.append(SEPARATOR);
+      line.append(reader.getTestNumber());
+      line.append(SEPARATOR);
+      line.append(reader.getStartTime());
+
+      for (int i = 0; i < numberOfColumns; ++i) {
+        line.append(SEPARATOR);
+
+        if (reader.isDouble(i)) {
+          line.append(reader.getDoubleValue(i));
+        }
+        else {
+          line.append(reader.getLongValue(i));
+        }
+      }
+
+      writeLine(line);
+      ++records;
+    }
+
+    m_out.flush();
+
+    return records;
+  }
+
+  private void writeLine(StringBuilder line) throws IOException {
+    line.append(LINE_SEPARATOR);
+    m_out.append(line);
+  }
+}
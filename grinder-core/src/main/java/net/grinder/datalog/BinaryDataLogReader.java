@@ -0,0 +1,221 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Reads a binary data log written by {@link BinaryDataLogWriter}.
+ *
+ * <p>Records are read one at a time. {@link #next} moves to the next
+ * record, after which its values can be obtained from the accessor
+ * methods. A truncated final record, for example one left by a worker
+ * process that was killed, is ignored.</p>
+ *
+ * @author Philip Aston
+ */
+public final class BinaryDataLogReader implements Closeable {
+
+  private static final int FIXED_BYTES = 4 + 4 + 4 + 8;
+
+  private final DataInputStream m_in;
+  private final String[] m_columnNames;
+  private final boolean[] m_doubleColumns;
+  private final byte[] m_record;
+  private final ByteBuffer m_recordBuffer;
+
+  private boolean m_haveRecord;
+
+  /**
+   * Constructor. Reads the header.
+   *
+   * @param in The stream to read.
+   * @throws IOException If the header could not be read, or the stream is
+   *  not a binary data log.
+   */
+  public BinaryDataLogReader(InputStream in) throws IOException {
+    m_in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+
+    if (m_in.readInt() != BinaryDataLogWriter.MAGIC) {
+      throw new IOException("Not a binary data log");
+    }
+
+    final short version = m_in.readShort();
+
+    if (version != BinaryDataLogWriter.VERSION) {
+      throw new IOException("Unsupported binary data log version " +
+                            version);
+    }
+
+    final int numberOfColumns = m_in.readInt();
+
+    if (numberOfColumns < 0) {
+      throw new IOException("Corrupt binary data log header");
+    }
+
+    m_columnNames = new String[numberOfColumns];
+    m_doubleColumns = new boolean[numberOfColumns];
+
+    for (int i = 0; i < numberOfColumns; ++i) {
+      m_columnNames[i] = m_in.readUTF();
+      m_doubleColumns[i] = m_in.readBoolean();
+    }
+
+    m_record = new byte[FIXED_BYTES + 8 * numberOfColumns];
+    m_recordBuffer = ByteBuffer.wrap(m_record);
+  }
+
+  /**
+   * The number of statistics columns.
+   *
+   * @return The number of columns.
+   */
+  public int getNumberOfColumns() {
+    return m_columnNames.length;
+  }
+
+  /**
+   * The display name of a statistics column.
+   *
+   * @param column The column index.
+   * @return The display name.
+   */
+  public String getColumnName(int column) {
+    return m_columnNames[column];
+  }
+
+  /**
+   * Whether a statistics column holds double values.
+   *
+   * @param column The column index.
+   * @return {@code true} for a double column, {@code false} for a long
+   *  column.
+   */
+  public boolean isDouble(int column) {
+    return m_doubleColumns[column];
+  }
+
+  /**
+   * Move to the next record.
+   *
+   * @return {@code true} if there is a record, {@code false} if the end of
+   *  the log has been reached.
+   * @throws IOException If the log could not be read.
+   */
+  public boolean next() throws IOException {
+    int n = 0;
+
+    while (n < m_record.length) {
+      final int count = m_in.read(m_record, n, m_record.length - n);
+
+      if (count < 0) {
+        break;
+      }
+
+      n += count;
+    }
+
+    m_haveRecord = n == m_record.length;
+
+    return m_haveRecord;
+  }
+
+  /**
+   * The thread number of the current record.
+   *
+   * @return The thread number.
+   */
+  public int getThreadNumber() {
+    return recordBuffer().getInt(0);
+  }
+
+  /**
+   * The run number of the current record.
+   *
+   * @return The run number.
+   */
+  public int getRunNumber() {
+    return recordBuffer().getInt(4);
+  }
+
+  /**
+   * The test number of the current record.
+   *
+   * @return The test number.
+   */
+  public int getTestNumber() {
+    return recordBuffer().getInt(8);
+  }
+
+  /**
+   * The start time of the current record.
+   *
+   * @return The start time, in milliseconds since the Epoch.
+   */
+  public long getStartTime() {
+    return recordBuffer().getLong(12);
+  }
+
+  /**
+   * The value of a long column for the current record.
+   *
+   * @param column The column index.
+   * @return The value.
+   */
+  public long getLongValue(int column) {
+    return recordBuffer().getLong(FIXED_BYTES + 8 * column);
+  }
+
+  /**
+   * The value of a double column for the current record.
+   *
+   * @param column The column index.
+   * @return The value.
+   */
+  public double getDoubleValue(int column) {
+    return Double.longBitsToDouble(getLongValue(column));
+  }
+
+  private ByteBuffer recordBuffer() {
+    if (!m_haveRecord) {
+      throw new IllegalStateException("No current record");
+    }
+
+    return m_recordBuffer;
+  }
+
+  /**
+   * Close the underlying stream.
+   *
+   * @throws IOException If the stream could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    m_in.close();
+  }
+}
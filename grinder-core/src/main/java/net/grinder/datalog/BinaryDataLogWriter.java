@@ -0,0 +1,134 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import net.grinder.statistics.ExpressionView;
+
+
+/**
+ * Writes a binary data log.
+ *
+ * <p>A binary data log starts with a header that names each of the
+ * statistics columns. Each record that follows has a fixed size, and holds
+ * the thread number, run number, test number, start time, then one eight
+ * byte value for each column.</p>
+ *
+ * @author Philip Aston
+ * @see BinaryDataLogReader
+ */
+public final class BinaryDataLogWriter implements Closeable {
+
+  static final int MAGIC = 0x47444c47;
+  static final short VERSION = 1;
+
+  /**
+   * The number of values at the start of each record that precede the
+   * column values.
+   */
+  public static final int FIXED_VALUES = 4;
+
+  private final DataOutputStream m_out;
+  private final int m_numberOfColumns;
+
+  /**
+   * Constructor. Writes the header.
+   *
+   * @param out The stream to write to.
+   * @param expressionViews The statistics columns.
+   * @throws IOException If the header could not be written.
+   */
+  public BinaryDataLogWriter(OutputStream out,
+                             ExpressionView[] expressionViews)
+    throws IOException {
+
+    m_out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    m_numberOfColumns = expressionViews.length;
+
+    m_out.writeInt(MAGIC);
+    m_out.writeShort(VERSION);
+    m_out.writeInt(m_numberOfColumns);
+
+    for (ExpressionView expressionView : expressionViews) {
+      m_out.writeUTF(expressionView.getDisplayName());
+      m_out.writeBoolean(expressionView.getExpression().isDouble());
+    }
+  }
+
+  /**
+   * The number of {@code long} values that make up a record.
+   *
+   * @return The record width.
+   */
+  public int getRecordWidth() {
+    return FIXED_VALUES + m_numberOfColumns;
+  }
+
+  /**
+   * Write a record.
+   *
+   * @param values
+   *          Holds the thread number, run number, test number, start time,
+   *          then a value for each column. Double column values should be
+   *          encoded with {@link Double#doubleToRawLongBits}.
+   * @param offset
+   *          The index of the first value of the record.
+   * @throws IOException
+   *           If the record could not be written.
+   */
+  public void write(long[] values, int offset) throws IOException {
+    m_out.writeInt((int) values[offset]);
+    m_out.writeInt((int) values[offset + 1]);
+    m_out.writeInt((int) values[offset + 2]);
+    m_out.writeLong(values[offset + 3]);
+
+    final int end = offset + getRecordWidth();
+
+    for (int i = offset + FIXED_VALUES; i < end; ++i) {
+      m_out.writeLong(values[i]);
+    }
+  }
+
+  /**
+   * Flush buffered records to the underlying stream.
+   *
+   * @throws IOException If the records could not be written.
+   */
+  public void flush() throws IOException {
+    m_out.flush();
+  }
+
+  /**
+   * Flush buffered records and close the underlying stream.
+   *
+   * @throws IOException If the stream could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    m_out.close();
+  }
+}
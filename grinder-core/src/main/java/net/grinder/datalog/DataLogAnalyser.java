@@ -0,0 +1,337 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.statistics.StatisticsServices;
+
+
+/**
+ * Reduces worker process data logs to statistics for each test, for each
+ * time bucket.
+ *
+ * <p>Text data logs are split into chunks which are memory mapped and
+ * parsed in parallel. Binary data logs, which are much cheaper to parse,
+ * are read by a single task each. Each task aggregates into its own
+ * {@link TimeBucketedStatistics}, and the results are combined as the
+ * tasks complete. The number of outstanding tasks is limited, so memory
+ * use does not depend on the size of the logs.</p>
+ *
+ * @author Philip Aston
+ */
+public final class DataLogAnalyser {
+
+  private static final int MAXIMUM_LINE_LENGTH = 64 * 1024;
+
+  private final StatisticsServices m_statisticsServices;
+  private final long m_bucketLength;
+  private final int m_threads;
+  private final int m_chunkSize;
+
+  private final AtomicLong m_malformedLines = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param statisticsServices Statistics services.
+   * @param bucketLength Bucket length, in milliseconds.
+   * @param threads Number of threads to parse with.
+   * @param chunkSize Size in bytes of the chunks that text logs are split
+   *  into.
+   */
+  public DataLogAnalyser(StatisticsServices statisticsServices,
+                         long bucketLength,
+                         int threads,
+                         int chunkSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads " +
+                                         threads);
+    }
+
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+    }
+
+    m_statisticsServices = statisticsServices;
+    m_bucketLength = bucketLength;
+    m_threads = threads;
+    m_chunkSize = chunkSize;
+  }
+
+  /**
+   * The number of text data log lines that could not be parsed.
+   *
+   * @return The number of malformed lines.
+   */
+  public long getMalformedLines() {
+    return m_malformedLines.get();
+  }
+
+  /**
+   * Analyse some data logs.
+   *
+   * @param files The text or binary data logs.
+   * @return The statistics.
+   * @throws IOException If a log could not be read.
+   */
+  public TimeBucketedStatistics analyse(List<File> files)
+    throws IOException {
+
+    final TimeBucketedStatistics result = createStatistics();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(m_threads);
+
+    final CompletionService<TimeBucketedStatistics> completionService =
+      new ExecutorCompletionService<TimeBucketedStatistics>(executor);
+
+    int outstanding = 0;
+
+    try {
+      for (File file : files) {
+        for (Callable<TimeBucketedStatistics> task : createTasks(file)) {
+          if (outstanding == m_threads * 2) {
+            addResult(result, completionService);
+            --outstanding;
+          }
+
+          completionService.submit(task);
+          ++outstanding;
+        }
+      }
+
+      while (outstanding > 0) {
+        addResult(result, completionService);
+        --outstanding;
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    return result;
+  }
+
+  private static void addResult(
+    TimeBucketedStatistics result,
+    CompletionService<TimeBucketedStatistics> completionService)
+    throws IOException {
+
+    try {
+      result.add(completionService.take().get());
+    }
+    catch (InterruptedException e) {
+      throw new UncheckedInterruptedException(e);
+    }
+    catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+
+      throw new AssertionError(cause);
+    }
+  }
+
+  private TimeBucketedStatistics createStatistics() {
+    return new TimeBucketedStatistics(m_statisticsServices, m_bucketLength);
+  }
+
+  private List<Callable<TimeBucketedStatistics>> createTasks(
+    final File file) throws IOException {
+
+    final List<Callable<TimeBucketedStatistics>> result =
+      new ArrayList<Callable<TimeBucketedStatistics>>();
+
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+    try {
+      final long length = randomAccessFile.length();
+
+      if (length >= 4 &&
+          randomAccessFile.readInt() == BinaryDataLogWriter.MAGIC) {
+        result.add(new BinaryTask(file));
+        return result;
+      }
+
+      randomAccessFile.seek(0);
+
+      final String header = randomAccessFile.readLine();
+
+      if (header == null) {
+        return result;
+      }
+
+      // Check the header now, rather than in every task.
+      new TextDataLogParser(header);
+
+      final long dataStart = randomAccessFile.getFilePointer();
+
+      for (long start = dataStart; start < length; start += m_chunkSize) {
+        result.add(new TextTask(file,
+                                header,
+                                dataStart,
+                                start,
+                                Math.min(start + m_chunkSize, length)));
+      }
+    }
+    catch (IOException e) {
+      throw new IOException(file + ": " + e.getMessage(), e);
+    }
+    finally {
+      randomAccessFile.close();
+    }
+
+    return result;
+  }
+
+  private final class TextTask implements Callable<TimeBucketedStatistics> {
+    private final File m_file;
+    private final String m_header;
+    private final long m_dataStart;
+    private final long m_start;
+    private final long m_end;
+
+    public TextTask(File file,
+                    String header,
+                    long dataStart,
+                    long start,
+                    long end) {
+      m_file = file;
+      m_header = header;
+      m_dataStart = dataStart;
+      m_start = start;
+      m_end = end;
+    }
+
+    @Override
+    public TimeBucketedStatistics call() throws IOException {
+      final TimeBucketedStatistics result = createStatistics();
+      final TextDataLogParser parser = new TextDataLogParser(m_header);
+
+      final ByteBuffer buffer;
+
+      // Map from the byte before our chunk so the parser can tell whether
+      // the chunk starts a line, and past the end to finish the last line.
+      final long mapStart = Math.max(m_dataStart, m_start - 1);
+
+      final RandomAccessFile file = new RandomAccessFile(m_file, "r");
+
+      try {
+        final long mapEnd =
+          Math.min(file.length(), m_end + MAXIMUM_LINE_LENGTH);
+
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                       mapStart,
+                                       mapEnd - mapStart);
+      }
+      finally {
+        file.close();
+      }
+
+      parser.parse(buffer,
+                   (int) (m_start - mapStart),
+                   (int) (m_end - mapStart),
+                   m_start == m_dataStart,
+                   result);
+
+      m_malformedLines.addAndGet(parser.getMalformedLines());
+
+      return result;
+    }
+  }
+
+  private final class BinaryTask implements Callable<TimeBucketedStatistics> {
+    private final File m_file;
+
+    public BinaryTask(File file) {
+      m_file = file;
+    }
+
+    @Override
+    public TimeBucketedStatistics call() throws IOException {
+      final TimeBucketedStatistics result = createStatistics();
+
+      final BinaryDataLogReader reader =
+        new BinaryDataLogReader(new FileInputStream(m_file));
+
+      try {
+        final int testTimeColumn =
+          findColumn(reader, TextDataLogParser.TEST_TIME_COLUMN);
+        final int errorsColumn =
+          findColumn(reader, TextDataLogParser.ERRORS_COLUMN);
+
+        while (reader.next()) {
+          result.add(reader.getTestNumber(),
+                     reader.getStartTime(),
+                     Math.round(getValue(reader, testTimeColumn) * 1000),
+                     Math.round(getValue(reader, errorsColumn)));
+        }
+      }
+      finally {
+        reader.close();
+      }
+
+      return result;
+    }
+
+    private int findColumn(BinaryDataLogReader reader, String name)
+      throws IOException {
+
+      for (int i = 0; i < reader.getNumberOfColumns(); ++i) {
+        if (reader.getColumnName(i).equals(name)) {
+          return i;
+        }
+      }
+
+      throw new IOException(m_file + ": binary data log does not have a '" +
+                            name + "' column");
+    }
+
+    private double getValue(BinaryDataLogReader reader, int column) {
+      return reader.isDouble(column) ?
+        reader.getDoubleValue(column) : reader.getLongValue(column);
+    }
+  }
+}
@@ -0,0 +1,280 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Parses the lines of a text data log.
+ *
+ * <p>The parser works directly on the bytes of a buffer, typically a
+ * memory mapped region of the log, and only converts the fields it needs.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class TextDataLogParser {
+
+  static final String TEST_TIME_COLUMN = "Test time";
+  static final String ERRORS_COLUMN = "Errors";
+
+  private static final int TEST_FIELD = 2;
+  private static final int START_TIME_FIELD = 3;
+
+  /** Decimals with no more digits than this are converted exactly. */
+  private static final int MAXIMUM_FAST_DIGITS = 15;
+
+  private final int m_testTimeField;
+  private final int m_errorsField;
+  private final int m_lastField;
+
+  private long m_malformedLines;
+
+  /**
+   * Constructor.
+   *
+   * @param header The header line of the data log.
+   * @throws IOException If the header does not have the columns required.
+   */
+  public TextDataLogParser(String header) throws IOException {
+    final List<String> columns = Arrays.asList(header.trim().split(",\\s*"));
+
+    m_testTimeField = columns.indexOf(TEST_TIME_COLUMN);
+    m_errorsField = columns.indexOf(ERRORS_COLUMN);
+
+    if (m_testTimeField <= START_TIME_FIELD ||
+        m_errorsField <= START_TIME_FIELD) {
+      throw new IOException("Data log header does not have '" +
+                            TEST_TIME_COLUMN + "' and '" + ERRORS_COLUMN +
+                            "' columns");
+    }
+
+    m_lastField = Math.max(m_testTimeField, m_errorsField);
+  }
+
+  /**
+   * The number of lines that could not be parsed.
+   *
+   * @return The number of malformed lines.
+   */
+  public long getMalformedLines() {
+    return m_malformedLines;
+  }
+
+  /**
+   * Parse the lines that start within a region of a buffer.
+   *
+   * <p>If {@code start} is not at the beginning of a line, the partial
+   * line is skipped. The last line is read to its end, even if that is
+   * beyond {@code end}.</p>
+   *
+   * @param buffer The buffer.
+   * @param start Index of the start of the region.
+   * @param end Index of the end of the region.
+   * @param atLineStart Whether {@code start} is known to be at the
+   *  beginning of a line.
+   * @param result Where to add the records.
+   */
+  public void parse(ByteBuffer buffer,
+                    int start,
+                    int end,
+                    boolean atLineStart,
+                    TimeBucketedStatistics result) {
+
+    final int limit = buffer.limit();
+    int position = start;
+
+    if (!atLineStart) {
+      // Lines that start before the region belong to someone else.
+      if (position == 0 || buffer.get(position - 1) != '\n') {
+        while (position < limit && buffer.get(position) != '\n') {
+          ++position;
+        }
+
+        ++position;
+      }
+    }
+
+    while (position < end) {
+      int lineEnd = position;
+
+      while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+        ++lineEnd;
+      }
+
+      if (lineEnd > position) {
+        parseLine(buffer, position, lineEnd, result);
+      }
+
+      position = lineEnd + 1;
+    }
+  }
+
+  private void parseLine(ByteBuffer buffer,
+                         int start,
+                         int end,
+                         TimeBucketedStatistics result) {
+    int test = 0;
+    long startTime = 0;
+    long testTime = 0;
+    long errors = 0;
+
+    int field = 0;
+    int fieldStart = start;
+
+    try {
+      for (int i = start; i <= end && field <= m_lastField; ++i) {
+        if (i < end && buffer.get(i) != ',') {
+          continue;
+        }
+
+        if (field == TEST_FIELD) {
+          test = (int) parseLong(buffer, fieldStart, i);
+        }
+        else if (field == START_TIME_FIELD) {
+          startTime = parseLong(buffer, fieldStart, i);
+        }
+        else if (field == m_testTimeField) {
+          testTime = Math.round(parseDouble(buffer, fieldStart, i) * 1000);
+        }
+        else if (field == m_errorsField) {
+          errors = parseLong(buffer, fieldStart, i);
+        }
+
+        ++field;
+        fieldStart = i + 1;
+      }
+    }
+    catch (NumberFormatException e) {
+      ++m_malformedLines;
+      return;
+    }
+
+    if (field <= m_lastField) {
+      ++m_malformedLines;
+      return;
+    }
+
+    result.add(test, startTime, testTime, errors);
+  }
+
+  static long parseLong(ByteBuffer buffer, int start, int end) {
+    while (start < end && isSpace(buffer.get(start))) {
+      ++start;
+    }
+
+    while (end > start && isSpace(buffer.get(end - 1))) {
+      --end;
+    }
+
+    boolean negative = false;
+
+    if (start < end && buffer.get(start) == '-') {
+      negative = true;
+      ++start;
+    }
+
+    if (start == end) {
+      throw new NumberFormatException("Empty field");
+    }
+
+    long result = 0;
+
+    for (int i = start; i < end; ++i) {
+      final int digit = buffer.get(i) - '0';
+
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Bad digit");
+      }
+
+      result = result * 10 + digit;
+    }
+
+    return negative ? -result : result;
+  }
+
+  static double parseDouble(ByteBuffer buffer, int start, int end) {
+    while (start < end && isSpace(buffer.get(start))) {
+      ++start;
+    }
+
+    while (end > start && isSpace(buffer.get(end - 1))) {
+      --end;
+    }
+
+    // Fast path for plain decimals, the common case.
+    long mantissa = 0;
+    long scale = 1;
+    int digits = 0;
+    boolean point = false;
+    boolean negative = false;
+    int i = start;
+
+    if (i < end && buffer.get(i) == '-') {
+      negative = true;
+      ++i;
+    }
+
+    for (; i < end && digits <= MAXIMUM_FAST_DIGITS; ++i) {
+      final byte b = buffer.get(i);
+
+      if (b == '.' && !point) {
+        point = true;
+      }
+      else if (b >= '0' && b <= '9') {
+        mantissa = mantissa * 10 + b - '0';
+        ++digits;
+
+        if (point) {
+          scale *= 10;
+        }
+      }
+      else {
+        break;
+      }
+    }
+
+    if (i == end && digits > 0 && digits <= MAXIMUM_FAST_DIGITS) {
+      final double result = (double) mantissa / scale;
+      return negative ? -result : result;
+    }
+
+    // Exponents, NaN, very long values.
+    final byte[] bytes = new byte[end - start];
+
+    for (int j = 0; j < bytes.length; ++j) {
+      bytes[j] = buffer.get(start + j);
+    }
+
+    return Double.parseDouble(new String(bytes));
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+}
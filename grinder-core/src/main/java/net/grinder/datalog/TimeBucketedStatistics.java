@@ -0,0 +1,259 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticExpression;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+import net.grinder.statistics.StatisticsView;
+
+
+/**
+ * Aggregates data log records into statistics for each test, for each time
+ * bucket.
+ *
+ * <p>Records are aggregated in the same way that a worker process
+ * aggregates test results: a failed test only contributes to the
+ * <em>errors</em> statistic. The memory used depends on the number of
+ * tests and buckets, not on the number of records.</p>
+ *
+ * <p>Not thread safe. Parallel analysis should aggregate into separate
+ * instances and combine them with {@link #add(TimeBucketedStatistics)}.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public final class TimeBucketedStatistics {
+
+  private static final String SEPARATOR = ", ";
+  private static final String LINE_SEPARATOR =
+    System.getProperty("line.separator");
+
+  private final StatisticsSetFactory m_statisticsSetFactory;
+  private final StatisticsIndexMap.LongIndex m_errorsIndex;
+  private final StatisticsIndexMap.LongIndex m_periodIndex;
+  private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex;
+  private final long m_bucketLength;
+
+  private final SortedMap<Long, SortedMap<Integer, StatisticsSet>> m_buckets =
+    new TreeMap<Long, SortedMap<Integer, StatisticsSet>>();
+
+  private long m_numberOfRecords;
+
+  // Records are mostly in time order, so cache the last bucket.
+  private long m_lastBucketStart = -1;
+  private SortedMap<Integer, StatisticsSet> m_lastBucket;
+
+  /**
+   * Constructor.
+   *
+   * @param statisticsServices Statistics services.
+   * @param bucketLength Bucket length, in milliseconds.
+   */
+  public TimeBucketedStatistics(StatisticsServices statisticsServices,
+                                long bucketLength) {
+    if (bucketLength < 1) {
+      throw new IllegalArgumentException("Invalid bucket length " +
+                                         bucketLength);
+    }
+
+    m_statisticsSetFactory = statisticsServices.getStatisticsSetFactory();
+
+    final StatisticsIndexMap indexMap =
+      statisticsServices.getStatisticsIndexMap();
+
+    m_errorsIndex = indexMap.getLongIndex("errors");
+    m_periodIndex = indexMap.getLongIndex("period");
+    m_timedTestsIndex = indexMap.getLongSampleIndex("timedTests");
+    m_bucketLength = bucketLength;
+  }
+
+  /**
+   * The bucket length.
+   *
+   * @return The bucket length, in milliseconds.
+   */
+  public long getBucketLength() {
+    return m_bucketLength;
+  }
+
+  /**
+   * The number of records added.
+   *
+   * @return The number of records.
+   */
+  public long getNumberOfRecords() {
+    return m_numberOfRecords;
+  }
+
+  /**
+   * Add a record.
+   *
+   * @param test The test number.
+   * @param startTime The start time, in milliseconds since the Epoch.
+   * @param testTime The test time, in microseconds.
+   * @param errors The number of errors.
+   */
+  public void add(int test, long startTime, long testTime, long errors) {
+    final StatisticsSet statistics = getStatistics(test, startTime);
+
+    if (errors == 0) {
+      statistics.addSample(m_timedTestsIndex, testTime);
+    }
+    else {
+      statistics.addValue(m_errorsIndex, errors);
+    }
+
+    ++m_numberOfRecords;
+  }
+
+  /**
+   * Add the statistics held by another instance.
+   *
+   * @param other The other instance. Should have the same bucket length.
+   */
+  public void add(TimeBucketedStatistics other) {
+    if (other.m_bucketLength != m_bucketLength) {
+      throw new IllegalArgumentException("Bucket lengths differ");
+    }
+
+    for (Map.Entry<Long, SortedMap<Integer, StatisticsSet>> bucket :
+         other.m_buckets.entrySet()) {
+
+      for (Map.Entry<Integer, StatisticsSet> test :
+           bucket.getValue().entrySet()) {
+        getStatistics(test.getKey(), bucket.getKey()).add(test.getValue());
+      }
+    }
+
+    m_numberOfRecords += other.m_numberOfRecords;
+  }
+
+  private StatisticsSet getStatistics(int test, long startTime) {
+    final long bucketStart = startTime - startTime % m_bucketLength;
+
+    if (bucketStart != m_lastBucketStart || m_lastBucket == null) {
+      m_lastBucket = m_buckets.get(bucketStart);
+
+      if (m_lastBucket == null) {
+        m_lastBucket = new TreeMap<Integer, StatisticsSet>();
+        m_buckets.put(bucketStart, m_lastBucket);
+      }
+
+      m_lastBucketStart = bucketStart;
+    }
+
+    StatisticsSet statistics = m_lastBucket.get(test);
+
+    if (statistics == null) {
+      statistics = m_statisticsSetFactory.create();
+      m_lastBucket.put(test, statistics);
+    }
+
+    return statistics;
+  }
+
+  /**
+   * Write the statistics as comma separated values. There is a line for
+   * each test in each bucket, followed by a totals line for the bucket.
+   *
+   * @param view The statistics to write.
+   * @param out Where to write the statistics.
+   * @throws IOException If the statistics could not be written.
+   */
+  public void write(StatisticsView view, Writer out) throws IOException {
+    final ExpressionView[] expressionViews = view.getExpressionViews();
+
+    final StringBuilder line =
+      new StringBuilder("Bucket start (ms since Epoch), Test");
+
+    for (ExpressionView expressionView : expressionViews) {
+      line.append(SEPARATOR);
+      line.append(expressionView.getDisplayName());
+    }
+
+    line.append(LINE_SEPARATOR);
+    out.append(line);
+
+    for (Map.Entry<Long, SortedMap<Integer, StatisticsSet>> bucket :
+         m_buckets.entrySet()) {
+
+      final StatisticsSet totals = m_statisticsSetFactory.create();
+
+      for (Map.Entry<Integer, StatisticsSet> test :
+           bucket.getValue().entrySet()) {
+        totals.add(test.getValue());
+
+        writeLine(line,
+                  bucket.getKey(),
+                  test.getKey().toString(),
+                  test.getValue(),
+                  expressionViews,
+                  out);
+      }
+
+      writeLine(line, bucket.getKey(), "Total", totals, expressionViews, out);
+    }
+
+    out.flush();
+  }
+
+  private void writeLine(StringBuilder line,
+                         long bucketStart,
+                         String test,
+                         StatisticsSet statistics,
+                         ExpressionView[] expressionViews,
+                         Writer out) throws IOException {
+
+    statistics.setValue(m_periodIndex, m_bucketLength);
+
+    line.setLength(0);
+    line.append(bucketStart);
+    line.append(SEPARATOR);
+    line.append(test);
+
+    for (ExpressionView expressionView : expressionViews) {
+      line.append(SEPARATOR);
+
+      final StatisticExpression expression = expressionView.getExpression();
+
+      if (expression.isDouble()) {
+        line.append(expression.getDoubleValue(statistics));
+      }
+      else {
+        line.append(expression.getLongValue(statistics));
+      }
+    }
+
+    line.append(LINE_SEPARATOR);
+    out.append(line);
+  }
+}
@@ -248,6 +248,17 @@ public final class AgentImplementation implements Agent {
 
           final WorkerFactory workerFactory;
 
+          final GrinderProperties workerProperties;
+
+          if (consoleCommunication != null &&
+              properties.getBoolean("grinder.aggregateWorkerReports", false)) {
+            workerProperties =
+              consoleCommunication.aggregateWorkerReports(properties);
+          }
+          else {
+            workerProperties = properties;
+          }
+
           if (!properties.getBoolean("grinder.debug.singleprocess", false)) {
 
             final WorkerProcessCommandLine workerCommandLine =
@@ -261,7 +272,7 @@ public final class AgentImplementation implements Agent {
             workerFactory =
               new ProcessWorkerFactory(
                 workerCommandLine, m_agentIdentity, m_fanOutStreamSender,
-                consoleCommunication != null, script, properties);
+                consoleCommunication != null, script, workerProperties);
           }
           else {
             m_logger.info(
@@ -276,7 +287,7 @@ public final class AgentImplementation implements Agent {
             workerFactory =
               new DebugThreadWorkerFactory(
                 m_agentIdentity, m_fanOutStreamSender,
-                consoleCommunication != null, script, properties);
+                consoleCommunication != null, script, workerProperties);
           }
 
           final WorkerLauncher workerLauncher =
@@ -463,6 +474,7 @@ public final class AgentImplementation implements Agent {
     private final Connector m_connector;
     private final TimerTask m_reportRunningTask;
     private final MessagePump m_messagePump;
+    private WorkerReportRelay m_workerReportRelay;
 
     public ConsoleCommunication(final Connector connector)
         throws CommunicationException, FileStore.FileStoreException {
@@ -527,9 +539,39 @@ public final class AgentImplementation implements Agent {
       return m_connector;
     }
 
+    /**
+     * Start relaying worker process reports to the console, if we haven't
+     * already.
+     *
+     * @param properties The properties.
+     * @return Properties that direct worker processes to the relay.
+     * @throws CommunicationException If the relay could not be started.
+     */
+    public GrinderProperties aggregateWorkerReports(
+      final GrinderProperties properties) throws CommunicationException {
+
+      if (m_workerReportRelay == null) {
+        m_workerReportRelay =
+          new WorkerReportRelay(
+            m_sender,
+            m_timer,
+            properties.getInt("grinder.reportToConsole.interval", 500),
+            m_logger);
+
+        m_logger.info("aggregating worker process reports on port {}",
+                      m_workerReportRelay.getPort());
+      }
+
+      return m_workerReportRelay.workerProperties(properties);
+    }
+
     public void shutdown() {
       m_reportRunningTask.cancel();
 
+      if (m_workerReportRelay != null) {
+        m_workerReportRelay.shutdown();
+      }
+
       try {
         m_sender.send(
           new AgentProcessReportMessage(
@@ -0,0 +1,282 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.agent;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.processidentity.ProcessReport;
+import net.grinder.communication.Acceptor;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Message;
+import net.grinder.communication.MessagePump;
+import net.grinder.communication.SelectorServerReceiver;
+import net.grinder.communication.Sender;
+import net.grinder.messages.console.RelayedReportsMessage;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerAddress;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.util.StandardTimeAuthority;
+
+import org.slf4j.Logger;
+
+
+/**
+ * Accepts connections from an agent's worker processes, and forwards their
+ * reports to the console.
+ *
+ * <p>
+ * Statistics reports received during each report interval are merged into a
+ * single report, and only the latest running report from each worker process
+ * is kept. Other messages cause the pending reports to be forwarded
+ * immediately, so the console sees them in the order the workers sent them.
+ * Worker process reports keep their addresses, so the console can still show
+ * each agent's worker processes.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class WorkerReportRelay {
+
+  private static final long IDLE_CHECK_INTERVAL = 500;
+  private static final long INACTIVE_CLIENT_TIME_OUT = 30000;
+
+  private final Sender m_consoleSender;
+  private final Logger m_logger;
+  private final String m_host;
+  private final Acceptor m_acceptor;
+  private final SelectorServerReceiver m_receiver;
+  private final MessagePump m_messagePump;
+  private final TimerTask m_flushTask;
+
+  // Guarded by this.
+  private TestStatisticsMap m_statistics = new TestStatisticsMap();
+
+  // Guarded by this.
+  private final Map<WorkerAddress, WorkerProcessReportMessage>
+    m_runningReports =
+      new LinkedHashMap<WorkerAddress, WorkerProcessReportMessage>();
+
+  // Guarded by this.
+  private boolean m_consoleSendFailed;
+
+  /**
+   * Constructor.
+   *
+   * @param consoleSender
+   *          Sender used to forward reports to the console.
+   * @param timer
+   *          Timer used to schedule forwarding.
+   * @param reportInterval
+   *          Interval in milliseconds at which pending reports are forwarded.
+   * @param logger
+   *          Logger.
+   * @throws CommunicationException
+   *           If the relay could not listen for worker connections.
+   */
+  public WorkerReportRelay(Sender consoleSender,
+                           Timer timer,
+                           long reportInterval,
+                           Logger logger)
+    throws CommunicationException {
+
+    m_consoleSender = consoleSender;
+    m_logger = logger;
+
+    try {
+      m_host = InetAddress.getByName(null).getHostAddress();
+    }
+    catch (UnknownHostException e) {
+      throw new CommunicationException("Failed to resolve loopback address",
+                                       e);
+    }
+
+    final StandardTimeAuthority timeAuthority = new StandardTimeAuthority();
+
+    m_acceptor =
+      new Acceptor(m_host,
+                   0,
+                   1,
+                   timeAuthority,
+                   true);
+
+    m_receiver = new SelectorServerReceiver(timeAuthority);
+    m_receiver.receiveFrom(m_acceptor,
+                           new ConnectionType[] { ConnectionType.WORKER },
+                           1,
+                           IDLE_CHECK_INTERVAL,
+                           INACTIVE_CLIENT_TIME_OUT);
+
+    m_messagePump = new MessagePump(m_receiver, new RelaySender(), 1);
+    m_messagePump.start();
+
+    m_flushTask = new TimerTask() {
+      @Override
+      public void run() {
+        flush();
+      }
+    };
+
+    timer.schedule(m_flushTask, reportInterval, reportInterval);
+  }
+
+  /**
+   * The port on which the relay accepts worker connections.
+   *
+   * @return The port.
+   */
+  public int getPort() {
+    return m_acceptor.getPort();
+  }
+
+  /**
+   * Create worker process properties that direct the worker processes to
+   * report to the relay rather than the console.
+   *
+   * @param properties
+   *          The agent properties.
+   * @return The worker process properties.
+   */
+  public GrinderProperties workerProperties(GrinderProperties properties) {
+    final GrinderProperties result = new GrinderProperties();
+    result.putAll(properties);
+    result.setAssociatedFile(properties.getAssociatedFile());
+
+    result.setProperty(GrinderProperties.CONSOLE_HOST, m_host);
+    result.setInt(GrinderProperties.CONSOLE_PORT, getPort());
+
+    return result;
+  }
+
+  /**
+   * Forward any pending reports, and stop accepting worker connections.
+   */
+  public void shutdown() {
+    m_flushTask.cancel();
+
+    try {
+      m_acceptor.shutdown();
+    }
+    catch (CommunicationException e) {
+      m_logger.error(e.getMessage(), e);
+    }
+
+    m_messagePump.shutdown();
+
+    flush();
+  }
+
+  private synchronized void add(Message message) {
+    if (message instanceof ReportStatisticsMessage) {
+      try {
+        m_statistics.add(
+          ((ReportStatisticsMessage) message).getStatistics());
+      }
+      catch (IOException e) {
+        m_logger.error("Failed to read worker statistics", e);
+      }
+    }
+    else if (message instanceof WorkerProcessReportMessage &&
+             ((WorkerProcessReportMessage) message).getState() ==
+               ProcessReport.State.RUNNING) {
+      final WorkerProcessReportMessage report =
+        (WorkerProcessReportMessage) message;
+
+      // Remove first, so the map iterates in order of the latest reports.
+      m_runningReports.remove(report.getProcessAddress());
+      m_runningReports.put(report.getProcessAddress(), report);
+    }
+    else {
+      flush(message);
+    }
+  }
+
+  private void flush() {
+    flush(null);
+  }
+
+  private synchronized void flush(Message lastMessage) {
+    final RelayedReportsMessage relayed = new RelayedReportsMessage();
+
+    if (m_statistics.size() > 0) {
+      relayed.add(null, new ReportStatisticsMessage(m_statistics));
+      m_statistics = new TestStatisticsMap();
+    }
+
+    for (WorkerProcessReportMessage report : m_runningReports.values()) {
+      relayed.add(report.getProcessAddress(), report);
+    }
+
+    m_runningReports.clear();
+
+    if (lastMessage instanceof WorkerProcessReportMessage) {
+      relayed.add(
+        ((WorkerProcessReportMessage) lastMessage).getProcessAddress(),
+        lastMessage);
+    }
+    else if (lastMessage != null) {
+      relayed.add(null, lastMessage);
+    }
+
+    if (relayed.isEmpty()) {
+      return;
+    }
+
+    try {
+      m_consoleSender.send(relayed);
+      m_consoleSendFailed = false;
+    }
+    catch (CommunicationException e) {
+      // Only log the first of a sequence of failures.
+      if (!m_consoleSendFailed) {
+        m_consoleSendFailed = true;
+        m_logger.error(e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * The {@link MessagePump} shuts itself down if its sender throws an
+   * exception, so we never do.
+   */
+  private final class RelaySender implements Sender {
+
+    @Override
+    public void send(Message message) {
+      add(message);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+  }
+}
@@ -0,0 +1,377 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.TimeAuthority;
+import net.grinder.engine.common.EngineException;
+import net.grinder.util.Sleeper;
+import net.grinder.util.SleeperImplementation;
+
+
+/**
+ * Open model load generation. Rather than each worker thread starting its next
+ * run as soon as the previous one completes, the worker threads take runs from
+ * a shared schedule that starts them at a target arrival rate. The worker
+ * threads act as a bounded pool; if none are free when a run is due, the run
+ * starts late, and its delay is included in the time of its first test.
+ *
+ * <p>
+ * The arrival rate profile is a sequence of segments, each lasting for a
+ * period of time over which the rate changes linearly. The final rate is held
+ * until the schedule is complete.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class ArrivalSchedule {
+
+  private final TimeAuthority m_timeAuthority;
+  private final Sleeper m_sleeper;
+  private final List<Segment> m_segments;
+  private final int m_maximumRuns;
+  private final long m_maximumLateness;
+
+  // Guarded by this.
+  private long m_origin = -1;
+  private int m_numberOfArrivals = 0;
+
+  /**
+   * Factory method that configures a schedule from properties.
+   *
+   * @param properties
+   *          The properties.
+   * @param timeAuthority
+   *          Time authority.
+   * @return The schedule, or {@code null} if the properties do not specify an
+   *         arrival rate.
+   * @throws EngineException
+   *           If the properties are invalid.
+   */
+  public static ArrivalSchedule create(final GrinderProperties properties,
+                                       final TimeAuthority timeAuthority)
+    throws EngineException {
+
+    final List<Segment> segments = new ArrayList<Segment>();
+
+    final String steps = properties.getProperty("grinder.arrivalRate.steps");
+
+    if (steps != null && steps.trim().length() > 0) {
+      for (final String step : steps.split(",")) {
+        final String[] parts = step.split(":");
+
+        try {
+          if (parts.length != 2) {
+            throw new NumberFormatException();
+          }
+
+          final double rate = Double.parseDouble(parts[0].trim());
+          final long duration = Long.parseLong(parts[1].trim());
+
+          if (rate < 0 || duration <= 0) {
+            throw new NumberFormatException();
+          }
+
+          segments.add(new Segment(duration, rate, rate));
+        }
+        catch (final NumberFormatException e) {
+          throw new EngineException(
+            "Invalid grinder.arrivalRate.steps '" + steps +
+            "', expected a list of rate:duration pairs");
+        }
+      }
+    }
+    else {
+      final double rate = properties.getDouble("grinder.arrivalRate", 0);
+
+      if (rate <= 0) {
+        return null;
+      }
+
+      final long rampUp = properties.getLong("grinder.arrivalRate.rampUp", 0);
+
+      if (rampUp > 0) {
+        segments.add(new Segment(rampUp, 0, rate));
+      }
+
+      segments.add(new Segment(1, rate, rate));
+    }
+
+    return new ArrivalSchedule(
+      timeAuthority,
+      new SleeperImplementation(timeAuthority, null, 1, 0),
+      segments,
+      properties.getInt("grinder.runs", 1),
+      properties.getLong("grinder.arrivalRate.maximumLateness", 0));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param timeAuthority
+   *          Time authority.
+   * @param sleeper
+   *          Used to wait for runs to become due.
+   * @param segments
+   *          The arrival rate profile. Must not be empty.
+   * @param maximumRuns
+   *          The total number of runs to start. {@code 0} means no limit.
+   * @param maximumLateness
+   *          Runs that cannot be started within this many milliseconds of
+   *          their scheduled time are dropped. {@code 0} means runs are never
+   *          dropped.
+   */
+  ArrivalSchedule(final TimeAuthority timeAuthority,
+                  final Sleeper sleeper,
+                  final List<Segment> segments,
+                  final int maximumRuns,
+                  final long maximumLateness) {
+    m_timeAuthority = timeAuthority;
+    m_sleeper = sleeper;
+    m_segments = segments;
+    m_maximumRuns = maximumRuns;
+    m_maximumLateness = maximumLateness;
+  }
+
+  /**
+   * Claim the next run, waiting until it is due.
+   *
+   * @return The scheduled start, or {@code null} if the schedule is complete.
+   * @throws Sleeper.ShutdownException
+   *           If the worker process is shutting down.
+   */
+  public ScheduledStart next() throws Sleeper.ShutdownException {
+
+    int droppedStarts = 0;
+
+    while (true) {
+      final long now;
+      final long intendedStart;
+
+      synchronized (this) {
+        now = m_timeAuthority.getTimeInMilliseconds();
+
+        if (m_maximumRuns != 0 && m_numberOfArrivals >= m_maximumRuns) {
+          return null;
+        }
+
+        if (m_origin == -1) {
+          m_origin = now;
+        }
+
+        final long offset = arrivalTime(m_numberOfArrivals);
+
+        if (offset < 0) {
+          return null;
+        }
+
+        ++m_numberOfArrivals;
+        intendedStart = m_origin + offset;
+      }
+
+      final long lateness = now - intendedStart;
+
+      if (lateness > 0) {
+        if (m_maximumLateness > 0 && lateness > m_maximumLateness) {
+          ++droppedStarts;
+          continue;
+        }
+
+        return new ScheduledStart(lateness, 1, droppedStarts);
+      }
+
+      if (lateness < 0) {
+        m_sleeper.sleepNormal(-lateness, 0);
+      }
+
+      return new ScheduledStart(
+        Math.max(m_timeAuthority.getTimeInMilliseconds() - intendedStart, 0),
+        0,
+        droppedStarts);
+    }
+  }
+
+  /**
+   * Find the time at which the profile reaches a given number of arrivals.
+   *
+   * @param arrivals
+   *          The number of arrivals.
+   * @return Milliseconds since the start of the schedule, or {@code -1} if the
+   *         profile never reaches {@code arrivals}.
+   */
+  long arrivalTime(final long arrivals) {
+    double remaining = arrivals;
+    double time = 0;
+
+    for (int i = 0; i < m_segments.size(); ++i) {
+      final Segment segment = m_segments.get(i);
+
+      if (i == m_segments.size() - 1) {
+        // The final rate is held indefinitely.
+        final double endRate = segment.getEndRate();
+        final double segmentArrivals = segment.getArrivals();
+
+        if (remaining <= segmentArrivals) {
+          return Math.round(time + segment.timeOf(remaining));
+        }
+
+        if (endRate <= 0) {
+          return -1;
+        }
+
+        return Math.round(time + segment.getDuration() +
+                          (remaining - segmentArrivals) * 1000 / endRate);
+      }
+
+      final double segmentArrivals = segment.getArrivals();
+
+      if (remaining < segmentArrivals) {
+        return Math.round(time + segment.timeOf(remaining));
+      }
+
+      remaining -= segmentArrivals;
+      time += segment.getDuration();
+    }
+
+    return -1;
+  }
+
+  /**
+   * A period of the arrival rate profile.
+   */
+  static final class Segment {
+    private final long m_duration;
+    private final double m_startRate;
+    private final double m_endRate;
+
+    /**
+     * Constructor.
+     *
+     * @param duration Duration in milliseconds.
+     * @param startRate Arrival rate at the start, in runs per second.
+     * @param endRate Arrival rate at the end, in runs per second.
+     */
+    Segment(final long duration,
+            final double startRate,
+            final double endRate) {
+      m_duration = duration;
+      m_startRate = startRate;
+      m_endRate = endRate;
+    }
+
+    long getDuration() {
+      return m_duration;
+    }
+
+    double getEndRate() {
+      return m_endRate;
+    }
+
+    double getArrivals() {
+      return (m_startRate + m_endRate) * m_duration / 2000;
+    }
+
+    /**
+     * Solve {@code arrivals = a t + (b - a) t^2 / 2d} for {@code t}.
+     */
+    double timeOf(final double arrivals) {
+      final double a = m_startRate / 1000;
+      final double b = m_endRate / 1000;
+
+      if (arrivals <= 0) {
+        return 0;
+      }
+
+      if (a == b) {
+        return arrivals / a;
+      }
+
+      final double k = (b - a) / m_duration;
+
+      return (Math.sqrt(a * a + 2 * k * arrivals) - a) / k;
+    }
+  }
+
+  /**
+   * The result of {@link ArrivalSchedule#next()}.
+   */
+  static final class ScheduledStart {
+    private final long m_delay;
+    private final int m_lateStarts;
+    private final int m_droppedStarts;
+
+    ScheduledStart(final long delay,
+                   final int lateStarts,
+                   final int droppedStarts) {
+      m_delay = delay;
+      m_lateStarts = lateStarts;
+      m_droppedStarts = droppedStarts;
+    }
+
+    /**
+     * How long after its scheduled time the run started.
+     *
+     * @return The delay in milliseconds.
+     */
+    public long getDelay() {
+      return m_delay;
+    }
+
+    /**
+     * The number of late starts to report with the run.
+     *
+     * @return The number of late starts.
+     */
+    public int getLateStarts() {
+      return m_lateStarts;
+    }
+
+    /**
+     * The number of dropped starts to report with the run.
+     *
+     * @return The number of dropped starts.
+     */
+    public int getDroppedStarts() {
+      return m_droppedStarts;
+    }
+
+    /**
+     * Combine the counts of an unreported start with this start.
+     *
+     * @param unreported
+     *          A start that was not reported because its run performed no
+     *          tests.
+     * @return The combined start. It has our delay.
+     */
+    public ScheduledStart merge(final ScheduledStart unreported) {
+      return new ScheduledStart(
+        m_delay,
+        m_lateStarts + unreported.m_lateStarts,
+        m_droppedStarts + unreported.m_droppedStarts);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+import net.grinder.common.Test;
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.datalog.BinaryDataLogWriter;
+import net.grinder.engine.process.DataLogRingBuffer.RecordHandler;
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticExpression;
+import net.grinder.statistics.StatisticsSet;
+
+import org.slf4j.Logger;
+
+
+/**
+ * An alternative to {@link ThreadDataLogger} that writes a binary data
+ * log.
+ *
+ * <p>Worker threads copy their results into a {@link DataLogRingBuffer}
+ * shared by the process. A background thread drains the buffer to a
+ * {@link BinaryDataLogWriter}. Worker threads are never blocked by the
+ * writer; if the buffer is full, their records are dropped.</p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class BinaryDataLogger {
+
+  private static final long IDLE_PARK_NANOS = 1000000;
+
+  private final StatisticExpression[] m_expressions;
+  private final BinaryDataLogWriter m_writer;
+  private final DataLogRingBuffer m_ringBuffer;
+  private final Logger m_logger;
+  private final Thread m_thread;
+
+  private volatile boolean m_shutdown;
+
+  /**
+   * Constructor.
+   *
+   * @param out Where to write the log.
+   * @param expressionViews The statistics to log for each test.
+   * @param capacity The number of records the buffer can hold.
+   * @param logger Logger to which failures are reported.
+   * @throws IOException If the log header could not be written.
+   */
+  public BinaryDataLogger(OutputStream out,
+                          ExpressionView[] expressionViews,
+                          int capacity,
+                          Logger logger) throws IOException {
+
+    m_expressions = new StatisticExpression[expressionViews.length];
+
+    for (int i = 0; i < expressionViews.length; ++i) {
+      m_expressions[i] = expressionViews[i].getExpression();
+    }
+
+    m_writer = new BinaryDataLogWriter(out, expressionViews);
+    m_ringBuffer =
+      new DataLogRingBuffer(capacity, m_writer.getRecordWidth());
+    m_logger = logger;
+
+    m_thread = new Thread(new Runnable() {
+        public void run() {
+          writeRecords();
+        }
+      },
+      "data log writer");
+
+    m_thread.setDaemon(true);
+    m_thread.start();
+  }
+
+  /**
+   * Publish a record.
+   *
+   * @param threadNumber The worker thread.
+   * @param runNumber The run number.
+   * @param test The test.
+   * @param startTime The start time of the test, in milliseconds since the
+   *  Epoch.
+   * @param statistics The statistics for the test.
+   * @return {@code true} if the record was published, {@code false} if it
+   *  was dropped because the buffer was full.
+   */
+  public boolean report(int threadNumber,
+                        int runNumber,
+                        Test test,
+                        long startTime,
+                        StatisticsSet statistics) {
+
+    final long sequence = m_ringBuffer.claim();
+
+    if (sequence < 0) {
+      return false;
+    }
+
+    try {
+      m_ringBuffer.set(sequence, 0, threadNumber);
+      m_ringBuffer.set(sequence, 1, runNumber);
+      m_ringBuffer.set(sequence, 2, test.getNumber());
+      m_ringBuffer.set(sequence, 3, startTime);
+
+      for (int i = 0; i < m_expressions.length; ++i) {
+        final StatisticExpression expression = m_expressions[i];
+
+        final long value;
+
+        if (expression.isDouble()) {
+          value = Double.doubleToRawLongBits(
+                    expression.getDoubleValue(statistics));
+        }
+        else {
+          value = expression.getLongValue(statistics);
+        }
+
+        m_ringBuffer.set(sequence, BinaryDataLogWriter.FIXED_VALUES + i,
+                         value);
+      }
+    }
+    finally {
+      m_ringBuffer.publish(sequence);
+    }
+
+    return true;
+  }
+
+  /**
+   * The number of records dropped because the buffer was full.
+   *
+   * @return The number of dropped records.
+   */
+  public long getDropped() {
+    return m_ringBuffer.getDropped();
+  }
+
+  /**
+   * Write out the buffered records and close the log. Records published
+   * after this method is called are not written.
+   */
+  public void shutdown() {
+    m_shutdown = true;
+    LockSupport.unpark(m_thread);
+
+    try {
+      m_thread.join();
+    }
+    catch (InterruptedException e) {
+      throw new UncheckedInterruptedException(e);
+    }
+  }
+
+  private void writeRecords() {
+    final RecordHandler handler = new RecordHandler() {
+        public void handle(long[] values, int offset) throws IOException {
+          m_writer.write(values, offset);
+        }
+      };
+
+    try {
+      boolean unflushed = false;
+
+      while (!m_shutdown) {
+        if (m_ringBuffer.drain(handler) > 0) {
+          unflushed = true;
+        }
+        else {
+          if (unflushed) {
+            m_writer.flush();
+            unflushed = false;
+          }
+
+          LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+      }
+
+      m_ringBuffer.drain(handler);
+    }
+    catch (IOException e) {
+      m_logger.error("Failed to write binary data log, " +
+                     "further records will be dropped", e);
+    }
+    finally {
+      try {
+        m_writer.close();
+      }
+      catch (IOException e) {
+        m_logger.error("Failed to close binary data log", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A bounded, multiple producer, single consumer queue of fixed width
+ * records of {@code long} values.
+ *
+ * <p>All storage is allocated up front, so publishing a record does not
+ * allocate. A producer first {@link #claim}s a slot, {@link #set}s its
+ * values, then {@link #publish}es it. Producers never wait for the
+ * consumer; if the buffer is full, the claim fails and the record is
+ * counted as dropped.</p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class DataLogRingBuffer {
+
+  private final int m_mask;
+  private final int m_width;
+  private final long[] m_values;
+
+  /** The sequence number last published to each slot. */
+  private final AtomicLongArray m_published;
+
+  private final AtomicLong m_claimed = new AtomicLong();
+  private final AtomicLong m_dropped = new AtomicLong();
+
+  // Only written by the consumer.
+  private volatile long m_consumed;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity
+   *          Minimum number of records the buffer can hold. Rounded up to a
+   *          power of two.
+   * @param width
+   *          Number of values in each record.
+   */
+  public DataLogRingBuffer(int capacity, int width) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    }
+
+    if (width < 1) {
+      throw new IllegalArgumentException("Invalid width " + width);
+    }
+
+    int size = 1;
+
+    while (size < capacity) {
+      size <<= 1;
+    }
+
+    m_mask = size - 1;
+    m_width = width;
+    m_values = new long[size * width];
+    m_published = new AtomicLongArray(size);
+
+    for (int i = 0; i < size; ++i) {
+      m_published.set(i, -1);
+    }
+  }
+
+  /**
+   * The number of records the buffer can hold.
+   *
+   * @return The capacity.
+   */
+  public int getCapacity() {
+    return m_mask + 1;
+  }
+
+  /**
+   * Claim the next free slot.
+   *
+   * @return The sequence number of the slot, or {@code -1} if the buffer is
+   *         full.
+   */
+  public long claim() {
+    while (true) {
+      final long sequence = m_claimed.get();
+
+      if (sequence - m_consumed > m_mask) {
+        m_dropped.incrementAndGet();
+        return -1;
+      }
+
+      if (m_claimed.compareAndSet(sequence, sequence + 1)) {
+        return sequence;
+      }
+    }
+  }
+
+  /**
+   * Set a value of a claimed record.
+   *
+   * @param sequence The sequence number returned by {@link #claim}.
+   * @param index The index of the value within the record.
+   * @param value The value.
+   */
+  public void set(long sequence, int index, long value) {
+    m_values[((int) sequence & m_mask) * m_width + index] = value;
+  }
+
+  /**
+   * Make a claimed record available to the consumer. Every successful
+   * claim must be published, otherwise the consumer will stall.
+   *
+   * @param sequence The sequence number returned by {@link #claim}.
+   */
+  public void publish(long sequence) {
+    m_published.lazySet((int) sequence & m_mask, sequence);
+  }
+
+  /**
+   * Pass each published record, in order, to a handler. Must only be
+   * called by the single consumer thread.
+   *
+   * @param handler The handler.
+   * @return The number of records consumed.
+   * @throws IOException If the handler failed. The record it was passed
+   *           is not consumed.
+   */
+  public int drain(RecordHandler handler) throws IOException {
+
+    long next = m_consumed;
+    int n = 0;
+
+    while (m_published.get((int) next & m_mask) == next) {
+      handler.handle(m_values, ((int) next & m_mask) * m_width);
+      m_consumed = ++next;
+      ++n;
+    }
+
+    return n;
+  }
+
+  /**
+   * The number of records that could not be claimed because the buffer was
+   * full.
+   *
+   * @return The number of dropped records.
+   */
+  public long getDropped() {
+    return m_dropped.get();
+  }
+
+  /**
+   * Callback for {@link DataLogRingBuffer#drain}.
+   */
+  interface RecordHandler {
+
+    /**
+     * Handle a record. The record is only valid for the duration of the
+     * call.
+     *
+     * @param values The buffer storage.
+     * @param offset The index of the first value of the record.
+     * @throws IOException If the record could not be handled.
+     */
+    void handle(long[] values, int offset) throws IOException;
+  }
+}
@@ -91,6 +91,21 @@ interface DispatchContext {
    */
   void setHasNestedContexts();
 
+  /**
+   * Called when this <code>DispatchContext</code> has ended within another.
+   *
+   * @param parentContext The context that directly encloses this one.
+   */
+  void endedWithin(DispatchContext parentContext);
+
+  /**
+   * Add time spent in nested contexts. The time is excluded from the test's
+   * self time.
+   *
+   * @param nanoseconds The nested time, in nanoseconds.
+   */
+  void addNestedTime(long nanoseconds);
+
   /**
    * Exception that indicates the dispatcher was in an invalid state for
    * the called method .
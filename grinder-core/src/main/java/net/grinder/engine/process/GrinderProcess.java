@@ -24,6 +24,9 @@
 
 package net.grinder.engine.process;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.UnknownHostException;
@@ -31,7 +34,9 @@ import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -58,6 +63,8 @@ import net.grinder.engine.common.EngineException;
 import net.grinder.engine.communication.ConsoleListener;
 import net.grinder.engine.messages.InitialiseGrinderMessage;
 import net.grinder.engine.process.dcr.DCRContextImplementation;
+import net.grinder.messages.console.RegisterExpressionViewMessage;
+import net.grinder.messages.console.RegisterTestParentsMessage;
 import net.grinder.messages.console.RegisterTestsMessage;
 import net.grinder.messages.console.ReportStatisticsMessage;
 import net.grinder.messages.console.WorkerAddress;
@@ -65,6 +72,7 @@ import net.grinder.messages.console.WorkerProcessReportMessage;
 import net.grinder.script.Grinder;
 import net.grinder.script.InternalScriptContext;
 import net.grinder.script.InvalidContextException;
+import net.grinder.script.SSLControl;
 import net.grinder.script.Statistics;
 import net.grinder.scriptengine.Instrumenter;
 import net.grinder.scriptengine.ScriptEngineService.ScriptEngine;
@@ -87,6 +95,7 @@ import net.grinder.util.SleeperImplementation;
 import net.grinder.util.StandardTimeAuthority;
 import net.grinder.util.thread.BooleanCondition;
 import net.grinder.util.thread.Condition;
+import net.grinder.util.thread.VirtualThreads;
 
 import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
@@ -109,9 +118,21 @@ import ch.qos.logback.core.joran.spi.JoranException;
  */
 final class GrinderProcess {
 
+  // Times are recorded in microseconds, and presented in milliseconds.
+
+  static final String MEAN_SELF_TIME_EXPRESSION =
+    "(/ (- (sum timedTests) nestedTime) (* 1000 (count timedTests)))";
+
+  static final String CORRECTED_MEAN_TEST_TIME_EXPRESSION =
+    "(/ (sum correctedTimedTests) (* 1000 (count correctedTimedTests)))";
+
+  static final String CORRECTED_TEST_TIME_PERCENTILE_EXPRESSION =
+    "(/ (percentile correctedTimedTests 99) 1000)";
+
   private final Logger m_terminalLogger;
   private final Logger m_logger;
   private final Logger m_dataLogger;
+  private final File m_binaryDataLogFile;
   private final LoggerConfiguration m_logging;
   private final QueuedSender m_consoleSender;
   private final Sleeper m_sleeper;
@@ -175,6 +196,15 @@ final class GrinderProcess {
     m_logger = m_logging.getLogger();
     m_dataLogger = m_logging.getDataLogger();
 
+    if (properties.getBoolean("grinder.logData", true) &&
+        properties.getBoolean("grinder.binaryDataLog", false)) {
+      m_binaryDataLogFile =
+        new File(logDirectory, workerName + "-data.bin");
+    }
+    else {
+      m_binaryDataLogFile = null;
+    }
+
     m_logger.info("The Grinder version {}", GrinderBuild.getVersionString());
     m_logger.info(JVM.getInstance().toString());
     m_logger.info("time zone is {}",
@@ -232,7 +262,10 @@ final class GrinderProcess {
                        m_threadContexts,
                        m_statisticsServices.getStatisticsSetFactory(),
                        m_testStatisticsHelper,
-                       m_times.getTimeAuthority());
+                       m_times.getTimeAuthority(),
+                       properties.getInt("grinder.statistics.stripes", 0),
+                       properties.getBoolean("grinder.statistics.nestedTests",
+                                             false));
 
     final Logger externalLogger =
       new ExternalLogger(m_logger, m_threadContexts);
@@ -260,6 +293,23 @@ final class GrinderProcess {
       }
     };
 
+    final SSLControlImplementation sslControl =
+      new SSLControlImplementation(m_threadContexts);
+
+    final String sessionCache =
+      properties.getProperty("grinder.ssl.sessionCache", "thread");
+
+    try {
+      sslControl.setSessionCache(
+        SSLControl.SessionCache.valueOf(
+          sessionCache.trim().toUpperCase(Locale.ENGLISH)));
+    }
+    catch (final IllegalArgumentException e) {
+      throw new EngineException(
+        "Invalid value for grinder.ssl.sessionCache: '" + sessionCache +
+        "', expected shared, thread, or none");
+    }
+
     final InternalScriptContext scriptContext =
       new ScriptContextImplementation(
         workerIdentity,
@@ -268,7 +318,7 @@ final class GrinderProcess {
         properties,
         externalLogger,
         m_sleeper,
-        new SSLControlImplementation(m_threadContexts),
+        sslControl,
         scriptStatistics,
         m_testRegistryImplementation,
         delegatingThreadStarter,
@@ -344,8 +394,7 @@ final class GrinderProcess {
 
       m_logger.info(numbers.toString());
 
-      final short numberOfThreads =
-        properties.getShort("grinder.threads", (short)1);
+      final int numberOfThreads = properties.getInt("grinder.threads", 1);
       final int reportToConsoleInterval =
         properties.getInt("grinder.reportToConsole.interval", 500);
       final int duration = properties.getInt("grinder.duration", 0);
@@ -380,31 +429,85 @@ final class GrinderProcess {
       // Don't write out the data log header until now as the script may
       // declare new statistics.
 
-      final StringBuilder dataLogHeader =
-        new StringBuilder("Thread, Run, Test, Start time (ms since Epoch)");
-
       final ExpressionView[] detailExpressionViews =
         m_statisticsServices.getDetailStatisticsView().getExpressionViews();
 
-      for (final ExpressionView detailExpressionView : detailExpressionViews) {
-        dataLogHeader.append(", ");
-        dataLogHeader.append(detailExpressionView.getDisplayName());
+      final BinaryDataLogger binaryDataLogger;
+
+      if (m_binaryDataLogFile != null) {
+        binaryDataLogger =
+          createBinaryDataLogger(
+            detailExpressionViews,
+            properties.getInt("grinder.binaryDataLog.bufferSize", 65536));
       }
+      else {
+        binaryDataLogger = null;
+
+        final StringBuilder dataLogHeader =
+          new StringBuilder("Thread, Run, Test, Start time (ms since Epoch)");
 
-      m_dataLogger.info(dataLogHeader.toString());
+        for (final ExpressionView detailExpressionView :
+             detailExpressionViews) {
+          dataLogHeader.append(", ");
+          dataLogHeader.append(detailExpressionView.getDisplayName());
+        }
+
+        m_dataLogger.info(dataLogHeader.toString());
+      }
 
       sendStatusMessage(ProcessReport.State.STARTED,
-                        (short)0,
+                        0,
                         numberOfThreads);
 
       final ThreadSynchronisation threadSynchronisation =
         new ThreadSynchronisation(m_eventSynchronisation);
 
+      final ArrivalSchedule arrivalSchedule =
+        ArrivalSchedule.create(properties, m_times.getTimeAuthority());
+
+      if (arrivalSchedule != null) {
+        m_terminalLogger.info("open model, threads will take runs from " +
+                              "the arrival schedule");
+
+        registerSummaryExpression("Late Starts", "lateStarts");
+        registerSummaryExpression("Dropped Starts", "droppedStarts");
+      }
+
+      if (binaryDataLogger != null) {
+        registerSummaryExpression("Dropped Data Log Records",
+                                  "droppedDataLogRecords");
+      }
+
+      if (properties.getBoolean("grinder.statistics.nestedTests", false)) {
+        // Time spent in a test, excluding the tests nested within it.
+        registerSummaryExpression("Mean Self Time (ms)",
+                                  MEAN_SELF_TIME_EXPRESSION);
+      }
+
+      final boolean virtualThreads;
+
+      if (!properties.getBoolean("grinder.virtualThreads", false)) {
+        virtualThreads = false;
+      }
+      else if (VirtualThreads.isSupported()) {
+        m_terminalLogger.info("worker threads will be virtual threads");
+        virtualThreads = true;
+      }
+      else {
+        m_terminalLogger.warn("virtual threads are not supported by this " +
+                              "Java runtime, using platform threads");
+        virtualThreads = false;
+      }
+
       m_terminalLogger.info("starting threads");
 
       synchronized (m_eventSynchronisation) {
         m_threadStarter =
-          new ThreadStarterImplementation(threadSynchronisation, scriptEngine);
+          new ThreadStarterImplementation(threadSynchronisation,
+                                          scriptEngine,
+                                          arrivalSchedule,
+                                          binaryDataLogger,
+                                          virtualThreads);
 
         for (int i = 0; i < numberOfThreads; i++) {
           m_threadStarter.startThread(null);
@@ -498,12 +601,23 @@ final class GrinderProcess {
 
       scriptEngine.shutdown();
 
+      if (binaryDataLogger != null) {
+        binaryDataLogger.shutdown();
+
+        final long dropped = binaryDataLogger.getDropped();
+
+        if (dropped > 0) {
+          m_terminalLogger.warn("{} data log records were dropped because " +
+                                "the buffer was full", dropped);
+        }
+      }
+
       // Final report to the console.
       reportTimerTask.run();
 
       sendStatusMessage(ProcessReport.State.FINISHED,
-                        (short)0,
-                        (short)0);
+                        0,
+                        0);
 
       m_consoleSender.shutdown();
 
@@ -551,6 +665,7 @@ final class GrinderProcess {
   private class ReportToConsoleTimerTask extends TimerTask {
     private final ThreadSynchronisation m_threads;
     private final boolean m_reportTimesToConsole;
+    private boolean m_correctedViewsRegistered;
 
     public ReportToConsoleTimerTask(final ThreadSynchronisation threads,
                                     final boolean reportTimesToConsole) {
@@ -569,11 +684,37 @@ final class GrinderProcess {
       final Collection<Test> newTests =
         m_testRegistryImplementation.getNewTests();
 
+      final Map<Test, Test> newParents =
+        m_testRegistryImplementation.getNewParents();
+
       try {
         if (newTests != null) {
           m_consoleSender.send(new RegisterTestsMessage(newTests));
         }
 
+        if (newParents != null) {
+          for (final Entry<Test, Test> entry : newParents.entrySet()) {
+            m_accumulatedStatistics.setParent(entry.getKey(),
+                                              entry.getValue());
+          }
+
+          m_consoleSender.send(new RegisterTestParentsMessage(newParents));
+        }
+
+        if (!m_correctedViewsRegistered &&
+            m_testRegistryImplementation.hasExpectedIntervals()) {
+          // Show corrected test times alongside the uncorrected times once
+          // the script has given a test an expected interval.
+          m_correctedViewsRegistered = true;
+
+          registerSummaryExpression("Corrected Mean Test Time (ms)",
+                                    CORRECTED_MEAN_TEST_TIME_EXPRESSION);
+
+          registerSummaryExpression(
+            "Corrected Test Time 99th Percentile (ms)",
+            CORRECTED_TEST_TIME_PERCENTILE_EXPRESSION);
+        }
+
         if (sample.size() > 0) {
           if (!m_reportTimesToConsole) {
             m_testStatisticsHelper.removeTestTimeFromSample(sample);
@@ -591,12 +732,55 @@ final class GrinderProcess {
         cancel();
         shutdown("report to console failed");
       }
+      catch (final GrinderException e) {
+        m_terminalLogger.error("Failed to register statistics views", e);
+      }
     }
   }
 
+  private BinaryDataLogger createBinaryDataLogger(
+    final ExpressionView[] expressionViews,
+    final int capacity)
+    throws EngineException {
+
+    // Keep the previous log, as logback does for the text logs.
+    if (m_binaryDataLogFile.exists()) {
+      final File previous =
+        new File(m_binaryDataLogFile.getPath() + "1");
+
+      previous.delete();
+      m_binaryDataLogFile.renameTo(previous);
+    }
+
+    try {
+      return new BinaryDataLogger(new FileOutputStream(m_binaryDataLogFile),
+                                  expressionViews,
+                                  capacity,
+                                  m_logger);
+    }
+    catch (final IOException e) {
+      throw new EngineException("Could not create binary data log " +
+                                m_binaryDataLogFile,
+                                e);
+    }
+  }
+
+  private void registerSummaryExpression(final String displayName,
+                                         final String expression)
+    throws GrinderException {
+
+    final ExpressionView expressionView =
+      m_statisticsServices.getStatisticExpressionFactory()
+      .createExpressionView(displayName, expression, false);
+
+    m_statisticsServices.getSummaryStatisticsView().add(expressionView);
+
+    m_consoleSender.send(new RegisterExpressionViewMessage(expressionView));
+  }
+
   private void sendStatusMessage(final State finished,
-                                 final short numberOfThreads,
-                                 final short totalNumberOfThreads)
+                                 final int numberOfThreads,
+                                 final int totalNumberOfThreads)
     throws CommunicationException {
 
     m_consoleSender.send(new WorkerProcessReportMessage(
@@ -634,9 +818,9 @@ final class GrinderProcess {
     private final BooleanCondition m_started = new BooleanCondition();
     private final Condition m_threadEventCondition;
 
-    private short m_numberCreated = 0;
-    private short m_numberAwaitingStart = 0;
-    private short m_numberFinished = 0;
+    private int m_numberCreated = 0;
+    private int m_numberAwaitingStart = 0;
+    private int m_numberFinished = 0;
 
     ThreadSynchronisation(final Condition condition) {
       m_threadEventCondition = condition;
@@ -646,9 +830,9 @@ final class GrinderProcess {
      * The number of worker threads that have been created but not run to
      * completion.
      */
-    public short getNumberOfRunningThreads() {
+    public int getNumberOfRunningThreads() {
       synchronized (m_threadEventCondition) {
-        return (short)(m_numberCreated - m_numberFinished);
+        return m_numberCreated - m_numberFinished;
       }
     }
 
@@ -665,7 +849,7 @@ final class GrinderProcess {
     /**
      * The number of worker threads that have been created.
      */
-    public short getTotalNumberOfThreads() {
+    public int getTotalNumberOfThreads() {
       synchronized (m_threadEventCondition) {
         return m_numberCreated;
       }
@@ -718,15 +902,25 @@ final class GrinderProcess {
   private final class ThreadStarterImplementation implements ThreadStarter {
     private final ThreadSynchronisation m_threadSynchronisation;
     private final ScriptEngine m_scriptEngine;
+    private final ArrivalSchedule m_arrivalSchedule;
+    private final BinaryDataLogger m_binaryDataLogger;
     private final WorkerRunnableFactory m_defaultWorkerRunnableFactory;
 
+    private final boolean m_virtualThreads;
+
     private int m_i = -1;
 
     private ThreadStarterImplementation(
       final ThreadSynchronisation threadSynchronisation,
-      final ScriptEngine scriptEngine) {
+      final ScriptEngine scriptEngine,
+      final ArrivalSchedule arrivalSchedule,
+      final BinaryDataLogger binaryDataLogger,
+      final boolean virtualThreads) {
       m_threadSynchronisation = threadSynchronisation;
       m_scriptEngine = scriptEngine;
+      m_arrivalSchedule = arrivalSchedule;
+      m_binaryDataLogger = binaryDataLogger;
+      m_virtualThreads = virtualThreads;
 
       m_defaultWorkerRunnableFactory = new WorkerRunnableFactory() {
         @Override
@@ -748,7 +942,8 @@ final class GrinderProcess {
           m_initialisationMessage.getProperties(),
           m_statisticsServices,
           threadNumber,
-          m_dataLogger);
+          m_dataLogger,
+          m_binaryDataLogger);
 
 
       final WorkerRunnableFactory workerRunnableFactory;
@@ -772,7 +967,8 @@ final class GrinderProcess {
                             m_threadSynchronisation,
                             m_initialisationMessage.getProperties(),
                             m_sleeper,
-                            workerRunnableFactory);
+                            workerRunnableFactory,
+                            m_arrivalSchedule);
 
 
       m_processLifeCycleListeners.apply(
@@ -784,14 +980,44 @@ final class GrinderProcess {
         });
 
 
-      final Thread t = new Thread(runnable, "thread " + threadNumber);
-      t.setDaemon(true);
+      final String name = "thread " + threadNumber;
+      final Thread t;
+
+      if (m_virtualThreads) {
+        t = VirtualThreads.create(runnable, name);
+      }
+      else {
+        t = new WorkerThread(runnable, name, threadContext);
+        t.setDaemon(true);
+      }
+
       t.start();
 
       return threadNumber;
     }
   }
 
+  /**
+   * A platform worker thread. Virtual threads can't be subclassed, so
+   * {@link ThreadContexts} falls back to a thread local for them.
+   *
+   * <p>Package scope for unit tests.</p>
+   */
+  static final class WorkerThread extends Thread {
+    private final ThreadContext m_threadContext;
+
+    WorkerThread(final Runnable runnable,
+                 final String name,
+                 final ThreadContext threadContext) {
+      super(runnable, name);
+      m_threadContext = threadContext;
+    }
+
+    public ThreadContext getThreadContext() {
+      return m_threadContext;
+    }
+  }
+
   /**
    * Package scope for unit tests.
    */
@@ -866,6 +1092,14 @@ final class GrinderProcess {
 
     @Override
     public ThreadContext get() {
+      final Thread thread = Thread.currentThread();
+
+      // Avoid the thread local lookup for platform worker threads, since
+      // we're called for every test dispatch.
+      if (thread instanceof WorkerThread) {
+        return ((WorkerThread) thread).getThreadContext();
+      }
+
       return m_threadContextThreadLocal.get();
     }
 
@@ -45,16 +45,23 @@ class GrinderThread implements Runnable {
   private final Sleeper m_sleeper;
   private final ThreadContext m_context;
   private final WorkerRunnableFactory m_workerRunnableFactory;
+  private final ArrivalSchedule m_arrivalSchedule;
 
   /**
    * The constructor.
+   *
+   * @param arrivalSchedule
+   *          If not {@code null}, the thread takes its runs from this shared
+   *          schedule rather than performing {@code grinder.runs} runs back
+   *          to back.
    */
   public GrinderThread(final Logger logger,
                        final ThreadContext context,
                        final WorkerThreadSynchronisation threadSynchronisation,
                        final GrinderProperties properties,
                        final Sleeper sleeper,
-                       final WorkerRunnableFactory workerRunnableFactory)
+                       final WorkerRunnableFactory workerRunnableFactory,
+                       final ArrivalSchedule arrivalSchedule)
     throws EngineException {
 
     m_logger = logger;
@@ -63,6 +70,7 @@ class GrinderThread implements Runnable {
     m_properties = properties;
     m_sleeper = sleeper;
     m_workerRunnableFactory = workerRunnableFactory;
+    m_arrivalSchedule = arrivalSchedule;
 
     m_threadSynchronisation.threadCreated();
   }
@@ -81,7 +89,11 @@ class GrinderThread implements Runnable {
 
       final int numberOfRuns = m_properties.getInt("grinder.runs", 1);
 
-      if (numberOfRuns == 0) {
+      if (m_arrivalSchedule != null) {
+        m_logger.info(m_context.getLogMarker(),
+                      "starting, will take runs from the arrival schedule");
+      }
+      else if (numberOfRuns == 0) {
         m_logger.info(m_context.getLogMarker(), "starting, will run forever");
       }
       else {
@@ -98,9 +110,29 @@ class GrinderThread implements Runnable {
       int currentRun;
 
       for (currentRun = 0;
-           numberOfRuns == 0 || currentRun < numberOfRuns;
+           m_arrivalSchedule != null ||
+           numberOfRuns == 0 ||
+           currentRun < numberOfRuns;
            currentRun++) {
 
+        if (m_arrivalSchedule != null) {
+          final ArrivalSchedule.ScheduledStart scheduledStart;
+
+          try {
+            scheduledStart = m_arrivalSchedule.next();
+          }
+          catch (final Sleeper.ShutdownException e) {
+            m_logger.info(m_context.getLogMarker(), "shut down");
+            break;
+          }
+
+          if (scheduledStart == null) {
+            break;
+          }
+
+          m_context.setScheduledStart(scheduledStart);
+        }
+
         m_context.setCurrentRunNumber(currentRun);
 
         m_context.fireBeginRunEvent();
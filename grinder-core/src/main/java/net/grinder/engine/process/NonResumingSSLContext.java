@@ -0,0 +1,193 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.Enumeration;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+
+/**
+ * An {@link SSLContext} that never resumes client sessions.
+ *
+ * <p>JSSE has no way to disable the client session cache, so this wraps
+ * another context and invalidates its cached sessions before each new
+ * socket is created. This is done synchronously, rather than from a
+ * {@code HandshakeCompletedListener}, since JSSE notifies listeners from
+ * a separate thread.</p>
+ *
+ * @author Philip Aston
+ */
+final class NonResumingSSLContext extends SSLContext {
+
+  /**
+   * Constructor.
+   *
+   * @param delegate The context to wrap. It should not be used directly.
+   */
+  public NonResumingSSLContext(final SSLContext delegate) {
+    super(new Spi(delegate), delegate.getProvider(), delegate.getProtocol());
+  }
+
+  private static void invalidateSessions(final SSLSessionContext context) {
+    final Enumeration<byte[]> ids = context.getIds();
+
+    while (ids.hasMoreElements()) {
+      final SSLSession session = context.getSession(ids.nextElement());
+
+      if (session != null) {
+        session.invalidate();
+      }
+    }
+  }
+
+  private static final class Spi extends SSLContextSpi {
+    private final SSLContext m_delegate;
+    private final SSLSocketFactory m_socketFactory;
+
+    public Spi(final SSLContext delegate) {
+      m_delegate = delegate;
+      m_socketFactory = new SocketFactory(delegate);
+    }
+
+    @Override
+    protected void engineInit(final KeyManager[] keyManagers,
+                              final TrustManager[] trustManagers,
+                              final SecureRandom random) {
+      throw new UnsupportedOperationException("Already initialised");
+    }
+
+    @Override
+    protected SSLSocketFactory engineGetSocketFactory() {
+      return m_socketFactory;
+    }
+
+    @Override
+    protected SSLServerSocketFactory engineGetServerSocketFactory() {
+      return m_delegate.getServerSocketFactory();
+    }
+
+    @Override
+    protected SSLEngine engineCreateSSLEngine() {
+      invalidateSessions(m_delegate.getClientSessionContext());
+      return m_delegate.createSSLEngine();
+    }
+
+    @Override
+    protected SSLEngine engineCreateSSLEngine(final String host,
+                                              final int port) {
+      invalidateSessions(m_delegate.getClientSessionContext());
+      return m_delegate.createSSLEngine(host, port);
+    }
+
+    @Override
+    protected SSLSessionContext engineGetServerSessionContext() {
+      return m_delegate.getServerSessionContext();
+    }
+
+    @Override
+    protected SSLSessionContext engineGetClientSessionContext() {
+      return m_delegate.getClientSessionContext();
+    }
+  }
+
+  private static final class SocketFactory extends SSLSocketFactory {
+    private final SSLContext m_context;
+    private final SSLSocketFactory m_delegate;
+
+    public SocketFactory(final SSLContext context) {
+      m_context = context;
+      m_delegate = context.getSocketFactory();
+    }
+
+    private SSLSocketFactory delegate() {
+      invalidateSessions(m_context.getClientSessionContext());
+      return m_delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+      return m_delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+      return m_delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+      return delegate().createSocket();
+    }
+
+    @Override
+    public Socket createSocket(final Socket socket,
+                               final String host,
+                               final int port,
+                               final boolean autoClose)
+      throws IOException {
+      return delegate().createSocket(socket, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port)
+      throws IOException {
+      return delegate().createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(final String host,
+                               final int port,
+                               final InetAddress localHost,
+                               final int localPort)
+      throws IOException {
+      return delegate().createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress host, final int port)
+      throws IOException {
+      return delegate().createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress address,
+                               final int port,
+                               final InetAddress localAddress,
+                               final int localPort)
+      throws IOException {
+      return delegate().createSocket(address, port, localAddress, localPort);
+    }
+  }
+}
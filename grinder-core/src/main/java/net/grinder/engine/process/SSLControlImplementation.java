@@ -47,6 +47,10 @@ final class SSLControlImplementation implements SSLControl {
   private final ThreadContextLocator m_threadContextLocator;
 
   private boolean m_shareContextBetweenRuns = false;
+  private volatile SessionCache m_sessionCache = SessionCache.THREAD;
+
+  // Guarded by this.
+  private SSLContext m_sharedSSLContext;
 
   public SSLControlImplementation(ThreadContextLocator threadContextLocator) {
     m_threadContextLocator = threadContextLocator;
@@ -138,6 +142,9 @@ final class SSLControlImplementation implements SSLControl {
     if (threadSSLContextFactory != null) {
       return threadSSLContextFactory.getSSLContext();
     }
+    else if (m_sessionCache == SessionCache.SHARED) {
+      return getSharedSSLContext();
+    }
     else {
       final CachingSSLContextFactory defaultContextFactoryForThread =
         new CachingSSLContextFactory(new InsecureSSLContextFactory());
@@ -149,6 +156,16 @@ final class SSLControlImplementation implements SSLControl {
     }
   }
 
+  private synchronized SSLContext getSharedSSLContext()
+    throws SSLContextFactoryException {
+
+    if (m_sharedSSLContext == null) {
+      m_sharedSSLContext = new InsecureSSLContextFactory().getSSLContext();
+    }
+
+    return m_sharedSSLContext;
+  }
+
   public boolean getShareContextBetweenRuns() {
     return m_shareContextBetweenRuns;
   }
@@ -157,6 +174,14 @@ final class SSLControlImplementation implements SSLControl {
     m_shareContextBetweenRuns = b;
   }
 
+  public SessionCache getSessionCache() {
+    return m_sessionCache;
+  }
+
+  public void setSessionCache(SessionCache sessionCache) {
+    m_sessionCache = sessionCache;
+  }
+
   private void setThreadSSLContextFactory(
     ThreadContext threadContext,
     CachingSSLContextFactory cachingSSLContextFactory) {
@@ -185,7 +210,10 @@ final class SSLControlImplementation implements SSLControl {
 
     public final SSLContext getSSLContext() throws SSLContextFactoryException {
       if (m_sslContext == null) {
-        m_sslContext = m_delegateContextFactory.getSSLContext();
+        final SSLContext sslContext = m_delegateContextFactory.getSSLContext();
+
+        m_sslContext = m_sessionCache == SessionCache.NONE ?
+          new NonResumingSSLContext(sslContext) : sslContext;
       }
 
       return m_sslContext;
@@ -38,12 +38,18 @@ import net.grinder.statistics.StatisticsSet;
  * statistics set, until freeze is called after which it is a wrapper around
  * a read-only statistics set.
  *
+ * <p>To avoid allocating for every test, a dispatch context can reopen a
+ * frozen instance for a later dispatch. It must not do so if the instance has
+ * been {@link #setRetained() retained} by a script, since the script may
+ * still refer to the frozen statistics.
+ *
  * @author Philip Aston
  */
 final class StatisticsForTestImplementation implements StatisticsForTest {
 
   private final TestStatisticsHelper m_testStatisticsHelper;
   private final Test m_test;
+  private boolean m_retained;
 
   /* Class invariant:
    *    if  m_dispatchContext != null:
@@ -53,7 +59,8 @@ final class StatisticsForTestImplementation implements StatisticsForTest {
    *        m_mutableStatistics == null
    *        m_immutableStatistics != null
    */
-  private final ImmutableStatisticsSet m_immutableStatistics;
+  // Only modified through m_statistics, or when reopened.
+  private final StatisticsSet m_immutableStatistics;
   private DispatchContext m_dispatchContext;
   private StatisticsSet m_statistics;
 
@@ -75,6 +82,36 @@ final class StatisticsForTestImplementation implements StatisticsForTest {
     m_statistics = null;
   }
 
+  /**
+   * Associate a frozen instance with a new dispatch, and zero its statistics.
+   *
+   * @param dispatchContext The dispatch context.
+   */
+  public void reopen(final DispatchContext dispatchContext) {
+    assert m_dispatchContext == null && !m_retained;
+    assert m_test == dispatchContext.getTest();
+
+    m_dispatchContext = dispatchContext;
+    m_statistics = m_immutableStatistics;
+    m_statistics.reset();
+  }
+
+  /**
+   * Record that a reference to this instance has been passed to a script.
+   */
+  public void setRetained() {
+    m_retained = true;
+  }
+
+  /**
+   * Whether a reference to this instance has been passed to a script.
+   *
+   * @return {@code true} if this instance cannot be reopened.
+   */
+  public boolean isRetained() {
+    return m_retained;
+  }
+
   private StatisticsSet getStatisticsChecked() throws InvalidContextException {
     if (m_statistics == null) {
       throw new InvalidContextException(
@@ -40,6 +40,10 @@ import net.grinder.common.UncheckedGrinderException;
  * unchecked {@link StopWatchStateException}; this is effectively an assertion.
  * </p>
  *
+ * <p>
+ * Times are in nanoseconds.
+ * </p>
+ *
  * @author Philip Aston
  */
 interface StopWatch {
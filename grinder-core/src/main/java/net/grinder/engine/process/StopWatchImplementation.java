@@ -34,7 +34,8 @@ final class StopWatchImplementation implements StopWatch {
   private final TimeAuthority m_timeAuthority;
 
   private long m_time;
-  private long m_startTime = -1;
+  private long m_startTime;
+  private boolean m_running;
 
   public StopWatchImplementation(final TimeAuthority timeAuthority) {
     m_timeAuthority = timeAuthority;
@@ -46,7 +47,8 @@ final class StopWatchImplementation implements StopWatch {
       throw new StopWatchRunningException("Already running");
     }
 
-    m_startTime = m_timeAuthority.getTimeInMilliseconds();
+    m_startTime = m_timeAuthority.getTimeInNanoseconds();
+    m_running = true;
   }
 
   @Override
@@ -55,8 +57,8 @@ final class StopWatchImplementation implements StopWatch {
       throw new StopWatchNotRunningException("Not running");
     }
 
-    m_time = m_time + m_timeAuthority.getTimeInMilliseconds() - m_startTime;
-    m_startTime = -1;
+    m_time = m_time + m_timeAuthority.getTimeInNanoseconds() - m_startTime;
+    m_running = false;
   }
 
   @Override
@@ -79,7 +81,7 @@ final class StopWatchImplementation implements StopWatch {
 
   @Override
   public boolean isRunning() {
-    return m_startTime != -1;
+    return m_running;
   }
 
   @Override
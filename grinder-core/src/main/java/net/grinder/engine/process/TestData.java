@@ -24,7 +24,6 @@ package net.grinder.engine.process;
 
 import net.grinder.common.Test;
 import net.grinder.common.TimeAuthority;
-import net.grinder.common.UncheckedGrinderException;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.DispatchContext.DispatchStateException;
 import net.grinder.script.NonInstrumentableTypeException;
@@ -57,6 +56,7 @@ final class TestData implements RegisteredTest, Recorder {
   private final Instrumenter m_instrumenter;
   private final ThreadContextLocator m_threadContextLocator;
   private final Test m_test;
+  private final int m_ordinal;
   private final Marker m_logMarker;
 
   /**
@@ -65,22 +65,35 @@ final class TestData implements RegisteredTest, Recorder {
    */
   private final StatisticsSet m_testStatistics;
 
-  private final RecorderHolderThreadLocal m_recorderHolderTL =
-    new RecorderHolderThreadLocal();
+  private volatile long m_expectedInterval;
+
+  private final boolean m_nestedTestStatistics;
+
+  /**
+   * The test that first enclosed a dispatch of this test, if nested test
+   * statistics are enabled. Written without locking by worker threads; if
+   * several tests enclose this one, one will win.
+   */
+  private volatile Test m_parentTest;
 
   TestData(final ThreadContextLocator threadContextLocator,
            final StatisticsSetFactory statisticsSetFactory,
            final TestStatisticsHelper testStatisticsHelper,
            final TimeAuthority timeAuthority,
            final Instrumenter instrumenter,
-           final Test testDefinition) {
+           final Test testDefinition,
+           final int ordinal,
+           final int statisticsStripes,
+           final boolean nestedTestStatistics) {
     m_statisticsSetFactory = statisticsSetFactory;
     m_testStatisticsHelper = testStatisticsHelper;
     m_timeAuthority = timeAuthority;
     m_instrumenter = instrumenter;
     m_threadContextLocator = threadContextLocator;
     m_test = testDefinition;
-    m_testStatistics = m_statisticsSetFactory.create();
+    m_ordinal = ordinal;
+    m_testStatistics = m_statisticsSetFactory.create(statisticsStripes);
+    m_nestedTestStatistics = nestedTestStatistics;
 
     m_logMarker = MarkerFactory.getMarker("test-" + testDefinition.getNumber());
   }
@@ -89,6 +102,23 @@ final class TestData implements RegisteredTest, Recorder {
     return m_test;
   }
 
+  /**
+   * The test's ordinal. Ordinals are allocated densely, starting at zero,
+   * as tests are registered with the worker process.
+   */
+  int getOrdinal() {
+    return m_ordinal;
+  }
+
+  /**
+   * The test that encloses this test, if known.
+   *
+   * @return The enclosing test, or <code>null</code>.
+   */
+  Test getParentTest() {
+    return m_parentTest;
+  }
+
   Marker getLogMarker() {
     return m_logMarker;
   }
@@ -122,48 +152,54 @@ final class TestData implements RegisteredTest, Recorder {
     m_instrumenter.instrument(getTest(), this, target, filter);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void setExpectedInterval(final long expectedInterval) {
+    m_expectedInterval = expectedInterval;
+  }
+
+  long getExpectedInterval() {
+    return m_expectedInterval;
+  }
+
   @Override
   public void start() throws EngineException {
-    m_recorderHolderTL.getHolder().start();
+    getHolder().start();
   }
 
   @Override
   public void end(final boolean success) throws EngineException {
-    m_recorderHolderTL.getHolder().end(success);
+    getHolder().end(success);
   }
 
   /**
-   * Thread local storage which keeps a {@link RecorderHolder} for each
-   * worker thread that has ever used this test.
+   * Find the {@link RecorderHolder} for the current worker thread, creating
+   * it if this is the first time the thread has used this test. Each
+   * thread context keeps the holders in an array indexed by test ordinal.
    */
-  private final class RecorderHolderThreadLocal {
-    private final ThreadLocal<RecorderHolder> m_threadLocal =
-      new ThreadLocal<RecorderHolder>() {
+  private Recorder getHolder() throws EngineException {
+    final ThreadContext threadContext = m_threadContextLocator.get();
 
-      @Override
-      public RecorderHolder initialValue() {
-        final ThreadContext threadContext = m_threadContextLocator.get();
+    if (threadContext == null) {
+      throw new EngineException("Only Worker Threads can invoke tests");
+    }
 
-        if (threadContext == null) {
-          throw new UncheckedException("Only Worker Threads can invoke tests");
-        }
+    final Recorder existing = threadContext.getTestRecorder(m_ordinal);
 
-        final TestRecorder recorder =
-          new TestRecorder(threadContext.getDispatchResultReporter(),
-                           new StopWatchImplementation(m_timeAuthority));
+    if (existing != null) {
+      return existing;
+    }
 
-        return new RecorderHolder(threadContext, recorder);
-      }
-    };
+    final TestRecorder recorder =
+      new TestRecorder(threadContext,
+                       new StopWatchImplementation(m_timeAuthority));
 
-    public RecorderHolder getHolder() throws EngineException {
-      try {
-        return m_threadLocal.get();
-      }
-      catch (final UncheckedException e) {
-        throw new EngineException(e.getMessage());
-      }
-    }
+    final RecorderHolder holder = new RecorderHolder(threadContext, recorder);
+
+    threadContext.setTestRecorder(m_ordinal, holder);
+
+    return holder;
   }
 
   /**
@@ -224,6 +260,14 @@ final class TestData implements RegisteredTest, Recorder {
    * time is valid. m_statisticsForTest is null.</li>
    * </ul>
    *
+   * <p>
+   * To avoid allocation, the statistics of a dispatch are reused by the next
+   * dispatch but one. The statistics of the last dispatch might be the
+   * thread's {@link ThreadContext#getStatisticsForLastTest() last test}, so
+   * must be left alone. Statistics that have been passed to a script are
+   * never reused.
+   * </p>
+   *
    * {@link ThreadContextImplementation#getDispatchContext()} takes care to only
    * return references to Dispatchers that are <em>dispatching</em> or
    * <em>complete</em>.
@@ -231,43 +275,76 @@ final class TestData implements RegisteredTest, Recorder {
   private final class TestRecorder
     implements DispatchContext, Recorder {
 
+    private final ThreadContext m_threadContext;
     private final DispatchResultReporter m_resultReporter;
     private final StopWatch m_pauseTimer;
 
+    // The start time is recorded twice: in milliseconds since the Epoch for
+    // the data log, and with a high resolution timer to measure the test time.
     private long m_startTime = -1;
-    private long m_dispatchTime = -1;
+    private long m_startNanos;
+    private long m_dispatchNanos = -1;
+    private long m_nestedNanos;
     private StatisticsForTestImplementation m_statisticsForTest;
+    private StatisticsForTestImplementation m_lastStatisticsForTest;
+    private StatisticsForTestImplementation m_spareStatisticsForTest;
+    private ArrivalSchedule.ScheduledStart m_scheduledStart;
 
-    public TestRecorder(final DispatchResultReporter resultReporter,
-                           final StopWatch pauseTimer) {
+    public TestRecorder(final ThreadContext threadContext,
+                        final StopWatch pauseTimer) {
 
-      m_resultReporter = resultReporter;
+      m_threadContext = threadContext;
+      m_resultReporter = threadContext.getDispatchResultReporter();
       m_pauseTimer = pauseTimer;
     }
 
     @Override
     public void start() throws DispatchStateException {
-      if (m_startTime != -1 || m_dispatchTime != -1) {
+      if (m_startTime != -1 || m_dispatchNanos != -1) {
         throw new DispatchStateException("Last statistics were not reported");
       }
 
       m_pauseTimer.reset();
+      m_nestedNanos = 0;
 
-      m_statisticsForTest = new StatisticsForTestImplementation(
-        this,
-        m_testStatisticsHelper,
-        m_statisticsSetFactory.create());
+      m_statisticsForTest = nextStatisticsForTest();
+
+      // If we are the first test of a run started by an arrival rate
+      // schedule, our time includes the delay in starting the run.
+      m_scheduledStart = m_threadContext.takeScheduledStart();
 
       // Make it more likely that the timed section has a "clear run".
       Thread.yield();
 
       m_startTime = m_timeAuthority.getTimeInMilliseconds();
+      m_startNanos = m_timeAuthority.getTimeInNanoseconds();
+
+      if (m_scheduledStart != null) {
+        final long delay = m_scheduledStart.getDelay();
+        m_startTime -= delay;
+        m_startNanos -= delay * 1000000;
+      }
+    }
+
+    private StatisticsForTestImplementation nextStatisticsForTest() {
+      final StatisticsForTestImplementation spare = m_spareStatisticsForTest;
+
+      if (spare != null && !spare.isRetained()) {
+        m_spareStatisticsForTest = null;
+        spare.reopen(this);
+        return spare;
+      }
+
+      return new StatisticsForTestImplementation(
+        this,
+        m_testStatisticsHelper,
+        m_statisticsSetFactory.create());
     }
 
     @Override
     public void end(final boolean success) {
-      m_dispatchTime =
-        Math.max(m_timeAuthority.getTimeInMilliseconds() - m_startTime, 0);
+      m_dispatchNanos =
+        Math.max(m_timeAuthority.getTimeInNanoseconds() - m_startNanos, 0);
 
       if (m_pauseTimer.isRunning()) {
         m_pauseTimer.stop();
@@ -287,13 +364,30 @@ final class TestData implements RegisteredTest, Recorder {
 
     @Override
     public void report() throws DispatchStateException {
-      if (m_dispatchTime < 0) {
+      if (m_dispatchNanos < 0) {
         throw new DispatchStateException("No statistics to report");
       }
 
       final StatisticsSet statistics =  m_statisticsForTest.getStatistics();
 
-      m_testStatisticsHelper.recordTest(statistics, getElapsedTime());
+      final long elapsedMicros = getElapsedNanos() / 1000;
+
+      m_testStatisticsHelper.recordTest(statistics, elapsedMicros);
+
+      if (m_nestedTestStatistics) {
+        m_testStatisticsHelper.recordNestedTime(
+          statistics,
+          Math.min(m_nestedNanos / 1000, elapsedMicros));
+      }
+
+      final long expectedInterval = m_expectedInterval;
+
+      if (expectedInterval > 0 &&
+          m_testStatisticsHelper.getSuccess(statistics)) {
+        m_testStatisticsHelper.recordCorrectedTest(statistics,
+                                                   elapsedMicros,
+                                                   expectedInterval * 1000);
+      }
 
       m_resultReporter.report(getTest(), m_startTime, statistics);
 
@@ -306,12 +400,23 @@ final class TestData implements RegisteredTest, Recorder {
         m_testStatisticsHelper.incrementErrors(getTestStatistics());
       }
 
+      if (m_scheduledStart != null) {
+        m_testStatisticsHelper.recordScheduledStarts(
+          getTestStatistics(),
+          m_scheduledStart.getLateStarts(),
+          m_scheduledStart.getDroppedStarts());
+
+        m_scheduledStart = null;
+      }
+
       // Disassociate ourselves from m_statisticsForTest;
       m_statisticsForTest.freeze();
+      m_spareStatisticsForTest = m_lastStatisticsForTest;
+      m_lastStatisticsForTest = m_statisticsForTest;
       m_statisticsForTest = null;
 
       m_startTime = -1;
-      m_dispatchTime = -1;
+      m_dispatchNanos = -1;
     }
 
     @Override
@@ -334,16 +439,20 @@ final class TestData implements RegisteredTest, Recorder {
         return -1;
       }
 
-      final long unadjustedTime;
+      return getElapsedNanos() / 1000000;
+    }
+
+    private long getElapsedNanos() {
+      final long unadjustedNanos;
 
-      if (m_dispatchTime == -1) {
-        unadjustedTime = m_timeAuthority.getTimeInMilliseconds() - m_startTime;
+      if (m_dispatchNanos == -1) {
+        unadjustedNanos = m_timeAuthority.getTimeInNanoseconds() - m_startNanos;
       }
       else {
-        unadjustedTime = m_dispatchTime;
+        unadjustedNanos = m_dispatchNanos;
       }
 
-      return Math.max(unadjustedTime - m_pauseTimer.getTime(), 0);
+      return Math.max(unadjustedNanos - m_pauseTimer.getTime(), 0);
     }
 
     @Override
@@ -355,12 +464,21 @@ final class TestData implements RegisteredTest, Recorder {
     public void setHasNestedContexts() {
       m_testStatistics.setIsComposite();
     }
-  }
 
-  private static final class UncheckedException
-    extends UncheckedGrinderException {
-    public UncheckedException(final String message) {
-      super(message);
+    @Override
+    public void endedWithin(final DispatchContext parentContext) {
+      if (m_nestedTestStatistics) {
+        parentContext.addNestedTime(getElapsedNanos());
+
+        if (m_parentTest == null) {
+          m_parentTest = parentContext.getTest();
+        }
+      }
+    }
+
+    @Override
+    public void addNestedTime(final long nanoseconds) {
+      m_nestedNanos += nanoseconds;
     }
   }
 }
@@ -23,6 +23,7 @@ package net.grinder.engine.process;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -45,6 +46,8 @@ final class TestRegistryImplementation implements TestRegistry {
   private final StatisticsSetFactory m_statisticsSetFactory;
   private final TestStatisticsHelper m_testStatisticsHelper;
   private final TimeAuthority m_timeAuthority;
+  private final int m_statisticsStripes;
+  private final boolean m_nestedTestStatistics;
 
   /**
    * A map of Tests to Statistics for passing elsewhere.
@@ -64,19 +67,41 @@ final class TestRegistryImplementation implements TestRegistry {
    */
   private Collection<Test> m_newTests = null;
 
+  /**
+   * The ordinal to give the next registered test. Guarded by this.
+   */
+  private int m_nextOrdinal = 0;
+
+  /**
+   * Links from nested tests to their parents that have been returned by
+   * {@link #getNewParents}. Guarded by this.
+   */
+  private final Map<Test, Test> m_reportedParents = new HashMap<Test, Test>();
+
   private Instrumenter m_instrumenter;
 
   /**
    * Constructor.
+   *
+   * @param statisticsStripes
+   *          Number of stripes used for each test's cumulative statistics. See
+   *          {@link StatisticsSetFactory#create(int)}.
+   * @param nestedTestStatistics
+   *          Whether to record the time spent in nested tests, and the tests
+   *          that enclose them.
    */
   TestRegistryImplementation(final ThreadContextLocator threadContextLocator,
                              final StatisticsSetFactory statisticsSetFactory,
                              final TestStatisticsHelper testStatisticsHelper,
-                             final TimeAuthority timeAuthority) {
+                             final TimeAuthority timeAuthority,
+                             final int statisticsStripes,
+                             final boolean nestedTestStatistics) {
     m_threadContextLocator = threadContextLocator;
     m_statisticsSetFactory = statisticsSetFactory;
     m_testStatisticsHelper = testStatisticsHelper;
     m_timeAuthority = timeAuthority;
+    m_statisticsStripes = statisticsStripes;
+    m_nestedTestStatistics = nestedTestStatistics;
     m_testStatisticsMap = new TestStatisticsMap(m_statisticsSetFactory);
   }
 
@@ -109,7 +134,10 @@ final class TestRegistryImplementation implements TestRegistry {
                                  m_testStatisticsHelper,
                                  m_timeAuthority,
                                  m_instrumenter,
-                                 test);
+                                 test,
+                                 m_nextOrdinal++,
+                                 m_statisticsStripes,
+                                 m_nestedTestStatistics);
 
       m_testMap.put(test, newTestData);
       m_testStatisticsMap.put(test, newTestData.getTestStatistics());
@@ -135,6 +163,22 @@ final class TestRegistryImplementation implements TestRegistry {
     return m_testStatisticsMap;
   }
 
+  /**
+   * Whether any test has an expected interval, and so records corrected
+   * test times.
+   */
+  boolean hasExpectedIntervals() {
+    synchronized (this) {
+      for (final TestData testData : m_testMap.values()) {
+        if (testData.getExpectedInterval() > 0) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
   /**
    * Return any tests registered since the last time
    * <code>getNewTests</code> was called.
@@ -149,4 +193,38 @@ final class TestRegistryImplementation implements TestRegistry {
       }
     }
   }
+
+  /**
+   * Return links from nested tests to their enclosing tests that have been
+   * discovered since the last time <code>getNewParents</code> was called.
+   *
+   * @return The new links, or <code>null</code> if there are none.
+   */
+  Map<Test, Test> getNewParents() {
+    if (!m_nestedTestStatistics) {
+      return null;
+    }
+
+    Map<Test, Test> result = null;
+
+    synchronized (this) {
+      for (final TestData testData : m_testMap.values()) {
+        final Test parent = testData.getParentTest();
+
+        if (parent != null &&
+            !parent.equals(m_reportedParents.get(testData.getTest()))) {
+
+          m_reportedParents.put(testData.getTest(), parent);
+
+          if (result == null) {
+            result = new HashMap<Test, Test>();
+          }
+
+          result.put(testData.getTest(), parent);
+        }
+      }
+    }
+
+    return result;
+  }
 }
@@ -38,8 +38,31 @@ interface TestStatisticsHelper {
 
   boolean getSuccess(ImmutableStatisticsSet statistics);
 
+  /**
+   * Record the test time.
+   *
+   * @param statistics The statistics.
+   * @param elapsedTime The test time, in microseconds.
+   */
   void recordTest(StatisticsSet statistics, long elapsedTime);
 
+  /**
+   * Record the test time, corrected for coordinated omission.
+   *
+   * @param statistics The statistics.
+   * @param elapsedTime The test time, in microseconds.
+   * @param expectedInterval The expected interval, in microseconds.
+   */
+  void recordCorrectedTest(StatisticsSet statistics,
+                           long elapsedTime,
+                           long expectedInterval);
+
+  /**
+   * Return the test time.
+   *
+   * @param statistics The statistics.
+   * @return The test time, in milliseconds.
+   */
   long getTestTime(ImmutableStatisticsSet statistics);
 
   void removeTestTimeFromSample(TestStatisticsMap sample);
@@ -47,4 +70,16 @@ interface TestStatisticsHelper {
   StatisticsIndexMap getStatisticsIndexMap();
 
   void incrementErrors(StatisticsSet testStatistics);
+
+  void recordScheduledStarts(StatisticsSet testStatistics,
+                             long lateStarts,
+                             long droppedStarts);
+
+  /**
+   * Record the time spent in tests nested within a test.
+   *
+   * @param statistics The statistics.
+   * @param nestedTime The nested time, in microseconds.
+   */
+  void recordNestedTime(StatisticsSet statistics, long nestedTime);
 }
@@ -40,6 +40,10 @@ final class TestStatisticsHelperImplementation
   private final StatisticsIndexMap.LongIndex m_errorsIndex;
   private final StatisticsIndexMap.LongIndex m_untimedTestsIndex;
   private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex;
+  private final StatisticsIndexMap.LongSampleIndex m_correctedTimedTestsIndex;
+  private final StatisticsIndexMap.LongIndex m_lateStartsIndex;
+  private final StatisticsIndexMap.LongIndex m_droppedStartsIndex;
+  private final StatisticsIndexMap.LongIndex m_nestedTimeIndex;
 
   public TestStatisticsHelperImplementation(StatisticsIndexMap indexMap) {
 
@@ -47,6 +51,11 @@ final class TestStatisticsHelperImplementation
     m_errorsIndex = indexMap.getLongIndex("errors");
     m_untimedTestsIndex = indexMap.getLongIndex("untimedTests");
     m_timedTestsIndex = indexMap.getLongSampleIndex("timedTests");
+    m_correctedTimedTestsIndex =
+      indexMap.getLongSampleIndex("correctedTimedTests");
+    m_lateStartsIndex = indexMap.getLongIndex("lateStarts");
+    m_droppedStartsIndex = indexMap.getLongIndex("droppedStarts");
+    m_nestedTimeIndex = indexMap.getLongIndex("nestedTime");
   }
 
   public boolean getSuccess(ImmutableStatisticsSet statistics) {
@@ -70,8 +79,26 @@ final class TestStatisticsHelperImplementation
     statistics.setValue(m_untimedTestsIndex, 0);
   }
 
+  /**
+   * Record the elapsed time for a test that has an expected interval,
+   * back-filling a sample for each interval that the test prevented from
+   * starting on time.
+   */
+  public void recordCorrectedTest(StatisticsSet statistics,
+                                  long elapsedTime,
+                                  long expectedInterval) {
+    statistics.reset(m_correctedTimedTestsIndex);
+    statistics.addSample(m_correctedTimedTestsIndex, elapsedTime);
+
+    for (long missing = elapsedTime - expectedInterval;
+         missing >= expectedInterval;
+         missing -= expectedInterval) {
+      statistics.addSample(m_correctedTimedTestsIndex, missing);
+    }
+  }
+
   public long getTestTime(ImmutableStatisticsSet statistics) {
-    return statistics.getSum(m_timedTestsIndex);
+    return statistics.getSum(m_timedTestsIndex) / 1000;
   }
 
   public void removeTestTimeFromSample(TestStatisticsMap sample) {
@@ -80,6 +107,7 @@ final class TestStatisticsHelperImplementation
         statistics.addValue(m_untimedTestsIndex,
                             statistics.getCount(m_timedTestsIndex));
         statistics.reset(m_timedTestsIndex);
+        statistics.reset(m_correctedTimedTestsIndex);
       }
     }
     .iterate();
@@ -92,4 +120,20 @@ final class TestStatisticsHelperImplementation
   public void incrementErrors(StatisticsSet testStatistics) {
     testStatistics.addValue(m_errorsIndex, 1);
   }
+
+  public void recordScheduledStarts(StatisticsSet testStatistics,
+                                    long lateStarts,
+                                    long droppedStarts) {
+    if (lateStarts != 0) {
+      testStatistics.addValue(m_lateStartsIndex, lateStarts);
+    }
+
+    if (droppedStarts != 0) {
+      testStatistics.addValue(m_droppedStartsIndex, droppedStarts);
+    }
+  }
+
+  public void recordNestedTime(StatisticsSet statistics, long nestedTime) {
+    statistics.addValue(m_nestedTimeIndex, nestedTime);
+  }
 }
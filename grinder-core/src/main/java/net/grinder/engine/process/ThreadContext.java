@@ -24,6 +24,7 @@ package net.grinder.engine.process;
 import net.grinder.common.SSLContextFactory;
 import net.grinder.common.ThreadLifeCycleListener;
 import net.grinder.script.Statistics.StatisticsForTest;
+import net.grinder.scriptengine.Recorder;
 
 import org.slf4j.Marker;
 
@@ -64,6 +65,23 @@ interface ThreadContext /* extends PluginThreadContext */ {
 
   void popDispatchContext();
 
+  /**
+   * Per-thread storage for test recorders, so a worker thread can find its
+   * recorder for a test with an array lookup.
+   *
+   * @param testOrdinal The test's ordinal within the worker process.
+   * @return The recorder, or {@code null} if none has been set.
+   */
+  Recorder getTestRecorder(int testOrdinal);
+
+  /**
+   * Store a test recorder. See {@link #getTestRecorder(int)}.
+   *
+   * @param testOrdinal The test's ordinal within the worker process.
+   * @param recorder The recorder.
+   */
+  void setTestRecorder(int testOrdinal, Recorder recorder);
+
   StatisticsForTest getStatisticsForCurrentTest();
 
   StatisticsForTest getStatisticsForLastTest();
@@ -81,5 +99,20 @@ interface ThreadContext /* extends PluginThreadContext */ {
   void setCurrentRunNumber(int run);
 
   Marker getLogMarker();
+
+  /**
+   * Called by the worker thread when the arrival rate schedule starts a run.
+   *
+   * @param scheduledStart How the run was scheduled.
+   */
+  void setScheduledStart(ArrivalSchedule.ScheduledStart scheduledStart);
+
+  /**
+   * Called when a test starts, to collect the start of the current run if it
+   * has not already been reported by an earlier test.
+   *
+   * @return The scheduled start, or {@code null}.
+   */
+  ArrivalSchedule.ScheduledStart takeScheduledStart();
 }
 
@@ -23,6 +23,7 @@
 package net.grinder.engine.process;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import net.grinder.common.GrinderProperties;
@@ -33,6 +34,8 @@ import net.grinder.common.ThreadLifeCycleListener;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.DispatchContext.DispatchStateException;
 import net.grinder.script.Statistics.StatisticsForTest;
+import net.grinder.scriptengine.Recorder;
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsSet;
 import net.grinder.util.ListenerSupport;
@@ -69,11 +72,16 @@ final class ThreadContextImplementation implements ThreadContext {
 
   private StatisticsForTest m_statisticsForLastTest;
 
+  // Only accessed by the worker thread.
+  private Recorder[] m_testRecorders = new Recorder[16];
+
   private Marker m_runMarker;
   private int m_runNumber = -1;
 
   private Marker m_testMarker;
 
+  private ArrivalSchedule.ScheduledStart m_scheduledStart;
+
   private volatile boolean m_shutdown;
   private boolean m_shutdownReported;
 
@@ -82,13 +90,51 @@ final class ThreadContextImplementation implements ThreadContext {
                                      int threadNumber,
                                      Logger dataLogger)
     throws EngineException {
+    this(properties, statisticsServices, threadNumber, dataLogger, null);
+  }
+
+  public ThreadContextImplementation(GrinderProperties properties,
+                                     StatisticsServices statisticsServices,
+                                     int threadNumber,
+                                     Logger dataLogger,
+                                     final BinaryDataLogger binaryDataLogger)
+    throws EngineException {
 
     m_threadNumber = threadNumber;
     m_threadMarker = MarkerFactory.getMarker("thread-" + threadNumber);
 
     // Undocumented property. Added so Tom Barnes can investigate overhead
     // of data logging.
-    if (properties.getBoolean("grinder.logData", true)) {
+    if (!properties.getBoolean("grinder.logData", true)) {
+      m_dispatchResultReporter = new DispatchResultReporter() {
+        public void report(Test test,
+                           long startTime,
+                           StatisticsSet statistics) {
+          // Null reporter.
+        }
+      };
+    }
+    else if (binaryDataLogger != null) {
+      final LongIndex droppedIndex =
+        statisticsServices.getStatisticsIndexMap().getLongIndex(
+          "droppedDataLogRecords");
+
+      m_dispatchResultReporter = new DispatchResultReporter() {
+        public void report(Test test,
+                           long startTime,
+                           StatisticsSet statistics) {
+          if (!binaryDataLogger.report(m_threadNumber,
+                                       getRunNumber(),
+                                       test,
+                                       startTime,
+                                       statistics)) {
+            // The caller aggregates the statistics after we return.
+            statistics.setValue(droppedIndex, 1);
+          }
+        }
+      };
+    }
+    else {
       final ThreadDataLogger threadDataLogger =
         new ThreadDataLogger(
           dataLogger,
@@ -106,15 +152,6 @@ final class ThreadContextImplementation implements ThreadContext {
         }
       };
     }
-    else {
-      m_dispatchResultReporter = new DispatchResultReporter() {
-        public void report(Test test,
-                           long startTime,
-                           StatisticsSet statistics) {
-          // Null reporter.
-        }
-      };
-    }
 
     registerThreadLifeCycleListener(
       new SkeletonThreadLifeCycleListener() {
@@ -237,6 +274,25 @@ final class ThreadContextImplementation implements ThreadContext {
     m_dispatchContextStack.push(dispatchContext);
   }
 
+  @Override
+  public Recorder getTestRecorder(final int testOrdinal) {
+    final Recorder[] testRecorders = m_testRecorders;
+
+    return testOrdinal < testRecorders.length ?
+        testRecorders[testOrdinal] : null;
+  }
+
+  @Override
+  public void setTestRecorder(final int testOrdinal, final Recorder recorder) {
+    if (testOrdinal >= m_testRecorders.length) {
+      m_testRecorders =
+        Arrays.copyOf(m_testRecorders,
+                      Math.max(testOrdinal + 1, m_testRecorders.length * 2));
+    }
+
+    m_testRecorders[testOrdinal] = recorder;
+  }
+
   public void popDispatchContext() {
     if (m_shutdownReported) {
       return;
@@ -254,6 +310,8 @@ final class ThreadContextImplementation implements ThreadContext {
     if (parentDispatchContext != null) {
       parentDispatchContext.getPauseTimer().add(
         dispatchContext.getPauseTimer());
+
+      dispatchContext.endedWithin(parentDispatchContext);
     }
 
     m_statisticsForLastTest = dispatchContext.getStatisticsForTest();
@@ -283,11 +341,25 @@ final class ThreadContextImplementation implements ThreadContext {
        return null;
      }
 
-     return dispatchContext.getStatisticsForTest();
+     return retain(dispatchContext.getStatisticsForTest());
   }
 
   public StatisticsForTest getStatisticsForLastTest() {
-    return m_statisticsForLastTest;
+    return retain(m_statisticsForLastTest);
+  }
+
+  /**
+   * The statistics are being passed to a script, which might hold on to
+   * them. Ensure the dispatch context doesn't reuse them.
+   */
+  private static StatisticsForTest retain(
+    final StatisticsForTest statisticsForTest) {
+
+    if (statisticsForTest instanceof StatisticsForTestImplementation) {
+      ((StatisticsForTestImplementation) statisticsForTest).setRetained();
+    }
+
+    return statisticsForTest;
   }
 
   public void setDelayReports(boolean b) {
@@ -311,6 +383,26 @@ final class ThreadContextImplementation implements ThreadContext {
     }
   }
 
+  @Override
+  public void setScheduledStart(
+    ArrivalSchedule.ScheduledStart scheduledStart) {
+
+    if (m_scheduledStart != null) {
+      // The last run performed no tests.
+      m_scheduledStart = scheduledStart.merge(m_scheduledStart);
+    }
+    else {
+      m_scheduledStart = scheduledStart;
+    }
+  }
+
+  @Override
+  public ArrivalSchedule.ScheduledStart takeScheduledStart() {
+    final ArrivalSchedule.ScheduledStart result = m_scheduledStart;
+    m_scheduledStart = null;
+    return result;
+  }
+
   public void pauseClock() {
     final DispatchContext dispatchContext = m_dispatchContextStack.peekTop();
 
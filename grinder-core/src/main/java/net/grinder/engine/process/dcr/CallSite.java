@@ -0,0 +1,279 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.dcr;
+
+import static extra166y.CustomConcurrentHashMap.IDENTITY;
+import static extra166y.CustomConcurrentHashMap.STRONG;
+import static extra166y.CustomConcurrentHashMap.WEAK;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import net.grinder.scriptengine.Recorder;
+import extra166y.CustomConcurrentHashMap;
+
+
+/**
+ * The recorders registered for a single woven location.
+ *
+ * <p>
+ * Most locations only ever have recorders for one target; for example, all
+ * static methods and constructors use the class as the target. A call site
+ * binds such locations directly to their recorders, so that woven code can
+ * find them without any map lookups. The binding is replaced whenever a
+ * recorder is registered. Locations with more than one target fall back to
+ * a lookup keyed by target identity.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class CallSite {
+
+  private static final Recorder[] NO_RECORDERS = new Recorder[0];
+
+  private final int m_index;
+
+  /**
+   * Target reference -> recorders. We use copy on write arrays, so the
+   * enter/exit methods can iterate without locks or allocation.
+   */
+  private final ConcurrentMap<Object, Recorder[]> m_recorders =
+    new CustomConcurrentHashMap<Object, Recorder[]>(
+          WEAK, IDENTITY, STRONG, IDENTITY, 0);
+
+  private final ConcurrentMap<Object, ConcurrentMap<Object, Recorder[]>>
+    m_recorders2 =
+      new CustomConcurrentHashMap<Object,
+                                  ConcurrentMap<Object, Recorder[]>>(
+            WEAK, IDENTITY, STRONG, IDENTITY, 0);
+
+  // Guarded by this for writes.
+  private volatile Binding m_binding;
+
+  /**
+   * Constructor.
+   *
+   * @param index The index of the call site.
+   */
+  CallSite(final int index) {
+    m_index = index;
+  }
+
+  /**
+   * The index of this call site, used by woven code.
+   *
+   * @return The index.
+   */
+  int getIndex() {
+    return m_index;
+  }
+
+  /**
+   * Find the recorders for a target.
+   *
+   * @param target The target reference.
+   * @return The recorders, in registration order. Callers must not modify the
+   *         array.
+   */
+  Recorder[] getRecorders(final Object target) {
+    final Binding binding = m_binding;
+
+    if (binding != null && binding.matches(target, null)) {
+      return binding.getRecorders();
+    }
+
+    final Recorder[] recorders = m_recorders.get(target);
+
+    return recorders != null ? recorders : NO_RECORDERS;
+  }
+
+  /**
+   * Find the recorders for a pair of targets.
+   *
+   * @param target The target reference.
+   * @param target2 The second target reference.
+   * @return The recorders, in registration order. Callers must not modify the
+   *         array.
+   */
+  Recorder[] getRecorders(final Object target, final Object target2) {
+    final Binding binding = m_binding;
+
+    if (binding != null && binding.matches(target, target2)) {
+      return binding.getRecorders();
+    }
+
+    final Map<Object, Recorder[]> target2Map = m_recorders2.get(target);
+
+    if (target2Map != null) {
+      final Recorder[] recorders = target2Map.get(target2);
+
+      if (recorders != null) {
+        return recorders;
+      }
+    }
+
+    return NO_RECORDERS;
+  }
+
+  /**
+   * Register a recorder for a target.
+   *
+   * @param target The target reference.
+   * @param recorder The recorder.
+   */
+  synchronized void register(final Object target, final Recorder recorder) {
+    final Recorder[] recorders = add(m_recorders.get(target), recorder);
+
+    if (recorders != null) {
+      m_recorders.put(target, recorders);
+      rebind();
+    }
+  }
+
+  /**
+   * Register a recorder for a pair of targets.
+   *
+   * @param target The target reference.
+   * @param target2 The second target reference.
+   * @param recorder The recorder.
+   */
+  synchronized void register(final Object target,
+                             final Object target2,
+                             final Recorder recorder) {
+
+    final ConcurrentMap<Object, Recorder[]> existingMap =
+      m_recorders2.get(target);
+
+    final ConcurrentMap<Object, Recorder[]> target2Map;
+
+    if (existingMap != null) {
+      target2Map = existingMap;
+    }
+    else {
+      target2Map =
+        new CustomConcurrentHashMap<Object, Recorder[]>(
+              STRONG, IDENTITY, STRONG, IDENTITY, 0);
+      m_recorders2.put(target, target2Map);
+    }
+
+    final Recorder[] recorders = add(target2Map.get(target2), recorder);
+
+    if (recorders != null) {
+      target2Map.put(target2, recorders);
+      rebind();
+    }
+  }
+
+  /**
+   * Remove all registrations.
+   */
+  synchronized void clear() {
+    m_recorders.clear();
+    m_recorders2.clear();
+    m_binding = null;
+  }
+
+  /**
+   * Copy an array of recorders, adding a new recorder.
+   *
+   * @return The new array, or {@code null} if {@code recorder} is already
+   *         present.
+   */
+  private static Recorder[] add(final Recorder[] recorders,
+                                final Recorder recorder) {
+    if (recorders == null) {
+      return new Recorder[] { recorder };
+    }
+
+    // Same target, location, recorder => no-op, avoiding memory leak. The
+    // Recorder implementation ignores recursive invocations, so only the
+    // first registered instance of a (target, location, recorder) tuple
+    // matters.
+    for (final Recorder existingRecorder : recorders) {
+      if (existingRecorder == recorder) {
+        return null;
+      }
+    }
+
+    final Recorder[] result = new Recorder[recorders.length + 1];
+    System.arraycopy(recorders, 0, result, 0, recorders.length);
+    result[recorders.length] = recorder;
+
+    return result;
+  }
+
+  private void rebind() {
+    m_binding = null;
+
+    if (m_recorders.size() + m_recorders2.size() != 1) {
+      return;
+    }
+
+    for (final Map.Entry<Object, Recorder[]> entry : m_recorders.entrySet()) {
+      m_binding = new Binding(entry.getKey(), null, entry.getValue());
+    }
+
+    for (final Map.Entry<Object, ConcurrentMap<Object, Recorder[]>> entry :
+         m_recorders2.entrySet()) {
+
+      final Map<Object, Recorder[]> target2Map = entry.getValue();
+
+      if (target2Map.size() == 1) {
+        for (final Map.Entry<Object, Recorder[]> entry2 :
+             target2Map.entrySet()) {
+          m_binding = new Binding(entry.getKey(),
+                                  entry2.getKey(),
+                                  entry2.getValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * Immutable binding of a call site to the recorders of its only target.
+   * Targets are weakly referenced, as they are in the maps.
+   */
+  private static final class Binding {
+    private final WeakReference<Object> m_target;
+    private final WeakReference<Object> m_target2;
+    private final Recorder[] m_recorders;
+
+    public Binding(final Object target,
+                   final Object target2,
+                   final Recorder[] recorders) {
+      m_target = new WeakReference<Object>(target);
+      m_target2 = target2 != null ? new WeakReference<Object>(target2) : null;
+      m_recorders = recorders;
+    }
+
+    public boolean matches(final Object target, final Object target2) {
+      return m_target.get() == target &&
+             (m_target2 == null ?
+               target2 == null : m_target2.get() == target2);
+    }
+
+    public Recorder[] getRecorders() {
+      return m_recorders;
+    }
+  }
+}
@@ -1,4 +1,4 @@
-// Copyright (C) 2009 - 2012 Philip Aston
+// Copyright (C) 2009 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -23,13 +23,8 @@ package net.grinder.engine.process.dcr;
 
 import static extra166y.CustomConcurrentHashMap.IDENTITY;
 import static extra166y.CustomConcurrentHashMap.STRONG;
-import static extra166y.CustomConcurrentHashMap.WEAK;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.grinder.common.UncheckedGrinderException;
 import net.grinder.engine.common.EngineException;
@@ -41,6 +36,13 @@ import extra166y.CustomConcurrentHashMap;
  * Static methods that weaved code uses to dispatch enter and exit calls to the
  * appropriate {@link Recorder}.
  *
+ * <p>
+ * Each woven location has a {@link CallSite}. Woven code identifies the call
+ * site by an index that is allocated when the class is woven, so dispatch
+ * requires only an array access. The methods that identify the location by
+ * its string are retained for other callers, and require a further lookup.
+ * </p>
+ *
  * @author Philip Aston
  */
 public final class RecorderLocator implements RecorderRegistry {
@@ -51,74 +53,197 @@ public final class RecorderLocator implements RecorderRegistry {
    * Accessor for the unit tests.
    */
   static void clearRecorders() {
-    s_instance.m_recorders.clear();
+    for (final CallSite callSite : s_instance.m_locations.values()) {
+      callSite.clear();
+    }
+  }
+
+  /**
+   * Location -> call site. Location strings are interned, so we use an
+   * identity hash map.
+   */
+  private final ConcurrentMap<String, CallSite> m_locations =
+    new CustomConcurrentHashMap<String, CallSite>(
+          STRONG, IDENTITY, STRONG, IDENTITY, 101);
+
+  /**
+   * Call site index -> call site. Call sites are never removed, since woven
+   * code may refer to them. Elements are only written before the array is
+   * (re)assigned, under the {@code m_locations} lock.
+   */
+  private volatile CallSite[] m_callSites = new CallSite[64];
+
+  // Guarded by m_locations.
+  private int m_numberOfCallSites;
+
+  private CallSite getCallSite(final String location) {
+    final CallSite existing = m_locations.get(location);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    final String internedLocation = location.intern();
+
+    synchronized (m_locations) {
+      final CallSite alreadyCreated = m_locations.get(internedLocation);
+
+      if (alreadyCreated != null) {
+        return alreadyCreated;
+      }
+
+      final CallSite[] callSites;
+
+      if (m_numberOfCallSites == m_callSites.length) {
+        callSites = new CallSite[m_numberOfCallSites * 2];
+        System.arraycopy(m_callSites, 0, callSites, 0, m_numberOfCallSites);
+      }
+      else {
+        callSites = m_callSites;
+      }
+
+      final CallSite callSite = new CallSite(m_numberOfCallSites);
+      callSites[m_numberOfCallSites++] = callSite;
+
+      // Write the volatile field even if it is unchanged, so readers see the
+      // new element.
+      m_callSites = callSites;
+
+      m_locations.put(internedLocation, callSite);
+
+      return callSite;
+    }
   }
 
   /**
-   * Target reference -> location -> recorder list. Location strings are
-   * interned, so we use an identity hash map for both maps. We use concurrent
-   * structures throughout to avoid synchronisation. The target reference is the
-   * first key to minimise the cost of traversing woven code for
-   * non-instrumented references, which is important if {@code Object}, {@code
-   * PyObject}, etc. are instrumented.
+   * Called when a class is woven to find the index of the call site for a
+   * location. Subsequent calls for the same location return the same index.
+   *
+   * @param location
+   *          Unique identity generated when the method was instrumented.
+   * @return The call site index.
    */
-  private final ConcurrentMap<Object,
-                              ConcurrentMap<String, List<Recorder>>>
-    m_recorders =
-        new CustomConcurrentHashMap<Object,
-                                    ConcurrentMap<String, List<Recorder>>>(
-              WEAK, IDENTITY, STRONG, IDENTITY, 101);
-
-  private final ConcurrentMap<Object,
-                    ConcurrentMap<Object,
-                                  ConcurrentMap<String, List<Recorder>>>>
-    m_recorders2 =
-      new CustomConcurrentHashMap<Object,
-           ConcurrentMap<Object,
-                         ConcurrentMap<String, List<Recorder>>>>(
-        WEAK, IDENTITY, STRONG, IDENTITY, 101);
-
-  private List<Recorder> getRecorderList(final Object target,
-                                         final String locationID) {
-
-    final ConcurrentMap<String, List<Recorder>> locationMap =
-      m_recorders.get(target);
-
-    if (locationMap != null) {
-      final List<Recorder> list = locationMap.get(locationID);
-
-      if (list != null) {
-        return list;
+  public static int callSite(final String location) {
+    return s_instance.getCallSite(location).getIndex();
+  }
+
+  private static void start(final Recorder[] recorders) {
+    try {
+      for (final Recorder recorder : recorders) {
+        recorder.start();
       }
     }
+    catch (final EngineException e) {
+      throw new RecordingFailureException(e);
+    }
+  }
 
-    return Collections.<Recorder>emptyList();
+  private static void end(final Recorder[] recorders, final boolean success) {
+    try {
+      // Iterate over recorders in reverse.
+      for (int i = recorders.length - 1; i >= 0; --i) {
+        recorders[i].end(success);
+      }
+    }
+    catch (final EngineException e) {
+      throw new RecordingFailureException(e);
+    }
   }
 
-  private List<Recorder> getRecorderList(final Object target,
-                                         final Object target2,
-                                         final String locationID) {
+  /**
+   * Called when a weaved method is entered.
+   *
+   * @param target
+   *          The reference used to identify the instrumented context. An
+   *          appropriate object will be passed depending on how the method
+   *          was instrumented. The class is used for static methods or
+   *          constructors.
+   * @param callSite
+   *          The call site index allocated by {@link #callSite} when the
+   *          method was woven.
+   */
+  public static void enter(final Object target, final int callSite) {
+
+    if (target == null) {
+      // We don't allow recorders to register for a null target,
+      // but weaved code can be called with null.
+      return;
+    }
+
+    start(s_instance.m_callSites[callSite].getRecorders(target));
+  }
 
-    final ConcurrentMap<Object, ConcurrentMap<String, List<Recorder>>>
-      target2Map =
-      m_recorders2.get(target);
+  /**
+   * Called when a weaved method is entered.
+   *
+   * @param target
+   *          The reference used to identify the instrumented context.
+   * @param target2
+   *          The second reference used to identify the instrumented context.
+   * @param callSite
+   *          The call site index allocated by {@link #callSite} when the
+   *          method was woven.
+   */
+  public static void enter(final Object target,
+                           final Object target2,
+                           final int callSite) {
 
-    if (target2Map != null) {
-      final ConcurrentMap<String, List<Recorder>>
-        locationMap = target2Map.get(target2);
+    if (target == null || target2 == null) {
+      return;
+    }
 
-      if (locationMap != null) {
-        final List<Recorder> list = locationMap.get(locationID);
+    start(s_instance.m_callSites[callSite].getRecorders(target, target2));
+  }
 
-        if (list != null) {
-          return list;
-        }
-      }
+  /**
+   * Called when a weaved method is exited.
+   *
+   * @param target
+   *          The reference used to identify the instrumented context.
+   * @param callSite
+   *          The call site index allocated by {@link #callSite} when the
+   *          method was woven.
+   * @param success
+   *          {@code true} if the exit was a normal return, {code false} if an
+   *          exception was thrown.
+   */
+  public static void exit(final Object target,
+                          final int callSite,
+                          final boolean success) {
+
+    if (target == null) {
+      return;
     }
 
-    return Collections.<Recorder>emptyList();
+    end(s_instance.m_callSites[callSite].getRecorders(target), success);
   }
 
+  /**
+   * Called when a weaved method is exited.
+   *
+   * @param target
+   *          The reference used to identify the instrumented context.
+   * @param target2
+   *          The second reference used to identify the instrumented context.
+   * @param callSite
+   *          The call site index allocated by {@link #callSite} when the
+   *          method was woven.
+   * @param success
+   *          {@code true} if the exit was a normal return, {code false} if an
+   *          exception was thrown.
+   */
+  public static void exit(final Object target,
+                          final Object target2,
+                          final int callSite,
+                          final boolean success) {
+
+    if (target == null || target2 == null) {
+      return;
+    }
+
+    end(s_instance.m_callSites[callSite].getRecorders(target, target2),
+        success);
+  }
 
   /**
    * Called when a weaved method is entered.
@@ -131,7 +256,6 @@ public final class RecorderLocator implements RecorderRegistry {
    * @param location
    *          Unique identity generated when the method was instrumented.
    *          Will be interned.
-   * @throws EngineException
    */
   public static void enter(final Object target, final String location) {
 
@@ -148,17 +272,10 @@ public final class RecorderLocator implements RecorderRegistry {
 //                     target.getClass(),
 //                     location);
 
-    try {
-      for (final Recorder recorder :
-        s_instance.getRecorderList(target, location)) {
-
-//        System.out.printf(" -> %s%n", System.identityHashCode(recorder));
+    final CallSite callSite = s_instance.m_locations.get(location);
 
-        recorder.start();
-      }
-    }
-    catch (final EngineException e) {
-      throw new RecordingFailureException(e);
+    if (callSite != null) {
+      start(callSite.getRecorders(target));
     }
   }
 
@@ -186,15 +303,10 @@ public final class RecorderLocator implements RecorderRegistry {
       return;
     }
 
-    try {
-      for (final Recorder recorder :
-        s_instance.getRecorderList(target, target2, location)) {
+    final CallSite callSite = s_instance.m_locations.get(location);
 
-        recorder.start();
-      }
-    }
-    catch (final EngineException e) {
-      throw new RecordingFailureException(e);
+    if (callSite != null) {
+      start(callSite.getRecorders(target, target2));
     }
   }
 
@@ -223,31 +335,10 @@ public final class RecorderLocator implements RecorderRegistry {
       return;
     }
 
-    // Beware when enabling the following logging - calls on the object itself
-    // may fail subtly.
-//    System.out.printf("exit(%s, %s, %s, %s)%n",
-//                      System.identityHashCode(target),
-//                      target.getClass(),
-//                      location,
-//                      success);
-
-    final List<Recorder> recorders =
-      s_instance.getRecorderList(target, location);
-
-    // Iterate over recorders in reverse.
-    final ListIterator<Recorder> i = recorders.listIterator(recorders.size());
-
-    try {
-      while (i.hasPrevious()) {
-        final Recorder recorder = i.previous();
-
-//        System.out.printf(" -> %s%n", System.identityHashCode(recorder));
+    final CallSite callSite = s_instance.m_locations.get(location);
 
-        recorder.end(success);
-      }
-    }
-    catch (final EngineException e) {
-      throw new RecordingFailureException(e);
+    if (callSite != null) {
+      end(callSite.getRecorders(target), success);
     }
   }
 
@@ -278,21 +369,10 @@ public final class RecorderLocator implements RecorderRegistry {
       return;
     }
 
-    final List<Recorder> recorders =
-      s_instance.getRecorderList(target, target2, location);
+    final CallSite callSite = s_instance.m_locations.get(location);
 
-    // Iterate over recorders in reverse.
-    final ListIterator<Recorder> i = recorders.listIterator(recorders.size());
-
-    try {
-      while (i.hasPrevious()) {
-        final Recorder recorder = i.previous();
-
-        recorder.end(success);
-      }
-    }
-    catch (final EngineException e) {
-      throw new RecordingFailureException(e);
+    if (callSite != null) {
+      end(callSite.getRecorders(target, target2), success);
     }
   }
 
@@ -312,39 +392,9 @@ public final class RecorderLocator implements RecorderRegistry {
                                  final String location,
                                  final Recorder recorder) {
 
-    // We will create and quickly discard many maps and lists here to avoid
-    // needing to lock the ConcurrentMaps. It is important that the
-    // enter/exit methods are lock free, the instrumentation registration
-    // process can be relatively slow.
-
-    final ConcurrentMap<String, List<Recorder>> newMap =
-      new CustomConcurrentHashMap<String, List<Recorder>>(
-            STRONG, IDENTITY, STRONG, IDENTITY, 0);
-
-    final ConcurrentMap<String, List<Recorder>> oldMap =
-      m_recorders.putIfAbsent(target, newMap);
-
-    final ConcurrentMap<String, List<Recorder>> locationMap =
-      oldMap != null ? oldMap : newMap;
-
-    final List<Recorder> newList = new CopyOnWriteArrayList<Recorder>();
-
-    final List<Recorder> oldList =
-      locationMap.putIfAbsent(location.intern(), newList);
-
-    final List<Recorder> recorderList = oldList != null ? oldList : newList;
-
-    // Same target, location, recorder => no-op, avoiding memory leak. The
-    // Recorder implementation ignores recursive invocations, so only the
-    // first registered instance of a (target, location, recorder) tuple
-    // matters.
-    for (final Recorder existingRecorder : recorderList) {
-      if (existingRecorder == recorder) {
-        return;
-      }
-    }
-
-    recorderList.add(recorder);
+    // Registration may be relatively slow, and locks the call site. It is
+    // important that the enter/exit methods are lock free.
+    getCallSite(location).register(target, recorder);
   }
 
   /**
@@ -355,50 +405,7 @@ public final class RecorderLocator implements RecorderRegistry {
                                  final String location,
                                  final Recorder recorder) {
 
-
-
-      final ConcurrentMap<Object,
-                          ConcurrentMap<String, List<Recorder>>> newMap =
-        new CustomConcurrentHashMap<Object,
-                                   ConcurrentMap<String, List<Recorder>>>(
-              STRONG, IDENTITY, STRONG, IDENTITY, 0);
-
-      final ConcurrentMap<Object,
-                          ConcurrentMap<String, List<Recorder>>> oldMap =
-        m_recorders2.putIfAbsent(target, newMap);
-
-      final ConcurrentMap<Object,
-                          ConcurrentMap<String, List<Recorder>>> target2Map =
-          oldMap != null ? oldMap : newMap;
-
-      final ConcurrentMap<String, List<Recorder>> newTarget2Map =
-          new CustomConcurrentHashMap<String, List<Recorder>>(
-                STRONG, IDENTITY, STRONG, IDENTITY, 0);
-
-        final ConcurrentMap<String, List<Recorder>> oldTarget2Map =
-          target2Map.putIfAbsent(target2, newTarget2Map);
-
-      final ConcurrentMap<String, List<Recorder>> locationMap =
-        oldTarget2Map != null ? oldTarget2Map : newTarget2Map;
-
-      final List<Recorder> newList = new CopyOnWriteArrayList<Recorder>();
-
-      final List<Recorder> oldList =
-        locationMap.putIfAbsent(location.intern(), newList);
-
-      final List<Recorder> recorderList = oldList != null ? oldList : newList;
-
-      // Same target, location, recorder => no-op, avoiding memory leak. The
-      // Recorder implementation ignores recursive invocations, so only the
-      // first registered instance of a (target, location, recorder) tuple
-      // matters.
-      for (final Recorder existingRecorder : recorderList) {
-        if (existingRecorder == recorder) {
-          return;
-        }
-      }
-
-      recorderList.add(recorder);
+    getCallSite(location).register(target, target2, recorder);
   }
 
   private static final class RecordingFailureException
@@ -0,0 +1,139 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.messages.console;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.grinder.common.processidentity.ProcessReport;
+import net.grinder.communication.CompactMessageEncoding;
+import net.grinder.statistics.SparseTestStatistics;
+import net.grinder.statistics.StatisticsServicesImplementation;
+
+
+/**
+ * Compact encodings for the high volume messages that worker processes send
+ * to the console.
+ *
+ * @author Philip Aston
+ */
+public final class ConsoleMessageEncodings {
+
+  private ConsoleMessageEncodings() {
+  }
+
+  /**
+   * Encoding for {@link ReportStatisticsMessage}. Uses the sparse
+   * {@link SparseTestStatistics} format. Received messages hold the encoded
+   * statistics, which are only decoded when the console visits them.
+   */
+  public static final class ReportStatistics
+    implements CompactMessageEncoding<ReportStatisticsMessage> {
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getTag() {
+      return 16;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Class<ReportStatisticsMessage> getMessageClass() {
+      return ReportStatisticsMessage.class;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(ReportStatisticsMessage message, DataOutput out)
+      throws IOException {
+      message.getSparseStatistics().write(out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ReportStatisticsMessage read(DataInput in) throws IOException {
+      return new ReportStatisticsMessage(
+        new SparseTestStatistics(
+          StatisticsServicesImplementation.getInstance()
+          .getStatisticsSetFactory(),
+          in));
+    }
+  }
+
+  /**
+   * Encoding for {@link WorkerProcessReportMessage}. The process address is
+   * not written; the console sets it from the connection.
+   */
+  public static final class WorkerProcessReport
+    implements CompactMessageEncoding<WorkerProcessReportMessage> {
+
+    private static final ProcessReport.State[] STATES =
+      ProcessReport.State.values();
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getTag() {
+      return 17;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Class<WorkerProcessReportMessage> getMessageClass() {
+      return WorkerProcessReportMessage.class;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(WorkerProcessReportMessage message, DataOutput out)
+      throws IOException {
+      out.writeByte(message.getState().ordinal());
+      out.writeInt(message.getNumberOfRunningThreads());
+      out.writeInt(message.getMaximumNumberOfThreads());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public WorkerProcessReportMessage read(DataInput in) throws IOException {
+      final int state = in.readUnsignedByte();
+
+      if (state >= STATES.length) {
+        throw new IOException("Invalid process state " + state);
+      }
+
+      final int runningThreads = in.readInt();
+      final int totalThreads = in.readInt();
+
+      return new WorkerProcessReportMessage(STATES[state],
+                                            runningThreads,
+                                            totalThreads);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.messages.console;
+
+import java.util.Map;
+
+import net.grinder.common.Test;
+import net.grinder.communication.Message;
+
+
+/**
+ * Message used to tell the console which tests are nested within other
+ * tests.
+ *
+ * @author Philip Aston
+ */
+public final class RegisterTestParentsMessage implements Message {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Map<Test, Test> m_parents;
+
+  /**
+   * Constructor.
+   *
+   * @param parents Map of nested tests to their enclosing tests.
+   */
+  public RegisterTestParentsMessage(Map<Test, Test> parents) {
+    m_parents = parents;
+  }
+
+  /**
+   * Get the links from nested tests to their enclosing tests.
+   *
+   * @return Map of nested tests to their enclosing tests.
+   */
+  public Map<Test, Test> getParents() {
+    return m_parents;
+  }
+}
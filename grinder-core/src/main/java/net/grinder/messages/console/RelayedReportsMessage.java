@@ -0,0 +1,103 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.messages.console;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.grinder.communication.Address;
+import net.grinder.communication.AddressAwareMessage;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.Message;
+import net.grinder.communication.Sender;
+
+
+/**
+ * Message used by an agent to forward the reports of its worker processes to
+ * the console in a single message.
+ *
+ * <p>Each report is paired with the address of the worker process that sent
+ * it, if the report does not carry its address itself.</p>
+ *
+ * @author Philip Aston
+ */
+public final class RelayedReportsMessage implements Message {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<Message> m_messages = new ArrayList<Message>();
+  private final List<Address> m_addresses = new ArrayList<Address>();
+
+  /**
+   * Add a report.
+   *
+   * @param address
+   *          The address of the process that sent the report, or
+   *          {@code null} if the report need not be re-addressed.
+   * @param message
+   *          The report.
+   */
+  public void add(Address address, Message message) {
+    m_messages.add(message);
+    m_addresses.add(address);
+  }
+
+  /**
+   * The reports.
+   *
+   * @return The reports, in the order they should be processed.
+   */
+  public List<Message> getMessages() {
+    return m_messages;
+  }
+
+  /**
+   * Whether there are any reports.
+   *
+   * @return {@code true} if and only if there are no reports.
+   */
+  public boolean isEmpty() {
+    return m_messages.isEmpty();
+  }
+
+  /**
+   * Restore the address of each report, then pass it to a {@link Sender}.
+   *
+   * @param sender
+   *          The sender.
+   * @throws CommunicationException
+   *           If an address is not appropriate for its report, or if the
+   *           sender fails.
+   */
+  public void dispatch(Sender sender) throws CommunicationException {
+    for (int i = 0; i < m_messages.size(); ++i) {
+      final Message message = m_messages.get(i);
+      final Address address = m_addresses.get(i);
+
+      if (address != null && message instanceof AddressAwareMessage) {
+        ((AddressAwareMessage) message).setAddress(address);
+      }
+
+      sender.send(message);
+    }
+  }
+}
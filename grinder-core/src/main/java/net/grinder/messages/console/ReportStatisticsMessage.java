@@ -21,20 +21,39 @@
 
 package net.grinder.messages.console;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import net.grinder.communication.Message;
+import net.grinder.statistics.SparseTestStatistics;
+import net.grinder.statistics.StatisticsServicesImplementation;
 import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.statistics.TestStatisticsReport;
 
 
 /**
  * Message used to report test statistics to the console.
  *
+ * <p>Holds either a {@link TestStatisticsMap}, or the
+ * {@link SparseTestStatistics} encoding of one. Workers create messages from
+ * their sampled {@code TestStatisticsMap}; the console receives the sparse
+ * form and can add it to its model without decoding it into a map. Java
+ * serialisation also uses the sparse form, so reports relayed by an agent
+ * are as compact as those sent directly.</p>
+ *
  * @author Philip Aston
  */
 public final class ReportStatisticsMessage implements Message {
 
-  private static final long serialVersionUID = 5659643598627115683L;
+  private static final long serialVersionUID = 6411907315582862043L;
+
+  // Guarded by this. Null if we were created from sparse statistics and have
+  // not yet been asked for the map.
+  private transient TestStatisticsMap m_statisticsDelta;
 
-  private final TestStatisticsMap m_statisticsDelta;
+  // Guarded by this.
+  private transient SparseTestStatistics m_sparseStatistics;
 
   /**
    * Constructor.
@@ -46,11 +65,76 @@ public final class ReportStatisticsMessage implements Message {
   }
 
   /**
-   * Get the test statistics.
+   * Constructor.
+   *
+   * @param statisticsDelta The encoded test statistics.
+   */
+  public ReportStatisticsMessage(SparseTestStatistics statisticsDelta) {
+    m_sparseStatistics = statisticsDelta;
+  }
+
+  /**
+   * Get the test statistics as a {@link TestStatisticsMap}. Decodes the
+   * statistics if necessary.
    *
    * @return The test statistics.
+   * @throws IOException If the statistics could not be decoded.
    */
-  public TestStatisticsMap getStatisticsDelta() {
+  public synchronized TestStatisticsMap getStatisticsDelta()
+    throws IOException {
+
+    if (m_statisticsDelta == null) {
+      m_statisticsDelta = m_sparseStatistics.toTestStatisticsMap();
+    }
+
     return m_statisticsDelta;
   }
+
+  /**
+   * Get the test statistics in the cheapest available form.
+   *
+   * @return The test statistics.
+   */
+  public synchronized TestStatisticsReport getStatistics() {
+    return m_sparseStatistics != null ?
+        m_sparseStatistics : m_statisticsDelta;
+  }
+
+  /**
+   * Get the test statistics in their sparse encoded form. Encodes the
+   * statistics if necessary.
+   *
+   * @return The test statistics.
+   */
+  public synchronized SparseTestStatistics getSparseStatistics() {
+    if (m_sparseStatistics == null) {
+      m_sparseStatistics = new SparseTestStatistics(m_statisticsDelta);
+    }
+
+    return m_sparseStatistics;
+  }
+
+  private synchronized void writeObject(ObjectOutputStream out)
+    throws IOException {
+
+    out.defaultWriteObject();
+
+    final SparseTestStatistics sparseStatistics =
+      m_sparseStatistics != null ?
+          m_sparseStatistics : new SparseTestStatistics(m_statisticsDelta);
+
+    sparseStatistics.write(out);
+  }
+
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException {
+
+    in.defaultReadObject();
+
+    m_sparseStatistics =
+      new SparseTestStatistics(
+        StatisticsServicesImplementation.getInstance()
+        .getStatisticsSetFactory(),
+        in);
+  }
 }
@@ -38,11 +38,11 @@ import net.grinder.communication.CommunicationException;
 public final class WorkerProcessReportMessage
   implements AddressAwareMessage, WorkerProcessReport {
 
-  private static final long serialVersionUID = 3L;
+  private static final long serialVersionUID = 4L;
 
   private final State m_state;
-  private final short m_totalNumberOfThreads;
-  private final short m_numberOfRunningThreads;
+  private final int m_totalNumberOfThreads;
+  private final int m_numberOfRunningThreads;
 
   private transient WorkerAddress m_processAddress;
 
@@ -58,8 +58,8 @@ public final class WorkerProcessReportMessage
    *          The number of threads that are still running.
    */
   public WorkerProcessReportMessage(final State finished,
-                                    final short runningThreads,
-                                    final short totalThreads) {
+                                    final int runningThreads,
+                                    final int totalThreads) {
     m_state = finished;
     m_numberOfRunningThreads = runningThreads;
     m_totalNumberOfThreads = totalThreads;
@@ -115,7 +115,7 @@ public final class WorkerProcessReportMessage
    * @return The number of running threads.
    */
   @Override
-  public short getNumberOfRunningThreads() {
+  public int getNumberOfRunningThreads() {
     return m_numberOfRunningThreads;
   }
 
@@ -125,7 +125,7 @@ public final class WorkerProcessReportMessage
    * @return The maximum number of threads for the process.
    */
   @Override
-  public short getMaximumNumberOfThreads() {
+  public int getMaximumNumberOfThreads() {
     return m_totalNumberOfThreads;
   }
 
@@ -42,7 +42,8 @@ import net.grinder.common.SSLContextFactory;
  * <ul> <li>By default, each run has its own SSL context so SSL
  * sessions are not shared across threads or runs. Sharing sessions is
  * not desirable because this would potentially allow a server under
- * test to do less work. See {@link #setShareContextBetweenRuns}.</li>
+ * test to do less work. See {@link #setShareContextBetweenRuns} and
+ * {@link #setSessionCache}.</li>
 
  * <li>The Grinder trusts every server it talks to. It does not do any
  * validation of server certificates or host names. To do so would
@@ -218,4 +219,49 @@ public interface SSLControl extends SSLContextFactory {
    * <code>false</code> => each run should have a new SSL context.
    */
   void setShareContextBetweenRuns(boolean b);
+
+  /**
+   * Which SSL sessions a new connection may resume.
+   */
+  enum SessionCache {
+
+    /**
+     * Worker threads that use the default key managers share a single SSL
+     * context, so a connection can resume a session established by any of
+     * them. This minimises the handshake cost for The Grinder, but allows the
+     * server to do less work than it would for independent clients.
+     */
+    SHARED,
+
+    /**
+     * Each thread or run has its own SSL context, see {@link
+     * #setShareContextBetweenRuns}. Connections can resume sessions
+     * established earlier by the same thread or run. This is the default.
+     */
+    THREAD,
+
+    /**
+     * Sessions are never resumed. Every connection performs a full
+     * handshake, as a new user would.
+     */
+    NONE
+  }
+
+  /**
+   * Get which SSL sessions a new connection may resume.
+   *
+   * @return The session cache setting.
+   * @see #setSessionCache
+   */
+  SessionCache getSessionCache();
+
+  /**
+   * Set which SSL sessions a new connection may resume. This is a
+   * worker process level setting, and only affects SSL contexts
+   * created after the call. The initial value is taken from the
+   * <code>grinder.ssl.sessionCache</code> property.
+   *
+   * @param sessionCache The session cache setting.
+   */
+  void setSessionCache(SessionCache sessionCache);
 }
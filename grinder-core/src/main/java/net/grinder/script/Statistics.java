@@ -61,8 +61,19 @@ import net.grinder.common.GrinderException;
  * <tr>
  * <td><em>timedTests</em></td>
  * <td>sample&nbsp;long</td>
- * <td>Sample statistic that records successful tests.
- * A test is considered successful if it is not marked as an error.</td>
+ * <td>Sample statistic that records the time taken by successful tests,
+ * in microseconds. A test is considered successful if it is not marked as
+ * an error.</td>
+ * </tr>
+ *
+ * <tr>
+ * <td><em>correctedTimedTests</em></td>
+ * <td>sample&nbsp;long</td>
+ * <td>Sample statistic that records successful tests, corrected for
+ * coordinated omission. Only updated for tests that have an expected
+ * interval (see {@link Test#setExpectedInterval(long)}). Each test time is
+ * recorded, together with a synthetic sample for each expected interval
+ * that elapsed during the test.</td>
  * </tr>
  *
  * <tr>
@@ -92,6 +103,38 @@ import net.grinder.common.GrinderException;
  * </tr>
  *
  * <tr>
+ * <td><em>lateStarts</em></td>
+ * <td>basic&nbsp;long</td>
+ * <td>The number of runs that started later than the time set by the
+ * arrival rate schedule because no worker thread was free. Each late
+ * start is recorded against the first test performed by the run.
+ * <br/>This statistic is only updated if the
+ * <code>grinder.arrivalRate</code> property is set.</td>
+ * </tr>
+ *
+ * <tr>
+ * <td><em>droppedStarts</em></td>
+ * <td>basic&nbsp;long</td>
+ * <td>The number of runs that the arrival rate schedule abandoned because
+ * they could not be started within
+ * <code>grinder.arrivalRate.maximumLateness</code>. Dropped starts are
+ * recorded against the first test performed by the next run on the same
+ * worker thread.
+ * <br/>This statistic is only updated if the
+ * <code>grinder.arrivalRate</code> property is set.</td>
+ * </tr>
+ *
+ * <tr>
+ * <td><em>droppedDataLogRecords</em></td>
+ * <td>basic&nbsp;long</td>
+ * <td>The number of tests whose data log records were discarded because
+ * the binary data log buffer was full. Like other statistics, this is not
+ * aggregated for tests that fail.
+ * <br/>This statistic is only updated if the
+ * <code>grinder.binaryDataLog</code> property is set.</td>
+ * </tr>
+ *
+ * <tr>
  * <td><em>period</em></td>
  * <td>basic&nbsp;long</td>
  * <td>The sampling period duration, in milliseconds. <br/>This statistic is
@@ -135,12 +178,20 @@ import net.grinder.common.GrinderException;
  * <td><em>timedTests</em></td>
  * <td>sample&nbsp;long</td>
  * <td>If the test was successful, the count is <code>1</code> and the sum is
- * the test time in milliseconds, otherwise the sum and the count are zero.
+ * the test time in microseconds, otherwise the sum and the count are zero.
  * The variance is always <code>0</code>.
  * </td>
  * </tr>
  *
  * <tr>
+ * <td><em>correctedTimedTests</em></td>
+ * <td>sample&nbsp;long</td>
+ * <td>If the test was successful and has an expected interval, the test
+ * time and any synthetic samples, otherwise the sum and the count are zero.
+ * </td>
+ * </tr>
+ *
+ * <tr>
  * <td><em>userLong0</em>, <em>userLong1</em>, <em>userLong2</em>,
  * <em>userLong3</em>, <em>userLong4</em></td>
  * <td>basic&nbsp;long</td>
@@ -163,6 +214,13 @@ import net.grinder.common.GrinderException;
  * </tr>
  *
  * <tr>
+ * <td><em>lateStarts</em>, <em>droppedStarts</em>,
+ * <em>droppedDataLogRecords</em></td>
+ * <td>basic&nbsp;long</td>
+ * <td>Not relevant.</td>
+ * </tr>
+ *
+ * <tr>
  * <td><em>period</em></td>
  * <td>basic&nbsp;long</td>
  * <td>Not relevant.</td>
@@ -234,23 +292,52 @@ import net.grinder.common.GrinderException;
  * <tr>
  * <td><em>httpplugin.dnsTime</em></td>
  * <td>basic&nbsp;long</td>
- * <td>The time taken to resolve the host name in milliseconds.</td>
+ * <td>The time taken to resolve the host name in microseconds.</td>
  * </tr>
  *
  * <tr>
  * <td><em>httpplugin.connectTime</em></td>
  * <td>basic&nbsp;long</td>
- * <td>The time taken to establish the HTTP connection in milliseconds. (This
+ * <td>The time taken to establish the HTTP connection in microseconds. (This
  * includes time to resolve the host name).</td>
  * </tr>
  *
  * <tr>
+ * <td><em>httpplugin.handshakeTime</em></td>
+ * <td>basic&nbsp;long</td>
+ * <td>The time taken to complete the SSL handshake for a new HTTPS connection
+ * in microseconds. (This is not included in the time to establish the
+ * connection).</td>
+ * </tr>
+ *
+ * <tr>
  * <td><em>httpplugin.firstByteTime</em></td>
  * <td>basic&nbsp;long</td>
- * <td>The time taken to receive the first response byte in milliseconds. (This
+ * <td>The time taken to receive the first response byte in microseconds. (This
  * includes time to resolve the host name and establish the connection).</td>
  * </tr>
  *
+ * <tr>
+ * <td><em>httpplugin.poolWaitTime</em></td>
+ * <td>basic&nbsp;long</td>
+ * <td>The time spent waiting for a pooled HTTP connection in microseconds.
+ * Only updated if the connection pool is enabled.</td>
+ * </tr>
+ *
+ * <tr>
+ * <td><em>httpplugin.poolHits</em></td>
+ * <td>basic&nbsp;long</td>
+ * <td><code>1</code> if an idle pooled HTTP connection was reused, otherwise
+ * <code>0</code>.</td>
+ * </tr>
+ *
+ * <tr>
+ * <td><em>httpplugin.poolConnectionsCreated</em></td>
+ * <td>basic&nbsp;long</td>
+ * <td><code>1</code> if a new pooled HTTP connection was created, otherwise
+ * <code>0</code>.</td>
+ * </tr>
+ *
  * </table> </blockquote>
  *
  *
@@ -498,7 +585,7 @@ public interface Statistics  {
    * <p>
    * For example, the statistic expression <code>(/ (sum timedTests)
    * (count timedTests))</code>
-   * represents the mean test time in milliseconds.
+   * represents the mean test time in microseconds.
    * </p>
    *
    * @param displayName
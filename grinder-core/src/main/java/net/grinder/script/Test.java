@@ -166,5 +166,32 @@ public class Test extends AbstractTestSemantics implements Serializable {
     throws NonInstrumentableTypeException {
     m_registeredTest.instrument(target, filter);
   }
+
+  /**
+   * Set the interval at which the script expects to perform this test.
+   *
+   * <p>
+   * If the script performs the test in a loop with a fixed think time, a
+   * slow response delays the following executions of the test, and the
+   * delay is hidden from the recorded test times. When an expected interval
+   * is set, each successful test that takes longer than the interval is
+   * also recorded in the <em>correctedTimedTests</em> statistic, together
+   * with synthetic samples for the executions that should have started
+   * during the test. The console shows corrected and uncorrected test
+   * times side by side.
+   * </p>
+   *
+   * @param expectedInterval
+   *          The expected interval in milliseconds. {@code 0} turns off
+   *          correction.
+   */
+  public final void setExpectedInterval(long expectedInterval) {
+    if (expectedInterval < 0) {
+      throw new IllegalArgumentException(
+        "Expected interval must not be negative");
+    }
+
+    m_registeredTest.setExpectedInterval(expectedInterval);
+  }
 }
 
@@ -77,5 +77,13 @@ public interface TestRegistry {
      */
     void instrument(Object target, InstrumentationFilter filter)
       throws NonInstrumentableTypeException;
+
+    /**
+     * Set the interval at which the script expects to perform the test.
+     *
+     * @param expectedInterval
+     *          The interval in milliseconds. {@code 0} means no correction.
+     */
+    void setExpectedInterval(long expectedInterval);
   }
 }
@@ -25,6 +25,11 @@ package net.grinder.statistics;
 /**
  * Provides references to commonly used {@link StatisticsView}s.
  *
+ * <p>
+ * <em>timedTests</em> is recorded in microseconds. The views present test
+ * times in milliseconds, with sub-millisecond precision.
+ * </p>
+ *
  * @author Philip Aston
  */
 final class CommonStatisticsViews {
@@ -40,7 +45,7 @@ final class CommonStatisticsViews {
       final ExpressionView[] detailExpressionViews = {
         expressionFactory.createExpressionView(
           "Test time",
-          "(sum timedTests)",
+          "(/ (sum timedTests) 1000)",
           false),
         expressionFactory.createExpressionView(
           "Errors",
@@ -66,11 +71,23 @@ final class CommonStatisticsViews {
           true),
         expressionFactory.createExpressionView(
           "Mean Test Time (ms)",
-          "(/ (sum timedTests) (count timedTests))",
+          "(/ (sum timedTests) (* 1000 (count timedTests)))",
           false),
         expressionFactory.createExpressionView(
           "Test Time Standard Deviation (ms)",
-          "(sqrt (variance timedTests))",
+          "(/ (sqrt (variance timedTests)) 1000)",
+          false),
+        expressionFactory.createExpressionView(
+          "Median Test Time (ms)",
+          "(/ (percentile timedTests 50) 1000)",
+          false),
+        expressionFactory.createExpressionView(
+          "Test Time 95th Percentile (ms)",
+          "(/ (percentile timedTests 95) 1000)",
+          false),
+        expressionFactory.createExpressionView(
+          "Test Time 99th Percentile (ms)",
+          "(/ (percentile timedTests 99) 1000)",
           false),
         expressionFactory.createExpressionView("TPS", m_tpsExpression),
       };
@@ -47,7 +47,15 @@ import net.grinder.translation.Translatable;
  *
  * <p>
  * For example, the statistic expression {@code (/ (sum timedTests)
- * (count timedTests))} represents the mean test time in milliseconds.
+ * (count timedTests))} represents the mean test time in microseconds.
+ * </p>
+ *
+ * <p>
+ * Sample statistics that keep a histogram, such as <em>timedTests</em>, can
+ * also be introduced with {@code percentile}, followed by the percentile.
+ * For example, {@code (percentile timedTests 99.9)} is an estimate of the
+ * 99.9th percentile test time in microseconds.
+ * </p>
  *
  * @author Philip Aston
  */
@@ -0,0 +1,392 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.grinder.util.Serialiser;
+
+
+/**
+ * A histogram of non-negative <code>long</code> sample values, used to
+ * estimate percentiles.
+ *
+ * <p>
+ * Values are counted in log-linear buckets. Values less than
+ * {@link #EXACT_VALUES} have a bucket of their own. Each larger power of two
+ * range is split into {@link #SUB_BUCKETS} equal buckets, so the relative
+ * error of a percentile estimate is at most <code>1/SUB_BUCKETS</code>.
+ * There are at most {@link #MAXIMUM_BUCKETS} buckets. The bucket array is
+ * grown on demand, so a histogram of small values is small.
+ * </p>
+ *
+ * <p>
+ * Histograms with the same bucket layout can be merged by adding their counts,
+ * which is how worker and console statistics are aggregated.
+ * </p>
+ *
+ * <p>
+ * Not thread safe. Instances are guarded by the owning
+ * {@link StatisticsSetImplementation}.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+
+  /** Number of buckets per power of two range. */
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** Values less than this are counted exactly. */
+  static final int EXACT_VALUES = SUB_BUCKETS * 2;
+
+  /** The number of buckets needed to count {@link Long#MAX_VALUE}. */
+  static final int MAXIMUM_BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+  private static final long[] EMPTY = new long[0];
+
+  private long[] m_counts = EMPTY;
+  private long m_totalCount;
+
+  /**
+   * Constructor.
+   */
+  Histogram() {
+  }
+
+  /**
+   * Copy constructor.
+   *
+   * @param other Histogram to copy.
+   */
+  Histogram(Histogram other) {
+    m_counts = other.m_counts.clone();
+    m_totalCount = other.m_totalCount;
+  }
+
+  /**
+   * Calculate the bucket for a value.
+   *
+   * @param value The value. Negative values are treated as zero.
+   * @return The bucket index.
+   */
+  static int bucketIndex(long value) {
+    if (value < EXACT_VALUES) {
+      return value < 0 ? 0 : (int)value;
+    }
+
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+    return (shift << SUB_BUCKET_BITS) + (int)(value >>> shift);
+  }
+
+  /**
+   * Calculate the highest value that is counted by a bucket.
+   *
+   * @param bucketIndex The bucket index.
+   * @return The highest value.
+   */
+  static long highestValue(int bucketIndex) {
+    if (bucketIndex < EXACT_VALUES) {
+      return bucketIndex;
+    }
+
+    final int shift = (bucketIndex >>> SUB_BUCKET_BITS) - 1;
+    final long subBucket = bucketIndex - (shift << SUB_BUCKET_BITS);
+
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * Add a sample value.
+   *
+   * @param value The value.
+   */
+  void record(long value) {
+    final int i = bucketIndex(value);
+
+    if (i >= m_counts.length) {
+      m_counts = Arrays.copyOf(m_counts,
+        Math.min(Math.max(i + 1, m_counts.length * 2), MAXIMUM_BUCKETS));
+    }
+
+    ++m_counts[i];
+    ++m_totalCount;
+  }
+
+  /**
+   * Add the counts from another histogram to ours.
+   *
+   * @param other The other histogram.
+   */
+  void add(Histogram other) {
+    final long[] otherCounts = other.m_counts;
+
+    if (otherCounts.length > m_counts.length) {
+      m_counts = Arrays.copyOf(m_counts, otherCounts.length);
+    }
+
+    for (int i = 0; i < otherCounts.length; ++i) {
+      m_counts[i] += otherCounts[i];
+    }
+
+    m_totalCount += other.m_totalCount;
+  }
+
+  /**
+   * Reset all counts to zero. The bucket array is retained.
+   */
+  void reset() {
+    if (m_totalCount != 0) {
+      Arrays.fill(m_counts, 0);
+      m_totalCount = 0;
+    }
+  }
+
+  /**
+   * The number of sample values.
+   *
+   * @return The count.
+   */
+  long getTotalCount() {
+    return m_totalCount;
+  }
+
+  /**
+   * Estimate a percentile.
+   *
+   * <p>
+   * The result is the highest value of the bucket which contains the sample
+   * at the given rank, so is never lower than the true percentile.
+   * </p>
+   *
+   * @param percentile
+   *          The percentile, between 0 and 100.
+   * @return The estimated value, or 0 if there are no samples.
+   */
+  long getValueAtPercentile(double percentile) {
+    if (m_totalCount == 0) {
+      return 0;
+    }
+
+    final long rank =
+      Math.max(1, (long)Math.ceil(percentile / 100 * m_totalCount));
+
+    long seen = 0;
+
+    for (int i = 0; i < m_counts.length; ++i) {
+      seen += m_counts[i];
+
+      if (seen >= rank) {
+        return highestValue(i);
+      }
+    }
+
+    // Rounding error for percentile 100.
+    for (int i = m_counts.length - 1; i >= 0; --i) {
+      if (m_counts[i] != 0) {
+        return highestValue(i);
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Count the sample values that fall into a series of ranges. The values in
+   * each bucket are counted in the first range with an upper bound no less
+   * than the highest value of the bucket.
+   *
+   * @param upperBounds
+   *          The inclusive upper bounds of the ranges, in ascending order.
+   * @return The counts. The final element counts the values that are
+   *         greater than the last bound.
+   */
+  long[] getCounts(long[] upperBounds) {
+    final long[] result = new long[upperBounds.length + 1];
+
+    int range = 0;
+
+    for (int i = 0; i < m_counts.length; ++i) {
+      if (m_counts[i] != 0) {
+        final long value = highestValue(i);
+
+        while (range < upperBounds.length && upperBounds[range] < value) {
+          ++range;
+        }
+
+        result[range] += m_counts[i];
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Implement value based equality.
+   *
+   * @param o <code>Object</code> to compare to.
+   * @return <code>true</code> if and only if the two objects are equal.
+   */
+  @Override public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+
+    if (o == null || o.getClass() != Histogram.class) {
+      return false;
+    }
+
+    final Histogram other = (Histogram)o;
+
+    if (m_totalCount != other.m_totalCount) {
+      return false;
+    }
+
+    final int n = Math.max(m_counts.length, other.m_counts.length);
+
+    for (int i = 0; i < n; ++i) {
+      if (count(i) != other.count(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private long count(int i) {
+    return i < m_counts.length ? m_counts[i] : 0;
+  }
+
+  /**
+   * Consistent with {@link #equals}.
+   *
+   * @return The hash code.
+   */
+  @Override public int hashCode() {
+    long result = m_totalCount;
+
+    for (int i = 0; i < m_counts.length; ++i) {
+      if (m_counts[i] != 0) {
+        result = (result * 31 + i) * 31 + m_counts[i];
+      }
+    }
+
+    return (int)(result ^ (result >> 32));
+  }
+
+  /**
+   * Return a <code>String</code> representation of this histogram, listing
+   * the non-empty buckets.
+   *
+   * @return The <code>String</code>.
+   */
+  @Override public String toString() {
+    final StringBuilder result = new StringBuilder("[");
+
+    for (int i = 0; i < m_counts.length; ++i) {
+      if (m_counts[i] != 0) {
+        if (result.length() > 1) {
+          result.append(", ");
+        }
+
+        result.append(highestValue(i)).append('=').append(m_counts[i]);
+      }
+    }
+
+    return result.append(']').toString();
+  }
+
+  /**
+   * Efficient externalisation. Only the non-empty buckets are written, as
+   * pairs of (gap from previous bucket, count).
+   *
+   * @param out Handle to the output stream.
+   * @param serialiser <code>Serialiser</code> helper object.
+   * @exception IOException If an error occurs.
+   */
+  void writeExternal(DataOutput out, Serialiser serialiser)
+    throws IOException {
+
+    int buckets = 0;
+
+    if (m_totalCount != 0) {
+      for (int i = 0; i < m_counts.length; ++i) {
+        if (m_counts[i] != 0) {
+          ++buckets;
+        }
+      }
+    }
+
+    serialiser.writeLong(out, buckets);
+
+    int last = -1;
+
+    for (int i = 0; buckets > 0; ++i) {
+      if (m_counts[i] != 0) {
+        serialiser.writeLong(out, i - last - 1);
+        serialiser.writeLong(out, m_counts[i]);
+        last = i;
+        --buckets;
+      }
+    }
+  }
+
+  /**
+   * Efficient externalisation.
+   *
+   * @param in Handle to the input stream.
+   * @param serialiser <code>Serialiser</code> helper object.
+   * @exception IOException If an error occurs.
+   */
+  void readExternal(DataInput in, Serialiser serialiser) throws IOException {
+    reset();
+
+    final long buckets = serialiser.readLong(in);
+
+    int last = -1;
+
+    for (long b = 0; b < buckets; ++b) {
+      final long i = last + 1 + serialiser.readLong(in);
+
+      if (i >= MAXIMUM_BUCKETS) {
+        throw new IOException("Invalid histogram bucket " + i);
+      }
+
+      last = (int)i;
+
+      final long count = serialiser.readLong(in);
+
+      if (last >= m_counts.length) {
+        m_counts = Arrays.copyOf(m_counts, last + 1);
+      }
+
+      m_counts[last] = count;
+      m_totalCount += count;
+    }
+  }
+}
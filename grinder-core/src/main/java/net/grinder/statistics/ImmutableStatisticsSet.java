@@ -88,6 +88,41 @@ public interface ImmutableStatisticsSet {
    */
   double getVariance(StatisticsIndexMap.SampleIndex index);
 
+  /**
+   * Estimate a percentile of the sample values for the sample statistic
+   * specified by <code>index</code>. Only sample statistics that keep a
+   * histogram support percentiles.
+   *
+   * @param index The index.
+   * @param percentile The percentile, between 0 and 100.
+   * @return The estimated value, or 0 if there are no samples or the
+   * statistic does not keep a histogram.
+   */
+  long getPercentile(StatisticsIndexMap.LongSampleIndex index,
+                     double percentile);
+
+  /**
+   * Count the sample values for the sample statistic specified by
+   * <code>index</code> that fall into each of a series of ranges. This
+   * provides a compact form of the distribution, for example to draw a
+   * heat map.
+   *
+   * <p>
+   * Values are counted with the precision of the underlying histogram, so
+   * a value may be counted in the range above the one it belongs to.
+   * </p>
+   *
+   * @param index The index.
+   * @param upperBounds The inclusive upper bounds of the ranges, in
+   * ascending order.
+   * @return The counts. There is one more count than there are bounds; the
+   * last counts the values that are greater than the last bound. The counts
+   * are zero if there are no samples or the statistic does not keep a
+   * histogram.
+   */
+  long[] getHistogram(StatisticsIndexMap.LongSampleIndex index,
+                      long[] upperBounds);
+
   /**
    * Return whether all the statistics are zero. This allows us to optimise
    * cases where there's no information to be processed.
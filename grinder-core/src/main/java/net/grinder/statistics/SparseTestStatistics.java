@@ -0,0 +1,204 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import net.grinder.common.Test;
+import net.grinder.statistics.TestStatisticsMap.LightweightTest;
+import net.grinder.util.Serialiser;
+
+
+/**
+ * An encoded {@link TestStatisticsMap}, as written by
+ * {@link TestStatisticsMap#writeSparse}.
+ *
+ * <p>The console receives a report from every worker process each sample
+ * interval, and only needs to add each report to its accumulated statistics.
+ * Rather than building a {@code TestStatisticsMap} and a
+ * {@link StatisticsSet} for every test in every report, this class keeps the
+ * encoded form and decodes it into a single reused {@code StatisticsSet} as
+ * it is visited.</p>
+ *
+ * @author Philip Aston
+ */
+public final class SparseTestStatistics implements TestStatisticsReport {
+
+  private static final int READ_CHUNK_SIZE = 8192;
+
+  private final StatisticsSetFactory m_statisticsSetFactory;
+  private final byte[] m_bytes;
+
+  /**
+   * Constructor that encodes a {@link TestStatisticsMap}.
+   *
+   * @param statistics The statistics to encode.
+   */
+  public SparseTestStatistics(TestStatisticsMap statistics) {
+    m_statisticsSetFactory = statistics.getStatisticsSetFactory();
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try {
+      statistics.writeSparse(new DataOutputStream(bytes));
+    }
+    catch (IOException e) {
+      // ByteArrayOutputStreams don't throw IOExceptions.
+      throw new AssertionError(e);
+    }
+
+    m_bytes = bytes.toByteArray();
+  }
+
+  /**
+   * Constructor that reads the encoded form written by
+   * {@link #write(DataOutput)}. The statistics are not decoded until
+   * the report is visited.
+   *
+   * @param statisticsSetFactory Used to decode the statistics.
+   * @param in The stream.
+   * @throws IOException If an I/O error occurs.
+   */
+  public SparseTestStatistics(StatisticsSetFactory statisticsSetFactory,
+                              DataInput in) throws IOException {
+    m_statisticsSetFactory = statisticsSetFactory;
+
+    final int length = in.readInt();
+
+    if (length < 0) {
+      throw new IOException("Invalid length " + length);
+    }
+
+    // Don't trust the length until we've seen the data.
+    final ByteArrayOutputStream bytes =
+      new ByteArrayOutputStream(Math.min(length, READ_CHUNK_SIZE));
+    final byte[] buffer = new byte[Math.min(length, READ_CHUNK_SIZE)];
+
+    for (int remaining = length; remaining > 0;) {
+      final int n = Math.min(remaining, buffer.length);
+      in.readFully(buffer, 0, n);
+      bytes.write(buffer, 0, n);
+      remaining -= n;
+    }
+
+    m_bytes = bytes.toByteArray();
+
+    readSize(new DataInputStream(new ByteArrayInputStream(m_bytes)));
+  }
+
+  /**
+   * Read the number of entries, and check it against the number that could
+   * possibly fit in the encoded form.
+   */
+  private long readSize(DataInput in) throws IOException {
+    final long size = m_statisticsSetFactory.getSerialiser().readVarLong(in);
+
+    final int maximumSize =
+      m_bytes.length / m_statisticsSetFactory.getMinimumSparseEntryLength();
+
+    if (size < 0 || size > maximumSize) {
+      throw new IOException("Invalid size " + size);
+    }
+
+    return size;
+  }
+
+  /**
+   * Write the encoded form to a stream.
+   *
+   * @param out The stream.
+   * @throws IOException If an I/O error occurs.
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(m_bytes.length);
+    out.write(m_bytes);
+  }
+
+  /**
+   * The size of the encoded form.
+   *
+   * @return The number of bytes.
+   */
+  public int getEncodedSize() {
+    return m_bytes.length;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The same {@link StatisticsSet} instance is passed for every test.</p>
+   */
+  public void visit(Visitor visitor) throws IOException {
+    final Serialiser serialiser = m_statisticsSetFactory.getSerialiser();
+
+    final DataInputStream in =
+      new DataInputStream(new ByteArrayInputStream(m_bytes));
+
+    final long size = readSize(in);
+
+    final StatisticsSetImplementation statistics =
+      (StatisticsSetImplementation)m_statisticsSetFactory.create();
+
+    long testNumber = 0;
+
+    for (long i = 0; i < size; ++i) {
+      testNumber += serialiser.readVarLong(in);
+
+      if (testNumber < Integer.MIN_VALUE || testNumber > Integer.MAX_VALUE) {
+        throw new IOException("Invalid test number " + testNumber);
+      }
+
+      m_statisticsSetFactory.readStatisticsSparse(in, statistics);
+
+      visitor.next(new LightweightTest((int)testNumber), statistics);
+    }
+
+    if (in.available() != 0) {
+      throw new IOException("Unexpected data at end of report");
+    }
+  }
+
+  /**
+   * Decode the report into a new {@link TestStatisticsMap}.
+   *
+   * @return The statistics.
+   * @throws IOException If the report could not be decoded.
+   */
+  public TestStatisticsMap toTestStatisticsMap() throws IOException {
+    final TestStatisticsMap result =
+      new TestStatisticsMap(m_statisticsSetFactory);
+
+    visit(new Visitor() {
+        public void next(Test test, StatisticsSet statistics) {
+          result.put(test, statistics.snapshot());
+        }
+      });
+
+    return result;
+  }
+}
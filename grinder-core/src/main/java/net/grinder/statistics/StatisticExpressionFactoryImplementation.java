@@ -147,6 +147,9 @@ final class StatisticExpressionFactoryImplementation
       else if ("variance".equals(operation)) {
         result = createSampleVariance(parseContext);
       }
+      else if ("percentile".equals(operation)) {
+        result = createSamplePercentile(parseContext);
+      }
       else if ("sqrt".equals(operation)) {
         result = createSquareRoot(readExpression(parseContext));
       }
@@ -478,6 +481,50 @@ final class StatisticExpressionFactoryImplementation
     return result;
   }
 
+  /**
+   * Create an estimate of a percentile of a sample's values. Only long sample
+   * statistics that keep a histogram support percentiles.
+   *
+   * @param parseContext The parse context.
+   * @return The resulting expression.
+   * @throws ParseException If the parse failed.
+   */
+  private StatisticExpression createSamplePercentile(ParseContext parseContext)
+    throws ParseContext.ParseException {
+
+    final String token = parseContext.readToken();
+
+    final LongSampleIndex longSampleIndex =
+      m_indexMap.getLongSampleIndex(token);
+
+    if (longSampleIndex == null || longSampleIndex.getHistogramIndex() < 0) {
+      throw parseContext.createParseException(
+        "Can't apply percentile to '" + token + "', which has no histogram");
+    }
+
+    final String percentileToken = parseContext.readToken();
+    final double percentile;
+
+    try {
+      percentile = Double.parseDouble(percentileToken);
+    }
+    catch (NumberFormatException e) {
+      throw parseContext.createParseException(
+        "Percentile '" + percentileToken + "' is not a number");
+    }
+
+    if (!(percentile > 0 && percentile <= 100)) {
+      throw parseContext.createParseException(
+        "Percentile '" + percentileToken + "' is not in the range (0, 100]");
+    }
+
+    return new LongStatistic() {
+      public long getValue(StatisticsSet statisticsSet) {
+        return statisticsSet.getPercentile(longSampleIndex, percentile);
+      }
+    };
+  }
+
   /**
    * Create a square root.
    *
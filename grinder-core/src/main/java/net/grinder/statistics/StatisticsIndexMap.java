@@ -27,6 +27,7 @@ import static java.util.Arrays.asList;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -58,11 +59,22 @@ import java.util.Map;
  * (e.g. <em>count()</em>), see {@link ExpressionView}.
  * </p>
  *
+ * <p>
+ * Some <em>long</em> sample statistics, such as <em>timedTests</em>, also
+ * keep a histogram of the sample values. Percentiles of these statistics can
+ * be queried with the <em>percentile()</em> expression function.
+ * </p>
+ *
+ * <p>
+ * <em>timedTests</em>, <em>correctedTimedTests</em>, and the HTTP plugin
+ * timing statistics are recorded in microseconds.
+ * </p>
+ *
  * @author Philip Aston
  */
 public final class StatisticsIndexMap implements Serializable {
 
-  private static final long serialVersionUID = 1;
+  private static final long serialVersionUID = 2;
 
   private final Map<String, DoubleIndex> m_doubleMap =
     new HashMap<String, DoubleIndex>();
@@ -79,6 +91,10 @@ public final class StatisticsIndexMap implements Serializable {
   // as the sample indicies also use slots.
   private final int m_numberOfDoubles;
   private final int m_numberOfLongs;
+  private final int m_numberOfHistograms;
+
+  // Lazily calculated from the sample indicies, see isVarianceIndex().
+  private transient volatile boolean[] m_varianceIndexFlags;
 
   /**
    * Special slot for the HTTP plugin so it doesn't steal "user"
@@ -129,6 +145,34 @@ public final class StatisticsIndexMap implements Serializable {
   public static final String HTTP_PLUGIN_CONNECTIONS_ESTABLISHED =
     "httpplugin.connectionsEstablished";
 
+  /**
+   * Special slot for the HTTP plugin so it doesn't steal "user"
+   * indices. Use with {@link #getLongIndex(String)}.
+   */
+  public static final String HTTP_PLUGIN_POOL_WAIT_TIME_KEY =
+    "httpplugin.poolWaitTime";
+
+  /**
+   * Special slot for the HTTP plugin so it doesn't steal "user"
+   * indices. Use with {@link #getLongIndex(String)}.
+   */
+  public static final String HTTP_PLUGIN_POOL_HITS =
+    "httpplugin.poolHits";
+
+  /**
+   * Special slot for the HTTP plugin so it doesn't steal "user"
+   * indices. Use with {@link #getLongIndex(String)}.
+   */
+  public static final String HTTP_PLUGIN_POOL_CONNECTIONS_CREATED =
+    "httpplugin.poolConnectionsCreated";
+
+  /**
+   * Special slot for the HTTP plugin so it doesn't steal "user"
+   * indices. Use with {@link #getLongIndex(String)}.
+   */
+  public static final String HTTP_PLUGIN_HANDSHAKE_TIME_KEY =
+    "httpplugin.handshakeTime";
+
   /**
    * Constructor.
    */
@@ -145,6 +189,14 @@ public final class StatisticsIndexMap implements Serializable {
                 HTTP_PLUGIN_CONNECT_TIME_KEY,
                 HTTP_PLUGIN_FIRST_BYTE_TIME_KEY,
                 HTTP_PLUGIN_CONNECTIONS_ESTABLISHED,
+                HTTP_PLUGIN_POOL_WAIT_TIME_KEY,
+                HTTP_PLUGIN_POOL_HITS,
+                HTTP_PLUGIN_POOL_CONNECTIONS_CREATED,
+                HTTP_PLUGIN_HANDSHAKE_TIME_KEY,
+                "lateStarts",
+                "droppedStarts",
+                "droppedDataLogRecords",
+                "nestedTime",
                 "userLong0",
                 "userLong1",
                 "userLong2",
@@ -157,7 +209,8 @@ public final class StatisticsIndexMap implements Serializable {
                 "userDouble3",
                 "userDouble4"),
          asList("period"),
-         asList("timedTests"));
+         asList("timedTests", "correctedTimedTests"),
+         asList("timedTests", "correctedTimedTests"));
   }
 
   /**
@@ -176,6 +229,32 @@ public final class StatisticsIndexMap implements Serializable {
                      List<String> doubleNames,
                      List<String> transientLongNames,
                      List<String> longSampleNames) {
+    this(longNames,
+         doubleNames,
+         transientLongNames,
+         longSampleNames,
+         Collections.<String>emptyList());
+  }
+
+  /**
+   * Open constructor for use by unit tests.
+   *
+   * @param longNames
+   *          Names of long statistics.
+   * @param doubleNames
+   *          Names of double statistics.
+   * @param transientLongNames
+   *          Names of transient long statistics.
+   * @param longSampleNames
+   *          Names of long sample statistics.
+   * @param histogramNames
+   *          Names of the long sample statistics that also keep a histogram.
+   */
+  StatisticsIndexMap(List<String> longNames,
+                     List<String> doubleNames,
+                     List<String> transientLongNames,
+                     List<String> longSampleNames,
+                     List<String> histogramNames) {
     int nextLongIndex = 0;
     int nextTransientLongIndex = 0;
 
@@ -189,11 +268,15 @@ public final class StatisticsIndexMap implements Serializable {
       m_doubleMap.put(doubleName, new DoubleIndex(nextDoubleIndex++));
     }
 
+    int nextHistogramIndex = 0;
+
     for (String longSampleName : longSampleNames) {
       createLongSampleIndex(longSampleName,
                             new LongIndex(nextLongIndex++),
                             new LongIndex(nextLongIndex++),
-                            new DoubleIndex(nextDoubleIndex++));
+                            new DoubleIndex(nextDoubleIndex++),
+                            histogramNames.contains(longSampleName) ?
+                              nextHistogramIndex++ : -1);
     }
 
     for (String transientLongName : transientLongNames) {
@@ -203,6 +286,7 @@ public final class StatisticsIndexMap implements Serializable {
 
     m_numberOfDoubles = nextDoubleIndex;
     m_numberOfLongs = nextLongIndex;
+    m_numberOfHistograms = nextHistogramIndex;
   }
 
   int getNumberOfDoubles() {
@@ -217,6 +301,10 @@ public final class StatisticsIndexMap implements Serializable {
     return m_transientLongMap.size();
   }
 
+  int getNumberOfHistograms() {
+    return m_numberOfHistograms;
+  }
+
   Collection<DoubleSampleIndex> getDoubleSampleIndicies() {
     return m_doubleSampleMap.values();
   }
@@ -225,6 +313,36 @@ public final class StatisticsIndexMap implements Serializable {
     return m_longSampleMap.values();
   }
 
+  /**
+   * Identify the double slots that hold the variance of a sample
+   * statistic. Calculated once so that
+   * {@link StatisticsSetImplementation#add} need not allocate.
+   *
+   * @return Array, indexed by double slot, of flags that are {@code true}
+   *         for variance slots. Callers must not modify the array.
+   */
+  boolean[] getVarianceIndexFlags() {
+    final boolean[] existing = m_varianceIndexFlags;
+
+    if (existing != null) {
+      return existing;
+    }
+
+    final boolean[] result = new boolean[m_numberOfDoubles];
+
+    for (LongSampleIndex index : m_longSampleMap.values()) {
+      result[index.getVarianceIndex().getValue()] = true;
+    }
+
+    for (DoubleSampleIndex index : m_doubleSampleMap.values()) {
+      result[index.getVarianceIndex().getValue()] = true;
+    }
+
+    m_varianceIndexFlags = result;
+
+    return result;
+  }
+
   /**
    * Obtain the index object for the named double statistic.
    *
@@ -286,14 +404,16 @@ public final class StatisticsIndexMap implements Serializable {
    * @param sumIndex Index to hold sum.
    * @param countIndex Index to hold count.
    * @param varianceIndex Index to hold variance.
+   * @param histogramIndex Index of histogram, or -1 if there is none.
    * @return The new index.
    */
   private LongSampleIndex createLongSampleIndex(String statisticName,
                                                 LongIndex sumIndex,
                                                 LongIndex countIndex,
-                                                DoubleIndex varianceIndex) {
+                                                DoubleIndex varianceIndex,
+                                                int histogramIndex) {
     final LongSampleIndex result =
-      new LongSampleIndex(sumIndex, countIndex, varianceIndex);
+      new LongSampleIndex(sumIndex, countIndex, varianceIndex, histogramIndex);
 
     m_longSampleMap.put(statisticName, result);
 
@@ -322,6 +442,7 @@ public final class StatisticsIndexMap implements Serializable {
       new DoubleSampleIndex(sumIndex, countIndex, varianceIndex);
 
     m_doubleSampleMap.put(statisticName, result);
+    m_varianceIndexFlags = null;
 
     return result;
   }
@@ -333,6 +454,7 @@ public final class StatisticsIndexMap implements Serializable {
    */
   void removeDoubleSampleIndex(String statisticName) {
     m_doubleSampleMap.remove(statisticName);
+    m_varianceIndexFlags = null;
   }
 
   /**
@@ -458,12 +580,29 @@ public final class StatisticsIndexMap implements Serializable {
    */
   public static final class LongSampleIndex extends SampleIndex {
     private final LongIndex m_sumIndex;
+    private final int m_histogramIndex;
 
     private LongSampleIndex(LongIndex sumIndex,
                             LongIndex countIndex,
-                            DoubleIndex varianceIndex) {
+                            DoubleIndex varianceIndex,
+                            int histogramIndex) {
       super(countIndex, varianceIndex);
       m_sumIndex = sumIndex;
+      m_histogramIndex = histogramIndex;
+    }
+
+    /**
+     * Get the slot of our histogram.
+     *
+     * <p>Package scope to prevent direct write access. External clients should
+     * use the {@link StatisticsSet} or {@link StatisticExpression} interfaces.
+     * </p>
+     *
+     * @return The slot, or <code>-1</code> if this statistic does not keep a
+     * histogram.
+     */
+    int getHistogramIndex() {
+      return m_histogramIndex;
     }
 
     /**
@@ -21,9 +21,9 @@
 
 package net.grinder.statistics;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 import net.grinder.util.Serialiser;
 
@@ -51,15 +51,143 @@ public final class StatisticsSetFactory {
     return new StatisticsSetImplementation(m_statisticsIndexMap);
   }
 
-  void writeStatisticsExternal(ObjectOutput out,
+  /**
+   * Factory method for a <code>StatisticsSet</code> that will be added to
+   * concurrently by many threads, and read infrequently. The values are
+   * spread over a number of independently locked stripes which are merged
+   * when the set is read.
+   *
+   * @param stripes
+   *          The number of stripes. Rounded up to a power of two. If less than
+   *          two, this method is equivalent to {@link #create()}.
+   * @return A new <code>StatisticsSet</code>.
+   */
+  public StatisticsSet create(int stripes) {
+    if (stripes < 2) {
+      return create();
+    }
+
+    return new StripedStatisticsSet(m_statisticsIndexMap, stripes);
+  }
+
+  /**
+   * The number of <code>long</code> values in the fixed width form of a
+   * statistics set.
+   *
+   * @return The number of values.
+   * @see #getFixedWidthValues
+   */
+  public int getNumberOfFixedWidthLongs() {
+    return m_statisticsIndexMap.getNumberOfLongs();
+  }
+
+  /**
+   * The number of <code>double</code> values in the fixed width form of a
+   * statistics set.
+   *
+   * @return The number of values.
+   * @see #getFixedWidthValues
+   */
+  public int getNumberOfFixedWidthDoubles() {
+    return m_statisticsIndexMap.getNumberOfDoubles();
+  }
+
+  /**
+   * Copy the values of a statistics set into fixed width arrays, suitable
+   * for storage in fixed width records.
+   *
+   * <p>
+   * Transient values and histograms are not copied, so percentiles can't be
+   * calculated for a set recreated with
+   * {@link #createFromFixedWidthValues}.
+   * </p>
+   *
+   * @param statistics
+   *          The statistics set.
+   * @param longValues
+   *          Array to receive the <code>long</code> values. Must have at least
+   *          {@link #getNumberOfFixedWidthLongs()} elements.
+   * @param doubleValues
+   *          Array to receive the <code>double</code> values. Must have at
+   *          least {@link #getNumberOfFixedWidthDoubles()} elements.
+   */
+  public void getFixedWidthValues(ImmutableStatisticsSet statistics,
+                                  long[] longValues,
+                                  double[] doubleValues) {
+
+    final StatisticsSetImplementation statisticsImplementation;
+
+    if (statistics instanceof StatisticsSetImplementation) {
+      statisticsImplementation = (StatisticsSetImplementation)statistics;
+    }
+    else {
+      statisticsImplementation =
+        (StatisticsSetImplementation)statistics.snapshot();
+    }
+
+    statisticsImplementation.getValues(longValues, doubleValues);
+  }
+
+  /**
+   * Factory method that recreates a <code>StatisticsSet</code> from its fixed
+   * width form.
+   *
+   * @param longValues
+   *          The <code>long</code> values.
+   * @param doubleValues
+   *          The <code>double</code> values.
+   * @return A new <code>StatisticsSet</code>.
+   * @see #getFixedWidthValues
+   */
+  public StatisticsSet createFromFixedWidthValues(long[] longValues,
+                                                  double[] doubleValues) {
+    final StatisticsSetImplementation result =
+      new StatisticsSetImplementation(m_statisticsIndexMap);
+
+    result.setValues(longValues, doubleValues);
+
+    return result;
+  }
+
+  void writeStatisticsExternal(DataOutput out,
                                StatisticsSetImplementation statistics)
     throws IOException {
     statistics.writeExternal(out, m_serialiser);
   }
 
-  StatisticsSet readStatisticsExternal(ObjectInput in) throws IOException {
+  StatisticsSet readStatisticsExternal(DataInput in) throws IOException {
     return new StatisticsSetImplementation(m_statisticsIndexMap,
                                            in,
                                            m_serialiser);
   }
+
+  void writeStatisticsSparse(DataOutput out,
+                             StatisticsSetImplementation statistics)
+    throws IOException {
+    statistics.writeSparse(out, m_serialiser);
+  }
+
+  void readStatisticsSparse(DataInput in,
+                            StatisticsSetImplementation statistics)
+    throws IOException {
+    statistics.readSparse(in, m_serialiser);
+  }
+
+  /**
+   * The smallest number of bytes a test entry can occupy in the sparse
+   * form: a one byte test number difference, the flags byte, and the bit
+   * mask.
+   *
+   * @return The number of bytes.
+   * @see StatisticsSetImplementation#writeSparse
+   */
+  int getMinimumSparseEntryLength() {
+    return 2 + (m_statisticsIndexMap.getNumberOfLongs() +
+                m_statisticsIndexMap.getNumberOfDoubles() +
+                m_statisticsIndexMap.getNumberOfHistograms() + 7) / 8;
+  }
+
+  Serialiser getSerialiser() {
+    return m_serialiser;
+  }
 }
@@ -21,9 +21,9 @@
 
 package net.grinder.statistics;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 import java.util.Arrays;
 
 import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
@@ -47,6 +47,9 @@ final class StatisticsSetImplementation implements StatisticsSet {
   private final long[] m_longData;
   private final double[] m_doubleData;
 
+  // Histograms are allocated when the first sample is added.
+  private final Histogram[] m_histograms;
+
   // Transient fields are context specific. They are not serialised, nor are
   // they added to other statistics sets. E.g. the "period" field.
   private transient long[] m_transientLongData;
@@ -67,6 +70,7 @@ final class StatisticsSetImplementation implements StatisticsSet {
     m_doubleData = new double[m_statisticsIndexMap.getNumberOfDoubles()];
     m_transientLongData =
       new long[m_statisticsIndexMap.getNumberOfTransientLongs()];
+    m_histograms = new Histogram[m_statisticsIndexMap.getNumberOfHistograms()];
   }
 
   /**
@@ -78,6 +82,13 @@ final class StatisticsSetImplementation implements StatisticsSet {
       Arrays.fill(m_longData, 0);
       Arrays.fill(m_doubleData, 0);
       Arrays.fill(m_transientLongData, 0);
+
+      for (Histogram histogram : m_histograms) {
+        if (histogram != null) {
+          histogram.reset();
+        }
+      }
+
       m_zero = true;
       m_composite = false;
     }
@@ -116,6 +127,12 @@ final class StatisticsSetImplementation implements StatisticsSet {
                          result.m_transientLongData,
                          0, result.m_transientLongData.length);
 
+        for (int i = 0; i < m_histograms.length; ++i) {
+          if (m_histograms[i] != null) {
+            result.m_histograms[i] = new Histogram(m_histograms[i]);
+          }
+        }
+
         result.m_zero = false;
         result.m_composite = m_composite;
       }
@@ -124,6 +141,29 @@ final class StatisticsSetImplementation implements StatisticsSet {
     return result;
   }
 
+  /**
+   * Copy the non-transient <code>long</code> and <code>double</code> values.
+   *
+   * @param longValues Array to receive the <code>long</code> values.
+   * @param doubleValues Array to receive the <code>double</code> values.
+   */
+  synchronized void getValues(long[] longValues, double[] doubleValues) {
+    System.arraycopy(m_longData, 0, longValues, 0, m_longData.length);
+    System.arraycopy(m_doubleData, 0, doubleValues, 0, m_doubleData.length);
+  }
+
+  /**
+   * Set the non-transient <code>long</code> and <code>double</code> values.
+   *
+   * @param longValues The <code>long</code> values.
+   * @param doubleValues The <code>double</code> values.
+   */
+  synchronized void setValues(long[] longValues, double[] doubleValues) {
+    System.arraycopy(longValues, 0, m_longData, 0, m_longData.length);
+    System.arraycopy(doubleValues, 0, m_doubleData, 0, m_doubleData.length);
+    m_zero = false;
+  }
+
   /**
    * Return the value specified by <code>index</code>.
    *
@@ -236,6 +276,17 @@ final class StatisticsSetImplementation implements StatisticsSet {
 
     m_longData[index.getSumIndex().getValue()] += value;
     ++m_longData[index.getCountIndex().getValue()];
+
+    final int histogramIndex = index.getHistogramIndex();
+
+    if (histogramIndex >= 0) {
+      if (m_histograms[histogramIndex] == null) {
+        m_histograms[histogramIndex] = new Histogram();
+      }
+
+      m_histograms[histogramIndex].record(value);
+    }
+
     m_zero = false;
   }
 
@@ -268,6 +319,12 @@ final class StatisticsSetImplementation implements StatisticsSet {
     setValue(index.getSumIndex(), 0);
     setValue(index.getCountIndex(), 0);
     setValue(index.getVarianceIndex(), 0);
+
+    final int histogramIndex = index.getHistogramIndex();
+
+    if (histogramIndex >= 0 && m_histograms[histogramIndex] != null) {
+      m_histograms[histogramIndex].reset();
+    }
   }
 
   /**
@@ -381,13 +438,52 @@ final class StatisticsSetImplementation implements StatisticsSet {
     return getValue(index.getVarianceIndex());
   }
 
+  /**
+   * Estimate a percentile of the sample values for the sample statistic
+   * specified by <code>index</code>.
+   *
+   * @param index The index.
+   * @param percentile The percentile, between 0 and 100.
+   * @return The estimated value.
+   */
+  public synchronized long getPercentile(LongSampleIndex index,
+                                         double percentile) {
+    final int histogramIndex = index.getHistogramIndex();
+
+    if (histogramIndex < 0 || m_histograms[histogramIndex] == null) {
+      return 0;
+    }
+
+    return m_histograms[histogramIndex].getValueAtPercentile(percentile);
+  }
+
+  /**
+   * Count the sample values for the sample statistic specified by
+   * <code>index</code> that fall into each of a series of ranges.
+   *
+   * @param index The index.
+   * @param upperBounds The inclusive upper bounds of the ranges.
+   * @return The counts.
+   */
+  public synchronized long[] getHistogram(LongSampleIndex index,
+                                          long[] upperBounds) {
+    final int histogramIndex = index.getHistogramIndex();
+
+    if (histogramIndex < 0 || m_histograms[histogramIndex] == null) {
+      return new long[upperBounds.length + 1];
+    }
+
+    return m_histograms[histogramIndex].getCounts(upperBounds);
+  }
+
   /**
    * Add the values of another <code>StatisticsSet</code> to ours. Assumes we
    * don't need to synchronise access to operand.
    *
    * <p>
-   * <strong>Currently the implementation assumes that the argument is actually
-   * a <code>StatisticsSetImplementation</code>.</strong>
+   * Other implementations are first converted to a
+   * <code>StatisticsSetImplementation</code> using
+   * {@link ImmutableStatisticsSet#snapshot()}.
    * </p>
    *
    * <p>
@@ -399,10 +495,14 @@ final class StatisticsSetImplementation implements StatisticsSet {
    */
   public synchronized void add(ImmutableStatisticsSet operand) {
 
-    final StatisticsSetImplementation operandImplementation =
-      (StatisticsSetImplementation)operand;
+    final StatisticsSetImplementation operandImplementation;
 
-    final boolean[] isVarianceIndex = new boolean[m_doubleData.length];
+    if (operand instanceof StatisticsSetImplementation) {
+      operandImplementation = (StatisticsSetImplementation)operand;
+    }
+    else {
+      operandImplementation = (StatisticsSetImplementation)operand.snapshot();
+    }
 
     for (LongSampleIndex index : m_statisticsIndexMap.getLongSampleIndicies()) {
       final LongIndex sumIndex = index.getSumIndex();
@@ -413,11 +513,9 @@ final class StatisticsSetImplementation implements StatisticsSet {
         calculateVariance(getValue(sumIndex),
                           getValue(countIndex),
                           getValue(varianceIndex),
-                          operand.getValue(sumIndex),
-                          operand.getValue(countIndex),
-                          operand.getValue(varianceIndex)));
-
-      isVarianceIndex[varianceIndex.getValue()] = true;
+                          operandImplementation.getValue(sumIndex),
+                          operandImplementation.getValue(countIndex),
+                          operandImplementation.getValue(varianceIndex)));
     }
 
     for (DoubleSampleIndex index :
@@ -428,14 +526,12 @@ final class StatisticsSetImplementation implements StatisticsSet {
       final DoubleIndex varianceIndex = index.getVarianceIndex();
 
       setValue(varianceIndex,
-               calculateVariance(getValue(sumIndex),
-                                 getValue(countIndex),
-                                 getValue(varianceIndex),
-                                 operand.getValue(sumIndex),
-                                 operand.getValue(countIndex),
-                                 operand.getValue(varianceIndex)));
-
-      isVarianceIndex[varianceIndex.getValue()] = true;
+        calculateVariance(getValue(sumIndex),
+                          getValue(countIndex),
+                          getValue(varianceIndex),
+                          operandImplementation.getValue(sumIndex),
+                          operandImplementation.getValue(countIndex),
+                          operandImplementation.getValue(varianceIndex)));
     }
 
     final long[] longData = operandImplementation.m_longData;
@@ -445,6 +541,8 @@ final class StatisticsSetImplementation implements StatisticsSet {
     }
 
     final double[] doubleData = operandImplementation.m_doubleData;
+    final boolean[] isVarianceIndex =
+      m_statisticsIndexMap.getVarianceIndexFlags();
 
     for (int i = 0; i < doubleData.length; i++) {
       if (!isVarianceIndex[i]) {
@@ -452,9 +550,22 @@ final class StatisticsSetImplementation implements StatisticsSet {
       }
     }
 
+    final Histogram[] histograms = operandImplementation.m_histograms;
+
+    for (int i = 0; i < histograms.length; i++) {
+      if (histograms[i] != null) {
+        if (m_histograms[i] == null) {
+          m_histograms[i] = new Histogram(histograms[i]);
+        }
+        else {
+          m_histograms[i].add(histograms[i]);
+        }
+      }
+    }
+
     m_zero = false;
 
-    if (operand.isComposite()) {
+    if (operandImplementation.isComposite()) {
       setIsComposite();
     }
   }
@@ -516,6 +627,19 @@ final class StatisticsSetImplementation implements StatisticsSet {
           return false;
         }
       }
+
+      for (int i = 0; i < m_histograms.length; i++) {
+        final long count =
+          m_histograms[i] != null ? m_histograms[i].getTotalCount() : 0;
+        final Histogram otherHistogram = otherStatistics.m_histograms[i];
+        final long otherCount =
+          otherHistogram != null ? otherHistogram.getTotalCount() : 0;
+
+        if (count != otherCount ||
+            count != 0 && !m_histograms[i].equals(otherHistogram)) {
+          return false;
+        }
+      }
     }
 
     return true;
@@ -586,6 +710,18 @@ final class StatisticsSetImplementation implements StatisticsSet {
       result.append(m_transientLongData[i]);
     }
 
+    if (m_histograms.length > 0) {
+      result.append("}, {");
+
+      for (int i = 0; i < m_histograms.length; i++) {
+        if (i != 0) {
+          result.append(", ");
+        }
+
+        result.append(m_histograms[i] != null ? m_histograms[i] : "[]");
+      }
+    }
+
     result.append("}, composite = ");
     result.append(m_composite ? "true" : "false");
     result.append("}");
@@ -615,10 +751,10 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @param out Handle to the output stream.
    * @param serialiser <code>Serialiser</code> helper object.
    * @exception IOException If an error occurs.
-   * @see #StatisticsSetImplementation(StatisticsIndexMap, ObjectInput,
+   * @see #StatisticsSetImplementation(StatisticsIndexMap, DataInput,
    * Serialiser)
    */
-  synchronized void writeExternal(ObjectOutput out, Serialiser serialiser)
+  synchronized void writeExternal(DataOutput out, Serialiser serialiser)
     throws IOException {
     for (int i = 0; i < m_longData.length; i++) {
       serialiser.writeLong(out, m_longData[i]);
@@ -629,6 +765,138 @@ final class StatisticsSetImplementation implements StatisticsSet {
     }
 
     out.writeBoolean(m_composite);
+
+    for (int i = 0; i < m_histograms.length; i++) {
+      if (m_histograms[i] != null) {
+        m_histograms[i].writeExternal(out, serialiser);
+      }
+      else {
+        serialiser.writeLong(out, 0);
+      }
+    }
+  }
+
+  /**
+   * Sparse externalisation method used by {@link
+   * StatisticsSetFactory#writeStatisticsSparse}.
+   *
+   * <p>Writes a flags byte, a bit mask with one bit for each long, double and
+   * histogram slot, and then only the non-zero values. Longs are written as
+   * variable length integers. A typical interval sample has most of its slots
+   * set to zero, so this is much smaller than
+   * {@link #writeExternal(DataOutput, Serialiser)}.</p>
+   *
+   * <p>Synchronised to ensure a consistent view.</p>
+   *
+   * @param out Handle to the output stream.
+   * @param serialiser <code>Serialiser</code> helper object.
+   * @exception IOException If an error occurs.
+   * @see #readSparse(DataInput, Serialiser)
+   */
+  synchronized void writeSparse(DataOutput out, Serialiser serialiser)
+    throws IOException {
+
+    out.writeByte(m_composite ? 1 : 0);
+
+    final int longs = m_longData.length;
+    final int doubles = m_doubleData.length;
+    final byte[] mask =
+      new byte[(longs + doubles + m_histograms.length + 7) / 8];
+
+    for (int i = 0; i < longs; i++) {
+      if (m_longData[i] != 0) {
+        mask[i >> 3] |= 1 << (i & 7);
+      }
+    }
+
+    for (int i = 0; i < doubles; i++) {
+      if (m_doubleData[i] != 0) {
+        final int bit = longs + i;
+        mask[bit >> 3] |= 1 << (bit & 7);
+      }
+    }
+
+    for (int i = 0; i < m_histograms.length; i++) {
+      if (m_histograms[i] != null && m_histograms[i].getTotalCount() != 0) {
+        final int bit = longs + doubles + i;
+        mask[bit >> 3] |= 1 << (bit & 7);
+      }
+    }
+
+    out.write(mask);
+
+    for (int i = 0; i < longs; i++) {
+      if (m_longData[i] != 0) {
+        serialiser.writeVarLong(out, m_longData[i]);
+      }
+    }
+
+    for (int i = 0; i < doubles; i++) {
+      if (m_doubleData[i] != 0) {
+        serialiser.writeDouble(out, m_doubleData[i]);
+      }
+    }
+
+    for (int i = 0; i < m_histograms.length; i++) {
+      if (m_histograms[i] != null && m_histograms[i].getTotalCount() != 0) {
+        m_histograms[i].writeExternal(out, serialiser);
+      }
+    }
+  }
+
+  /**
+   * Replace the values of this set with those read from a stream written by
+   * {@link #writeSparse(DataOutput, Serialiser)}. Existing histograms are
+   * reused, so a single instance can efficiently decode many sets in turn.
+   *
+   * @param in Handle to the input stream.
+   * @param serialiser <code>Serialiser</code> helper object.
+   * @exception IOException If an error occurs.
+   */
+  synchronized void readSparse(DataInput in, Serialiser serialiser)
+    throws IOException {
+
+    reset();
+
+    final boolean composite = (in.readByte() & 1) != 0;
+
+    final int longs = m_longData.length;
+    final int doubles = m_doubleData.length;
+    final byte[] mask =
+      new byte[(longs + doubles + m_histograms.length + 7) / 8];
+
+    in.readFully(mask);
+
+    for (int i = 0; i < longs; i++) {
+      if ((mask[i >> 3] & 1 << (i & 7)) != 0) {
+        m_longData[i] = serialiser.readVarLong(in);
+        m_zero = false;
+      }
+    }
+
+    for (int i = 0; i < doubles; i++) {
+      final int bit = longs + i;
+
+      if ((mask[bit >> 3] & 1 << (bit & 7)) != 0) {
+        m_doubleData[i] = serialiser.readDouble(in);
+        m_zero = false;
+      }
+    }
+
+    for (int i = 0; i < m_histograms.length; i++) {
+      final int bit = longs + doubles + i;
+
+      if ((mask[bit >> 3] & 1 << (bit & 7)) != 0) {
+        if (m_histograms[i] == null) {
+          m_histograms[i] = new Histogram();
+        }
+
+        m_histograms[i].readExternal(in, serialiser);
+        m_zero = false;
+      }
+    }
+
+    m_composite = composite;
   }
 
   /**
@@ -641,10 +909,10 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @param in Handle to the input stream.
    * @param serialiser <code>Serialiser</code> helper object.
    * @exception IOException If an error occurs.
-   * @see #writeExternal(ObjectOutput, Serialiser)
+   * @see #writeExternal(DataOutput, Serialiser)
    */
   StatisticsSetImplementation(StatisticsIndexMap statisticsIndexMap,
-                              ObjectInput in, Serialiser serialiser)
+                              DataInput in, Serialiser serialiser)
     throws IOException {
     this(statisticsIndexMap);
 
@@ -659,5 +927,15 @@ final class StatisticsSetImplementation implements StatisticsSet {
     }
 
     m_composite = in.readBoolean();
+
+    for (int i = 0; i < m_histograms.length; i++) {
+      final Histogram histogram = new Histogram();
+      histogram.readExternal(in, serialiser);
+
+      if (histogram.getTotalCount() != 0) {
+        m_histograms[i] = histogram;
+        m_zero = false;
+      }
+    }
   }
 }
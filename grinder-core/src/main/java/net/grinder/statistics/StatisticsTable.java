@@ -143,11 +143,16 @@ public class StatisticsTable {
 
     synchronized (m_testStatisticsMap) {
 
-      m_testStatisticsMap.new ForEach() {
+      m_testStatisticsMap.new TreeForEach() {
         @Override
-        public void next(final Test test, final StatisticsSet statistics) {
+        public void next(final Test test,
+                         final StatisticsSet statistics,
+                         final int depth) {
           statistics.setValue(m_periodIndex, elapsedTime);
-          out.print(formatter.format("Test " + test.getNumber(), statistics));
+
+          out.print(formatter.format("Test " + test.getNumber(),
+                                     statistics,
+                                     depth));
 
           final String testDescription = test.getDescription();
 
@@ -217,11 +222,22 @@ public class StatisticsTable {
 
     public String format(final String rowLabel,
                          final StatisticsSet statistics) {
+      return format(rowLabel, statistics, 0);
+    }
+
+    public String format(final String rowLabel,
+                         final StatisticsSet statistics,
+                         final int depth) {
 
       final StringBuilder result = new StringBuilder();
 
       final StringBuilder cell = new StringBuilder();
 
+      // Nested tests are indented beneath their enclosing test.
+      for (int i = 0; i < depth; ++i) {
+        cell.append("  ");
+      }
+
       cell.append(startOfLine(statistics));
 
       cell.append(rowLabel);
@@ -0,0 +1,377 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
+import net.grinder.statistics.StatisticsIndexMap.DoubleSampleIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
+import net.grinder.statistics.StatisticsIndexMap.SampleIndex;
+
+
+/**
+ * {@link StatisticsSet} implementation for statistics that are written to by
+ * many threads, but read infrequently.
+ *
+ * <p>
+ * The values are spread over a number of stripes, each of which is a
+ * {@link StatisticsSetImplementation} with its own monitor. A writing thread
+ * only locks the stripe selected by its thread ID, so threads that update the
+ * same statistics rarely contend. Reads merge the stripes, and so are more
+ * expensive than those of a {@code StatisticsSetImplementation}. All reads
+ * other than {@link #isZero} and {@link #isComposite} go through
+ * {@link #snapshot}.
+ * </p>
+ *
+ * <p>
+ * Transient values, such as "period", are not additive and are held in the
+ * first stripe.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class StripedStatisticsSet implements StatisticsSet {
+
+  private final StatisticsSetImplementation[] m_stripes;
+  private final int m_mask;
+
+  /**
+   * Constructor.
+   *
+   * @param statisticsIndexMap
+   *          The {@link StatisticsIndexMap} to use.
+   * @param stripes
+   *          The minimum number of stripes. Rounded up to a power of two.
+   */
+  StripedStatisticsSet(StatisticsIndexMap statisticsIndexMap, int stripes) {
+    int n = 1;
+
+    while (n < stripes) {
+      n <<= 1;
+    }
+
+    m_stripes = new StatisticsSetImplementation[n];
+
+    for (int i = 0; i < n; ++i) {
+      m_stripes[i] = new StatisticsSetImplementation(statisticsIndexMap);
+    }
+
+    m_mask = n - 1;
+  }
+
+  int getNumberOfStripes() {
+    return m_stripes.length;
+  }
+
+  private StatisticsSetImplementation stripe() {
+    final long id = Thread.currentThread().getId();
+
+    // Thread IDs are usually allocated sequentially, so the low bits are
+    // good enough. Fold in the high bits in case they are not.
+    return m_stripes[(int)(id ^ (id >>> 32)) & m_mask];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void reset() {
+    for (StatisticsSetImplementation stripe : m_stripes) {
+      stripe.reset();
+    }
+  }
+
+  /**
+   * Merge the stripes into a new {@link StatisticsSetImplementation}.
+   *
+   * <p>
+   * Each stripe is read atomically, but the stripes are not read at the same
+   * instant. Values added by other threads during the merge will be included
+   * if their stripe has not yet been read.
+   * </p>
+   *
+   * @return The merged statistics.
+   */
+  @Override public StatisticsSet snapshot() {
+    final StatisticsSet result = m_stripes[0].snapshot();
+
+    for (int i = 1; i < m_stripes.length; ++i) {
+      final StatisticsSetImplementation stripe = m_stripes[i];
+
+      synchronized (stripe) {
+        result.add(stripe);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Merge the stripes into a new {@link StatisticsSetImplementation}, and
+   * reset each stripe while it is locked. Unlike a separate call to
+   * {@link #snapshot} followed by {@link #reset}, no concurrently added values
+   * are lost.
+   *
+   * @return The merged statistics.
+   */
+  StatisticsSet snapshotAndReset() {
+    final StatisticsSet result;
+
+    synchronized (m_stripes[0]) {
+      result = m_stripes[0].snapshot();
+      m_stripes[0].reset();
+    }
+
+    for (int i = 1; i < m_stripes.length; ++i) {
+      final StatisticsSetImplementation stripe = m_stripes[i];
+
+      synchronized (stripe) {
+        result.add(stripe);
+        stripe.reset();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public long getValue(LongIndex index) {
+    return snapshot().getValue(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public double getValue(DoubleIndex index) {
+    return snapshot().getValue(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public long getSum(LongSampleIndex index) {
+    return snapshot().getSum(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public double getSum(DoubleSampleIndex index) {
+    return snapshot().getSum(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public long getCount(SampleIndex index) {
+    return snapshot().getCount(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public double getVariance(SampleIndex index) {
+    return snapshot().getVariance(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public long getPercentile(LongSampleIndex index,
+                                      double percentile) {
+    return snapshot().getPercentile(index, percentile);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public long[] getHistogram(LongSampleIndex index,
+                                       long[] upperBounds) {
+    return snapshot().getHistogram(index, upperBounds);
+  }
+
+  /**
+   * Set the value specified by <code>index</code>.
+   *
+   * <p>
+   * The value is held in the first stripe, and the other stripes are cleared.
+   * This is not atomic with respect to threads that are concurrently adding
+   * to the same value.
+   * </p>
+   *
+   * @param index The index.
+   * @param value The value.
+   */
+  @Override public void setValue(LongIndex index, long value) {
+    m_stripes[0].setValue(index, value);
+
+    if (!index.isTransient()) {
+      for (int i = 1; i < m_stripes.length; ++i) {
+        m_stripes[i].setValue(index, 0);
+      }
+    }
+  }
+
+  /**
+   * Set the value specified by <code>index</code>.
+   *
+   * <p>
+   * The value is held in the first stripe, and the other stripes are cleared.
+   * This is not atomic with respect to threads that are concurrently adding
+   * to the same value.
+   * </p>
+   *
+   * @param index The index.
+   * @param value The value.
+   */
+  @Override public void setValue(DoubleIndex index, double value) {
+    m_stripes[0].setValue(index, value);
+
+    for (int i = 1; i < m_stripes.length; ++i) {
+      m_stripes[i].setValue(index, 0);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void addValue(LongIndex index, long value) {
+    stripe().addValue(index, value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void addValue(DoubleIndex index, double value) {
+    stripe().addValue(index, value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void addSample(LongSampleIndex index, long value) {
+    stripe().addSample(index, value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void addSample(DoubleSampleIndex index, double value) {
+    stripe().addSample(index, value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void reset(LongSampleIndex index) {
+    for (StatisticsSetImplementation stripe : m_stripes) {
+      stripe.reset(index);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void reset(DoubleSampleIndex index) {
+    for (StatisticsSetImplementation stripe : m_stripes) {
+      stripe.reset(index);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void add(ImmutableStatisticsSet operand) {
+    stripe().add(operand);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public boolean isZero() {
+    for (StatisticsSetImplementation stripe : m_stripes) {
+      if (!stripe.isZero()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public boolean isComposite() {
+    for (StatisticsSetImplementation stripe : m_stripes) {
+      if (stripe.isComposite()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void setIsComposite() {
+    m_stripes[0].setIsComposite();
+  }
+
+  /**
+   * Implement value based equality. Mainly used by unit tests.
+   *
+   * @param o <code>Object</code> to compare to.
+   * @return <code>true</code> if and only if the two objects are equal.
+   */
+  @Override public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+
+    if (o == null || o.getClass() != StripedStatisticsSet.class) {
+      return false;
+    }
+
+    return snapshot().equals(((StripedStatisticsSet)o).snapshot());
+  }
+
+  /**
+   * Consistent with {@link #equals}.
+   *
+   * @return The hash code.
+   */
+  @Override public int hashCode() {
+    return snapshot().hashCode();
+  }
+
+  /**
+   * Return a <code>String</code> representation of this
+   * <code>StatisticsSet</code>.
+   *
+   * @return The <code>String</code>
+   */
+  @Override public String toString() {
+    return snapshot().toString();
+  }
+}
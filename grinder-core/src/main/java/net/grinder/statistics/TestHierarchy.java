@@ -0,0 +1,164 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.grinder.common.Test;
+
+
+/**
+ * Records which test encloses each nested test, and visits collections of
+ * tests in tree order.
+ *
+ * <p>Each test has at most one parent. Links that would create a cycle are
+ * ignored. Instances are not thread safe.</p>
+ *
+ * @author Philip Aston
+ */
+public final class TestHierarchy {
+
+  private final Map<Test, Test> m_parents = new HashMap<Test, Test>();
+
+  /**
+   * Set the parent of a test.
+   *
+   * @param test The test.
+   * @param parent The test that encloses <code>test</code>.
+   * @return <code>true</code> if the hierarchy changed.
+   */
+  public boolean setParent(final Test test, final Test parent) {
+    if (parent.equals(m_parents.get(test))) {
+      return false;
+    }
+
+    for (Test t = parent; t != null; t = m_parents.get(t)) {
+      if (t.equals(test)) {
+        return false;
+      }
+    }
+
+    m_parents.put(test, parent);
+
+    return true;
+  }
+
+  /**
+   * Set the parents of several tests.
+   *
+   * @param parents Map of tests to their parents.
+   * @return <code>true</code> if the hierarchy changed.
+   */
+  public boolean setParents(final Map<Test, Test> parents) {
+    boolean changed = false;
+
+    for (final Entry<Test, Test> entry : parents.entrySet()) {
+      changed |= setParent(entry.getKey(), entry.getValue());
+    }
+
+    return changed;
+  }
+
+  /**
+   * Return the parent of a test.
+   *
+   * @param test The test.
+   * @return The parent, or <code>null</code> if the test has none.
+   */
+  public Test getParent(final Test test) {
+    return m_parents.get(test);
+  }
+
+  /**
+   * Remove all links.
+   */
+  public void clear() {
+    m_parents.clear();
+  }
+
+  /**
+   * Visit tests in tree order. Each test is followed by the tests it
+   * encloses; siblings are visited in the order of the collection. A test
+   * whose parent is not in the collection is attached to its nearest
+   * ancestor that is.
+   *
+   * @param tests The tests.
+   * @param visitor The visitor.
+   */
+  public void visit(final Collection<Test> tests, final Visitor visitor) {
+    final Map<Test, List<Test>> children =
+      new LinkedHashMap<Test, List<Test>>();
+
+    for (final Test test : tests) {
+      children.put(test, new ArrayList<Test>(0));
+    }
+
+    final List<Test> roots = new ArrayList<Test>();
+
+    for (final Test test : tests) {
+      Test parent = m_parents.get(test);
+
+      while (parent != null && !children.containsKey(parent)) {
+        parent = m_parents.get(parent);
+      }
+
+      if (parent != null) {
+        children.get(parent).add(test);
+      }
+      else {
+        roots.add(test);
+      }
+    }
+
+    visit(roots, children, 0, visitor);
+  }
+
+  private static void visit(final List<Test> tests,
+                            final Map<Test, List<Test>> children,
+                            final int depth,
+                            final Visitor visitor) {
+    for (final Test test : tests) {
+      visitor.next(test, depth);
+      visit(children.get(test), children, depth + 1, visitor);
+    }
+  }
+
+  /**
+   * Receives tests from {@link TestHierarchy#visit}.
+   */
+  public interface Visitor {
+
+    /**
+     * Called for each test.
+     *
+     * @param test The test.
+     * @param depth The number of visited tests that enclose the test.
+     */
+    void next(Test test, int depth);
+  }
+}
@@ -21,6 +21,8 @@
 
 package net.grinder.statistics;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -31,6 +33,7 @@ import java.util.Map.Entry;
 
 import net.grinder.common.AbstractTestSemantics;
 import net.grinder.common.Test;
+import net.grinder.util.Serialiser;
 
 
 /**
@@ -42,12 +45,13 @@ import net.grinder.common.Test;
  *
  * @author Philip Aston
  */
-public final class TestStatisticsMap implements java.io.Externalizable {
+public final class TestStatisticsMap
+  implements java.io.Externalizable, TestStatisticsReport {
 
   // The serialVersionUID should be incremented whenever the default
   // statistic indices are changed in StatisticsIndexMap, or
   // when the StatisticsSet externalisation methods are changed.
-  private static final long serialVersionUID = 5L;
+  private static final long serialVersionUID = 13L;
 
   private final transient StatisticsSetFactory m_statisticsSetFactory;
 
@@ -58,6 +62,12 @@ public final class TestStatisticsMap implements java.io.Externalizable {
   private final Map<Test, StatisticsSet> m_data =
     new TreeMap<Test, StatisticsSet>();
 
+  /**
+   * Links from nested tests to their enclosing tests. Not externalised.
+   * Synchronise on this TestStatisticsMap before accessing.
+   */
+  private final transient TestHierarchy m_hierarchy = new TestHierarchy();
+
   /**
    * Creates a new <code>TestStatisticsMap</code> instance.
    *
@@ -84,7 +94,8 @@ public final class TestStatisticsMap implements java.io.Externalizable {
    * @param statistics The test's statistics.
    */
   public void put(Test test, StatisticsSet statistics) {
-    if (!(statistics instanceof StatisticsSetImplementation)) {
+    if (!(statistics instanceof StatisticsSetImplementation ||
+          statistics instanceof StripedStatisticsSet)) {
       throw new AssertionError(
         "StatisticsSet implementation not supported");
     }
@@ -94,6 +105,31 @@ public final class TestStatisticsMap implements java.io.Externalizable {
     }
   }
 
+  /**
+   * Record that a test is nested within another. Links that would make a
+   * test its own ancestor are ignored.
+   *
+   * @param test The nested test.
+   * @param parent The enclosing test.
+   */
+  public void setParent(Test test, Test parent) {
+    synchronized (this) {
+      m_hierarchy.setParent(test, parent);
+    }
+  }
+
+  /**
+   * Return the test that encloses a test.
+   *
+   * @param test The test.
+   * @return The enclosing test, or <code>null</code> if none is known.
+   */
+  public Test getParent(Test test) {
+    synchronized (this) {
+      return m_hierarchy.getParent(test);
+    }
+  }
+
   /**
    * Return the number of entries in the
    * <code>TestStatisticsMap</code>.
@@ -135,6 +171,35 @@ public final class TestStatisticsMap implements java.io.Externalizable {
     }
   }
 
+  /**
+   * Add the values in a {@link TestStatisticsReport} to this
+   * <code>TestStatisticsMap</code>.
+   *
+   * @param report The report.
+   * @throws IOException If the report could not be read.
+   */
+  public void add(TestStatisticsReport report) throws IOException {
+    report.visit(new Visitor() {
+        public void next(Test test, StatisticsSet statistics) {
+          final StatisticsSet existingStatistics;
+
+          synchronized (TestStatisticsMap.this) {
+            final StatisticsSet s = m_data.get(test);
+
+            if (s == null) {
+              existingStatistics = m_statisticsSetFactory.create();
+              put(test, existingStatistics);
+            }
+            else {
+              existingStatistics = s;
+            }
+          }
+
+          existingStatistics.add(statistics);
+        }
+      });
+  }
+
   /**
    * Reset all our statistics and return a snapshot.
    *
@@ -148,9 +213,14 @@ public final class TestStatisticsMap implements java.io.Externalizable {
       public void next(Test test, StatisticsSet statistics) {
         final StatisticsSet snapshot;
 
-        synchronized (statistics) {
-          snapshot = statistics.snapshot();
-          statistics.reset();
+        if (statistics instanceof StripedStatisticsSet) {
+          snapshot = ((StripedStatisticsSet)statistics).snapshotAndReset();
+        }
+        else {
+          synchronized (statistics) {
+            snapshot = statistics.snapshot();
+            statistics.reset();
+          }
         }
 
         if (!snapshot.isZero()) {
@@ -203,6 +273,18 @@ public final class TestStatisticsMap implements java.io.Externalizable {
     return result;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public void visit(final Visitor visitor) {
+    new ForEach() {
+      public void next(Test test, StatisticsSet statistics) {
+        visitor.next(test, statistics);
+      }
+    }
+    .iterate();
+  }
+
   /**
    * Implement value based equality. Used by unit tests, so we don't
    * bother with synchronisation.
@@ -289,6 +371,19 @@ public final class TestStatisticsMap implements java.io.Externalizable {
    * @exception IOException If an I/O error occurs.
    */
   public void writeExternal(ObjectOutput out) throws IOException {
+    write(out);
+  }
+
+  /**
+   * Write the map to a stream in the same compact format used for
+   * externalisation. Allows the map to be written without the overhead of
+   * Java serialisation.
+   *
+   * @param out The stream.
+   * @exception IOException If an I/O error occurs.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
 
     synchronized (this) {
       out.writeInt(m_data.size());
@@ -297,9 +392,14 @@ public final class TestStatisticsMap implements java.io.Externalizable {
         out.writeInt(entry.getKey().getNumber());
 
         // Its a class invariant that our StatisticsSets are all
-        // StatisticsSetImplementations.
+        // StatisticsSetImplementations or StripedStatisticsSets.
+        final StatisticsSet statistics = entry.getValue();
+
         m_statisticsSetFactory.writeStatisticsExternal(
-          out, (StatisticsSetImplementation)entry.getValue());
+          out,
+          (StatisticsSetImplementation)
+            (statistics instanceof StatisticsSetImplementation ?
+             statistics : statistics.snapshot()));
       }
     }
   }
@@ -312,6 +412,17 @@ public final class TestStatisticsMap implements java.io.Externalizable {
    * @exception IOException If an I/O error occurs.
    */
   public void readExternal(ObjectInput in) throws IOException {
+    read(in);
+  }
+
+  /**
+   * Read the map from a stream written by {@link #write(DataOutput)}. No
+   * synchronisation, assume that we're being read into a new instance.
+   *
+   * @param in The stream.
+   * @exception IOException If an I/O error occurs.
+   */
+  public void read(DataInput in) throws IOException {
 
     final int n = in.readInt();
 
@@ -323,10 +434,47 @@ public final class TestStatisticsMap implements java.io.Externalizable {
     }
   }
 
+  /**
+   * Write the map to a stream in the sparse format read by
+   * {@link SparseTestStatistics}. Test numbers are written as differences
+   * from the previous test number, and each {@link StatisticsSet} is written
+   * with its zero values suppressed.
+   *
+   * @param out The stream.
+   * @exception IOException If an I/O error occurs.
+   */
+  public void writeSparse(DataOutput out) throws IOException {
+    final Serialiser serialiser = m_statisticsSetFactory.getSerialiser();
+
+    synchronized (this) {
+      serialiser.writeVarLong(out, m_data.size());
+
+      int lastTestNumber = 0;
+
+      for (Entry<Test, StatisticsSet> entry : m_data.entrySet()) {
+        final int testNumber = entry.getKey().getNumber();
+        serialiser.writeVarLong(out, (long)testNumber - lastTestNumber);
+        lastTestNumber = testNumber;
+
+        final StatisticsSet statistics = entry.getValue();
+
+        m_statisticsSetFactory.writeStatisticsSparse(
+          out,
+          (StatisticsSetImplementation)
+            (statistics instanceof StatisticsSetImplementation ?
+             statistics : statistics.snapshot()));
+      }
+    }
+  }
+
+  StatisticsSetFactory getStatisticsSetFactory() {
+    return m_statisticsSetFactory;
+  }
+
   /**
    * Light weight test implementation that the console uses.
    */
-  private static final class LightweightTest extends AbstractTestSemantics {
+  static final class LightweightTest extends AbstractTestSemantics {
     private final int m_number;
 
     public LightweightTest(int number) {
@@ -365,4 +513,36 @@ public final class TestStatisticsMap implements java.io.Externalizable {
      */
     protected abstract void next(Test test, StatisticsSet statistics);
   }
+
+  /**
+   * Convenient visitor-like iteration in tree order. Each test is followed by
+   * the tests nested within it.
+   *
+   * @see #setParent
+   */
+  public abstract class TreeForEach {
+    /**
+     * Runs the iteration.
+     */
+    public void iterate() {
+      synchronized (TestStatisticsMap.this) {
+        m_hierarchy.visit(m_data.keySet(), new TestHierarchy.Visitor() {
+            public void next(Test test, int depth) {
+              TreeForEach.this.next(test, m_data.get(test), depth);
+            }
+          });
+      }
+    }
+
+    /**
+     * Receives a call for each item in the iteration.
+     *
+     * @param test The item's Test.
+     * @param statistics The item's statistics.
+     * @param depth The number of tests in the map that enclose the item.
+     */
+    protected abstract void next(Test test,
+                                 StatisticsSet statistics,
+                                 int depth);
+  }
 }
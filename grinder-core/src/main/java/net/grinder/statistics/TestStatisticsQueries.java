@@ -70,16 +70,18 @@ public final class TestStatisticsQueries {
 
   /**
    * Return the value obtained by dividing the <em>timedTests</em> sample
-   * statistics <em>total</em> attribute by its <em>count</em> attribute.
+   * statistics <em>total</em> attribute by its <em>count</em> attribute,
+   * converted to milliseconds.
    *
    * @param statistics The statistics to query.
-   * @return a <code>double</code> value
+   * @return The mean test time in milliseconds.
    */
   public double getAverageTestTime(StatisticsSet statistics) {
     final long count = statistics.getCount(m_timedTestsIndex);
 
     return
       count == 0 ?
-      Double.NaN : statistics.getSum(m_timedTestsIndex) / (double)count;
+      Double.NaN :
+      statistics.getSum(m_timedTestsIndex) / (count * 1000d);
   }
 }
@@ -0,0 +1,63 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.io.IOException;
+
+import net.grinder.common.Test;
+
+
+/**
+ * A report of statistics for a number of tests.
+ *
+ * <p>Implemented both by {@link TestStatisticsMap}, and by
+ * {@link SparseTestStatistics} which decodes each test's statistics as
+ * it is visited rather than holding them all in memory.</p>
+ *
+ * @author Philip Aston
+ */
+public interface TestStatisticsReport {
+
+  /**
+   * Call a visitor for each test in the report, in test number order.
+   *
+   * @param visitor The visitor.
+   * @throws IOException If the report could not be decoded.
+   */
+  void visit(Visitor visitor) throws IOException;
+
+  /**
+   * Receives the statistics for each test in a report.
+   */
+  interface Visitor {
+
+    /**
+     * Receives the statistics for a test.
+     *
+     * @param test The test.
+     * @param statistics The test's statistics. Implementations may reuse the
+     * same instance for each call, so visitors should copy the values rather
+     * than retain a reference.
+     */
+    void next(Test test, StatisticsSet statistics);
+  }
+}
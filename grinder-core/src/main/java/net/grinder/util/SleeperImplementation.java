@@ -24,10 +24,15 @@ package net.grinder.util;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Collections;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import net.grinder.common.TimeAuthority;
-import net.grinder.util.thread.Condition;
+import net.grinder.common.UncheckedInterruptedException;
 
 import org.slf4j.Logger;
 
@@ -38,6 +43,11 @@ import org.slf4j.Logger;
  * <p>Several threads can safely use the same <code>Sleeper</code>.
  * </p>
  *
+ * <p>Sleeping threads park individually rather than waiting on a shared
+ * monitor. Sleeping virtual threads release their carrier thread, and the
+ * cost of a sleep doesn't grow with the number of sleeping threads.
+ * </p>
+ *
  * @author Philip Aston
  */
 public final class SleeperImplementation implements Sleeper {
@@ -50,9 +60,10 @@ public final class SleeperImplementation implements Sleeper {
   private final double m_factor;
   private final double m_limit9975Factor;
   private final Logger m_logger;
-  private final Condition m_condition = new Condition();
+  private final Set<Thread> m_sleepingThreads =
+    Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
 
-  private boolean m_shutdown = false;
+  private volatile boolean m_shutdown = false;
 
   /**
    * The constructor.
@@ -102,9 +113,10 @@ public final class SleeperImplementation implements Sleeper {
    */
   @Override public void shutdown() {
 
-    synchronized (m_condition) {
-      m_shutdown = true;
-      m_condition.notifyAll();
+    m_shutdown = true;
+
+    for (final Thread thread : m_sleepingThreads) {
+      LockSupport.unpark(thread);
     }
   }
 
@@ -115,6 +127,13 @@ public final class SleeperImplementation implements Sleeper {
     return m_timeAuthority.getTimeInMilliseconds();
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override public long getTimeInNanoseconds() {
+    return m_timeAuthority.getTimeInNanoseconds();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -167,23 +186,38 @@ public final class SleeperImplementation implements Sleeper {
       long currentTime = m_timeAuthority.getTimeInMilliseconds();
       final long wakeUpTime = currentTime + factoredTime;
 
-      while (currentTime < wakeUpTime) {
-        synchronized (m_condition) {
+      final Thread thread = Thread.currentThread();
+
+      // Register before checking for shut down, so that shutdown() either
+      // is seen by checkShutdown() or unparks us.
+      m_sleepingThreads.add(thread);
+
+      try {
+        while (currentTime < wakeUpTime) {
           checkShutdown();
-          m_condition.waitNoInterrruptException(wakeUpTime - currentTime);
-        }
 
-        currentTime = m_timeAuthority.getTimeInMilliseconds();
+          LockSupport.parkNanos(
+            this,
+            TimeUnit.MILLISECONDS.toNanos(wakeUpTime - currentTime));
+
+          if (Thread.interrupted()) {
+            throw new UncheckedInterruptedException(
+              new InterruptedException());
+          }
+
+          currentTime = m_timeAuthority.getTimeInMilliseconds();
+        }
+      }
+      finally {
+        m_sleepingThreads.remove(thread);
       }
     }
   }
 
   private void checkShutdown() throws ShutdownException {
 
-    synchronized (m_condition) {
-      if (m_shutdown) {
-        throw new ShutdownException("Shut down");
-      }
+    if (m_shutdown) {
+      throw new ShutdownException("Shut down");
     }
   }
 }
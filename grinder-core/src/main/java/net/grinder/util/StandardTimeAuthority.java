@@ -48,5 +48,15 @@ public final class StandardTimeAuthority implements TimeAuthority {
   public long getTimeInMilliseconds() {
     return System.nanoTime() / 1000000 + m_epochOffset;
   }
+
+  /**
+   * Return the current value of {@link System#nanoTime()}.
+   *
+   * @return The time.
+   */
+  @Override
+  public long getTimeInNanoseconds() {
+    return System.nanoTime();
+  }
 }
 
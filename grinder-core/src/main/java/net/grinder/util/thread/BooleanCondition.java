@@ -21,15 +21,25 @@
 
 package net.grinder.util.thread;
 
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.grinder.common.UncheckedInterruptedException;
+
 
 /**
  * Lock object that has two states. A caller can wait for the state to change
  * to a particular value, but can also be woken by another thread.
  *
+ * <p>Uses a {@link Lock} rather than an object monitor so that waiting
+ * virtual threads release their carrier thread.</p>
+ *
  * @author Philip Aston
  */
 public final class BooleanCondition {
-  private final Condition m_condition = new Condition();
+  private final Lock m_lock = new ReentrantLock();
+  private final Condition m_condition = m_lock.newCondition();
   private boolean m_state = false;
   private int m_waiters = 0;
   private boolean m_wakeUp;
@@ -43,21 +53,32 @@ public final class BooleanCondition {
    *         woken by another thread calling {@link #wakeUpAllWaiters()}.
    */
   public boolean await(boolean state) {
-    synchronized (m_condition) {
+    m_lock.lock();
+
+    try {
       ++m_waiters;
 
       try {
         while (m_state != state && !m_wakeUp) {
-          m_condition.waitNoInterrruptException();
+          awaitCondition();
         }
       }
       finally {
         --m_waiters;
-        m_condition.notifyAll();
+
+        // Only wakeUpAllWaiters() waits for the number of waiters to
+        // change. Signalling unconditionally would make waking N waiters
+        // cost O(N^2).
+        if (m_wakeUp && m_waiters == 0) {
+          m_condition.signalAll();
+        }
       }
 
       return m_state;
     }
+    finally {
+      m_lock.unlock();
+    }
   }
 
   /**
@@ -66,9 +87,14 @@ public final class BooleanCondition {
    * @param state The new state.
    */
   public void set(boolean state) {
-    synchronized (m_condition) {
+    m_lock.lock();
+
+    try {
       m_state = state;
-      m_condition.notifyAll();
+      m_condition.signalAll();
+    }
+    finally {
+      m_lock.unlock();
     }
   }
 
@@ -78,32 +104,51 @@ public final class BooleanCondition {
    * @return The state.
    */
   public boolean get() {
-    synchronized (m_condition) {
+    m_lock.lock();
+
+    try {
       return m_state;
     }
+    finally {
+      m_lock.unlock();
+    }
   }
 
   /**
    * Wake up other threads that are waiting in {@link #await(boolean)}.
    */
   public void wakeUpAllWaiters() {
-    synchronized (m_condition) {
+    m_lock.lock();
+
+    try {
       if (m_waiters == 0) {
         return;
       }
 
       m_wakeUp = true;
-      m_condition.notifyAll();
+      m_condition.signalAll();
 
       try {
         while (m_waiters > 0) {
-          m_condition.waitNoInterrruptException();
+          awaitCondition();
         }
       }
       finally {
         m_wakeUp = false;
-        m_condition.notifyAll();
+        m_condition.signalAll();
       }
     }
+    finally {
+      m_lock.unlock();
+    }
+  }
+
+  private void awaitCondition() {
+    try {
+      m_condition.await();
+    }
+    catch (InterruptedException e) {
+      throw new UncheckedInterruptedException(e);
+    }
   }
 }
@@ -0,0 +1,115 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util.thread;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+
+/**
+ * Create virtual threads on runtimes that support them.
+ *
+ * <p>The Grinder is built for older Java versions, so the Java 21
+ * {@code Thread.Builder} API is accessed reflectively.</p>
+ *
+ * @author Philip Aston
+ */
+public final class VirtualThreads {
+
+  private static final Method s_ofVirtual;
+  private static final Method s_name;
+  private static final Method s_unstarted;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method unstarted = null;
+
+    try {
+      final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name = builderClass.getMethod("name", String.class);
+      unstarted = builderClass.getMethod("unstarted", Runnable.class);
+    }
+    catch (final ClassNotFoundException e) {
+      // Not supported.
+    }
+    catch (final NoSuchMethodException e) {
+      // Not supported.
+    }
+
+    s_ofVirtual = ofVirtual;
+    s_name = name;
+    s_unstarted = unstarted;
+  }
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Whether the runtime supports virtual threads.
+   *
+   * @return {@code true} if {@link #create} can be used.
+   */
+  public static boolean isSupported() {
+    return s_unstarted != null;
+  }
+
+  /**
+   * Create an unstarted virtual thread. Virtual threads are always daemon
+   * threads.
+   *
+   * @param runnable
+   *          The thread's work.
+   * @param name
+   *          The thread name.
+   * @return The new thread.
+   * @throws UnsupportedOperationException
+   *           If the runtime does not support virtual threads.
+   */
+  public static Thread create(final Runnable runnable, final String name) {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException(
+        "Virtual threads are not supported by this Java runtime");
+    }
+
+    try {
+      final Object builder = s_ofVirtual.invoke(null);
+
+      return (Thread) s_unstarted.invoke(s_name.invoke(builder, name),
+                                         runnable);
+    }
+    catch (final IllegalAccessException e) {
+      throw new UnsupportedOperationException(e.getMessage(), e);
+    }
+    catch (final InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+
+      throw new UnsupportedOperationException(cause.getMessage(), cause);
+    }
+  }
+}
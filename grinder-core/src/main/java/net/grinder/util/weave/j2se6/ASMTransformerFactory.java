@@ -66,6 +66,9 @@ public final class ASMTransformerFactory
 
   private final String m_adviceClass;
 
+  /** Resolves locations to call sites, or {@code null}. */
+  private final Method m_callSiteMethod;
+
   /**
    * Constructor.
    *
@@ -93,6 +96,36 @@ public final class ASMTransformerFactory
    *                         boolean success);
    * </pre>
    *
+   * <p>
+   * Optionally, {@code adviceClass} can also provide a call site method, and
+   * variants of the {@code enter} and {@code exit} methods that take a call
+   * site index rather than a location. The call site method is invoked once
+   * for each location when a class is woven, and the woven code passes the
+   * resulting index as a constant. This allows the advice to find the state
+   * for a location by index, rather than by looking up the location string
+   * each time a woven method is called.
+   * </p>
+   *
+   * <pre>
+   * public static int callSite(String location);
+   *
+   * public static void enter(Object reference,
+   *                          int callSite);
+   *
+   * public static void exit(Object reference,
+   *                         int callSite,
+   *                         boolean success);
+   *
+   * public static void enter(Object reference,
+   *                          Object reference2,
+   *                          int callSite);
+   *
+   * public static void exit(Object reference,
+   *                         Object reference2,
+   *                         int callSite,
+   *                         boolean success);
+   * </pre>
+   *
    * @param adviceClass
    *          Class that provides the advice.
    * @throws WeavingException
@@ -122,11 +155,7 @@ public final class ASMTransformerFactory
                               Boolean.TYPE),
       };
 
-      for (final Method m : methods) {
-        if (!Modifier.isStatic(m.getModifiers())) {
-          throw new WeavingException(m + " is not static");
-        }
-      }
+      checkStatic(methods);
     }
     catch (final Exception e) {
       throw new WeavingException(
@@ -135,9 +164,89 @@ public final class ASMTransformerFactory
         e);
     }
 
+    m_callSiteMethod = getCallSiteMethod(adviceClass);
     m_adviceClass = Type.getInternalName(adviceClass);
   }
 
+  private static void checkStatic(final Method[] methods)
+    throws WeavingException {
+
+    for (final Method m : methods) {
+      if (!Modifier.isStatic(m.getModifiers())) {
+        throw new WeavingException(m + " is not static");
+      }
+    }
+  }
+
+  private static Method getCallSiteMethod(final Class<?> adviceClass)
+    throws WeavingException {
+
+    final Method callSiteMethod;
+
+    try {
+      callSiteMethod = adviceClass.getMethod("callSite", String.class);
+    }
+    catch (final NoSuchMethodException e) {
+      return null;
+    }
+
+    try {
+      final Method[] methods = {
+        callSiteMethod,
+        adviceClass.getMethod("enter",
+                              Object.class,
+                              Integer.TYPE),
+        adviceClass.getMethod("exit",
+                              Object.class,
+                              Integer.TYPE,
+                              Boolean.TYPE),
+        adviceClass.getMethod("enter",
+                              Object.class,
+                              Object.class,
+                              Integer.TYPE),
+        adviceClass.getMethod("exit",
+                              Object.class,
+                              Object.class,
+                              Integer.TYPE,
+                              Boolean.TYPE),
+      };
+
+      checkStatic(methods);
+
+      if (callSiteMethod.getReturnType() != Integer.TYPE) {
+        throw new WeavingException(callSiteMethod + " does not return int");
+      }
+    }
+    catch (final Exception e) {
+      throw new WeavingException(
+        adviceClass.getName() +
+        " does not have expected call site enter and exit methods",
+        e);
+    }
+
+    return callSiteMethod;
+  }
+
+  /**
+   * The constant that the woven code passes to identify a location.
+   */
+  private Object locationConstant(final WeavingDetails weavingDetails) {
+    if (m_callSiteMethod == null) {
+      return weavingDetails.getLocation();
+    }
+
+    try {
+      return m_callSiteMethod.invoke(null, weavingDetails.getLocation());
+    }
+    catch (final Exception e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private Type locationType() {
+    return m_callSiteMethod != null ? Type.INT_TYPE : STRING_TYPE;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -447,12 +556,13 @@ public final class ASMTransformerFactory
             getExtractor(targetSource).extract(this);
           }
 
-          super.visitLdcInsn(weavingDetails.getLocation());
+          super.visitLdcInsn(locationConstant(weavingDetails));
 
           super.visitMethodInsn(INVOKESTATIC,
                                 m_adviceClass,
                                 "enter",
-                                entryMethodDescriptor(targetSources.size()));
+                                entryMethodDescriptor(targetSources.size(),
+                                                      locationType()));
         }
       }
     }
@@ -476,14 +586,15 @@ public final class ASMTransformerFactory
           getExtractor(targetSource).extract(this);
         }
 
-        super.visitLdcInsn(weavingDetails.getLocation());
+        super.visitLdcInsn(locationConstant(weavingDetails));
 
         super.visitInsn(success ? ICONST_1 : ICONST_0);
 
         super.visitMethodInsn(INVOKESTATIC,
                               m_adviceClass,
                               "exit",
-                              exitMethodDescriptor(targetSources.size()));
+                              exitMethodDescriptor(targetSources.size(),
+                                                   locationType()));
       }
     }
 
@@ -636,18 +747,20 @@ public final class ASMTransformerFactory
     return new ArrayList<Type>(nCopies(numberOfTargets, OBJECT_TYPE));
   }
 
-  private static String entryMethodDescriptor(final int numberOfTargets) {
+  private static String entryMethodDescriptor(final int numberOfTargets,
+                                              final Type locationType) {
     final List<Type> parameters = parameterSignature(numberOfTargets);
-    parameters.add(STRING_TYPE);
+    parameters.add(locationType);
 
     return Type.getMethodDescriptor(Type.VOID_TYPE,
                                     parameters.toArray(
                                       new Type[parameters.size()]));
   }
 
-  private static String exitMethodDescriptor(final int numberOfTargets) {
+  private static String exitMethodDescriptor(final int numberOfTargets,
+                                             final Type locationType) {
     final List<Type> parameters = parameterSignature(numberOfTargets);
-    parameters.add(STRING_TYPE);
+    parameters.add(locationType);
     parameters.add(Type.BOOLEAN_TYPE);
 
     return Type.getMethodDescriptor(Type.VOID_TYPE,
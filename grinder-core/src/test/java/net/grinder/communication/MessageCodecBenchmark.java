@@ -0,0 +1,186 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+import net.grinder.common.processidentity.ProcessReport.State;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.statistics.TestStatisticsReport;
+
+
+/**
+ * Compares {@link SerialisationCodec} and {@link CompactCodec} for the
+ * messages that each worker process sends to the console every report
+ * interval.
+ *
+ * <p>
+ * For each codec, reports the encoded size of a statistics report and a
+ * process report, the CPU time to encode a report pair, and the CPU time the
+ * console spends decoding one report pair from each of 1,000 workers and
+ * adding the statistics to its totals.
+ * </p>
+ *
+ * <p>
+ * Not a unit test. Run manually with:
+ * <code>java -cp ... net.grinder.communication.MessageCodecBenchmark
+ * [number of tests] [iterations]</code>.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class MessageCodecBenchmark {
+
+  private static final int WORKERS = 1000;
+
+  private final Message[] m_messages;
+  private final StatisticsSet m_totals;
+
+  public MessageCodecBenchmark(int numberOfTests) {
+    final StatisticsServices services =
+      StatisticsServicesImplementation.getInstance();
+    final StatisticsSetFactory factory = services.getStatisticsSetFactory();
+    final StatisticsIndexMap indexMap = services.getStatisticsIndexMap();
+
+    final StatisticsIndexMap.LongIndex errors =
+      indexMap.getLongIndex("errors");
+    final StatisticsIndexMap.LongSampleIndex timedTests =
+      indexMap.getLongSampleIndex("timedTests");
+
+    final Random random = new Random(0);
+    final TestStatisticsMap statistics = new TestStatisticsMap(factory);
+
+    for (int i = 0; i < numberOfTests; ++i) {
+      final StatisticsSet testStatistics = factory.create();
+
+      for (int j = 0; j < 50; ++j) {
+        testStatistics.addSample(timedTests, 20 + random.nextInt(500));
+      }
+
+      testStatistics.addValue(errors, random.nextInt(2));
+
+      statistics.put(new StubTest(i, "Test " + i), testStatistics);
+    }
+
+    m_totals = factory.create();
+
+    m_messages = new Message[] {
+      new ReportStatisticsMessage(statistics),
+      new WorkerProcessReportMessage(State.RUNNING, (short)10, (short)10),
+    };
+  }
+
+  private byte[] encode(MessageCodec codec) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    for (Message message : m_messages) {
+      codec.writeMessage(message, out);
+    }
+
+    return out.toByteArray();
+  }
+
+  private void decode(MessageCodec codec, byte[] bytes) throws Exception {
+    final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+
+    for (int i = 0; i < m_messages.length; ++i) {
+      final Message message = codec.readMessage(in);
+
+      if (message instanceof ReportStatisticsMessage) {
+        ((ReportStatisticsMessage)message).getStatistics().visit(
+          new TestStatisticsReport.Visitor() {
+            public void next(Test test, StatisticsSet statistics) {
+              m_totals.add(statistics);
+            }
+          });
+      }
+    }
+  }
+
+  private void run(MessageCodec codec, int iterations) throws Exception {
+    final byte[] bytes = encode(codec);
+
+    final ByteArrayOutputStream statisticsBytes = new ByteArrayOutputStream();
+    codec.writeMessage(m_messages[0], statisticsBytes);
+
+    // Warm up.
+    for (int i = 0; i < iterations / 10; ++i) {
+      encode(codec);
+      decode(codec, bytes);
+    }
+
+    final long encodeStart = System.nanoTime();
+
+    for (int i = 0; i < iterations; ++i) {
+      encode(codec);
+    }
+
+    final long encodeTime = System.nanoTime() - encodeStart;
+
+    final long decodeStart = System.nanoTime();
+
+    for (int i = 0; i < iterations; ++i) {
+      decode(codec, bytes);
+    }
+
+    final long decodeTime = System.nanoTime() - decodeStart;
+
+    System.out.printf("%-15s %12d %12d %12.1f %12.1f %16.2f%n",
+                      codec.getName(),
+                      statisticsBytes.size(),
+                      bytes.length - statisticsBytes.size(),
+                      encodeTime / 1000d / iterations,
+                      decodeTime / 1000d / iterations,
+                      decodeTime / 1000000d / iterations * WORKERS);
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int numberOfTests = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+    final MessageCodecBenchmark benchmark =
+      new MessageCodecBenchmark(numberOfTests);
+
+    System.out.printf("%d tests%n", numberOfTests);
+    System.out.printf("%-15s %12s %12s %12s %12s %16s%n",
+                      "codec",
+                      "stats bytes",
+                      "report bytes",
+                      "encode us",
+                      "decode us",
+                      "console ms/1000");
+
+    benchmark.run(new SerialisationCodec(), iterations);
+    benchmark.run(new CompactCodec(), iterations);
+  }
+}
@@ -24,6 +24,7 @@ package net.grinder.communication;
 
 import static net.grinder.testutility.SocketUtilities.findFreePort;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
@@ -176,6 +177,37 @@ public class TestAcceptor {
                       identityCaptor.getValue());
   }
 
+  @Test public void testSelectable() throws Exception {
+
+    final Acceptor acceptor =
+      new Acceptor("localhost", 0, 1, m_timeAuthority, true);
+
+    assertTrue(acceptor.isSelectable());
+
+    final Acceptor blockingAcceptor = createAcceptor(1);
+    assertFalse(blockingAcceptor.isSelectable());
+    blockingAcceptor.shutdown();
+
+    new Connector("localhost", acceptor.getPort(), ConnectionType.AGENT)
+      .connect();
+
+    final ResourcePool socketSet = acceptor.getSocketSet(ConnectionType.AGENT);
+
+    for (int i = 0; socketSet.countActive() != 1 && i < 10; ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    final List<? extends ResourcePool.Reservation> reservations =
+      socketSet.reserveAll();
+    assertEquals(1, reservations.size());
+
+    final SocketWrapper socketWrapper =
+      (SocketWrapper) reservations.get(0).getResource();
+    assertNotNull(socketWrapper.getChannel());
+
+    acceptor.shutdown();
+  }
+
   private Acceptor createAcceptor(final int numberOfThreads) throws Exception {
     // Figure out a free local port.
     final ServerSocket serverSocket = new ServerSocket(0);
@@ -0,0 +1,104 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ *  Unit tests for {@link ChannelOutputStream}.
+ *
+ * @author Philip Aston
+ */
+public class TestChannelOutputStream {
+
+  private ServerSocketChannel m_serverChannel;
+  private SocketChannel m_channel;
+  private SocketChannel m_peer;
+
+  @Before public void setUp() throws Exception {
+    m_serverChannel = ServerSocketChannel.open();
+    m_serverChannel.socket().bind(
+      new InetSocketAddress(InetAddress.getByName(null), 0));
+
+    m_channel = SocketChannel.open(m_serverChannel.socket()
+                                   .getLocalSocketAddress());
+    m_channel.configureBlocking(false);
+
+    m_peer = m_serverChannel.accept();
+  }
+
+  @After public void tearDown() throws Exception {
+    m_peer.close();
+    m_channel.close();
+    m_serverChannel.close();
+  }
+
+  @Test public void testWrite() throws Exception {
+    final ChannelOutputStream out = new ChannelOutputStream(m_channel);
+
+    final byte[] data = new byte[1000];
+
+    for (int i = 0; i < data.length; ++i) {
+      data[i] = (byte)i;
+    }
+
+    out.write(data);
+    out.write(99);
+
+    final DataInputStream in =
+      new DataInputStream(m_peer.socket().getInputStream());
+
+    final byte[] received = new byte[data.length];
+    in.readFully(received);
+    assertArrayEquals(data, received);
+    assertArrayEquals(new byte[] { 99 }, new byte[] { in.readByte() });
+  }
+
+  @Test(timeout = 10000)
+  public void testPeerThatStopsReading() throws Exception {
+    final ChannelOutputStream out = new ChannelOutputStream(m_channel, 100);
+
+    // The peer never reads, so the socket buffers fill up.
+    try {
+      out.write(new byte[20000000]);
+      fail("Expected SocketTimeoutException");
+    }
+    catch (SocketTimeoutException e) {
+    }
+
+    assertFalse(m_channel.isOpen());
+  }
+}
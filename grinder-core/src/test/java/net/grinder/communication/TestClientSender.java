@@ -28,12 +28,11 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 
 import net.grinder.communication.BlockingSender.NoResponseException;
+import net.grinder.communication.Connector.ConnectDetails;
 import net.grinder.util.StreamCopier;
 
 import org.junit.Test;
@@ -67,16 +66,11 @@ public class TestClientSender {
     final InputStream socketInput =
       socketAcceptor.getAcceptedSocket().getInputStream();
 
-    assertEquals(ConnectionType.AGENT,
-                 Connector.read(socketInput).getConnectionType());
-
-    // Need an ObjectInputStream for every message. See note in
-    // ClientSender.writeMessage.
-    final ObjectInputStream inputStream1 = new ObjectInputStream(socketInput);
-    final Object o1 = inputStream1.readObject();
+    final ConnectDetails details = Connector.read(socketInput);
+    assertEquals(ConnectionType.AGENT, details.getConnectionType());
 
-    final ObjectInputStream inputStream2 = new ObjectInputStream(socketInput);
-    final Object o2 = inputStream2.readObject();
+    final Object o1 = details.getCodec().readMessage(socketInput);
+    final Object o2 = details.getCodec().readMessage(socketInput);
 
     assertEquals(message1, o1);
     assertEquals(message2, o2);
@@ -121,15 +115,13 @@ public class TestClientSender {
     final InputStream socketInput =
       socketAcceptor.getAcceptedSocket().getInputStream();
 
-    assertEquals(ConnectionType.AGENT,
-                 Connector.read(socketInput).getConnectionType());
+    final ConnectDetails details = Connector.read(socketInput);
+    assertEquals(ConnectionType.AGENT, details.getConnectionType());
 
-    final ObjectInputStream inputStream1 = new ObjectInputStream(socketInput);
-    final Object o1 = inputStream1.readObject();
+    final Object o1 = details.getCodec().readMessage(socketInput);
     assertNotNull(o1);
 
-    final ObjectInputStream inputStream2 = new ObjectInputStream(socketInput);
-    final Object o2 = inputStream2.readObject();
+    final Object o2 = details.getCodec().readMessage(socketInput);
 
     assertTrue(o2 instanceof CloseCommunicationMessage);
 
@@ -231,13 +223,15 @@ public class TestClientSender {
     final InputStream socketInput = acceptedSocket.getInputStream();
     final OutputStream socketOutput = acceptedSocket.getOutputStream();
 
-    assertEquals(ConnectionType.AGENT,
-                 Connector.read(socketInput).getConnectionType());
+    final ConnectDetails details = Connector.read(socketInput);
+    assertEquals(ConnectionType.AGENT, details.getConnectionType());
 
     final SimpleMessage message1 = new SimpleMessage();
 
     final ReceiveOneMessageAndReply receiver1 =
-      new ReceiveOneMessageAndReply(socketInput, socketOutput);
+      new ReceiveOneMessageAndReply(socketInput,
+                                    socketOutput,
+                                    details.getCodec());
     receiver1.start();
 
     final Object received1 = clientSender.blockingSend(message1);
@@ -248,7 +242,9 @@ public class TestClientSender {
     final NoResponseMessage message2 = new NoResponseMessage();
 
     final ReceiveOneMessageAndReply receiver2 =
-      new ReceiveOneMessageAndReply(socketInput, socketOutput);
+      new ReceiveOneMessageAndReply(socketInput,
+                                    socketOutput,
+                                    details.getCodec());
     receiver2.start();
 
     try {
@@ -268,29 +264,25 @@ public class TestClientSender {
 
     private final InputStream m_inputStream;
     private final OutputStream m_outputStream;
+    private final MessageCodec m_codec;
     private Exception m_exception;
 
     public ReceiveOneMessageAndReply(InputStream inputStream,
-                                     OutputStream outputStream) {
+                                     OutputStream outputStream,
+                                     MessageCodec codec) {
       m_inputStream = inputStream;
       m_outputStream = outputStream;
+      m_codec = codec;
     }
 
     public void run() {
-      // Need an ObjectInputStream for every message. See note in
-      // ClientSender.writeMessage.
       try {
-        final ObjectInputStream inputStream =
-          new ObjectInputStream(m_inputStream);
         final MessageRequiringResponse responseSender =
-          (MessageRequiringResponse)inputStream.readObject();
+          (MessageRequiringResponse)m_codec.readMessage(m_inputStream);
 
         assert m_inputStream.available() == 0;
 
-        final ObjectOutputStream outputStream =
-          new ObjectOutputStream(m_outputStream);
-        outputStream.writeObject(responseSender.getMessage());
-        outputStream.flush();
+        m_codec.writeMessage(responseSender.getMessage(), m_outputStream);
       }
       catch (Exception e) {
         m_exception = e;
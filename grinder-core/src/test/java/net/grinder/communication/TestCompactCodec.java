@@ -0,0 +1,325 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import net.grinder.common.StubTest;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+import net.grinder.statistics.TestStatisticsMap;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link CompactCodec}.
+ *
+ * @author Philip Aston
+ */
+public class TestCompactCodec {
+
+  private final CompactCodec m_codec;
+
+  public TestCompactCodec() throws Exception {
+    m_codec = new CompactCodec();
+  }
+
+  @Test public void testName() throws Exception {
+    assertEquals(CompactCodec.NAME, m_codec.getName());
+  }
+
+  @Test public void testRoundTrip() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    final SimpleMessage message = new SimpleMessage();
+
+    m_codec.writeMessage(message, out);
+    m_codec.writeMessage(new KeepAliveMessage(), out);
+    m_codec.writeMessage(new CloseCommunicationMessage(), out);
+    m_codec.writeMessage(message, out);
+
+    final InputStream in = new ByteArrayInputStream(out.toByteArray());
+
+    assertEquals(message, m_codec.readMessage(in));
+    assertTrue(m_codec.readMessage(in) instanceof KeepAliveMessage);
+    assertTrue(m_codec.readMessage(in) instanceof CloseCommunicationMessage);
+    assertEquals(message, m_codec.readMessage(in));
+    assertEquals(0, in.available());
+
+    try {
+      m_codec.readMessage(in);
+      fail("Expected EOFException");
+    }
+    catch (EOFException e) {
+    }
+  }
+
+  @Test public void testKeepAliveIsSmall() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    m_codec.writeMessage(new KeepAliveMessage(), out);
+
+    assertEquals(5, out.size());
+  }
+
+  @Test public void testReadsSerialisedMessages() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    final SimpleMessage message = new SimpleMessage();
+
+    final SerialisationCodec serialisationCodec = new SerialisationCodec();
+    serialisationCodec.writeMessage(message, out);
+    m_codec.writeMessage(message, out);
+    serialisationCodec.writeMessage(new KeepAliveMessage(), out);
+
+    final InputStream in = new ByteArrayInputStream(out.toByteArray());
+
+    assertEquals(message, m_codec.readMessage(in));
+    assertEquals(message, m_codec.readMessage(in));
+    assertTrue(m_codec.readMessage(in) instanceof KeepAliveMessage);
+    assertEquals(0, in.available());
+  }
+
+  @Test public void testReportStatisticsMessage() throws Exception {
+    final StatisticsSetFactory statisticsSetFactory =
+      StatisticsServicesImplementation.getInstance().getStatisticsSetFactory();
+    final StatisticsIndexMap indexMap =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap();
+
+    final TestStatisticsMap statisticsDelta =
+      new TestStatisticsMap(statisticsSetFactory);
+
+    for (int i = 0; i < 10; ++i) {
+      final StatisticsSet statistics = statisticsSetFactory.create();
+      statistics.addSample(indexMap.getLongSampleIndex("timedTests"), i * 10);
+      statisticsDelta.put(new StubTest(i, ""), statistics);
+    }
+
+    final ReportStatisticsMessage message =
+      new ReportStatisticsMessage(statisticsDelta);
+
+    final ByteArrayOutputStream compactBytes = new ByteArrayOutputStream();
+    m_codec.writeMessage(message, compactBytes);
+
+    final ByteArrayOutputStream serialisedBytes = new ByteArrayOutputStream();
+    new SerialisationCodec().writeMessage(message, serialisedBytes);
+
+    assertTrue(compactBytes.size() < serialisedBytes.size());
+
+    final ReportStatisticsMessage received =
+      (ReportStatisticsMessage)m_codec.readMessage(
+        new ByteArrayInputStream(compactBytes.toByteArray()));
+
+    assertEquals(statisticsDelta, received.getStatisticsDelta());
+  }
+
+  @Test public void testBadFrames() throws Exception {
+    final byte[][] badFrames = {
+      { 99, 0, 0, 0, 0 },
+      { 1, -1, -1, -1, -1 },
+      { 1, 0, 0, 0, 10, 1, 2 },
+      { 0, 0, 0, 0, 1, 99 },
+    };
+
+    for (byte[] frame : badFrames) {
+      try {
+        m_codec.readMessage(new ByteArrayInputStream(frame));
+        fail("Expected IOException");
+      }
+      catch (IOException e) {
+      }
+    }
+  }
+
+  @Test public void testMaximumPayloadLength() throws Exception {
+    final CompactCodec codec =
+      new CompactCodec(asList(new CompactMessageEncoding<?>[0]), 100);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.writeMessage(new SimpleMessage(100), out);
+    final byte[] bytes = out.toByteArray();
+
+    try {
+      codec.readMessage(new ByteArrayInputStream(bytes));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    try {
+      codec.getFrameLength(ByteBuffer.wrap(bytes, 0, 5));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    // The default is much less than 2GB.
+    final byte[] hostileHeader = { 0, 0x7f, -1, -1, -1 };
+
+    try {
+      m_codec.getFrameLength(ByteBuffer.wrap(hostileHeader));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    try {
+      m_codec.readMessage(new ByteArrayInputStream(hostileHeader));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  @Test public void testFrameLength() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[] { 9, 9, 9 });
+    m_codec.writeMessage(new SimpleMessage(), out);
+
+    final byte[] bytes = out.toByteArray();
+    final int frameLength = bytes.length - 3;
+
+    // The frame length doesn't depend on the buffer's position.
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    buffer.position(3);
+
+    for (int i = 3; i < bytes.length; ++i) {
+      buffer.limit(i);
+      final int expected = i == 3 ? 1 : i < 8 ? 5 : frameLength;
+      assertEquals(expected, m_codec.getFrameLength(buffer));
+      assertEquals(3, buffer.position());
+    }
+
+    final ByteArrayOutputStream serialised = new ByteArrayOutputStream();
+    new SerialisationCodec().writeMessage(new SimpleMessage(), serialised);
+
+    assertEquals(
+      MessageCodec.UNKNOWN_FRAME_LENGTH,
+      m_codec.getFrameLength(ByteBuffer.wrap(serialised.toByteArray())));
+
+    try {
+      m_codec.getFrameLength(
+        ByteBuffer.wrap(new byte[] { 1, -1, -1, -1, -1 }));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  @Test public void testCustomEncoding() throws Exception {
+    final CompactCodec codec =
+      new CompactCodec(
+        asList(new CompactMessageEncoding<?>[] { new MyEncoding(20) }),
+        CompactCodec.DEFAULT_MAXIMUM_PAYLOAD_LENGTH);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.writeMessage(new MyMessage(1234), out);
+
+    assertEquals(9, out.size());
+
+    final MyMessage received =
+      (MyMessage)codec.readMessage(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(1234, received.m_value);
+
+    // Another codec without the encoding can't read it.
+    try {
+      new CompactCodec(
+        asList(new CompactMessageEncoding<?>[0]),
+        CompactCodec.DEFAULT_MAXIMUM_PAYLOAD_LENGTH).readMessage(
+        new ByteArrayInputStream(out.toByteArray()));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  @Test public void testBadEncodings() throws Exception {
+    final CompactMessageEncoding<?>[][] badEncodings = {
+      { new MyEncoding(1) },
+      { new MyEncoding(128) },
+      { new MyEncoding(20), new MyEncoding(21) },
+    };
+
+    for (CompactMessageEncoding<?>[] encodings : badEncodings) {
+      try {
+        new CompactCodec(asList(encodings),
+                         CompactCodec.DEFAULT_MAXIMUM_PAYLOAD_LENGTH);
+        fail("Expected CommunicationException");
+      }
+      catch (CommunicationException e) {
+      }
+    }
+  }
+
+  private static final class MyMessage implements Message {
+    private static final long serialVersionUID = 1L;
+
+    private final int m_value;
+
+    public MyMessage(int value) {
+      m_value = value;
+    }
+  }
+
+  private static final class MyEncoding
+    implements CompactMessageEncoding<MyMessage> {
+
+    private final int m_tag;
+
+    public MyEncoding(int tag) {
+      m_tag = tag;
+    }
+
+    public int getTag() {
+      return m_tag;
+    }
+
+    public Class<MyMessage> getMessageClass() {
+      return MyMessage.class;
+    }
+
+    public void write(MyMessage message, DataOutput out) throws IOException {
+      out.writeInt(message.m_value);
+    }
+
+    public MyMessage read(DataInput in) throws IOException {
+      return new MyMessage(in.readInt());
+    }
+  }
+}
@@ -24,6 +24,7 @@ package net.grinder.communication;
 import static net.grinder.testutility.AssertUtilities.assertContains;
 import static net.grinder.testutility.AssertUtilities.assertNotEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
@@ -132,6 +133,61 @@ public class TestConnector {
     }
   }
 
+  @Test public void testCodecNegotiation() throws Exception {
+    final SocketAcceptorThread socketAcceptor = SocketAcceptorThread.create();
+
+    final Connector connector =
+      new Connector(socketAcceptor.getHostName(), socketAcceptor.getPort(),
+                    ConnectionType.WORKER, SerialisationCodec.NAME);
+
+    connector.connect();
+
+    socketAcceptor.join();
+
+    final Connector.ConnectDetails details =
+      Connector.read(socketAcceptor.getAcceptedSocket().getInputStream());
+
+    assertEquals(ConnectionType.WORKER, details.getConnectionType());
+    assertTrue(details.getCodec() instanceof SerialisationCodec);
+    assertTrue(connector.getCodec() instanceof SerialisationCodec);
+
+    socketAcceptor.close();
+
+    final Connector defaultConnector =
+      new Connector("a", 1234, ConnectionType.WORKER);
+
+    assertTrue(defaultConnector.getCodec() instanceof CompactCodec);
+  }
+
+  @Test public void testUnsupportedCodec() throws Exception {
+    final PipedOutputStream out = new PipedOutputStream();
+    final PipedInputStream in = new PipedInputStream(out);
+
+    final ObjectOutputStream objectStream = new ObjectOutputStream(out);
+    objectStream.writeObject(ConnectionType.WORKER);
+    objectStream.writeObject(null);
+    objectStream.writeUTF("rot13");
+    objectStream.flush();
+
+    try {
+      Connector.read(in);
+      fail("Expected CommunicationException");
+    }
+    catch (final CommunicationException e) {
+      assertContains(e.getMessage(), "rot13");
+    }
+
+    final Connector connector =
+      new Connector("a", 1234, ConnectionType.WORKER, "rot13");
+
+    try {
+      connector.getCodec();
+      fail("Expected CommunicationException");
+    }
+    catch (final CommunicationException e) {
+    }
+  }
+
   @Test public void testEquality() throws Exception {
     final Connector connector =
       new Connector("a", 1234, ConnectionType.WORKER);
@@ -149,6 +205,7 @@ public class TestConnector {
       new Connector("a", 6423, ConnectionType.WORKER),
       new Connector("b", 1234, ConnectionType.WORKER),
       new Connector("a", 1234, ConnectionType.AGENT),
+      new Connector("a", 1234, ConnectionType.WORKER, SerialisationCodec.NAME),
     };
 
     for (final Connector element : equal) {
@@ -27,7 +27,6 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.StreamCorruptedException;
 import java.net.InetAddress;
 import java.net.Socket;
@@ -116,7 +115,8 @@ public class TestFanOutServerSender {
       return null;
     }
 
-    return (Message)new ObjectInputStream(socketInput).readObject();
+    return MessageCodecs.forName(MessageCodecs.DEFAULT_NAME)
+      .readMessage(socketInput);
   }
 
   @Test public void testSendAddressedMessage() throws Exception {
@@ -50,6 +50,7 @@ public class TestIdleAwareSocketWrapper {
   private static Acceptor s_acceptor;
   private Socket m_socket;
   @Mock private TimeAuthority m_timeAuthority;
+  private final MessageCodec m_codec = new SerialisationCodec();
 
   @BeforeClass public static void setUpAcceptor() throws Exception {
     s_acceptor = new Acceptor("localhost", 0, 1, new StandardTimeAuthority());
@@ -68,12 +69,12 @@ public class TestIdleAwareSocketWrapper {
   @Test(expected=CommunicationException.class)
   public void testConstructionWithBadSocket() throws Exception {
     m_socket.close();
-    new IdleAwareSocketWrapper(m_socket, m_timeAuthority);
+    new IdleAwareSocketWrapper(m_socket, m_codec, m_timeAuthority);
   }
 
   @Test public void testHasDataNoData() throws Exception {
     final IdleAwareSocketWrapper socketWrapper =
-        new IdleAwareSocketWrapper(m_socket, m_timeAuthority);
+        new IdleAwareSocketWrapper(m_socket, m_codec, m_timeAuthority);
 
     assertFalse(socketWrapper.hasData(99));
   }
@@ -81,7 +82,7 @@ public class TestIdleAwareSocketWrapper {
   @Test(expected = IOException.class)
   public void testHasDataSocketClosed() throws Exception {
     final IdleAwareSocketWrapper socketWrapper =
-        new IdleAwareSocketWrapper(m_socket, m_timeAuthority);
+        new IdleAwareSocketWrapper(m_socket, m_codec, m_timeAuthority);
     socketWrapper.close();
 
     socketWrapper.hasData(99);
@@ -91,6 +92,7 @@ public class TestIdleAwareSocketWrapper {
 
     final IdleAwareSocketWrapper socketWrapper =
         new IdleAwareSocketWrapper(m_socket,
+                                   m_codec,
                                    m_timeAuthority);
 
     when(m_timeAuthority.getTimeInMilliseconds())
@@ -198,6 +198,45 @@ public class TestResourcePool {
       }.getException().getClass());
   }
 
+  @Test public void testReserve() throws Exception {
+
+    final ResourcePool resourcePool = new ResourcePoolImplementation();
+
+    final MyResource resource1 = new MyResource();
+    final MyResource resource2 = new MyResource();
+
+    assertNull(resourcePool.reserve(resource1));
+
+    resourcePool.add(resource1);
+    resourcePool.add(resource2);
+
+    final ResourcePool.Reservation reservation =
+      resourcePool.reserve(resource2);
+    assertSame(resource2, reservation.getResource());
+
+    // Only the one resource is reserved.
+    final ResourcePool.Reservation reservation1 = resourcePool.reserveNext();
+    assertSame(resource1, reservation1.getResource());
+    reservation1.free();
+    assertTrue(resourcePool.reserveNext().isSentinel());
+
+    assertEquals(
+      UncheckedInterruptedException.class,
+      new BlockingActionThread() {
+        protected void blockingAction() throws InterruptedException {
+          resourcePool.reserve(resource2);
+        }
+      }.getException().getClass());
+
+    reservation.free();
+    final ResourcePool.Reservation reservation2 =
+      resourcePool.reserve(resource2);
+    assertSame(resource2, reservation2.getResource());
+
+    reservation2.close();
+    assertNull(resourcePool.reserve(resource2));
+  }
+
   @Test public void testReserveAllMultiThreaded() throws Exception {
     final ResourcePool resourcePool = new ResourcePoolImplementation();
 
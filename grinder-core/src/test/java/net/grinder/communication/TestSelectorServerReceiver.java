@@ -0,0 +1,444 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.grinder.common.TimeAuthority;
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.communication.ResourcePool.Reservation;
+import net.grinder.testutility.IsolatedObjectFactory;
+import net.grinder.util.StandardTimeAuthority;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ *  Unit tests for {@code SelectorServerReceiver}.
+ *
+ * @author Philip Aston
+ */
+public class TestSelectorServerReceiver {
+
+  private final TimeAuthority m_timeAuthority = new StandardTimeAuthority();
+
+  private MessageCodec m_codec;
+  private Acceptor m_acceptor;
+  private SelectorServerReceiver m_serverReceiver;
+
+  @Before public void setUp() throws Exception {
+    m_codec = MessageCodecs.forName(MessageCodecs.DEFAULT_NAME);
+    m_acceptor = new Acceptor("localhost", 0, 1, m_timeAuthority, true);
+    m_serverReceiver = new SelectorServerReceiver(m_timeAuthority);
+  }
+
+  @After public void tearDown() throws Exception {
+    m_serverReceiver.shutdown();
+    m_acceptor.shutdown();
+  }
+
+  private Socket connect() throws Exception {
+    return new Connector(InetAddress.getByName(null).getHostName(),
+                         m_acceptor.getPort(),
+                         ConnectionType.AGENT)
+      .connect();
+  }
+
+  private void awaitConnections(int n) throws Exception {
+    // Sleep until the expected number of connections have been accepted or
+    // closed. Connections are closed asynchronously. Give up after a few
+    // seconds.
+    final ResourcePool socketSet =
+      m_acceptor.getSocketSet(ConnectionType.AGENT);
+
+    for (int i = 0; socketSet.countActive() != n && i < 500; ++i) {
+      Thread.sleep(10);
+    }
+  }
+
+  private void assertNoMessage() throws Exception {
+    assertEquals(
+      UncheckedInterruptedException.class,
+      new BlockingActionThread() {
+        @Override
+        protected void blockingAction() throws CommunicationException {
+          m_serverReceiver.waitForMessage();
+        }
+      }.getException().getClass());
+  }
+
+  @Test public void testConstructor() throws Exception {
+
+    // No op.
+    m_serverReceiver.receiveFrom(m_acceptor, new ConnectionType[0], 1, 2, 3);
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 2, 10, 1000);
+
+    final Acceptor blockingAcceptor =
+      new Acceptor("localhost", 0, 1, m_timeAuthority);
+
+    try {
+      m_serverReceiver.receiveFrom(
+        blockingAcceptor,
+        new ConnectionType[] { ConnectionType.AGENT },
+        1,
+        10,
+        1000);
+      fail("Expected CommunicationException");
+    }
+    catch (CommunicationException e) {
+    }
+    finally {
+      blockingAcceptor.shutdown();
+    }
+  }
+
+  @Test public void testWaitForMessage() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 2, 10, 10000);
+
+    final Socket[] sockets = new Socket[20];
+
+    for (int i = 0; i < sockets.length; ++i) {
+      sockets[i] = connect();
+    }
+
+    final Set<Message> sent = new HashSet<Message>();
+
+    for (int i = 0; i < sockets.length * 3; ++i) {
+      final SimpleMessage message = new SimpleMessage();
+      sent.add(message);
+      m_codec.writeMessage(message,
+                           sockets[i % sockets.length].getOutputStream());
+    }
+
+    final Set<Message> received = new HashSet<Message>();
+
+    for (int i = 0; i < sent.size(); ++i) {
+      received.add(m_serverReceiver.waitForMessage());
+    }
+
+    assertEquals(sent, received);
+
+    assertNoMessage();
+  }
+
+  @Test public void testConnectionsAcceptedBeforeRegistration()
+    throws Exception {
+
+    final Socket socket = connect();
+    awaitConnections(1);
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final SimpleMessage message = new SimpleMessage();
+    m_codec.writeMessage(message, socket.getOutputStream());
+
+    assertEquals(message, m_serverReceiver.waitForMessage());
+  }
+
+  @Test public void testFragmentedAndLargeMessages() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final Socket socket = connect();
+
+    final SimpleMessage small = new SimpleMessage();
+    final SimpleMessage large = new SimpleMessage(50000);
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    m_codec.writeMessage(small, bytes);
+    m_codec.writeMessage(large, bytes);
+    m_codec.writeMessage(small, bytes);
+
+    final byte[] data = bytes.toByteArray();
+    final OutputStream out = socket.getOutputStream();
+
+    // Dribble the first few bytes, then send the rest in one go.
+    for (int i = 0; i < 10; ++i) {
+      out.write(data[i]);
+      out.flush();
+      Thread.sleep(5);
+    }
+
+    out.write(data, 10, data.length - 10);
+    out.flush();
+
+    assertEquals(small, m_serverReceiver.waitForMessage());
+    assertEquals(large, m_serverReceiver.waitForMessage());
+    assertEquals(small, m_serverReceiver.waitForMessage());
+  }
+
+  @Test public void testMessagesLargerThanOneSelection() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final Socket socket = connect();
+
+    final SimpleMessage large = new SimpleMessage(100000);
+    final SimpleMessage small = new SimpleMessage();
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    m_codec.writeMessage(large, bytes);
+    m_codec.writeMessage(small, bytes);
+    m_codec.writeMessage(large, bytes);
+
+    socket.getOutputStream().write(bytes.toByteArray());
+    socket.getOutputStream().flush();
+
+    assertEquals(large, m_serverReceiver.waitForMessage());
+    assertEquals(small, m_serverReceiver.waitForMessage());
+    assertEquals(large, m_serverReceiver.waitForMessage());
+  }
+
+  @Test public void testSerialisedMessages() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final Socket socket = connect();
+
+    // The serialisation codec can't tell us how long a message is.
+    final MessageCodec serialisationCodec = new SerialisationCodec();
+    final SimpleMessage large = new SimpleMessage(50000);
+    serialisationCodec.writeMessage(large, socket.getOutputStream());
+    serialisationCodec.writeMessage(large, socket.getOutputStream());
+
+    assertEquals(large, m_serverReceiver.waitForMessage());
+    assertEquals(large, m_serverReceiver.waitForMessage());
+  }
+
+  @Test public void testWaitForBadMessage() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final Socket socket = connect();
+
+    // Message that we can't read using the standard class loaders.
+    final SimpleMessage message = new SimpleMessage();
+    message.setPayload(IsolatedObjectFactory.getIsolatedObject());
+
+    m_codec.writeMessage(message, socket.getOutputStream());
+
+    try {
+      m_serverReceiver.waitForMessage();
+      fail("Expected CommunicationException");
+    }
+    catch (CommunicationException e) {
+    }
+
+    awaitConnections(0);
+    assertEquals(
+      0, m_acceptor.getSocketSet(ConnectionType.AGENT).countActive());
+  }
+
+  @Test public void testOverlongFrame() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final Socket socket = connect();
+
+    // A frame header that claims a payload of nearly 2GB.
+    socket.getOutputStream().write(new byte[] { 0, 0x7f, -1, -1, -1 });
+    socket.getOutputStream().flush();
+
+    try {
+      m_serverReceiver.waitForMessage();
+      fail("Expected CommunicationException");
+    }
+    catch (CommunicationException e) {
+    }
+
+    awaitConnections(0);
+    assertEquals(
+      0, m_acceptor.getSocketSet(ConnectionType.AGENT).countActive());
+  }
+
+  @Test public void testCloseCommunicationMessage() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final Socket socket = connect();
+    awaitConnections(1);
+
+    m_codec.writeMessage(new CloseCommunicationMessage(),
+                         socket.getOutputStream());
+
+    // Only closes the individual connection.
+    assertNoMessage();
+
+    awaitConnections(0);
+    assertEquals(
+      0, m_acceptor.getSocketSet(ConnectionType.AGENT).countActive());
+  }
+
+  @Test(timeout = 20000)
+  public void testPeerThatStopsReading() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final Socket stalled = connect();
+
+    m_codec.writeMessage(new MessageRequiringResponse(new SimpleMessage()),
+                         stalled.getOutputStream());
+
+    final MessageRequiringResponse received =
+      (MessageRequiringResponse)m_serverReceiver.waitForMessage();
+
+    // The peer never reads the response, so this blocks.
+    final Thread responder = new Thread() {
+        @Override public void run() {
+          try {
+            received.sendResponse(new SimpleMessage(5000000));
+          }
+          catch (CommunicationException e) {
+            // Expected when the write times out or the socket is closed.
+          }
+        }
+      };
+
+    responder.setDaemon(true);
+    responder.start();
+
+    // Wait until the responder holds the stream.
+    while (!isWritingMessage(responder)) {
+      Thread.sleep(10);
+    }
+
+    // Closing the stalled connection must not hold up other connections
+    // that share the selector.
+    m_codec.writeMessage(new CloseCommunicationMessage(),
+                         stalled.getOutputStream());
+
+    final Socket socket = connect();
+    final SimpleMessage message = new SimpleMessage();
+    m_codec.writeMessage(message, socket.getOutputStream());
+
+    assertEquals(message, m_serverReceiver.waitForMessage());
+  }
+
+  private static boolean isWritingMessage(Thread thread) {
+    for (StackTraceElement frame : thread.getStackTrace()) {
+      if (frame.getClassName().equals(StreamSender.class.getName()) &&
+          frame.getMethodName().equals("writeMessage")) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  @Test public void testInactiveClient() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 50);
+
+    connect();
+    awaitConnections(1);
+
+    awaitConnections(0);
+    assertEquals(
+      0, m_acceptor.getSocketSet(ConnectionType.AGENT).countActive());
+  }
+
+  @Test public void testWithResponseSender() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    final Socket socket = connect();
+
+    final SimpleMessage message = new SimpleMessage();
+    m_codec.writeMessage(new MessageRequiringResponse(message),
+                         socket.getOutputStream());
+
+    final Message received = m_serverReceiver.waitForMessage();
+    assertTrue(received instanceof MessageRequiringResponse);
+
+    final MessageRequiringResponse receivedResponseSender =
+      (MessageRequiringResponse)received;
+    assertEquals(message, receivedResponseSender.getMessage());
+
+    // The socket is reserved until we respond.
+    final ResourcePool socketSet =
+      m_acceptor.getSocketSet(ConnectionType.AGENT);
+
+    assertEquals(
+      UncheckedInterruptedException.class,
+      new BlockingActionThread() {
+        @Override
+        protected void blockingAction() {
+          socketSet.reserveAll();
+        }
+      }.getException().getClass());
+
+    final SimpleMessage responseMessage = new SimpleMessage(10000);
+    receivedResponseSender.sendResponse(responseMessage);
+
+    final List<? extends Reservation> reservations = socketSet.reserveAll();
+    assertEquals(1, reservations.size());
+    reservations.get(0).free();
+
+    assertEquals(responseMessage,
+                 m_codec.readMessage(socket.getInputStream()));
+  }
+
+  @Test public void testShutdown() throws Exception {
+
+    m_serverReceiver.receiveFrom(
+      m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10000);
+
+    m_serverReceiver.shutdown();
+
+    try {
+      m_serverReceiver.receiveFrom(
+        m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 1, 10, 10);
+      fail("Expected a CommunicationException");
+    }
+    catch (CommunicationException e) {
+    }
+
+    assertNull(m_serverReceiver.waitForMessage());
+  }
+}
@@ -333,7 +333,9 @@ public class TestServerReceiver {
     receivedResponseSender.sendResponse(responseMessage);
 
     // Which the end client can get hold of.
-    final StreamReceiver receiver = new StreamReceiver(socket.getInputStream());
+    final StreamReceiver receiver =
+      new StreamReceiver(socket.getInputStream(),
+                         MessageCodecs.forName(MessageCodecs.DEFAULT_NAME));
     final Message clientMessage = receiver.waitForMessage();
     assertEquals(responseMessage, clientMessage);
 
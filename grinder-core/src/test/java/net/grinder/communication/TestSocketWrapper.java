@@ -57,6 +57,6 @@ public class TestSocketWrapper {
   @Test(expected=CommunicationException.class)
   public void testConstructionWithBadSocket() throws Exception {
     m_socket.close();
-    new SocketWrapper(m_socket);
+    new SocketWrapper(m_socket, new SerialisationCodec());
   }
 }
@@ -35,6 +35,7 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Timer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -55,6 +56,7 @@ import net.grinder.console.model.ConsoleProperties;
 import net.grinder.console.model.SampleModel;
 import net.grinder.console.model.SampleModelViews;
 import net.grinder.messages.console.RegisterExpressionViewMessage;
+import net.grinder.messages.console.RegisterTestParentsMessage;
 import net.grinder.messages.console.RegisterTestsMessage;
 import net.grinder.messages.console.ReportStatisticsMessage;
 import net.grinder.statistics.ExpressionView;
@@ -228,6 +230,15 @@ public class TestConsoleFoundation extends AbstractJUnit4FileTestCase {
 
     verify(sampleModel).registerTests(tests);
 
+    verify(m_messageDispatchRegistry).set(
+      eq(RegisterTestParentsMessage.class), m_handlerCaptor.capture());
+
+    final Map<net.grinder.common.Test, net.grinder.common.Test> parents =
+      Collections.emptyMap();
+    m_handlerCaptor.getValue().handle(new RegisterTestParentsMessage(parents));
+
+    verify(sampleModel).registerTestParents(parents);
+
     verify(m_messageDispatchRegistry).set(eq(ReportStatisticsMessage.class),
                                           m_handlerCaptor.capture());
 
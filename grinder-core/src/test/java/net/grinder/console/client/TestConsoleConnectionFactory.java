@@ -37,6 +37,8 @@ import java.util.concurrent.TimeUnit;
 import net.grinder.communication.CommunicationException;
 import net.grinder.communication.ConnectionType;
 import net.grinder.communication.KeepAliveMessage;
+import net.grinder.communication.MessageCodec;
+import net.grinder.communication.MessageCodecs;
 import net.grinder.communication.SocketAcceptorThread;
 
 import org.junit.Before;
@@ -124,16 +126,16 @@ public class TestConsoleConnectionFactory {
 
     assertEquals(ConnectionType.CONSOLE_CLIENT, objectInputStream.readObject());
     assertNull(objectInputStream.readObject());
+
+    final MessageCodec codec =
+      MessageCodecs.forName(objectInputStream.readUTF());
     assertEquals(0, socketInput.available());
 
     final Runnable keepAlive = m_runnableCaptor.getValue();
 
     keepAlive.run();
 
-    final ObjectInputStream objectInputStream2 =
-        new ObjectInputStream(socketInput);
-
-    assertTrue(objectInputStream2.readObject() instanceof KeepAliveMessage);
+    assertTrue(codec.readMessage(socketInput) instanceof KeepAliveMessage);
 
     socketAcceptor.getAcceptedSocket().close();
 
@@ -51,7 +51,7 @@ public class TestProcessReportDescriptionFactory {
   @Before public void setUp() {
     initMocks(this);
 
-    when(m_translations.translate("console.state/worker-threads", (short)10, (short)21))
+    when(m_translations.translate("console.state/worker-threads", 10, 21))
       .thenReturn("(10 out of 21 strings)");
 
     when(m_translations.translate("console.term/agent"))
@@ -172,9 +172,9 @@ public class TestProcessReportDescriptionFactory {
     workerProcessReportStubFactory.setResult(
       "getState", ProcessReport.State.RUNNING);
     workerProcessReportStubFactory.setResult(
-      "getNumberOfRunningThreads", new Short((short) 10));
+      "getNumberOfRunningThreads", new Integer(10));
     workerProcessReportStubFactory.setResult(
-      "getMaximumNumberOfThreads", new Short((short) 21));
+      "getMaximumNumberOfThreads", new Integer(21));
 
     final ProcessDescription description2 =
       processReportDescriptionFactory.create(workerProcessReport);
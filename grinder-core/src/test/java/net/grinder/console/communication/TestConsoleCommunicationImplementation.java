@@ -35,7 +35,6 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.File;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
@@ -54,6 +53,7 @@ import net.grinder.communication.Address;
 import net.grinder.communication.CommunicationException;
 import net.grinder.communication.ConnectionType;
 import net.grinder.communication.Message;
+import net.grinder.communication.MessageCodecs;
 import net.grinder.communication.MessageDispatchRegistry.Handler;
 import net.grinder.communication.SendToEveryoneAddress;
 import net.grinder.communication.StreamSender;
@@ -73,6 +73,7 @@ import net.grinder.messages.agent.StopGrinderMessage;
 import net.grinder.messages.agent.StubCacheHighWaterMark;
 import net.grinder.messages.console.AgentAddress;
 import net.grinder.messages.console.AgentProcessReportMessage;
+import net.grinder.messages.console.RelayedReportsMessage;
 import net.grinder.messages.console.WorkerAddress;
 import net.grinder.messages.console.WorkerProcessReportMessage;
 import net.grinder.testutility.AbstractJUnit4FileTestCase;
@@ -193,10 +194,8 @@ public class TestConsoleCommunicationImplementation
   }
 
   private Message readMessage(final Socket socket) throws Exception {
-    final ObjectInputStream objectStream =
-      new ObjectInputStream(socket.getInputStream());
-
-    return (Message)objectStream.readObject();
+    return MessageCodecs.forName(MessageCodecs.DEFAULT_NAME)
+      .readMessage(socket.getInputStream());
   }
 
   private void sendMessage(final Socket socket, final Message message)
@@ -464,6 +463,44 @@ public class TestConsoleCommunicationImplementation
     verifyNoMoreInteractions(m_messageHandler);
   }
 
+  @Test public void testRelayedReports() throws Exception {
+    m_consoleCommunication.getMessageDispatchRegistry()
+      .addFallback(m_messageHandler);
+
+    m_processMessagesThread.start();
+
+    final ProcessControl processControl =
+      new ProcessControlImplementation(m_timer,
+                                       m_consoleCommunication,
+                                       m_translations);
+
+    final StubAgentIdentity agentIdentity = new StubAgentIdentity("agent");
+
+    final Socket agentSocket =
+      new StubConnector(InetAddress.getByName(null).getHostName(),
+                        m_properties.getConsolePort(),
+                        ConnectionType.AGENT)
+      .connect(new AgentAddress(agentIdentity));
+
+    sendMessage(agentSocket,
+                new AgentProcessReportMessage(State.STARTED, null));
+
+    final RelayedReportsMessage relayed = new RelayedReportsMessage();
+    relayed.add(new WorkerAddress(agentIdentity.createWorkerIdentity()),
+                new WorkerProcessReportMessage(State.STARTED,
+                                               (short)0,
+                                               (short)0));
+    relayed.add(null, new MyMessage());
+
+    sendMessage(agentSocket, relayed);
+
+    verify(m_messageHandler, timeout(10000)).handle(isA(MyMessage.class));
+
+    assertEquals(1, processControl.getNumberOfLiveAgents());
+
+    verifyNoMoreInteractions(m_messageHandler, m_errorHandler);
+  }
+
   @Test public void testSendExceptions() throws Exception {
     // Need a thread to be attempting to process messages or
     // ConsoleCommunicationImplementation.reset() will not complete.
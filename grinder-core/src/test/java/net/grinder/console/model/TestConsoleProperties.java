@@ -600,6 +600,23 @@ public class TestConsoleProperties extends AbstractJUnit4FileTestCase {
     }.doTest();
   }
 
+  @Test public void testSampleStoreDirectory() throws Exception {
+
+    new TestFileTemplate(
+      ConsoleProperties.SAMPLE_STORE_DIRECTORY_PROPERTY) {
+
+      @Override
+      protected File get(final ConsoleProperties properties) {
+        return properties.getSampleStoreDirectory();
+      }
+
+      @Override
+      protected void set(final ConsoleProperties properties, final File file) {
+        properties.setSampleStoreDirectory(file);
+      }
+    }.doTest();
+  }
+
   @Test public void testExternalEditorArguments() throws Exception {
 
     new TestStringTemplate(
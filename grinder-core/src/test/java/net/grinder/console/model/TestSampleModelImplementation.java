@@ -22,6 +22,7 @@
 
 package net.grinder.console.model;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.sort;
 import static net.grinder.console.model.SampleModel.State.Value.IgnoringInitialSamples;
@@ -35,17 +36,22 @@ import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimerTask;
 
@@ -54,6 +60,7 @@ import net.grinder.console.common.ErrorHandler;
 import net.grinder.console.model.SampleModel.AbstractListener;
 import net.grinder.console.model.SampleModel.Listener;
 import net.grinder.console.model.SampleModel.State;
+import net.grinder.statistics.SparseTestStatistics;
 import net.grinder.statistics.StatisticExpression;
 import net.grinder.statistics.StatisticsIndexMap.LongIndex;
 import net.grinder.statistics.StatisticsServices;
@@ -257,6 +264,58 @@ public class TestSampleModelImplementation extends AbstractJUnit4FileTestCase {
     verifyNoMoreInteractions(m_listener);
   }
 
+  @Test
+  public void testRegisterTestParents() throws Exception {
+
+    m_sampleModelImplementation.addModelListener(m_listener);
+
+    final Map<net.grinder.common.Test, net.grinder.common.Test> parents =
+      new HashMap<net.grinder.common.Test, net.grinder.common.Test>();
+    parents.put(m_test1, m_test3);
+
+    // No tests yet, so no notification.
+    m_sampleModelImplementation.registerTestParents(parents);
+    verifyNoMoreInteractions(m_listener);
+
+    m_sampleModelImplementation.registerTests(
+      asSet(m_test1, m_test2, m_test3));
+
+    verify(m_listener).newTests(m_testSetCaptor.capture(),
+                                m_modelTestIndexCaptor.capture());
+
+    final ModelTestIndex modelIndex = m_modelTestIndexCaptor.getValue();
+    assertEquals(m_test2, modelIndex.getTest(0));
+    assertEquals(m_test3, modelIndex.getTest(1));
+    assertEquals(m_test1, modelIndex.getTest(2));
+    assertEquals(0, modelIndex.getDepth(1));
+    assertEquals(1, modelIndex.getDepth(2));
+
+    reset(m_listener);
+
+    parents.put(m_test3, m_test2);
+    m_sampleModelImplementation.registerTestParents(parents);
+
+    verify(m_listener).newTests(m_testSetCaptor.capture(),
+                                m_modelTestIndexCaptor.capture());
+
+    assertEquals(0, m_testSetCaptor.getValue().size());
+
+    final ModelTestIndex modelIndex2 = m_modelTestIndexCaptor.getValue();
+    assertEquals(3, modelIndex2.getNumberOfTests());
+
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(i, modelIndex2.getDepth(i));
+    }
+
+    assertEquals(m_test1, modelIndex2.getTest(2));
+    assertSame(modelIndex.getCumulativeStatistics(2),
+               modelIndex2.getCumulativeStatistics(2));
+
+    // Unchanged.
+    m_sampleModelImplementation.registerTestParents(parents);
+    verifyNoMoreInteractions(m_listener);
+  }
+
   @Test
   public void testWaitingToStopped() throws Exception {
 
@@ -430,6 +489,41 @@ public class TestSampleModelImplementation extends AbstractJUnit4FileTestCase {
     verifyNoMoreInteractions(sampleListener, m_totalSampleListener);
   }
 
+  @Test
+  public void testSparseTestReport() throws Exception {
+
+    final SampleListener sampleListener = mock(SampleListener.class);
+
+    final TestStatisticsMap testReports = new TestStatisticsMap();
+    final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+    final LongIndex userLong0 =
+        m_statisticsServices.getStatisticsIndexMap().getLongIndex("userLong0");
+    statistics.setValue(userLong0, 42);
+    testReports.put(m_test2, statistics);
+    testReports.put(m_test4, statistics);
+
+    m_sampleModelImplementation.registerTests(asSet(m_test2, m_test4));
+    m_sampleModelImplementation.addSampleListener(m_test2, sampleListener);
+    m_sampleModelImplementation.addTestReport(
+      new SparseTestStatistics(testReports));
+    m_sampleModelImplementation.addTestReport(
+      new SparseTestStatistics(testReports));
+
+    m_timer.getLastScheduledTimerTask().run();
+
+    verify(sampleListener, times(2)).update(m_statisicsSetCaptor1.capture(),
+      m_statisicsSetCaptor2.capture());
+
+    assertEquals(84, m_statisicsSetCaptor1.getValue().getValue(userLong0));
+
+    verify(m_totalSampleListener, times(2)).update(
+      m_statisicsSetCaptor1.capture(),
+      m_statisicsSetCaptor2.capture());
+
+    assertEquals(168, m_statisicsSetCaptor1.getValue().getValue(userLong0));
+  }
+
   @Test
   public void testSampleListeners() throws Exception {
 
@@ -520,6 +614,116 @@ public class TestSampleModelImplementation extends AbstractJUnit4FileTestCase {
     assertEquals(0, m_statisicsSetCaptor2.getValue().getValue(userLong0));
   }
 
+  @Test
+  public void testSampleStore() throws Exception {
+    assertNull(m_sampleModelImplementation.getSampleStore());
+
+    m_consoleProperties.setSampleStoreDirectory(
+      new File(getDirectory(), "store"));
+
+    final SampleModelImplementation sampleModel =
+        new SampleModelImplementation(m_consoleProperties,
+          m_statisticsServices,
+          m_timer,
+          m_translations,
+          m_errorHandler);
+
+    final SampleStore sampleStore = sampleModel.getSampleStore();
+    assertNotNull(sampleStore);
+
+    final TestStatisticsMap testReports = new TestStatisticsMap();
+    final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+    final LongIndex userLong0 =
+        m_statisticsServices.getStatisticsIndexMap().getLongIndex("userLong0");
+    statistics.setValue(userLong0, 99);
+    testReports.put(m_test2, statistics);
+
+    sampleModel.registerTests(asSet(m_test2, m_test4));
+    sampleModel.addTestReport(testReports);
+
+    final TimerTask capturingTask = m_timer.getLastScheduledTimerTask();
+    capturingTask.run();
+    capturingTask.run();
+
+    assertEquals(2, sampleStore.getNextInterval());
+
+    final List<String> records = new ArrayList<String>();
+
+    sampleStore.read(0, 0, Long.MAX_VALUE, new SampleStore.Visitor() {
+        @Override
+        public boolean next(final long interval,
+                            final long time,
+                            final int test,
+                            final StatisticsSet s) {
+          records.add(interval + ":" + test + ":" + s.getValue(userLong0));
+          return true;
+        }
+      });
+
+    // Test 4 had no statistics, and test 2 had none in the second interval.
+    assertEquals(asList("0:" + SampleStore.TOTALS + ":99",
+                        "0:2:99",
+                        "1:" + SampleStore.TOTALS + ":0"),
+                 records);
+
+    sampleModel.shutdown();
+    assertNull(sampleModel.getSampleStore());
+
+    // The incomplete rollup was written when the store was closed.
+    assertTrue(new File(getDirectory(), "store/level1/interval").length() > 0);
+
+    sampleModel.stop();
+    verifyNoMoreInteractions(m_errorHandler);
+  }
+
+  @Test
+  public void testSampleStoreAppendFailure() throws Exception {
+    m_consoleProperties.setSampleStoreDirectory(
+      new File(getDirectory(), "store"));
+
+    final SampleModelImplementation sampleModel =
+        new SampleModelImplementation(m_consoleProperties,
+          m_statisticsServices,
+          m_timer,
+          m_translations,
+          m_errorHandler);
+
+    // Appending to a closed store fails.
+    sampleModel.getSampleStore().close();
+
+    sampleModel.registerTests(asSet(m_test2));
+    sampleModel.addTestReport(new TestStatisticsMap());
+
+    m_timer.getLastScheduledTimerTask().run();
+
+    verify(m_errorHandler).handleException(isA(IOException.class));
+    assertNull(sampleModel.getSampleStore());
+
+    m_timer.getLastScheduledTimerTask().run();
+    sampleModel.shutdown();
+    sampleModel.stop();
+
+    verifyNoMoreInteractions(m_errorHandler);
+  }
+
+  @Test
+  public void testSampleStoreFailure() throws Exception {
+    final File file = new File(getDirectory(), "file");
+    assertTrue(file.createNewFile());
+    m_consoleProperties.setSampleStoreDirectory(file);
+
+    final SampleModelImplementation sampleModel =
+        new SampleModelImplementation(m_consoleProperties,
+          m_statisticsServices,
+          m_timer,
+          m_translations,
+          m_errorHandler);
+
+    assertNull(sampleModel.getSampleStore());
+    verify(m_errorHandler).handleException(isA(IOException.class));
+  }
+
   @Test
   public void testAbstractListener() {
     // An exercise in coverage.
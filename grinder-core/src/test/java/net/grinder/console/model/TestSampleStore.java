@@ -0,0 +1,281 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.console.model;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.testutility.AbstractJUnit4FileTestCase;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link SampleStore}.
+ *
+ * @author Philip Aston
+ */
+public class TestSampleStore extends AbstractJUnit4FileTestCase {
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+  private final StatisticsIndexMap.LongIndex m_periodIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("period");
+
+  private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex =
+    m_statisticsServices.getStatisticsIndexMap()
+    .getLongSampleIndex("timedTests");
+
+  private Map<Integer, StatisticsSet> sample(final int... testsAndErrors) {
+    final Map<Integer, StatisticsSet> result =
+      new TreeMap<Integer, StatisticsSet>();
+
+    for (int i = 0; i < testsAndErrors.length; i += 2) {
+      final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+      statistics.setValue(m_errorsIndex, testsAndErrors[i + 1]);
+      statistics.addSample(m_timedTestsIndex, 100);
+      result.put(testsAndErrors[i], statistics);
+    }
+
+    return result;
+  }
+
+  private List<String> read(final SampleStore store,
+                            final int level,
+                            final long from,
+                            final long to) throws IOException {
+    final List<String> result = new ArrayList<String>();
+
+    store.read(level, from, to, new SampleStore.Visitor() {
+        @Override
+        public boolean next(final long interval,
+                            final long time,
+                            final int test,
+                            final StatisticsSet statistics) {
+          result.add(interval + "," + time + "," + test + "," +
+                     statistics.getValue(m_errorsIndex) + "," +
+                     statistics.getCount(m_timedTestsIndex) + "," +
+                     statistics.getValue(m_periodIndex));
+          return true;
+        }
+      });
+
+    return result;
+  }
+
+  @Test public void testAppendAndRead() throws Exception {
+    final SampleStore store =
+      new SampleStore(getDirectory(), m_statisticsServices);
+
+    assertEquals(0, store.getNextInterval());
+    assertEquals(1, store.getIntervalsPerRecord(0));
+    assertEquals(SampleStore.ROLLUP_FACTOR, store.getIntervalsPerRecord(1));
+
+    assertEquals(0, store.append(1000, 10, sample(1, 0, 2, 5)));
+    assertEquals(1, store.append(1010, 10, sample(SampleStore.TOTALS, 7)));
+    assertEquals(2, store.append(1020, 10, sample()));
+    assertEquals(3, store.append(1030, 10, sample(2, 1)));
+
+    assertEquals(4, store.getNextInterval());
+    assertEquals(4, store.getNumberOfRecords(0));
+    assertEquals(0, store.getNumberOfRecords(1));
+
+    assertEquals(asList("0,1000,1,0,1,10",
+                        "0,1000,2,5,1,10",
+                        "1,1010," + SampleStore.TOTALS + ",7,1,10",
+                        "3,1030,2,1,1,10"),
+                 read(store, 0, 0, Long.MAX_VALUE));
+
+    assertEquals(asList("1,1010," + SampleStore.TOTALS + ",7,1,10"),
+                 read(store, 0, 1, 3));
+
+    assertEquals(asList(), read(store, 0, 4, 10));
+    assertEquals(asList(), read(store, 0, 2, 1));
+
+    final List<Long> intervals = new ArrayList<Long>();
+
+    store.read(0, 0, Long.MAX_VALUE, new SampleStore.Visitor() {
+        @Override
+        public boolean next(final long interval,
+                            final long time,
+                            final int test,
+                            final StatisticsSet statistics) {
+          intervals.add(interval);
+          return intervals.size() < 2;
+        }
+      });
+
+    assertEquals(asList(0L, 0L), intervals);
+
+    store.close();
+  }
+
+  @Test public void testRollups() throws Exception {
+    final SampleStore store =
+      new SampleStore(getDirectory(), m_statisticsServices);
+
+    final int n = SampleStore.ROLLUP_FACTOR * 2 + 1;
+
+    for (int i = 0; i < n; ++i) {
+      store.append(i * 10, 10, i % 2 == 0 ? sample(1, 1, 2, 0) : sample(1, 0));
+    }
+
+    assertEquals(n + SampleStore.ROLLUP_FACTOR + 1,
+                 store.getNumberOfRecords(0));
+
+    final int half = SampleStore.ROLLUP_FACTOR / 2;
+    final long period = SampleStore.ROLLUP_FACTOR * 10;
+
+    // The final rollup period is incomplete, so hasn't been written.
+    assertEquals(
+      asList("0,0,1," + half + "," + SampleStore.ROLLUP_FACTOR + "," + period,
+             "0,0,2,0," + half + "," + period,
+             SampleStore.ROLLUP_FACTOR + "," + period + ",1," + half + "," +
+               SampleStore.ROLLUP_FACTOR + "," + period,
+             SampleStore.ROLLUP_FACTOR + "," + period + ",2,0," + half + "," +
+               period),
+      read(store, 1, 0, Long.MAX_VALUE));
+
+    assertEquals(asList(), read(store, 2, 0, Long.MAX_VALUE));
+
+    store.close();
+  }
+
+  @Test public void testReopen() throws Exception {
+    final SampleStore store =
+      new SampleStore(getDirectory(), m_statisticsServices);
+
+    store.append(1000, 10, sample(1, 0));
+    store.append(1010, 10, sample(1, 1, 2, 2));
+    store.close();
+
+    // Simulate a partially written record.
+    final FileOutputStream out =
+      new FileOutputStream(new File(getDirectory(), "level0/interval"), true);
+    out.write(new byte[8]);
+    out.close();
+
+    final SampleStore store2 =
+      new SampleStore(getDirectory(), m_statisticsServices);
+
+    assertEquals(2, store2.getNextInterval());
+    assertEquals(3, store2.getNumberOfRecords(0));
+
+    store2.append(1020, 10, sample(1, 3));
+
+    assertEquals(asList("1,1010,1,1,1,10",
+                        "1,1010,2,2,1,10",
+                        "2,1020,1,3,1,10"),
+                 read(store2, 0, 1, 3));
+
+    store2.close();
+  }
+
+  @Test public void testReopenWithIncompleteRollup() throws Exception {
+    final SampleStore store =
+      new SampleStore(getDirectory(), m_statisticsServices);
+
+    final int half = SampleStore.ROLLUP_FACTOR / 2;
+
+    for (int i = 0; i < half; ++i) {
+      store.append(i * 10, 10, sample(1, 1));
+    }
+
+    assertEquals(0, store.getNumberOfRecords(1));
+
+    // Closing the store writes the incomplete rollup.
+    store.close();
+
+    final SampleStore store2 =
+      new SampleStore(getDirectory(), m_statisticsServices);
+
+    // The incomplete rollup is restored, and completed by later intervals.
+    assertEquals(0, store2.getNumberOfRecords(1));
+
+    for (int i = half; i <= SampleStore.ROLLUP_FACTOR; ++i) {
+      store2.append(i * 10, 10, sample(1, 1, 2, 2));
+    }
+
+    final long period = SampleStore.ROLLUP_FACTOR * 10;
+
+    assertEquals(
+      asList("0,0,1," + SampleStore.ROLLUP_FACTOR + "," +
+               SampleStore.ROLLUP_FACTOR + "," + period,
+             "0,0,2," + 2 * (SampleStore.ROLLUP_FACTOR - half) + "," +
+               (SampleStore.ROLLUP_FACTOR - half) + "," + period),
+      read(store2, 1, 0, Long.MAX_VALUE));
+
+    store2.close();
+
+    final SampleStore store3 =
+      new SampleStore(getDirectory(), m_statisticsServices);
+
+    // The complete rollup is kept.
+    assertEquals(2, store3.getNumberOfRecords(1));
+    store3.close();
+  }
+
+  @Test public void testIncompatibleStore() throws Exception {
+    final FileOutputStream out =
+      new FileOutputStream(new File(getDirectory(), "schema"));
+    out.write(new byte[100]);
+    out.close();
+
+    try {
+      new SampleStore(getDirectory(), m_statisticsServices);
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+  }
+
+  @Test public void testBadDirectory() throws Exception {
+    final File file = new File(getDirectory(), "file");
+    assertTrue(file.createNewFile());
+
+    try {
+      new SampleStore(file, m_statisticsServices);
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+  }
+}
@@ -0,0 +1,84 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticExpressionFactory;
+import net.grinder.statistics.StatisticsServicesImplementation;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link BinaryDataLogConverter}.
+ *
+ * @author Philip Aston
+ */
+public class TestBinaryDataLogConverter {
+
+  private static final String NL = System.getProperty("line.separator");
+
+  @Test public void testConvert() throws Exception {
+    final StatisticExpressionFactory factory =
+      StatisticsServicesImplementation.getInstance()
+      .getStatisticExpressionFactory();
+
+    final ExpressionView[] views = {
+      factory.createExpressionView("Test time", "(/ (sum timedTests) 1000)",
+                                   false),
+      factory.createExpressionView("Errors", "errors", false),
+    };
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final BinaryDataLogWriter writer = new BinaryDataLogWriter(out, views);
+
+    writer.write(
+      new long[] { 33, 10, 1, 123, Double.doubleToRawLongBits(99.123), 0 },
+      0);
+    writer.write(
+      new long[] { 33, 11, 3, 301, Double.doubleToRawLongBits(0), 1 },
+      0);
+    writer.close();
+
+    final StringWriter text = new StringWriter();
+
+    final long records =
+      new BinaryDataLogConverter(text).convert(
+        new BinaryDataLogReader(new ByteArrayInputStream(out.toByteArray())));
+
+    assertEquals(2, records);
+
+    // Matches the format of the text data log.
+    assertEquals(
+      "Thread, Run, Test, Start time (ms since Epoch), Test time, Errors" +
+      NL +
+      "33, 10, 1, 123, 99.123, 0" + NL +
+      "33, 11, 3, 301, 0.0, 1" + NL,
+      text.toString());
+  }
+}
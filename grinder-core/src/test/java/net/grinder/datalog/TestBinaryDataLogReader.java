@@ -0,0 +1,176 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticExpressionFactory;
+import net.grinder.statistics.StatisticsServicesImplementation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link BinaryDataLogReader} and
+ * {@link BinaryDataLogWriter}.
+ *
+ * @author Philip Aston
+ */
+public class TestBinaryDataLogReader {
+
+  private ExpressionView[] m_views;
+
+  @Before public void setUp() throws Exception {
+    final StatisticExpressionFactory factory =
+      StatisticsServicesImplementation.getInstance()
+      .getStatisticExpressionFactory();
+
+    m_views = new ExpressionView[] {
+      factory.createExpressionView("Errors", "errors", false),
+      factory.createExpressionView("Peak", "peakTPS", false),
+    };
+  }
+
+  @Test public void testRoundTrip() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    final BinaryDataLogWriter writer = new BinaryDataLogWriter(out, m_views);
+    assertEquals(6, writer.getRecordWidth());
+
+    final long[] values = new long[20];
+
+    Arrays.fill(values, 999);
+    values[10] = 3;
+    values[11] = 4;
+    values[12] = 5;
+    values[13] = 1234567890123L;
+    values[14] = -1;
+    values[15] = Double.doubleToRawLongBits(1.5);
+
+    writer.write(values, 10);
+    writer.write(values, 10);
+    writer.close();
+
+    final BinaryDataLogReader reader =
+      new BinaryDataLogReader(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(2, reader.getNumberOfColumns());
+    assertEquals("Errors", reader.getColumnName(0));
+    assertFalse(reader.isDouble(0));
+    assertEquals("Peak", reader.getColumnName(1));
+    assertTrue(reader.isDouble(1));
+
+    for (int i = 0; i < 2; ++i) {
+      assertTrue(reader.next());
+      assertEquals(3, reader.getThreadNumber());
+      assertEquals(4, reader.getRunNumber());
+      assertEquals(5, reader.getTestNumber());
+      assertEquals(1234567890123L, reader.getStartTime());
+      assertEquals(-1, reader.getLongValue(0));
+      assertEquals(1.5, reader.getDoubleValue(1), 0);
+    }
+
+    assertFalse(reader.next());
+    assertFalse(reader.next());
+
+    reader.close();
+  }
+
+  @Test public void testNoCurrentRecord() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new BinaryDataLogWriter(out, m_views).close();
+
+    final BinaryDataLogReader reader =
+      new BinaryDataLogReader(new ByteArrayInputStream(out.toByteArray()));
+
+    try {
+      reader.getThreadNumber();
+      fail("Expected IllegalStateException");
+    }
+    catch (IllegalStateException e) {
+    }
+
+    assertFalse(reader.next());
+
+    try {
+      reader.getLongValue(0);
+      fail("Expected IllegalStateException");
+    }
+    catch (IllegalStateException e) {
+    }
+  }
+
+  @Test public void testTruncatedRecord() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final BinaryDataLogWriter writer = new BinaryDataLogWriter(out, m_views);
+    writer.write(new long[6], 0);
+    writer.write(new long[6], 0);
+    writer.close();
+
+    final byte[] bytes = out.toByteArray();
+
+    final BinaryDataLogReader reader =
+      new BinaryDataLogReader(
+        new ByteArrayInputStream(bytes, 0, bytes.length - 3));
+
+    assertTrue(reader.next());
+    assertFalse(reader.next());
+  }
+
+  @Test public void testBadHeaders() throws Exception {
+    assertBadHeader(new byte[0]);
+    assertBadHeader("hello world".getBytes());
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final DataOutputStream dataOut = new DataOutputStream(out);
+    dataOut.writeInt(BinaryDataLogWriter.MAGIC);
+    dataOut.writeShort(BinaryDataLogWriter.VERSION + 1);
+    dataOut.writeInt(0);
+    assertBadHeader(out.toByteArray());
+
+    out.reset();
+    dataOut.writeInt(BinaryDataLogWriter.MAGIC);
+    dataOut.writeShort(BinaryDataLogWriter.VERSION);
+    dataOut.writeInt(-1);
+    assertBadHeader(out.toByteArray());
+  }
+
+  private static void assertBadHeader(byte[] bytes) {
+    try {
+      new BinaryDataLogReader(new ByteArrayInputStream(bytes));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+}
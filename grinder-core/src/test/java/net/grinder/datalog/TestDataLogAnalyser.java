@@ -0,0 +1,185 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsView;
+import net.grinder.testutility.AbstractJUnit4FileTestCase;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link DataLogAnalyser}.
+ *
+ * @author Philip Aston
+ */
+public class TestDataLogAnalyser extends AbstractJUnit4FileTestCase {
+
+  private static final String HEADER =
+    "Thread, Run, Test, Start time (ms since Epoch), Test time, Errors";
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  @Test public void testConstruction() throws Exception {
+    try {
+      new DataLogAnalyser(m_statisticsServices, 1000, 0, 100);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    try {
+      new DataLogAnalyser(m_statisticsServices, 1000, 1, 0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void testTextAndBinaryLogs() throws Exception {
+    final File textLog = new File(getDirectory(), "text-data.log");
+    final File binaryLog = new File(getDirectory(), "binary-data.bin");
+
+    final ExpressionView[] views =
+      m_statisticsServices.getDetailStatisticsView().getExpressionViews();
+
+    final Writer text = new FileWriter(textLog);
+    text.write(HEADER + "\n");
+
+    final BinaryDataLogWriter binary =
+      new BinaryDataLogWriter(new FileOutputStream(binaryLog), views);
+
+    final TimeBucketedStatistics expected =
+      new TimeBucketedStatistics(m_statisticsServices, 1000);
+
+    final Random random = new Random(99);
+
+    for (int i = 0; i < 2000; ++i) {
+      final int test = random.nextInt(5);
+      final long start = 100000 + i * 7;
+      final long micros = random.nextInt(100000);
+      final int errors = random.nextInt(10) == 0 ? 1 : 0;
+
+      text.write("0, " + i + ", " + test + ", " + start + ", " +
+                 micros / 1000d + ", " + errors + "\n");
+
+      binary.write(new long[] {
+          0, i, test, start, Double.doubleToRawLongBits(micros / 1000d),
+          errors },
+        0);
+
+      expected.add(test, start, micros, errors);
+      expected.add(test, start, micros, errors);
+    }
+
+    text.close();
+    binary.close();
+
+    final String expectedText = write(expected);
+
+    // Try chunk sizes that split the text log in many places.
+    for (int chunkSize : new int[] { 19, 1000, 1000000 }) {
+      final DataLogAnalyser analyser =
+        new DataLogAnalyser(m_statisticsServices, 1000, 3, chunkSize);
+
+      final TimeBucketedStatistics result =
+        analyser.analyse(Arrays.asList(textLog, binaryLog));
+
+      assertEquals(4000, result.getNumberOfRecords());
+      assertEquals(0, analyser.getMalformedLines());
+      assertEquals(expectedText, write(result));
+    }
+  }
+
+  @Test public void testEmptyAndBadLogs() throws Exception {
+    final File emptyLog = new File(getDirectory(), "empty-data.log");
+    emptyLog.createNewFile();
+
+    final File headerOnlyLog = new File(getDirectory(), "header-data.log");
+    final Writer headerOnly = new FileWriter(headerOnlyLog);
+    headerOnly.write(HEADER + "\n");
+    headerOnly.close();
+
+    final DataLogAnalyser analyser =
+      new DataLogAnalyser(m_statisticsServices, 1000, 2, 100);
+
+    assertEquals(0,
+      analyser.analyse(Arrays.asList(emptyLog, headerOnlyLog))
+      .getNumberOfRecords());
+
+    assertEquals(0,
+      analyser.analyse(Collections.<File>emptyList()).getNumberOfRecords());
+
+    final File badLog = new File(getDirectory(), "bad-data.log");
+    final Writer bad = new FileWriter(badLog);
+    bad.write("Not, a, data, log\n");
+    bad.close();
+
+    try {
+      analyser.analyse(Arrays.asList(badLog));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    try {
+      analyser.analyse(Arrays.asList(new File(getDirectory(), "missing")));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  private String write(TimeBucketedStatistics statistics) throws Exception {
+    // The standard deviation depends on the order in which results are
+    // combined, so leave it out.
+    final StatisticsView view = new StatisticsView();
+
+    for (ExpressionView expressionView :
+         m_statisticsServices.getSummaryStatisticsView().getExpressionViews()) {
+      if (!expressionView.getDisplayName().contains("Deviation")) {
+        view.add(expressionView);
+      }
+    }
+
+    final StringWriter out = new StringWriter();
+    statistics.write(view, out);
+    return out.toString();
+  }
+}
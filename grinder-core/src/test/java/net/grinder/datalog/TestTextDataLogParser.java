@@ -0,0 +1,185 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import net.grinder.statistics.StatisticExpressionFactory;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsView;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link TextDataLogParser}.
+ *
+ * @author Philip Aston
+ */
+public class TestTextDataLogParser {
+
+  private static final String NL = System.getProperty("line.separator");
+
+  private static final String HEADER =
+    "Thread, Run, Test, Start time (ms since Epoch), Test time, Errors";
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  @Test public void testBadHeader() throws Exception {
+    new TextDataLogParser(HEADER);
+    new TextDataLogParser("Thread, Run, Test, Start, Errors, foo, Test time");
+
+    try {
+      new TextDataLogParser("Thread, Run, Test, Start time, Test time");
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    try {
+      new TextDataLogParser("");
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  @Test public void testParse() throws Exception {
+    final String text =
+      "0, 0, 1, 1000, 10.5, 0\n" +
+      "0, 0, 2, 1100, 3, 0\r\n" +
+      "1, 0, 1, 2000, 1.0E7, 0\n" +
+      "\n" +
+      "1, 0, 1, 2100, 99.0, 1\n" +
+      "1, 0, 1, 2100, x, 0\n" +
+      "1, 0, 1\n" +
+      "1, 1, 2, 2200, 0.001, 0";
+
+    final TextDataLogParser parser = new TextDataLogParser(HEADER);
+
+    final TimeBucketedStatistics statistics =
+      new TimeBucketedStatistics(m_statisticsServices, 1000);
+
+    final ByteBuffer buffer = ByteBuffer.wrap(text.getBytes());
+
+    parser.parse(buffer, 0, buffer.limit(), true, statistics);
+
+    assertEquals(5, statistics.getNumberOfRecords());
+    assertEquals(2, parser.getMalformedLines());
+
+    assertEquals(
+      "1000, 1, 1, 0, 10500" + NL +
+      "1000, 2, 1, 0, 3000" + NL +
+      "2000, 1, 1, 1, 10000000000" + NL +
+      "2000, 2, 1, 0, 1" + NL,
+      write(statistics));
+  }
+
+  @Test public void testParseRegions() throws Exception {
+    final String text =
+      "0, 0, 1, 1000, 1, 0\n" +
+      "0, 0, 1, 1000, 2, 0\n" +
+      "0, 0, 1, 1000, 4, 0\n" +
+      "0, 0, 1, 1000, 8, 0\n";
+
+    final ByteBuffer buffer = ByteBuffer.wrap(text.getBytes());
+
+    // However the buffer is split, each line is parsed exactly once.
+    for (int split = 1; split < buffer.limit(); ++split) {
+      final TextDataLogParser parser = new TextDataLogParser(HEADER);
+
+      final TimeBucketedStatistics statistics =
+        new TimeBucketedStatistics(m_statisticsServices, 1000);
+
+      parser.parse(buffer, 0, split, true, statistics);
+      parser.parse(buffer, split, buffer.limit(), false, statistics);
+
+      assertEquals(4, statistics.getNumberOfRecords());
+      assertEquals("1000, 1, 4, 0, 15000" + NL, write(statistics));
+    }
+  }
+
+  @Test public void testParseNumbers() throws Exception {
+    final ByteBuffer buffer = ByteBuffer.wrap(" -123 .1.5 1e3".getBytes());
+
+    assertEquals(-123, TextDataLogParser.parseLong(buffer, 0, 5));
+    assertEquals(-123, TextDataLogParser.parseDouble(buffer, 0, 5), 0);
+    assertEquals(0.1, TextDataLogParser.parseDouble(buffer, 5, 8), 0);
+    assertEquals(1000, TextDataLogParser.parseDouble(buffer, 10, 14), 0);
+
+    try {
+      TextDataLogParser.parseLong(buffer, 5, 8);
+      fail("Expected NumberFormatException");
+    }
+    catch (NumberFormatException e) {
+    }
+
+    try {
+      TextDataLogParser.parseLong(buffer, 0, 1);
+      fail("Expected NumberFormatException");
+    }
+    catch (NumberFormatException e) {
+    }
+
+    try {
+      TextDataLogParser.parseDouble(buffer, 5, 10);
+      fail("Expected NumberFormatException");
+    }
+    catch (NumberFormatException e) {
+    }
+  }
+
+  private String write(TimeBucketedStatistics statistics) throws Exception {
+    final StatisticExpressionFactory factory =
+      m_statisticsServices.getStatisticExpressionFactory();
+
+    final StatisticsView view = new StatisticsView();
+    view.add(factory.createExpressionView(
+      "Tests", "(count timedTests)", false));
+    view.add(factory.createExpressionView("Errors", "errors", false));
+    view.add(factory.createExpressionView(
+      "Sum", "(sum timedTests)", false));
+
+    final StringWriter out = new StringWriter();
+    statistics.write(view, out);
+
+    final String result = out.toString();
+
+    // Strip the header and totals.
+    final StringBuilder lines = new StringBuilder();
+
+    for (String line : result.split(NL)) {
+      if (!line.startsWith("Bucket") && !line.contains("Total")) {
+        lines.append(line).append(NL);
+      }
+    }
+
+    return lines.toString();
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.datalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+
+import net.grinder.statistics.StatisticExpressionFactory;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsView;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link TimeBucketedStatistics}.
+ *
+ * @author Philip Aston
+ */
+public class TestTimeBucketedStatistics {
+
+  private static final String NL = System.getProperty("line.separator");
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsView m_view = new StatisticsView();
+
+  @Before public void setUp() throws Exception {
+    final StatisticExpressionFactory factory =
+      m_statisticsServices.getStatisticExpressionFactory();
+
+    m_view.add(factory.createExpressionView(
+      "Tests", "(count timedTests)", false));
+    m_view.add(factory.createExpressionView(
+      "Errors", "errors", false));
+    m_view.add(factory.createExpressionView(
+      "Mean", "(/ (sum timedTests) (* 1000 (count timedTests)))", false));
+    m_view.add(factory.createExpressionView(
+      "TPS", "(* 1000 (/ (count timedTests) period))", false));
+  }
+
+  @Test public void testConstruction() throws Exception {
+    assertEquals(10,
+      new TimeBucketedStatistics(m_statisticsServices, 10).getBucketLength());
+
+    try {
+      new TimeBucketedStatistics(m_statisticsServices, 0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void testAddAndWrite() throws Exception {
+    final TimeBucketedStatistics statistics =
+      new TimeBucketedStatistics(m_statisticsServices, 1000);
+
+    statistics.add(1, 1000, 10000, 0);
+    statistics.add(1, 1999, 20000, 0);
+    statistics.add(2, 1500, 5000, 0);
+    statistics.add(2, 1600, 7000, 1);
+    statistics.add(1, 3000, 4000, 0);
+
+    assertEquals(5, statistics.getNumberOfRecords());
+
+    final StringWriter out = new StringWriter();
+    statistics.write(m_view, out);
+
+    assertEquals(
+      "Bucket start (ms since Epoch), Test, Tests, Errors, Mean, TPS" + NL +
+      "1000, 1, 2, 0, 15.0, 2.0" + NL +
+      "1000, 2, 1, 1, 5.0, 1.0" + NL +
+      "1000, Total, 3, 1, 11.666666666666666, 3.0" + NL +
+      "3000, 1, 1, 0, 4.0, 1.0" + NL +
+      "3000, Total, 1, 0, 4.0, 1.0" + NL,
+      out.toString());
+  }
+
+  @Test public void testMerge() throws Exception {
+    final TimeBucketedStatistics statistics1 =
+      new TimeBucketedStatistics(m_statisticsServices, 1000);
+    final TimeBucketedStatistics statistics2 =
+      new TimeBucketedStatistics(m_statisticsServices, 1000);
+    final TimeBucketedStatistics all =
+      new TimeBucketedStatistics(m_statisticsServices, 1000);
+
+    statistics1.add(1, 1000, 10000, 0);
+    all.add(1, 1000, 10000, 0);
+    statistics2.add(1, 1200, 30000, 0);
+    all.add(1, 1200, 30000, 0);
+    statistics2.add(3, 5000, 30000, 2);
+    all.add(3, 5000, 30000, 2);
+
+    statistics1.add(statistics2);
+
+    assertEquals(3, statistics1.getNumberOfRecords());
+
+    final StringWriter expected = new StringWriter();
+    all.write(m_view, expected);
+
+    final StringWriter out = new StringWriter();
+    statistics1.write(m_view, out);
+
+    assertEquals(expected.toString(), out.toString());
+
+    try {
+      statistics1.add(new TimeBucketedStatistics(m_statisticsServices, 10));
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+}
@@ -0,0 +1,309 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.StubTest;
+import net.grinder.common.processidentity.ProcessReport.State;
+import net.grinder.communication.ClientSender;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Message;
+import net.grinder.communication.Sender;
+import net.grinder.engine.common.ConnectorFactory;
+import net.grinder.messages.console.RegisterTestsMessage;
+import net.grinder.messages.console.RelayedReportsMessage;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerAddress;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+
+/**
+ * Unit tests for {@link WorkerReportRelay}.
+ *
+ * @author Philip Aston
+ */
+public class TestWorkerReportRelay {
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+  private final StubAgentIdentity m_agentIdentity =
+    new StubAgentIdentity("agent");
+
+  private final Timer m_timer = new Timer(true);
+
+  private final List<ClientSender> m_workerSenders =
+    new ArrayList<ClientSender>();
+
+  @Mock private Logger m_logger;
+  @Mock private Sender m_consoleSender;
+
+  private WorkerReportRelay m_relay;
+
+  @Before public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @After public void tearDown() {
+    for (ClientSender sender : m_workerSenders) {
+      sender.shutdown();
+    }
+
+    if (m_relay != null) {
+      m_relay.shutdown();
+    }
+
+    m_timer.cancel();
+  }
+
+  private ClientSender connectWorker(WorkerAddress address) throws Exception {
+    final GrinderProperties properties = m_relay.workerProperties(
+      new GrinderProperties());
+
+    final ClientSender result =
+      ClientSender.connect(
+        new ConnectorFactory(ConnectionType.WORKER).create(properties),
+        address);
+
+    m_workerSenders.add(result);
+
+    return result;
+  }
+
+  private ReportStatisticsMessage statisticsReport(int testNumber,
+                                                   long errors) {
+    final TestStatisticsMap map =
+      new TestStatisticsMap(m_statisticsServices.getStatisticsSetFactory());
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+    statistics.addValue(m_errorsIndex, errors);
+    map.put(new StubTest(testNumber, ""), statistics);
+
+    return new ReportStatisticsMessage(map);
+  }
+
+  @Test public void testWorkerProperties() throws Exception {
+    m_relay = new WorkerReportRelay(m_consoleSender, m_timer, 1000, m_logger);
+
+    final GrinderProperties properties = new GrinderProperties();
+    properties.setProperty(GrinderProperties.CONSOLE_HOST, "somewhere");
+    properties.setInt(GrinderProperties.CONSOLE_PORT, 1234);
+    properties.setProperty("foo", "bah");
+    properties.setAssociatedFile(new File("blah"));
+
+    final GrinderProperties workerProperties =
+      m_relay.workerProperties(properties);
+
+    assertEquals("somewhere",
+                 properties.getProperty(GrinderProperties.CONSOLE_HOST));
+    assertEquals(m_relay.getPort(),
+                 workerProperties.getInt(GrinderProperties.CONSOLE_PORT, 0));
+    assertEquals("bah", workerProperties.getProperty("foo"));
+    assertEquals(properties.getAssociatedFile(),
+                 workerProperties.getAssociatedFile());
+  }
+
+  @Test public void testMergeAndForward() throws Exception {
+    m_relay =
+      new WorkerReportRelay(m_consoleSender, m_timer, 1000000, m_logger);
+
+    final WorkerAddress address =
+      new WorkerAddress(m_agentIdentity.createWorkerIdentity());
+
+    final ClientSender worker = connectWorker(address);
+
+    final WorkerProcessReportMessage latestReport =
+      new WorkerProcessReportMessage(State.RUNNING, 3, 3);
+
+    worker.send(
+      new WorkerProcessReportMessage(State.RUNNING, 2, 3));
+    worker.send(statisticsReport(1, 2));
+    worker.send(latestReport);
+    worker.send(statisticsReport(1, 3));
+    worker.send(statisticsReport(2, 1));
+
+    final RegisterTestsMessage registerTests =
+      new RegisterTestsMessage(new HashSet<net.grinder.common.Test>());
+    worker.send(registerTests);
+
+    final ArgumentCaptor<RelayedReportsMessage> captor =
+      ArgumentCaptor.forClass(RelayedReportsMessage.class);
+
+    verify(m_consoleSender, timeout(5000)).send(captor.capture());
+
+    final List<Message> messages = captor.getValue().getMessages();
+    assertEquals(3, messages.size());
+
+    final TestStatisticsMap statistics =
+      ((ReportStatisticsMessage) messages.get(0)).getStatisticsDelta();
+    assertEquals(2, statistics.size());
+    assertEquals(6,
+                 statistics.nonCompositeStatisticsTotals()
+                 .getValue(m_errorsIndex));
+
+    assertEquals(latestReport, messages.get(1));
+    assertEquals(address,
+                 ((WorkerProcessReportMessage) messages.get(1))
+                 .getProcessAddress());
+
+    assertTrue(messages.get(2) instanceof RegisterTestsMessage);
+  }
+
+  @Test public void testPeriodicForwarding() throws Exception {
+    final List<RelayedReportsMessage> forwarded =
+      Collections.synchronizedList(new ArrayList<RelayedReportsMessage>());
+
+    final Sender consoleSender = new Sender() {
+      public void send(Message message) {
+        forwarded.add((RelayedReportsMessage) message);
+      }
+
+      public void shutdown() {
+      }
+    };
+
+    m_relay = new WorkerReportRelay(consoleSender, m_timer, 20, m_logger);
+
+    final WorkerAddress[] addresses = {
+      new WorkerAddress(m_agentIdentity.createWorkerIdentity()),
+      new WorkerAddress(m_agentIdentity.createWorkerIdentity()),
+    };
+
+    for (WorkerAddress address : addresses) {
+      final ClientSender worker = connectWorker(address);
+
+      for (short i = 1; i <= 10; ++i) {
+        worker.send(statisticsReport(i % 3, i));
+        worker.send(new WorkerProcessReportMessage(State.RUNNING, i, i));
+      }
+    }
+
+    final long expectedErrors = 2 * 55;
+    long errors = 0;
+    final Map<WorkerAddress, WorkerProcessReportMessage> latestReports =
+      new HashMap<WorkerAddress, WorkerProcessReportMessage>();
+
+    for (int i = 0; i < 50 && errors < expectedErrors; ++i) {
+      Thread.sleep(i * 10);
+
+      final List<RelayedReportsMessage> messages;
+
+      synchronized (forwarded) {
+        messages = new ArrayList<RelayedReportsMessage>(forwarded);
+        forwarded.clear();
+      }
+
+      for (RelayedReportsMessage relayed : messages) {
+        int statisticsReports = 0;
+        final Map<WorkerAddress, WorkerProcessReportMessage> reports =
+          new HashMap<WorkerAddress, WorkerProcessReportMessage>();
+
+        for (Message message : relayed.getMessages()) {
+          if (message instanceof ReportStatisticsMessage) {
+            ++statisticsReports;
+            errors +=
+              ((ReportStatisticsMessage) message).getStatisticsDelta()
+              .nonCompositeStatisticsTotals().getValue(m_errorsIndex);
+          }
+          else {
+            final WorkerProcessReportMessage report =
+              (WorkerProcessReportMessage) message;
+
+            // At most one running report per worker in each forwarded
+            // message.
+            assertEquals(null,
+                         reports.put(report.getProcessAddress(), report));
+          }
+        }
+
+        assertTrue(statisticsReports <= 1);
+        latestReports.putAll(reports);
+      }
+    }
+
+    assertEquals(expectedErrors, errors);
+
+    for (WorkerAddress address : addresses) {
+      assertEquals(10,
+                   latestReports.get(address).getNumberOfRunningThreads());
+    }
+  }
+
+  @Test public void testConsoleFailure() throws Exception {
+    final CommunicationException exception =
+      new CommunicationException("console gone");
+
+    doThrow(exception).when(m_consoleSender).send(isA(Message.class));
+
+    m_relay =
+      new WorkerReportRelay(m_consoleSender, m_timer, 1000000, m_logger);
+
+    final ClientSender worker =
+      connectWorker(new WorkerAddress(m_agentIdentity.createWorkerIdentity()));
+
+    worker.send(
+      new WorkerProcessReportMessage(State.STARTED, 0, 1));
+    worker.send(
+      new WorkerProcessReportMessage(State.FINISHED, 0, 1));
+
+    verify(m_consoleSender, timeout(5000).times(2)).send(isA(Message.class));
+
+    // Only the first failure is logged.
+    verify(m_logger).error(any(String.class), same(exception));
+  }
+}
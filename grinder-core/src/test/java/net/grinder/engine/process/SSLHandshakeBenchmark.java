@@ -0,0 +1,162 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import net.grinder.util.InsecureSSLContextFactory;
+
+
+/**
+ * Measures the client CPU cost of TLS handshakes, reported as handshakes
+ * per second of CPU time on a single agent core.
+ *
+ * <p>
+ * A local server accepts connections and completes a handshake on each.
+ * The client connects repeatedly with a context from
+ * {@link InsecureSSLContextFactory}, either resuming its cached session as
+ * the {@code shared} and {@code thread} session cache modes do, or with a
+ * {@link NonResumingSSLContext} so that every handshake is a full one, as
+ * the {@code none} mode does. Only the client thread's CPU time is counted.
+ * </p>
+ *
+ * <p>
+ * Not a unit test. Run manually with:
+ * <code>java -cp ... net.grinder.engine.process.SSLHandshakeBenchmark
+ * [handshakes] [protocol]</code>.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class SSLHandshakeBenchmark {
+
+  private final SSLServerSocket m_serverSocket;
+  private final ThreadMXBean m_threadMXBean =
+    ManagementFactory.getThreadMXBean();
+
+  public SSLHandshakeBenchmark(final String protocol) throws Exception {
+    final InputStream keyStore =
+      SSLHandshakeBenchmark.class.getResourceAsStream("handshake.keystore");
+
+    try {
+      final SSLContext context =
+        new InsecureSSLContextFactory(keyStore,
+                                      "passphrase".toCharArray(),
+                                      "jks").getSSLContext();
+
+      m_serverSocket = (SSLServerSocket)
+        context.getServerSocketFactory().createServerSocket(0);
+    }
+    finally {
+      keyStore.close();
+    }
+
+    if (protocol != null) {
+      m_serverSocket.setEnabledProtocols(new String[] { protocol });
+    }
+
+    final Thread acceptor = new Thread("Acceptor") {
+        @Override public void run() {
+          try {
+            while (true) {
+              final SSLSocket socket = (SSLSocket)m_serverSocket.accept();
+
+              try {
+                socket.startHandshake();
+              }
+              catch (IOException e) {
+                // Ignore.
+              }
+              finally {
+                socket.close();
+              }
+            }
+          }
+          catch (IOException e) {
+            // Closed.
+          }
+        }
+      };
+
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  private double run(final SSLContext context, final int handshakes)
+    throws IOException {
+
+    final long start = m_threadMXBean.getCurrentThreadCpuTime();
+
+    for (int i = 0; i < handshakes; ++i) {
+      final SSLSocket socket = (SSLSocket)
+        context.getSocketFactory().createSocket(
+          "localhost", m_serverSocket.getLocalPort());
+
+      try {
+        socket.startHandshake();
+      }
+      finally {
+        socket.close();
+      }
+    }
+
+    final long cpu = m_threadMXBean.getCurrentThreadCpuTime() - start;
+
+    return handshakes * 1000000000d / cpu;
+  }
+
+  private void run(final int handshakes) throws Exception {
+    final InsecureSSLContextFactory factory = new InsecureSSLContextFactory();
+    final SSLContext resuming = factory.getSSLContext();
+    final SSLContext full = new NonResumingSSLContext(factory.getSSLContext());
+
+    // Warm up.
+    run(resuming, handshakes / 10 + 1);
+    run(full, handshakes / 10 + 1);
+
+    System.out.printf("%10s %24s%n", "handshake", "handshakes/s per core");
+    System.out.printf("%10s %24.1f%n", "full", run(full, handshakes));
+    System.out.printf("%10s %24.1f%n", "resumed", run(resuming, handshakes));
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final int handshakes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    final String protocol = args.length > 1 ? args[1] : null;
+
+    final SSLHandshakeBenchmark benchmark =
+      new SSLHandshakeBenchmark(protocol);
+
+    try {
+      benchmark.run(handshakes);
+    }
+    finally {
+      benchmark.m_serverSocket.close();
+    }
+  }
+}
@@ -47,7 +47,9 @@ public class StubTestRegistry {
       new TestRegistryImplementation(null,
                                      statisticsSetFactory,
                                      testStatisticsHelper,
-                                     null);
+                                     null,
+                                     0,
+                                     false);
 
     testRegistry.setInstrumenter(instrumenter);
 
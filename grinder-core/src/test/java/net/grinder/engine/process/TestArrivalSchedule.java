@@ -0,0 +1,174 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.TimeAuthority;
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.process.ArrivalSchedule.ScheduledStart;
+import net.grinder.engine.process.ArrivalSchedule.Segment;
+import net.grinder.util.Sleeper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+
+/**
+ * Unit tests for {@link ArrivalSchedule}.
+ *
+ * @author Philip Aston
+ */
+public class TestArrivalSchedule {
+
+  @Mock private TimeAuthority m_timeAuthority;
+  @Mock private Sleeper m_sleeper;
+
+  @Before public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test public void testCreate() throws Exception {
+    final GrinderProperties properties = new GrinderProperties();
+
+    assertNull(ArrivalSchedule.create(properties, m_timeAuthority));
+
+    properties.setDouble("grinder.arrivalRate", 0);
+    assertNull(ArrivalSchedule.create(properties, m_timeAuthority));
+
+    properties.setDouble("grinder.arrivalRate", 20);
+    final ArrivalSchedule constant =
+      ArrivalSchedule.create(properties, m_timeAuthority);
+    assertEquals(0, constant.arrivalTime(0));
+    assertEquals(50, constant.arrivalTime(1));
+    assertEquals(5000, constant.arrivalTime(100));
+
+    properties.setLong("grinder.arrivalRate.rampUp", 10000);
+    final ArrivalSchedule ramp =
+      ArrivalSchedule.create(properties, m_timeAuthority);
+    assertEquals(0, ramp.arrivalTime(0));
+    assertEquals(10000, ramp.arrivalTime(100));
+    assertEquals(10050, ramp.arrivalTime(101));
+
+    properties.setProperty("grinder.arrivalRate.steps", "10:1000, 100:1000");
+    final ArrivalSchedule steps =
+      ArrivalSchedule.create(properties, m_timeAuthority);
+    assertEquals(100, steps.arrivalTime(1));
+    assertEquals(1000, steps.arrivalTime(10));
+    assertEquals(1010, steps.arrivalTime(11));
+    assertEquals(3000, steps.arrivalTime(210));
+
+    for (final String bad : new String[] { "10", "a:100", "10:0", "-1:10" }) {
+      properties.setProperty("grinder.arrivalRate.steps", bad);
+
+      try {
+        ArrivalSchedule.create(properties, m_timeAuthority);
+        fail("Expected EngineException");
+      }
+      catch (final EngineException e) {
+      }
+    }
+  }
+
+  @Test public void testArrivalTimeWithZeroRate() throws Exception {
+    final ArrivalSchedule schedule =
+      new ArrivalSchedule(m_timeAuthority,
+                          m_sleeper,
+                          asList(new Segment(1000, 10, 10),
+                                 new Segment(1000, 0, 0)),
+                          0,
+                          0);
+
+    assertEquals(900, schedule.arrivalTime(9));
+    assertEquals(1000, schedule.arrivalTime(10));
+    assertEquals(-1, schedule.arrivalTime(11));
+  }
+
+  @Test public void testNext() throws Exception {
+    final ArrivalSchedule schedule =
+      new ArrivalSchedule(m_timeAuthority,
+                          m_sleeper,
+                          asList(new Segment(1, 10, 10)),
+                          4,
+                          0);
+
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(1000L);
+
+    final ScheduledStart start0 = schedule.next();
+    assertEquals(0, start0.getDelay());
+    assertEquals(0, start0.getLateStarts());
+    assertEquals(0, start0.getDroppedStarts());
+
+    final ScheduledStart start1 = schedule.next();
+    assertEquals(0, start1.getDelay());
+    assertEquals(0, start1.getLateStarts());
+    verify(m_sleeper).sleepNormal(100, 0);
+
+    // No thread was free for the third run.
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(1250L);
+
+    final ScheduledStart start2 = schedule.next();
+    assertEquals(50, start2.getDelay());
+    assertEquals(1, start2.getLateStarts());
+    assertEquals(0, start2.getDroppedStarts());
+
+    assertNotNull(schedule.next());
+    assertNull(schedule.next());
+
+    verify(m_sleeper).sleepNormal(50, 0);
+    verifyNoMoreInteractions(m_sleeper);
+  }
+
+  @Test public void testDroppedStarts() throws Exception {
+    final ArrivalSchedule schedule =
+      new ArrivalSchedule(m_timeAuthority,
+                          m_sleeper,
+                          asList(new Segment(1, 10, 10)),
+                          0,
+                          150);
+
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(0L);
+    schedule.next();
+
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(500L);
+
+    // Runs due at 100, 200, and 300 are dropped.
+    final ScheduledStart start = schedule.next();
+    assertEquals(100, start.getDelay());
+    assertEquals(1, start.getLateStarts());
+    assertEquals(3, start.getDroppedStarts());
+
+    final ScheduledStart merged = start.merge(start);
+    assertEquals(100, merged.getDelay());
+    assertEquals(2, merged.getLateStarts());
+    assertEquals(6, merged.getDroppedStarts());
+  }
+}
@@ -0,0 +1,192 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import net.grinder.common.StubTest;
+import net.grinder.datalog.BinaryDataLogReader;
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesTestFactory;
+import net.grinder.statistics.StatisticsSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+
+/**
+ * Unit tests for {@link BinaryDataLogger}.
+ *
+ * @author Philip Aston
+ */
+public class TestBinaryDataLogger {
+
+  @Mock private Logger m_logger;
+
+  private final net.grinder.common.Test m_test1 = new StubTest(1, "T1");
+  private final net.grinder.common.Test m_test3 = new StubTest(3, "T3");
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesTestFactory.createTestInstance();
+
+  private ExpressionView[] m_views;
+  private StatisticsIndexMap.LongIndex m_errorsIndex;
+  private StatisticsIndexMap.LongSampleIndex m_timedTestsIndex;
+
+  @Before public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+
+    final StatisticsIndexMap indexMap =
+      m_statisticsServices.getStatisticsIndexMap();
+
+    m_errorsIndex = indexMap.getLongIndex("errors");
+    m_timedTestsIndex = indexMap.getLongSampleIndex("timedTests");
+
+    m_views =
+      m_statisticsServices.getDetailStatisticsView().getExpressionViews();
+  }
+
+  @Test public void testReport() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    final BinaryDataLogger logger =
+      new BinaryDataLogger(out, m_views, 16, m_logger);
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    statistics.addSample(m_timedTestsIndex, 99123);
+
+    final int records = 1000;
+    int retries = 0;
+
+    for (int i = 0; i < records; ++i) {
+      // Retry rather than drop, so we know exactly what was written.
+      while (!logger.report(33, i, m_test1, 123L + i, statistics)) {
+        ++retries;
+        Thread.yield();
+      }
+    }
+
+    statistics.reset();
+    statistics.setValue(m_errorsIndex, 1);
+
+    while (!logger.report(2, 10, m_test3, 99L, statistics)) {
+      ++retries;
+      Thread.yield();
+    }
+
+    logger.shutdown();
+
+    final BinaryDataLogReader reader =
+      new BinaryDataLogReader(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(m_views.length, reader.getNumberOfColumns());
+    assertEquals(m_views[0].getDisplayName(), reader.getColumnName(0));
+    assertTrue(reader.isDouble(0));
+    assertFalse(reader.isDouble(1));
+
+    for (int i = 0; i < records; ++i) {
+      assertTrue(reader.next());
+      assertEquals(33, reader.getThreadNumber());
+      assertEquals(i, reader.getRunNumber());
+      assertEquals(1, reader.getTestNumber());
+      assertEquals(123L + i, reader.getStartTime());
+      assertEquals(99.123, reader.getDoubleValue(0), 0.0001);
+      assertEquals(0, reader.getLongValue(1));
+    }
+
+    assertTrue(reader.next());
+    assertEquals(2, reader.getThreadNumber());
+    assertEquals(10, reader.getRunNumber());
+    assertEquals(3, reader.getTestNumber());
+    assertEquals(99L, reader.getStartTime());
+    assertEquals(0.0, reader.getDoubleValue(0), 0.0001);
+    assertEquals(1, reader.getLongValue(1));
+
+    assertFalse(reader.next());
+
+    assertEquals(retries, logger.getDropped());
+  }
+
+  @Test public void testDrop() throws Exception {
+    final BinaryDataLogger logger =
+      new BinaryDataLogger(new ByteArrayOutputStream(), m_views, 2, m_logger);
+
+    // Nothing consumes the buffer after shut down.
+    logger.shutdown();
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    assertTrue(logger.report(1, 1, m_test1, 1, statistics));
+    assertTrue(logger.report(1, 1, m_test1, 2, statistics));
+    assertFalse(logger.report(1, 1, m_test1, 3, statistics));
+    assertFalse(logger.report(1, 1, m_test1, 4, statistics));
+
+    assertEquals(2, logger.getDropped());
+  }
+
+  @Test public void testWriteFailure() throws Exception {
+    final OutputStream brokenStream = new OutputStream() {
+        @Override public void write(int b) throws IOException {
+          throw new IOException("broken");
+        }
+      };
+
+    final BinaryDataLogger logger =
+      new BinaryDataLogger(brokenStream, m_views, 2, m_logger);
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    assertTrue(logger.report(1, 1, m_test1, 1, statistics));
+
+    // The writer fails when it flushes the record.
+    verify(m_logger, timeout(5000))
+      .error(contains("Failed to write"), isA(IOException.class));
+
+    // Nothing consumes the buffer after the failure.
+    assertTrue(logger.report(1, 1, m_test1, 2, statistics));
+    assertTrue(logger.report(1, 1, m_test1, 3, statistics));
+    assertFalse(logger.report(1, 1, m_test1, 4, statistics));
+    assertEquals(1, logger.getDropped());
+
+    logger.shutdown();
+  }
+}
@@ -0,0 +1,214 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.grinder.engine.process.DataLogRingBuffer.RecordHandler;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link DataLogRingBuffer}.
+ *
+ * @author Philip Aston
+ */
+public class TestDataLogRingBuffer {
+
+  private final List<String> m_records = new ArrayList<String>();
+
+  private final RecordHandler m_handler = new RecordHandler() {
+      public void handle(long[] values, int offset) {
+        m_records.add(values[offset] + ":" + values[offset + 1]);
+      }
+    };
+
+  @Test public void testConstruction() throws Exception {
+    assertEquals(1, new DataLogRingBuffer(1, 1).getCapacity());
+    assertEquals(8, new DataLogRingBuffer(5, 1).getCapacity());
+    assertEquals(8, new DataLogRingBuffer(8, 1).getCapacity());
+
+    try {
+      new DataLogRingBuffer(0, 1);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    try {
+      new DataLogRingBuffer(1, 0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void testPublishAndDrain() throws Exception {
+    final DataLogRingBuffer buffer = new DataLogRingBuffer(4, 2);
+
+    assertEquals(0, buffer.drain(m_handler));
+
+    for (int i = 0; i < 3; ++i) {
+      final long sequence = buffer.claim();
+      assertEquals(i, sequence);
+      buffer.set(sequence, 0, i);
+      buffer.set(sequence, 1, i * 10);
+      buffer.publish(sequence);
+    }
+
+    assertEquals(3, buffer.drain(m_handler));
+    assertEquals("[0:0, 1:10, 2:20]", m_records.toString());
+
+    assertEquals(0, buffer.drain(m_handler));
+
+    // Wrap around.
+    for (int i = 3; i < 7; ++i) {
+      final long sequence = buffer.claim();
+      buffer.set(sequence, 0, i);
+      buffer.set(sequence, 1, i * 10);
+      buffer.publish(sequence);
+    }
+
+    assertEquals(4, buffer.drain(m_handler));
+    assertEquals(7, m_records.size());
+    assertEquals("6:60", m_records.get(6));
+    assertEquals(0, buffer.getDropped());
+  }
+
+  @Test public void testFull() throws Exception {
+    final DataLogRingBuffer buffer = new DataLogRingBuffer(2, 2);
+
+    final long s0 = buffer.claim();
+    final long s1 = buffer.claim();
+    assertEquals(-1, buffer.claim());
+    assertEquals(-1, buffer.claim());
+    assertEquals(2, buffer.getDropped());
+
+    // Unpublished records hold up the consumer.
+    buffer.publish(s1);
+    assertEquals(0, buffer.drain(m_handler));
+
+    buffer.publish(s0);
+    assertEquals(2, buffer.drain(m_handler));
+
+    assertEquals(2, buffer.claim());
+    assertEquals(2, buffer.getDropped());
+  }
+
+  @Test public void testHandlerFailure() throws Exception {
+    final DataLogRingBuffer buffer = new DataLogRingBuffer(2, 2);
+
+    buffer.publish(buffer.claim());
+
+    try {
+      buffer.drain(new RecordHandler() {
+          public void handle(long[] values, int offset) throws IOException {
+            throw new IOException();
+          }
+        });
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    // The record was not consumed.
+    assertEquals(1, buffer.drain(m_handler));
+  }
+
+  @Test public void testConcurrentProducers() throws Exception {
+    final int producers = 4;
+    final int recordsPerProducer = 20000;
+
+    final DataLogRingBuffer buffer = new DataLogRingBuffer(64, 2);
+
+    final Thread[] threads = new Thread[producers];
+
+    for (int p = 0; p < producers; ++p) {
+      final int producer = p;
+
+      threads[p] = new Thread() {
+          @Override public void run() {
+            for (int i = 0; i < recordsPerProducer; ++i) {
+              final long sequence = buffer.claim();
+
+              if (sequence >= 0) {
+                buffer.set(sequence, 0, producer);
+                buffer.set(sequence, 1, i);
+                buffer.publish(sequence);
+              }
+            }
+          }
+        };
+
+      threads[p].start();
+    }
+
+    final long[] lastSeen = new long[producers];
+    final long[] counts = new long[producers];
+
+    for (int p = 0; p < producers; ++p) {
+      lastSeen[p] = -1;
+    }
+
+    final RecordHandler handler = new RecordHandler() {
+        public void handle(long[] values, int offset) {
+          final int producer = (int) values[offset];
+          final long i = values[offset + 1];
+
+          // Each producer's records are seen in the order published.
+          assertTrue(i > lastSeen[producer]);
+          lastSeen[producer] = i;
+          ++counts[producer];
+        }
+      };
+
+    boolean running = true;
+
+    while (running) {
+      running = false;
+
+      for (Thread thread : threads) {
+        running |= thread.isAlive();
+      }
+
+      buffer.drain(handler);
+    }
+
+    buffer.drain(handler);
+
+    long total = 0;
+
+    for (long count : counts) {
+      total += count;
+    }
+
+    assertEquals(producers * recordsPerProducer,
+                 total + buffer.getDropped());
+  }
+}
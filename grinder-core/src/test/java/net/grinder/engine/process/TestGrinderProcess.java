@@ -47,9 +47,15 @@ import net.grinder.communication.Message;
 import net.grinder.communication.QueuedSender;
 import net.grinder.communication.SimpleMessage;
 import net.grinder.engine.process.GrinderProcess.ThreadContexts;
+import net.grinder.engine.process.GrinderProcess.WorkerThread;
 import net.grinder.engine.process.GrinderProcess.ThreadSynchronisation;
 import net.grinder.engine.process.GrinderProcess.Times;
 import net.grinder.script.InvalidContextException;
+import net.grinder.statistics.StatisticExpressionFactory;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
 import net.grinder.util.thread.Condition;
 
 import org.junit.AfterClass;
@@ -172,6 +178,46 @@ public class TestGrinderProcess {
     assertTrue(elapsedTime >= 0);
   }
 
+  @Test public void testProcessViewsAreInMilliseconds() throws Exception {
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+    final StatisticsIndexMap indexMap =
+      statisticsServices.getStatisticsIndexMap();
+    final StatisticExpressionFactory expressionFactory =
+      statisticsServices.getStatisticExpressionFactory();
+
+    final StatisticsSet statistics =
+      statisticsServices.getStatisticsSetFactory().create();
+
+    // Times are recorded in microseconds.
+    for (int i = 0; i < 10; ++i) {
+      statistics.addSample(indexMap.getLongSampleIndex("timedTests"), 3000);
+      statistics.addSample(
+        indexMap.getLongSampleIndex("correctedTimedTests"), 5000);
+    }
+
+    statistics.addValue(indexMap.getLongIndex("nestedTime"), 10000);
+
+    assertEquals(2,
+                 expressionFactory.createExpression(
+                   GrinderProcess.MEAN_SELF_TIME_EXPRESSION)
+                   .getDoubleValue(statistics),
+                 0.001);
+
+    assertEquals(5,
+                 expressionFactory.createExpression(
+                   GrinderProcess.CORRECTED_MEAN_TEST_TIME_EXPRESSION)
+                   .getDoubleValue(statistics),
+                 0.001);
+
+    // Percentiles are approximated by a histogram.
+    assertEquals(5,
+                 expressionFactory.createExpression(
+                   GrinderProcess.CORRECTED_TEST_TIME_PERCENTILE_EXPRESSION)
+                   .getDoubleValue(statistics),
+                 0.1);
+  }
+
   @Test public void testThreadContextsThreadContextLocator() throws Exception {
     final ThreadContexts threadContexts = new ThreadContexts();
     assertNull(threadContexts.get());
@@ -206,6 +252,30 @@ public class TestGrinderProcess {
     assertSame(threadContext1, threadContexts.get());
   }
 
+  @Test public void testThreadContextsWorkerThread() throws Exception {
+    final ThreadContexts threadContexts = new ThreadContexts();
+
+    final ThreadContext threadContext = mock(ThreadContext.class);
+    final ThreadContext[] located = new ThreadContext[1];
+
+    final Thread thread =
+      new WorkerThread(new Runnable() {
+                         @Override
+                         public void run() {
+                           located[0] = threadContexts.get();
+                         }
+                       },
+                       "worker",
+                       threadContext);
+
+    thread.start();
+    thread.join();
+
+    // Worker threads don't need to register with the thread local.
+    assertSame(threadContext, located[0]);
+    assertNull(threadContexts.get());
+  }
+
   @Test public void testThreadContextsThreadCreated() throws Exception {
     final ThreadContexts threadContexts = new ThreadContexts();
 
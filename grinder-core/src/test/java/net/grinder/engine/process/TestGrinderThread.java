@@ -21,6 +21,8 @@
 
 package net.grinder.engine.process;
 
+import static java.util.Arrays.asList;
+import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -28,6 +30,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import net.grinder.common.GrinderProperties;
+import net.grinder.common.TimeAuthority;
 import net.grinder.engine.common.EngineException;
 import net.grinder.scriptengine.ScriptEngineService.WorkerRunnable;
 import net.grinder.scriptengine.ScriptExecutionException;
@@ -54,6 +57,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
   @Mock private Sleeper m_sleeper;
   @Mock private WorkerRunnableFactory m_workerRunnableFactory;
   @Mock private WorkerRunnable m_workerRunnable;
+  @Mock private TimeAuthority m_timeAuthority;
 
   private final GrinderProperties m_properties = new GrinderProperties();
 
@@ -71,7 +75,8 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                       m_workerThreadSynchronisation,
                       m_properties,
                       m_sleeper,
-                      m_workerRunnableFactory);
+                      m_workerRunnableFactory,
+                      null);
 
     verify(m_workerThreadSynchronisation).threadCreated();
 
@@ -86,7 +91,8 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
-                        m_workerRunnableFactory);
+                        m_workerRunnableFactory,
+                        null);
 
     grinderThread.run();
 
@@ -115,7 +121,8 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
-                        m_workerRunnableFactory);
+                        m_workerRunnableFactory,
+                        null);
 
     m_properties.setInt("grinder.runs", 2);
     m_properties.setLong("grinder.initialSleepTime", 100);
@@ -139,6 +146,73 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
     verifyNoMoreInteractions(m_sleeper);
   }
 
+  @Test public void testArrivalSchedule() throws Exception {
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(0L);
+
+    final ArrivalSchedule arrivalSchedule =
+      new ArrivalSchedule(m_timeAuthority,
+                          m_sleeper,
+                          asList(new ArrivalSchedule.Segment(1, 10, 10)),
+                          3,
+                          0);
+
+    final GrinderThread grinderThread =
+      new GrinderThread(m_logger,
+                        m_threadContext,
+                        m_workerThreadSynchronisation,
+                        m_properties,
+                        m_sleeper,
+                        m_workerRunnableFactory,
+                        arrivalSchedule);
+
+    // Ignored when there is an arrival schedule.
+    m_properties.setInt("grinder.runs", 1);
+
+    grinderThread.run();
+
+    verify(m_threadContext, times(3)).setScheduledStart(
+      isA(ArrivalSchedule.ScheduledStart.class));
+    verify(m_threadContext, times(3)).fireBeginRunEvent();
+    verify(m_threadContext, times(3)).fireEndRunEvent();
+
+    verify(m_workerRunnable, times(3)).run();
+    verify(m_workerRunnable).shutdown();
+
+    verify(m_sleeper).sleepFlat(0);
+    verify(m_sleeper).sleepNormal(100, 0);
+    verify(m_sleeper).sleepNormal(200, 0);
+    verifyNoMoreInteractions(m_sleeper);
+  }
+
+  @Test public void testArrivalScheduleShutdown() throws Exception {
+    final ArrivalSchedule arrivalSchedule =
+      new ArrivalSchedule(m_timeAuthority,
+                          m_sleeper,
+                          asList(new ArrivalSchedule.Segment(1, 10, 10)),
+                          0,
+                          0);
+
+    final GrinderThread grinderThread =
+      new GrinderThread(m_logger,
+                        m_threadContext,
+                        m_workerThreadSynchronisation,
+                        m_properties,
+                        m_sleeper,
+                        m_workerRunnableFactory,
+                        arrivalSchedule);
+
+    doThrow(new Sleeper.ShutdownException("bye"))
+      .when(m_sleeper).sleepNormal(100, 0);
+
+    grinderThread.run();
+
+    verify(m_threadContext).fireBeginRunEvent();
+    verify(m_workerRunnable).run();
+    verify(m_workerRunnable).shutdown();
+    verify(m_threadContext).fireEndThreadEvent();
+    verify(m_workerThreadSynchronisation).threadFinished();
+  }
+
   @Test public void testRunForeverShutdownException() throws Exception {
 
     final GrinderThread grinderThread =
@@ -147,7 +221,8 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
-                        m_workerRunnableFactory);
+                        m_workerRunnableFactory,
+                        null);
 
     m_properties.setInt("grinder.runs", 0);
 
@@ -183,7 +258,8 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
-                        m_workerRunnableFactory);
+                        m_workerRunnableFactory,
+                        null);
 
     doThrow(new MyScriptEngineException("whatever"))
       .when(m_workerRunnable).run();
@@ -214,7 +290,8 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
-                        m_workerRunnableFactory);
+                        m_workerRunnableFactory,
+                        null);
 
     when(m_workerRunnableFactory.create())
       .thenThrow(new MyScriptEngineException("blah"));
@@ -238,7 +315,8 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
-                        m_workerRunnableFactory);
+                        m_workerRunnableFactory,
+                        null);
 
     when(m_workerRunnableFactory.create())
       .thenThrow(new EngineException("blah"));
@@ -23,11 +23,15 @@ package net.grinder.engine.process;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.UnrecoverableKeyException;
+import java.util.Arrays;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
 
 import net.grinder.common.SSLContextFactory;
 import net.grinder.common.ThreadLifeCycleListener;
@@ -37,6 +41,7 @@ import net.grinder.script.SSLControl;
 import net.grinder.testutility.AbstractFileTestCase;
 import net.grinder.testutility.CallData;
 import net.grinder.testutility.RandomStubFactory;
+import net.grinder.util.InsecureSSLContextFactory;
 import net.grinder.util.StreamCopier;
 
 
@@ -243,6 +248,139 @@ public class TestSSLControlImplementation extends AbstractFileTestCase {
     m_threadContextStubFactory.assertNoMoreCalls();
   }
 
+  public void testSharedSessionCache() throws Exception {
+    final SSLControl sslControl =
+      new SSLControlImplementation(m_threadContextLocator);
+
+    assertEquals(SSLControl.SessionCache.THREAD, sslControl.getSessionCache());
+    sslControl.setSessionCache(SSLControl.SessionCache.SHARED);
+    assertEquals(SSLControl.SessionCache.SHARED, sslControl.getSessionCache());
+
+    m_threadContextStubFactory.setResult("getThreadSSLContextFactory", null);
+
+    final SSLContext context = sslControl.getSSLContext();
+    assertSame(context, sslControl.getSSLContext());
+
+    m_threadContextStubFactory.assertNoMoreCalls();
+
+    // Threads that set their own key managers have their own context.
+    sslControl.setKeyManagers(new KeyManager[] { m_keyManager });
+
+    final SSLContextFactory contextFactory =
+      (SSLContextFactory)
+      m_threadContextStubFactory.assertSuccess("setThreadSSLContextFactory",
+                                               SSLContextFactory.class)
+                                               .getParameters()[0];
+
+    m_threadContextStubFactory.setResult("getThreadSSLContextFactory",
+                                         contextFactory);
+
+    assertNotSame(context, sslControl.getSSLContext());
+  }
+
+  public void testSessionResumption() throws Exception {
+    final HandshakeServer server = new HandshakeServer();
+
+    try {
+      m_threadContextStubFactory.setResult("getThreadSSLContextFactory", null);
+
+      for (SSLControl.SessionCache sessionCache :
+           SSLControl.SessionCache.values()) {
+
+        final SSLControl sslControl =
+          new SSLControlImplementation(m_threadContextLocator);
+        sslControl.setSessionCache(sessionCache);
+
+        final SSLContext context = sslControl.getSSLContext();
+
+        assertEquals(sessionCache == SSLControl.SessionCache.NONE,
+                     context instanceof NonResumingSSLContext);
+
+        final byte[] id1 = server.handshake(context);
+        final byte[] id2 = server.handshake(context);
+
+        assertEquals(sessionCache.toString(),
+                     sessionCache != SSLControl.SessionCache.NONE,
+                     Arrays.equals(id1, id2));
+      }
+    }
+    finally {
+      server.close();
+    }
+  }
+
+  /**
+   * Accepts TLS 1.2 connections and completes a handshake on each.
+   */
+  private final class HandshakeServer implements Runnable {
+    private final SSLServerSocket m_serverSocket;
+    private final Thread m_thread;
+
+    public HandshakeServer() throws Exception {
+      final InputStream keyStore =
+        getClass().getResourceAsStream("handshake.keystore");
+
+      try {
+        final SSLContext context =
+          new InsecureSSLContextFactory(keyStore,
+                                        "passphrase".toCharArray(),
+                                        "jks").getSSLContext();
+
+        m_serverSocket = (SSLServerSocket)
+          context.getServerSocketFactory().createServerSocket(0);
+      }
+      finally {
+        keyStore.close();
+      }
+
+      m_serverSocket.setEnabledProtocols(new String[] { "TLSv1.2" });
+
+      m_thread = new Thread(this, "HandshakeServer");
+      m_thread.setDaemon(true);
+      m_thread.start();
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          final SSLSocket socket = (SSLSocket)m_serverSocket.accept();
+
+          try {
+            socket.startHandshake();
+          }
+          catch (IOException e) {
+            // Ignore; the client will notice.
+          }
+          finally {
+            socket.close();
+          }
+        }
+      }
+      catch (IOException e) {
+        // Closed.
+      }
+    }
+
+    public byte[] handshake(final SSLContext context) throws IOException {
+      final SSLSocket socket = (SSLSocket)
+        context.getSocketFactory().createSocket(
+          "localhost", m_serverSocket.getLocalPort());
+
+      try {
+        socket.startHandshake();
+        return socket.getSession().getId();
+      }
+      finally {
+        socket.close();
+      }
+    }
+
+    public void close() throws Exception {
+      m_serverSocket.close();
+      m_thread.join();
+    }
+  }
+
   public void testWithBadContext() throws Exception {
     final SSLControl sslControl =
       new SSLControlImplementation(m_threadContextLocator);
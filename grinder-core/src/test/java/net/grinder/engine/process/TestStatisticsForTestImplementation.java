@@ -112,7 +112,7 @@ public class TestStatisticsForTestImplementation extends TestCase {
     assertEquals(123, statisticsForTest.getTime());
 
     statisticsForTest.setSuccess(true);
-    testStatisticsHelper.recordTest(statisticsSet, 5555);
+    testStatisticsHelper.recordTest(statisticsSet, 5555000);
 
     statisticsForTest.freeze();
 
@@ -55,7 +55,7 @@ public class TestStopWatchImplementation extends TestCase {
 
     stopWatch.start();
 
-    timeAuthorityStubFactory.assertSuccess("getTimeInMilliseconds");
+    timeAuthorityStubFactory.assertSuccess("getTimeInNanoseconds");
     timeAuthorityStubFactory.assertNoMoreCalls();
 
     try {
@@ -95,9 +95,9 @@ public class TestStopWatchImplementation extends TestCase {
 
     stopWatch.stop();
 
-    assertEquals(1000, stopWatch.getTime());
+    assertEquals(1000000000L, stopWatch.getTime());
 
-    timeAuthorityStubFactory.assertSuccess("getTimeInMilliseconds");
+    timeAuthorityStubFactory.assertSuccess("getTimeInNanoseconds");
     timeAuthorityStubFactory.assertNoMoreCalls();
 
     stopWatch.reset();
@@ -111,6 +111,6 @@ public class TestStopWatchImplementation extends TestCase {
     stopWatch.start();
     timeAuthorityStubFactory.nextTime(5000);
     stopWatch.stop();
-    assertEquals(2000, stopWatch.getTime());
+    assertEquals(2000000000L, stopWatch.getTime());
   }
 }
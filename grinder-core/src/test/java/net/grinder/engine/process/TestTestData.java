@@ -21,8 +21,12 @@
 
 package net.grinder.engine.process;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import junit.framework.TestCase;
 
+import net.grinder.common.GrinderProperties;
 import net.grinder.common.Test;
 import net.grinder.common.StubTest;
 import net.grinder.engine.common.EngineException;
@@ -30,6 +34,7 @@ import net.grinder.engine.process.DispatchContext.DispatchStateException;
 import net.grinder.script.InvalidContextException;
 import net.grinder.script.Statistics.StatisticsForTest;
 import net.grinder.scriptengine.Instrumenter;
+import net.grinder.scriptengine.Recorder;
 import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsServicesImplementation;
 import net.grinder.statistics.StatisticsSet;
@@ -75,20 +80,140 @@ public class TestTestData extends TestCase {
 
   private final StubThreadContextLocator m_threadContextLocator =
     new StubThreadContextLocator();
-  private final RandomStubFactory<ThreadContext> m_threadContextStubFactory =
-    RandomStubFactory.create(ThreadContext.class);
+  private final ThreadContextStubFactory m_threadContextStubFactory =
+    new ThreadContextStubFactory();
   private final ThreadContext m_threadContext =
     m_threadContextStubFactory.getStub();
 
   private final StandardTimeAuthority m_timeAuthority =
     new StandardTimeAuthority();
 
+  @Override protected void setUp() throws Exception {
+    // By default, tests are not started by an arrival rate schedule.
+    m_threadContextStubFactory.setResult("takeScheduledStart", null);
+    m_threadContextStubFactory.setIgnoreMethod("takeScheduledStart");
+  }
+
+  public void testDispatchWithScheduledStart() throws Exception {
+    final Test test1 = new StubTest(1, "test1");
+
+    final TestData testData =
+      new TestData(m_threadContextLocator,
+                   m_statisticsSetFactory,
+                   m_testStatisticsHelper,
+                   m_timeAuthority,
+                   m_instrumenter,
+                   test1,
+                   0,
+                   0,
+                   false);
+
+    m_threadContextLocator.set(m_threadContext);
+
+    m_threadContextStubFactory.setResult(
+      "takeScheduledStart", new ArrivalSchedule.ScheduledStart(100, 1, 2));
+
+    testData.start();
+
+    m_threadContextStubFactory.assertSuccess("getDispatchResultReporter");
+    final DispatchContext dispatchContext =
+      (DispatchContext) m_threadContextStubFactory.assertSuccess(
+      "pushDispatchContext", DispatchContext.class).getParameters()[0];
+
+    // The delay in starting the run counts towards the test time.
+    assertTrue(dispatchContext.getElapsedTime() >= 100);
+
+    testData.end(true);
+
+    m_testStatisticsHelperStubFactory.setResult("getSuccess", Boolean.TRUE);
+    dispatchContext.report();
+
+    final long testTime = (Long)
+      m_testStatisticsHelperStubFactory.assertSuccess(
+        "recordTest", StatisticsSet.class, Long.class).getParameters()[1];
+    // Test times are recorded in microseconds.
+    assertTrue(testTime >= 100000);
+
+    m_testStatisticsHelperStubFactory.assertSuccess(
+      "getSuccess", StatisticsSet.class);
+
+    m_testStatisticsHelperStubFactory.assertSuccess(
+      "recordScheduledStarts", testData.getTestStatistics(), 1L, 2L);
+
+    m_testStatisticsHelperStubFactory.assertNoMoreCalls();
+  }
+
+  public void testDispatchWithExpectedInterval() throws Exception {
+    final Test test1 = new StubTest(1, "test1");
+
+    final TestData testData =
+      new TestData(m_threadContextLocator,
+                   m_statisticsSetFactory,
+                   m_testStatisticsHelper,
+                   m_timeAuthority,
+                   m_instrumenter,
+                   test1,
+                   0,
+                   0,
+                   false);
+
+    m_threadContextLocator.set(m_threadContext);
+
+    testData.setExpectedInterval(100);
+    assertEquals(100, testData.getExpectedInterval());
+
+    testData.start();
+
+    m_threadContextStubFactory.assertSuccess("getDispatchResultReporter");
+    final DispatchContext dispatchContext =
+      (DispatchContext) m_threadContextStubFactory.assertSuccess(
+      "pushDispatchContext", DispatchContext.class).getParameters()[0];
+
+    testData.end(true);
+
+    m_testStatisticsHelperStubFactory.setResult("getSuccess", Boolean.TRUE);
+    dispatchContext.report();
+
+    final StatisticsSet statistics = (StatisticsSet)
+      m_testStatisticsHelperStubFactory.assertSuccess(
+        "recordTest", StatisticsSet.class, Long.class).getParameters()[0];
+
+    m_testStatisticsHelperStubFactory.assertSuccess("getSuccess", statistics);
+
+    final Object[] parameters =
+      m_testStatisticsHelperStubFactory.assertSuccess(
+        "recordCorrectedTest", StatisticsSet.class, Long.class, Long.class)
+      .getParameters();
+    assertSame(statistics, parameters[0]);
+    assertEquals(100000L, parameters[2]);
+
+    m_testStatisticsHelperStubFactory.assertSuccess("getSuccess", statistics);
+    m_testStatisticsHelperStubFactory.assertNoMoreCalls();
+
+    // No correction for errors.
+    testData.start();
+    testData.end(true);
+
+    m_testStatisticsHelperStubFactory.setResult("getSuccess", Boolean.FALSE);
+    dispatchContext.report();
+
+    m_testStatisticsHelperStubFactory.assertSuccess(
+      "recordTest", StatisticsSet.class, Long.class);
+    m_testStatisticsHelperStubFactory.assertSuccess(
+      "getSuccess", StatisticsSet.class);
+    m_testStatisticsHelperStubFactory.assertSuccess(
+      "getSuccess", StatisticsSet.class);
+    m_testStatisticsHelperStubFactory.assertSuccess(
+      "incrementErrors", testData.getTestStatistics());
+    m_testStatisticsHelperStubFactory.assertNoMoreCalls();
+  }
+
   public void testCreateProxy() throws Exception {
     final Test test1 = new StubTest(1, "test1");
 
     final TestData testData =
       new TestData(null, m_statisticsSetFactory, null,
-                   m_timeAuthority, m_instrumenter, test1);
+                   m_timeAuthority, m_instrumenter, test1, 0, 0, false);
 
     final Object original = new Object();
 
@@ -108,7 +233,10 @@ public class TestTestData extends TestCase {
                    m_testStatisticsHelper,
                    m_timeAuthority,
                    m_instrumenter,
-                   test1);
+                   test1,
+                   0,
+                   0,
+                   false);
 
     assertSame(test1, testData.getTest());
     final StatisticsSet statistics = testData.getTestStatistics();
@@ -254,7 +382,10 @@ public class TestTestData extends TestCase {
                    testStatisticsHelper,
                    m_timeAuthority,
                    m_instrumenter,
-                   test1);
+                   test1,
+                   0,
+                   0,
+                   false);
 
     assertSame(test1, testData.getTest());
     final StatisticsSet statistics = testData.getTestStatistics();
@@ -304,7 +435,7 @@ public class TestTestData extends TestCase {
       public void add(StopWatch watch) { }
 
       public long getTime() throws StopWatchRunningException {
-        return 1000;
+        return 1000000000L;
       }
       public boolean isRunning() {
         return false;
@@ -367,6 +498,79 @@ public class TestTestData extends TestCase {
     assertTrue(statistics.isComposite());
   }
 
+  public void testNestedTestStatistics() throws Exception {
+    final GrinderProperties properties = new GrinderProperties();
+    properties.setBoolean("grinder.logData", false);
+
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(
+        properties,
+        StatisticsServicesImplementation.getInstance(),
+        0,
+        null);
+
+    m_threadContextLocator.set(threadContext);
+
+    final TestStatisticsHelper testStatisticsHelper =
+      new TestStatisticsHelperImplementation(
+        StatisticsServicesImplementation.getInstance().getStatisticsIndexMap());
+
+    final Test test1 = new StubTest(1, "test1");
+    final Test test2 = new StubTest(2, "test2");
+
+    final TestData parent =
+      new TestData(m_threadContextLocator, m_statisticsSetFactory,
+                   testStatisticsHelper, m_timeAuthority, m_instrumenter,
+                   test1, 0, 0, true);
+
+    final TestData child =
+      new TestData(m_threadContextLocator, m_statisticsSetFactory,
+                   testStatisticsHelper, m_timeAuthority, m_instrumenter,
+                   test2, 1, 0, true);
+
+    parent.start();
+    child.start();
+    Thread.sleep(20);
+    child.end(true);
+    parent.end(true);
+
+    assertNull(parent.getParentTest());
+    assertSame(test1, child.getParentTest());
+
+    final StatisticsIndexMap.LongIndex nestedTimeIndex =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap()
+      .getLongIndex("nestedTime");
+
+    final StatisticsSet parentStatistics = parent.getTestStatistics();
+    final StatisticsSet childStatistics = child.getTestStatistics();
+
+    assertEquals(0, childStatistics.getValue(nestedTimeIndex));
+
+    final long nestedTime = parentStatistics.getValue(nestedTimeIndex);
+    assertTrue(nestedTime >= (20 - Time.J2SE_TIME_ACCURACY_MILLIS) * 1000);
+    assertTrue(nestedTime <= parentStatistics.getSum(s_timedTestsIndex));
+    assertTrue(nestedTime >= childStatistics.getSum(s_timedTestsIndex));
+
+    // Without the property, nothing is recorded.
+    final TestData parent2 =
+      new TestData(m_threadContextLocator, m_statisticsSetFactory,
+                   testStatisticsHelper, m_timeAuthority, m_instrumenter,
+                   new StubTest(3, "test3"), 2, 0, false);
+
+    final TestData child2 =
+      new TestData(m_threadContextLocator, m_statisticsSetFactory,
+                   testStatisticsHelper, m_timeAuthority, m_instrumenter,
+                   new StubTest(4, "test4"), 3, 0, false);
+
+    parent2.start();
+    child2.start();
+    child2.end(true);
+    parent2.end(true);
+
+    assertNull(child2.getParentTest());
+    assertEquals(0, parent2.getTestStatistics().getValue(nestedTimeIndex));
+  }
+
   public void testDispatchForBug1593169() throws Exception {
     final TestData testData =
       new TestData(m_threadContextLocator,
@@ -374,7 +578,10 @@ public class TestTestData extends TestCase {
                    m_testStatisticsHelper,
                    m_timeAuthority,
                    m_instrumenter,
-                   new StubTest(1, "test1"));
+                   new StubTest(1, "test1"),
+                   0,
+                   0,
+                   false);
 
 
     m_threadContextLocator.set(m_threadContext);
@@ -395,4 +602,31 @@ public class TestTestData extends TestCase {
                                                DispatchContext.class);
     m_threadContextStubFactory.assertNoMoreCalls();
   }
+
+  /**
+   * Thread context stub that stores test recorders.
+   */
+  public static final class ThreadContextStubFactory
+    extends RandomStubFactory<ThreadContext> {
+
+    private final Map<Integer, Recorder> m_testRecorders =
+      new HashMap<Integer, Recorder>();
+
+    public ThreadContextStubFactory() {
+      super(ThreadContext.class);
+      setIgnoreMethod("getTestRecorder");
+      setIgnoreMethod("setTestRecorder");
+    }
+
+    public Recorder override_getTestRecorder(final Object proxy,
+                                             final int testOrdinal) {
+      return m_testRecorders.get(testOrdinal);
+    }
+
+    public void override_setTestRecorder(final Object proxy,
+                                         final int testOrdinal,
+                                         final Recorder recorder) {
+      m_testRecorders.put(testOrdinal, recorder);
+    }
+  }
 }
@@ -0,0 +1,125 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+import java.lang.management.ManagementFactory;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.StubTest;
+import net.grinder.scriptengine.Instrumenter;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.util.StandardTimeAuthority;
+
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+
+/**
+ * Checks that dispatching a test through {@link TestData} doesn't allocate.
+ *
+ * @author Philip Aston
+ */
+public class TestTestDataAllocation {
+
+  @Test public void testDispatchDoesNotAllocate() throws Exception {
+    final Object threadMXBean = ManagementFactory.getThreadMXBean();
+
+    // Allocation can only be measured on some JVMs.
+    assumeTrue(threadMXBean instanceof ThreadMXBean);
+
+    final ThreadMXBean allocationMXBean = (ThreadMXBean) threadMXBean;
+
+    assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+    allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+
+    final StatisticsIndexMap.LongSampleIndex timedTestsIndex =
+      statisticsServices.getStatisticsIndexMap()
+      .getLongSampleIndex("timedTests");
+
+    final GrinderProperties properties = new GrinderProperties();
+    properties.setBoolean("grinder.logData", false);
+
+    final StubThreadContextLocator threadContextLocator =
+      new StubThreadContextLocator();
+
+    threadContextLocator.set(
+      new ThreadContextImplementation(properties, statisticsServices, 0, null));
+
+    final TestData testData =
+      new TestData(threadContextLocator,
+                   statisticsServices.getStatisticsSetFactory(),
+                   new TestStatisticsHelperImplementation(
+                     statisticsServices.getStatisticsIndexMap()),
+                   new StandardTimeAuthority(),
+                   mock(Instrumenter.class),
+                   new StubTest(1, "test1"),
+                   0,
+                   0,
+                   false);
+
+    final int n = 100000;
+    final int rounds = 5;
+
+    // Warm up.
+    for (int i = 0; i < n; ++i) {
+      testData.start();
+      testData.end(true);
+    }
+
+    final long threadID = Thread.currentThread().getId();
+    long allocated = Long.MAX_VALUE;
+
+    // Compilation and the measurement itself can allocate, so take the best
+    // of several rounds.
+    for (int r = 0; r < rounds; ++r) {
+      final long before = allocationMXBean.getThreadAllocatedBytes(threadID);
+
+      for (int i = 0; i < n; ++i) {
+        testData.start();
+        testData.end(true);
+      }
+
+      allocated = Math.min(
+        allocated,
+        allocationMXBean.getThreadAllocatedBytes(threadID) - before);
+    }
+
+    assertEquals((1 + rounds) * n,
+                 testData.getTestStatistics().getCount(timedTestsIndex));
+
+    // A single object per dispatch would be at least 16 bytes. Allow less
+    // than one byte per dispatch for incidental allocation.
+    assertTrue("Allocated " + allocated + " bytes for " + n + " tests",
+               allocated < n);
+  }
+}
@@ -21,14 +21,19 @@
 
 package net.grinder.engine.process;
 
+import java.util.Map;
+
 import junit.framework.TestCase;
+import net.grinder.common.GrinderProperties;
 import net.grinder.common.StubTest;
 import net.grinder.common.Test;
 import net.grinder.common.TimeAuthority;
 import net.grinder.scriptengine.Instrumenter;
+import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsServicesImplementation;
 import net.grinder.statistics.StatisticsSetFactory;
 import net.grinder.testutility.RandomStubFactory;
+import net.grinder.util.StandardTimeAuthority;
 import net.grinder.util.TimeAuthorityStubFactory;
 
 
@@ -62,7 +67,7 @@ public class TestTestRegistry extends TestCase {
     final TestRegistryImplementation testRegistryImplementation =
       new TestRegistryImplementation(
         threadContextLocator, statisticsSetFactory, m_testStatisticsHelper,
-        m_timeAuthority);
+        m_timeAuthority, 0, false);
 
     assertNotNull(testRegistryImplementation.getTestStatisticsMap());
 
@@ -79,7 +84,7 @@ public class TestTestRegistry extends TestCase {
     final TestRegistryImplementation testRegistryImplementation =
       new TestRegistryImplementation(
         threadContextLocator, statisticsSetFactory, m_testStatisticsHelper,
-        m_timeAuthority);
+        m_timeAuthority, 0, false);
 
     assertNull(testRegistryImplementation.getNewTests());
 
@@ -110,10 +115,76 @@ public class TestTestRegistry extends TestCase {
     assertSame(registeredTest1a, registeredTest1b);
     assertNotSame(registeredTest2, registeredTest1a);
 
+    // Tests are given dense ordinals in registration order.
+    assertEquals(0, ((TestData) registeredTest1a).getOrdinal());
+    assertEquals(1, ((TestData) registeredTest2).getOrdinal());
+
     assertTrue(testRegistryImplementation.getNewTests().contains(test1));
     assertNull(testRegistryImplementation.getNewTests());
 
+    assertFalse(testRegistryImplementation.hasExpectedIntervals());
+    registeredTest2.setExpectedInterval(100);
+    assertTrue(testRegistryImplementation.hasExpectedIntervals());
+    registeredTest2.setExpectedInterval(0);
+    assertFalse(testRegistryImplementation.hasExpectedIntervals());
+
     m_testStatisticsHelperStubFactory.assertNoMoreCalls();
     m_timeAuthorityStubFactory.assertNoMoreCalls();
   }
+
+  public void testGetNewParents() throws Exception {
+    final StubThreadContextLocator threadContextLocator =
+      new StubThreadContextLocator();
+
+    final GrinderProperties properties = new GrinderProperties();
+    properties.setBoolean("grinder.logData", false);
+
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+
+    threadContextLocator.set(
+      new ThreadContextImplementation(properties, statisticsServices, 0, null));
+
+    final TestRegistryImplementation testRegistryImplementation =
+      new TestRegistryImplementation(
+        threadContextLocator,
+        statisticsServices.getStatisticsSetFactory(),
+        new TestStatisticsHelperImplementation(
+          statisticsServices.getStatisticsIndexMap()),
+        new StandardTimeAuthority(),
+        0,
+        true);
+
+    testRegistryImplementation.setInstrumenter(
+      RandomStubFactory.create(Instrumenter.class).getStub());
+
+    assertNull(testRegistryImplementation.getNewParents());
+
+    final Test test1 = new StubTest(1, "Test 1");
+    final Test test2 = new StubTest(2, "Test 2");
+
+    final TestData testData1 =
+      (TestData) testRegistryImplementation.register(test1);
+    final TestData testData2 =
+      (TestData) testRegistryImplementation.register(test2);
+
+    testData1.start();
+    testData2.start();
+    testData2.end(true);
+    testData1.end(true);
+
+    final Map<Test, Test> parents = testRegistryImplementation.getNewParents();
+    assertEquals(1, parents.size());
+    assertSame(test1, parents.get(test2));
+
+    assertNull(testRegistryImplementation.getNewParents());
+
+    // Links are only reported once.
+    testData1.start();
+    testData2.start();
+    testData2.end(true);
+    testData1.end(true);
+
+    assertNull(testRegistryImplementation.getNewParents());
+  }
 }
@@ -107,6 +107,34 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
     assertEquals(0, statistics.getValue(m_untimedTestsIndex));
   }
 
+  public void testRecordCorrectedTest() throws Exception {
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    final TestStatisticsHelper helper =
+      new TestStatisticsHelperImplementation(m_indexMap);
+
+    final StatisticsIndexMap.LongSampleIndex correctedIndex =
+      m_indexMap.getLongSampleIndex("correctedTimedTests");
+
+    helper.recordCorrectedTest(statistics, 50, 100);
+    assertEquals(1, statistics.getCount(correctedIndex));
+    assertEquals(50, statistics.getSum(correctedIndex));
+
+    // Two executions should have started while the test ran.
+    helper.recordCorrectedTest(statistics, 350, 100);
+    assertEquals(3, statistics.getCount(correctedIndex));
+    assertEquals(350 + 250 + 150, statistics.getSum(correctedIndex));
+    assertEquals(0, statistics.getCount(m_timedTestsIndex));
+
+    final TestStatisticsMap sample = new TestStatisticsMap();
+    sample.put(new StubTest(1, ""), statistics);
+
+    helper.removeTestTimeFromSample(sample);
+    assertEquals(0, statistics.getCount(correctedIndex));
+  }
+
   public void testRemoveTestTimeFromSample() throws Exception {
 
     final TestStatisticsHelper helper =
@@ -114,15 +142,15 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
 
     final StatisticsSet statistics1 =
       m_statisticsServices.getStatisticsSetFactory().create();
-    statistics1.addSample(m_timedTestsIndex, 21321);
-    statistics1.addSample(m_timedTestsIndex, 1231);
+    statistics1.addSample(m_timedTestsIndex, 21321000);
+    statistics1.addSample(m_timedTestsIndex, 1231999);
 
     assertEquals(21321 + 1231, helper.getTestTime(statistics1));
 
     final StatisticsSet statistics2 =
       m_statisticsServices.getStatisticsSetFactory().create();
     statistics2.setValue(m_untimedTestsIndex, 1);
-    statistics2.addSample(m_timedTestsIndex, 18782);
+    statistics2.addSample(m_timedTestsIndex, 18782000);
     statistics2.setValue(m_errorsIndex, 1);
 
     assertEquals(18782, helper.getTestTime(statistics2));
@@ -159,4 +187,20 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
     helper.incrementErrors(statistics);
     assertEquals(3, statistics.getValue(m_errorsIndex));
   }
+
+  public void testRecordScheduledStarts() throws Exception {
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    final TestStatisticsHelper helper =
+      new TestStatisticsHelperImplementation(m_indexMap);
+
+    helper.recordScheduledStarts(statistics, 0, 0);
+    helper.recordScheduledStarts(statistics, 1, 0);
+    helper.recordScheduledStarts(statistics, 1, 3);
+    assertEquals(2, statistics.getValue(m_indexMap.getLongIndex("lateStarts")));
+    assertEquals(3,
+      statistics.getValue(m_indexMap.getLongIndex("droppedStarts")));
+  }
 }
@@ -37,11 +37,16 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+
 import net.grinder.common.GrinderProperties;
 import net.grinder.common.SSLContextFactory;
 import net.grinder.common.StubTest;
 import net.grinder.common.ThreadLifeCycleListener;
 import net.grinder.script.Statistics.StatisticsForTest;
+import net.grinder.scriptengine.Recorder;
+import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsServicesImplementation;
 import net.grinder.statistics.StatisticsSet;
@@ -90,6 +95,53 @@ public class TestThreadContextImplementation {
     assertSame(m_sslContextFactory, threadContext.getThreadSSLContextFactory());
   }
 
+  @Test public void testTestRecorders() throws Exception {
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(m_properties,
+                                      m_statisticsServices,
+                                      13,
+                                      null);
+
+    final Recorder recorder1 = mock(Recorder.class);
+    final Recorder recorder2 = mock(Recorder.class);
+
+    assertNull(threadContext.getTestRecorder(0));
+    assertNull(threadContext.getTestRecorder(1000));
+
+    threadContext.setTestRecorder(0, recorder1);
+    threadContext.setTestRecorder(1000, recorder2);
+
+    assertSame(recorder1, threadContext.getTestRecorder(0));
+    assertNull(threadContext.getTestRecorder(1));
+    assertSame(recorder2, threadContext.getTestRecorder(1000));
+    assertNull(threadContext.getTestRecorder(1001));
+  }
+
+  @Test public void testScheduledStart() throws Exception {
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(m_properties,
+                                      m_statisticsServices,
+                                      13,
+                                      null);
+
+    assertNull(threadContext.takeScheduledStart());
+
+    final ArrivalSchedule.ScheduledStart start1 =
+      new ArrivalSchedule.ScheduledStart(10, 1, 2);
+    threadContext.setScheduledStart(start1);
+    assertSame(start1, threadContext.takeScheduledStart());
+    assertNull(threadContext.takeScheduledStart());
+
+    threadContext.setScheduledStart(start1);
+    threadContext.setScheduledStart(new ArrivalSchedule.ScheduledStart(5, 0, 1));
+
+    final ArrivalSchedule.ScheduledStart merged =
+      threadContext.takeScheduledStart();
+    assertEquals(5, merged.getDelay());
+    assertEquals(1, merged.getLateStarts());
+    assertEquals(3, merged.getDroppedStarts());
+  }
+
   @Test public void testDispatchResultReporter() throws Exception {
 
     final ThreadContext threadContext =
@@ -136,6 +188,48 @@ public class TestThreadContextImplementation {
     verifyNoMoreInteractions(m_dataLogger);
   }
 
+  @Test public void testBinaryDispatchResultReporter() throws Exception {
+
+    final BinaryDataLogger binaryDataLogger =
+      new BinaryDataLogger(
+        new ByteArrayOutputStream(),
+        m_statisticsServices.getDetailStatisticsView().getExpressionViews(),
+        1,
+        m_dataLogger);
+
+    // Stop the writer so the buffer fills.
+    binaryDataLogger.shutdown();
+
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(m_properties,
+                                      m_statisticsServices,
+                                      1,
+                                      m_dataLogger,
+                                      binaryDataLogger);
+
+    final DispatchResultReporter dispatchResultReporter =
+      threadContext.getDispatchResultReporter();
+
+    final net.grinder.common.Test test = new StubTest(22, "test");
+
+    final StatisticsIndexMap.LongIndex droppedIndex =
+      m_statisticsServices.getStatisticsIndexMap().getLongIndex(
+        "droppedDataLogRecords");
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    dispatchResultReporter.report(test, 123456, statistics);
+    assertEquals(0, statistics.getValue(droppedIndex));
+
+    dispatchResultReporter.report(test, 123457, statistics);
+    assertEquals(1, statistics.getValue(droppedIndex));
+
+    assertEquals(1, binaryDataLogger.getDropped());
+
+    verifyNoMoreInteractions(m_dataLogger);
+  }
+
   @Test public void testDispatchContext() throws Exception {
     final ThreadContext threadContext =
       new ThreadContextImplementation(m_properties,
@@ -343,6 +437,34 @@ public class TestThreadContextImplementation {
     verifyNoMoreInteractions(m_dispatchContext);
   }
 
+  @Test public void testNestedDispatchContexts() throws Exception {
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(m_properties,
+                                      m_statisticsServices,
+                                      1,
+                                      null);
+
+    final DispatchContext nestedDispatchContext = mock(DispatchContext.class);
+    final StopWatch pauseTimer = mock(StopWatch.class);
+    final StopWatch nestedPauseTimer = mock(StopWatch.class);
+
+    when(m_dispatchContext.getPauseTimer()).thenReturn(pauseTimer);
+    when(nestedDispatchContext.getPauseTimer()).thenReturn(nestedPauseTimer);
+
+    threadContext.pushDispatchContext(m_dispatchContext);
+    threadContext.pushDispatchContext(nestedDispatchContext);
+    verify(m_dispatchContext).setHasNestedContexts();
+
+    threadContext.popDispatchContext();
+    verify(pauseTimer).add(nestedPauseTimer);
+    verify(nestedDispatchContext).endedWithin(m_dispatchContext);
+    verify(nestedDispatchContext).report();
+
+    threadContext.popDispatchContext();
+    verify(m_dispatchContext).report();
+    verify(m_dispatchContext, times(0)).endedWithin(isA(DispatchContext.class));
+  }
+
   @Test public void testDispatchContextWhenShuttingDown() throws Exception {
     final ThreadContext threadContext =
       new ThreadContextImplementation(m_properties,
@@ -82,11 +82,12 @@ public class TestThreadDataLogger {
     final StatisticsSet statistics =
       m_statisticsServices.getStatisticsSetFactory().create();
 
-    statistics.addSample(s_timedTestsIndex, 99);
+    // Test times are recorded in microseconds, and logged in milliseconds.
+    statistics.addSample(s_timedTestsIndex, 99123);
 
     ThreadDataLogger.report(10, m_test1, 123L, statistics);
 
-    verify(m_dataLogger).info(eq("33, 10, 1, 123, 99, 0"),
+    verify(m_dataLogger).info(eq("33, 10, 1, 123, 99.123, 0"),
                               m_argumentCaptor.capture());
 
     final DataLogArguments arguments = m_argumentCaptor.getValue();
@@ -99,12 +100,12 @@ public class TestThreadDataLogger {
 
     ThreadDataLogger.report(10, m_test1, 125L, statistics);
 
-    verify(m_dataLogger).info(eq("33, 10, 1, 125, 99, 0"),
+    verify(m_dataLogger).info(eq("33, 10, 1, 125, 99.123, 0"),
                               m_argumentCaptor.capture());
 
     ThreadDataLogger.report(11, m_test3, 300L, statistics);
 
-    verify(m_dataLogger).info(eq("33, 11, 3, 300, 99, 0"),
+    verify(m_dataLogger).info(eq("33, 11, 3, 300, 99.123, 0"),
                               m_argumentCaptor.capture());
 
     statistics.reset();
@@ -112,7 +113,7 @@ public class TestThreadDataLogger {
 
     ThreadDataLogger.report(11, m_test3, 301L, statistics);
 
-    verify(m_dataLogger).info(eq("33, 11, 3, 301, 0, 1"),
+    verify(m_dataLogger).info(eq("33, 11, 3, 301, 0.0, 1"),
                               m_argumentCaptor.capture());
   }
 
@@ -125,7 +126,7 @@ public class TestThreadDataLogger {
     final StatisticsSet statistics =
       m_statisticsServices.getStatisticsSetFactory().create();
 
-    statistics.addSample(s_timedTestsIndex, 5);
+    statistics.addSample(s_timedTestsIndex, 5000);
     statistics.addValue(s_userDouble0Index, 1.5);
 
     final ThreadDataLogger ThreadDataLogger2 =
@@ -136,7 +137,7 @@ public class TestThreadDataLogger {
 
     ThreadDataLogger2.report(11, m_test3, 530L, statistics);
 
-    verify(m_dataLogger).info(eq("33, 11, 3, 530, 5, 0, 1.5"),
+    verify(m_dataLogger).info(eq("33, 11, 3, 530, 5.0, 0, 1.5"),
                               m_argumentCaptor.capture());
   }
 }
@@ -0,0 +1,245 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process.dcr;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Method;
+
+import net.grinder.engine.common.EngineException;
+import net.grinder.scriptengine.Recorder;
+import net.grinder.util.weave.ClassSource;
+import net.grinder.util.weave.ParameterSource;
+import net.grinder.util.weave.Weaver;
+import net.grinder.util.weave.agent.ExposeInstrumentation;
+import net.grinder.util.weave.j2se6.ASMTransformerFactory;
+import net.grinder.util.weave.j2se6.DCRWeaver;
+
+
+/**
+ * Compares the cost of calling uninstrumented methods with the cost of
+ * calling methods woven with {@link RecorderLocator} advice, dispatched
+ * either by location string or by call site index.
+ *
+ * <p>
+ * Each woven method has a single recorder that does nothing, so the
+ * difference from the uninstrumented call is the dispatch overhead.
+ * </p>
+ *
+ * <p>
+ * Not a unit test. Run manually with:
+ * <code>java -javaagent:grinder-dcr-agent.jar -cp ...
+ * net.grinder.engine.process.dcr.RecorderLocatorBenchmark
+ * [iterations]</code>.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class RecorderLocatorBenchmark {
+
+  private static final Recorder NULL_RECORDER = new Recorder() {
+      @Override public void start() throws EngineException { }
+
+      @Override public void end(final boolean success)
+        throws EngineException { }
+    };
+
+  private final RecorderRegistry m_registry =
+    RecorderLocator.getRecorderRegistry();
+
+  private int m_result;
+
+  /**
+   * Weave the methods of a target class, and register a recorder for the
+   * class and for an instance.
+   *
+   * @return The instrumented instance.
+   */
+  private <T> T weave(final Weaver weaver, final Class<T> target)
+    throws Exception {
+
+    final Method staticMethod = target.getMethod("f", Integer.TYPE);
+    m_registry.register(target,
+                        weaver.weave(staticMethod, ClassSource.CLASS),
+                        NULL_RECORDER);
+
+    final Method instanceMethod = target.getMethod("g", Integer.TYPE);
+    final T instance = target.newInstance();
+    m_registry.register(instance,
+                        weaver.weave(instanceMethod,
+                                     ParameterSource.FIRST_PARAMETER),
+                        NULL_RECORDER);
+
+    return instance;
+  }
+
+  private double timeStatic(final Target target, final int iterations) {
+    final long start = System.nanoTime();
+
+    int result = 0;
+
+    for (int i = 0; i < iterations; ++i) {
+      result += target.callStatic(i);
+    }
+
+    m_result += result;
+
+    return (System.nanoTime() - start) / (double) iterations;
+  }
+
+  private double timeInstance(final Target target, final int iterations) {
+    final long start = System.nanoTime();
+
+    int result = 0;
+
+    for (int i = 0; i < iterations; ++i) {
+      result += target.callInstance(i);
+    }
+
+    m_result += result;
+
+    return (System.nanoTime() - start) / (double) iterations;
+  }
+
+  private void run(final int iterations) throws Exception {
+    final Instrumentation instrumentation =
+      ExposeInstrumentation.getInstrumentation();
+
+    if (instrumentation == null) {
+      System.err.println("Instrumentation is not available, " +
+                         "please add -javaagent:grinder-dcr-agent.jar");
+      return;
+    }
+
+    final DCRWeaver locationWeaver =
+      new DCRWeaver(new ASMTransformerFactory(LocationAdvice.class),
+                    instrumentation);
+    final ByLocation byLocation = weave(locationWeaver, ByLocation.class);
+    locationWeaver.applyChanges();
+
+    final DCRWeaver callSiteWeaver =
+      new DCRWeaver(new ASMTransformerFactory(RecorderLocator.class),
+                    instrumentation);
+    final ByCallSite byCallSite = weave(callSiteWeaver, ByCallSite.class);
+    callSiteWeaver.applyChanges();
+
+    final Plain plain = new Plain();
+
+    final Target[] targets = {
+      new Target("uninstrumented") {
+        @Override int callStatic(final int i) { return Plain.f(i); }
+        @Override int callInstance(final int i) { return plain.g(i); }
+      },
+      new Target("location string") {
+        @Override int callStatic(final int i) { return ByLocation.f(i); }
+        @Override int callInstance(final int i) { return byLocation.g(i); }
+      },
+      new Target("call site") {
+        @Override int callStatic(final int i) { return ByCallSite.f(i); }
+        @Override int callInstance(final int i) { return byCallSite.g(i); }
+      },
+    };
+
+    // Warm up.
+    for (final Target target : targets) {
+      timeStatic(target, iterations / 10);
+      timeInstance(target, iterations / 10);
+    }
+
+    System.out.printf("%20s %20s %20s%n",
+                      "dispatch", "static ns/call", "instance ns/call");
+
+    for (final Target target : targets) {
+      System.out.printf("%20s %20.1f %20.1f%n",
+                        target.m_name,
+                        timeStatic(target, iterations),
+                        timeInstance(target, iterations));
+    }
+
+    System.out.printf("(%d)%n", m_result);
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final int iterations =
+      args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+
+    new RecorderLocatorBenchmark().run(iterations);
+  }
+
+  private abstract static class Target {
+    private final String m_name;
+
+    Target(final String name) {
+      m_name = name;
+    }
+
+    abstract int callStatic(int i);
+
+    abstract int callInstance(int i);
+  }
+
+  /**
+   * Advice that dispatches by location string, as woven code did before
+   * call sites were introduced.
+   */
+  public static final class LocationAdvice {
+    public static void enter(final Object reference, final String location) {
+      RecorderLocator.enter(reference, location);
+    }
+
+    public static void enter(final Object reference,
+                             final Object reference2,
+                             final String location) {
+      RecorderLocator.enter(reference, reference2, location);
+    }
+
+    public static void exit(final Object reference,
+                            final String location,
+                            final boolean success) {
+      RecorderLocator.exit(reference, location, success);
+    }
+
+    public static void exit(final Object reference,
+                            final Object reference2,
+                            final String location,
+                            final boolean success) {
+      RecorderLocator.exit(reference, reference2, location, success);
+    }
+  }
+
+  public static final class Plain {
+    public static int f(final int i) { return i & 7; }
+
+    public int g(final int i) { return i & 7; }
+  }
+
+  public static final class ByLocation {
+    public static int f(final int i) { return i & 7; }
+
+    public int g(final int i) { return i & 7; }
+  }
+
+  public static final class ByCallSite {
+    public static int f(final int i) { return i & 7; }
+
+    public int g(final int i) { return i & 7; }
+  }
+}
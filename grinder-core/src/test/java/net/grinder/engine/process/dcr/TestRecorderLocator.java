@@ -286,6 +286,122 @@ public class TestRecorderLocator {
     verifyNoMoreInteractions(m_recorder);
   }
 
+  @Test public void testCallSites() throws Exception {
+    final int site = RecorderLocator.callSite("site1");
+    final int site2 = RecorderLocator.callSite(new String("site2"));
+
+    assertEquals(site, RecorderLocator.callSite(new String("site1")));
+    assertTrue(site != site2);
+
+    final Object target = new Object();
+    final Object target2 = new Object();
+
+    RecorderLocator.enter(target, site);
+    RecorderLocator.exit(target, site, true);
+
+    m_recorderRegistry.register(target, "site1", m_recorder);
+
+    RecorderLocator.enter(target, site);
+    verify(m_recorder).start();
+
+    RecorderLocator.exit(target, site, true);
+    verify(m_recorder).end(true);
+
+    // Wrong target, wrong call site.
+    RecorderLocator.enter(target2, site);
+    RecorderLocator.exit(target2, site, true);
+    RecorderLocator.enter(target, site2);
+    RecorderLocator.exit(target, site2, true);
+    RecorderLocator.enter(null, site);
+    RecorderLocator.exit(null, site, true);
+
+    // Location and call site are interchangeable.
+    RecorderLocator.enter(target, "site1");
+    verify(m_recorder, times(2)).start();
+
+    // A second target replaces the direct binding with a lookup.
+    m_recorderRegistry.register(target2, "site1", m_recorder2);
+
+    RecorderLocator.enter(target, site);
+    verify(m_recorder, times(3)).start();
+
+    RecorderLocator.enter(target2, site);
+    verify(m_recorder2).start();
+
+    m_recorderRegistry.register(target, "site1", m_recorder2);
+
+    RecorderLocator.exit(target, site, false);
+    verify(m_recorder2).end(false);
+    verify(m_recorder).end(false);
+
+    verifyNoMoreInteractions(m_recorder, m_recorder2);
+  }
+
+  @Test public void testCallSitesTwoTargets() throws Exception {
+    final int site = RecorderLocator.callSite("site3");
+
+    final Object target = new Object();
+    final Object target2 = new Object();
+
+    m_recorderRegistry.register(target, target2, "site3", m_recorder);
+
+    RecorderLocator.enter(target, target2, site);
+    verify(m_recorder).start();
+
+    RecorderLocator.exit(target, target2, site, true);
+    verify(m_recorder).end(true);
+
+    RecorderLocator.enter(target2, target, site);
+    RecorderLocator.exit(target, target, site, true);
+    RecorderLocator.enter(target, site);
+    RecorderLocator.enter(null, target2, site);
+    RecorderLocator.exit(target, null, site, true);
+
+    m_recorderRegistry.register(target, target, "site3", m_recorder2);
+
+    RecorderLocator.enter(target, target2, site);
+    verify(m_recorder, times(2)).start();
+
+    RecorderLocator.enter(target, target, site);
+    verify(m_recorder2).start();
+
+    verifyNoMoreInteractions(m_recorder, m_recorder2);
+  }
+
+  @Test public void testCallSitesCleared() throws Exception {
+    final int site = RecorderLocator.callSite("site4");
+
+    final Object target = new Object();
+
+    m_recorderRegistry.register(target, "site4", m_recorder);
+
+    RecorderLocator.clearRecorders();
+
+    RecorderLocator.enter(target, site);
+    RecorderLocator.exit(target, site, true);
+
+    assertEquals(site, RecorderLocator.callSite("site4"));
+
+    verifyNoMoreInteractions(m_recorder);
+  }
+
+  @Test public void testManyCallSites() throws Exception {
+    final Object target = new Object();
+
+    final int[] sites = new int[1000];
+
+    for (int i = 0; i < sites.length; ++i) {
+      sites[i] = RecorderLocator.callSite("many" + i);
+      m_recorderRegistry.register(target, "many" + i, m_recorder);
+    }
+
+    for (final int site : sites) {
+      RecorderLocator.enter(target, site);
+    }
+
+    verify(m_recorder, times(sites.length)).start();
+  }
+
   @Test public void testConcurrency() throws Exception {
     final ExecutorService executor = Executors.newCachedThreadPool();
 
@@ -0,0 +1,121 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.messages.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.processidentity.ProcessReport.State;
+import net.grinder.communication.CompactMessageEncoding;
+import net.grinder.communication.Message;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+import net.grinder.statistics.TestStatisticsMap;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link ConsoleMessageEncodings}.
+ *
+ * @author Philip Aston
+ */
+public class TestConsoleMessageEncodings {
+
+  private static <T extends Message> T roundTrip(
+    CompactMessageEncoding<T> encoding, T message) throws IOException {
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    encoding.write(message, new DataOutputStream(bytes));
+
+    return encoding.read(
+      new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test public void testReportStatistics() throws Exception {
+    final StatisticsSetFactory statisticsSetFactory =
+      StatisticsServicesImplementation.getInstance().getStatisticsSetFactory();
+    final StatisticsIndexMap indexMap =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap();
+
+    final TestStatisticsMap statisticsDelta =
+      new TestStatisticsMap(statisticsSetFactory);
+
+    final StatisticsSet statistics = statisticsSetFactory.create();
+    statistics.addValue(indexMap.getLongIndex("errors"), 2);
+    statistics.addSample(indexMap.getLongSampleIndex("timedTests"), 99);
+    statistics.addSample(indexMap.getLongSampleIndex("timedTests"), 1234);
+    statisticsDelta.put(new StubTest(1, "one"), statistics);
+    statisticsDelta.put(new StubTest(9, "nine"),
+                        statisticsSetFactory.create());
+
+    final ConsoleMessageEncodings.ReportStatistics encoding =
+      new ConsoleMessageEncodings.ReportStatistics();
+
+    assertEquals(ReportStatisticsMessage.class, encoding.getMessageClass());
+
+    final ReportStatisticsMessage received =
+      roundTrip(encoding, new ReportStatisticsMessage(statisticsDelta));
+
+    assertEquals(statisticsDelta, received.getStatisticsDelta());
+  }
+
+  @Test public void testWorkerProcessReport() throws Exception {
+    final ConsoleMessageEncodings.WorkerProcessReport encoding =
+      new ConsoleMessageEncodings.WorkerProcessReport();
+
+    assertEquals(WorkerProcessReportMessage.class,
+                 encoding.getMessageClass());
+
+    for (State state : State.values()) {
+      final WorkerProcessReportMessage original =
+        new WorkerProcessReportMessage(state, 2, 40000);
+
+      final WorkerProcessReportMessage received =
+        roundTrip(encoding, original);
+
+      assertEquals(original, received);
+    }
+  }
+
+  @Test public void testWorkerProcessReportBadState() throws Exception {
+    final ConsoleMessageEncodings.WorkerProcessReport encoding =
+      new ConsoleMessageEncodings.WorkerProcessReport();
+
+    try {
+      encoding.read(new DataInputStream(
+        new ByteArrayInputStream(new byte[] { 99, 0, 0, 0, 0 })));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+}
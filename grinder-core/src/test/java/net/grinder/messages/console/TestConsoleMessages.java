@@ -23,6 +23,9 @@ package net.grinder.messages.console;
 
 import static net.grinder.testutility.AssertUtilities.assertNotEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -30,19 +33,30 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
+import net.grinder.common.StubTest;
 import net.grinder.common.processidentity.ProcessReport.State;
 import net.grinder.common.processidentity.WorkerIdentity;
 import net.grinder.communication.Address;
 import net.grinder.communication.CommunicationException;
+import net.grinder.communication.Message;
+import net.grinder.communication.MessageDispatchRegistry.AbstractHandler;
+import net.grinder.communication.MessageDispatchSender;
 import net.grinder.engine.agent.StubAgentIdentity;
 import net.grinder.messages.agent.CacheHighWaterMark;
 import net.grinder.messages.agent.StubCacheHighWaterMark;
 import net.grinder.statistics.ExpressionView;
 import net.grinder.statistics.StatisticExpressionFactory;
+import net.grinder.statistics.SparseTestStatistics;
+import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
 import net.grinder.statistics.StatisticsSetFactory;
 import net.grinder.statistics.TestStatisticsMap;
 import net.grinder.testutility.Serializer;
@@ -121,6 +135,22 @@ public class TestConsoleMessages {
     assertEquals(original.getTests(), received.getTests());
   }
 
+  @Test public void testRegisterTestParentsMessage() throws Exception {
+
+    final Map<net.grinder.common.Test, net.grinder.common.Test> parents =
+      new HashMap<net.grinder.common.Test, net.grinder.common.Test>();
+
+    final RegisterTestParentsMessage original =
+      new RegisterTestParentsMessage(parents);
+
+    assertSame(parents, original.getParents());
+
+    final RegisterTestParentsMessage received =
+      Serializer.serialize(original);
+
+    assertEquals(original.getParents(), received.getParents());
+  }
+
   @Test public void testReportStatisticsMessage() throws Exception {
 
     final StatisticsSetFactory statisticsSetFactory =
@@ -136,6 +166,81 @@ public class TestConsoleMessages {
     final ReportStatisticsMessage received = Serializer.serialize(original);
 
     assertEquals(original.getStatisticsDelta(), received.getStatisticsDelta());
+    assertSame(statisticsDelta, original.getStatistics());
+  }
+
+  @Test public void testSparseReportStatisticsMessage() throws Exception {
+
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+    final TestStatisticsMap statisticsDelta =
+      new TestStatisticsMap(statisticsServices.getStatisticsSetFactory());
+
+    final StatisticsSet statistics =
+      statisticsServices.getStatisticsSetFactory().create();
+    statistics.addValue(
+      statisticsServices.getStatisticsIndexMap().getLongIndex("errors"), 2);
+    statisticsDelta.put(new StubTest(1, ""), statistics);
+
+    final SparseTestStatistics sparse =
+      new SparseTestStatistics(statisticsDelta);
+
+    final ReportStatisticsMessage original =
+      new ReportStatisticsMessage(sparse);
+
+    assertSame(sparse, original.getStatistics());
+    assertSame(sparse, original.getSparseStatistics());
+    assertEquals(statisticsDelta, original.getStatisticsDelta());
+
+    final ReportStatisticsMessage received = Serializer.serialize(original);
+
+    assertEquals(statisticsDelta, received.getStatisticsDelta());
+    assertEquals(sparse.getEncodedSize(),
+                 received.getSparseStatistics().getEncodedSize());
+  }
+
+  @Test public void testRelayedReportsMessage() throws Exception {
+
+    final WorkerIdentity workerIdentity =
+      new StubAgentIdentity("Agent").createWorkerIdentity();
+    final WorkerAddress address = new WorkerAddress(workerIdentity);
+
+    final RelayedReportsMessage original = new RelayedReportsMessage();
+    assertTrue(original.isEmpty());
+
+    final RegisterTestsMessage registerTests =
+      new RegisterTestsMessage(new HashSet<net.grinder.common.Test>());
+    original.add(null, registerTests);
+
+    final WorkerProcessReportMessage report =
+      new WorkerProcessReportMessage(State.RUNNING, 2, 3);
+    report.setAddress(address);
+    original.add(address, report);
+
+    assertFalse(original.isEmpty());
+    assertEquals(2, original.getMessages().size());
+
+    final RelayedReportsMessage received = Serializer.serialize(original);
+
+    final MessageDispatchSender dispatcher = new MessageDispatchSender();
+    final List<Message> dispatched = new ArrayList<Message>();
+
+    dispatcher.addFallback(new AbstractHandler<Message>() {
+        public void handle(Message message) {
+          dispatched.add(message);
+        }
+      });
+
+    received.dispatch(dispatcher);
+
+    assertEquals(2, dispatched.size());
+    assertTrue(dispatched.get(0) instanceof RegisterTestsMessage);
+
+    final WorkerProcessReportMessage receivedReport =
+      (WorkerProcessReportMessage) dispatched.get(1);
+    assertEquals(report, receivedReport);
+    assertEquals(address, receivedReport.getProcessAddress());
+    assertEquals(workerIdentity, receivedReport.getWorkerIdentity());
   }
 
   @Test public void testWorkerReportMessage() throws Exception {
@@ -145,7 +250,7 @@ public class TestConsoleMessages {
     final WorkerIdentity workerIdentity = agentIdentity.createWorkerIdentity();
 
     final WorkerProcessReportMessage original =
-      new WorkerProcessReportMessage(State.RUNNING, (short)2, (short)3);
+      new WorkerProcessReportMessage(State.RUNNING, 2, 3);
 
     final WorkerAddress address = new WorkerAddress(workerIdentity);
     original.setAddress(address);
@@ -172,7 +277,7 @@ public class TestConsoleMessages {
     final WorkerIdentity workerIdentity = agentIdentity.createWorkerIdentity();
 
     final WorkerProcessReportMessage m1 =
-      new WorkerProcessReportMessage(State.RUNNING, (short)2, (short)3);
+      new WorkerProcessReportMessage(State.RUNNING, 2, 3);
 
     assertEquals(m1, m1);
     assertEquals(m1.hashCode(), m1.hashCode());
@@ -180,7 +285,7 @@ public class TestConsoleMessages {
     assertNotEquals(m1, this);
 
     final WorkerProcessReportMessage m2 =
-        new WorkerProcessReportMessage(State.RUNNING, (short)2, (short)3);
+        new WorkerProcessReportMessage(State.RUNNING, 2, 3);
 
     m2.setAddress(new WorkerAddress(workerIdentity));
 
@@ -189,24 +294,24 @@ public class TestConsoleMessages {
 
     assertNotEquals(m1,
                     new WorkerProcessReportMessage(State.STARTED,
-                                                   (short)2,
-                                                   (short)3));
+                                                   2,
+                                                   3));
 
     assertNotEquals(m1,
                     new WorkerProcessReportMessage(State.RUNNING,
-                                                   (short)1,
-                                                   (short)3));
+                                                   1,
+                                                   3));
     assertNotEquals(m1,
                     new WorkerProcessReportMessage(State.RUNNING,
-                                                   (short)2,
-                                                   (short)2));
+                                                   2,
+                                                   2));
 
   }
 
   @Test public void testWorkerReportMessageBadAddress() throws Exception {
 
     final WorkerProcessReportMessage message =
-      new WorkerProcessReportMessage(State.RUNNING, (short)2, (short)3);
+      new WorkerProcessReportMessage(State.RUNNING, 2, 3);
 
     final Address badAddress =
       new AgentAddress(new StubAgentIdentity("Agent"));
@@ -23,6 +23,7 @@ package net.grinder.script;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -149,6 +150,20 @@ public class TestTest {
     verify(m_instrumenter).instrument(same(t1), isA(Recorder.class), same(i));
   }
 
+  @org.junit.Test public void testSetExpectedInterval() throws Exception {
+    final Test t1 = new Test(1, "baked potatoes");
+
+    t1.setExpectedInterval(100);
+    t1.setExpectedInterval(0);
+
+    try {
+      t1.setExpectedInterval(-1);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (final IllegalArgumentException e) {
+    }
+  }
+
   @org.junit.Test public void testSelectiveRecord() throws Exception {
     final Test t1 = new Test(1, "travelling funk band");
 
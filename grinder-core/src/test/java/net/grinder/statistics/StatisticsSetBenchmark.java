@@ -0,0 +1,158 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.common.StubTest;
+
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
+
+
+/**
+ * Compares the throughput of {@link StatisticsSetImplementation} and
+ * {@link StripedStatisticsSet} when used as a test's cumulative statistics,
+ * for 1 to 512 worker threads.
+ *
+ * <p>
+ * Each worker thread repeatedly adds a per-test statistics set to the shared
+ * cumulative statistics, as {@code TestData} does on every test completion.
+ * A sampler thread takes and resets a snapshot every 500 ms, as the worker
+ * process report timer does.
+ * </p>
+ *
+ * <p>
+ * Not a unit test. Run manually with:
+ * <code>java -cp ... net.grinder.statistics.StatisticsSetBenchmark
+ * [iterations per thread]</code>.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class StatisticsSetBenchmark {
+
+  private static final int MAXIMUM_THREADS = 512;
+  private static final long SAMPLE_INTERVAL = 500;
+
+  private final StatisticsSetFactory m_factory;
+  private final StatisticsSet m_sample;
+
+  public StatisticsSetBenchmark() {
+    final StatisticsServices services =
+      StatisticsServicesImplementation.getInstance();
+
+    m_factory = services.getStatisticsSetFactory();
+
+    final StatisticsIndexMap indexMap = services.getStatisticsIndexMap();
+    final LongIndex untimedTests = indexMap.getLongIndex("untimedTests");
+    final LongSampleIndex timedTests =
+      indexMap.getLongSampleIndex("timedTests");
+
+    m_sample = m_factory.create();
+    m_sample.addValue(untimedTests, 1);
+    m_sample.addSample(timedTests, 123);
+  }
+
+  private double run(final TestStatisticsMap map,
+                     final StatisticsSet cumulative,
+                     final int numberOfThreads,
+                     final int iterations)
+    throws InterruptedException {
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch finished = new CountDownLatch(numberOfThreads);
+
+    for (int i = 0; i < numberOfThreads; ++i) {
+      final Thread t = new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+
+            for (int j = 0; j < iterations; ++j) {
+              cumulative.add(m_sample);
+            }
+          }
+          catch (InterruptedException e) {
+            // Exit.
+          }
+          finally {
+            finished.countDown();
+          }
+        }
+      };
+
+      t.setDaemon(true);
+      t.start();
+    }
+
+    final long startTime = System.nanoTime();
+    start.countDown();
+
+    while (!finished.await(SAMPLE_INTERVAL, TimeUnit.MILLISECONDS)) {
+      map.reset();
+    }
+
+    final long elapsed = System.nanoTime() - startTime;
+
+    map.reset();
+
+    return (double)numberOfThreads * iterations * 1000000000d / elapsed;
+  }
+
+  private void run(int iterations) throws InterruptedException {
+    final int processors = Runtime.getRuntime().availableProcessors();
+
+    System.out.printf("%8s %20s %20s%n",
+                      "threads", "synchronised ops/s", "striped ops/s");
+
+    for (int n = 1; n <= MAXIMUM_THREADS; n *= 2) {
+      final TestStatisticsMap synchronisedMap =
+        new TestStatisticsMap(m_factory);
+      final StatisticsSet synchronisedStatistics = m_factory.create();
+      synchronisedMap.put(new StubTest(1, ""),
+                          synchronisedStatistics);
+
+      final TestStatisticsMap stripedMap = new TestStatisticsMap(m_factory);
+      final StatisticsSet stripedStatistics =
+        m_factory.create(processors * 2);
+      stripedMap.put(new StubTest(1, ""),
+                     stripedStatistics);
+
+      // Warm up.
+      run(synchronisedMap, synchronisedStatistics, n, iterations / 10);
+      run(stripedMap, stripedStatistics, n, iterations / 10);
+
+      System.out.printf("%8d %20.0f %20.0f%n",
+        n,
+        run(synchronisedMap, synchronisedStatistics, n, iterations),
+        run(stripedMap, stripedStatistics, n, iterations));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+    new StatisticsSetBenchmark().run(iterations);
+  }
+}
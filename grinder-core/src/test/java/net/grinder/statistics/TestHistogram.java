@@ -0,0 +1,199 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import net.grinder.util.Serialiser;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link Histogram}.
+ *
+ * @author Philip Aston
+ */
+public class TestHistogram {
+
+  @Test public void testBuckets() {
+    for (int i = 0; i < Histogram.EXACT_VALUES; ++i) {
+      assertEquals(i, Histogram.bucketIndex(i));
+      assertEquals(i, Histogram.highestValue(i));
+    }
+
+    assertEquals(0, Histogram.bucketIndex(-10));
+
+    int lastBucket = Histogram.EXACT_VALUES - 1;
+
+    for (long v = Histogram.EXACT_VALUES; v > 0 && v < Long.MAX_VALUE / 3;
+         v = v * 3 / 2 + 1) {
+      final int bucket = Histogram.bucketIndex(v);
+      assertTrue(bucket >= lastBucket);
+      assertTrue(v <= Histogram.highestValue(bucket));
+      assertTrue(v > Histogram.highestValue(bucket - 1));
+
+      // Relative error is bounded.
+      assertTrue((Histogram.highestValue(bucket) - v) * Histogram.SUB_BUCKETS
+                 <= v);
+      lastBucket = bucket;
+    }
+
+    assertEquals(Histogram.MAXIMUM_BUCKETS - 1,
+                 Histogram.bucketIndex(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE,
+                 Histogram.highestValue(Histogram.MAXIMUM_BUCKETS - 1));
+  }
+
+  @Test public void testPercentiles() {
+    final Histogram histogram = new Histogram();
+
+    assertEquals(0, histogram.getValueAtPercentile(50));
+
+    for (int i = 0; i < 1000; ++i) {
+      histogram.record(i);
+    }
+
+    assertEquals(1000, histogram.getTotalCount());
+
+    final long median = histogram.getValueAtPercentile(50);
+    assertTrue(median >= 499);
+    assertTrue(median <= 499 + 499 / Histogram.SUB_BUCKETS);
+
+    final long p99 = histogram.getValueAtPercentile(99);
+    assertTrue(p99 >= 989);
+    assertTrue(p99 <= 989 + 989 / Histogram.SUB_BUCKETS);
+
+    assertEquals(0, histogram.getValueAtPercentile(0.01));
+    assertEquals(Histogram.highestValue(Histogram.bucketIndex(999)),
+                 histogram.getValueAtPercentile(100));
+
+    histogram.reset();
+    assertEquals(0, histogram.getTotalCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test public void testCounts() {
+    final Histogram histogram = new Histogram();
+
+    final long[] bounds = { 10, 1000, 2000 };
+
+    assertArrayEquals(new long[4], histogram.getCounts(bounds));
+    assertArrayEquals(new long[1], histogram.getCounts(new long[0]));
+
+    for (int i = 0; i < 1000; ++i) {
+      histogram.record(i);
+    }
+
+    histogram.record(5000);
+    histogram.record(5000);
+
+    final long[] counts = histogram.getCounts(bounds);
+    assertEquals(11, counts[0]);
+    assertEquals(989, counts[1]);
+    assertEquals(0, counts[2]);
+    assertEquals(2, counts[3]);
+
+    assertArrayEquals(new long[] { 1002 },
+                      histogram.getCounts(new long[0]));
+  }
+
+  @Test public void testAddAndEquality() {
+    final Histogram h1 = new Histogram();
+    final Histogram h2 = new Histogram();
+    final Histogram expected = new Histogram();
+
+    assertEquals(h1, h2);
+
+    h1.record(5);
+    h1.record(1000000);
+    h2.record(5);
+
+    assertFalse(h1.equals(h2));
+    assertFalse(h1.equals(null));
+    assertFalse(h1.equals(this));
+
+    expected.record(5);
+    expected.record(5);
+    expected.record(1000000);
+
+    h2.add(h1);
+    assertEquals(expected, h2);
+    assertEquals(expected.hashCode(), h2.hashCode());
+
+    final Histogram copy = new Histogram(h2);
+    assertEquals(h2, copy);
+    copy.record(1);
+    assertFalse(h2.equals(copy));
+
+    // Trailing empty buckets are not significant.
+    h1.reset();
+    assertEquals(new Histogram(), h1);
+    assertEquals(new Histogram().hashCode(), h1.hashCode());
+
+    assertEquals("[5=2, " + Histogram.highestValue(
+                    Histogram.bucketIndex(1000000)) + "=1]",
+                 expected.toString());
+  }
+
+  @Test public void testSerialisation() throws Exception {
+    final Random random = new Random();
+    final Serialiser serialiser = new Serialiser();
+
+    final Histogram original0 = new Histogram();
+    final Histogram original1 = new Histogram();
+
+    for (int i = 0; i < 1000; ++i) {
+      original0.record(Math.abs(random.nextLong()) >> random.nextInt(63));
+    }
+
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    final ObjectOutputStream objectOutputStream =
+      new ObjectOutputStream(byteOutputStream);
+
+    original0.writeExternal(objectOutputStream, serialiser);
+    original1.writeExternal(objectOutputStream, serialiser);
+    objectOutputStream.close();
+
+    final ObjectInputStream objectInputStream =
+      new ObjectInputStream(
+        new ByteArrayInputStream(byteOutputStream.toByteArray()));
+
+    final Histogram received0 = new Histogram();
+    received0.readExternal(objectInputStream, serialiser);
+    final Histogram received1 = new Histogram();
+    received1.record(10);
+    received1.readExternal(objectInputStream, serialiser);
+
+    assertEquals(original0, received0);
+    assertEquals(original1, received1);
+  }
+}
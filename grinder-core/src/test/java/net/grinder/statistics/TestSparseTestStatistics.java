@@ -0,0 +1,240 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+
+
+/**
+ * Unit test case for <code>SparseTestStatistics</code>.
+ *
+ * @author Philip Aston
+ * @see SparseTestStatistics
+ */
+public class TestSparseTestStatistics extends TestCase {
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsSetFactory m_factory =
+    m_statisticsServices.getStatisticsSetFactory();
+
+  private final StatisticsIndexMap m_indexMap =
+    m_statisticsServices.getStatisticsIndexMap();
+
+  private TestStatisticsMap createMap() {
+    final TestStatisticsMap map = new TestStatisticsMap(m_factory);
+
+    final StatisticsSet statistics0 = m_factory.create();
+    statistics0.addValue(m_indexMap.getLongIndex("userLong0"), 10);
+    statistics0.addValue(m_indexMap.getLongIndex("userLong1"), -3);
+    statistics0.addSample(m_indexMap.getLongSampleIndex("timedTests"), 123);
+    statistics0.addSample(m_indexMap.getLongSampleIndex("timedTests"), 99);
+    map.put(new StubTest(-5, ""), statistics0);
+
+    final StatisticsSet statistics1 = m_factory.create();
+    statistics1.addValue(m_indexMap.getDoubleIndex("userDouble0"), 1.5);
+    statistics1.setIsComposite();
+    map.put(new StubTest(7, ""), statistics1);
+
+    final StatisticsSet statistics2 = m_factory.create();
+    statistics2.addValue(m_indexMap.getLongIndex("errors"), 1);
+    map.put(new StubTest(Integer.MAX_VALUE, ""), statistics2);
+
+    return map;
+  }
+
+  public void testRoundTrip() throws Exception {
+    final TestStatisticsMap map = createMap();
+
+    final SparseTestStatistics sparse = new SparseTestStatistics(map);
+
+    assertEquals(map, sparse.toTestStatisticsMap());
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    sparse.write(new DataOutputStream(bytes));
+
+    final SparseTestStatistics received =
+      new SparseTestStatistics(
+        m_factory,
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(sparse.getEncodedSize(), received.getEncodedSize());
+    assertEquals(map, received.toTestStatisticsMap());
+
+    final SparseTestStatistics empty =
+      new SparseTestStatistics(new TestStatisticsMap(m_factory));
+
+    assertEquals(0, empty.toTestStatisticsMap().size());
+  }
+
+  public void testVisit() throws Exception {
+    final TestStatisticsMap map = createMap();
+
+    final List<Integer> testNumbers = new ArrayList<Integer>();
+    final List<StatisticsSet> statistics = new ArrayList<StatisticsSet>();
+
+    new SparseTestStatistics(map).visit(new TestStatisticsReport.Visitor() {
+        public void next(Test test, StatisticsSet s) {
+          testNumbers.add(test.getNumber());
+          statistics.add(s);
+        }
+      });
+
+    assertEquals(3, testNumbers.size());
+    assertEquals(-5, testNumbers.get(0).intValue());
+    assertEquals(7, testNumbers.get(1).intValue());
+    assertEquals(Integer.MAX_VALUE, testNumbers.get(2).intValue());
+
+    // The statistics set is reused.
+    assertSame(statistics.get(0), statistics.get(2));
+
+    final List<Integer> mapTestNumbers = new ArrayList<Integer>();
+
+    map.visit(new TestStatisticsReport.Visitor() {
+        public void next(Test test, StatisticsSet s) {
+          mapTestNumbers.add(test.getNumber());
+        }
+      });
+
+    assertEquals(testNumbers, mapTestNumbers);
+  }
+
+  public void testIsSmallerThanExternalisation() throws Exception {
+    final TestStatisticsMap map = new TestStatisticsMap(m_factory);
+
+    for (int i = 0; i < 100; ++i) {
+      final StatisticsSet statistics = m_factory.create();
+      statistics.addSample(m_indexMap.getLongSampleIndex("timedTests"), i);
+      map.put(new StubTest(i, ""), statistics);
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    map.write(new DataOutputStream(bytes));
+
+    final int sparseSize = new SparseTestStatistics(map).getEncodedSize();
+
+    assertTrue(sparseSize + " < " + bytes.size() / 2,
+               sparseSize < bytes.size() / 2);
+  }
+
+  public void testBadData() throws Exception {
+    final SparseTestStatistics sparse = new SparseTestStatistics(createMap());
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    sparse.write(out);
+
+    final byte[] data = bytes.toByteArray();
+
+    // Claim there's an extra byte of trailing data.
+    final byte[] padded = new byte[data.length + 1];
+    System.arraycopy(data, 0, padded, 0, data.length);
+    padded[3] += 1;
+
+    final SparseTestStatistics withPadding =
+      new SparseTestStatistics(
+        m_factory, new DataInputStream(new ByteArrayInputStream(padded)));
+
+    try {
+      withPadding.toTestStatisticsMap();
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    // Truncate the data.
+    final byte[] truncated = new byte[data.length - 4];
+    System.arraycopy(data, 4, truncated, 0, truncated.length);
+
+    final ByteArrayOutputStream truncatedBytes = new ByteArrayOutputStream();
+    final DataOutputStream truncatedOut = new DataOutputStream(truncatedBytes);
+    truncatedOut.writeInt(truncated.length - 5);
+    truncatedOut.write(truncated, 0, truncated.length - 5);
+
+    final SparseTestStatistics truncatedStatistics =
+      new SparseTestStatistics(
+        m_factory,
+        new DataInputStream(
+          new ByteArrayInputStream(truncatedBytes.toByteArray())));
+
+    try {
+      truncatedStatistics.toTestStatisticsMap();
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    final ByteArrayOutputStream negative = new ByteArrayOutputStream();
+    new DataOutputStream(negative).writeInt(-1);
+
+    try {
+      new SparseTestStatistics(
+        m_factory,
+        new DataInputStream(new ByteArrayInputStream(negative.toByteArray())));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    // Claim more data than there is.
+    final ByteArrayOutputStream overlong = new ByteArrayOutputStream();
+    final DataOutputStream overlongOut = new DataOutputStream(overlong);
+    overlongOut.writeInt(Integer.MAX_VALUE);
+    overlongOut.write(data, 4, data.length - 4);
+
+    try {
+      new SparseTestStatistics(
+        m_factory,
+        new DataInputStream(new ByteArrayInputStream(overlong.toByteArray())));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    // Claim more entries than could fit.
+    final ByteArrayOutputStream tooMany = new ByteArrayOutputStream();
+    final DataOutputStream tooManyOut = new DataOutputStream(tooMany);
+    tooManyOut.writeInt(10);
+    m_factory.getSerialiser().writeVarLong(tooManyOut, Integer.MAX_VALUE);
+    tooManyOut.write(new byte[10 - tooManyOut.size() + 4]);
+
+    try {
+      new SparseTestStatistics(
+        m_factory,
+        new DataInputStream(new ByteArrayInputStream(tooMany.toByteArray())));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+}
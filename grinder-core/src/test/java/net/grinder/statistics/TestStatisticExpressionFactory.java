@@ -435,6 +435,42 @@ public class TestStatisticExpressionFactory {
     }
   }
 
+  @Test public void testPercentile() throws Exception {
+    myAssertEquals(0, m_factory.createExpression("(percentile timedTests 50)"));
+
+    final StatisticsIndexMap.LongSampleIndex index =
+      m_indexMap.getLongSampleIndex("timedTests");
+
+    for (int i = 1; i <= 100; ++i) {
+      m_statistics.addSample(index, i);
+    }
+
+    myAssertEquals(50, m_factory.createExpression("(percentile timedTests 50)"));
+    myAssertEquals(99,
+                   m_factory.createExpression("(percentile timedTests 99)"));
+    myAssertEquals(100,
+                   m_factory.createExpression("(percentile timedTests 100)"));
+    myAssertEquals(1,
+                   m_factory.createExpression("(percentile timedTests 0.1)"));
+
+    final String[] invalid = {
+      "(percentile userLong0 50)",
+      "(percentile timedTests)",
+      "(percentile timedTests foo)",
+      "(percentile timedTests 0)",
+      "(percentile timedTests 101)",
+    };
+
+    for (String expression : invalid) {
+      try {
+        m_factory.createExpression(expression);
+        fail("Expected ParseException for " + expression);
+      }
+      catch (ParseException e) {
+      }
+    }
+  }
+
   @Test public void testDoubleSample() throws Exception {
     try {
       final StatisticsIndexMap.DoubleIndex sumIndex =
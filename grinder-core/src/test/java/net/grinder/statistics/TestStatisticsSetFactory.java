@@ -61,6 +61,63 @@ public class TestStatisticsSetFactory extends TestCase {
     assertTrue(statistics instanceof StatisticsSetImplementation);
   }
 
+  public void testStripedFactory() throws Exception {
+    final StatisticsSetFactory factory =
+      m_statisticsServices.getStatisticsSetFactory();
+
+    assertTrue(factory.create(0) instanceof StatisticsSetImplementation);
+    assertTrue(factory.create(1) instanceof StatisticsSetImplementation);
+    assertTrue(factory.create(2) instanceof StripedStatisticsSet);
+  }
+
+  public void testFixedWidthValues() throws Exception {
+    final StatisticsSetFactory factory =
+      m_statisticsServices.getStatisticsSetFactory();
+
+    final StatisticsIndexMap indexMap =
+      m_statisticsServices.getStatisticsIndexMap();
+
+    final StatisticsIndexMap.LongIndex errorsIndex =
+      indexMap.getLongIndex("errors");
+    final StatisticsIndexMap.DoubleIndex userDoubleIndex =
+      indexMap.getDoubleIndex("userDouble2");
+    final StatisticsIndexMap.LongSampleIndex timedTestsIndex =
+      indexMap.getLongSampleIndex("timedTests");
+    final StatisticsIndexMap.LongIndex periodIndex =
+      indexMap.getLongIndex("period");
+
+    final StatisticsSet original = factory.create();
+    original.setValue(errorsIndex, 3);
+    original.setValue(userDoubleIndex, 1.5);
+    original.addSample(timedTestsIndex, 10);
+    original.addSample(timedTestsIndex, 20);
+    original.setValue(periodIndex, 1000);
+
+    final long[] longValues = new long[factory.getNumberOfFixedWidthLongs()];
+    final double[] doubleValues =
+      new double[factory.getNumberOfFixedWidthDoubles()];
+
+    factory.getFixedWidthValues(original, longValues, doubleValues);
+
+    final StatisticsSet copy =
+      factory.createFromFixedWidthValues(longValues, doubleValues);
+
+    assertEquals(3, copy.getValue(errorsIndex));
+    assertEquals(1.5, copy.getValue(userDoubleIndex), 0);
+    assertEquals(2, copy.getCount(timedTestsIndex));
+    assertEquals(30, copy.getSum(timedTestsIndex));
+    assertEquals(original.getVariance(timedTestsIndex),
+                 copy.getVariance(timedTestsIndex),
+                 0);
+
+    // Transient values are not copied.
+    assertEquals(0, copy.getValue(periodIndex));
+
+    factory.getFixedWidthValues(factory.create(4), longValues, doubleValues);
+    assertTrue(factory.createFromFixedWidthValues(longValues, doubleValues)
+               .getCount(timedTestsIndex) == 0);
+  }
+
   public void testSerialisation() throws Exception {
     final StatisticsSetFactory factory =
       m_statisticsServices.getStatisticsSetFactory();
@@ -24,6 +24,7 @@ package net.grinder.statistics;
 
 import static java.util.Arrays.asList;
 import static net.grinder.testutility.AssertUtilities.assertNotEquals;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -405,6 +406,68 @@ public class TestStatisticsSetImplementation {
     }
   }
 
+  @Test public void testHistogram() throws Exception {
+    final StatisticsIndexMap.LongSampleIndex index =
+      m_indexMap.getLongSampleIndex("timedTests");
+
+    final StatisticsSetImplementation statistics0 =
+      new StatisticsSetImplementation(m_indexMap);
+    final StatisticsSetImplementation statistics1 =
+      new StatisticsSetImplementation(m_indexMap);
+
+    assertEquals(0, statistics0.getPercentile(index, 50));
+
+    for (int i = 1; i <= 10; ++i) {
+      statistics0.addSample(index, i);
+    }
+
+    assertEquals(5, statistics0.getPercentile(index, 50));
+    assertEquals(10, statistics0.getPercentile(index, 99));
+
+    assertArrayEquals(new long[] { 5, 5, 0 },
+                      statistics0.getHistogram(index, new long[] { 5, 10 }));
+    assertArrayEquals(new long[3],
+                      new StatisticsSetImplementation(m_indexMap)
+                      .getHistogram(index, new long[] { 5, 10 }));
+
+    final StatisticsSet snapshot = statistics0.snapshot();
+    assertEquals(statistics0, snapshot);
+
+    statistics1.add(statistics0);
+    statistics1.add(statistics0);
+    assertEquals(5, statistics1.getPercentile(index, 50));
+
+    statistics0.addSample(index, 1000);
+    assertEquals(10, snapshot.getPercentile(index, 100));
+    assertTrue(statistics0.getPercentile(index, 100) >= 1000);
+    assertNotEquals(statistics0, snapshot);
+
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    final ObjectOutputStream objectOutputStream =
+      new ObjectOutputStream(byteOutputStream);
+
+    final Serialiser serialiser = new Serialiser();
+    statistics1.writeExternal(objectOutputStream, serialiser);
+    objectOutputStream.close();
+
+    final StatisticsSet received =
+      new StatisticsSetImplementation(
+        m_indexMap,
+        new ObjectInputStream(
+          new ByteArrayInputStream(byteOutputStream.toByteArray())),
+        serialiser);
+
+    assertEquals(statistics1, received);
+    assertEquals(5, received.getPercentile(index, 50));
+
+    statistics1.reset(index);
+    assertEquals(0, statistics1.getPercentile(index, 50));
+    assertNotEquals(statistics1, received);
+
+    received.reset();
+    assertEquals(0, received.getPercentile(index, 50));
+  }
+
   @Test public void testSerialisation() throws Exception {
     final Random random = new Random();
 
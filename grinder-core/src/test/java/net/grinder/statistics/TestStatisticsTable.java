@@ -178,4 +178,41 @@ public class TestStatisticsTable  {
       output.getBuffer().toString(),
       expected.getBuffer().toString());
   }
+
+  @Test public void testStatisticsTableWithNestedTests() throws Exception {
+    final net.grinder.common.Test test4 = new StubTest(4, "T4");
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+    statistics.setValue(
+      m_statisticsServices.getStatisticsIndexMap().getLongIndex("userLong1"), 1);
+    statistics.setIsComposite();
+    m_testStatisticsMap.put(test4, statistics);
+
+    m_testStatisticsMap.setParent(new StubTest(9, "Test 9"), test4);
+    m_testStatisticsMap.setParent(new StubTest(113, "Another test"), test4);
+
+    final StringWriter expected = new StringWriter();
+    final PrintWriter in = new PrintWriter(expected);
+
+    in.println("Test 3       1            2            3            0.50         ");
+    in.println("(Test 4      0            1            1            0.00)         \"T4\"");
+    in.println("  Test 9     0            1            1            0.00          \"Test 9\"");
+    in.println("  Test 113   0            0            0            -             \"Another test\"");
+    in.println("Test 12345678 3            4            7            0.75          \"A test with a long name\"");
+    in.println();
+    in.println("Totals       4            7            11           0.57         ");
+    in.close();
+
+    final StatisticsTable table =
+      new StatisticsTable(m_statisticsView, m_indexMap, m_testStatisticsMap);
+
+    final StringWriter output = new StringWriter();
+    final PrintWriter out = new PrintWriter(output);
+    table.print(out, 1234);
+    out.close();
+
+    AssertUtilities.assertContains(
+      output.getBuffer().toString(),
+      expected.getBuffer().toString());
+  }
 }
@@ -0,0 +1,201 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import static net.grinder.testutility.AssertUtilities.assertNotEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link StripedStatisticsSet}.
+ *
+ * @author Philip Aston
+ */
+public class TestStripedStatisticsSet {
+
+  private StatisticsIndexMap m_indexMap;
+
+  private LongIndex m_longIndex0;
+  private LongIndex m_transientLongIndex;
+  private DoubleIndex m_doubleIndex0;
+  private LongSampleIndex m_longSampleIndex;
+
+  @Before public void setUp() throws Exception {
+    m_indexMap = StatisticsServicesImplementation.getInstance()
+        .getStatisticsIndexMap();
+
+    m_longIndex0 = m_indexMap.getLongIndex("userLong0");
+    m_transientLongIndex = m_indexMap.getLongIndex("period");
+    m_doubleIndex0 = m_indexMap.getDoubleIndex("userDouble0");
+    m_longSampleIndex = m_indexMap.getLongSampleIndex("timedTests");
+  }
+
+  @Test public void testCreation() {
+    assertEquals(1, new StripedStatisticsSet(m_indexMap, 0)
+                    .getNumberOfStripes());
+    assertEquals(4, new StripedStatisticsSet(m_indexMap, 3)
+                    .getNumberOfStripes());
+    assertEquals(16, new StripedStatisticsSet(m_indexMap, 16)
+                     .getNumberOfStripes());
+
+    final StatisticsSet statistics = new StripedStatisticsSet(m_indexMap, 8);
+
+    assertTrue(statistics.isZero());
+    assertFalse(statistics.isComposite());
+    assertEquals(0, statistics.getValue(m_longIndex0));
+    assertEquals(new StatisticsSetImplementation(m_indexMap),
+                 statistics.snapshot());
+  }
+
+  @Test public void testValues() {
+    final StatisticsSet statistics = new StripedStatisticsSet(m_indexMap, 8);
+
+    statistics.addValue(m_longIndex0, 10);
+    statistics.addValue(m_doubleIndex0, 1.5);
+    statistics.addValue(m_transientLongIndex, 99);
+    assertFalse(statistics.isZero());
+    assertEquals(10, statistics.getValue(m_longIndex0));
+    assertEquals(1.5, statistics.getValue(m_doubleIndex0), 0.0001);
+    assertEquals(0, statistics.getValue(m_transientLongIndex));
+
+    statistics.setValue(m_longIndex0, 3);
+    statistics.setValue(m_doubleIndex0, -2);
+    statistics.setValue(m_transientLongIndex, 99);
+    assertEquals(3, statistics.getValue(m_longIndex0));
+    assertEquals(-2, statistics.getValue(m_doubleIndex0), 0.0001);
+    assertEquals(99, statistics.getValue(m_transientLongIndex));
+
+    statistics.setIsComposite();
+    assertTrue(statistics.isComposite());
+    assertTrue(statistics.snapshot().isComposite());
+
+    statistics.reset();
+    assertTrue(statistics.isZero());
+    assertEquals(0, statistics.getValue(m_transientLongIndex));
+  }
+
+  @Test public void testSamplesAndAdd() {
+    final StatisticsSet striped = new StripedStatisticsSet(m_indexMap, 4);
+    final StatisticsSet expected = new StatisticsSetImplementation(m_indexMap);
+
+    for (int i = 0; i < 10; ++i) {
+      striped.addSample(m_longSampleIndex, i);
+      expected.addSample(m_longSampleIndex, i);
+    }
+
+    assertEquals(expected.getSum(m_longSampleIndex),
+                 striped.getSum(m_longSampleIndex));
+    assertEquals(expected.getCount(m_longSampleIndex),
+                 striped.getCount(m_longSampleIndex));
+    assertEquals(expected.getVariance(m_longSampleIndex),
+                 striped.getVariance(m_longSampleIndex),
+                 0.0001);
+
+    final long[] bounds = { 3, 6 };
+    assertArrayEquals(expected.getHistogram(m_longSampleIndex, bounds),
+                      striped.getHistogram(m_longSampleIndex, bounds));
+
+    final StatisticsSet other = new StatisticsSetImplementation(m_indexMap);
+    other.add(striped);
+    other.add(expected);
+    expected.add(expected);
+    assertEquals(expected, other);
+
+    striped.add(striped);
+    assertEquals(expected.getCount(m_longSampleIndex),
+                 striped.getCount(m_longSampleIndex));
+
+    striped.reset(m_longSampleIndex);
+    assertEquals(0, striped.getCount(m_longSampleIndex));
+  }
+
+  @Test public void testEquality() {
+    final StatisticsSet statistics0 = new StripedStatisticsSet(m_indexMap, 2);
+    final StatisticsSet statistics1 = new StripedStatisticsSet(m_indexMap, 8);
+
+    assertEquals(statistics0, statistics1);
+    assertEquals(statistics0.hashCode(), statistics1.hashCode());
+
+    statistics0.addValue(m_longIndex0, 1);
+    assertNotEquals(statistics0, statistics1);
+    assertNotEquals(statistics0, statistics0.snapshot());
+    assertNotEquals(statistics0, null);
+
+    statistics1.addValue(m_longIndex0, 1);
+    assertEquals(statistics0, statistics1);
+    assertEquals(statistics0.snapshot().toString(), statistics0.toString());
+  }
+
+  @Test public void testConcurrentUpdates() throws Exception {
+    final StripedStatisticsSet statistics =
+      new StripedStatisticsSet(m_indexMap, 4);
+
+    final int numberOfThreads = 10;
+    final int iterations = 1000;
+
+    final StatisticsSet sample = new StatisticsSetImplementation(m_indexMap);
+    sample.addValue(m_longIndex0, 1);
+    sample.addSample(m_longSampleIndex, 5);
+
+    final Thread[] threads = new Thread[numberOfThreads];
+    final StatisticsSet total = new StatisticsSetImplementation(m_indexMap);
+
+    for (int i = 0; i < threads.length; ++i) {
+      threads[i] = new Thread() {
+        @Override public void run() {
+          for (int j = 0; j < iterations; ++j) {
+            statistics.add(sample);
+
+            if (j % 100 == 0) {
+              total.add(statistics.snapshotAndReset());
+            }
+          }
+        }
+      };
+
+      threads[i].start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    total.add(statistics.snapshotAndReset());
+
+    assertTrue(statistics.isZero());
+    assertEquals(numberOfThreads * iterations, total.getValue(m_longIndex0));
+    assertEquals(numberOfThreads * iterations,
+                 total.getCount(m_longSampleIndex));
+    assertEquals(numberOfThreads * iterations * 5,
+                 total.getSum(m_longSampleIndex));
+  }
+}
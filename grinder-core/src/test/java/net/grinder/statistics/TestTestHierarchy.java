@@ -0,0 +1,113 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.grinder.common.StubTest;
+import net.grinder.common.Test;
+
+import org.junit.Before;
+
+
+/**
+ * Unit tests for {@link TestHierarchy}.
+ *
+ * @author Philip Aston
+ */
+public class TestTestHierarchy {
+
+  private final Test m_test1 = new StubTest(1, "one");
+  private final Test m_test2 = new StubTest(2, "two");
+  private final Test m_test3 = new StubTest(3, "three");
+  private final Test m_test4 = new StubTest(4, "four");
+
+  private final TestHierarchy m_hierarchy = new TestHierarchy();
+
+  private final List<String> m_visited = new ArrayList<String>();
+
+  private final TestHierarchy.Visitor m_visitor =
+    new TestHierarchy.Visitor() {
+      @Override public void next(final Test test, final int depth) {
+        m_visited.add(test.getNumber() + ":" + depth);
+      }
+    };
+
+  @Before public void setUp() {
+    m_visited.clear();
+  }
+
+  @org.junit.Test public void testSetParent() {
+    assertNull(m_hierarchy.getParent(m_test1));
+
+    assertTrue(m_hierarchy.setParent(m_test2, m_test1));
+    assertFalse(m_hierarchy.setParent(m_test2, m_test1));
+    assertSame(m_test1, m_hierarchy.getParent(m_test2));
+
+    assertTrue(m_hierarchy.setParent(m_test3, m_test2));
+
+    // Cycles are ignored.
+    assertFalse(m_hierarchy.setParent(m_test1, m_test3));
+    assertFalse(m_hierarchy.setParent(m_test1, m_test1));
+    assertNull(m_hierarchy.getParent(m_test1));
+
+    final Map<Test, Test> parents = new HashMap<Test, Test>();
+    parents.put(m_test2, m_test1);
+    assertFalse(m_hierarchy.setParents(parents));
+
+    parents.put(m_test4, m_test1);
+    assertTrue(m_hierarchy.setParents(parents));
+    assertSame(m_test1, m_hierarchy.getParent(m_test4));
+
+    m_hierarchy.clear();
+    assertNull(m_hierarchy.getParent(m_test2));
+  }
+
+  @org.junit.Test public void testVisit() {
+    m_hierarchy.visit(asList(m_test1, m_test2, m_test3), m_visitor);
+    assertEquals("[1:0, 2:0, 3:0]", m_visited.toString());
+
+    m_visited.clear();
+    m_hierarchy.setParent(m_test1, m_test3);
+    m_hierarchy.setParent(m_test4, m_test1);
+    m_hierarchy.setParent(m_test2, m_test4);
+
+    m_hierarchy.visit(asList(m_test1, m_test2, m_test3, m_test4), m_visitor);
+    assertEquals("[3:0, 1:1, 4:2, 2:3]", m_visited.toString());
+
+    // Missing tests are skipped; their children are attached to the
+    // nearest ancestor that is present.
+    m_visited.clear();
+    m_hierarchy.visit(asList(m_test2, m_test3), m_visitor);
+    assertEquals("[3:0, 2:1]", m_visited.toString());
+  }
+}
@@ -145,6 +145,31 @@ public class TestTestStatisticsMap extends TestCase {
     assertEquals(20, content.getStatisticsSet().getValue(m_index));
   }
 
+  public void testAddReport() throws Exception {
+    final TestStatisticsMap map0 =
+      new TestStatisticsMap(m_statisticsServices.getStatisticsSetFactory());
+    final TestStatisticsMap map1 =
+      new TestStatisticsMap(m_statisticsServices.getStatisticsSetFactory());
+
+    map0.put(m_test0, m_statistics0);
+    map0.put(m_test1, m_statistics0);
+
+    map1.add(new SparseTestStatistics(map0));
+    assertEquals(map0, map1);
+
+    map1.add((TestStatisticsReport) map0);
+    assertEquals(2, map1.size());
+
+    for (Pair content : extract(map1)) {
+      assertEquals(20, content.getStatisticsSet().getValue(m_index));
+    }
+
+    // The sparse report visits with the same statistics set each time, so
+    // we mustn't hold on to it.
+    assertNotSame(extract(map1).get(0).getStatisticsSet(),
+                  extract(map1).get(1).getStatisticsSet());
+  }
+
   public void testReset() throws Exception {
     final TestStatisticsMap map =
       new TestStatisticsMap(m_statisticsServices.getStatisticsSetFactory());
@@ -179,6 +204,42 @@ public class TestTestStatisticsMap extends TestCase {
     assertEquals(1, map.size());
   }
 
+  public void testResetWithStripedStatistics() throws Exception {
+    final StatisticsSetFactory factory =
+      m_statisticsServices.getStatisticsSetFactory();
+    final TestStatisticsMap map = new TestStatisticsMap(factory);
+
+    final StatisticsSet striped = factory.create(4);
+    striped.add(m_statistics0);
+    map.put(m_test0, striped);
+
+    final TestStatisticsMap snapshot = map.reset();
+    assertEquals(1, snapshot.size());
+    assertTrue(striped.isZero());
+
+    final Pair snapShotContent = extract(snapshot).get(0);
+    assertTrue(snapShotContent.getStatisticsSet()
+               instanceof StatisticsSetImplementation);
+    assertEquals(10, snapShotContent.getStatisticsSet().getValue(m_index));
+
+    striped.add(m_statistics0);
+
+    final ByteArrayOutputStream byteOutputStream =
+      new ByteArrayOutputStream();
+
+    final ObjectOutputStream objectOutputStream =
+      new ObjectOutputStream(byteOutputStream);
+
+    objectOutputStream.writeObject(map);
+    objectOutputStream.close();
+
+    final TestStatisticsMap received =
+      (TestStatisticsMap)new ObjectInputStream(
+        new ByteArrayInputStream(byteOutputStream.toByteArray())).readObject();
+
+    assertEquals(m_statistics0, extract(received).get(0).getStatisticsSet());
+  }
+
   public void testToString() throws Exception {
     final TestStatisticsMap map =
       new TestStatisticsMap(m_statisticsServices.getStatisticsSetFactory());
@@ -251,6 +312,32 @@ public class TestTestStatisticsMap extends TestCase {
     assertEquals(20, nonCompositeTotals.getValue(m_index));
   }
 
+  public void testTreeForEach() throws Exception {
+    final TestStatisticsMap map =
+      new TestStatisticsMap(m_statisticsServices.getStatisticsSetFactory());
+
+    map.put(m_test0, m_statistics0);
+    map.put(m_test1, m_statistics1);
+    map.put(m_test2, m_statistics1);
+
+    map.setParent(m_test0, m_test2);
+    map.setParent(m_test2, m_test0); // Cycle, ignored.
+
+    assertEquals(m_test2, map.getParent(m_test0));
+    assertNull(map.getParent(m_test2));
+
+    final List<String> visited = new ArrayList<String>();
+
+    map.new TreeForEach() {
+      protected void next(Test test, StatisticsSet statistics, int depth) {
+        visited.add(test.getNumber() + ":" + depth);
+      }
+    }
+    .iterate();
+
+    assertEquals("[1:0, 2:0, 0:1]", visited.toString());
+  }
+
   public void testSynchronisation() throws Exception {
     final TestStatisticsMap map =
       new TestStatisticsMap(m_statisticsServices.getStatisticsSetFactory());
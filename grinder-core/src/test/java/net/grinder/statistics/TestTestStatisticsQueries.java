@@ -83,13 +83,13 @@ public class TestTestStatisticsQueries extends TestCase {
     statistics1.addValue(untimedTestsIndex, 1);
     assertEquals(statistics0, statistics1);
 
-    statistics0.addSample(timedTestsIndex, 5);
-    statistics1.addSample(timedTestsIndex, 10);
+    statistics0.addSample(timedTestsIndex, 5000);
+    statistics1.addSample(timedTestsIndex, 10000);
     assertEquals(2, queries.getNumberOfTests(statistics0));
     assertTrue(!statistics0.equals(statistics1));
 
-    statistics0.addSample(timedTestsIndex, 10);
-    statistics1.addSample(timedTestsIndex, 5);
+    statistics0.addSample(timedTestsIndex, 10000);
+    statistics1.addSample(timedTestsIndex, 5000);
     assertEquals(statistics0, statistics1);
     assertEquals(7.5d, queries.getAverageTestTime(statistics1), 0.01);
   }
@@ -49,4 +49,8 @@ public class TimeAuthorityStubFactory extends RandomStubFactory<TimeAuthority> {
 
     return m_lastTime;
   }
+
+  public long override_getTimeInNanoseconds(final Object proxy) {
+    return override_getTimeInMilliseconds(proxy) * 1000000;
+  }
 }
@@ -0,0 +1,70 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link VirtualThreads}.
+ *
+ * @author Philip Aston
+ */
+public class TestVirtualThreads {
+
+  @Test public void testCreate() throws Exception {
+    final AtomicBoolean ran = new AtomicBoolean();
+
+    final Runnable runnable = new Runnable() {
+      @Override public void run() {
+        ran.set(true);
+      }
+    };
+
+    if (!VirtualThreads.isSupported()) {
+      try {
+        VirtualThreads.create(runnable, "foo");
+        fail("Expected UnsupportedOperationException");
+      }
+      catch (final UnsupportedOperationException e) {
+      }
+
+      return;
+    }
+
+    final Thread thread = VirtualThreads.create(runnable, "foo");
+
+    assertEquals("foo", thread.getName());
+    assertTrue(thread.isDaemon());
+
+    thread.start();
+    thread.join();
+
+    assertTrue(ran.get());
+  }
+}
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -147,6 +148,14 @@ public class TestASMTransformerFactory {
     }
     catch (final WeavingException e) {
     }
+
+    try {
+      new ASMTransformerFactory(BadCallSiteAdvice.class);
+      fail("Expected WeavingException");
+    }
+    catch (final WeavingException e) {
+      assertTrue(e.getCause() instanceof NoSuchMethodException);
+    }
   }
 
   private static final Instrumentation getInstrumentation() {
@@ -232,6 +241,50 @@ public class TestASMTransformerFactory {
     instrumentation.removeTransformer(transformer);
   }
 
+  @Test
+  public void testWithCallSites() throws Exception {
+    final Instrumentation instrumentation = getInstrumentation();
+
+    final ClassFileTransformerFactory transformerFactory =
+      new ASMTransformerFactory(MyCallSiteAdvice.class);
+
+    when(s_callRecorder.callSite("loc1")).thenReturn(1);
+    when(s_callRecorder.callSite("loc2")).thenReturn(200000);
+
+    m_pointCuts.addMethod(A6.class, "m1", "loc1");
+    m_pointCuts.addMethod(A6.class, "m2", "loc2");
+
+    final ClassFileTransformer transformer =
+      transformerFactory.create(m_pointCutRegistry);
+
+    instrumentation.addTransformer(transformer, true);
+    instrumentation.retransformClasses(new Class<?>[] { A6.class, });
+
+    verify(s_callRecorder, atLeastOnce()).callSite("loc1");
+    verify(s_callRecorder, atLeastOnce()).callSite("loc2");
+
+    final A6 a = new A6();
+    assertEquals(1, a.m1());
+
+    verify(s_callRecorder).enter(a, 1);
+    verify(s_callRecorder).exit(a, 1, true);
+
+    try {
+      A6.m2();
+      fail("Expected RuntimeException");
+    }
+    catch (final RuntimeException e) {
+    }
+
+    verify(s_callRecorder).enter(A6.class, 200000);
+    verify(s_callRecorder).exit(A6.class, 200000, false);
+
+    instrumentation.removeTransformer(transformer);
+
+    // Restore the original class.
+    instrumentation.retransformClasses(new Class<?>[] { A6.class, });
+  }
+
   @Test
   public void testTwoTransformations() throws Exception {
     final Instrumentation instrumentation = getInstrumentation();
@@ -603,6 +656,16 @@ public class TestASMTransformerFactory {
     }
   }
 
+  public static final class A6 {
+    public int m1() {
+      return 1;
+    }
+
+    public static void m2() {
+      throw new RuntimeException("Test");
+    }
+  }
+
   public static final class SerializableA implements Serializable {
     public int m1() {
       return 1;
@@ -630,6 +693,17 @@ public class TestASMTransformerFactory {
       final Object reference2,
       final String location,
       final boolean success);
+
+    int callSite(final String location);
+
+    void enter(
+      final Object reference,
+      final int callSite);
+
+    void exit(
+      final Object reference,
+      final int callSite,
+      final boolean success);
   }
 
   private static final CallRecorderI s_callRecorder =
@@ -662,6 +736,78 @@ public class TestASMTransformerFactory {
     }
   }
 
+  public static final class MyCallSiteAdvice {
+    public static void enter(final Object reference, final String location) {
+      s_callRecorder.enter(reference, location);
+    }
+
+    public static void enter(final Object reference,
+                             final Object reference2,
+                             final String location) {
+      s_callRecorder.enter(reference, reference2, location);
+    }
+
+    public static void exit(final Object reference,
+                            final String location,
+                            final boolean success) {
+
+      s_callRecorder.exit(reference, location, success);
+    }
+
+    public static void exit(final Object reference,
+                            final Object reference2,
+                            final String location,
+                            final boolean success) {
+
+      s_callRecorder.exit(reference, reference2, location, success);
+    }
+
+    public static int callSite(final String location) {
+      return s_callRecorder.callSite(location);
+    }
+
+    public static void enter(final Object reference, final int callSite) {
+      s_callRecorder.enter(reference, callSite);
+    }
+
+    public static void enter(final Object reference,
+                             final Object reference2,
+                             final int callSite) {
+    }
+
+    public static void exit(final Object reference,
+                            final int callSite,
+                            final boolean success) {
+
+      s_callRecorder.exit(reference, callSite, success);
+    }
+
+    public static void exit(final Object reference,
+                            final Object reference2,
+                            final int callSite,
+                            final boolean success) {
+    }
+  }
+
+  public static final class BadCallSiteAdvice {
+    public static void enter(final Object reference, final String location) { }
+
+    public static void enter(final Object reference,
+                             final Object reference2,
+                             final String location) { }
+
+    public static void exit(final Object reference,
+                            final String location,
+                            final boolean success) { }
+
+    public static void exit(final Object reference,
+                            final Object reference2,
+                            final String location,
+                            final boolean success) { }
+
+    public static int callSite(final String location) { return 0; }
+  }
+
   public static final class BadAdvice1 {
   }
 
@@ -0,0 +1,521 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import static java.util.Collections.emptyList;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import net.grinder.util.AttributeStringParser;
+import net.grinder.util.http.URIParser;
+
+
+/**
+ * An index of the input tags and hyperlink URI parameters of a response
+ * body, built with a single pass over the body.
+ *
+ * <p>An input tag starts with {@code <input} followed by white space, and
+ * ends at the next {@code >}. A hyperlink URI is the quoted value of an
+ * {@code href} attribute. The index holds the name and value of each input
+ * tag and URI parameter, and the position at which each tag or URI was
+ * found. It does not hold a copy of the body text.</p>
+ *
+ * <p>Bodies in ASCII compatible character sets are scanned as bytes, and
+ * only the values found are decoded. Bodies in other character sets are
+ * decoded before they are scanned.</p>
+ *
+ * @author Philip Aston
+ */
+final class BodyIndex {
+
+  private static final Charset DEFAULT_CHARSET = Charset.forName("ISO-8859-1");
+
+  private static final Pattern s_hiddenTypePattern =
+    Pattern.compile("type\\s*=\\s*[\"']\\s*hidden\\s*[\"']",
+                    Pattern.CASE_INSENSITIVE);
+
+  private final Text m_text;
+  private final TokenMap m_inputs = new TokenMap();
+  private final TokenMap m_hiddenInputs = new TokenMap();
+  private final TokenMap m_uriParameters = new TokenMap();
+
+  /**
+   * Constructor.
+   *
+   * @param body The body.
+   * @param charset The body's character set, or {@code null} for
+   *   ISO-8859-1.
+   * @param attributeStringParser Parses the attributes of input tags.
+   * @param uriParser Parses hyperlink URIs.
+   */
+  public BodyIndex(final byte[] body,
+                   final Charset charset,
+                   final AttributeStringParser attributeStringParser,
+                   final URIParser uriParser) {
+
+    final Charset bodyCharset = charset != null ? charset : DEFAULT_CHARSET;
+
+    if (isASCIICompatible(bodyCharset)) {
+      m_text = new ByteText(body, bodyCharset);
+    }
+    else {
+      m_text = new StringText(new String(body, bodyCharset));
+    }
+
+    index(attributeStringParser, uriParser);
+  }
+
+  /**
+   * Look up the character set named by a {@code Content-Type} header.
+   *
+   * @param contentType The header value, or {@code null}.
+   * @return The character set, or {@code null} if the header does not name
+   *   a character set that the JVM supports.
+   */
+  public static Charset charsetFromContentType(final String contentType) {
+    if (contentType == null) {
+      return null;
+    }
+
+    try {
+      final String name = HTTPClient.Util.getParameter("charset", contentType);
+
+      return name != null ? Charset.forName(name) : null;
+    }
+    catch (final Exception e) {
+      // ParseException, IllegalCharsetNameException,
+      // UnsupportedCharsetException.
+      return null;
+    }
+  }
+
+  /**
+   * Whether every byte below 0x80 in text encoded with a character set is
+   * the ASCII character of the same value.
+   */
+  private static boolean isASCIICompatible(final Charset charset) {
+    final String name = charset.name().toUpperCase(Locale.ENGLISH);
+
+    return name.equals("UTF-8") ||
+           name.equals("US-ASCII") ||
+           name.startsWith("ISO-8859-") ||
+           name.startsWith("WINDOWS-125");
+  }
+
+  private void index(final AttributeStringParser attributeStringParser,
+                     final URIParser uriParser) {
+
+    final int length = m_text.length();
+
+    // Input tags and hyperlink URIs are matched independently; a URI may
+    // be found inside an input tag.
+    int inputEnd = 0;
+    int hrefEnd = 0;
+
+    for (int i = 0; i < length; ++i) {
+      final char c = m_text.charAt(i);
+
+      if (c == '<' && i >= inputEnd) {
+        final int end = inputTagEnd(i);
+
+        if (end == -1) {
+          // No more '>', so there are no more input tags.
+          inputEnd = length;
+        }
+        else if (end > i) {
+          indexInput(attributeStringParser, i, end);
+          inputEnd = end;
+        }
+      }
+      else if (c == 'h' && i >= hrefEnd) {
+        final int end = hrefEnd(i);
+
+        if (end > i) {
+          indexURI(uriParser, i, end);
+          hrefEnd = end;
+        }
+      }
+    }
+  }
+
+  /**
+   * Find the end of an input tag.
+   *
+   * @return The position after the closing {@code >}, {@code start} if
+   *  there is no input tag at {@code start}, or {@code -1} if there is no
+   *  {@code >} after {@code start}.
+   */
+  private int inputTagEnd(final int start) {
+    int i = skipWhitespace(start + 1);
+
+    for (final char c : "input".toCharArray()) {
+      // ASCII letters only, as the regular expression CASE_INSENSITIVE.
+      if (i == m_text.length() || (m_text.charAt(i) | 0x20) != c) {
+        return start;
+      }
+
+      ++i;
+    }
+
+    final int afterName = i;
+    i = skipWhitespace(i);
+
+    if (i == afterName) {
+      return start;
+    }
+
+    for (; i < m_text.length(); ++i) {
+      if (m_text.charAt(i) == '>') {
+        return i + 1;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Find the end of an {@code href} attribute.
+   *
+   * @return The position after the closing quote, or {@code start} if there
+   *  is no {@code href} attribute at {@code start}.
+   */
+  private int hrefEnd(final int start) {
+    final int length = m_text.length();
+    int i = start;
+
+    for (final char c : "href".toCharArray()) {
+      if (i == length || m_text.charAt(i) != c) {
+        return start;
+      }
+
+      ++i;
+    }
+
+    i = skipSpacesAndTabs(i);
+
+    if (i == length || m_text.charAt(i) != '=') {
+      return start;
+    }
+
+    i = skipSpacesAndTabs(i + 1);
+
+    if (i == length || !isQuote(m_text.charAt(i))) {
+      return start;
+    }
+
+    for (++i; i < length; ++i) {
+      if (isQuote(m_text.charAt(i))) {
+        return i + 1;
+      }
+    }
+
+    return start;
+  }
+
+  private int skipWhitespace(final int start) {
+    int i = start;
+
+    while (i < m_text.length() && isWhitespace(m_text.charAt(i))) {
+      ++i;
+    }
+
+    return i;
+  }
+
+  private int skipSpacesAndTabs(final int start) {
+    int i = start;
+
+    while (i < m_text.length() &&
+           (m_text.charAt(i) == ' ' || m_text.charAt(i) == '\t')) {
+      ++i;
+    }
+
+    return i;
+  }
+
+  /**
+   * The characters matched by the regular expression {@code \s}.
+   */
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' ||
+           c == '\r';
+  }
+
+  private static boolean isQuote(final char c) {
+    return c == '\'' || c == '"';
+  }
+
+  private void indexInput(final AttributeStringParser attributeStringParser,
+                          final int start,
+                          final int end) {
+
+    final String tag = m_text.substring(start, end);
+
+    final AttributeStringParser.AttributeMap map =
+      attributeStringParser.parse(tag);
+
+    final String name = map.get("name");
+    final String value = map.get("value");
+
+    if (name != null && value != null) {
+      m_inputs.add(name, start, value);
+
+      if (s_hiddenTypePattern.matcher(tag).find()) {
+        m_hiddenInputs.add(name, start, value);
+      }
+    }
+  }
+
+  private void indexURI(final URIParser uriParser,
+                        final int start,
+                        final int end) {
+
+    int valueStart = start;
+
+    while (!isQuote(m_text.charAt(valueStart))) {
+      ++valueStart;
+    }
+
+    final String uri = m_text.substring(valueStart + 1, end - 1);
+
+    uriParser.parse(uri, new URIParser.AbstractParseListener() {
+      @Override
+      public boolean pathParameterNameValue(final String name,
+                                            final String value) {
+        m_uriParameters.add(name, start, value);
+        return true;
+      }
+
+      @Override
+      public boolean queryStringNameValue(final String name,
+                                          final String value) {
+        m_uriParameters.add(name, start, value);
+        return true;
+      }
+    });
+  }
+
+  /**
+   * The position of the first occurrence of some text in the body.
+   *
+   * @param text The text, or {@code null} for the start of the body.
+   * @return The position, or {@code -1} if the text does not occur.
+   */
+  private int startFrom(final String text) {
+    return text == null ? 0 : m_text.indexOf(text);
+  }
+
+  public String valueFromBodyInput(final String tokenName,
+                                   final String afterText) {
+    return m_inputs.getValue(tokenName, startFrom(afterText));
+  }
+
+  public List<String> valuesFromBodyInput(final String tokenName,
+                                          final String afterText) {
+    return m_inputs.getValues(tokenName, startFrom(afterText));
+  }
+
+  public String valueFromHiddenInput(final String tokenName,
+                                     final String afterText) {
+    return m_hiddenInputs.getValue(tokenName, startFrom(afterText));
+  }
+
+  public List<String> valuesFromHiddenInput(final String tokenName,
+                                            final String afterText) {
+    return m_hiddenInputs.getValues(tokenName, startFrom(afterText));
+  }
+
+  public String valueFromBodyURI(final String tokenName,
+                                 final String afterText) {
+    return m_uriParameters.getValue(tokenName, startFrom(afterText));
+  }
+
+  public List<String> valuesFromBodyURI(final String tokenName,
+                                        final String afterText) {
+    return m_uriParameters.getValues(tokenName, startFrom(afterText));
+  }
+
+  private static final class Match {
+    private final int m_position;
+    private final String m_value;
+
+    public Match(final int position, final String value) {
+      m_position = position;
+      m_value = value;
+    }
+
+    public int getPosition() {
+      return m_position;
+    }
+
+    public String getValue() {
+      return m_value;
+    }
+  }
+
+  /**
+   * The matches for each token name, in body order.
+   */
+  private static final class TokenMap {
+    private final Map<String, List<Match>> m_map =
+      new HashMap<String, List<Match>>();
+
+    public void add(final String name, final int position, final String value) {
+      final List<Match> existing = m_map.get(name);
+
+      if (existing != null) {
+        existing.add(new Match(position, value));
+      }
+      else {
+        final List<Match> matches = new ArrayList<Match>(1);
+        matches.add(new Match(position, value));
+        m_map.put(name, matches);
+      }
+    }
+
+    public String getValue(final String name, final int startFrom) {
+      final List<Match> matches = m_map.get(name);
+
+      if (matches != null && startFrom != -1) {
+        for (final Match match : matches) {
+          if (match.getPosition() >= startFrom) {
+            return match.getValue();
+          }
+        }
+      }
+
+      return "";
+    }
+
+    /**
+     * Only the first value is returned for each tag or URI.
+     */
+    public List<String> getValues(final String name, final int startFrom) {
+      final List<Match> matches = m_map.get(name);
+
+      if (matches == null || startFrom == -1) {
+        return emptyList();
+      }
+
+      final List<String> result = new ArrayList<String>(matches.size());
+      int lastPosition = -1;
+
+      for (final Match match : matches) {
+        final int position = match.getPosition();
+
+        if (position >= startFrom && position != lastPosition) {
+          result.add(match.getValue());
+          lastPosition = position;
+        }
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * The body, indexed by position.
+   */
+  private interface Text {
+    int length();
+
+    /**
+     * The character at a position. Characters outside the ASCII range may
+     * be reported as any value above 0x7F.
+     */
+    char charAt(int i);
+
+    String substring(int start, int end);
+
+    int indexOf(String text);
+  }
+
+  private static final class ByteText implements Text {
+    private final byte[] m_bytes;
+    private final Charset m_charset;
+
+    public ByteText(final byte[] bytes, final Charset charset) {
+      m_bytes = bytes;
+      m_charset = charset;
+    }
+
+    @Override public int length() {
+      return m_bytes.length;
+    }
+
+    @Override public char charAt(final int i) {
+      return (char)(m_bytes[i] & 0xFF);
+    }
+
+    @Override public String substring(final int start, final int end) {
+      return new String(m_bytes, start, end - start, m_charset);
+    }
+
+    @Override public int indexOf(final String text) {
+      final byte[] target = text.getBytes(m_charset);
+      final int last = m_bytes.length - target.length;
+
+      outer:
+      for (int i = 0; i <= last; ++i) {
+        for (int j = 0; j < target.length; ++j) {
+          if (m_bytes[i + j] != target[j]) {
+            continue outer;
+          }
+        }
+
+        return i;
+      }
+
+      return -1;
+    }
+  }
+
+  private static final class StringText implements Text {
+    private final String m_string;
+
+    public StringText(final String string) {
+      m_string = string;
+    }
+
+    @Override public int length() {
+      return m_string.length();
+    }
+
+    @Override public char charAt(final int i) {
+      return m_string.charAt(i);
+    }
+
+    @Override public String substring(final int start, final int end) {
+      return m_string.substring(start, end);
+    }
+
+    @Override public int indexOf(final String text) {
+      return m_string.indexOf(text);
+    }
+  }
+}
@@ -0,0 +1,256 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import net.grinder.common.UncheckedInterruptedException;
+import HTTPClient.HTTPConnection.Resolver;
+import HTTPClient.HTTPConnection.TimeAuthority;
+
+
+/**
+ * A process wide cache of host name resolutions, shared by the worker
+ * threads.
+ *
+ * <p>Successful resolutions are cached for the time to live; failures are
+ * cached for the negative time to live. If several threads require the same
+ * host at the same time, only one performs the lookup. Each call returns
+ * the host's addresses in a different order, so that new connections are
+ * spread across the addresses in round-robin fashion.</p>
+ *
+ * @author Philip Aston
+ */
+public final class DNSCache implements Resolver {
+
+  private final Resolver m_delegate;
+  private final TimeAuthority m_timeAuthority;
+  private final long m_timeToLive;
+  private final long m_negativeTimeToLive;
+
+  // Guarded by itself.
+  private final Map<String, Entry> m_entries = new HashMap<String, Entry>();
+
+  // Guarded by m_entries.
+  private long m_hits;
+  private long m_misses;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate
+   *          Performs the lookups.
+   * @param timeAuthority
+   *          Knows the time.
+   * @param timeToLive
+   *          Time in milliseconds for which successful resolutions are
+   *          cached.
+   * @param negativeTimeToLive
+   *          Time in milliseconds for which failed resolutions are cached.
+   */
+  public DNSCache(final Resolver delegate,
+                  final TimeAuthority timeAuthority,
+                  final long timeToLive,
+                  final long negativeTimeToLive) {
+
+    if (timeToLive < 0 || negativeTimeToLive < 0) {
+      throw new IllegalArgumentException("Time to live must not be negative");
+    }
+
+    m_delegate = delegate;
+    m_timeAuthority = timeAuthority;
+    m_timeToLive = timeToLive;
+    m_negativeTimeToLive = negativeTimeToLive;
+  }
+
+  /**
+   * Resolve a host name.
+   *
+   * @param host
+   *          The host name, or an address literal.
+   * @return The addresses, rotated by one place from the previous call.
+   * @throws UnknownHostException
+   *           If the host could not be resolved.
+   */
+  @Override
+  public InetAddress[] getAllByName(final String host)
+    throws UnknownHostException {
+
+    final String key = host.toLowerCase(Locale.ENGLISH);
+    final Entry entry;
+    final boolean lookup;
+
+    synchronized (m_entries) {
+      final Entry existing = m_entries.get(key);
+
+      if (existing != null &&
+          !existing.hasExpired(m_timeAuthority.getTimeInMilliseconds())) {
+        entry = existing;
+        lookup = false;
+        ++m_hits;
+      }
+      else {
+        entry = new Entry();
+        m_entries.put(key, entry);
+        lookup = true;
+        ++m_misses;
+      }
+    }
+
+    if (lookup) {
+      entry.resolve(host);
+    }
+
+    return entry.getAddresses();
+  }
+
+  /**
+   * Whether the cache holds an unexpired resolution for a host.
+   *
+   * @param host
+   *          The host name.
+   * @return {@code true} => {@link #getAllByName(String)} will not perform a
+   *         lookup.
+   */
+  public boolean isCached(final String host) {
+    synchronized (m_entries) {
+      final Entry entry = m_entries.get(host.toLowerCase(Locale.ENGLISH));
+
+      return entry != null &&
+             !entry.hasExpired(m_timeAuthority.getTimeInMilliseconds());
+    }
+  }
+
+  /**
+   * Discard all cached resolutions.
+   */
+  public void clear() {
+    synchronized (m_entries) {
+      m_entries.clear();
+    }
+  }
+
+  /**
+   * The number of resolutions answered from the cache, including those that
+   * waited for another thread's lookup.
+   *
+   * @return The number of hits.
+   */
+  public long getHits() {
+    synchronized (m_entries) {
+      return m_hits;
+    }
+  }
+
+  /**
+   * The number of resolutions that required a lookup.
+   *
+   * @return The number of misses.
+   */
+  public long getMisses() {
+    synchronized (m_entries) {
+      return m_misses;
+    }
+  }
+
+  private final class Entry {
+    // Guarded by this.
+    private boolean m_resolved;
+    private InetAddress[] m_addresses;
+    private String m_failure;
+    private long m_expiryTime = Long.MAX_VALUE;
+    private int m_next;
+
+    public synchronized boolean hasExpired(final long now) {
+      return now >= m_expiryTime;
+    }
+
+    public void resolve(final String host) {
+      InetAddress[] addresses = null;
+      String failure = null;
+
+      try {
+        addresses = m_delegate.getAllByName(host);
+
+        if (addresses.length == 0) {
+          failure = host;
+        }
+      }
+      catch (final UnknownHostException e) {
+        failure = e.getMessage() != null ? e.getMessage() : host;
+      }
+      finally {
+        synchronized (this) {
+          if (failure == null && addresses != null) {
+            m_addresses = addresses;
+            m_expiryTime = m_timeAuthority.getTimeInMilliseconds() +
+                           m_timeToLive;
+          }
+          else {
+            // Also reached if the delegate threw an unchecked exception, in
+            // which case the entry expires immediately.
+            m_failure = failure != null ? failure : host;
+            m_expiryTime = failure != null ?
+              m_timeAuthority.getTimeInMilliseconds() + m_negativeTimeToLive :
+              Long.MIN_VALUE;
+          }
+
+          m_resolved = true;
+          notifyAll();
+        }
+      }
+    }
+
+    public synchronized InetAddress[] getAddresses()
+      throws UnknownHostException {
+
+      while (!m_resolved) {
+        try {
+          wait();
+        }
+        catch (final InterruptedException e) {
+          throw new UncheckedInterruptedException(e);
+        }
+      }
+
+      if (m_addresses == null) {
+        // A new exception for each caller, so the stack trace is useful.
+        throw new UnknownHostException(m_failure);
+      }
+
+      final int n = m_addresses.length;
+      final InetAddress[] result = new InetAddress[n];
+      final int start = m_next;
+      m_next = (m_next + 1) % n;
+
+      for (int i = 0; i < n; ++i) {
+        result[i] = m_addresses[(start + i) % n];
+      }
+
+      return result;
+    }
+  }
+}
@@ -0,0 +1,353 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import net.grinder.common.GrinderException;
+import net.grinder.common.UncheckedInterruptedException;
+import HTTPClient.HTTPConnection.TimeAuthority;
+import HTTPClient.ProtocolNotSuppException;
+import HTTPClient.URI;
+
+
+/**
+ * A process wide pool of connections, shared by the worker threads.
+ *
+ * <p>Each origin (scheme, host, and port) has its own set of connections. A
+ * worker thread leases a connection for the duration of a request. If the
+ * maximum number of connections for the origin are leased, the thread waits
+ * for one to be released. Connections that have been idle for longer than the
+ * idle time out are closed.</p>
+ *
+ * <p>The pool never holds more than the maximum number of connections for an
+ * origin. A lease that can't wait for a connection is given a connection of
+ * its own, which is not counted by the pool and is closed when the lease is
+ * released.</p>
+ *
+ * @author Philip Aston
+ */
+final class HTTPConnectionPool {
+
+  private final int m_maximumConnectionsPerOrigin;
+  private final long m_idleTimeout;
+  private final TimeAuthority m_timeAuthority;
+
+  // Guarded by itself.
+  private final Map<URI, Origin> m_origins = new HashMap<URI, Origin>();
+
+  /**
+   * Constructor.
+   *
+   * @param maximumConnectionsPerOrigin
+   *          Maximum number of connections for each origin.
+   * @param idleTimeout
+   *          Time in milliseconds after which idle connections are closed.
+   * @param timeAuthority
+   *          Knows the time.
+   */
+  public HTTPConnectionPool(final int maximumConnectionsPerOrigin,
+                            final long idleTimeout,
+                            final TimeAuthority timeAuthority) {
+
+    if (maximumConnectionsPerOrigin < 1) {
+      throw new IllegalArgumentException(
+        "Maximum connections per origin must be positive");
+    }
+
+    m_maximumConnectionsPerOrigin = maximumConnectionsPerOrigin;
+    m_idleTimeout = idleTimeout;
+    m_timeAuthority = timeAuthority;
+  }
+
+  /**
+   * Lease a connection. Blocks until a connection is available.
+   *
+   * @param origin
+   *          The origin.
+   * @param connectionFactory
+   *          Used to create a new connection, if necessary.
+   * @return The lease. The caller must call {@link Lease#release} or
+   *         {@link Lease#discard} when it has finished with the connection.
+   * @throws GrinderException
+   *           If a new connection could not be created.
+   * @throws ProtocolNotSuppException
+   *           If the origin's protocol is not supported.
+   */
+  public Lease lease(final URI origin,
+                     final ConnectionFactory connectionFactory)
+    throws GrinderException, ProtocolNotSuppException {
+    return lease(origin, connectionFactory, true);
+  }
+
+  /**
+   * Lease a connection.
+   *
+   * @param origin
+   *          The origin.
+   * @param connectionFactory
+   *          Used to create a new connection, if necessary.
+   * @param wait
+   *          If {@code true}, block until a connection is available. If
+   *          {@code false} and no connection is available, create a
+   *          connection outside the pool. The connection is closed when the
+   *          lease is released.
+   * @return The lease. The caller must call {@link Lease#release} or
+   *         {@link Lease#discard} when it has finished with the connection.
+   * @throws GrinderException
+   *           If a new connection could not be created.
+   * @throws ProtocolNotSuppException
+   *           If the origin's protocol is not supported.
+   */
+  public Lease lease(final URI origin,
+                     final ConnectionFactory connectionFactory,
+                     final boolean wait)
+    throws GrinderException, ProtocolNotSuppException {
+
+    final Origin o;
+
+    synchronized (m_origins) {
+      final Origin existing = m_origins.get(origin);
+
+      if (existing != null) {
+        o = existing;
+      }
+      else {
+        o = new Origin();
+        m_origins.put(origin, o);
+      }
+    }
+
+    final long start = m_timeAuthority.getTimeInMilliseconds();
+    final long startNanos = m_timeAuthority.getTimeInNanoseconds();
+
+    final boolean pooled;
+
+    synchronized (o) {
+      o.closeIdle(start);
+
+      while (wait &&
+             o.m_idle.isEmpty() &&
+             o.m_numberOfConnections >= m_maximumConnectionsPerOrigin) {
+        try {
+          o.wait();
+        }
+        catch (final InterruptedException e) {
+          throw new UncheckedInterruptedException(e);
+        }
+      }
+
+      final long waitTime =
+        (m_timeAuthority.getTimeInNanoseconds() - startNanos) / 1000;
+
+      if (!o.m_idle.isEmpty()) {
+        // Most recently used first, so the oldest connections go idle.
+        final IdleConnection idle = o.m_idle.removeFirst();
+        return new Lease(o, idle.m_connection, waitTime, true);
+      }
+
+      pooled = o.m_numberOfConnections < m_maximumConnectionsPerOrigin;
+
+      if (pooled) {
+        // Count the connection before we create it, so we don't need to
+        // hold the lock while we do so.
+        ++o.m_numberOfConnections;
+      }
+    }
+
+    if (!pooled) {
+      return new Lease(null,
+                       connectionFactory.create(origin),
+                       (m_timeAuthority.getTimeInNanoseconds() - startNanos) /
+                         1000,
+                       false);
+    }
+
+    boolean created = false;
+
+    try {
+      final Lease result =
+        new Lease(o,
+                  connectionFactory.create(origin),
+                  (m_timeAuthority.getTimeInNanoseconds() - startNanos) / 1000,
+                  false);
+      created = true;
+      return result;
+    }
+    finally {
+      if (!created) {
+        o.remove();
+      }
+    }
+  }
+
+  /**
+   * The number of connections, leased or idle, for an origin. Used by the
+   * unit tests.
+   *
+   * @param origin The origin.
+   * @return The number of connections.
+   */
+  int getNumberOfConnections(final URI origin) {
+    final Origin o;
+
+    synchronized (m_origins) {
+      o = m_origins.get(origin);
+    }
+
+    if (o == null) {
+      return 0;
+    }
+
+    synchronized (o) {
+      return o.m_numberOfConnections;
+    }
+  }
+
+  /**
+   * Creates the connections for the pool.
+   */
+  interface ConnectionFactory {
+    HTTPConnectionWrapper create(URI origin)
+      throws GrinderException, ProtocolNotSuppException;
+  }
+
+  /**
+   * A leased connection.
+   */
+  final class Lease {
+    // null => the connection is not pooled.
+    private final Origin m_origin;
+    private final HTTPConnectionWrapper m_connection;
+    private final long m_waitTime;
+    private final boolean m_reused;
+
+    private Lease(final Origin origin,
+                  final HTTPConnectionWrapper connection,
+                  final long waitTime,
+                  final boolean reused) {
+      m_origin = origin;
+      m_connection = connection;
+      m_waitTime = waitTime;
+      m_reused = reused;
+    }
+
+    public HTTPConnectionWrapper getConnectionWrapper() {
+      return m_connection;
+    }
+
+    /**
+     * How long the lease waited for a connection to be available.
+     *
+     * @return The wait time in microseconds.
+     */
+    public long getWaitTime() {
+      return m_waitTime;
+    }
+
+    /**
+     * Whether the lease reused an idle connection.
+     *
+     * @return {@code true} => an idle connection was reused; {@code false}
+     *         => a new connection was created.
+     */
+    public boolean isReused() {
+      return m_reused;
+    }
+
+    /**
+     * Return the connection to the pool. Connections created outside the
+     * pool are closed instead.
+     */
+    public void release() {
+      if (m_origin == null) {
+        m_connection.close();
+        return;
+      }
+
+      synchronized (m_origin) {
+        final long now = m_timeAuthority.getTimeInMilliseconds();
+        m_origin.m_idle.addFirst(new IdleConnection(m_connection, now));
+        m_origin.closeIdle(now);
+        m_origin.notifyAll();
+      }
+    }
+
+    /**
+     * Close the connection, rather than return it to the pool.
+     */
+    public void discard() {
+      m_connection.close();
+
+      if (m_origin != null) {
+        m_origin.remove();
+      }
+    }
+  }
+
+  private static final class IdleConnection {
+    private final HTTPConnectionWrapper m_connection;
+    private final long m_idleSince;
+
+    IdleConnection(final HTTPConnectionWrapper connection,
+                   final long idleSince) {
+      m_connection = connection;
+      m_idleSince = idleSince;
+    }
+  }
+
+  private final class Origin {
+    // Guarded by this.
+    private final Deque<IdleConnection> m_idle =
+      new ArrayDeque<IdleConnection>();
+    private int m_numberOfConnections;
+
+    /**
+     * Close connections that have been idle for too long. The least
+     * recently used connections are at the end of the queue.
+     */
+    void closeIdle(final long now) {
+      final Iterator<IdleConnection> iterator = m_idle.descendingIterator();
+
+      while (iterator.hasNext()) {
+        final IdleConnection idle = iterator.next();
+
+        if (now - idle.m_idleSince < m_idleTimeout) {
+          break;
+        }
+
+        iterator.remove();
+        idle.m_connection.close();
+        --m_numberOfConnections;
+      }
+    }
+
+    synchronized void remove() {
+      --m_numberOfConnections;
+      notifyAll();
+    }
+  }
+}
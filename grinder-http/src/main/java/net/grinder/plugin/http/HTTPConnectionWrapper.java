@@ -26,6 +26,7 @@ package net.grinder.plugin.http;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
+import net.grinder.plugin.http.http2.Http2Transport;
 import net.grinder.util.Sleeper;
 import HTTPClient.CookieModule;
 import HTTPClient.HTTPConnection;
@@ -49,6 +50,7 @@ final class HTTPConnectionWrapper implements HTTPPluginConnection {
 
   private final HTTPConnection m_httpConnection;
   private final Sleeper m_slowClientSleeper;
+  private final Http2Transport m_http2Transport;
 
   static {
     // Load HTTPClient modules dynamically as we don't have public
@@ -68,10 +70,12 @@ final class HTTPConnectionWrapper implements HTTPPluginConnection {
 
   public HTTPConnectionWrapper(final HTTPConnection httpConnection,
                                final HTTPPluginConnectionDefaults defaults,
-                               final Sleeper slowClientSleeper) {
+                               final Sleeper slowClientSleeper,
+                               final Http2Transport http2Transport) {
 
     m_httpConnection = httpConnection;
     m_slowClientSleeper = slowClientSleeper;
+    m_http2Transport = http2Transport;
     m_httpConnection.setAllowUserInteraction(false);
     m_httpConnection.setTestConnectionHealthWithBlockingRead(true);
 
@@ -87,6 +91,7 @@ final class HTTPConnectionWrapper implements HTTPPluginConnection {
     setProxyServer(defaults.getProxyHost(), defaults.getProxyPort());
     setLocalAddress(defaults.getLocalAddress());
     setBandwidthLimit(defaults.getBandwidthLimit());
+    setUseHTTP2(defaults.getUseHTTP2());
   }
 
   HTTPConnection getConnection() {
@@ -191,8 +196,14 @@ final class HTTPConnectionWrapper implements HTTPPluginConnection {
     }
   }
 
+  @Override
+  public void setUseHTTP2(final boolean useHTTP2) {
+    m_httpConnection.setTransport(useHTTP2 ? m_http2Transport : null);
+  }
+
   @Override
   public void close() {
     m_httpConnection.stop();
+    m_http2Transport.close(m_httpConnection);
   }
 }
@@ -25,14 +25,20 @@
 
 package net.grinder.plugin.http;
 
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicReference;
+
 import net.grinder.common.GrinderException;
+import net.grinder.common.GrinderProperties;
 import net.grinder.common.TimeAuthority;
+import net.grinder.plugin.http.http2.Http2Transport;
 import net.grinder.plugininterface.GrinderPlugin;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.plugininterface.PluginThreadListener;
 import net.grinder.script.Grinder.ScriptContext;
 import net.grinder.script.Statistics;
+import net.grinder.script.Statistics.StatisticsForTest;
 import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.util.Sleeper;
 import net.grinder.util.SleeperImplementation;
@@ -74,6 +80,11 @@ public class HTTPPlugin implements GrinderPlugin {
   private final ScriptContext m_scriptContext;
   private final HTTPClient.HTTPConnection.TimeAuthority
     m_httpClientTimeAuthority;
+  private final AtomicReference<HTTPConnectionPool> m_connectionPool =
+    new AtomicReference<HTTPConnectionPool>();
+  private final Http2Transport m_http2Transport = new Http2Transport();
+  private final DNSCache m_dnsCache;
+  private final boolean m_timeDNSLookups;
   private boolean m_initialized;
 
   /**
@@ -97,8 +108,47 @@ public class HTTPPlugin implements GrinderPlugin {
         @Override public long getTimeInMilliseconds() {
           return timeAuthority.getTimeInMilliseconds();
         }
+
+        @Override public long getTimeInNanoseconds() {
+          return timeAuthority.getTimeInNanoseconds();
+        }
       };
 
+    final GrinderProperties properties = m_scriptContext.getProperties();
+
+    if (properties.getBoolean("grinder.http.dnsCache", false)) {
+      m_dnsCache =
+        new DNSCache(HTTPConnection.getDefaultResolver(),
+                     m_httpClientTimeAuthority,
+                     properties.getLong("grinder.http.dnsCache.ttl", 60000),
+                     properties.getLong("grinder.http.dnsCache.negativeTTL",
+                                        10000));
+
+      HTTPConnection.setDefaultResolver(m_dnsCache);
+
+      final String hosts =
+        properties.getProperty("grinder.http.dnsCache.hosts", "").trim();
+
+      if (hosts.length() > 0) {
+        for (final String host : hosts.split("[\\s,]+")) {
+          try {
+            m_dnsCache.getAllByName(host);
+          }
+          catch (final UnknownHostException e) {
+            m_scriptContext.getLogger().warn(
+              "Failed to resolve " + host + " for the DNS cache");
+          }
+        }
+      }
+    }
+    else {
+      m_dnsCache = null;
+    }
+
+    m_timeDNSLookups =
+      m_dnsCache == null ||
+      properties.getBoolean("grinder.http.dnsCache.timed", true);
+
     synchronized (HTTPPlugin.class) {
       s_singleton = this;
     }
@@ -113,6 +163,84 @@ public class HTTPPlugin implements GrinderPlugin {
     return m_scriptContext;
   }
 
+  /**
+   * The process-wide DNS cache.
+   *
+   * @return The cache, or {@code null} if it is disabled.
+   */
+  final DNSCache getDNSCache() {
+    return m_dnsCache;
+  }
+
+  /**
+   * If host name resolution is excluded from test times, resolve the host
+   * for a connection with the test clock paused. The connection will then
+   * find the resolution in the DNS cache.
+   *
+   * @param connection The connection.
+   * @throws GrinderException If the clock could not be paused.
+   */
+  final void resolveUntimed(final HTTPConnection connection)
+    throws GrinderException {
+
+    if (m_timeDNSLookups) {
+      return;
+    }
+
+    final String host = connection.getProxyHost() != null ?
+      connection.getProxyHost() : connection.getHost();
+
+    if (m_dnsCache.isCached(host)) {
+      return;
+    }
+
+    final Statistics statistics = m_scriptContext.getStatistics();
+    final StatisticsForTest statisticsForCurrentTest =
+        statistics.isTestInProgress() ? statistics.getForCurrentTest() : null;
+
+    if (statisticsForCurrentTest != null) {
+      statisticsForCurrentTest.pauseClock();
+    }
+
+    try {
+      m_dnsCache.getAllByName(host);
+    }
+    catch (final UnknownHostException e) {
+      // The failure is cached; the request will report it.
+    }
+    finally {
+      if (statisticsForCurrentTest != null) {
+        statisticsForCurrentTest.resumeClock();
+      }
+    }
+  }
+
+  /**
+   * Replace the process-wide connection pool.
+   *
+   * <p>Connections held by the existing pool are not closed; they will be
+   * discarded as their leases are released.</p>
+   *
+   * @param maximumConnectionsPerOrigin
+   *          Maximum connections per origin, or {@code 0} to disable
+   *          pooling.
+   * @param idleTimeout
+   *          Time in milliseconds after which an idle connection is
+   *          closed.
+   */
+  final void setConnectionPool(final int maximumConnectionsPerOrigin,
+                               final long idleTimeout) {
+    if (maximumConnectionsPerOrigin == 0) {
+      m_connectionPool.set(null);
+    }
+    else {
+      m_connectionPool.set(
+        new HTTPConnectionPool(maximumConnectionsPerOrigin,
+                               idleTimeout,
+                               m_httpClientTimeAuthority));
+    }
+  }
+
   /**
    * Delay initialisation that is costly or has external effects until the
    * plugin is used by the script.
@@ -145,7 +273,8 @@ public class HTTPPlugin implements GrinderPlugin {
       // Turn off authorisation UI.
       DefaultAuthHandler.setAuthorizationPrompter(null);
 
-      // Register custom statistics.
+      // Register custom statistics. Times are recorded in microseconds,
+      // and presented in milliseconds.
       try {
 
         final Statistics statistics = m_scriptContext.getStatistics();
@@ -164,20 +293,41 @@ public class HTTPPlugin implements GrinderPlugin {
 
         statistics.registerDataLogExpression(
           "Time to resolve host",
-          StatisticsIndexMap.HTTP_PLUGIN_DNS_TIME_KEY);
+          "(/ " + StatisticsIndexMap.HTTP_PLUGIN_DNS_TIME_KEY +
+          " 1000)");
 
         statistics.registerDataLogExpression(
           "Time to establish connection",
-          StatisticsIndexMap.HTTP_PLUGIN_CONNECT_TIME_KEY);
+          "(/ " + StatisticsIndexMap.HTTP_PLUGIN_CONNECT_TIME_KEY +
+          " 1000)");
+
+        statistics.registerDataLogExpression(
+          "Time to complete SSL handshake",
+          "(/ " + StatisticsIndexMap.HTTP_PLUGIN_HANDSHAKE_TIME_KEY +
+          " 1000)");
 
         statistics.registerDataLogExpression(
           "Time to first byte",
-          StatisticsIndexMap.HTTP_PLUGIN_FIRST_BYTE_TIME_KEY);
+          "(/ " + StatisticsIndexMap.HTTP_PLUGIN_FIRST_BYTE_TIME_KEY +
+          " 1000)");
 
         statistics.registerDataLogExpression(
           "New connections",
           StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED);
 
+        statistics.registerDataLogExpression(
+          "Connection pool wait time",
+          "(/ " + StatisticsIndexMap.HTTP_PLUGIN_POOL_WAIT_TIME_KEY +
+          " 1000)");
+
+        statistics.registerDataLogExpression(
+          "Connection pool hits",
+          StatisticsIndexMap.HTTP_PLUGIN_POOL_HITS);
+
+        statistics.registerDataLogExpression(
+          "Connection pool new connections",
+          StatisticsIndexMap.HTTP_PLUGIN_POOL_CONNECTIONS_CREATED);
+
         statistics.registerSummaryExpression(
           "Mean response length",
           "(/ " + StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY +
@@ -195,19 +345,19 @@ public class HTTPPlugin implements GrinderPlugin {
         statistics.registerSummaryExpression(
           "Mean time to resolve host",
           "(/ " + StatisticsIndexMap.HTTP_PLUGIN_DNS_TIME_KEY +
-          " (+ " + StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED +
+          " (* 1000 " + StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED +
           "))");
 
         statistics.registerSummaryExpression(
           "Mean time to establish connection",
           "(/ " + StatisticsIndexMap.HTTP_PLUGIN_CONNECT_TIME_KEY +
-          " (+ " + StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED +
+          " (* 1000 " + StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED +
           "))");
 
         statistics.registerSummaryExpression(
           "Mean time to first byte",
           "(/ " + StatisticsIndexMap.HTTP_PLUGIN_FIRST_BYTE_TIME_KEY +
-          " (+ (count timedTests) untimedTests))");
+          " (* 1000 (+ (count timedTests) untimedTests)))");
       }
       catch (final GrinderException e) {
         throw new PluginException(
@@ -228,7 +378,9 @@ public class HTTPPlugin implements GrinderPlugin {
 
     return new HTTPPluginThreadState(m_scriptContext.getSSLControl(),
                                      m_slowClientSleeper,
-                                     m_httpClientTimeAuthority);
+                                     m_httpClientTimeAuthority,
+                                     m_connectionPool,
+                                     m_http2Transport);
   }
 
   // It may be useful to separate out a null implementation that can
@@ -231,10 +231,39 @@ public interface HTTPPluginConnection {
    */
   void setBandwidthLimit(int targetBPS);
 
+  /**
+   * Set whether requests are sent using HTTP/2.
+   *
+   * <p>HTTP/2 connections are shared by all the worker threads in the
+   * process, so requests from many threads are multiplexed over a few
+   * connections to each server. Plain HTTP requests assume the server
+   * supports HTTP/2 (h2c with prior knowledge). HTTPS requests negotiate
+   * HTTP/2 with the server using ALPN, and fall back to HTTP/1.1 if the
+   * server or the JVM doesn't support it.</p>
+   *
+   * <p>A shared HTTPS connection uses the SSL socket factory of the worker
+   * thread that opened it, so other threads' requests over it use that
+   * thread's SSL context, including its key store and client
+   * certificate.</p>
+   *
+   * <p>Requests made through a proxy, and requests with streamed bodies,
+   * always use HTTP/1.1. Bandwidth limiting doesn't apply to HTTP/2
+   * requests.</p>
+   *
+   * <p>Default: {@code false}</p>
+   *
+   * @param useHTTP2 {@code true} => use HTTP/2.
+   */
+  void setUseHTTP2(boolean useHTTP2);
+
   /**
    * Explicitly closes physical connection to the server. A new connection will
    * be created if this {@link HTTPPluginConnection} is used again. You
    * shouldn't normally need to call this.
+   *
+   * <p>Outstanding HTTP/2 requests are cancelled. A shared HTTP/2 connection
+   * is closed once every {@link HTTPPluginConnection} that has used it has
+   * been closed.</p>
    */
   void close();
 }
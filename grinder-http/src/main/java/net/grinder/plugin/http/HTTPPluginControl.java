@@ -74,6 +74,79 @@ public final class HTTPPluginControl {
     return getThreadState().getConnectionWrapper(new URI(url));
   }
 
+  /**
+   * Enable a process-wide pool of HTTP connections, shared by all worker
+   * threads.
+   *
+   * <p>By default, each worker thread has its own connections. When the
+   * pool is enabled, a request that has no connection for its origin
+   * borrows an idle pooled connection to the origin for the duration of
+   * the request, creating one if fewer than
+   * {@code maximumConnectionsPerOrigin} exist, and otherwise waiting for
+   * another thread to release one. Cookies and authentication details
+   * remain private to each thread.</p>
+   *
+   * <p>A connection obtained with {@link #getThreadConnection} is held
+   * by the calling thread until the end of the run, and is then closed
+   * rather than returned to the pool.</p>
+   *
+   * <p>Pooled connections use the SSL context of the thread that created
+   * them.</p>
+   *
+   * <p>The time spent waiting for a pooled connection and the number of
+   * requests that reused or created a pooled connection are recorded as
+   * the {@code httpplugin.poolWaitTime}, {@code httpplugin.poolHits} and
+   * {@code httpplugin.poolConnectionsCreated} statistics.</p>
+   *
+   * <p>Calling this method again replaces the pool.</p>
+   *
+   * @param maximumConnectionsPerOrigin
+   *          Maximum number of connections to each origin. Must be
+   *          positive.
+   * @param idleTimeout
+   *          Time in milliseconds after which an idle connection is closed.
+   * @throws GrinderException
+   *           If an error occurs.
+   * @see #disableConnectionPool()
+   */
+  public static void enableConnectionPool(final int maximumConnectionsPerOrigin,
+                                          final long idleTimeout)
+    throws GrinderException {
+
+    if (maximumConnectionsPerOrigin < 1) {
+      throw new IllegalArgumentException(
+        "Maximum connections per origin must be positive");
+    }
+
+    HTTPPlugin.getPlugin().setConnectionPool(maximumConnectionsPerOrigin,
+                                             idleTimeout);
+  }
+
+  /**
+   * Disable the process-wide connection pool. Subsequent requests will use
+   * per-thread connections.
+   *
+   * @throws GrinderException
+   *           If an error occurs.
+   * @see #enableConnectionPool(int, long)
+   */
+  public static void disableConnectionPool() throws GrinderException {
+    HTTPPlugin.getPlugin().setConnectionPool(0, 0);
+  }
+
+  /**
+   * Returns the process-wide DNS cache, if it has been enabled with the
+   * {@code grinder.http.dnsCache} property. Scripts can use this to report
+   * the cache hits and misses, or to clear the cache.
+   *
+   * @return The cache, or {@code null} if it is disabled.
+   * @throws GrinderException
+   *           If an error occurs.
+   */
+  public static DNSCache getDNSCache() throws GrinderException {
+    return HTTPPlugin.getPlugin().getDNSCache();
+  }
+
   /**
    * Returns the HTTPClient context object for the calling worker
    * thread. This is useful when calling HTTPClient methods directly,
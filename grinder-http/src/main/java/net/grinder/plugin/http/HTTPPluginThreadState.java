@@ -21,12 +21,20 @@
 
 package net.grinder.plugin.http;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+import net.grinder.common.GrinderException;
 import net.grinder.common.SSLContextFactory;
 import net.grinder.common.SSLContextFactory.SSLContextFactoryException;
 import net.grinder.common.SkeletonThreadLifeCycleListener;
+import net.grinder.plugin.http.http2.Http2Transport;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginThreadListener;
 import net.grinder.util.Sleeper;
@@ -45,32 +53,63 @@ import HTTPClient.URI;
  * @author Philip Aston
  */
 class HTTPPluginThreadState
-  extends SkeletonThreadLifeCycleListener implements PluginThreadListener {
+  extends SkeletonThreadLifeCycleListener
+  implements PluginThreadListener, HTTPConnectionPool.ConnectionFactory {
 
   private final SSLContextFactory m_sslContextFactory;
 
   private final Map<URI, HTTPConnectionWrapper> m_httpConnectionWrappers =
     new HashMap<URI, HTTPConnectionWrapper>();
+
+  // Pooled connections that have been given to the script, and are held
+  // until the end of the run.
+  private final Map<URI, HTTPConnectionPool.Lease> m_heldLeases =
+    new HashMap<URI, HTTPConnectionPool.Lease>();
+
+  // Pooled connections leased for requests, shared by the thread's requests
+  // to the same origin until all of their responses have been read.
+  private final Map<URI, ConnectionLease> m_connectionLeases =
+    new HashMap<URI, ConnectionLease>();
+
+  private final AtomicReference<HTTPConnectionPool> m_connectionPool;
+  private final Http2Transport m_http2Transport;
   private HTTPResponse m_lastResponse;
   private final Sleeper m_slowClientSleeper;
   private final TimeAuthority m_timeAuthority;
+  private byte[] m_bodyBuffer;
 
   HTTPPluginThreadState(final SSLContextFactory sslContextFactory,
                         final Sleeper slowClientSleeper,
-                        final TimeAuthority timeAuthority)
+                        final TimeAuthority timeAuthority,
+                        final Http2Transport http2Transport)
+    throws PluginException {
+    this(sslContextFactory,
+         slowClientSleeper,
+         timeAuthority,
+         new AtomicReference<HTTPConnectionPool>(),
+         http2Transport);
+  }
+
+  HTTPPluginThreadState(
+    final SSLContextFactory sslContextFactory,
+    final Sleeper slowClientSleeper,
+    final TimeAuthority timeAuthority,
+    final AtomicReference<HTTPConnectionPool> connectionPool,
+    final Http2Transport http2Transport)
     throws PluginException {
     m_sslContextFactory = sslContextFactory;
     m_slowClientSleeper = slowClientSleeper;
     m_timeAuthority = timeAuthority;
+    m_connectionPool = connectionPool;
+    m_http2Transport = http2Transport;
   }
 
   public HTTPConnectionWrapper getConnectionWrapper(final URI uri)
-    throws ParseException,
-           ProtocolNotSuppException,
-           SSLContextFactoryException {
+    throws GrinderException,
+           ParseException,
+           ProtocolNotSuppException {
 
-    final URI keyURI =
-      new URI(uri.getScheme(), uri.getHost(), uri.getPort(), "");
+    final URI keyURI = originOf(uri);
 
     final HTTPConnectionWrapper existingConnectionWrapper =
       m_httpConnectionWrappers.get(keyURI);
@@ -79,10 +118,163 @@ class HTTPPluginThreadState
       return existingConnectionWrapper;
     }
 
+    final HTTPConnectionPool pool = m_connectionPool.get();
+
+    final HTTPConnectionWrapper newConnectionWrapper;
+
+    if (pool != null) {
+      // The script may customise the connection, so we hold on to it
+      // until the end of the run.
+      final HTTPConnectionPool.Lease lease =
+        pool.lease(keyURI, this, canWaitFor(keyURI));
+      m_heldLeases.put(keyURI, lease);
+      newConnectionWrapper = lease.getConnectionWrapper();
+      newConnectionWrapper.getConnection().replaceContext(this);
+    }
+    else {
+      newConnectionWrapper = create(keyURI);
+    }
+
+    m_httpConnectionWrappers.put(keyURI, newConnectionWrapper);
+
+    return newConnectionWrapper;
+  }
+
+  /**
+   * Lease a connection from the connection pool for a request. If the
+   * thread has outstanding requests to the same origin, their lease is
+   * shared, and the new request is pipelined on the same connection.
+   *
+   * @param uri
+   *          The request URI.
+   * @return The lease, or {@code null} if there is no connection pool or
+   *         the thread already has a connection for the URI's origin.
+   * @throws GrinderException
+   *           If a connection could not be created.
+   * @throws ParseException
+   *           If the URI could not be parsed.
+   * @throws ProtocolNotSuppException
+   *           If the URI's protocol is not supported.
+   */
+  public ConnectionLease leaseConnection(final URI uri)
+    throws GrinderException, ParseException, ProtocolNotSuppException {
+
+    final HTTPConnectionPool pool = m_connectionPool.get();
+
+    if (pool == null) {
+      return null;
+    }
+
+    final URI keyURI = originOf(uri);
+
+    if (m_httpConnectionWrappers.containsKey(keyURI)) {
+      return null;
+    }
+
+    final ConnectionLease existing = m_connectionLeases.get(keyURI);
+
+    if (existing != null) {
+      existing.share();
+      return existing;
+    }
+
+    final HTTPConnectionPool.Lease lease =
+      pool.lease(keyURI, this, canWaitFor(keyURI));
+    lease.getConnectionWrapper().getConnection().replaceContext(this);
+
+    final ConnectionLease result = new ConnectionLease(keyURI, lease);
+    m_connectionLeases.put(keyURI, result);
+
+    return result;
+  }
+
+  /**
+   * Lease connections for several requests. The pooled connections are
+   * leased in a consistent order, so threads that request several origins at
+   * once cannot deadlock waiting for each other's connections.
+   *
+   * @param uris
+   *          The request URIs.
+   * @return The leases. The caller must release each lease.
+   * @throws GrinderException
+   *           If a connection could not be created.
+   * @throws ParseException
+   *           If a URI could not be parsed.
+   * @throws ProtocolNotSuppException
+   *           If a URI's protocol is not supported.
+   */
+  public List<ConnectionLease> leaseConnections(final Collection<URI> uris)
+    throws GrinderException, ParseException, ProtocolNotSuppException {
+
+    final SortedMap<String, URI> origins = new TreeMap<String, URI>();
+
+    for (final URI uri : uris) {
+      final URI origin = originOf(uri);
+      origins.put(origin.toExternalForm(), origin);
+    }
+
+    final List<ConnectionLease> result = new ArrayList<ConnectionLease>();
+    boolean leased = false;
+
+    try {
+      for (final URI origin : origins.values()) {
+        final ConnectionLease lease = leaseConnection(origin);
+
+        if (lease != null) {
+          result.add(lease);
+        }
+      }
+
+      leased = true;
+    }
+    finally {
+      if (!leased) {
+        for (final ConnectionLease lease : result) {
+          lease.release();
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Pooled connections are leased in origin order. If the thread already
+   * holds a lease for a later origin, it must not wait for a connection, or
+   * it could deadlock with a thread that holds the connection and is
+   * waiting for the later origin. If the pool has no connection available,
+   * it will use a connection of its own instead.
+   */
+  private boolean canWaitFor(final URI origin) {
+    final String key = origin.toExternalForm();
+
+    for (final URI held : m_connectionLeases.keySet()) {
+      if (held.toExternalForm().compareTo(key) > 0) {
+        return false;
+      }
+    }
+
+    for (final URI held : m_heldLeases.keySet()) {
+      if (held.toExternalForm().compareTo(key) > 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static URI originOf(final URI uri) throws ParseException {
+    return new URI(uri.getScheme(), uri.getHost(), uri.getPort(), "");
+  }
+
+  @Override
+  public HTTPConnectionWrapper create(final URI origin)
+    throws ProtocolNotSuppException, SSLContextFactoryException {
+
     final HTTPPluginConnectionDefaults connectionDefaults =
       HTTPPluginConnectionDefaults.getConnectionDefaults();
 
-    final HTTPConnection httpConnection = new HTTPConnection(uri);
+    final HTTPConnection httpConnection = new HTTPConnection(origin);
     httpConnection.setContext(this);
 
     httpConnection.setSSLSocketFactory(
@@ -90,14 +282,10 @@ class HTTPPluginThreadState
 
     httpConnection.setTimeAuthority(m_timeAuthority);
 
-    final HTTPConnectionWrapper newConnectionWrapper =
-      new HTTPConnectionWrapper(httpConnection,
-                                connectionDefaults,
-                                m_slowClientSleeper);
-
-    m_httpConnectionWrappers.put(keyURI, newConnectionWrapper);
-
-    return newConnectionWrapper;
+    return new HTTPConnectionWrapper(httpConnection,
+                                     connectionDefaults,
+                                     m_slowClientSleeper,
+                                     m_http2Transport);
   }
 
   @Override
@@ -105,7 +293,23 @@ class HTTPPluginThreadState
     // Discard our cookies.
     CookieModule.discardAllCookies(this);
 
-    // Close connections from previous run.
+    // Close connections from previous run. Pooled connections may have been
+    // customised, so we don't return them to the pool.
+    for (final Map.Entry<URI, HTTPConnectionPool.Lease> entry :
+      m_heldLeases.entrySet()) {
+      m_httpConnectionWrappers.remove(entry.getKey());
+      entry.getValue().discard();
+    }
+
+    m_heldLeases.clear();
+
+    // Discard connections held for requests whose responses were not read.
+    for (final ConnectionLease lease :
+      new ArrayList<ConnectionLease>(m_connectionLeases.values())) {
+      lease.m_discard = true;
+      lease.close();
+    }
+
     for (final HTTPConnectionWrapper connection :
       m_httpConnectionWrappers.values()) {
       connection.close();
@@ -121,5 +325,108 @@ class HTTPPluginThreadState
   public HTTPResponse getLastResponse() {
     return m_lastResponse;
   }
-}
 
+  /**
+   * Buffer used to read streamed response bodies. Reused for every response
+   * read by the thread.
+   *
+   * @return The buffer.
+   */
+  public byte[] getBodyBuffer() {
+    if (m_bodyBuffer == null) {
+      m_bodyBuffer = new byte[8192];
+    }
+
+    return m_bodyBuffer;
+  }
+
+  /**
+   * A pooled connection leased by the thread. The lease is shared by the
+   * thread's requests to the same origin, and returned to the pool when the
+   * last of them releases it. If any of them discards the lease, the
+   * connection is closed rather than returned.
+   */
+  final class ConnectionLease {
+    private final URI m_origin;
+    private final HTTPConnectionPool.Lease m_lease;
+    private int m_users = 1;
+    private boolean m_used = false;
+    private boolean m_discard = false;
+
+    private ConnectionLease(final URI origin,
+                            final HTTPConnectionPool.Lease lease) {
+      m_origin = origin;
+      m_lease = lease;
+    }
+
+    private void share() {
+      ++m_users;
+    }
+
+    public HTTPConnectionWrapper getConnectionWrapper() {
+      return m_lease.getConnectionWrapper();
+    }
+
+    /**
+     * How long the next request sent on the connection waited for it. The
+     * first request is charged with the time the lease waited; later
+     * requests did not wait.
+     *
+     * @return The wait time in microseconds.
+     */
+    public long getWaitTime() {
+      return m_used ? 0 : m_lease.getWaitTime();
+    }
+
+    /**
+     * Whether the next request sent on the connection reuses it.
+     *
+     * @return {@code true} => an idle connection was reused, or an earlier
+     *         request has used the connection; {@code false} => a new
+     *         connection was created.
+     */
+    public boolean isReused() {
+      return m_used || m_lease.isReused();
+    }
+
+    /**
+     * Record that a request has been sent on the connection.
+     */
+    public void used() {
+      m_used = true;
+    }
+
+    /**
+     * Finish with the connection.
+     */
+    public void release() {
+      if (m_users > 0 && --m_users == 0) {
+        close();
+      }
+    }
+
+    /**
+     * Finish with the connection, and close it when every request sharing
+     * the lease has finished.
+     */
+    public void discard() {
+      m_discard = true;
+      release();
+    }
+
+    private void close() {
+      if (m_connectionLeases.get(m_origin) == this) {
+        m_connectionLeases.remove(m_origin);
+      }
+
+      m_users = 0;
+
+      if (m_discard) {
+        m_lease.discard();
+      }
+      else {
+        m_lease.release();
+      }
+    }
+  }
+}
@@ -123,6 +123,9 @@ public class HTTPRequest {
   private volatile byte[] m_defaultData;
   private volatile NVPair[] m_defaultFormData;
   private volatile boolean m_readResponseBody = true;
+  private volatile boolean m_streamResponseBody = false;
+  private volatile ResponseBodyCheck[] m_responseBodyChecks =
+    new ResponseBodyCheck[0];
 
   /**
    * Creates a new {@code HTTPRequest} instance.
@@ -369,6 +372,70 @@ public class HTTPRequest {
     m_readResponseBody = b;
   }
 
+  /**
+   * Return whether or not the response body will be streamed.
+   *
+   * @return {@code true} => The response body will be streamed.
+   * @see #setStreamResponseBody
+   */
+  public boolean getStreamResponseBody() {
+    return m_streamResponseBody;
+  }
+
+  /**
+   * Set whether or not the response body will be streamed.
+   *
+   * <p>If {@code true}, and the response body is to be
+   * {@link #setReadResponseBody read}, the body is read through a buffer
+   * that each worker thread reuses, and then discarded. The body length is
+   * recorded and any {@link #setResponseBodyChecks response body checks} are
+   * applied as normal, but the whole body is never held in memory. This is
+   * useful for tests that download large responses.</p>
+   *
+   * <p>The body of a streamed response is not available from the
+   * {@link HTTPResponse}.</p>
+   *
+   * @param b {@code true} => The response body will be streamed.
+   */
+  public void setStreamResponseBody(final boolean b) {
+    m_streamResponseBody = b;
+  }
+
+  /**
+   * Return the checks that will be applied to the response body.
+   *
+   * @return The checks.
+   * @see #setResponseBodyChecks
+   */
+  public ResponseBodyCheck[] getResponseBodyChecks() {
+    return m_responseBodyChecks;
+  }
+
+  /**
+   * Set checks to apply to the response body.
+   *
+   * <p>The checks are applied to the body as it is read. They are not
+   * applied if the response body is not {@link #setReadResponseBody read}. If
+   * any check fails, the failure is logged and the test that wraps the
+   * request is marked as unsuccessful.</p>
+   *
+   * @param checks The checks.
+   * @see ResponseBodyChecks
+   */
+  public void setResponseBodyChecks(final ResponseBodyCheck[] checks) {
+    if (checks == null) {
+      throw new NullPointerException("checks is null");
+    }
+
+    for (int i = 0; i < checks.length; ++i) {
+      if (checks[i] == null) {
+        throw new NullPointerException("checks[" + i + "] is null");
+      }
+    }
+
+    m_responseBodyChecks = checks;
+  }
+
   /**
    * Makes an HTTP {@code DELETE} request.
    *
@@ -498,16 +565,172 @@ public class HTTPRequest {
                                 final NVPair[] queryData,
                                 final NVPair[] headers) throws Exception {
 
-    return new AbstractRequest(uri, headers) {
-        @Override
-        HTTPResponse doRequest(final HTTPConnection connection,
-                               final String path,
-                               final NVPair[] mergedHeaders)
-          throws IOException, ModuleException {
-          return connection.Get(path, queryData, mergedHeaders);
+    return new GetRequest(uri, queryData, headers).getHTTPResponse();
+  }
+
+  /**
+   * Sends an HTTP {@code GET} request without waiting for the response.
+   *
+   * <p>Further requests to the same server made before the response is read
+   * are pipelined on the same connection. The response is read, and the
+   * statistics for the request recorded against the test in progress, when
+   * {@link PendingResponse#get()} is called.</p>
+   *
+   * @param uri The URI. If a default URL has been specified with
+   * {@link #setUrl}, this value need not be absolute and, if
+   * relative, it will be resolved relative to the default URL.
+   * Otherwise this value must be an absolute URL.
+   * @return Handle used to read the server's response.
+   * @throws Exception If an error occurs.
+   */
+  public final PendingResponse GETAsync(final String uri) throws Exception {
+    return GETAsync(uri, getFormData(), getHeaders());
+  }
+
+  /**
+   * Sends an HTTP {@code GET} request without waiting for the response.
+   *
+   * @param uri
+   *          The URI. If a default URL has been specified with {@link #setUrl},
+   *          this value need not be absolute and, if relative, it will be
+   *          resolved relative to the default URL. Otherwise this value must be
+   *          an absolute URL.
+   * @param queryData
+   *          Request headers. Replaces all the values set by
+   *          {@link #setFormData}.
+   * @param headers
+   *          Request headers. Overrides headers with matching names set by
+   *          {@link #setHeaders}.
+   * @return Handle used to read the server's response.
+   * @throws Exception
+   *              If an error occurs.
+   * @see #GETAsync(String)
+   */
+  public final PendingResponse GETAsync(final String uri,
+                                        final NVPair[] queryData,
+                                        final NVPair[] headers)
+    throws Exception {
+
+    return new GetRequest(uri, queryData, headers).send(true);
+  }
+
+  /**
+   * Makes several HTTP {@code GET} requests, pipelining the requests to each
+   * server on a single connection.
+   *
+   * <p>The statistics for the requests are accumulated into the test in
+   * progress, so wrapping the call in a {@link Test} records the time taken
+   * to fetch the whole batch.</p>
+   *
+   * <p>HTTPClient doesn't pipeline on a new connection until it has read
+   * the first response, which tells it the server's HTTP version and
+   * whether the server supports persistent connections.</p>
+   *
+   * @param uris The URIs. If a default URL has been specified with
+   * {@link #setUrl}, these values need not be absolute and, if
+   * relative, will be resolved relative to the default URL.
+   * Otherwise these values must be absolute URLs.
+   * @return The server's responses, in the order of {@code uris}.
+   * @throws Exception If an error occurs.
+   */
+  public final HTTPResponse[] GETAll(final String[] uris) throws Exception {
+    return GETAll(uris, getFormData(), getHeaders());
+  }
+
+  /**
+   * Makes several HTTP {@code GET} requests, pipelining the requests to each
+   * server on a single connection.
+   *
+   * @param uris The URIs. If a default URL has been specified with
+   * {@link #setUrl}, these values need not be absolute and, if
+   * relative, will be resolved relative to the default URL.
+   * Otherwise these values must be absolute URLs.
+   * @param queryData Query data added to every request. Replaces all the
+   * values set by {@link #setFormData}.
+   * @return The server's responses, in the order of {@code uris}.
+   * @throws Exception If an error occurs.
+   * @see #GETAll(String[])
+   */
+  public final HTTPResponse[] GETAll(final String[] uris,
+                                     final NVPair[] queryData)
+    throws Exception {
+    return GETAll(uris, queryData, getHeaders());
+  }
+
+  /**
+   * Makes several HTTP {@code GET} requests, pipelining the requests to each
+   * server on a single connection.
+   *
+   * @param uris The URIs. If a default URL has been specified with
+   * {@link #setUrl}, these values need not be absolute and, if
+   * relative, will be resolved relative to the default URL.
+   * Otherwise these values must be absolute URLs.
+   * @param queryData Query data added to every request. Replaces all the
+   * values set by {@link #setFormData}.
+   * @param headers Request headers. Overrides headers with matching
+   * names set by {@link #setHeaders}.
+   * @return The server's responses, in the order of {@code uris}.
+   * @throws Exception If an error occurs.
+   * @see #GETAll(String[])
+   */
+  public final HTTPResponse[] GETAll(final String[] uris,
+                                     final NVPair[] queryData,
+                                     final NVPair[] headers)
+    throws Exception {
+
+    if (uris == null) {
+      throw new NullPointerException("uris is null");
+    }
+
+    final List<GetRequest> requests = new ArrayList<GetRequest>(uris.length);
+    final List<URI> urls = new ArrayList<URI>(uris.length);
+
+    for (final String uri : uris) {
+      final GetRequest request = new GetRequest(uri, queryData, headers);
+      requests.add(request);
+      urls.add(request.getURI());
+    }
+
+    final HTTPPlugin plugin = HTTPPlugin.getPlugin();
+    plugin.ensureInitialised();
+
+    // Lease the pooled connections up front, in a consistent order.
+    final List<HTTPPluginThreadState.ConnectionLease> leases =
+      plugin.getThreadState().leaseConnections(urls);
+
+    final List<PendingResponse> pending =
+      new ArrayList<PendingResponse>(requests.size());
+
+    final HTTPResponse[] result = new HTTPResponse[requests.size()];
+    boolean succeeded = false;
+
+    try {
+      try {
+        for (final GetRequest request : requests) {
+          pending.add(request.send(true));
         }
       }
-      .getHTTPResponse();
+      finally {
+        for (final HTTPPluginThreadState.ConnectionLease lease : leases) {
+          lease.release();
+        }
+      }
+
+      for (int i = 0; i < result.length; ++i) {
+        result[i] = pending.get(i).get();
+      }
+
+      succeeded = true;
+    }
+    finally {
+      if (!succeeded) {
+        for (final PendingResponse response : pending) {
+          response.abandon();
+        }
+      }
+    }
+
+    return result;
   }
 
   /**
@@ -1397,14 +1620,70 @@ public class HTTPRequest {
       }
     }
 
+    public final URI getURI() {
+      return m_url;
+    }
+
     public final HTTPResponse getHTTPResponse()
       throws GrinderException, IOException, ModuleException, ParseException,
              ProtocolNotSuppException {
 
+      return send(false).complete();
+    }
+
+    /**
+     * Send the request.
+     *
+     * @param pipeline
+     *          If {@code true}, don't wait for the response headers, so that
+     *          further requests can be pipelined on the connection.
+     * @return Handle used to read the response.
+     */
+    public final PendingResponse send(final boolean pipeline)
+      throws GrinderException, IOException, ModuleException, ParseException,
+             ProtocolNotSuppException {
+
       final HTTPPlugin plugin = HTTPPlugin.getPlugin();
       plugin.ensureInitialised();
       final HTTPPluginThreadState threadState = plugin.getThreadState();
-      final ScriptContext scriptContext = plugin.getScriptContext();
+
+      final HTTPPluginThreadState.ConnectionLease lease =
+        threadState.leaseConnection(m_url);
+
+      if (lease == null) {
+        return new PendingResponse(
+          this,
+          plugin.getScriptContext(),
+          threadState,
+          threadState.getConnectionWrapper(m_url).getConnection(),
+          null,
+          pipeline);
+      }
+
+      boolean sent = false;
+
+      try {
+        final PendingResponse result =
+          new PendingResponse(this,
+                              plugin.getScriptContext(),
+                              threadState,
+                              lease.getConnectionWrapper().getConnection(),
+                              lease,
+                              pipeline);
+        sent = true;
+        return result;
+      }
+      finally {
+        // Don't return a connection in an unknown state to the pool.
+        if (!sent) {
+          lease.discard();
+        }
+      }
+    }
+
+    private HTTPResponse sendRequest(final HTTPConnection connection,
+                                     final boolean pipeline)
+      throws GrinderException, IOException, ModuleException {
 
       final String pathAndQuery = m_url.getPathAndQuery();
       final String fragment = m_url.getFragment();
@@ -1412,38 +1691,69 @@ public class HTTPRequest {
       final String path =
         fragment != null ? pathAndQuery + '#' + fragment : pathAndQuery;
 
-      final HTTPConnection connection =
-        threadState.getConnectionWrapper(m_url).getConnection();
-
-      // This will be different to the time the Test was started if
-      // the Test wraps several HTTPRequests.
-      final long startTime =
-        connection.getTimeAuthority().getTimeInMilliseconds();
-
-      final long oldConnections = connection.getConnectionsEstablished();
-
-      final HTTPResponse httpResponse;
+      final boolean testConnectionHealth =
+        connection.getTestConnectionHealthWithBlockingRead();
 
       try {
-        httpResponse = doRequest(connection, path, m_mergedHeaders);
+        if (pipeline) {
+          // The health check reads the response status line before
+          // returning, which would prevent pipelining.
+          connection.setTestConnectionHealthWithBlockingRead(false);
+        }
+
+        return doRequest(connection, path, m_mergedHeaders);
       }
       catch (final InterruptedIOException e) {
         // We never interrupt worker threads, so we can be sure this is due to
         // a HTTPClient.
         throw new TimeoutException(e);
       }
+      finally {
+        connection.setTestConnectionHealthWithBlockingRead(
+          testConnectionHealth);
+      }
+    }
 
-      final int responseLength;
+    private HTTPResponse readResponse(
+      final ScriptContext scriptContext,
+      final HTTPPluginThreadState threadState,
+      final HTTPConnection connection,
+      final PendingResponse pending,
+      final HTTPResponse httpResponse,
+      final long startTime,
+      final long oldConnections,
+      final boolean pipelined)
+      throws GrinderException, IOException, ModuleException {
+
+      final ResponseBodyCheck[] checks = m_responseBodyChecks;
+      final ResponseBodyCheck.Digest[] digests =
+        new ResponseBodyCheck.Digest[checks.length];
+
+      for (int i = 0; i < checks.length; ++i) {
+        digests[i] = checks[i].start();
+      }
 
-      if (m_readResponseBody) {
+      final long responseLength;
+
+      if (!m_readResponseBody) {
+        httpResponse.getStatusCode();
+        responseLength = 0;
+      }
+      else if (m_streamResponseBody) {
+        responseLength =
+          streamResponseBody(httpResponse, threadState.getBodyBuffer(),
+                             digests);
+      }
+      else {
         // Read the entire response.
         // With standard HTTPClient, data is null <=> if Content-Length is 0.
         // We've modified HTTPClient to avoid this.
-        responseLength = httpResponse.getData().length;
-      }
-      else {
-        httpResponse.getStatusCode();
-        responseLength = 0;
+        final byte[] data = httpResponse.getData();
+        responseLength = data.length;
+
+        for (final ResponseBodyCheck.Digest digest : digests) {
+          digest.update(data, 0, data.length);
+        }
       }
 
       final Statistics statistics = scriptContext.getStatistics();
@@ -1457,8 +1767,9 @@ public class HTTPRequest {
 
       final long dnsTime = connection.getDnsTime();
       final long connectTime = connection.getConnectTime();
+      final long handshakeTime = connection.getHandshakeTime();
       final long timeToFirstByte =
-        httpResponse.getTimeToFirstByte() - startTime;
+        (httpResponse.getTimeToFirstByteInNanoseconds() - startTime) / 1000;
       final boolean newConnection =
           oldConnections != connection.getConnectionsEstablished();
 
@@ -1466,10 +1777,27 @@ public class HTTPRequest {
 
       final String message =
         httpResponse.getOriginalURI() + " -> " + statusCode + " " +
-        httpResponse.getReasonLine() + ", " + responseLength + " bytes";
+        httpResponse.getReasonLine() + ", " + responseLength + " bytes" +
+        (pipelined ?
+          ", " + (connection.getTimeAuthority().getTimeInNanoseconds() -
+                  startTime) / 1000000 + " ms pipelined" :
+          "");
 
       final Logger logger = scriptContext.getLogger();
 
+      boolean checksPassed = true;
+
+      if (m_readResponseBody) {
+        for (final ResponseBodyCheck.Digest digest : digests) {
+          final String failure = digest.check(responseLength);
+
+          if (failure != null) {
+            logger.error(message + " [Check failed, " + failure + "]");
+            checksPassed = false;
+          }
+        }
+      }
+
       switch (statusCode) {
       case HttpURLConnection.HTTP_MOVED_PERM:
       case HttpURLConnection.HTTP_MOVED_TEMP:
@@ -1509,6 +1837,10 @@ public class HTTPRequest {
               StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_ERRORS_KEY, 1);
           }
 
+          if (!checksPassed) {
+            statisticsForCurrentTest.setSuccess(false);
+          }
+
           if (newConnection) {
             statisticsForCurrentTest.addLong(
               StatisticsIndexMap.HTTP_PLUGIN_DNS_TIME_KEY, dnsTime);
@@ -1516,9 +1848,25 @@ public class HTTPRequest {
             statisticsForCurrentTest.addLong(
               StatisticsIndexMap.HTTP_PLUGIN_CONNECT_TIME_KEY, connectTime);
 
+            statisticsForCurrentTest.addLong(
+              StatisticsIndexMap.HTTP_PLUGIN_HANDSHAKE_TIME_KEY,
+              handshakeTime);
+
             statisticsForCurrentTest.addLong(
               StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED, 1);
           }
+
+          if (pending.m_lease != null) {
+            statisticsForCurrentTest.addLong(
+              StatisticsIndexMap.HTTP_PLUGIN_POOL_WAIT_TIME_KEY,
+              pending.m_poolWaitTime);
+
+            statisticsForCurrentTest.addLong(
+              pending.m_poolReused ?
+                StatisticsIndexMap.HTTP_PLUGIN_POOL_HITS :
+                StatisticsIndexMap.HTTP_PLUGIN_POOL_CONNECTIONS_CREATED,
+              1);
+          }
         }
       }
       catch (final InvalidContextException e) {
@@ -1535,6 +1883,33 @@ public class HTTPRequest {
       return httpResponse;
     }
 
+    private long streamResponseBody(final HTTPResponse httpResponse,
+                                    final byte[] buffer,
+                                    final ResponseBodyCheck.Digest[] digests)
+      throws IOException, ModuleException {
+
+      final InputStream in = httpResponse.getInputStream();
+      long length = 0;
+
+      try {
+        // Read to the end of the body so the connection can be reused.
+        int n;
+
+        while ((n = in.read(buffer)) != -1) {
+          length += n;
+
+          for (final ResponseBodyCheck.Digest digest : digests) {
+            digest.update(buffer, 0, n);
+          }
+        }
+      }
+      finally {
+        in.close();
+      }
+
+      return length;
+    }
+
     abstract HTTPResponse doRequest(final HTTPConnection connection,
                                     final String path,
                                     final NVPair[] headers)
@@ -1586,12 +1961,178 @@ public class HTTPRequest {
       throws IOException, ModuleException;
   }
 
+  private final class GetRequest extends AbstractRequest {
+    private final NVPair[] m_queryData;
+
+    public GetRequest(final String uri,
+                      final NVPair[] queryData,
+                      final NVPair[] headers)
+      throws ParseException, URLException {
+      super(uri, headers);
+      m_queryData = queryData;
+    }
+
+    @Override
+    HTTPResponse doRequest(final HTTPConnection connection,
+                           final String path,
+                           final NVPair[] mergedHeaders)
+      throws IOException, ModuleException {
+      return connection.Get(path, m_queryData, mergedHeaders);
+    }
+  }
+
+  /**
+   * A request that has been sent, but whose response has not yet been read.
+   *
+   * <p>Instances must only be used by the worker thread that sent the
+   * request.</p>
+   *
+   * @see HTTPRequest#GETAsync(String)
+   */
+  public final class PendingResponse {
+    private final AbstractRequest m_request;
+    private final ScriptContext m_scriptContext;
+    private final HTTPPluginThreadState m_threadState;
+    private final HTTPConnection m_connection;
+    private final HTTPPluginThreadState.ConnectionLease m_lease;
+    private final boolean m_pipelined;
+    private final Thread m_thread = Thread.currentThread();
+
+    // This will be different to the time the Test was started if
+    // the Test wraps several HTTPRequests.
+    private final long m_startTime;
+    private final long m_oldConnections;
+    private final HTTPResponse m_httpResponse;
+
+    // Captured when the request is sent, since later requests share the
+    // lease.
+    private final long m_poolWaitTime;
+    private final boolean m_poolReused;
+
+    private HTTPResponse m_response;
+    private Exception m_failure;
+
+    private PendingResponse(
+      final AbstractRequest request,
+      final ScriptContext scriptContext,
+      final HTTPPluginThreadState threadState,
+      final HTTPConnection connection,
+      final HTTPPluginThreadState.ConnectionLease lease,
+      final boolean pipelined)
+      throws GrinderException, IOException, ModuleException {
+
+      m_request = request;
+      m_scriptContext = scriptContext;
+      m_threadState = threadState;
+      m_connection = connection;
+      m_lease = lease;
+      m_pipelined = pipelined;
+
+      if (lease != null) {
+        m_poolWaitTime = lease.getWaitTime();
+        m_poolReused = lease.isReused();
+        lease.used();
+      }
+      else {
+        m_poolWaitTime = 0;
+        m_poolReused = false;
+      }
+
+      HTTPPlugin.getPlugin().resolveUntimed(connection);
+
+      m_startTime = connection.getTimeAuthority().getTimeInNanoseconds();
+      m_oldConnections = connection.getConnectionsEstablished();
+      m_httpResponse = request.sendRequest(connection, pipelined);
+    }
+
+    /**
+     * Read the response, waiting for it if necessary. The first call records
+     * the statistics for the request against the test in progress.
+     *
+     * @return The server's response.
+     * @throws Exception If an error occurs.
+     */
+    public HTTPResponse get() throws Exception {
+      if (Thread.currentThread() != m_thread) {
+        throw new IllegalStateException(
+          "Responses can only be read by the thread that sent the request");
+      }
+
+      if (m_failure != null) {
+        throw m_failure;
+      }
+
+      if (m_response == null) {
+        try {
+          complete();
+        }
+        catch (final Exception e) {
+          m_failure = e;
+          throw e;
+        }
+      }
+
+      return m_response;
+    }
+
+    /**
+     * Whether the response has been read.
+     *
+     * @return {@code true} => {@link #get()} will not block.
+     */
+    public boolean isDone() {
+      return m_response != null || m_failure != null;
+    }
+
+    HTTPResponse complete()
+      throws GrinderException, IOException, ModuleException {
+
+      boolean succeeded = false;
+
+      try {
+        m_response =
+          m_request.readResponse(m_scriptContext,
+                                 m_threadState,
+                                 m_connection,
+                                 this,
+                                 m_httpResponse,
+                                 m_startTime,
+                                 m_oldConnections,
+                                 m_pipelined);
+        succeeded = true;
+        return m_response;
+      }
+      finally {
+        // Don't return a connection in an unknown state to the pool.
+        if (m_lease != null) {
+          if (succeeded) {
+            m_lease.release();
+          }
+          else {
+            m_lease.discard();
+          }
+        }
+      }
+    }
+
+    private void abandon() {
+      if (!isDone()) {
+        m_failure = new PluginException("Request abandoned");
+
+        if (m_lease != null) {
+          m_lease.discard();
+        }
+      }
+    }
+  }
+
   private static boolean isAbsolute(final String uri) {
     return s_absoluteURIPattern.matcher(uri).matches();
   }
 
   private static Collection<String> s_httpMethodNames =
-    asList("DELETE", "GET", "HEAD", "OPTIONS", "POST", "PUT", "TRACE", "PATCH");
+    asList("DELETE", "GET", "GETAll", "HEAD", "OPTIONS", "POST", "PUT", "TRACE",
+           "PATCH");
 
   private static InstrumentationFilter s_httpMethodFilter =
     new InstrumentationFilter() {
@@ -0,0 +1,72 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+
+/**
+ * A check applied to the body of each response to an {@link HTTPRequest}.
+ *
+ * <p>Checks see the body a block at a time as it is read, so they can be
+ * used with {@link HTTPRequest#setStreamResponseBody streamed} response
+ * bodies, which are never held in memory. {@link ResponseBodyChecks} provides
+ * some standard checks.</p>
+ *
+ * <p>Implementations must be thread safe, since an {@code HTTPRequest} may be
+ * shared by many worker threads.</p>
+ *
+ * @author Philip Aston
+ * @see HTTPRequest#setResponseBodyChecks
+ */
+public interface ResponseBodyCheck {
+
+  /**
+   * Start checking a response body.
+   *
+   * @return A digest that will be passed the body of a single response.
+   */
+  Digest start();
+
+  /**
+   * Accumulates the state of a check for a single response body.
+   */
+  interface Digest {
+
+    /**
+     * Pass the next block of the response body.
+     *
+     * @param bytes Buffer containing the block. The contents are only
+     * valid for the duration of the call.
+     * @param offset Offset of the block within {@code bytes}.
+     * @param length Length of the block.
+     */
+    void update(byte[] bytes, int offset, int length);
+
+    /**
+     * Complete the check.
+     *
+     * @param bodyLength The total length of the response body.
+     * @return {@code null} if the check passed, otherwise a description of
+     * the failure.
+     */
+    String check(long bodyLength);
+  }
+}
@@ -0,0 +1,218 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.grinder.plugin.http.ResponseBodyCheck.Digest;
+
+
+/**
+ * Standard {@link ResponseBodyCheck}s.
+ *
+ * <p>Each check processes the body incrementally, using a fixed amount of
+ * memory regardless of the size of the body.</p>
+ *
+ * @author Philip Aston
+ */
+public final class ResponseBodyChecks {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private ResponseBodyChecks() {
+  }
+
+  /**
+   * Check that the body has the given message digest.
+   *
+   * @param algorithm
+   *          The {@link MessageDigest} algorithm, for example {@code "MD5"}
+   *          or {@code "SHA-1"}.
+   * @param expected
+   *          The expected digest, as a hexadecimal string.
+   * @return The check.
+   * @throws NoSuchAlgorithmException
+   *           If the algorithm is not supported.
+   */
+  public static ResponseBodyCheck checksum(final String algorithm,
+                                           final String expected)
+    throws NoSuchAlgorithmException {
+
+    // Fail early if the algorithm isn't available.
+    MessageDigest.getInstance(algorithm);
+
+    return new ResponseBodyCheck() {
+      @Override
+      public Digest start() {
+        final MessageDigest messageDigest;
+
+        try {
+          messageDigest = MessageDigest.getInstance(algorithm);
+        }
+        catch (final NoSuchAlgorithmException e) {
+          throw new AssertionError(e);
+        }
+
+        return new Digest() {
+          @Override
+          public void update(final byte[] bytes,
+                             final int offset,
+                             final int length) {
+            messageDigest.update(bytes, offset, length);
+          }
+
+          @Override
+          public String check(final long bodyLength) {
+            final String actual = toHex(messageDigest.digest());
+
+            if (actual.equalsIgnoreCase(expected)) {
+              return null;
+            }
+
+            return algorithm + " was " + actual + ", expected " + expected;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Check that the body contains the given text, encoded as UTF-8.
+   *
+   * <p>Regular expressions are not supported, since matching them
+   * incrementally would require the body to be buffered.</p>
+   *
+   * @param text The text.
+   * @return The check.
+   */
+  public static ResponseBodyCheck contains(final String text) {
+    final byte[] pattern;
+
+    try {
+      pattern = text.getBytes("UTF-8");
+    }
+    catch (final UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+
+    // Knuth-Morris-Pratt failure function.
+    final int[] failure = new int[pattern.length];
+
+    for (int i = 1, k = 0; i < pattern.length; ++i) {
+      while (k > 0 && pattern[i] != pattern[k]) {
+        k = failure[k - 1];
+      }
+
+      if (pattern[i] == pattern[k]) {
+        ++k;
+      }
+
+      failure[i] = k;
+    }
+
+    return new ResponseBodyCheck() {
+      @Override
+      public Digest start() {
+        return new Digest() {
+          private int m_matched;
+
+          @Override
+          public void update(final byte[] bytes,
+                             final int offset,
+                             final int length) {
+
+            for (int i = offset;
+                 i < offset + length && m_matched < pattern.length;
+                 ++i) {
+
+              while (m_matched > 0 && bytes[i] != pattern[m_matched]) {
+                m_matched = failure[m_matched - 1];
+              }
+
+              if (bytes[i] == pattern[m_matched]) {
+                ++m_matched;
+              }
+            }
+          }
+
+          @Override
+          public String check(final long bodyLength) {
+            if (m_matched == pattern.length) {
+              return null;
+            }
+
+            return "body does not contain '" + text + "'";
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Check the length of the body.
+   *
+   * @param minimum The minimum length in bytes.
+   * @param maximum The maximum length in bytes.
+   * @return The check.
+   */
+  public static ResponseBodyCheck length(final long minimum,
+                                         final long maximum) {
+    final Digest digest = new Digest() {
+      @Override
+      public void update(final byte[] bytes,
+                         final int offset,
+                         final int length) {
+      }
+
+      @Override
+      public String check(final long bodyLength) {
+        if (bodyLength >= minimum && bodyLength <= maximum) {
+          return null;
+        }
+
+        return "body length " + bodyLength + " is outside [" +
+               minimum + ", " + maximum + "]";
+      }
+    };
+
+    // The digest is stateless, so can be shared.
+    return new ResponseBodyCheck() {
+      @Override
+      public Digest start() {
+        return digest;
+      }
+    };
+  }
+
+  private static String toHex(final byte[] bytes) {
+    final char[] result = new char[bytes.length * 2];
+
+    for (int i = 0; i < bytes.length; ++i) {
+      result[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      result[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+
+    return new String(result);
+  }
+}
@@ -0,0 +1,208 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import HTTPClient.NVPair;
+
+
+/**
+ * HPACK header table (RFC 7541, section 2.3). Holds the static table, and a
+ * dynamic table of recently decoded headers.
+ *
+ * @author Philip Aston
+ */
+final class HeaderTable {
+
+  private static final NVPair[] STATIC_TABLE = {
+    new NVPair(":authority", ""),
+    new NVPair(":method", "GET"),
+    new NVPair(":method", "POST"),
+    new NVPair(":path", "/"),
+    new NVPair(":path", "/index.html"),
+    new NVPair(":scheme", "http"),
+    new NVPair(":scheme", "https"),
+    new NVPair(":status", "200"),
+    new NVPair(":status", "204"),
+    new NVPair(":status", "206"),
+    new NVPair(":status", "304"),
+    new NVPair(":status", "400"),
+    new NVPair(":status", "404"),
+    new NVPair(":status", "500"),
+    new NVPair("accept-charset", ""),
+    new NVPair("accept-encoding", "gzip, deflate"),
+    new NVPair("accept-language", ""),
+    new NVPair("accept-ranges", ""),
+    new NVPair("accept", ""),
+    new NVPair("access-control-allow-origin", ""),
+    new NVPair("age", ""),
+    new NVPair("allow", ""),
+    new NVPair("authorization", ""),
+    new NVPair("cache-control", ""),
+    new NVPair("content-disposition", ""),
+    new NVPair("content-encoding", ""),
+    new NVPair("content-language", ""),
+    new NVPair("content-length", ""),
+    new NVPair("content-location", ""),
+    new NVPair("content-range", ""),
+    new NVPair("content-type", ""),
+    new NVPair("cookie", ""),
+    new NVPair("date", ""),
+    new NVPair("etag", ""),
+    new NVPair("expect", ""),
+    new NVPair("expires", ""),
+    new NVPair("from", ""),
+    new NVPair("host", ""),
+    new NVPair("if-match", ""),
+    new NVPair("if-modified-since", ""),
+    new NVPair("if-none-match", ""),
+    new NVPair("if-range", ""),
+    new NVPair("if-unmodified-since", ""),
+    new NVPair("last-modified", ""),
+    new NVPair("link", ""),
+    new NVPair("location", ""),
+    new NVPair("max-forwards", ""),
+    new NVPair("proxy-authenticate", ""),
+    new NVPair("proxy-authorization", ""),
+    new NVPair("range", ""),
+    new NVPair("referer", ""),
+    new NVPair("refresh", ""),
+    new NVPair("retry-after", ""),
+    new NVPair("server", ""),
+    new NVPair("set-cookie", ""),
+    new NVPair("strict-transport-security", ""),
+    new NVPair("transfer-encoding", ""),
+    new NVPair("user-agent", ""),
+    new NVPair("vary", ""),
+    new NVPair("via", ""),
+    new NVPair("www-authenticate", ""),
+  };
+
+  /** The size of the dynamic table allowed by default. */
+  public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+  // Oldest entries first.
+  private final List<NVPair> m_entries = new ArrayList<NVPair>();
+  private int m_size = 0;
+  private int m_maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+  /**
+   * Look up a header in the static table.
+   *
+   * @param name The header name, in lower case.
+   * @param value The header value.
+   * @return The index of a matching entry; or minus the index of an entry
+   *         with a matching name; or {@code 0} if there is no such entry.
+   */
+  public static int findStatic(final String name, final String value) {
+    int result = 0;
+
+    for (int i = 0; i < STATIC_TABLE.length; ++i) {
+      if (STATIC_TABLE[i].getName().equals(name)) {
+        if (STATIC_TABLE[i].getValue().equals(value)) {
+          return i + 1;
+        }
+
+        if (result == 0) {
+          result = -(i + 1);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Look up an entry.
+   *
+   * @param index
+   *          The index. Indices greater than the size of the static table
+   *          refer to the dynamic table, newest entries first.
+   * @return The entry.
+   * @throws IOException If the index is invalid.
+   */
+  public NVPair get(final int index) throws IOException {
+    if (index > 0 && index <= STATIC_TABLE.length) {
+      return STATIC_TABLE[index - 1];
+    }
+
+    final int dynamicIndex = index - STATIC_TABLE.length;
+
+    if (dynamicIndex > 0 && dynamicIndex <= m_entries.size()) {
+      return m_entries.get(m_entries.size() - dynamicIndex);
+    }
+
+    throw new IOException("Invalid header table index " + index);
+  }
+
+  /**
+   * Add an entry to the dynamic table, evicting older entries to make room.
+   *
+   * @param header The entry.
+   */
+  public void add(final NVPair header) {
+    final int size = sizeOf(header);
+
+    if (size > m_maximumSize) {
+      m_entries.clear();
+      m_size = 0;
+      return;
+    }
+
+    evict(m_maximumSize - size);
+    m_entries.add(header);
+    m_size += size;
+  }
+
+  /**
+   * Change the maximum size of the dynamic table.
+   *
+   * @param maximumSize The new maximum size, in bytes.
+   */
+  public void setMaximumSize(final int maximumSize) {
+    m_maximumSize = maximumSize;
+    evict(maximumSize);
+  }
+
+  /**
+   * The current size of the dynamic table.
+   *
+   * @return The size, in bytes.
+   */
+  public int getSize() {
+    return m_size;
+  }
+
+  private void evict(final int targetSize) {
+    while (m_size > targetSize) {
+      m_size -= sizeOf(m_entries.remove(0));
+    }
+  }
+
+  private static int sizeOf(final NVPair header) {
+    // Characters are octets, so the string lengths are the octet lengths.
+    return header.getName().length() + header.getValue().length() + 32;
+  }
+}
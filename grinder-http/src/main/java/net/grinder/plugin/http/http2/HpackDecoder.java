@@ -0,0 +1,182 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import HTTPClient.NVPair;
+
+
+/**
+ * HPACK header block decoder (RFC 7541).
+ *
+ * <p>Header blocks must be decoded in the order they were received on the
+ * connection, since each may update the dynamic table.</p>
+ *
+ * @author Philip Aston
+ */
+final class HpackDecoder {
+
+  private final HeaderTable m_table = new HeaderTable();
+  private final int m_maximumTableSize;
+
+  private byte[] m_buffer;
+  private int m_position;
+  private int m_limit;
+
+  /**
+   * Constructor.
+   *
+   * @param maximumTableSize
+   *          The dynamic table size we have advertised to the peer.
+   */
+  public HpackDecoder(final int maximumTableSize) {
+    m_maximumTableSize = maximumTableSize;
+    m_table.setMaximumSize(maximumTableSize);
+  }
+
+  /**
+   * Decode a header block.
+   *
+   * @param block Buffer holding the block.
+   * @param offset Offset of the block.
+   * @param length Length of the block.
+   * @return The headers.
+   * @throws IOException If the block is invalid.
+   */
+  public List<NVPair> decode(final byte[] block,
+                             final int offset,
+                             final int length)
+    throws IOException {
+
+    m_buffer = block;
+    m_position = offset;
+    m_limit = offset + length;
+
+    final List<NVPair> result = new ArrayList<NVPair>();
+    boolean sizeUpdateAllowed = true;
+
+    while (m_position < m_limit) {
+      final int b = m_buffer[m_position] & 0xff;
+
+      if ((b & 0x80) != 0) {
+        // Indexed header field.
+        result.add(m_table.get(readInteger(7)));
+      }
+      else if ((b & 0x40) != 0) {
+        // Literal header field with incremental indexing.
+        final NVPair header = readLiteral(6);
+        m_table.add(header);
+        result.add(header);
+      }
+      else if ((b & 0x20) != 0) {
+        // Dynamic table size update.
+        if (!sizeUpdateAllowed) {
+          throw new IOException("Misplaced dynamic table size update");
+        }
+
+        final int size = readInteger(5);
+
+        if (size > m_maximumTableSize) {
+          throw new IOException("Dynamic table size " + size +
+                                " exceeds maximum " + m_maximumTableSize);
+        }
+
+        m_table.setMaximumSize(size);
+        continue;
+      }
+      else {
+        // Literal header field without indexing, or never indexed.
+        result.add(readLiteral(4));
+      }
+
+      sizeUpdateAllowed = false;
+    }
+
+    m_buffer = null;
+
+    return result;
+  }
+
+  private NVPair readLiteral(final int prefixBits) throws IOException {
+    final int index = readInteger(prefixBits);
+    final String name =
+      index == 0 ? readString() : m_table.get(index).getName();
+
+    return new NVPair(name, readString());
+  }
+
+  private int readInteger(final int prefixBits) throws IOException {
+    final int maximumPrefix = (1 << prefixBits) - 1;
+    final int prefix = readByte() & maximumPrefix;
+
+    if (prefix < maximumPrefix) {
+      return prefix;
+    }
+
+    long result = maximumPrefix;
+    int shift = 0;
+    int b;
+
+    do {
+      b = readByte();
+      result += (long) (b & 0x7f) << shift;
+      shift += 7;
+
+      if (result > Integer.MAX_VALUE) {
+        throw new IOException("HPACK integer overflow");
+      }
+    }
+    while ((b & 0x80) != 0);
+
+    return (int) result;
+  }
+
+  private String readString() throws IOException {
+    final boolean huffman =
+      m_position < m_limit && (m_buffer[m_position] & 0x80) != 0;
+    final int length = readInteger(7);
+
+    if (length > m_limit - m_position) {
+      throw new IOException("Truncated HPACK string");
+    }
+
+    final int start = m_position;
+    m_position += length;
+
+    if (huffman) {
+      return Huffman.decode(m_buffer, start, length);
+    }
+
+    return new String(m_buffer, start, length, "ISO-8859-1");
+  }
+
+  private int readByte() throws IOException {
+    if (m_position >= m_limit) {
+      throw new IOException("Truncated HPACK header block");
+    }
+
+    return m_buffer[m_position++] & 0xff;
+  }
+}
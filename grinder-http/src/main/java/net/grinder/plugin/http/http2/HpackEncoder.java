@@ -0,0 +1,135 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import HTTPClient.NVPair;
+
+
+/**
+ * HPACK header block encoder (RFC 7541).
+ *
+ * <p>The encoder refers to the static table, but never adds entries to the
+ * dynamic table. This means header blocks can be encoded independently of
+ * the order in which they are sent, at the cost of compressing repeated
+ * headers less well.</p>
+ *
+ * @author Philip Aston
+ */
+final class HpackEncoder {
+
+  private boolean m_tableSizeUpdatePending = true;
+
+  /**
+   * Encode a header block.
+   *
+   * @param headers
+   *          The headers. Names must be in lower case. Characters must be in
+   *          the range 0-255.
+   * @param out
+   *          Where to write the encoding.
+   */
+  public void encode(final List<NVPair> headers,
+                     final ByteArrayOutputStream out) {
+
+    if (m_tableSizeUpdatePending) {
+      // Tell the peer's decoder that we don't use the dynamic table.
+      writeInteger(0, 5, 0x20, out);
+      m_tableSizeUpdatePending = false;
+    }
+
+    for (final NVPair header : headers) {
+      final String name = header.getName();
+      final String value = header.getValue();
+      final int index = HeaderTable.findStatic(name, value);
+
+      if (index > 0) {
+        // Indexed header field.
+        writeInteger(index, 7, 0x80, out);
+      }
+      else {
+        // Literal header field without indexing. Credentials are marked as
+        // never indexed, so intermediaries don't compress them either.
+        final int flags = isSensitive(name) ? 0x10 : 0x00;
+
+        if (index < 0) {
+          writeInteger(-index, 4, flags, out);
+        }
+        else {
+          out.write(flags);
+          writeString(name, out);
+        }
+
+        writeString(value, out);
+      }
+    }
+  }
+
+  private static boolean isSensitive(final String name) {
+    return "authorization".equals(name) ||
+           "proxy-authorization".equals(name);
+  }
+
+  static void writeInteger(final int value,
+                           final int prefixBits,
+                           final int flags,
+                           final ByteArrayOutputStream out) {
+
+    final int maximumPrefix = (1 << prefixBits) - 1;
+
+    if (value < maximumPrefix) {
+      out.write(flags | value);
+      return;
+    }
+
+    out.write(flags | maximumPrefix);
+
+    int remainder = value - maximumPrefix;
+
+    while (remainder >= 0x80) {
+      out.write((remainder & 0x7f) | 0x80);
+      remainder >>>= 7;
+    }
+
+    out.write(remainder);
+  }
+
+  private static void writeString(final String value,
+                                  final ByteArrayOutputStream out) {
+
+    final int huffmanLength = Huffman.encodedLength(value);
+
+    if (huffmanLength < value.length()) {
+      writeInteger(huffmanLength, 7, 0x80, out);
+      Huffman.encode(value, out);
+    }
+    else {
+      writeInteger(value.length(), 7, 0x00, out);
+
+      for (int i = 0; i < value.length(); ++i) {
+        out.write(value.charAt(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,1279 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.grinder.common.UncheckedInterruptedException;
+import HTTPClient.HTTPConnection.TimeAuthority;
+import HTTPClient.NVPair;
+
+
+/**
+ * A client HTTP/2 connection (RFC 7540).
+ *
+ * <p>Requests from many threads are multiplexed over the connection as
+ * concurrent streams. A daemon thread reads frames from the server and
+ * dispatches them to the streams. Response bodies are buffered until they
+ * are read, and the server is only given more flow control credit for a
+ * stream as its body is read.</p>
+ *
+ * @author Philip Aston
+ */
+final class Http2Connection {
+
+  static final int FRAME_DATA = 0x0;
+  static final int FRAME_HEADERS = 0x1;
+  static final int FRAME_PRIORITY = 0x2;
+  static final int FRAME_RST_STREAM = 0x3;
+  static final int FRAME_SETTINGS = 0x4;
+  static final int FRAME_PUSH_PROMISE = 0x5;
+  static final int FRAME_PING = 0x6;
+  static final int FRAME_GOAWAY = 0x7;
+  static final int FRAME_WINDOW_UPDATE = 0x8;
+  static final int FRAME_CONTINUATION = 0x9;
+
+  static final int FLAG_END_STREAM = 0x1;
+  static final int FLAG_ACK = 0x1;
+  static final int FLAG_END_HEADERS = 0x4;
+  static final int FLAG_PADDED = 0x8;
+  static final int FLAG_PRIORITY = 0x20;
+
+  static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+  static final int SETTINGS_ENABLE_PUSH = 0x2;
+  static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+  static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+  static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+  static final int NO_ERROR = 0x0;
+  static final int PROTOCOL_ERROR = 0x1;
+  static final int FLOW_CONTROL_ERROR = 0x3;
+  static final int FRAME_SIZE_ERROR = 0x6;
+  static final int REFUSED_STREAM = 0x7;
+  static final int CANCEL = 0x8;
+  static final int COMPRESSION_ERROR = 0x9;
+  static final int ENHANCE_YOUR_CALM = 0xb;
+
+  static final byte[] PREFACE = asciiBytes("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n");
+
+  /** The default, and largest, frame size we accept. */
+  static final int MAXIMUM_FRAME_SIZE = 16384;
+
+  /** The largest header block we accept, before decompression. */
+  static final int MAXIMUM_HEADER_BLOCK_SIZE = 1 << 18;
+
+  /** The most response body data we buffer for a stream. */
+  static final int STREAM_RECEIVE_WINDOW = 1 << 20;
+
+  private static final int DEFAULT_WINDOW = 65535;
+  private static final int CONNECTION_RECEIVE_WINDOW = 1 << 24;
+  private static final long MAXIMUM_WINDOW = Integer.MAX_VALUE;
+
+  private final Socket m_socket;
+  private final DataInputStream m_in;
+
+  // Guarded by m_writeLock. Lock ordering: m_writeLock, then this.
+  private final Object m_writeLock = new Object();
+  private final OutputStream m_out;
+  private final HpackEncoder m_encoder = new HpackEncoder();
+  private final byte[] m_frameHeader = new byte[9];
+
+  // Guarded by this.
+  private final Map<Integer, Stream> m_streams = new HashMap<Integer, Stream>();
+  private int m_nextStreamID = 1;
+  private int m_reservedStreams = 0;
+  private long m_maximumConcurrentStreams = Long.MAX_VALUE;
+  private boolean m_settingsReceived = false;
+  private long m_initialSendWindow = DEFAULT_WINDOW;
+  private int m_maximumSendFrameSize = MAXIMUM_FRAME_SIZE;
+  private long m_sendWindow = DEFAULT_WINDOW;
+  private boolean m_goingAway = false;
+  private IOException m_closedCause = null;
+  private final Set<Object> m_users =
+    Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+  // Used only by the reader thread.
+  private final HpackDecoder m_decoder =
+    new HpackDecoder(HeaderTable.DEFAULT_MAXIMUM_SIZE);
+  private final ByteArrayOutputStream m_headerBlock =
+    new ByteArrayOutputStream();
+  private int m_headerBlockStreamID = 0;
+  private boolean m_headerBlockEndsStream;
+  private long m_unacknowledgedBytes = 0;
+
+  /**
+   * Constructor. Sends the connection preface, and starts the reader thread.
+   *
+   * @param socket
+   *          Connected socket. If the connection uses TLS, "h2" must have
+   *          been negotiated.
+   * @param name
+   *          Name for the reader thread.
+   * @throws IOException
+   *           If the preface could not be sent.
+   */
+  public Http2Connection(final Socket socket, final String name)
+    throws IOException {
+
+    m_socket = socket;
+    m_in =
+      new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    m_out = new BufferedOutputStream(socket.getOutputStream());
+
+    synchronized (m_writeLock) {
+      m_out.write(PREFACE);
+
+      final byte[] settings = new byte[12];
+      putSetting(settings, 0, SETTINGS_ENABLE_PUSH, 0);
+      putSetting(settings, 6, SETTINGS_INITIAL_WINDOW_SIZE,
+                 STREAM_RECEIVE_WINDOW);
+      writeFrame(FRAME_SETTINGS, 0, 0, settings, 0, settings.length);
+
+      writeWindowUpdate(0, CONNECTION_RECEIVE_WINDOW - DEFAULT_WINDOW);
+      m_out.flush();
+    }
+
+    final Thread reader = new Thread(new Runnable() {
+        public void run() {
+          readFrames();
+        }
+      },
+      name);
+
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Whether new streams may be started on this connection.
+   *
+   * @return {@code true} => the connection is open.
+   */
+  public synchronized boolean isOpen() {
+    return m_closedCause == null && !m_goingAway;
+  }
+
+  /**
+   * Reserve capacity for a new stream. If successful, the caller must call
+   * {@link #newStream} or {@link #unreserveStream}.
+   *
+   * @return {@code true} => the connection is open, and the server's
+   *         concurrent stream limit allows another stream.
+   */
+  public synchronized boolean reserveStream() {
+    if (!isOpen() || m_reservedStreams >= m_maximumConcurrentStreams) {
+      return false;
+    }
+
+    ++m_reservedStreams;
+    return true;
+  }
+
+  /**
+   * The server's concurrent stream limit.
+   *
+   * @return The limit, or {@code Long.MAX_VALUE} if there is none.
+   */
+  synchronized long getMaximumConcurrentStreams() {
+    return m_maximumConcurrentStreams;
+  }
+
+  /**
+   * Assume a concurrent stream limit until the server's SETTINGS arrive.
+   * Without this, a new connection would accept any number of streams
+   * until the server's first frame is read.
+   *
+   * @param maximum The limit the server advertised on another connection.
+   */
+  synchronized void assumeMaximumConcurrentStreams(final long maximum) {
+    if (!m_settingsReceived) {
+      m_maximumConcurrentStreams = maximum;
+    }
+  }
+
+  /**
+   * Record that a client uses the connection.
+   *
+   * @param user The client.
+   */
+  synchronized void addUser(final Object user) {
+    m_users.add(user);
+  }
+
+  /**
+   * Cancel a client's outstanding streams, and forget that it uses the
+   * connection.
+   *
+   * @param user The client.
+   * @return {@code true} => the client used the connection, and no other
+   *         client does.
+   */
+  boolean removeUser(final Object user) {
+    final List<Stream> cancelled = new ArrayList<Stream>();
+    final boolean result;
+
+    synchronized (this) {
+      for (final Stream stream : m_streams.values()) {
+        if (stream.m_user == user) {
+          cancelled.add(stream);
+        }
+      }
+
+      result = m_users.remove(user) && m_users.isEmpty();
+    }
+
+    for (final Stream stream : cancelled) {
+      stream.cancel(new IOException("Connection closed"));
+    }
+
+    return result;
+  }
+
+  /**
+   * Release capacity reserved with {@link #reserveStream}.
+   */
+  public synchronized void unreserveStream() {
+    --m_reservedStreams;
+    notifyAll();
+  }
+
+  /**
+   * Send a request on a new stream. Capacity must have been reserved with
+   * {@link #reserveStream}, and is released when the stream ends.
+   *
+   * @param user
+   *          The client sending the request.
+   * @param headers
+   *          The request headers, including the pseudo-headers.
+   * @param body
+   *          The request body, or {@code null}.
+   * @param timeAuthority
+   *          Used to time the response.
+   * @param timeout
+   *          Time to wait for flow control credit to send the body, in
+   *          milliseconds. {@code 0} means wait indefinitely.
+   * @return The stream.
+   * @throws IOException
+   *           If the request could not be sent. If the body could not be
+   *           sent within the timeout, the stream is cancelled.
+   */
+  public Stream newStream(final Object user,
+                          final List<NVPair> headers,
+                          final byte[] body,
+                          final TimeAuthority timeAuthority,
+                          final int timeout)
+    throws IOException {
+
+    final boolean hasBody = body != null && body.length > 0;
+    final Stream stream;
+
+    synchronized (m_writeLock) {
+      synchronized (this) {
+        if (!isOpen() || m_nextStreamID < 0) {
+          unreserveStream();
+          throw new Http2Exception("Connection is closed", CANCEL, true);
+        }
+
+        stream = new Stream(m_nextStreamID,
+                            user,
+                            timeAuthority,
+                            m_initialSendWindow);
+        m_nextStreamID += 2;
+        m_streams.put(stream.m_id, stream);
+      }
+
+      try {
+        writeHeaders(stream.m_id, headers, !hasBody);
+
+        if (!hasBody) {
+          m_out.flush();
+        }
+      }
+      catch (final IOException e) {
+        close(e);
+        throw e;
+      }
+    }
+
+    if (hasBody) {
+      try {
+        writeData(stream, body, timeout);
+      }
+      catch (final InterruptedIOException e) {
+        // Release the stream's capacity, and tell the server we've given up
+        // on it.
+        stream.cancel(e);
+        throw e;
+      }
+    }
+
+    return stream;
+  }
+
+  /**
+   * Close the connection. Outstanding streams fail.
+   */
+  public void close() {
+    try {
+      synchronized (m_writeLock) {
+        final byte[] payload = new byte[8];
+        int lastStreamID;
+
+        synchronized (this) {
+          lastStreamID = m_nextStreamID - 2;
+        }
+
+        putInt(payload, 0, Math.max(lastStreamID, 0));
+        putInt(payload, 4, NO_ERROR);
+        writeFrame(FRAME_GOAWAY, 0, 0, payload, 0, payload.length);
+        m_out.flush();
+      }
+    }
+    catch (final IOException e) {
+      // Ignore, we're closing anyway.
+    }
+
+    close(new IOException("Connection closed"));
+  }
+
+  private void close(final IOException cause) {
+    final List<Stream> streams;
+
+    synchronized (this) {
+      if (m_closedCause != null) {
+        return;
+      }
+
+      m_closedCause = cause;
+      streams = new ArrayList<Stream>(m_streams.values());
+      m_streams.clear();
+      m_reservedStreams = 0;
+      notifyAll();
+
+      for (final Stream stream : streams) {
+        stream.m_failure = cause;
+      }
+    }
+
+    try {
+      m_socket.close();
+    }
+    catch (final IOException e) {
+      // Ignore.
+    }
+  }
+
+  private void writeHeaders(final int streamID,
+                            final List<NVPair> headers,
+                            final boolean endStream)
+    throws IOException {
+
+    final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    m_encoder.encode(headers, block);
+    final byte[] bytes = block.toByteArray();
+
+    final int frameSize;
+
+    synchronized (this) {
+      frameSize = m_maximumSendFrameSize;
+    }
+
+    int offset = 0;
+
+    do {
+      final int length = Math.min(bytes.length - offset, frameSize);
+      final boolean first = offset == 0;
+
+      final int flags =
+        (offset + length == bytes.length ? FLAG_END_HEADERS : 0) |
+        (first && endStream ? FLAG_END_STREAM : 0);
+
+      writeFrame(first ? FRAME_HEADERS : FRAME_CONTINUATION,
+                 flags, streamID, bytes, offset, length);
+      offset += length;
+    }
+    while (offset < bytes.length);
+  }
+
+  private void writeData(final Stream stream,
+                         final byte[] body,
+                         final int timeout)
+    throws IOException {
+
+    int offset = 0;
+
+    while (offset < body.length) {
+      final int length;
+
+      synchronized (this) {
+        final long deadline = System.currentTimeMillis() + timeout;
+
+        while (stream.m_failure == null &&
+               Math.min(m_sendWindow, stream.m_sendWindow) <= 0) {
+          waitUntil(deadline, timeout, "Timed out sending request body");
+        }
+
+        if (stream.m_failure != null) {
+          throw stream.m_failure;
+        }
+
+        length = (int) Math.min(Math.min(body.length - offset,
+                                         m_maximumSendFrameSize),
+                                Math.min(m_sendWindow, stream.m_sendWindow));
+
+        m_sendWindow -= length;
+        stream.m_sendWindow -= length;
+      }
+
+      synchronized (m_writeLock) {
+        try {
+          writeFrame(FRAME_DATA,
+                     offset + length == body.length ? FLAG_END_STREAM : 0,
+                     stream.m_id,
+                     body,
+                     offset,
+                     length);
+          m_out.flush();
+        }
+        catch (final IOException e) {
+          close(e);
+          throw e;
+        }
+      }
+
+      offset += length;
+    }
+  }
+
+  // Caller must hold this.
+  private void waitUntil(final long deadline,
+                         final int timeout,
+                         final String timeoutMessage)
+    throws InterruptedIOException {
+
+    final long remaining =
+      timeout > 0 ? deadline - System.currentTimeMillis() : 0;
+
+    if (timeout > 0 && remaining <= 0) {
+      throw new InterruptedIOException(timeoutMessage);
+    }
+
+    try {
+      wait(remaining);
+    }
+    catch (final InterruptedException e) {
+      throw new UncheckedInterruptedException(e);
+    }
+  }
+
+  // Caller must hold m_writeLock.
+  private void writeFrame(final int type,
+                          final int flags,
+                          final int streamID,
+                          final byte[] payload,
+                          final int offset,
+                          final int length)
+    throws IOException {
+
+    final byte[] header = m_frameHeader;
+    header[0] = (byte) (length >>> 16);
+    header[1] = (byte) (length >>> 8);
+    header[2] = (byte) length;
+    header[3] = (byte) type;
+    header[4] = (byte) flags;
+    putInt(header, 5, streamID);
+
+    m_out.write(header);
+    m_out.write(payload, offset, length);
+  }
+
+  // Caller must hold m_writeLock.
+  private void writeWindowUpdate(final int streamID, final long increment)
+    throws IOException {
+    final byte[] payload = new byte[4];
+    putInt(payload, 0, (int) increment);
+    writeFrame(FRAME_WINDOW_UPDATE, 0, streamID, payload, 0, 4);
+  }
+
+  private void sendWindowUpdate(final int streamID, final long increment) {
+    try {
+      synchronized (m_writeLock) {
+        writeWindowUpdate(streamID, increment);
+        m_out.flush();
+      }
+    }
+    catch (final IOException e) {
+      close(e);
+    }
+  }
+
+  private void writeControlFrame(final int type,
+                                 final int flags,
+                                 final int streamID,
+                                 final byte[] payload)
+    throws IOException {
+
+    synchronized (m_writeLock) {
+      writeFrame(type, flags, streamID, payload, 0, payload.length);
+      m_out.flush();
+    }
+  }
+
+  private void resetStream(final int streamID, final int errorCode) {
+    final byte[] payload = new byte[4];
+    putInt(payload, 0, errorCode);
+
+    try {
+      writeControlFrame(FRAME_RST_STREAM, 0, streamID, payload);
+    }
+    catch (final IOException e) {
+      close(e);
+    }
+  }
+
+  private void readFrames() {
+    final byte[] header = new byte[9];
+
+    try {
+      while (true) {
+        m_in.readFully(header);
+
+        final int length = ((header[0] & 0xff) << 16) |
+                           ((header[1] & 0xff) << 8) |
+                           (header[2] & 0xff);
+        final int type = header[3] & 0xff;
+        final int flags = header[4] & 0xff;
+        final int streamID = getInt(header, 5) & 0x7fffffff;
+
+        if (length > MAXIMUM_FRAME_SIZE) {
+          throw new Http2Exception("Frame size " + length + " too large",
+                                   FRAME_SIZE_ERROR, false);
+        }
+
+        final byte[] payload = new byte[length];
+        m_in.readFully(payload);
+
+        if (m_headerBlockStreamID != 0 &&
+            (type != FRAME_CONTINUATION || streamID != m_headerBlockStreamID)) {
+          throw new Http2Exception("Expected CONTINUATION frame",
+                                   PROTOCOL_ERROR, false);
+        }
+
+        handleFrame(type, flags, streamID, payload);
+      }
+    }
+    catch (final Http2Exception e) {
+      final byte[] payload = new byte[8];
+
+      synchronized (this) {
+        putInt(payload, 0, Math.max(m_nextStreamID - 2, 0));
+      }
+
+      putInt(payload, 4, e.getErrorCode());
+
+      try {
+        writeControlFrame(FRAME_GOAWAY, 0, 0, payload);
+      }
+      catch (final IOException e2) {
+        // Ignore, we're closing anyway.
+      }
+
+      close(e);
+    }
+    catch (final IOException e) {
+      close(e);
+    }
+  }
+
+  private void handleFrame(final int type,
+                           final int flags,
+                           final int streamID,
+                           final byte[] payload)
+    throws IOException {
+
+    switch (type) {
+    case FRAME_DATA:
+      handleData(flags, streamID, payload);
+      break;
+
+    case FRAME_HEADERS: {
+      int offset = 0;
+      int length = payload.length;
+
+      if ((flags & FLAG_PADDED) != 0) {
+        length = unpaddedLength(payload);
+        offset = 1;
+      }
+
+      if ((flags & FLAG_PRIORITY) != 0) {
+        offset += 5;
+        length -= 5;
+      }
+
+      if (length < 0 || streamID == 0) {
+        throw new Http2Exception("Invalid HEADERS frame",
+                                 PROTOCOL_ERROR, false);
+      }
+
+      m_headerBlock.reset();
+      appendHeaderBlock(payload, offset, length);
+      m_headerBlockEndsStream = (flags & FLAG_END_STREAM) != 0;
+      m_headerBlockStreamID = streamID;
+
+      if ((flags & FLAG_END_HEADERS) != 0) {
+        handleHeaderBlock();
+      }
+      break;
+    }
+
+    case FRAME_CONTINUATION:
+      if (m_headerBlockStreamID == 0) {
+        throw new Http2Exception("Unexpected CONTINUATION frame",
+                                 PROTOCOL_ERROR, false);
+      }
+
+      appendHeaderBlock(payload, 0, payload.length);
+
+      if ((flags & FLAG_END_HEADERS) != 0) {
+        handleHeaderBlock();
+      }
+      break;
+
+    case FRAME_RST_STREAM: {
+      if (payload.length != 4) {
+        throw new Http2Exception("Invalid RST_STREAM frame",
+                                 FRAME_SIZE_ERROR, false);
+      }
+
+      final int errorCode = getInt(payload, 0);
+
+      failStream(streamID,
+                 new Http2Exception("Stream reset by server, error code " +
+                                    errorCode,
+                                    errorCode,
+                                    errorCode == REFUSED_STREAM));
+      break;
+    }
+
+    case FRAME_SETTINGS:
+      handleSettings(flags, streamID, payload);
+      break;
+
+    case FRAME_PUSH_PROMISE:
+      throw new Http2Exception("Server push is disabled",
+                               PROTOCOL_ERROR, false);
+
+    case FRAME_PING:
+      if (payload.length != 8) {
+        throw new Http2Exception("Invalid PING frame",
+                                 FRAME_SIZE_ERROR, false);
+      }
+
+      if ((flags & FLAG_ACK) == 0) {
+        writeControlFrame(FRAME_PING, FLAG_ACK, 0, payload);
+      }
+      break;
+
+    case FRAME_GOAWAY:
+      handleGoAway(payload);
+      break;
+
+    case FRAME_WINDOW_UPDATE:
+      handleWindowUpdate(streamID, payload);
+      break;
+
+    default:
+      // Ignore PRIORITY, and unknown frame types.
+      break;
+    }
+  }
+
+  private void handleData(final int flags,
+                          final int streamID,
+                          final byte[] payload)
+    throws IOException {
+
+    int offset = 0;
+    int length = payload.length;
+
+    if ((flags & FLAG_PADDED) != 0) {
+      length = unpaddedLength(payload);
+      offset = 1;
+    }
+
+    if (length < 0 || streamID == 0) {
+      throw new Http2Exception("Invalid DATA frame", PROTOCOL_ERROR, false);
+    }
+
+    // Flow control applies to the whole frame, including padding. The
+    // connection window is replenished as frames arrive, so that a stream
+    // whose body isn't read doesn't stall the others.
+    m_unacknowledgedBytes += payload.length;
+
+    if (m_unacknowledgedBytes >= CONNECTION_RECEIVE_WINDOW / 2) {
+      synchronized (m_writeLock) {
+        writeWindowUpdate(0, m_unacknowledgedBytes);
+        m_out.flush();
+      }
+
+      m_unacknowledgedBytes = 0;
+    }
+
+    final boolean endStream = (flags & FLAG_END_STREAM) != 0;
+    final long streamUpdate;
+
+    synchronized (this) {
+      final Stream stream = m_streams.get(streamID);
+
+      if (stream == null) {
+        // We've probably cancelled the stream.
+        return;
+      }
+
+      stream.m_receiveWindow -= payload.length;
+
+      if (stream.m_receiveWindow < 0) {
+        throw new Http2Exception("Stream flow control window exceeded",
+                                 FLOW_CONTROL_ERROR, false);
+      }
+
+      if (length > 0) {
+        stream.m_body.add(ByteBuffer.wrap(payload, offset, length));
+        notifyAll();
+      }
+
+      if (endStream) {
+        completeStream(stream);
+        streamUpdate = 0;
+      }
+      else {
+        // The stream window is replenished as the body is read, apart from
+        // the padding.
+        stream.m_unacknowledgedBytes += payload.length - length;
+        streamUpdate = stream.windowUpdate();
+      }
+    }
+
+    if (streamUpdate > 0) {
+      synchronized (m_writeLock) {
+        writeWindowUpdate(streamID, streamUpdate);
+        m_out.flush();
+      }
+    }
+  }
+
+  private void appendHeaderBlock(final byte[] payload,
+                                 final int offset,
+                                 final int length)
+    throws Http2Exception {
+
+    // Otherwise a server could send CONTINUATION frames until we run out of
+    // memory.
+    if (m_headerBlock.size() + length > MAXIMUM_HEADER_BLOCK_SIZE) {
+      throw new Http2Exception("Header block larger than " +
+                               MAXIMUM_HEADER_BLOCK_SIZE + " bytes",
+                               ENHANCE_YOUR_CALM,
+                               false);
+    }
+
+    m_headerBlock.write(payload, offset, length);
+  }
+
+  private void handleHeaderBlock() throws IOException {
+    final byte[] block = m_headerBlock.toByteArray();
+    final int streamID = m_headerBlockStreamID;
+    m_headerBlockStreamID = 0;
+
+    // Always decode the block, since it may update the dynamic table.
+    final List<NVPair> headers;
+
+    try {
+      headers = m_decoder.decode(block, 0, block.length);
+    }
+    catch (final IOException e) {
+      throw new Http2Exception(e.getMessage(), COMPRESSION_ERROR, false);
+    }
+
+    synchronized (this) {
+      final Stream stream = m_streams.get(streamID);
+
+      if (stream == null) {
+        return;
+      }
+
+      if (!stream.m_started) {
+        stream.m_started = true;
+        stream.m_firstByteTime =
+          stream.m_timeAuthority.getTimeInMilliseconds();
+        stream.m_firstByteNanos =
+          stream.m_timeAuthority.getTimeInNanoseconds();
+      }
+
+      if (stream.m_headers == null && !isInformational(headers)) {
+        stream.m_headers = headers;
+        notifyAll();
+      }
+
+      // Later header blocks are trailers, which we ignore.
+
+      if (m_headerBlockEndsStream) {
+        completeStream(stream);
+      }
+    }
+  }
+
+  private static boolean isInformational(final List<NVPair> headers) {
+    for (final NVPair header : headers) {
+      if (":status".equals(header.getName())) {
+        return header.getValue().startsWith("1");
+      }
+    }
+
+    return false;
+  }
+
+  private void handleSettings(final int flags,
+                              final int streamID,
+                              final byte[] payload)
+    throws IOException {
+
+    if (streamID != 0 || payload.length % 6 != 0) {
+      throw new Http2Exception("Invalid SETTINGS frame",
+                               PROTOCOL_ERROR, false);
+    }
+
+    if ((flags & FLAG_ACK) != 0) {
+      return;
+    }
+
+    synchronized (this) {
+      if (!m_settingsReceived) {
+        m_settingsReceived = true;
+        m_maximumConcurrentStreams = Long.MAX_VALUE;
+      }
+
+      for (int i = 0; i < payload.length; i += 6) {
+        final int identifier =
+          ((payload[i] & 0xff) << 8) | (payload[i + 1] & 0xff);
+        final long value = getInt(payload, i + 2) & 0xffffffffL;
+
+        switch (identifier) {
+        case SETTINGS_MAX_CONCURRENT_STREAMS:
+          m_maximumConcurrentStreams = value;
+          break;
+
+        case SETTINGS_INITIAL_WINDOW_SIZE:
+          if (value > MAXIMUM_WINDOW) {
+            throw new Http2Exception("Invalid initial window size",
+                                     FLOW_CONTROL_ERROR, false);
+          }
+
+          final long delta = value - m_initialSendWindow;
+          m_initialSendWindow = value;
+
+          for (final Stream stream : m_streams.values()) {
+            stream.m_sendWindow += delta;
+          }
+          break;
+
+        case SETTINGS_MAX_FRAME_SIZE:
+          if (value < MAXIMUM_FRAME_SIZE || value > 0xffffff) {
+            throw new Http2Exception("Invalid maximum frame size",
+                                     PROTOCOL_ERROR, false);
+          }
+
+          m_maximumSendFrameSize = (int) value;
+          break;
+
+        default:
+          // Our encoder doesn't use the dynamic table, so
+          // SETTINGS_HEADER_TABLE_SIZE doesn't concern us.
+          break;
+        }
+      }
+
+      notifyAll();
+    }
+
+    writeControlFrame(FRAME_SETTINGS, FLAG_ACK, 0, new byte[0]);
+  }
+
+  private void handleGoAway(final byte[] payload) throws IOException {
+    if (payload.length < 8) {
+      throw new Http2Exception("Invalid GOAWAY frame",
+                               FRAME_SIZE_ERROR, false);
+    }
+
+    final int lastStreamID = getInt(payload, 0) & 0x7fffffff;
+    final int errorCode = getInt(payload, 4);
+
+    synchronized (this) {
+      m_goingAway = true;
+
+      // The server did not process later streams, so they can be retried.
+      for (final Stream stream : new ArrayList<Stream>(m_streams.values())) {
+        if (stream.m_id > lastStreamID) {
+          failStream(stream.m_id,
+                     new Http2Exception(
+                       "Server is closing the connection, error code " +
+                       errorCode,
+                       errorCode,
+                       true));
+        }
+      }
+    }
+  }
+
+  private void handleWindowUpdate(final int streamID, final byte[] payload)
+    throws IOException {
+
+    if (payload.length != 4) {
+      throw new Http2Exception("Invalid WINDOW_UPDATE frame",
+                               FRAME_SIZE_ERROR, false);
+    }
+
+    final int increment = getInt(payload, 0) & 0x7fffffff;
+
+    synchronized (this) {
+      if (streamID == 0) {
+        if (increment == 0 || m_sendWindow + increment > MAXIMUM_WINDOW) {
+          throw new Http2Exception("Invalid connection window update",
+                                   FLOW_CONTROL_ERROR, false);
+        }
+
+        m_sendWindow += increment;
+      }
+      else {
+        final Stream stream = m_streams.get(streamID);
+
+        if (stream != null) {
+          stream.m_sendWindow += increment;
+        }
+      }
+
+      notifyAll();
+    }
+  }
+
+  private boolean failStream(final int streamID, final IOException failure) {
+    synchronized (this) {
+      final Stream stream = m_streams.remove(streamID);
+
+      if (stream == null) {
+        return false;
+      }
+
+      stream.m_failure = failure;
+      --m_reservedStreams;
+      notifyAll();
+      return true;
+    }
+  }
+
+  // Caller must hold this.
+  private void completeStream(final Stream stream) {
+    if (m_streams.remove(stream.m_id) != null) {
+      stream.m_complete = true;
+      --m_reservedStreams;
+      notifyAll();
+    }
+  }
+
+  private static int unpaddedLength(final byte[] payload)
+    throws Http2Exception {
+
+    if (payload.length < 1) {
+      throw new Http2Exception("Invalid padding", PROTOCOL_ERROR, false);
+    }
+
+    return payload.length - 1 - (payload[0] & 0xff);
+  }
+
+  private static void putSetting(final byte[] buffer,
+                                 final int offset,
+                                 final int identifier,
+                                 final int value) {
+    buffer[offset] = (byte) (identifier >>> 8);
+    buffer[offset + 1] = (byte) identifier;
+    putInt(buffer, offset + 2, value);
+  }
+
+  static void putInt(final byte[] buffer, final int offset, final int value) {
+    buffer[offset] = (byte) (value >>> 24);
+    buffer[offset + 1] = (byte) (value >>> 16);
+    buffer[offset + 2] = (byte) (value >>> 8);
+    buffer[offset + 3] = (byte) value;
+  }
+
+  static int getInt(final byte[] buffer, final int offset) {
+    return ((buffer[offset] & 0xff) << 24) |
+           ((buffer[offset + 1] & 0xff) << 16) |
+           ((buffer[offset + 2] & 0xff) << 8) |
+           (buffer[offset + 3] & 0xff);
+  }
+
+  private static byte[] asciiBytes(final String s) {
+    final byte[] result = new byte[s.length()];
+
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = (byte) s.charAt(i);
+    }
+
+    return result;
+  }
+
+  /**
+   * A request and its response.
+   */
+  final class Stream {
+    private final int m_id;
+    private final Object m_user;
+    private final TimeAuthority m_timeAuthority;
+    private final InputStream m_bodyStream = new BodyInputStream();
+
+    // Guarded by the connection.
+    private long m_sendWindow;
+    private long m_receiveWindow = STREAM_RECEIVE_WINDOW;
+    private List<NVPair> m_headers;
+    private final LinkedList<ByteBuffer> m_body = new LinkedList<ByteBuffer>();
+    private boolean m_started = false;
+    private long m_firstByteTime;
+    private long m_firstByteNanos;
+    private boolean m_complete = false;
+    private IOException m_failure;
+    private long m_unacknowledgedBytes = 0;
+    private int m_timeout;
+
+    private Stream(final int id,
+                   final Object user,
+                   final TimeAuthority timeAuthority,
+                   final long sendWindow) {
+      m_id = id;
+      m_user = user;
+      m_timeAuthority = timeAuthority;
+      m_sendWindow = sendWindow;
+    }
+
+    /**
+     * Wait for the response headers. If the wait times out, the stream is
+     * cancelled.
+     *
+     * @param timeout
+     *          Time to wait in milliseconds, for the headers and then for
+     *          each part of the body. {@code 0} means wait indefinitely.
+     * @throws IOException
+     *           If the stream failed, or the wait timed out.
+     */
+    public void awaitResponse(final int timeout) throws IOException {
+      try {
+        synchronized (Http2Connection.this) {
+          m_timeout = timeout;
+
+          final long deadline = System.currentTimeMillis() + timeout;
+
+          while (m_headers == null && !m_complete && m_failure == null) {
+            waitUntil(deadline, timeout, "Read timed out");
+          }
+
+          if (m_failure != null) {
+            throw m_failure;
+          }
+
+          if (m_headers == null) {
+            throw new Http2Exception("Response has no headers",
+                                     PROTOCOL_ERROR, false);
+          }
+        }
+      }
+      catch (final InterruptedIOException e) {
+        cancel(e);
+        throw e;
+      }
+    }
+
+    /**
+     * Give up on the stream. If the response has not been received, its
+     * capacity is released and the server is told.
+     *
+     * @param failure Why.
+     */
+    public void cancel(final IOException failure) {
+      // Don't hold the connection lock whilst writing.
+      if (failStream(m_id, failure)) {
+        resetStream(m_id, CANCEL);
+      }
+    }
+
+    /**
+     * The response headers, including the pseudo-headers.
+     *
+     * @return The headers.
+     */
+    public List<NVPair> getHeaders() {
+      synchronized (Http2Connection.this) {
+        return m_headers;
+      }
+    }
+
+    /**
+     * The response body. Reading the stream waits for the server to send
+     * more of the body. Closing it before the body has been received
+     * cancels the stream.
+     *
+     * @return The body.
+     */
+    public InputStream getBody() {
+      return m_bodyStream;
+    }
+
+    /**
+     * When the first response frame was received.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getFirstByteTime() {
+      synchronized (Http2Connection.this) {
+        return m_firstByteTime;
+      }
+    }
+
+    /**
+     * When the first response frame was received, according to the
+     * request's high resolution timer.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getFirstByteNanos() {
+      synchronized (Http2Connection.this) {
+        return m_firstByteNanos;
+      }
+    }
+
+    // Caller must hold the connection. Returns the credit to give the
+    // server, or 0 if it's not yet worth sending.
+    private long windowUpdate() {
+      if (m_complete || m_unacknowledgedBytes < STREAM_RECEIVE_WINDOW / 2) {
+        return 0;
+      }
+
+      final long result = m_unacknowledgedBytes;
+      m_receiveWindow += result;
+      m_unacknowledgedBytes = 0;
+      return result;
+    }
+
+    private final class BodyInputStream extends InputStream {
+
+      @Override public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+      }
+
+      @Override public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+
+        if (len == 0) {
+          return 0;
+        }
+
+        final int n;
+        final long update;
+
+        try {
+          synchronized (Http2Connection.this) {
+            final long deadline = System.currentTimeMillis() + m_timeout;
+
+            while (m_body.isEmpty() && !m_complete && m_failure == null) {
+              waitUntil(deadline, m_timeout, "Read timed out");
+            }
+
+            if (m_failure != null) {
+              throw m_failure;
+            }
+
+            if (m_body.isEmpty()) {
+              return -1;
+            }
+
+            final ByteBuffer buffer = m_body.getFirst();
+            n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+
+            if (!buffer.hasRemaining()) {
+              m_body.removeFirst();
+            }
+
+            m_unacknowledgedBytes += n;
+            update = windowUpdate();
+          }
+        }
+        catch (final InterruptedIOException e) {
+          cancel(e);
+          throw e;
+        }
+
+        if (update > 0) {
+          sendWindowUpdate(m_id, update);
+        }
+
+        return n;
+      }
+
+      @Override public int available() {
+        synchronized (Http2Connection.this) {
+          int result = 0;
+
+          for (final ByteBuffer buffer : m_body) {
+            result += buffer.remaining();
+          }
+
+          return result;
+        }
+      }
+
+      @Override public void close() {
+        synchronized (Http2Connection.this) {
+          m_body.clear();
+        }
+
+        cancel(new IOException("Response body closed"));
+      }
+    }
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import java.io.IOException;
+
+
+/**
+ * An HTTP/2 connection or stream error.
+ *
+ * @author Philip Aston
+ */
+final class Http2Exception extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int m_errorCode;
+  private final boolean m_retryable;
+
+  /**
+   * Constructor.
+   *
+   * @param message The message.
+   * @param errorCode The HTTP/2 error code.
+   * @param retryable Whether the server did not process the request, so it
+   *        can be safely retried on another connection.
+   */
+  public Http2Exception(final String message,
+                        final int errorCode,
+                        final boolean retryable) {
+    super(message);
+    m_errorCode = errorCode;
+    m_retryable = retryable;
+  }
+
+  /**
+   * The HTTP/2 error code.
+   *
+   * @return The error code.
+   */
+  public int getErrorCode() {
+    return m_errorCode;
+  }
+
+  /**
+   * Whether the request can be safely retried.
+   *
+   * @return {@code true} => the server did not process the request.
+   */
+  public boolean isRetryable() {
+    return m_retryable;
+  }
+}
@@ -0,0 +1,615 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import HTTPClient.HTTPConnection;
+import HTTPClient.HTTPConnection.TimeAuthority;
+import HTTPClient.ModuleException;
+import HTTPClient.NVPair;
+import HTTPClient.ParseException;
+import HTTPClient.Response;
+import HTTPClient.RoRequest;
+import HTTPClient.URI;
+
+
+/**
+ * Sends the requests of {@link HTTPConnection}s over shared HTTP/2
+ * connections.
+ *
+ * <p>A single instance is shared by all of the worker threads in a process.
+ * Requests to an origin are multiplexed over a connection until the
+ * server's concurrent stream limit is reached, when another connection is
+ * opened. Plain HTTP connections use prior knowledge of HTTP/2 support (h2c).
+ * HTTPS connections negotiate HTTP/2 using ALPN; if the server or the JVM
+ * doesn't support it, requests to the origin fall back to HTTP/1.1.</p>
+ *
+ * <p>Requests that use a proxy, or that stream their bodies, are always sent
+ * using HTTP/1.1.</p>
+ *
+ * <p>Response bodies are read from the connection as the caller reads them
+ * from the response's input stream. A connection is closed when every
+ * {@link HTTPConnection} that has used it has been {@link
+ * #close(HTTPConnection) closed}.</p>
+ *
+ * @author Philip Aston
+ */
+public final class Http2Transport implements HTTPConnection.Transport {
+
+  private static final Method s_setApplicationProtocols;
+  private static final Method s_getApplicationProtocol;
+
+  static {
+    // Older JVMs don't support ALPN.
+    Method setApplicationProtocols;
+    Method getApplicationProtocol;
+
+    try {
+      setApplicationProtocols =
+        SSLParameters.class.getMethod("setApplicationProtocols",
+                                      String[].class);
+      getApplicationProtocol =
+        SSLSocket.class.getMethod("getApplicationProtocol");
+    }
+    catch (final NoSuchMethodException e) {
+      setApplicationProtocols = null;
+      getApplicationProtocol = null;
+    }
+
+    s_setApplicationProtocols = setApplicationProtocols;
+    s_getApplicationProtocol = getApplicationProtocol;
+  }
+
+  private static final int MAXIMUM_ATTEMPTS = 3;
+
+  // Guarded by itself.
+  private final Map<String, Origin> m_origins = new HashMap<String, Origin>();
+
+  /**
+   * {@inheritDoc}
+   */
+  public Response sendRequest(final RoRequest request, final int timeout)
+    throws IOException, ModuleException {
+
+    final HTTPConnection httpConnection = request.getConnection();
+
+    if (httpConnection.getProxyHost() != null) {
+      return null;
+    }
+
+    final Origin origin = getOrigin(httpConnection);
+    final List<NVPair> headers = requestHeaders(request, httpConnection);
+
+    for (int attempt = 1; ; ++attempt) {
+      final Http2Connection connection =
+        origin.reserveConnection(httpConnection, timeout);
+
+      if (connection == null) {
+        return null;
+      }
+
+      try {
+        final Http2Connection.Stream stream =
+          connection.newStream(httpConnection,
+                               headers,
+                               request.getData(),
+                               httpConnection.getTimeAuthority(),
+                               timeout);
+
+        stream.awaitResponse(timeout);
+
+        try {
+          return response(stream, httpConnection, request);
+        }
+        catch (final IOException e) {
+          stream.cancel(e);
+          throw e;
+        }
+      }
+      catch (final Http2Exception e) {
+        if (!e.isRetryable() || attempt >= MAXIMUM_ATTEMPTS) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stop sending the requests of an {@link HTTPConnection}. Its outstanding
+   * requests are cancelled, and connections that no other
+   * {@link HTTPConnection} uses are closed.
+   *
+   * @param httpConnection The connection.
+   */
+  public void close(final HTTPConnection httpConnection) {
+    final List<Origin> origins;
+
+    synchronized (m_origins) {
+      origins = new ArrayList<Origin>(m_origins.values());
+    }
+
+    for (final Origin origin : origins) {
+      origin.close(httpConnection);
+    }
+  }
+
+  /**
+   * Close all connections.
+   */
+  public void close() {
+    final List<Origin> origins;
+
+    synchronized (m_origins) {
+      origins = new ArrayList<Origin>(m_origins.values());
+      m_origins.clear();
+    }
+
+    for (final Origin origin : origins) {
+      origin.close();
+    }
+  }
+
+  /**
+   * The number of open connections to an origin.
+   *
+   * @param protocol The protocol.
+   * @param host The host.
+   * @param port The port.
+   * @return The number of connections.
+   */
+  public int getNumberOfConnections(final String protocol,
+                                    final String host,
+                                    final int port) {
+    final Origin origin;
+
+    synchronized (m_origins) {
+      origin = m_origins.get(key(protocol, host, port, null));
+    }
+
+    return origin != null ? origin.getNumberOfConnections() : 0;
+  }
+
+  private Origin getOrigin(final HTTPConnection httpConnection) {
+    final String key = key(httpConnection.getProtocol(),
+                           httpConnection.getHost(),
+                           httpConnection.getPort(),
+                           httpConnection.getLocalAddress());
+
+    synchronized (m_origins) {
+      final Origin existing = m_origins.get(key);
+
+      if (existing != null) {
+        return existing;
+      }
+
+      final Origin origin = new Origin(key);
+      m_origins.put(key, origin);
+      return origin;
+    }
+  }
+
+  private static String key(final String protocol,
+                            final String host,
+                            final int port,
+                            final InetAddress localAddress) {
+    final String origin = protocol + "://" + host + ":" + port;
+
+    return localAddress != null ?
+        origin + " from " + localAddress.getHostAddress() : origin;
+  }
+
+  private static List<NVPair> requestHeaders(
+    final RoRequest request,
+    final HTTPConnection httpConnection) {
+
+    final List<NVPair> result = new ArrayList<NVPair>();
+    final List<NVPair> others = new ArrayList<NVPair>();
+
+    String authority = httpConnection.getHost();
+    String contentType = null;
+    String userAgent = null;
+
+    for (final NVPair header : request.getHeaders()) {
+      final String name = header.getName().trim().toLowerCase(Locale.ENGLISH);
+      final String value = header.getValue().trim();
+
+      if ("host".equals(name)) {
+        authority = value;
+      }
+      else if ("content-type".equals(name)) {
+        contentType = value;
+      }
+      else if ("user-agent".equals(name)) {
+        userAgent = value;
+      }
+      else if ("te".equals(name)) {
+        if ("trailers".equalsIgnoreCase(value)) {
+          others.add(new NVPair(name, "trailers"));
+        }
+      }
+      else if (!"connection".equals(name) &&
+               !"keep-alive".equals(name) &&
+               !"proxy-connection".equals(name) &&
+               !"transfer-encoding".equals(name) &&
+               !"upgrade".equals(name) &&
+               !"content-length".equals(name)) {
+        // Connection-specific headers are not allowed in HTTP/2.
+        others.add(new NVPair(name, value));
+      }
+    }
+
+    final int port = httpConnection.getPort();
+
+    if (port != URI.defaultPort(httpConnection.getProtocol())) {
+      authority = authority + ":" + port;
+    }
+
+    result.add(new NVPair(":method", request.getMethod()));
+    result.add(new NVPair(":scheme", httpConnection.getProtocol()));
+    result.add(new NVPair(":authority", authority));
+    result.add(new NVPair(":path", escapePath(request.getRequestURI())));
+
+    result.add(new NVPair("user-agent",
+                          userAgent != null ?
+                              userAgent : HTTPConnection.version));
+
+    final byte[] data = request.getData();
+
+    if (data != null) {
+      result.add(new NVPair("content-type",
+                            contentType != null ?
+                                contentType : "application/octet-stream"));
+      result.add(new NVPair("content-length", Integer.toString(data.length)));
+    }
+
+    result.addAll(others);
+
+    return result;
+  }
+
+  private static String escapePath(final String path) {
+    StringBuilder result = null;
+
+    for (int i = 0; i < path.length(); ++i) {
+      final char c = path.charAt(i);
+
+      if (c <= ' ' || c >= 0x7f) {
+        if (result == null) {
+          result = new StringBuilder(path.substring(0, i));
+        }
+
+        result.append('%').append(Character.forDigit((c >> 4) & 0xf, 16))
+                          .append(Character.forDigit(c & 0xf, 16));
+      }
+      else if (result != null) {
+        result.append(c);
+      }
+    }
+
+    return result != null ? result.toString() : path;
+  }
+
+  private static Response response(final Http2Connection.Stream stream,
+                                   final HTTPConnection httpConnection,
+                                   final RoRequest request)
+    throws IOException {
+
+    final List<NVPair> headers = new ArrayList<NVPair>();
+    int status = -1;
+    int contentLength = -1;
+
+    for (final NVPair header : stream.getHeaders()) {
+      final String name = header.getName();
+
+      if (":status".equals(name)) {
+        try {
+          status = Integer.parseInt(header.getValue());
+        }
+        catch (final NumberFormatException e) {
+          throw new Http2Exception("Invalid status " + header.getValue(),
+                                   Http2Connection.PROTOCOL_ERROR,
+                                   false);
+        }
+      }
+      else if (!name.startsWith(":")) {
+        headers.add(header);
+
+        if ("content-length".equals(name)) {
+          try {
+            contentLength = Integer.parseInt(header.getValue());
+          }
+          catch (final NumberFormatException e) {
+            contentLength = -1;
+          }
+
+          if (contentLength < 0) {
+            throw new Http2Exception("Invalid content length " +
+                                     header.getValue(),
+                                     Http2Connection.PROTOCOL_ERROR,
+                                     false);
+          }
+        }
+      }
+    }
+
+    if (status < 0) {
+      throw new Http2Exception("Response has no status",
+                               Http2Connection.PROTOCOL_ERROR,
+                               false);
+    }
+
+    final NVPair[] responseHeaders =
+      headers.toArray(new NVPair[headers.size()]);
+    final Response result;
+
+    if ("HEAD".equals(request.getMethod()) ||
+        status == 204 ||
+        status == 304) {
+      // There's no body, whatever the content length says.
+      stream.getBody().close();
+
+      result =
+        new Response("HTTP/2.0", status, "", responseHeaders,
+                     new byte[0], null, 0);
+    }
+    else {
+      result =
+        new Response("HTTP/2.0", status, "", responseHeaders,
+                     null, stream.getBody(), contentLength);
+    }
+
+    result.setTtfb(stream.getFirstByteTime(), stream.getFirstByteNanos());
+
+    try {
+      result.setEffectiveURI(
+        new URI(new URI(httpConnection.getProtocol(),
+                        httpConnection.getHost(),
+                        httpConnection.getPort(),
+                        ""),
+                request.getRequestURI()));
+    }
+    catch (final ParseException e) {
+      // Leave the effective URI unset.
+    }
+
+    return result;
+  }
+
+  /**
+   * The connections to an origin.
+   */
+  private final class Origin {
+    private final String m_key;
+
+    // Guarded by this.
+    private final List<Http2Connection> m_connections =
+      new ArrayList<Http2Connection>();
+    private boolean m_http2Unsupported = false;
+    private long m_maximumConcurrentStreams = Long.MAX_VALUE;
+
+    public Origin(final String key) {
+      m_key = key;
+    }
+
+    /**
+     * Find a connection with spare capacity, opening a new one if
+     * necessary. Opening connections is serialised, so threads starting
+     * together share the first connection rather than each opening one.
+     */
+    public synchronized Http2Connection reserveConnection(
+      final HTTPConnection httpConnection,
+      final int timeout)
+      throws IOException {
+
+      final Iterator<Http2Connection> iterator = m_connections.iterator();
+
+      while (iterator.hasNext()) {
+        final Http2Connection connection = iterator.next();
+
+        m_maximumConcurrentStreams = connection.getMaximumConcurrentStreams();
+
+        if (connection.reserveStream()) {
+          connection.addUser(httpConnection);
+          return connection;
+        }
+
+        if (!connection.isOpen()) {
+          iterator.remove();
+        }
+      }
+
+      if (m_http2Unsupported) {
+        return null;
+      }
+
+      final Http2Connection connection = open(httpConnection, timeout);
+
+      if (connection == null) {
+        m_http2Unsupported = true;
+        return null;
+      }
+
+      connection.assumeMaximumConcurrentStreams(m_maximumConcurrentStreams);
+      m_connections.add(connection);
+
+      if (!connection.reserveStream()) {
+        throw new Http2Exception("New connection has no capacity",
+                                 Http2Connection.REFUSED_STREAM,
+                                 false);
+      }
+
+      connection.addUser(httpConnection);
+      return connection;
+    }
+
+    public synchronized int getNumberOfConnections() {
+      int result = 0;
+
+      for (final Http2Connection connection : m_connections) {
+        if (connection.isOpen()) {
+          ++result;
+        }
+      }
+
+      return result;
+    }
+
+    public synchronized void close(final HTTPConnection httpConnection) {
+      final Iterator<Http2Connection> iterator = m_connections.iterator();
+
+      while (iterator.hasNext()) {
+        final Http2Connection connection = iterator.next();
+
+        if (connection.removeUser(httpConnection)) {
+          connection.close();
+          iterator.remove();
+        }
+      }
+    }
+
+    public synchronized void close() {
+      for (final Http2Connection connection : m_connections) {
+        connection.close();
+      }
+
+      m_connections.clear();
+    }
+
+    private Http2Connection open(final HTTPConnection httpConnection,
+                                 final int timeout)
+      throws IOException {
+
+      final TimeAuthority timeAuthority = httpConnection.getTimeAuthority();
+      final String host = httpConnection.getHost();
+      final int port = httpConnection.getPort();
+      final boolean secure = "https".equals(httpConnection.getProtocol());
+
+      if (secure && s_setApplicationProtocols == null) {
+        return null;
+      }
+
+      final long startTime = timeAuthority.getTimeInNanoseconds();
+      final InetAddress[] addresses =
+        httpConnection.getResolver().getAllByName(host);
+      final long dnsTime =
+        Math.max(timeAuthority.getTimeInNanoseconds() - startTime, 0) / 1000;
+
+      Socket socket = null;
+
+      for (int i = 0; socket == null; ++i) {
+        final Socket s = new Socket();
+
+        try {
+          final InetAddress localAddress = httpConnection.getLocalAddress();
+
+          if (localAddress != null) {
+            s.bind(new InetSocketAddress(localAddress, 0));
+          }
+
+          s.connect(new InetSocketAddress(addresses[i], port), timeout);
+          socket = s;
+        }
+        catch (final IOException e) {
+          s.close();
+
+          if (i == addresses.length - 1) {
+            throw e;
+          }
+        }
+      }
+
+      final long connectTime =
+        Math.max(timeAuthority.getTimeInNanoseconds() - startTime, 0) / 1000;
+
+      socket.setTcpNoDelay(true);
+
+      final long handshakeStart = timeAuthority.getTimeInNanoseconds();
+
+      if (secure) {
+        socket =
+          negotiate(socket, host, port, httpConnection.getSSLSocketFactory());
+
+        if (socket == null) {
+          return null;
+        }
+      }
+
+      final long handshakeTime = secure ?
+        Math.max(timeAuthority.getTimeInNanoseconds() - handshakeStart, 0) /
+          1000 :
+        0;
+
+      httpConnection.connectionEstablished(dnsTime, connectTime, handshakeTime);
+
+      return new Http2Connection(socket, "HTTP/2 connection to " + m_key);
+    }
+
+    private SSLSocket negotiate(final Socket socket,
+                                final String host,
+                                final int port,
+                                final SSLSocketFactory factory)
+      throws IOException {
+
+      final SSLSocket sslSocket =
+        (SSLSocket) factory.createSocket(socket, host, port, true);
+
+      final SSLParameters parameters = sslSocket.getSSLParameters();
+
+      try {
+        s_setApplicationProtocols.invoke(parameters,
+                                         (Object) new String[] { "h2" });
+        sslSocket.setSSLParameters(parameters);
+        sslSocket.startHandshake();
+
+        if ("h2".equals(s_getApplicationProtocol.invoke(sslSocket))) {
+          return sslSocket;
+        }
+      }
+      catch (final IllegalAccessException e) {
+        // Fall back to HTTP/1.1.
+      }
+      catch (final InvocationTargetException e) {
+        // Fall back to HTTP/1.1.
+      }
+
+      sslSocket.close();
+
+      return null;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.Charset;
+
+import net.grinder.util.AttributeStringParserImplementation;
+import net.grinder.util.http.URIParserImplementation;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link BodyIndex}.
+ *
+ * @author Philip Aston
+ */
+public class TestBodyIndex {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static BodyIndex index(final String body, final Charset charset) {
+    return new BodyIndex(body.getBytes(charset != null ? charset :
+                                       Charset.forName("ISO-8859-1")),
+                         charset,
+                         new AttributeStringParserImplementation(),
+                         new URIParserImplementation());
+  }
+
+  @Test public void testEmptyBody() throws Exception {
+    final BodyIndex index = index("", null);
+
+    assertEquals("", index.valueFromBodyInput("foo", null));
+    assertEquals(emptyList(), index.valuesFromHiddenInput("foo", null));
+    assertEquals("", index.valueFromBodyURI("foo", ""));
+  }
+
+  @Test public void testInputs() throws Exception {
+    final BodyIndex index =
+      index("<form><INPUT name='a' value='1'>" +
+            "< input\n type = \"Hidden\" name='a' value='2'/>" +
+            "<inputs name='a' value='3'>" +
+            "<input name='b'>" +
+            "<input name='a' value='4'", null);
+
+    assertEquals(asList("1", "2"), index.valuesFromBodyInput("a", null));
+    assertEquals(asList("2"), index.valuesFromHiddenInput("a", null));
+    assertEquals("2", index.valueFromBodyInput("a", "value='1'"));
+    assertEquals("2", index.valueFromHiddenInput("a", "<form>"));
+    assertEquals("", index.valueFromHiddenInput("a", "/>"));
+    assertEquals("", index.valueFromBodyInput("a", "missing"));
+    assertEquals("", index.valueFromBodyInput("b", null));
+  }
+
+  @Test public void testHiddenTypeIsWithinTag() throws Exception {
+    final BodyIndex index =
+      index("<input name='a' value='1'> type='hidden'" +
+            "<input name='b' value='2'><input type='hidden'>", null);
+
+    assertEquals(emptyList(), index.valuesFromHiddenInput("a", null));
+    assertEquals(emptyList(), index.valuesFromHiddenInput("b", null));
+    assertEquals("2", index.valueFromBodyInput("b", null));
+  }
+
+  @Test public void testBodyURIs() throws Exception {
+    final BodyIndex index =
+      index("<a href = 'x;s=1?a=1&a=2&b=3'>x</a>" +
+            "<input name='a' value='4' href=\"y?a=5\">" +
+            "<a href='z?a=6>" +
+            "<a HREF='z?a=7'>" +
+            "<a href='z?a=8", null);
+
+    // Like the regular expression, a value ends at the first quote.
+    assertEquals(asList("1", "5", "6><a HREF="),
+                 index.valuesFromBodyURI("a", null));
+    assertEquals("1", index.valueFromBodyURI("s", null));
+    assertEquals("3", index.valueFromBodyURI("b", null));
+    assertEquals("", index.valueFromBodyURI("b", "</a>"));
+    assertEquals("5", index.valueFromBodyURI("a", "value"));
+    assertEquals("4", index.valueFromBodyInput("a", null));
+  }
+
+  @Test public void testCharsets() throws Exception {
+    final String body =
+      "<p>été</p><input name='é' value='中'>" +
+      "<a href='x?q=ü'>";
+
+    for (String name : new String[] { "UTF-8", "UTF-16", "windows-1252" }) {
+      final Charset charset = Charset.forName(name);
+      final BodyIndex index = index(body, charset);
+
+      final String expected = name.equals("windows-1252") ? "?" : "中";
+
+      assertEquals(name, expected, index.valueFromBodyInput("é", null));
+      assertEquals(name,
+                   expected,
+                   index.valueFromBodyInput("é", "été"));
+      assertEquals(name, "ü", index.valueFromBodyURI("q", "</p>"));
+      assertEquals(name, "", index.valueFromBodyURI("q", "üü"));
+    }
+  }
+
+  @Test public void testCharsetFromContentType() throws Exception {
+    assertNull(BodyIndex.charsetFromContentType(null));
+    assertNull(BodyIndex.charsetFromContentType("garbage"));
+    assertNull(BodyIndex.charsetFromContentType("text/html"));
+    assertNull(BodyIndex.charsetFromContentType("text/html; charset=bogus"));
+    assertEquals(UTF8,
+                 BodyIndex.charsetFromContentType(
+                   "text/html; charset=\"utf-8\""));
+  }
+}
@@ -0,0 +1,213 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import HTTPClient.HTTPConnection.Resolver;
+import HTTPClient.HTTPConnection.TimeAuthority;
+
+
+/**
+ * Unit tests for {@link DNSCache}.
+ *
+ * @author Philip Aston
+ */
+public class TestDNSCache {
+
+  private long m_time;
+
+  private final TimeAuthority m_timeAuthority = new TimeAuthority() {
+      @Override public long getTimeInMilliseconds() {
+        return m_time;
+      }
+
+      @Override public long getTimeInNanoseconds() {
+        return m_time * 1000000;
+      }
+    };
+
+  private final List<String> m_lookups = new ArrayList<String>();
+
+  private final Resolver m_resolver = new Resolver() {
+      @Override public InetAddress[] getAllByName(final String host)
+        throws UnknownHostException {
+        synchronized (m_lookups) {
+          m_lookups.add(host);
+        }
+
+        if (host.startsWith("unknown")) {
+          throw new UnknownHostException(host);
+        }
+
+        return new InetAddress[] {
+          InetAddress.getByAddress(host, new byte[] { 10, 0, 0, 1 }),
+          InetAddress.getByAddress(host, new byte[] { 10, 0, 0, 2 }),
+          InetAddress.getByAddress(host, new byte[] { 10, 0, 0, 3 }),
+        };
+      }
+    };
+
+  private final ExecutorService m_executor =
+    Executors.newCachedThreadPool();
+
+  @After public void tearDown() {
+    m_executor.shutdownNow();
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testInvalidTimeToLive() {
+    new DNSCache(m_resolver, m_timeAuthority, -1, 0);
+  }
+
+  @Test public void testTimeToLive() throws Exception {
+    final DNSCache cache = new DNSCache(m_resolver, m_timeAuthority, 1000, 0);
+
+    assertFalse(cache.isCached("a.example.com"));
+
+    cache.getAllByName("a.example.com");
+    m_time = 999;
+    cache.getAllByName("A.Example.COM");
+    assertTrue(cache.isCached("a.example.com"));
+
+    assertEquals(1, m_lookups.size());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    m_time = 1000;
+    assertFalse(cache.isCached("a.example.com"));
+    cache.getAllByName("a.example.com");
+    assertEquals(2, m_lookups.size());
+
+    cache.clear();
+    cache.getAllByName("a.example.com");
+    assertEquals(3, m_lookups.size());
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test public void testNegativeCaching() throws Exception {
+    final DNSCache cache = new DNSCache(m_resolver, m_timeAuthority, 1000, 100);
+
+    for (int i = 0; i < 2; ++i) {
+      try {
+        cache.getAllByName("unknown.example.com");
+        fail("Expected UnknownHostException");
+      }
+      catch (final UnknownHostException e) {
+        assertEquals("unknown.example.com", e.getMessage());
+      }
+    }
+
+    assertEquals(1, m_lookups.size());
+
+    m_time = 100;
+
+    try {
+      cache.getAllByName("unknown.example.com");
+      fail("Expected UnknownHostException");
+    }
+    catch (final UnknownHostException e) {
+    }
+
+    assertEquals(2, m_lookups.size());
+  }
+
+  @Test public void testRoundRobin() throws Exception {
+    final DNSCache cache = new DNSCache(m_resolver, m_timeAuthority, 1000, 0);
+
+    final InetAddress[] first = cache.getAllByName("b.example.com");
+    final InetAddress[] second = cache.getAllByName("b.example.com");
+    final InetAddress[] third = cache.getAllByName("b.example.com");
+    final InetAddress[] fourth = cache.getAllByName("b.example.com");
+
+    assertEquals(3, first.length);
+    assertEquals(first[1], second[0]);
+    assertEquals(first[2], second[1]);
+    assertEquals(first[0], second[2]);
+    assertEquals(first[2], third[0]);
+    assertArrayEquals(first, fourth);
+  }
+
+  @Test public void testConcurrentLookups() throws Exception {
+    final CountDownLatch lookupStarted = new CountDownLatch(1);
+    final CountDownLatch finishLookup = new CountDownLatch(1);
+
+    final Resolver slowResolver = new Resolver() {
+        @Override public InetAddress[] getAllByName(final String host)
+          throws UnknownHostException {
+          lookupStarted.countDown();
+
+          try {
+            finishLookup.await();
+          }
+          catch (final InterruptedException e) {
+            throw new AssertionError(e);
+          }
+
+          return m_resolver.getAllByName(host);
+        }
+      };
+
+    final DNSCache cache =
+      new DNSCache(slowResolver, m_timeAuthority, 1000, 0);
+
+    final Callable<InetAddress[]> lookup = new Callable<InetAddress[]>() {
+        @Override public InetAddress[] call() throws Exception {
+          return cache.getAllByName("c.example.com");
+        }
+      };
+
+    final Future<InetAddress[]> future1 = m_executor.submit(lookup);
+    assertTrue(lookupStarted.await(10, TimeUnit.SECONDS));
+
+    final Future<InetAddress[]> future2 = m_executor.submit(lookup);
+    final Future<InetAddress[]> future3 = m_executor.submit(lookup);
+
+    finishLookup.countDown();
+
+    assertEquals(3, future1.get().length);
+    assertEquals(3, future2.get().length);
+    assertEquals(3, future3.get().length);
+
+    assertEquals(1, m_lookups.size());
+    assertEquals(1, cache.getMisses());
+    assertEquals(2, cache.getHits());
+  }
+}
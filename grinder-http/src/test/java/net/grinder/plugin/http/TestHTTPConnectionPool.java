@@ -0,0 +1,308 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.grinder.common.GrinderException;
+import net.grinder.plugin.http.http2.Http2Transport;
+import net.grinder.util.Sleeper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import HTTPClient.HTTPConnection;
+import HTTPClient.HTTPConnection.TimeAuthority;
+import HTTPClient.URI;
+
+
+/**
+ * Unit tests for {@link HTTPConnectionPool}.
+ *
+ * @author Philip Aston
+ */
+public class TestHTTPConnectionPool {
+
+  @Mock private Sleeper m_sleeper;
+
+  private final Http2Transport m_http2Transport = new Http2Transport();
+
+  private long m_time;
+
+  private int m_created;
+
+  private final TimeAuthority m_timeAuthority = new TimeAuthority() {
+      @Override public long getTimeInMilliseconds() {
+        return m_time;
+      }
+
+      @Override public long getTimeInNanoseconds() {
+        return m_time * 1000000;
+      }
+    };
+
+  private final HTTPConnectionPool.ConnectionFactory m_connectionFactory =
+    new HTTPConnectionPool.ConnectionFactory() {
+      @Override public HTTPConnectionWrapper create(final URI origin)
+        throws GrinderException {
+        ++m_created;
+
+        try {
+          return new HTTPConnectionWrapper(
+            new HTTPConnection(origin),
+            HTTPPluginConnectionDefaults.getConnectionDefaults(),
+            m_sleeper,
+            m_http2Transport);
+        }
+        catch (final Exception e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+
+  private URI m_origin;
+
+  private final ExecutorService m_executor =
+    Executors.newCachedThreadPool();
+
+  @Before public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    m_origin = new URI("http://pool.example.com");
+  }
+
+  @After public void tearDown() {
+    m_executor.shutdownNow();
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testBadMaximum() {
+    new HTTPConnectionPool(0, 1000, m_timeAuthority);
+  }
+
+  @Test public void testLeaseAndRelease() throws Exception {
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(2, 1000, m_timeAuthority);
+
+    assertEquals(0, pool.getNumberOfConnections(m_origin));
+
+    final HTTPConnectionPool.Lease lease1 =
+      pool.lease(m_origin, m_connectionFactory);
+    assertFalse(lease1.isReused());
+    assertEquals(0, lease1.getWaitTime());
+
+    final HTTPConnectionPool.Lease lease2 =
+      pool.lease(m_origin, m_connectionFactory);
+    assertFalse(lease2.isReused());
+    assertNotSame(lease1.getConnectionWrapper(),
+                  lease2.getConnectionWrapper());
+
+    assertEquals(2, m_created);
+    assertEquals(2, pool.getNumberOfConnections(m_origin));
+
+    lease1.release();
+
+    final HTTPConnectionPool.Lease lease3 =
+      pool.lease(m_origin, m_connectionFactory);
+    assertTrue(lease3.isReused());
+    assertSame(lease1.getConnectionWrapper(), lease3.getConnectionWrapper());
+    assertEquals(2, m_created);
+
+    lease3.discard();
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+
+    // Origins are independent.
+    final URI origin2 = new URI("https://pool.example.com");
+    pool.lease(origin2, m_connectionFactory).release();
+    assertEquals(1, pool.getNumberOfConnections(origin2));
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+    assertEquals(3, m_created);
+  }
+
+  @Test public void testWaitForConnection() throws Exception {
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 1000, m_timeAuthority);
+
+    final HTTPConnectionPool.Lease lease1 =
+      pool.lease(m_origin, m_connectionFactory);
+
+    final Future<HTTPConnectionPool.Lease> future =
+      m_executor.submit(new Callable<HTTPConnectionPool.Lease>() {
+        @Override public HTTPConnectionPool.Lease call() throws Exception {
+          return pool.lease(m_origin, m_connectionFactory);
+        }
+      });
+
+    try {
+      future.get(100, TimeUnit.MILLISECONDS);
+      fail("Expected TimeoutException");
+    }
+    catch (final TimeoutException e) {
+    }
+
+    m_time = 50;
+    lease1.release();
+
+    final HTTPConnectionPool.Lease lease2 =
+      future.get(5, TimeUnit.SECONDS);
+
+    assertTrue(lease2.isReused());
+    assertEquals(50000, lease2.getWaitTime());
+    assertSame(lease1.getConnectionWrapper(), lease2.getConnectionWrapper());
+    assertEquals(1, m_created);
+  }
+
+  @Test public void testLeaseWithoutWaiting() throws Exception {
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 1000, m_timeAuthority);
+
+    final HTTPConnectionPool.Lease lease1 =
+      pool.lease(m_origin, m_connectionFactory, false);
+    assertFalse(lease1.isReused());
+
+    // The pool is full, so the lease gets a connection outside the pool.
+    final HTTPConnectionPool.Lease lease2 =
+      pool.lease(m_origin, m_connectionFactory, false);
+    assertFalse(lease2.isReused());
+    assertEquals(2, m_created);
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+
+    lease1.release();
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+
+    // The extra connection is closed rather than kept.
+    lease2.release();
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+
+    final HTTPConnectionPool.Lease lease3 =
+      pool.lease(m_origin, m_connectionFactory, false);
+    assertSame(lease1.getConnectionWrapper(), lease3.getConnectionWrapper());
+    assertEquals(2, m_created);
+
+    final HTTPConnectionPool.Lease lease4 =
+      pool.lease(m_origin, m_connectionFactory, false);
+    assertNotSame(lease2.getConnectionWrapper(), lease4.getConnectionWrapper());
+    assertEquals(3, m_created);
+
+    lease4.discard();
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+    lease3.release();
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+  }
+
+  @Test public void testDiscardWakesWaiter() throws Exception {
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 1000, m_timeAuthority);
+
+    final HTTPConnectionPool.Lease lease1 =
+      pool.lease(m_origin, m_connectionFactory);
+
+    final Future<HTTPConnectionPool.Lease> future =
+      m_executor.submit(new Callable<HTTPConnectionPool.Lease>() {
+        @Override public HTTPConnectionPool.Lease call() throws Exception {
+          return pool.lease(m_origin, m_connectionFactory);
+        }
+      });
+
+    lease1.discard();
+
+    final HTTPConnectionPool.Lease lease2 =
+      future.get(5, TimeUnit.SECONDS);
+
+    assertFalse(lease2.isReused());
+    assertEquals(2, m_created);
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+  }
+
+  @Test public void testIdleEviction() throws Exception {
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(3, 1000, m_timeAuthority);
+
+    final HTTPConnectionPool.Lease lease1 =
+      pool.lease(m_origin, m_connectionFactory);
+    final HTTPConnectionPool.Lease lease2 =
+      pool.lease(m_origin, m_connectionFactory);
+
+    lease1.release();
+    m_time = 500;
+    lease2.release();
+
+    assertEquals(2, pool.getNumberOfConnections(m_origin));
+
+    m_time = 1200;
+
+    // The first connection has been idle too long; the second is reused.
+    final HTTPConnectionPool.Lease lease3 =
+      pool.lease(m_origin, m_connectionFactory);
+    assertTrue(lease3.isReused());
+    assertSame(lease2.getConnectionWrapper(), lease3.getConnectionWrapper());
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+
+    lease3.release();
+    m_time = 5000;
+
+    final HTTPConnectionPool.Lease lease4 =
+      pool.lease(m_origin, m_connectionFactory);
+    assertFalse(lease4.isReused());
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+    assertEquals(3, m_created);
+  }
+
+  @Test public void testCreationFailure() throws Exception {
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 1000, m_timeAuthority);
+
+    final GrinderException exception = new URLException("bad");
+
+    try {
+      pool.lease(m_origin, new HTTPConnectionPool.ConnectionFactory() {
+          @Override public HTTPConnectionWrapper create(final URI origin)
+            throws GrinderException {
+            throw exception;
+          }
+        });
+      fail("Expected GrinderException");
+    }
+    catch (final GrinderException e) {
+      assertSame(exception, e);
+    }
+
+    assertEquals(0, pool.getNumberOfConnections(m_origin));
+
+    pool.lease(m_origin, m_connectionFactory);
+    assertEquals(1, pool.getNumberOfConnections(m_origin));
+  }
+}
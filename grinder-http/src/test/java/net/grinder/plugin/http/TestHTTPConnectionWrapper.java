@@ -29,6 +29,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import junit.framework.TestCase;
+import net.grinder.plugin.http.http2.Http2Transport;
 import net.grinder.testutility.RandomStubFactory;
 import net.grinder.util.BlockingClassLoader;
 import net.grinder.util.Sleeper;
@@ -49,6 +50,7 @@ public class TestHTTPConnectionWrapper extends TestCase {
     final RandomStubFactory<Sleeper> sleeperStubFactory =
       RandomStubFactory.create(Sleeper.class);
     final Sleeper sleeper = sleeperStubFactory.getStub();
+    final Http2Transport http2Transport = new Http2Transport();
 
     final StubHTTPConnection connection = new StubHTTPConnection("foo");
 
@@ -67,7 +69,7 @@ public class TestHTTPConnectionWrapper extends TestCase {
       new HTTPPluginConnectionDefaults();
 
     final HTTPConnectionWrapper wrapper =
-      new HTTPConnectionWrapper(connection, defaults, sleeper);
+      new HTTPConnectionWrapper(connection, defaults, sleeper, http2Transport);
 
     assertSame(connection, wrapper.getConnection());
     assertFalse(connection.getAllowUserInteraction());
@@ -75,35 +77,35 @@ public class TestHTTPConnectionWrapper extends TestCase {
 
     assertModule(connection, "HTTPClient.RedirectionModule", false);
     defaults.setFollowRedirects(true);
-    new HTTPConnectionWrapper(connection, defaults, sleeper);
+    new HTTPConnectionWrapper(connection, defaults, sleeper, http2Transport);
     assertModule(connection, "HTTPClient.RedirectionModule", true);
     wrapper.setFollowRedirects(false);
     assertModule(connection, "HTTPClient.RedirectionModule", false);
 
     assertModule(connection, "HTTPClient.CookieModule", true);
     defaults.setUseCookies(false);
-    new HTTPConnectionWrapper(connection, defaults, sleeper);
+    new HTTPConnectionWrapper(connection, defaults, sleeper, http2Transport);
     assertModule(connection, "HTTPClient.CookieModule", false);
     wrapper.setUseCookies(true);
     assertModule(connection, "HTTPClient.CookieModule", true);
 
     assertModule(connection, "HTTPClient.ContentEncodingModule", false);
     defaults.setUseContentEncoding(true);
-    new HTTPConnectionWrapper(connection, defaults, sleeper);
+    new HTTPConnectionWrapper(connection, defaults, sleeper, http2Transport);
     assertModule(connection, "HTTPClient.ContentEncodingModule", true);
     wrapper.setUseContentEncoding(false);
     assertModule(connection, "HTTPClient.ContentEncodingModule", false);
 
     assertModule(connection, "HTTPClient.TransferEncodingModule", false);
     defaults.setUseTransferEncoding(true);
-    new HTTPConnectionWrapper(connection, defaults, sleeper);
+    new HTTPConnectionWrapper(connection, defaults, sleeper, http2Transport);
     assertModule(connection, "HTTPClient.TransferEncodingModule", true);
     wrapper.setUseTransferEncoding(false);
     assertModule(connection, "HTTPClient.TransferEncodingModule", false);
 
     assertModule(connection, "HTTPClient.AuthorizationModule", false);
     defaults.setUseAuthorizationModule(true);
-    new HTTPConnectionWrapper(connection, defaults, sleeper);
+    new HTTPConnectionWrapper(connection, defaults, sleeper, http2Transport);
     assertModule(connection, "HTTPClient.AuthorizationModule", true);
     wrapper.setUseAuthorizationModule(false);
     assertModule(connection, "HTTPClient.AuthorizationModule", false);
@@ -128,6 +130,13 @@ public class TestHTTPConnectionWrapper extends TestCase {
     wrapper.setBandwidthLimit(0);
     assertSame(defaultBWLimiterFactory,
       connection.getBandwithLimiterFactoryForTest());
+
+    assertNull(connection.getTransport());
+    defaults.setUseHTTP2(true);
+    new HTTPConnectionWrapper(connection, defaults, sleeper, http2Transport);
+    assertSame(http2Transport, connection.getTransport());
+    wrapper.setUseHTTP2(false);
+    assertNull(connection.getTransport());
   }
 
   private void assertModule(HTTPConnection connection,
@@ -38,6 +38,7 @@ import java.util.Collections;
 import java.util.HashSet;
 
 import net.grinder.common.GrinderException;
+import net.grinder.common.GrinderProperties;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.PluginContainerScopeTunnel;
 import net.grinder.plugininterface.PluginException;
@@ -72,6 +73,8 @@ public class TestHTTPPlugin {
     MockitoAnnotations.initMocks(this);
 
     when(m_scriptContext.getStatistics()).thenReturn(m_statistics);
+    when(m_scriptContext.getProperties())
+      .thenReturn(new GrinderProperties());
   }
 
   private static void usePlugin(final ClassLoader loader) throws Exception {
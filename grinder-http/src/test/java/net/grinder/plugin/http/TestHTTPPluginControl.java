@@ -27,6 +27,7 @@ import static org.junit.Assert.assertSame;
 import static org.mockito.Answers.RETURNS_MOCKS;
 import static org.mockito.Mockito.when;
 import net.grinder.common.SSLContextFactory;
+import net.grinder.plugin.http.http2.Http2Transport;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.script.Grinder.ScriptContext;
 import net.grinder.script.Statistics;
@@ -48,6 +49,8 @@ public class TestHTTPPluginControl {
   private final SSLContextFactory m_sslContextFactory =
       new InsecureSSLContextFactory();
 
+  private final Http2Transport m_http2Transport = new Http2Transport();
+
   @Mock private PluginProcessContext m_pluginProcessContext;
   @Mock(answer = RETURNS_MOCKS) private ScriptContext m_scriptContext;
   @Mock private Statistics m_statistics;
@@ -69,7 +72,8 @@ public class TestHTTPPluginControl {
     final HTTPPluginThreadState threadState =
       new HTTPPluginThreadState(m_sslContextFactory,
                                 null,
-                                m_timeAuthority);
+                                m_timeAuthority,
+                                m_http2Transport);
 
     when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
       .thenReturn(threadState);
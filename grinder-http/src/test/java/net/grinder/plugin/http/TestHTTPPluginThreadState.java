@@ -21,10 +21,20 @@
 
 package net.grinder.plugin.http;
 
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
 import net.grinder.common.SSLContextFactory;
+import net.grinder.plugin.http.http2.Http2Transport;
 import net.grinder.util.InsecureSSLContextFactory;
 import net.grinder.util.Sleeper;
 
@@ -34,6 +44,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import HTTPClient.HTTPConnection;
+import HTTPClient.HTTPConnection.TimeAuthority;
 import HTTPClient.HTTPResponse;
 import HTTPClient.URI;
 
@@ -48,6 +59,8 @@ public class TestHTTPPluginThreadState {
   private final SSLContextFactory m_sslContextFactory =
       new InsecureSSLContextFactory();
 
+  private final Http2Transport m_http2Transport = new Http2Transport();
+
   @Mock private Sleeper m_sleeper;
 
   @Before
@@ -60,7 +73,8 @@ public class TestHTTPPluginThreadState {
     final HTTPPluginThreadState pluginThreadState =
       new HTTPPluginThreadState(m_sslContextFactory,
                                 m_sleeper,
-                                null);
+                                null,
+                                m_http2Transport);
 
     pluginThreadState.beginThread();
 
@@ -103,6 +117,147 @@ public class TestHTTPPluginThreadState {
     pluginThreadState.beginShutdown();
   }
 
+  @Test public void testConnectionPool() throws Exception {
+    final AtomicReference<HTTPConnectionPool> poolReference =
+      new AtomicReference<HTTPConnectionPool>();
+
+    final HTTPPluginThreadState pluginThreadState =
+      new HTTPPluginThreadState(m_sslContextFactory,
+                                m_sleeper,
+                                null,
+                                poolReference,
+                                m_http2Transport);
+
+    final URI uri = new URI("http://blah.com/foo");
+    final URI origin = new URI("http://blah.com");
+
+    pluginThreadState.beginRun();
+
+    assertNull(pluginThreadState.leaseConnection(uri));
+
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(2, 1000, new TimeAuthority() {
+          @Override public long getTimeInMilliseconds() {
+            return 0;
+          }
+
+          @Override public long getTimeInNanoseconds() {
+            return 0;
+          }
+        });
+    poolReference.set(pool);
+
+    final HTTPPluginThreadState.ConnectionLease lease =
+      pluginThreadState.leaseConnection(uri);
+    assertSame(pluginThreadState,
+               lease.getConnectionWrapper().getConnection().getContext());
+    assertEquals(1, pool.getNumberOfConnections(origin));
+    assertFalse(lease.isReused());
+
+    // Only the first request sent on the lease is charged for creating the
+    // connection.
+    lease.used();
+
+    // Requests to the same origin share the lease until all release it.
+    final HTTPPluginThreadState.ConnectionLease shared =
+      pluginThreadState.leaseConnection(origin);
+    assertSame(lease, shared);
+    assertTrue(shared.isReused());
+    assertEquals(0, shared.getWaitTime());
+    assertEquals(1, pool.getNumberOfConnections(origin));
+    lease.release();
+
+    final List<HTTPPluginThreadState.ConnectionLease> leases =
+      pluginThreadState.leaseConnections(asList(uri, origin));
+    assertEquals(asList(lease), leases);
+    lease.release();
+    lease.release();
+    assertEquals(1, pool.getNumberOfConnections(origin));
+
+    // The thread holds connections obtained for the script.
+    final HTTPConnectionWrapper wrapper =
+      pluginThreadState.getConnectionWrapper(uri);
+    assertSame(lease.getConnectionWrapper(), wrapper);
+    assertSame(wrapper, pluginThreadState.getConnectionWrapper(origin));
+    assertNull(pluginThreadState.leaseConnection(uri));
+
+    pluginThreadState.endRun();
+    pluginThreadState.beginRun();
+
+    assertEquals(0, pool.getNumberOfConnections(origin));
+    assertNotSame(wrapper, pluginThreadState.getConnectionWrapper(uri));
+  }
+
+  @Test(timeout = 10000) public void testLeaseOrder() throws Exception {
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 1000, new TimeAuthority() {
+          @Override public long getTimeInMilliseconds() {
+            return 0;
+          }
+
+          @Override public long getTimeInNanoseconds() {
+            return 0;
+          }
+        });
+
+    final HTTPPluginThreadState pluginThreadState =
+      new HTTPPluginThreadState(m_sslContextFactory,
+                                m_sleeper,
+                                null,
+                                new AtomicReference<HTTPConnectionPool>(pool),
+                                m_http2Transport);
+
+    final URI originA = new URI("http://a.example.com");
+    final URI originB = new URI("http://b.example.com");
+
+    pluginThreadState.beginRun();
+
+    final HTTPPluginThreadState.ConnectionLease leaseB =
+      pluginThreadState.leaseConnection(originB);
+
+    // Another thread has the only connection to A, and may be waiting for
+    // B. This thread holds B, so it must not wait for A.
+    final HTTPConnectionPool.Lease otherA =
+      pool.lease(originA, pluginThreadState);
+
+    // It uses a connection of its own, rather than exceed the maximum.
+    final HTTPPluginThreadState.ConnectionLease leaseA =
+      pluginThreadState.leaseConnection(originA);
+    assertNotSame(otherA.getConnectionWrapper(),
+                  leaseA.getConnectionWrapper());
+    assertEquals(1, pool.getNumberOfConnections(originA));
+
+    leaseA.release();
+    assertEquals(1, pool.getNumberOfConnections(originA));
+
+    leaseB.release();
+
+    // The same applies to a connection to B held for the run.
+    final HTTPConnectionWrapper heldB =
+      pluginThreadState.getConnectionWrapper(originB);
+
+    final HTTPPluginThreadState.ConnectionLease leaseA2 =
+      pluginThreadState.leaseConnection(originA);
+    assertNotSame(otherA.getConnectionWrapper(),
+                  leaseA2.getConnectionWrapper());
+    assertEquals(1, pool.getNumberOfConnections(originA));
+    assertEquals(1, pool.getNumberOfConnections(originB));
+
+    leaseA2.release();
+    otherA.release();
+
+    // Once A is free, the thread uses the pooled connection.
+    final HTTPPluginThreadState.ConnectionLease leaseA3 =
+      pluginThreadState.leaseConnection(originA);
+    assertSame(otherA.getConnectionWrapper(), leaseA3.getConnectionWrapper());
+    assertEquals(1, pool.getNumberOfConnections(originA));
+    leaseA3.release();
+
+    pluginThreadState.beginRun();
+    assertEquals(0, pool.getNumberOfConnections(originB));
+    assertNotSame(heldB, pluginThreadState.getConnectionWrapper(originB));
+  }
+
   @Test public void testSetResponse() throws Exception {
     final HTTPRequestHandler handler = new HTTPRequestHandler();
     handler.start();
@@ -114,7 +269,8 @@ public class TestHTTPPluginThreadState {
       final HTTPPluginThreadState pluginThreadState =
         new HTTPPluginThreadState(m_sslContextFactory,
                                   m_sleeper,
-                                  null);
+                                  null,
+                                  m_http2Transport);
 
       final HTTPResponse response = connection.Get("foo");
 
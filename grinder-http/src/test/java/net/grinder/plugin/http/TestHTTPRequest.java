@@ -31,23 +31,39 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.Random;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.grinder.common.GrinderProperties;
 import net.grinder.common.SSLContextFactory;
 import net.grinder.engine.process.dcr.DCRContextImplementation;
+import net.grinder.plugin.http.http2.Http2Transport;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.script.Grinder.ScriptContext;
@@ -69,11 +85,14 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 
+import HTTPClient.HTTPConnection;
+import HTTPClient.HTTPConnection.Resolver;
 import HTTPClient.HTTPConnection.TimeAuthority;
 import HTTPClient.HTTPResponse;
 import HTTPClient.HttpURLConnection;
 import HTTPClient.NVPair;
 import HTTPClient.ParseException;
+import HTTPClient.URI;
 
 
 /**
@@ -87,6 +106,8 @@ public class TestHTTPRequest {
   private final SSLContextFactory m_sslContextFactory =
       new InsecureSSLContextFactory();
 
+  private final Http2Transport m_http2Transport = new Http2Transport();
+
   @Mock private PluginProcessContext m_pluginProcessContext;
   @Mock private ScriptContext m_scriptContext;
   @Mock private Statistics m_statistics;
@@ -106,10 +127,13 @@ public class TestHTTPRequest {
     final HTTPPluginThreadState threadState =
       new HTTPPluginThreadState(m_sslContextFactory,
                                 null,
-                                m_timeAuthority);
+                                m_timeAuthority,
+                                m_http2Transport);
 
     when(m_scriptContext.getStatistics()).thenReturn(m_statistics);
     when(m_scriptContext.getLogger()).thenReturn(m_logger);
+    when(m_scriptContext.getProperties())
+      .thenReturn(new GrinderProperties());
 
     m_httpPlugin = new HTTPPlugin(m_pluginProcessContext,
                                   m_scriptContext);
@@ -123,6 +147,7 @@ public class TestHTTPRequest {
 
   @After public void tearDown() throws Exception {
     m_handler.shutdown();
+    m_http2Transport.close();
   }
 
   @Test public void testTimeout() throws Exception {
@@ -937,7 +962,8 @@ public class TestHTTPRequest {
     final HTTPPluginThreadState threadState =
       new HTTPPluginThreadState(m_sslContextFactory,
                                 null,
-                                timeAuthority);
+                                timeAuthority,
+                                m_http2Transport);
 
     when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
       .thenReturn(threadState);
@@ -961,13 +987,15 @@ public class TestHTTPRequest {
       .addLong(StatisticsIndexMap.HTTP_PLUGIN_DNS_TIME_KEY, 22);
     verify(m_statisticsForTest)
       .addLong(StatisticsIndexMap.HTTP_PLUGIN_CONNECT_TIME_KEY, 99);
+    verify(m_statisticsForTest)
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_HANDSHAKE_TIME_KEY, 0);
     verify(m_statisticsForTest)
       .addLong(StatisticsIndexMap.HTTP_PLUGIN_FIRST_BYTE_TIME_KEY, 119);
     verify(m_statisticsForTest)
       .addLong(StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED, 1);
 
     try {
-      timeAuthority.getTimeInMilliseconds();
+      timeAuthority.getTimeInNanoseconds();
       fail("Not all times used");
     }
     catch (final ArrayIndexOutOfBoundsException e) {
@@ -977,6 +1005,54 @@ public class TestHTTPRequest {
     assertEquals(bodyText, response.getText());
   }
 
+  @Test public void testDNSCacheUntimed() throws Exception {
+    final GrinderProperties properties = new GrinderProperties();
+    properties.setBoolean("grinder.http.dnsCache", true);
+    properties.setBoolean("grinder.http.dnsCache.timed", false);
+    properties.setProperty("grinder.http.dnsCache.hosts", "127.0.0.1");
+    when(m_scriptContext.getProperties()).thenReturn(properties);
+    when(m_scriptContext.getTimeAuthority())
+      .thenReturn(mock(net.grinder.common.TimeAuthority.class));
+
+    final Resolver originalResolver =
+      HTTPConnection.getDefaultResolver();
+
+    try {
+      final HTTPPlugin plugin =
+        new HTTPPlugin(m_pluginProcessContext, m_scriptContext);
+
+      final HTTPPluginThreadState threadState =
+        new HTTPPluginThreadState(m_sslContextFactory,
+                                  null,
+                                  m_timeAuthority,
+                                  m_http2Transport);
+
+      when(m_pluginProcessContext.getPluginThreadListener(plugin))
+        .thenReturn(threadState);
+      when(m_statistics.isTestInProgress()).thenReturn(true);
+      when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+
+      final DNSCache cache = plugin.getDNSCache();
+      assertSame(cache, HTTPConnection.getDefaultResolver());
+      assertEquals(1, cache.getMisses());
+
+      final String url = m_handler.getURL().replace("localhost", "LocalHost");
+
+      new HTTPRequest().GET(url);
+
+      assertEquals(2, cache.getMisses());
+      assertTrue(cache.isCached("localhost"));
+
+      // The connection found the result of the untimed resolution.
+      assertEquals(1, cache.getHits());
+      verify(m_statisticsForTest, times(2)).pauseClock();
+      verify(m_statisticsForTest, times(2)).resumeClock();
+    }
+    finally {
+      HTTPConnection.setDefaultResolver(originalResolver);
+    }
+  }
+
   @Test public void testConnectionTimingsAndStatisticsInvalidTimes()
       throws Exception {
 
@@ -992,7 +1068,8 @@ public class TestHTTPRequest {
     final HTTPPluginThreadState threadState =
       new HTTPPluginThreadState(m_sslContextFactory,
                                 null,
-                                timeAuthority);
+                                timeAuthority,
+                                m_http2Transport);
 
     when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
       .thenReturn(threadState);
@@ -1021,7 +1098,7 @@ public class TestHTTPRequest {
       .addLong(StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED, 1);
 
     try {
-      timeAuthority.getTimeInMilliseconds();
+      timeAuthority.getTimeInNanoseconds();
       fail("Not all times used");
     }
     catch (final ArrayIndexOutOfBoundsException e) {
@@ -1031,6 +1108,385 @@ public class TestHTTPRequest {
     assertEquals("", response.getText());
   }
 
+  @Test public void testStreamResponseBody() throws Exception {
+    when(m_statistics.isTestInProgress()).thenReturn(true);
+    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+
+    final HTTPRequest request = new HTTPRequest();
+
+    assertFalse(request.getStreamResponseBody());
+    request.setStreamResponseBody(true);
+    assertTrue(request.getStreamResponseBody());
+
+    final StringBuilder body = new StringBuilder();
+
+    for (int i = 0; i < 5000; ++i) {
+      body.append("line ").append(i).append('\n');
+    }
+
+    m_handler.setBody(body.toString());
+
+    request.setResponseBodyChecks(new ResponseBodyCheck[] {
+      ResponseBodyChecks.contains("line 4999"),
+      ResponseBodyChecks.length(body.length(), body.length()),
+    });
+
+    final HTTPResponse response = request.GET(m_handler.getURL());
+    assertEquals(200, response.getStatusCode());
+
+    // The per-thread buffer is reused.
+    request.GET(m_handler.getURL());
+
+    verify(m_statisticsForTest, times(2))
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY,
+               body.length());
+    verify(m_statisticsForTest, times(0)).setSuccess(false);
+  }
+
+  @Test public void testResponseBodyChecks() throws Exception {
+    when(m_statistics.isTestInProgress()).thenReturn(true);
+    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+
+    final HTTPRequest request = new HTTPRequest();
+    assertEquals(0, request.getResponseBodyChecks().length);
+
+    m_handler.setBody("Some body");
+
+    final ResponseBodyCheck[] checks = {
+      ResponseBodyChecks.contains("body"),
+      ResponseBodyChecks.contains("nobody"),
+    };
+
+    request.setResponseBodyChecks(checks);
+    assertSame(checks, request.getResponseBodyChecks());
+
+    request.GET(m_handler.getURL());
+
+    verify(m_logger).error(m_stringCaptor.capture());
+    assertContains(m_stringCaptor.getValue(), "nobody");
+    verify(m_statisticsForTest).setSuccess(false);
+
+    // Checks are not applied if the body isn't read.
+    request.setReadResponseBody(false);
+    request.GET(m_handler.getURL());
+    verify(m_statisticsForTest).setSuccess(false);
+
+    try {
+      request.setResponseBodyChecks(new ResponseBodyCheck[] { null });
+      fail("Expected NullPointerException");
+    }
+    catch (final NullPointerException e) {
+    }
+  }
+
+  @Test public void testConnectionPool() throws Exception {
+    when(m_statistics.isTestInProgress()).thenReturn(true);
+    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 10000, m_timeAuthority);
+
+    final HTTPPluginThreadState threadState =
+      new HTTPPluginThreadState(m_sslContextFactory,
+                                null,
+                                m_timeAuthority,
+                                new AtomicReference<HTTPConnectionPool>(pool),
+                                m_http2Transport);
+
+    when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
+      .thenReturn(threadState);
+
+    final HTTPRequest request = new HTTPRequest();
+
+    request.GET(m_handler.getURL());
+    request.GET(m_handler.getURL());
+
+    verify(m_statisticsForTest, times(2))
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_WAIT_TIME_KEY, 0);
+    verify(m_statisticsForTest)
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_CONNECTIONS_CREATED, 1);
+    verify(m_statisticsForTest)
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_HITS, 1);
+
+    final URI url = new URI(m_handler.getURL());
+    assertEquals(1,
+                 pool.getNumberOfConnections(
+                   new URI(url.getScheme(), url.getHost(), url.getPort(), "")));
+
+    // Connections held by the thread bypass the pool.
+    HTTPPluginControl.getThreadConnection(m_handler.getURL());
+    request.GET(m_handler.getURL());
+
+    verify(m_statisticsForTest, times(2))
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_WAIT_TIME_KEY, 0);
+  }
+
+  @Test public void testGETAsync() throws Exception {
+    when(m_statistics.isTestInProgress()).thenReturn(true);
+    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 10000, m_timeAuthority);
+
+    final HTTPPluginThreadState threadState =
+      new HTTPPluginThreadState(m_sslContextFactory,
+                                null,
+                                m_timeAuthority,
+                                new AtomicReference<HTTPConnectionPool>(pool),
+                                m_http2Transport);
+
+    when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
+      .thenReturn(threadState);
+
+    final HTTPRequest request = new HTTPRequest();
+    request.setUrl(m_handler.getURL());
+
+    final HTTPRequest.PendingResponse pending = request.GETAsync("/foo");
+    assertFalse(pending.isDone());
+    verify(m_statisticsForTest, never())
+      .addLong(eq(StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY),
+               anyLong());
+
+    final HTTPResponse response = pending.get();
+    assertEquals(200, response.getStatusCode());
+    assertEquals("GET /foo HTTP/1.1", m_handler.getRequestFirstHeader());
+    assertTrue(pending.isDone());
+    assertSame(response, pending.get());
+    assertSame(response, threadState.getLastResponse());
+
+    verify(m_statisticsForTest)
+      .addLong(eq(StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY),
+               anyLong());
+    verify(m_statisticsForTest)
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_CONNECTIONS_CREATED, 1);
+
+    // A second request to a fresh pool, pipelined behind a third, creates
+    // the connection; the third reuses it.
+    final HTTPConnectionPool pool2 =
+      new HTTPConnectionPool(1, 10000, m_timeAuthority);
+    final HTTPPluginThreadState threadState2 =
+      new HTTPPluginThreadState(m_sslContextFactory,
+                                null,
+                                m_timeAuthority,
+                                new AtomicReference<HTTPConnectionPool>(pool2),
+                                m_http2Transport);
+
+    when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
+      .thenReturn(threadState2);
+
+    final HTTPRequest.PendingResponse pending2 = request.GETAsync("/2");
+    final HTTPRequest.PendingResponse pending3 = request.GETAsync("/3");
+    pending2.get();
+    pending3.get();
+
+    verify(m_statisticsForTest, times(2))
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_CONNECTIONS_CREATED, 1);
+    verify(m_statisticsForTest)
+      .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_HITS, 1);
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      executor.submit(new Callable<HTTPResponse>() {
+          @Override public HTTPResponse call() throws Exception {
+            return pending.get();
+          }
+        }).get();
+      fail("Expected ExecutionException");
+    }
+    catch (final ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    finally {
+      executor.shutdown();
+    }
+
+    final URI url = new URI(m_handler.getURL());
+    assertEquals(1,
+                 pool.getNumberOfConnections(
+                   new URI(url.getScheme(), url.getHost(), url.getPort(), "")));
+  }
+
+  @Test public void testGETAll() throws Exception {
+    when(m_statistics.isTestInProgress()).thenReturn(true);
+    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 10000, m_timeAuthority);
+
+    final HTTPPluginThreadState threadState =
+      new HTTPPluginThreadState(m_sslContextFactory,
+                                null,
+                                m_timeAuthority,
+                                new AtomicReference<HTTPConnectionPool>(pool),
+                                m_http2Transport);
+
+    when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
+      .thenReturn(threadState);
+
+    final HTTPRequestHandler handler2 = new HTTPRequestHandler();
+    handler2.start();
+
+    try {
+      final HTTPRequest request = new HTTPRequest();
+
+      assertEquals(0, request.GETAll(new String[0]).length);
+
+      final HTTPResponse[] responses =
+        request.GETAll(new String[] { m_handler.getURL() + "/a",
+                                      handler2.getURL() + "/b", });
+
+      assertEquals(2, responses.length);
+      assertEquals(200, responses[0].getStatusCode());
+      assertEquals(200, responses[1].getStatusCode());
+      assertEquals("GET /a HTTP/1.1", m_handler.getRequestFirstHeader());
+      assertEquals("GET /b HTTP/1.1", handler2.getRequestFirstHeader());
+
+      // Both requests are accumulated into the test in progress. Each
+      // created the connection leased for its origin.
+      verify(m_statisticsForTest, times(2))
+        .addLong(eq(StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY),
+                 anyLong());
+      verify(m_statisticsForTest, times(2))
+        .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_CONNECTIONS_CREATED, 1);
+      verify(m_statisticsForTest, never())
+        .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_HITS, 1);
+
+      // Requests to the same origin are pipelined on one connection.
+      request.GETAll(new String[] { handler2.getURL() + "/c",
+                                    handler2.getURL() + "/d", });
+
+      verify(m_statisticsForTest, times(2))
+        .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_CONNECTIONS_CREATED, 1);
+      verify(m_statisticsForTest, times(2))
+        .addLong(StatisticsIndexMap.HTTP_PLUGIN_POOL_HITS, 1);
+
+      try {
+        request.GETAll(null);
+        fail("Expected NullPointerException");
+      }
+      catch (final NullPointerException e) {
+      }
+    }
+    finally {
+      handler2.shutdown();
+    }
+
+    assertTrue(HTTPRequest.getHttpMethodFilter().matches(
+      HTTPRequest.class.getMethod("GETAll", String[].class)));
+    assertFalse(HTTPRequest.getHttpMethodFilter().matches(
+      HTTPRequest.class.getMethod("GETAsync", String.class)));
+  }
+
+  @Test public void testGETAllPipelines() throws Exception {
+    final HTTPConnectionPool pool =
+      new HTTPConnectionPool(1, 10000, m_timeAuthority);
+
+    final HTTPPluginThreadState threadState =
+      new HTTPPluginThreadState(m_sslContextFactory,
+                                null,
+                                m_timeAuthority,
+                                new AtomicReference<HTTPConnectionPool>(pool),
+                                m_http2Transport);
+
+    when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
+      .thenReturn(threadState);
+
+    final ServerSocket serverSocket = new ServerSocket(0);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      // HTTPClient waits for the first response on a new connection before
+      // it pipelines. After that, the server only answers once it has read
+      // both requests; if the second request waited for the first
+      // response, the read times out.
+      final Future<String> received =
+        executor.submit(new Callable<String>() {
+          @Override public String call() throws Exception {
+            final Socket socket = serverSocket.accept();
+
+            try {
+              socket.setSoTimeout(5000);
+
+              final InputStream in = socket.getInputStream();
+              final OutputStream out = socket.getOutputStream();
+
+              readRequests(in, 1);
+              writeResponses(out, 1);
+
+              final String pipelined = readRequests(in, 2);
+              writeResponses(out, 2);
+
+              return pipelined;
+            }
+            finally {
+              socket.close();
+            }
+          }
+        });
+
+      final String url = "http://localhost:" + serverSocket.getLocalPort();
+
+      final HTTPRequest request = new HTTPRequest();
+      request.setFormData(new NVPair[] { new NVPair("name", "value") });
+
+      assertEquals("ok", request.GET(url + "/").getText());
+
+      final HTTPResponse[] responses =
+        request.GETAll(new String[] { url + "/a", url + "/b", });
+
+      assertEquals(200, responses[0].getStatusCode());
+      assertEquals("ok", responses[1].getText());
+
+      final String requests = received.get();
+      assertContains(requests, "GET /a?name=value HTTP/1.1");
+      assertContains(requests, "GET /b?name=value HTTP/1.1");
+    }
+    finally {
+      executor.shutdownNow();
+      serverSocket.close();
+    }
+  }
+
+  private static String readRequests(final InputStream in,
+                                     final int numberOfRequests)
+    throws IOException {
+
+    final StringBuilder result = new StringBuilder();
+    int heads = 0;
+
+    while (heads < numberOfRequests) {
+      final int b = in.read();
+
+      if (b < 0) {
+        throw new EOFException();
+      }
+
+      result.append((char) b);
+
+      if (result.length() >= 4 &&
+          result.substring(result.length() - 4).equals("\r\n\r\n")) {
+        ++heads;
+      }
+    }
+
+    return result.toString();
+  }
+
+  private static void writeResponses(final OutputStream out,
+                                     final int numberOfResponses)
+    throws IOException {
+
+    for (int i = 0; i < numberOfResponses; ++i) {
+      out.write(("HTTP/1.1 200 OK\r\n" +
+                 "Content-Length: 2\r\n" +
+                 "\r\n" +
+                 "ok").getBytes("US-ASCII"));
+    }
+
+    out.flush();
+  }
+
   @Test public void testSetReadResponseBody() throws Exception {
 
     final ListTimeAuthority timeAuthority =
@@ -1045,7 +1501,8 @@ public class TestHTTPRequest {
     final HTTPPluginThreadState threadState =
       new HTTPPluginThreadState(m_sslContextFactory,
                                 null,
-                                timeAuthority);
+                                timeAuthority,
+                                m_http2Transport);
 
     when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
       .thenReturn(threadState);
@@ -1085,7 +1542,7 @@ public class TestHTTPRequest {
       .addLong(StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED, 1);
 
     try {
-      timeAuthority.getTimeInMilliseconds();
+      timeAuthority.getTimeInNanoseconds();
       fail("Not all times used");
     }
     catch (final ArrayIndexOutOfBoundsException e) {
@@ -1282,7 +1739,13 @@ public class TestHTTPRequest {
 
     @Override
     public long getTimeInMilliseconds() {
-      return m_times[++m_last];
+      return 0;
+    }
+
+    /** The times are given in microseconds. */
+    @Override
+    public long getTimeInNanoseconds() {
+      return m_times[++m_last] * 1000;
     }
   }
 }
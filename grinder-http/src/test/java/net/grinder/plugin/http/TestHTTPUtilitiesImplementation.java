@@ -29,6 +29,7 @@ import static org.junit.Assert.assertSame;
 import static org.mockito.Answers.RETURNS_MOCKS;
 import static org.mockito.Mockito.when;
 import net.grinder.common.SSLContextFactory;
+import net.grinder.plugin.http.http2.Http2Transport;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.script.Grinder.ScriptContext;
 import net.grinder.script.Statistics;
@@ -53,6 +54,8 @@ public class TestHTTPUtilitiesImplementation {
   private final SSLContextFactory m_sslContextFactory =
       new InsecureSSLContextFactory();
 
+  private final Http2Transport m_http2Transport = new Http2Transport();
+
   @Mock private PluginProcessContext m_pluginProcessContext;
   @Mock(answer = RETURNS_MOCKS) private ScriptContext m_scriptContext;
   @Mock private Statistics m_statistics;
@@ -66,7 +69,8 @@ public class TestHTTPUtilitiesImplementation {
     final HTTPPluginThreadState threadState =
       new HTTPPluginThreadState(m_sslContextFactory,
                                 null,
-                                m_timeAuthority);
+                                m_timeAuthority,
+                                m_http2Transport);
 
     when(m_scriptContext.getStatistics()).thenReturn(m_statistics);
 
@@ -336,7 +340,8 @@ public class TestHTTPUtilitiesImplementation {
     assertEquals("bah", httpUtilities.valueFromHiddenInput("foo"));
     assertEquals("", httpUtilities.valueFromHiddenInput("bah"));
     assertEquals("bah", httpUtilities.valueFromHiddenInput("foo", "<body>"));
-    assertEquals("", httpUtilities.valueFromHiddenInput("foo", "input"));
+    assertEquals("bah", httpUtilities.valueFromHiddenInput("foo", "input"));
+    assertEquals("", httpUtilities.valueFromHiddenInput("foo", "bah"));
     assertEquals("", httpUtilities.valueFromHiddenInput("foo", "not there"));
 
     handler.shutdown();
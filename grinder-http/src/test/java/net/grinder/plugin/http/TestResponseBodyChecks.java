@@ -0,0 +1,96 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.security.NoSuchAlgorithmException;
+
+import net.grinder.plugin.http.ResponseBodyCheck.Digest;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link ResponseBodyChecks}.
+ *
+ * @author Philip Aston
+ */
+public class TestResponseBodyChecks {
+
+  private static String check(final ResponseBodyCheck check,
+                              final String body,
+                              final int blockSize) {
+    final byte[] bytes = body.getBytes();
+    final Digest digest = check.start();
+
+    for (int i = 0; i < bytes.length; i += blockSize) {
+      digest.update(bytes, i, Math.min(blockSize, bytes.length - i));
+    }
+
+    return digest.check(bytes.length);
+  }
+
+  @Test public void testChecksum() throws Exception {
+    final ResponseBodyCheck check =
+      ResponseBodyChecks.checksum("MD5", "9E107D9D372BB6826BD81D3542A419D6");
+
+    final String body = "The quick brown fox jumps over the lazy dog";
+
+    assertNull(check(check, body, 1));
+    assertNull(check(check, body, 7));
+    assertNull(check(check, body, 1000));
+    assertNotNull(check(check, body + ".", 7));
+
+    try {
+      ResponseBodyChecks.checksum("MD99", "");
+      fail("Expected NoSuchAlgorithmException");
+    }
+    catch (final NoSuchAlgorithmException e) {
+    }
+  }
+
+  @Test public void testContains() throws Exception {
+    final ResponseBodyCheck check = ResponseBodyChecks.contains("abac");
+
+    // Matches that span blocks, and partial matches that must back track.
+    assertNull(check(check, "ababac", 1));
+    assertNull(check(check, "xxabaabacxx", 3));
+    assertNull(check(check, "abac", 4));
+    assertNotNull(check(check, "abab", 1));
+    assertNotNull(check(check, "", 1));
+
+    assertNull(check(ResponseBodyChecks.contains(""), "", 1));
+  }
+
+  @Test public void testLength() throws Exception {
+    final ResponseBodyCheck check = ResponseBodyChecks.length(2, 3);
+
+    assertNotNull(check(check, "a", 1));
+    assertNull(check(check, "ab", 1));
+    assertNull(check(check, "abc", 2));
+    assertEquals("body length 4 is outside [2, 3]", check(check, "abcd", 2));
+  }
+}
@@ -0,0 +1,541 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import static net.grinder.plugin.http.http2.Http2Connection.FLAG_ACK;
+import static net.grinder.plugin.http.http2.Http2Connection.FLAG_END_HEADERS;
+import static net.grinder.plugin.http.http2.Http2Connection.FLAG_END_STREAM;
+import static net.grinder.plugin.http.http2.Http2Connection.FRAME_CONTINUATION;
+import static net.grinder.plugin.http.http2.Http2Connection.FRAME_DATA;
+import static net.grinder.plugin.http.http2.Http2Connection.FRAME_GOAWAY;
+import static net.grinder.plugin.http.http2.Http2Connection.FRAME_HEADERS;
+import static net.grinder.plugin.http.http2.Http2Connection.FRAME_PING;
+import static net.grinder.plugin.http.http2.Http2Connection.FRAME_RST_STREAM;
+import static net.grinder.plugin.http.http2.Http2Connection.FRAME_SETTINGS;
+import static net.grinder.plugin.http.http2.Http2Connection.FRAME_WINDOW_UPDATE;
+import static net.grinder.plugin.http.http2.Http2Connection.MAXIMUM_FRAME_SIZE;
+import static net.grinder.plugin.http.http2.Http2Connection.NO_ERROR;
+import static net.grinder.plugin.http.http2.Http2Connection.PREFACE;
+import static net.grinder.plugin.http.http2.Http2Connection.SETTINGS_INITIAL_WINDOW_SIZE;
+import static net.grinder.plugin.http.http2.Http2Connection.SETTINGS_MAX_CONCURRENT_STREAMS;
+import static net.grinder.plugin.http.http2.Http2Connection.getInt;
+import static net.grinder.plugin.http.http2.Http2Connection.putInt;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import HTTPClient.NVPair;
+
+
+/**
+ * In-process HTTP/2 server for tests. Accepts h2c connections with prior
+ * knowledge, and responds to each request with its path and body. Response
+ * bodies respect the client's flow control windows.
+ *
+ * @author Philip Aston
+ */
+class Http2TestServer implements Runnable {
+
+  private final ServerSocket m_serverSocket;
+  private final List<Socket> m_sockets =
+    Collections.synchronizedList(new ArrayList<Socket>());
+
+  private final AtomicInteger m_connections = new AtomicInteger();
+  private final AtomicInteger m_activeStreams = new AtomicInteger();
+  private final AtomicInteger m_maximumActiveStreams = new AtomicInteger();
+
+  private final List<List<NVPair>> m_requests =
+    Collections.synchronizedList(new ArrayList<List<NVPair>>());
+
+  private final List<Integer> m_resetErrorCodes =
+    Collections.synchronizedList(new ArrayList<Integer>());
+
+  private final List<Integer> m_goAwayErrorCodes =
+    Collections.synchronizedList(new ArrayList<Integer>());
+
+  private final AtomicLong m_bodyBytesSent = new AtomicLong();
+
+  private volatile int m_maximumConcurrentStreams = 0;
+  private volatile long m_responseDelay = 0;
+  private volatile int m_goAwayRequests = 0;
+  private volatile int m_responseBodySize = -1;
+  private volatile int m_continuationFrames = 0;
+
+  public Http2TestServer() throws IOException {
+    m_serverSocket = new ServerSocket(0);
+    new Thread(this, getClass().getName()).start();
+  }
+
+  public void shutdown() throws IOException {
+    m_serverSocket.close();
+
+    synchronized (m_sockets) {
+      for (final Socket socket : m_sockets) {
+        socket.close();
+      }
+    }
+  }
+
+  public int getPort() {
+    return m_serverSocket.getLocalPort();
+  }
+
+  /** Advertise a limit on concurrent streams. {@code 0} means no limit. */
+  public void setMaximumConcurrentStreams(final int n) {
+    m_maximumConcurrentStreams = n;
+  }
+
+  public void setResponseDelay(final long milliseconds) {
+    m_responseDelay = milliseconds;
+  }
+
+  /** Respond to the next {@code n} requests with GOAWAY. */
+  public void setGoAwayRequests(final int n) {
+    m_goAwayRequests = n;
+  }
+
+  /**
+   * Respond with a body of {@code n} bytes, rather than the path and
+   * request body. {@code -1} restores the default.
+   */
+  public void setResponseBodySize(final int n) {
+    m_responseBodySize = n;
+  }
+
+  /**
+   * Follow the response HEADERS frame with {@code n} full CONTINUATION
+   * frames, and no end to the header block.
+   */
+  public void setContinuationFrames(final int n) {
+    m_continuationFrames = n;
+  }
+
+  /** The number of response body bytes sent to clients. */
+  public long getBodyBytesSent() {
+    return m_bodyBytesSent.get();
+  }
+
+  public int getConnections() {
+    return m_connections.get();
+  }
+
+  public int getMaximumActiveStreams() {
+    return m_maximumActiveStreams.get();
+  }
+
+  public List<List<NVPair>> getRequests() {
+    synchronized (m_requests) {
+      return new ArrayList<List<NVPair>>(m_requests);
+    }
+  }
+
+  /** The error codes of the RST_STREAM frames received from clients. */
+  public List<Integer> getResetErrorCodes() {
+    synchronized (m_resetErrorCodes) {
+      return new ArrayList<Integer>(m_resetErrorCodes);
+    }
+  }
+
+  /** The error codes of the GOAWAY frames received from clients. */
+  public List<Integer> getGoAwayErrorCodes() {
+    synchronized (m_goAwayErrorCodes) {
+      return new ArrayList<Integer>(m_goAwayErrorCodes);
+    }
+  }
+
+  public static String getHeader(final List<NVPair> headers,
+                                 final String name) {
+    for (final NVPair header : headers) {
+      if (header.getName().equals(name)) {
+        return header.getValue();
+      }
+    }
+
+    return null;
+  }
+
+  public void run() {
+    try {
+      while (true) {
+        final Socket socket = m_serverSocket.accept();
+        m_sockets.add(socket);
+        m_connections.incrementAndGet();
+
+        new Thread(new Runnable() {
+            public void run() {
+              try {
+                new ServerConnection(socket).serve();
+              }
+              catch (final IOException e) {
+                // Client went away.
+              }
+            }
+          },
+          "Http2TestServer connection").start();
+      }
+    }
+    catch (final IOException e) {
+      // Shut down.
+    }
+  }
+
+  private final class ServerConnection {
+    private final Socket m_socket;
+    private final DataInputStream m_in;
+    private final OutputStream m_out;
+    private final HpackDecoder m_decoder =
+      new HpackDecoder(HeaderTable.DEFAULT_MAXIMUM_SIZE);
+    private final HpackEncoder m_encoder = new HpackEncoder();
+
+    private final Map<Integer, List<NVPair>> m_headers =
+      new HashMap<Integer, List<NVPair>>();
+    private final Map<Integer, ByteArrayOutputStream> m_bodies =
+      new HashMap<Integer, ByteArrayOutputStream>();
+
+    // Guarded by this.
+    private final Map<Integer, Long> m_sendWindows =
+      new HashMap<Integer, Long>();
+    private long m_connectionSendWindow = 65535;
+    private long m_initialSendWindow = 65535;
+    private boolean m_closed = false;
+
+    public ServerConnection(final Socket socket) throws IOException {
+      m_socket = socket;
+      m_in =
+        new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      m_out = socket.getOutputStream();
+    }
+
+    public void serve() throws IOException {
+      try {
+        serveFrames();
+      }
+      finally {
+        synchronized (this) {
+          m_closed = true;
+          notifyAll();
+        }
+      }
+    }
+
+    private void serveFrames() throws IOException {
+      final byte[] preface = new byte[PREFACE.length];
+      m_in.readFully(preface);
+
+      if (!Arrays.equals(preface, PREFACE)) {
+        throw new IOException("Bad preface");
+      }
+
+      final int maximumConcurrentStreams = m_maximumConcurrentStreams;
+
+      if (maximumConcurrentStreams > 0) {
+        final byte[] settings = new byte[6];
+        settings[1] = SETTINGS_MAX_CONCURRENT_STREAMS;
+        putInt(settings, 2, maximumConcurrentStreams);
+        writeFrame(FRAME_SETTINGS, 0, 0, settings);
+      }
+      else {
+        writeFrame(FRAME_SETTINGS, 0, 0, new byte[0]);
+      }
+
+      final byte[] header = new byte[9];
+      final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+
+      while (true) {
+        m_in.readFully(header);
+
+        final int length = ((header[0] & 0xff) << 16) |
+                           ((header[1] & 0xff) << 8) |
+                           (header[2] & 0xff);
+        final int type = header[3];
+        final int flags = header[4];
+        final int streamID = getInt(header, 5);
+
+        final byte[] payload = new byte[length];
+        m_in.readFully(payload);
+
+        switch (type) {
+        case FRAME_SETTINGS:
+          if ((flags & FLAG_ACK) == 0) {
+            for (int i = 0; i < payload.length; i += 6) {
+              if (payload[i + 1] == SETTINGS_INITIAL_WINDOW_SIZE) {
+                setInitialSendWindow(getInt(payload, i + 2));
+              }
+            }
+
+            writeFrame(FRAME_SETTINGS, FLAG_ACK, 0, new byte[0]);
+          }
+          break;
+
+        case FRAME_WINDOW_UPDATE:
+          windowUpdate(streamID, getInt(payload, 0));
+          break;
+
+        case FRAME_PING:
+          writeFrame(FRAME_PING, FLAG_ACK, 0, payload);
+          break;
+
+        case FRAME_HEADERS:
+        case FRAME_CONTINUATION:
+          if (type == FRAME_HEADERS) {
+            headerBlock.reset();
+            m_bodies.put(streamID, new ByteArrayOutputStream());
+
+            synchronized (this) {
+              m_sendWindows.put(streamID, m_initialSendWindow);
+            }
+          }
+
+          headerBlock.write(payload);
+
+          if ((flags & FLAG_END_HEADERS) != 0) {
+            final byte[] block = headerBlock.toByteArray();
+            m_headers.put(streamID, m_decoder.decode(block, 0, block.length));
+          }
+
+          if ((flags & FLAG_END_STREAM) != 0) {
+            request(streamID);
+          }
+          break;
+
+        case FRAME_DATA:
+          m_bodies.get(streamID).write(payload);
+
+          if ((flags & FLAG_END_STREAM) != 0) {
+            request(streamID);
+          }
+          break;
+
+        case FRAME_RST_STREAM:
+          m_bodies.remove(streamID);
+          m_resetErrorCodes.add(getInt(payload, 0));
+
+          synchronized (this) {
+            m_sendWindows.remove(streamID);
+            notifyAll();
+          }
+          break;
+
+        case FRAME_GOAWAY:
+          m_goAwayErrorCodes.add(getInt(payload, 4));
+          m_socket.close();
+          return;
+
+        default:
+          break;
+        }
+      }
+    }
+
+    private void request(final int streamID) throws IOException {
+      final List<NVPair> headers = m_headers.remove(streamID);
+      final byte[] body = m_bodies.remove(streamID).toByteArray();
+
+      m_requests.add(headers);
+
+      if (m_goAwayRequests > 0) {
+        --m_goAwayRequests;
+
+        final byte[] payload = new byte[8];
+        putInt(payload, 0, 0);
+        putInt(payload, 4, NO_ERROR);
+        writeFrame(FRAME_GOAWAY, 0, 0, payload);
+        m_socket.shutdownOutput();
+        return;
+      }
+
+      final int active = m_activeStreams.incrementAndGet();
+
+      synchronized (m_maximumActiveStreams) {
+        if (active > m_maximumActiveStreams.get()) {
+          m_maximumActiveStreams.set(active);
+        }
+      }
+
+      new Thread(new Runnable() {
+          public void run() {
+            try {
+              Thread.sleep(m_responseDelay);
+              respond(streamID, headers, body);
+            }
+            catch (final Exception e) {
+              // Client went away.
+            }
+            finally {
+              m_activeStreams.decrementAndGet();
+            }
+          }
+        }).start();
+    }
+
+    private void respond(final int streamID,
+                         final List<NVPair> requestHeaders,
+                         final byte[] requestBody)
+      throws IOException {
+
+      final ByteArrayOutputStream body = new ByteArrayOutputStream();
+      final int bodySize = m_responseBodySize;
+
+      if (bodySize >= 0) {
+        body.write(new byte[bodySize]);
+      }
+      else {
+        body.write(getHeader(requestHeaders, ":path").getBytes("US-ASCII"));
+        body.write(requestBody);
+      }
+
+      final List<NVPair> headers = new ArrayList<NVPair>();
+      headers.add(new NVPair(":status", "200"));
+      headers.add(new NVPair("content-type", "text/plain"));
+      headers.add(new NVPair("x-method",
+                             getHeader(requestHeaders, ":method")));
+
+      final int continuationFrames = m_continuationFrames;
+
+      synchronized (this) {
+        final ByteArrayOutputStream block = new ByteArrayOutputStream();
+        m_encoder.encode(headers, block);
+
+        if (continuationFrames > 0) {
+          writeFrame(FRAME_HEADERS, 0, streamID, block.toByteArray());
+
+          for (int i = 0; i < continuationFrames; ++i) {
+            writeFrame(FRAME_CONTINUATION, 0, streamID,
+                       new byte[MAXIMUM_FRAME_SIZE]);
+          }
+
+          return;
+        }
+
+        writeFrame(FRAME_HEADERS, FLAG_END_HEADERS, streamID,
+                   block.toByteArray());
+      }
+
+      writeData(streamID, body.toByteArray());
+    }
+
+    private void writeData(final int streamID, final byte[] data)
+      throws IOException {
+
+      int offset = 0;
+
+      do {
+        synchronized (this) {
+          while (!m_closed &&
+                 m_sendWindows.containsKey(streamID) &&
+                 offset < data.length &&
+                 Math.min(m_connectionSendWindow,
+                          m_sendWindows.get(streamID)) <= 0) {
+            try {
+              wait();
+            }
+            catch (final InterruptedException e) {
+              throw new IOException(e.getMessage());
+            }
+          }
+
+          if (m_closed || !m_sendWindows.containsKey(streamID)) {
+            return;
+          }
+
+          final int length =
+            (int) Math.min(Math.min(data.length - offset, MAXIMUM_FRAME_SIZE),
+                           Math.min(m_connectionSendWindow,
+                                    m_sendWindows.get(streamID)));
+
+          m_connectionSendWindow -= length;
+          m_sendWindows.put(streamID, m_sendWindows.get(streamID) - length);
+
+          final boolean last = offset + length == data.length;
+
+          writeFrame(FRAME_DATA, last ? FLAG_END_STREAM : 0, streamID,
+                     Arrays.copyOfRange(data, offset, offset + length));
+
+          m_bodyBytesSent.addAndGet(length);
+          offset += length;
+
+          if (last) {
+            m_sendWindows.remove(streamID);
+          }
+        }
+      }
+      while (offset < data.length);
+    }
+
+    private synchronized void setInitialSendWindow(final long window) {
+      for (final Map.Entry<Integer, Long> entry : m_sendWindows.entrySet()) {
+        entry.setValue(entry.getValue() + window - m_initialSendWindow);
+      }
+
+      m_initialSendWindow = window;
+      notifyAll();
+    }
+
+    private synchronized void windowUpdate(final int streamID,
+                                           final long increment) {
+      if (streamID == 0) {
+        m_connectionSendWindow += increment;
+      }
+      else {
+        final Long window = m_sendWindows.get(streamID);
+
+        if (window != null) {
+          m_sendWindows.put(streamID, window + increment);
+        }
+      }
+
+      notifyAll();
+    }
+
+    private synchronized void writeFrame(final int type,
+                                         final int flags,
+                                         final int streamID,
+                                         final byte[] payload)
+      throws IOException {
+
+      final byte[] header = new byte[9];
+      header[0] = (byte) (payload.length >>> 16);
+      header[1] = (byte) (payload.length >>> 8);
+      header[2] = (byte) payload.length;
+      header[3] = (byte) type;
+      header[4] = (byte) flags;
+      putInt(header, 5, streamID);
+
+      m_out.write(header);
+      m_out.write(payload);
+      m_out.flush();
+    }
+  }
+}
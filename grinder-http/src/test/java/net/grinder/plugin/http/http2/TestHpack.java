@@ -0,0 +1,256 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import HTTPClient.NVPair;
+
+
+/**
+ * Unit tests for {@link HpackEncoder}, {@link HpackDecoder}, and
+ * {@link Huffman}.
+ *
+ * @author Philip Aston
+ */
+public class TestHpack {
+
+  private static byte[] hex(final String s) {
+    final String digits = s.replace(" ", "");
+    final byte[] result = new byte[digits.length() / 2];
+
+    for (int i = 0; i < result.length; ++i) {
+      result[i] =
+        (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+    }
+
+    return result;
+  }
+
+  private static List<NVPair> decode(final HpackDecoder decoder,
+                                     final String hex)
+    throws IOException {
+    final byte[] bytes = hex(hex);
+    return decoder.decode(bytes, 0, bytes.length);
+  }
+
+  private static void assertHeaders(final List<NVPair> expected,
+                                    final List<NVPair> actual) {
+    assertEquals(expected.size(), actual.size());
+
+    for (int i = 0; i < expected.size(); ++i) {
+      assertEquals(expected.get(i).getName(), actual.get(i).getName());
+      assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+    }
+  }
+
+  /** RFC 7541, C.3. */
+  @Test public void testDecodeRequestsWithoutHuffman() throws Exception {
+    final HpackDecoder decoder = new HpackDecoder(4096);
+
+    assertHeaders(asList(new NVPair(":method", "GET"),
+                         new NVPair(":scheme", "http"),
+                         new NVPair(":path", "/"),
+                         new NVPair(":authority", "www.example.com")),
+                  decode(decoder,
+                         "8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d"));
+
+    assertHeaders(asList(new NVPair(":method", "GET"),
+                         new NVPair(":scheme", "http"),
+                         new NVPair(":path", "/"),
+                         new NVPair(":authority", "www.example.com"),
+                         new NVPair("cache-control", "no-cache")),
+                  decode(decoder, "8286 84be 5808 6e6f 2d63 6163 6865"));
+
+    assertHeaders(asList(new NVPair(":method", "GET"),
+                         new NVPair(":scheme", "https"),
+                         new NVPair(":path", "/index.html"),
+                         new NVPair(":authority", "www.example.com"),
+                         new NVPair("custom-key", "custom-value")),
+                  decode(decoder,
+                         "8287 85bf 400a 6375 7374 6f6d 2d6b 6579 0c63 7573" +
+                         "746f 6d2d 7661 6c75 65"));
+  }
+
+  /** RFC 7541, C.4. */
+  @Test public void testDecodeRequestsWithHuffman() throws Exception {
+    final HpackDecoder decoder = new HpackDecoder(4096);
+
+    assertHeaders(asList(new NVPair(":method", "GET"),
+                         new NVPair(":scheme", "http"),
+                         new NVPair(":path", "/"),
+                         new NVPair(":authority", "www.example.com")),
+                  decode(decoder,
+                         "8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"));
+
+    assertHeaders(asList(new NVPair(":method", "GET"),
+                         new NVPair(":scheme", "http"),
+                         new NVPair(":path", "/"),
+                         new NVPair(":authority", "www.example.com"),
+                         new NVPair("cache-control", "no-cache")),
+                  decode(decoder, "8286 84be 5886 a8eb 1064 9cbf"));
+
+    assertHeaders(asList(new NVPair(":method", "GET"),
+                         new NVPair(":scheme", "https"),
+                         new NVPair(":path", "/index.html"),
+                         new NVPair(":authority", "www.example.com"),
+                         new NVPair("custom-key", "custom-value")),
+                  decode(decoder,
+                         "8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b" +
+                         "b8e8 b4bf"));
+  }
+
+  @Test public void testDynamicTableEviction() throws Exception {
+    final HeaderTable table = new HeaderTable();
+    table.setMaximumSize(100);
+
+    table.add(new NVPair("a", "1"));
+    table.add(new NVPair("b", "2"));
+    table.add(new NVPair("c", "3"));
+    assertEquals(68, table.getSize());
+    assertEquals("c", table.get(62).getName());
+    assertEquals("b", table.get(63).getName());
+
+    try {
+      table.get(64);
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+
+    table.setMaximumSize(34);
+    assertEquals(34, table.getSize());
+    assertEquals("c", table.get(62).getName());
+
+    table.add(new NVPair("long", "this entry is too large for the table"));
+    assertEquals(0, table.getSize());
+  }
+
+  @Test public void testTableSizeUpdate() throws Exception {
+    final HpackDecoder decoder = new HpackDecoder(4096);
+
+    // Size update to 0, then an indexed field.
+    assertHeaders(asList(new NVPair(":method", "GET")),
+                  decode(decoder, "2082"));
+
+    try {
+      decode(decoder, "3fe21f");
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+
+    try {
+      decode(decoder, "8220");
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+  }
+
+  @Test public void testRoundTrip() throws Exception {
+    final List<NVPair> headers = new ArrayList<NVPair>();
+    headers.add(new NVPair(":method", "POST"));
+    headers.add(new NVPair(":path", "/some/path?query=1"));
+    headers.add(new NVPair("content-type", "text/html; charset=utf-8"));
+    headers.add(new NVPair("authorization", "Basic c2VjcmV0"));
+    headers.add(new NVPair("x-custom", ""));
+
+    final StringBuilder binary = new StringBuilder();
+
+    for (int i = 0; i < 256; ++i) {
+      binary.append((char) i);
+    }
+
+    headers.add(new NVPair("x-binary", binary.toString()));
+
+    final StringBuilder longValue = new StringBuilder();
+
+    for (int i = 0; i < 1000; ++i) {
+      longValue.append(i);
+    }
+
+    headers.add(new NVPair("x-long", longValue.toString()));
+
+    final HpackEncoder encoder = new HpackEncoder();
+    final HpackDecoder decoder = new HpackDecoder(4096);
+
+    for (int i = 0; i < 2; ++i) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      encoder.encode(headers, out);
+      final byte[] bytes = out.toByteArray();
+
+      assertHeaders(headers, decoder.decode(bytes, 0, bytes.length));
+    }
+  }
+
+  @Test public void testHuffman() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Huffman.encode("www.example.com", out);
+
+    final byte[] bytes = out.toByteArray();
+    assertEquals(hex("f1e3 c2e5 f23a 6ba0 ab90 f4ff").length, bytes.length);
+    assertEquals(bytes.length, Huffman.encodedLength("www.example.com"));
+    assertEquals("www.example.com", Huffman.decode(bytes, 0, bytes.length));
+
+    final byte[] expected = hex("f1e3 c2e5 f23a 6ba0 ab90 f4ff");
+
+    for (int i = 0; i < expected.length; ++i) {
+      assertEquals(expected[i], bytes[i]);
+    }
+
+    assertEquals("", Huffman.decode(bytes, 0, 0));
+
+    // Padding longer than 7 bits.
+    try {
+      Huffman.decode(hex("ffff"), 0, 2);
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+
+    // Padding that isn't a prefix of EOS. '0' is 00000.
+    try {
+      Huffman.decode(hex("00"), 0, 1);
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+
+    // EOS.
+    try {
+      Huffman.decode(hex("ffff ffff"), 0, 4);
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+  }
+}
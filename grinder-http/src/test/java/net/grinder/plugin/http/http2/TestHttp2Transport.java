@@ -0,0 +1,361 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.http2;
+
+import static java.util.Collections.singletonList;
+import static net.grinder.plugin.http.http2.Http2Connection.CANCEL;
+import static net.grinder.plugin.http.http2.Http2Connection.ENHANCE_YOUR_CALM;
+import static net.grinder.plugin.http.http2.Http2Connection.MAXIMUM_FRAME_SIZE;
+import static net.grinder.plugin.http.http2.Http2Connection.MAXIMUM_HEADER_BLOCK_SIZE;
+import static net.grinder.plugin.http.http2.Http2Connection.NO_ERROR;
+import static net.grinder.plugin.http.http2.Http2Connection.STREAM_RECEIVE_WINDOW;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import HTTPClient.HTTPConnection;
+import HTTPClient.HTTPResponse;
+import HTTPClient.NVPair;
+import HTTPClient.RoRequest;
+
+
+/**
+ * Unit tests for {@link Http2Transport}.
+ *
+ * @author Philip Aston
+ */
+public class TestHttp2Transport {
+
+  private Http2TestServer m_server;
+  private Http2Transport m_transport;
+
+  @Before public void setUp() throws Exception {
+    m_server = new Http2TestServer();
+    m_transport = new Http2Transport();
+  }
+
+  @After public void tearDown() throws Exception {
+    m_transport.close();
+    m_server.shutdown();
+  }
+
+  private HTTPConnection createConnection() {
+    final HTTPConnection connection =
+      new HTTPConnection("localhost", m_server.getPort());
+    connection.setTransport(m_transport);
+    return connection;
+  }
+
+  @Test public void testGet() throws Exception {
+    final HTTPConnection connection = createConnection();
+
+    final HTTPResponse response = connection.Get("/foo?x=1");
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals("HTTP/2.0", response.getVersion());
+    assertEquals("text/plain", response.getHeader("Content-Type"));
+    assertEquals("/foo?x=1", response.getText());
+
+    final List<NVPair> request = m_server.getRequests().get(0);
+    assertEquals("GET", Http2TestServer.getHeader(request, ":method"));
+    assertEquals("/foo?x=1", Http2TestServer.getHeader(request, ":path"));
+    assertEquals("http", Http2TestServer.getHeader(request, ":scheme"));
+    assertEquals("localhost:" + m_server.getPort(),
+                 Http2TestServer.getHeader(request, ":authority"));
+    assertNull(Http2TestServer.getHeader(request, "connection"));
+    assertNull(Http2TestServer.getHeader(request, "host"));
+
+    assertEquals(1, connection.getConnectionsEstablished());
+    assertEquals(1,
+      m_transport.getNumberOfConnections("http",
+                                         "localhost",
+                                         m_server.getPort()));
+
+    connection.Get("/bar");
+    assertEquals(1, connection.getConnectionsEstablished());
+  }
+
+  @Test public void testPost() throws Exception {
+    final HTTPConnection connection = createConnection();
+
+    final HTTPResponse response =
+      connection.Post("/echo", "hello world".getBytes());
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals("POST", response.getHeader("x-method"));
+    assertEquals("/echohello world", response.getText());
+
+    final List<NVPair> request = m_server.getRequests().get(0);
+    assertEquals("11",
+                 Http2TestServer.getHeader(request, "content-length"));
+  }
+
+  private void runConcurrently(final int n) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(n);
+
+    try {
+      final List<Future<String>> results = new ArrayList<Future<String>>();
+
+      for (int i = 0; i < n; ++i) {
+        final String path = "/" + i;
+
+        results.add(executor.submit(new Callable<String>() {
+            public String call() throws Exception {
+              // Each worker thread has its own HTTPConnection.
+              return createConnection().Get(path).getText();
+            }
+          }));
+      }
+
+      for (int i = 0; i < n; ++i) {
+        assertEquals("/" + i, results.get(i).get());
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void testMultiplexing() throws Exception {
+    m_server.setResponseDelay(200);
+
+    runConcurrently(10);
+
+    assertEquals(1, m_server.getConnections());
+    assertTrue(m_server.getMaximumActiveStreams() > 1);
+  }
+
+  @Test public void testMaximumConcurrentStreams() throws Exception {
+    m_server.setMaximumConcurrentStreams(2);
+    m_server.setResponseDelay(200);
+
+    // Establish the first connection so that the limit is known.
+    createConnection().Get("/");
+
+    runConcurrently(6);
+
+    assertTrue(m_server.getConnections() > 1);
+    assertTrue(m_server.getMaximumActiveStreams() <=
+               2 * m_server.getConnections());
+  }
+
+  @Test public void testTimeout() throws Exception {
+    m_server.setResponseDelay(2000);
+
+    final HTTPConnection connection = createConnection();
+    connection.setTimeout(100);
+
+    try {
+      connection.Get("/");
+      fail("Expected InterruptedIOException");
+    }
+    catch (final InterruptedIOException e) {
+    }
+
+    m_server.setResponseDelay(0);
+    connection.setTimeout(0);
+    assertEquals("/again", connection.Get("/again").getText());
+  }
+
+  @Test public void testTimeoutSendingBody() throws Exception {
+    m_server.setMaximumConcurrentStreams(1);
+
+    final HTTPConnection connection = createConnection();
+    assertEquals("/", connection.Get("/").getText());
+
+    connection.setTimeout(100);
+
+    // The server never grants more flow control credit, so the body can't
+    // be sent.
+    try {
+      connection.Post("/", new byte[100000]);
+      fail("Expected InterruptedIOException");
+    }
+    catch (final InterruptedIOException e) {
+    }
+
+    for (int i = 0; m_server.getResetErrorCodes().isEmpty() && i < 10; ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    assertEquals(singletonList(CANCEL), m_server.getResetErrorCodes());
+
+    // The stream no longer counts against the server's limit.
+    connection.setTimeout(0);
+    assertEquals("/again", connection.Get("/again").getText());
+    assertEquals(1, m_server.getConnections());
+  }
+
+  @Test public void testResponseBodyFlowControl() throws Exception {
+    final int size = 3 * STREAM_RECEIVE_WINDOW;
+    m_server.setResponseBodySize(size);
+
+    final HTTPConnection connection = createConnection();
+    final InputStream in = connection.Get("/").getInputStream();
+
+    // Until we read the body, the server can only fill the stream window.
+    for (int i = 0;
+         m_server.getBodyBytesSent() < STREAM_RECEIVE_WINDOW && i < 10;
+         ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    Thread.sleep(100);
+    assertEquals(STREAM_RECEIVE_WINDOW, m_server.getBodyBytesSent());
+
+    final byte[] buffer = new byte[8192];
+    long length = 0;
+
+    for (int n; (n = in.read(buffer)) != -1;) {
+      length += n;
+    }
+
+    assertEquals(size, length);
+    assertEquals(size, m_server.getBodyBytesSent());
+  }
+
+  @Test public void testCloseResponseBody() throws Exception {
+    m_server.setMaximumConcurrentStreams(1);
+    m_server.setResponseBodySize(2 * STREAM_RECEIVE_WINDOW);
+
+    final HTTPConnection connection = createConnection();
+    connection.Get("/").getInputStream().close();
+
+    for (int i = 0; m_server.getResetErrorCodes().isEmpty() && i < 10; ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    assertEquals(singletonList(CANCEL), m_server.getResetErrorCodes());
+
+    // The stream no longer counts against the server's limit.
+    m_server.setResponseBodySize(-1);
+    assertEquals("/again", connection.Get("/again").getText());
+    assertEquals(1, m_server.getConnections());
+  }
+
+  @Test public void testCloseConnection() throws Exception {
+    final HTTPConnection connection1 = createConnection();
+    final HTTPConnection connection2 = createConnection();
+
+    assertEquals("/1", connection1.Get("/1").getText());
+    assertEquals("/2", connection2.Get("/2").getText());
+
+    m_server.setResponseBodySize(2 * STREAM_RECEIVE_WINDOW);
+    final InputStream in = connection1.Get("/").getInputStream();
+
+    // Closing one user of the connection cancels its outstanding streams,
+    // but leaves the connection open for the other.
+    m_transport.close(connection1);
+
+    try {
+      while (in.read() != -1) { }
+      fail("Expected IOException");
+    }
+    catch (final IOException e) {
+    }
+
+    for (int i = 0; m_server.getResetErrorCodes().isEmpty() && i < 10; ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    assertEquals(singletonList(CANCEL), m_server.getResetErrorCodes());
+    assertEquals(1,
+      m_transport.getNumberOfConnections("http",
+                                         "localhost",
+                                         m_server.getPort()));
+
+    m_transport.close(connection2);
+
+    assertEquals(0,
+      m_transport.getNumberOfConnections("http",
+                                         "localhost",
+                                         m_server.getPort()));
+
+    for (int i = 0; m_server.getGoAwayErrorCodes().isEmpty() && i < 10; ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    assertEquals(singletonList(NO_ERROR), m_server.getGoAwayErrorCodes());
+
+    // A closed connection can be used again.
+    m_server.setResponseBodySize(-1);
+    assertEquals("/3", connection1.Get("/3").getText());
+    assertEquals(2, m_server.getConnections());
+  }
+
+  @Test public void testHeaderBlockTooLarge() throws Exception {
+    m_server.setContinuationFrames(
+      MAXIMUM_HEADER_BLOCK_SIZE / MAXIMUM_FRAME_SIZE + 1);
+
+    try {
+      createConnection().Get("/");
+      fail("Expected Http2Exception");
+    }
+    catch (final Http2Exception e) {
+      assertEquals(ENHANCE_YOUR_CALM, e.getErrorCode());
+    }
+
+    for (int i = 0; m_server.getGoAwayErrorCodes().isEmpty() && i < 10; ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    assertEquals(singletonList(ENHANCE_YOUR_CALM),
+                 m_server.getGoAwayErrorCodes());
+  }
+
+  @Test public void testGoAway() throws Exception {
+    final HTTPConnection connection = createConnection();
+
+    m_server.setGoAwayRequests(1);
+
+    assertEquals("/", connection.Get("/").getText());
+    assertEquals(2, m_server.getConnections());
+  }
+
+  @Test public void testProxy() throws Exception {
+    final HTTPConnection connection = createConnection();
+    connection.setCurrentProxy("localhost", 1);
+
+    final RoRequest request = mock(RoRequest.class);
+    when(request.getConnection()).thenReturn(connection);
+
+    assertNull(m_transport.sendRequest(request, 0));
+    assertEquals(0, m_server.getConnections());
+  }
+}
@@ -307,15 +307,21 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
     /** hack to disable trailers */
     private static boolean       noTrailers = false;
 
-    /** hack to capture DNS lookup time */
+    /** hack to capture DNS lookup time, in microseconds */
     private        AtomicLong          DNS_time = new AtomicLong();
 
-    /** hack to capture Initial Connection time */
+    /** hack to capture Initial Connection time, in microseconds */
     private        AtomicLong          con_time = new AtomicLong();
     private        AtomicLong          connectionsEstablished = new AtomicLong();
 
+    /** hack to capture SSL handshake time, in microseconds */
+    private        AtomicLong          handshake_time = new AtomicLong();
+
     public interface TimeAuthority {
       long getTimeInMilliseconds();
+
+      /** A high resolution timer with an arbitrary base time. */
+      long getTimeInNanoseconds();
     }
 
     private static TimeAuthority standardTimeAuthority =
@@ -323,6 +329,10 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
         public long getTimeInMilliseconds() {
           return System.currentTimeMillis();
         }
+
+        public long getTimeInNanoseconds() {
+          return System.nanoTime();
+        }
       };
 
     private TimeAuthority timeAuthority = standardTimeAuthority;
@@ -2225,6 +2235,27 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
     }
 
 
+    /** ++GRINDER MODIFICATION **/
+    /**
+     * Replaces the context. Unlike {@link #setContext(java.lang.Object)},
+     * this may be called after the context has been set. This allows a
+     * connection to be used by several independent clients in turn, each
+     * with its own context. The caller must ensure that no requests are
+     * in progress.
+     *
+     * @param context the new context; must be non-null
+     * @exception IllegalArgumentException if <var>context</var> is null
+     */
+    public void replaceContext(Object context)
+    {
+	if (context == null)
+	    throw new IllegalArgumentException("Context must be non-null");
+
+	Context = context;
+    }
+    /** --GRINDER MODIFICATION **/
+
+
     /**
      * Returns the current context.
      *
@@ -3049,9 +3080,131 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
         LocalPort = localPort;
     }
 
-    final InetAddress getLocalAddress() {
+    public final InetAddress getLocalAddress() {
       return LocalAddr;
     }
+
+    /**
+     * An alternative transport for this connection's requests, such as
+     * HTTP/2. Requests are passed to the transport after the modules have
+     * processed them, in place of being written to this connection's socket.
+     */
+    public interface Transport
+    {
+	/**
+	 * Send a request.
+	 *
+	 * @param req         the request
+	 * @param con_timeout the timeout to use when establishing a connection
+	 *                    and reading the response
+	 * @return the response, or <code>null</code> if the transport can't
+	 *         handle the request, in which case it is sent on this
+	 *         connection's socket
+	 * @exception IOException     if an I/O error occurs
+	 * @exception ModuleException if the request can't be sent
+	 */
+	Response sendRequest(RoRequest req, int con_timeout)
+	    throws IOException, ModuleException;
+    }
+
+    private volatile Transport transport = null;
+
+    /**
+     * Set the transport used to send requests.
+     *
+     * @param transport the transport, or <code>null</code> to use this
+     *                  connection's socket
+     */
+    public final void setTransport(Transport transport)
+    {
+	this.transport = transport;
+    }
+
+    public final Transport getTransport()
+    {
+	return transport;
+    }
+
+    /**
+     * Record a connection established for this connection's requests by a
+     * {@link Transport}.
+     *
+     * @param dnsTime     the time taken to resolve the host name, in
+     *                    microseconds
+     * @param connectTime the time taken to establish the connection, in
+     *                    microseconds
+     * @param handshakeTime the time taken to complete the SSL handshake, in
+     *                    microseconds
+     */
+    public final void connectionEstablished(long dnsTime,
+					    long connectTime,
+					    long handshakeTime)
+    {
+	DNS_time.set(dnsTime);
+	con_time.set(connectTime);
+	handshake_time.set(handshakeTime);
+	connectionsEstablished.incrementAndGet();
+    }
+
+    /**
+     * Resolves host names to addresses when establishing connections.
+     */
+    public interface Resolver
+    {
+	/**
+	 * Resolve a host name.
+	 *
+	 * @param host the host name or address literal
+	 * @return the addresses, in the order they should be tried
+	 * @exception UnknownHostException if the host can't be resolved
+	 */
+	InetAddress[] getAllByName(String host) throws UnknownHostException;
+    }
+
+    private static final Resolver standardResolver =
+      new Resolver() {
+        public InetAddress[] getAllByName(String host)
+          throws UnknownHostException {
+          return InetAddress.getAllByName(host);
+        }
+      };
+
+    private static volatile Resolver defaultResolver = standardResolver;
+
+    private volatile Resolver resolver = null;
+
+    /**
+     * Set the resolver used by connections that don't have their own.
+     *
+     * @param resolver the resolver, or <code>null</code> to use
+     *                 <code>InetAddress.getAllByName()</code>
+     */
+    public static void setDefaultResolver(Resolver resolver)
+    {
+	defaultResolver = resolver != null ? resolver : standardResolver;
+    }
+
+    public static Resolver getDefaultResolver()
+    {
+	return defaultResolver;
+    }
+
+    /**
+     * Set the resolver used by this connection.
+     *
+     * @param resolver the resolver, or <code>null</code> to use the
+     *                 default resolver
+     */
+    public final void setResolver(Resolver resolver)
+    {
+	this.resolver = resolver;
+    }
+
+    public final Resolver getResolver()
+    {
+	final Resolver result = resolver;
+	return result != null ? result : defaultResolver;
+    }
     /** --GRINDER MODIFICATION **/
 
     /**
@@ -3071,6 +3224,19 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
     Response sendRequest(Request req, int con_timeout)
 		throws IOException, ModuleException
     {
+	/** ++GRINDER MODIFICATION **/
+	final Transport transport = this.transport;
+
+	if (transport != null  &&  req.getStream() == null)
+	{
+	    final Response transport_resp =
+		transport.sendRequest(req, con_timeout);
+
+	    if (transport_resp != null)
+		return transport_resp;
+	}
+	/** --GRINDER MODIFICATION **/
+
 	ByteArrayOutputStream hdr_buf = new ByteArrayOutputStream(600);
 	Response              resp = null;
 	boolean		      keep_alive;
@@ -3230,6 +3396,16 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
 			sslSocket.setEnabledCipherSuites(getSSLCipherSuites());
 			sslSocket.setEnabledProtocols(getSSLProtocols());
 
+			// Handshake now, rather than on the first write, so we
+			// can time it.
+			final long handshakeStart =
+			  getTimeAuthority().getTimeInNanoseconds();
+			sslSocket.startHandshake();
+			handshake_time.set(
+			  Math.max(getTimeAuthority().getTimeInNanoseconds() -
+			           handshakeStart,
+			           0) / 1000);
+
 			if (getCheckCertificates()) {
                         /** --GRINDER MODIFICATION **/
 
@@ -3349,12 +3525,18 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
           // physical read on the socket, forcing an
           // IOException if the connection now stinks and
           // hence kicking off connection re-establishment.
-          // This breaks pipelining, but The Grinder doesn't
-          // use that.
+          // This breaks pipelining, so callers that pipeline
+          // requests turn it off.
           if (getTestConnectionHealthWithBlockingRead() &&
               // But we won't get a response if we haven't committed our
               // stream yet....
               req.getStream() == null) {
+              // Mark the first response before reading it, so the
+              // server's protocol version is established and later
+              // requests needn't be stalled.
+              if (!ServProtVersKnown)
+                  r.markAsFirstResponse(req);
+
 		      r.getVersion();
 		  }
 
@@ -3508,16 +3690,19 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
 	    {
                 /** ++GRINDER MODIFICATION **/
 	            final long startTime =
-	              getTimeAuthority().getTimeInMilliseconds();
+	              getTimeAuthority().getTimeInNanoseconds();
                 /** --GRINDER MODIFICATION **/
 		// try all A records
-		InetAddress[] addr_list = InetAddress.getAllByName(actual_host);
+                /** ++GRINDER MODIFICATION **/
+		// InetAddress[] addr_list = InetAddress.getAllByName(actual_host);
+		InetAddress[] addr_list = getResolver().getAllByName(actual_host);
+                /** --GRINDER MODIFICATION **/
                 /** ++GRINDER MODIFICATION **/
                 // capture time for DNS Lookup
                 DNS_time.set(
-                  Math.max(getTimeAuthority().getTimeInMilliseconds() -
+                  Math.max(getTimeAuthority().getTimeInNanoseconds() -
                            startTime,
-                           0));
+                           0) / 1000);
                 /** --GRINDER MODIFICATION **/
 		for (int idx=0; idx<addr_list.length; idx++)
 		{
@@ -3534,9 +3719,9 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
 
                         // capture time for initial connection
                         con_time.set(
-                          Math.max(getTimeAuthority().getTimeInMilliseconds() -
+                          Math.max(getTimeAuthority().getTimeInNanoseconds() -
                                    startTime,
-                                   0));
+                                   0) / 1000);
                         connectionsEstablished.incrementAndGet();
                         /** --GRINDER MODIFICATION **/
 			break;		// success
@@ -3573,14 +3758,21 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
     }
 
     /** ++GRINDER-MODIFICATION++ */
+    /** The time taken to resolve the host name, in microseconds. */
     public long getDnsTime(){
            return DNS_time.get();
     }
 
+    /** The time taken to establish the connection, in microseconds. */
     public long getConnectTime(){
            return con_time.get();
     }
 
+    /** The time taken to complete the SSL handshake, in microseconds. */
+    public long getHandshakeTime(){
+           return handshake_time.get();
+    }
+
     public long getConnectionsEstablished(){
       return connectionsEstablished.get();
     }
@@ -4184,17 +4376,22 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
 		{
             /** ++GRINDER MODIFICATION **/
             final long startTime =
-              getTimeAuthority().getTimeInMilliseconds();
+              getTimeAuthority().getTimeInNanoseconds();
             /** --GRINDER MODIFICATION **/
 
 		    // try all A records
-		    InetAddress[] addr_list = InetAddress.getAllByName(actual_host);
+                    /** ++GRINDER MODIFICATION **/
+		    // InetAddress[] addr_list =
+		    //   InetAddress.getAllByName(actual_host);
+		    InetAddress[] addr_list =
+		      getResolver().getAllByName(actual_host);
+                    /** --GRINDER MODIFICATION **/
                     /** ++GRINDER MODIFICATION **/
                     // capture time for DNS Lookup
                     DNS_time.set(
-                       Math.max(getTimeAuthority().getTimeInMilliseconds()
+                       Math.max(getTimeAuthority().getTimeInNanoseconds()
                                 - startTime,
-                                0));
+                                0) / 1000);
                     /** --GRINDER MODIFICATION **/
 		    for (int idx=0; idx<addr_list.length; idx++)
 		    {
@@ -4212,9 +4409,9 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
                             // capture time for initial connection
                             con_time.set(
                               Math.max(
-                                getTimeAuthority().getTimeInMilliseconds()
+                                getTimeAuthority().getTimeInNanoseconds()
                                 - startTime,
-                                0));
+                                0) / 1000);
                            /** --GRINDER MODIFICATION */
 			    break;		// success
 			}
@@ -121,6 +121,7 @@ public class HTTPResponse implements HTTPClientModuleConstants
     /** ++GRINDER MODIFICATION **/
     /** The time to first byte */
     private long         ttfb;
+    private long         ttfbNanos;
     /** --GRINDER MODIFICATION **/
 
     // Constructors
@@ -384,6 +385,16 @@ public class HTTPResponse implements HTTPClientModuleConstants
     public long getTimeToFirstByte(){
             return ttfb;
     }
+
+    /**
+     * The time the first byte was received, according to the connection's
+     * high resolution timer.
+     *
+     * @return The time in nanoseconds. The base time is arbitrary.
+     */
+    public long getTimeToFirstByteInNanoseconds(){
+            return ttfbNanos;
+    }
     /** --GRINDER MODIFICATION **/
 
     /**
@@ -837,6 +848,7 @@ public class HTTPResponse implements HTTPClientModuleConstants
 	this.Data          = resp.Data;
 	this.retry         = resp.retry;
 	this.ttfb          = resp.getTtfb();
+	this.ttfbNanos     = resp.getTtfbNanos();
 	initialized        = true;
     }
 
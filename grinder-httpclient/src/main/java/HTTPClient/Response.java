@@ -943,6 +943,7 @@ public final class Response implements RoResponse, GlobalConstants, Cloneable
     private boolean      got_cr  = false;
     /** ++GRINDER MODIFICATION **/
     private long         ttfb    = 0;
+    private long         ttfbNanos = 0;
     /** --GRINDER MODIFICATION **/
 
     /**
@@ -985,6 +986,8 @@ public final class Response implements RoResponse, GlobalConstants, Cloneable
 				    gotFirstByte = true;
 				    ttfb =
 				      connection.getTimeAuthority().getTimeInMilliseconds();
+				    ttfbNanos =
+				      connection.getTimeAuthority().getTimeInNanoseconds();
 			    }
 			/** --GRINDER MODIFICATION **/
 		    } while (Character.isWhitespace((char) c)) ;
@@ -1033,6 +1036,23 @@ public final class Response implements RoResponse, GlobalConstants, Cloneable
     public long getTtfb(){
 	    return ttfb;
     }
+
+    public long getTtfbNanos(){
+	    return ttfbNanos;
+    }
+
+    /**
+     * Set the time the first byte of the response was received, for
+     * responses that weren't read by this class.
+     *
+     * @param ttfb      the time in milliseconds
+     * @param ttfbNanos the time according to the connection's high
+     *                  resolution timer, in nanoseconds
+     */
+    public void setTtfb(long ttfb, long ttfbNanos){
+	    this.ttfb = ttfb;
+	    this.ttfbNanos = ttfbNanos;
+    }
     /** --GRINDER MODIFICATION **/
     boolean trailers_read = false;
 
@@ -197,7 +197,22 @@ abstract class DynamicStatisticsTableModel
 
   public synchronized Object getValueAt(int row, int column) {
     if (column == 0) {
-      return m_testString + m_lastModelTestIndex.getTest(row).getNumber();
+      final int depth = m_lastModelTestIndex.getDepth(row);
+
+      if (depth == 0) {
+        return m_testString + m_lastModelTestIndex.getTest(row).getNumber();
+      }
+
+      // Indent nested tests beneath their enclosing test.
+      final StringBuilder result = new StringBuilder();
+
+      for (int i = 0; i < depth; ++i) {
+        result.append("  ");
+      }
+
+      return result.append(m_testString)
+                   .append(m_lastModelTestIndex.getTest(row).getNumber())
+                   .toString();
     }
     else if (column == 1) {
       return m_lastModelTestIndex.getTest(row).getDescription();
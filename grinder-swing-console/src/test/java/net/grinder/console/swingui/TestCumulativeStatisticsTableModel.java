@@ -150,7 +150,7 @@ public class TestCumulativeStatisticsTableModel
     assertSame(m_sampleModel, model.getModel());
     assertSame(m_sampleModelViews, model.getModelViews());
 
-    assertEquals(7, model.getColumnCount());
+    assertEquals(10, model.getColumnCount());
     assertEquals(1, model.getRowCount());
     assertEquals(0, model.getLastModelTestIndex().getNumberOfTests());
 
@@ -188,7 +188,7 @@ public class TestCumulativeStatisticsTableModel
 
     model.write(writer, "::", "**");
 
-    assertEquals("t3st::Test Description Column::Tests::Errors::Mean Test Time (ms)::Test Time Standard Deviation (ms)::TPS::**Total Label::::0::0::::0.0::::**",
+    assertEquals("t3st::Test Description Column::Tests::Errors::Mean Test Time (ms)::Test Time Standard Deviation (ms)::Median Test Time (ms)::Test Time 95th Percentile (ms)::Test Time 99th Percentile (ms)::TPS::**Total Label::::0::0::::0.0::0.0::0.0::0.0::::**",
                  writer.toString());
   }
 
@@ -203,7 +203,7 @@ public class TestCumulativeStatisticsTableModel
 
     model.writeWithoutTotals(writer, "::", "**");
 
-    assertEquals("t3st::Test Description Column::Tests::Errors::Mean Test Time (ms)::Test Time Standard Deviation (ms)::TPS::**",
+    assertEquals("t3st::Test Description Column::Tests::Errors::Mean Test Time (ms)::Test Time Standard Deviation (ms)::Median Test Time (ms)::Test Time 95th Percentile (ms)::Test Time 99th Percentile (ms)::TPS::**",
                  writer.toString());
   }
 
@@ -219,19 +219,19 @@ public class TestCumulativeStatisticsTableModel
     when(m_translations.translate("console.statistic/Mean-Test-Time-ms"))
       .thenReturn("meantime");
 
-    assertEquals(7, model.getColumnCount());
+    assertEquals(10, model.getColumnCount());
 
     model.addColumns(m_statisticsServices.getSummaryStatisticsView());
 
     // Adding same columns again is a no-op.
-    assertEquals(7, model.getColumnCount());
+    assertEquals(10, model.getColumnCount());
     assertEquals("Tests", model.getColumnName(2));
     assertEquals("Errors", model.getColumnName(3));
     assertEquals("Mean Test Time (ms)", model.getColumnName(4));
 
     model.addColumns(m_statisticsServices.getDetailStatisticsView());
 
-    assertEquals(8, model.getColumnCount());
+    assertEquals(11, model.getColumnCount());
     assertEquals("Test time", model.getColumnName(2));
     assertEquals("Blah", model.getColumnName(4));
     assertEquals("meantime", model.getColumnName(5));
@@ -31,6 +31,7 @@ import java.io.File;
 import java.io.StringWriter;
 import java.text.DecimalFormat;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Timer;
 
 import net.grinder.common.StubTest;
@@ -150,7 +151,7 @@ public class TestSampleStatisticsTableModel extends AbstractJUnit4FileTestCase {
     assertSame(m_sampleModel, model.getModel());
     assertSame(m_sampleModelViews, model.getModelViews());
 
-    assertEquals(7, model.getColumnCount());
+    assertEquals(10, model.getColumnCount());
     assertEquals(0, model.getRowCount());
     assertEquals(0, model.getLastModelTestIndex().getNumberOfTests());
 
@@ -172,7 +173,7 @@ public class TestSampleStatisticsTableModel extends AbstractJUnit4FileTestCase {
     model.write(writer, "::", "**");
 
     assertEquals(
-      "t3st::Test Description Column::Tests::Errors::Mean Test Time (ms)::Test Time Standard Deviation (ms)::TPS::**",
+      "t3st::Test Description Column::Tests::Errors::Mean Test Time (ms)::Test Time Standard Deviation (ms)::Median Test Time (ms)::Test Time 95th Percentile (ms)::Test Time 99th Percentile (ms)::TPS::**",
       writer.toString());
   }
 
@@ -189,19 +190,19 @@ public class TestSampleStatisticsTableModel extends AbstractJUnit4FileTestCase {
     when(m_translations.translate("console.statistic/Mean-Test-Time-ms"))
         .thenReturn("meantime");
 
-    assertEquals(7, model.getColumnCount());
+    assertEquals(10, model.getColumnCount());
 
     model.addColumns(m_statisticsServices.getSummaryStatisticsView());
 
     // Adding same columns again is a no-op.
-    assertEquals(7, model.getColumnCount());
+    assertEquals(10, model.getColumnCount());
     assertEquals("Tests", model.getColumnName(2));
     assertEquals("Errors", model.getColumnName(3));
     assertEquals("Mean Test Time (ms)", model.getColumnName(4));
 
     model.addColumns(m_statisticsServices.getDetailStatisticsView());
 
-    assertEquals(8, model.getColumnCount());
+    assertEquals(11, model.getColumnCount());
     assertEquals("Test time", model.getColumnName(2));
     assertEquals("Blah", model.getColumnName(4));
     assertEquals("meantime", model.getColumnName(5));
@@ -243,5 +244,13 @@ public class TestSampleStatisticsTableModel extends AbstractJUnit4FileTestCase {
     assertEquals("test 1", model.getValueAt(0, 1));
     assertEquals("0", model.getValueAt(0, 3));
     assertNull(model.getForeground(0, 3));
+
+    sampleModelImplementation.registerTestParents(
+      Collections.singletonMap(tests[0], tests[1]));
+
+    assertEquals(2, model.getRowCount());
+    assertEquals("t3st 2", model.getValueAt(0, 0));
+    assertEquals("  t3st 1", model.getValueAt(1, 0));
+    assertEquals("test 1", model.getValueAt(1, 1));
   }
 }
@@ -261,6 +261,13 @@
                             :Errors :console.term/errors
                             :Mean-Test-Time-ms "Mean Time"
                             :Test-Time-Standard-Deviation-ms "Mean Time Standard Deviation"
+                            :Median-Test-Time-ms "Median Time"
+                            :Test-Time-95th-Percentile-ms "95th Percentile Time"
+                            :Test-Time-99th-Percentile-ms "99th Percentile Time"
+                            :Late-Starts "Late Starts"
+                            :Dropped-Starts "Dropped Starts"
+                            :Corrected-Mean-Test-Time-ms "Corrected Mean Time"
+                            :Corrected-Test-Time-99th-Percentile-ms "Corrected 99th Percentile Time"
                             :TPS :console.term/tps
                             :Peak-TPS "Peak TPS"
                             :Mean-response-length "Mean Response Length"
@@ -18,8 +18,8 @@ for baud in rates:
 
 url = "http://slashdot.org/"
 
-grinder.statistics.registerDataLogExpression("BPS", "(* 8000 (/ httpplugin.responseLength (+ (sum timedTests) (* -1 httpplugin.firstByteTime))))")
-grinder.statistics.registerSummaryExpression("BPS", "(* 8000 (/ httpplugin.responseLength (+ (sum timedTests) (* -1 httpplugin.firstByteTime))))")
+grinder.statistics.registerDataLogExpression("BPS", "(* 8000000 (/ httpplugin.responseLength (+ (sum timedTests) (* -1 httpplugin.firstByteTime))))")
+grinder.statistics.registerSummaryExpression("BPS", "(* 8000000 (/ httpplugin.responseLength (+ (sum timedTests) (* -1 httpplugin.firstByteTime))))")
 
 class TestRunner:
     def __call__(self):